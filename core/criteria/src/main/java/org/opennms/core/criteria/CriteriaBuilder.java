@@ -64,6 +64,8 @@ public class CriteriaBuilder {
 
     private String m_matchType = "all";
 
+    private Restriction m_keyset = null;
+
     private static final Restriction[] EMPTY_RESTRICTION_ARRAY = new Restriction[0];
 
     public CriteriaBuilder(final Class<?> clazz) {
@@ -84,6 +86,9 @@ public class CriteriaBuilder {
         } else {
             criteria.setRestrictions(m_restrictions);
         }
+        if (m_keyset != null) {
+            criteria.addRestriction(m_keyset);
+        }
 
         return criteria;
     }
@@ -172,6 +177,38 @@ public class CriteriaBuilder {
         m_orderBuilder.clear();
         m_limit = null;
         m_offset = null;
+        m_keyset = null;
+        return this;
+    }
+
+    /**
+     * Orders the results by <code>idAttribute</code> and, if <code>id</code>
+     * is not null, only returns the rows after it.  Successive pages are
+     * fetched by passing the id of the last row of the previous page instead
+     * of an offset, so each page costs the same however deep it is.
+     */
+    public CriteriaBuilder after(final String idAttribute, final Object id) {
+        m_orderBuilder.clear();
+        m_orderBuilder.append(Order.asc(idAttribute));
+        m_offset = null;
+        m_keyset = (id == null ? null : Restrictions.gt(idAttribute, id));
+        return this;
+    }
+
+    /**
+     * Orders the results by <code>attribute</code> and then
+     * <code>idAttribute</code> and, if <code>value</code> and <code>id</code>
+     * are not null, only returns the rows after that position.  The attribute
+     * must not be null for any row.
+     *
+     * @see #after(String, Object)
+     */
+    public CriteriaBuilder after(final String attribute, final Object value, final String idAttribute, final Object id) {
+        m_orderBuilder.clear();
+        m_orderBuilder.append(Order.asc(attribute));
+        m_orderBuilder.append(Order.asc(idAttribute));
+        m_offset = null;
+        m_keyset = (value == null || id == null ? null : Restrictions.after(attribute, value, idAttribute, id));
         return this;
     }
 
@@ -118,6 +118,16 @@ public abstract class Restrictions {
         return new AnyRestriction(restrictions.toArray(EMPTY_RESTRICTION_ARRAY));
     }
 
+    /**
+     * Matches the rows that sort after the given position when ordered by
+     * <code>attribute</code> and then <code>idAttribute</code>, both
+     * ascending.  Used for keyset ("cursor") paging; the attribute must not
+     * be null.
+     */
+    public static AnyRestriction after(final String attribute, final Object value, final String idAttribute, final Object id) {
+        return any(gt(attribute, value), all(eq(attribute, value), gt(idAttribute, id)));
+    }
+
     public static AttributeRestriction sql(final String sql) {
         return new SqlRestriction(sql);
     }
@@ -153,6 +153,39 @@ public class CriteriaTest {
 		assertEquals(Integer.valueOf(20), cb.toCriteria().getOffset());
 	}
 
+	@Test
+	public void testKeyset() {
+		CriteriaBuilder cb = new CriteriaBuilder(OnmsAlarm.class);
+		cb.orderBy("severity").offset(20).limit(10);
+		cb.after("id", 5);
+		Criteria criteria = cb.toCriteria();
+		assertArrayEquals(new Order[] { Order.asc("id") }, criteria.getOrders().toArray(EMPTY_ORDER_ARRAY));
+		assertEquals(null, criteria.getOffset());
+		assertEquals(Integer.valueOf(10), criteria.getLimit());
+		assertEquals(1, criteria.getRestrictions().size());
+		assertEquals(Restrictions.gt("id", 5), criteria.getRestrictions().iterator().next());
+
+		final Date d = new Date();
+		cb = new CriteriaBuilder(OnmsAlarm.class);
+		cb.match("any").eq("uei", "a").eq("uei", "b");
+		cb.after("lastEventTime", d, "id", 5);
+		criteria = cb.toCriteria();
+		assertArrayEquals(new Order[] { Order.asc("lastEventTime"), Order.asc("id") }, criteria.getOrders().toArray(EMPTY_ORDER_ARRAY));
+
+		// the keyset restriction must not be or'ed with the other restrictions
+		final List<Restriction> expected = new ArrayList<Restriction>();
+		expected.add(Restrictions.any(Restrictions.eq("uei", "a"), Restrictions.eq("uei", "b")));
+		expected.add(Restrictions.any(Restrictions.gt("lastEventTime", d), Restrictions.all(Restrictions.eq("lastEventTime", d), Restrictions.gt("id", 5))));
+		assertEquals(expected, criteria.getRestrictions());
+
+		// the first page has no position yet, and counts ignore it
+		cb.after("lastEventTime", null, "id", null);
+		assertEquals(1, cb.toCriteria().getRestrictions().size());
+		cb.after("lastEventTime", d, "id", 5).count();
+		assertEquals(1, cb.toCriteria().getRestrictions().size());
+		assertTrue(cb.toCriteria().getOrders().isEmpty());
+	}
+
 	@Test
 	public void testRestrictions() {
 		CriteriaBuilder cb = new CriteriaBuilder(OnmsAlarm.class);
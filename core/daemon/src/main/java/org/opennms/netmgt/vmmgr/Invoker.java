@@ -30,10 +30,22 @@ package org.opennms.netmgt.vmmgr;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.Attribute;
 import javax.management.MBeanServer;
@@ -84,7 +96,11 @@ public class Invoker {
     private InvokeAtType m_atType;
     private boolean m_reverse = false;
     private boolean m_failFast = true;
+    private boolean m_parallel = false;
+    private int m_threads = Runtime.getRuntime().availableProcessors();
+    private Set<String> m_barriers = new HashSet<String>(Collections.singleton("OpenNMS:Name=Eventd"));
     private List<InvokerService> m_services;
+    private final Map<String,Map<String,Long>> m_timings = new LinkedHashMap<String,Map<String,Long>>();
     
     /**
      * <p>Constructor for Invoker.</p>
@@ -179,6 +195,10 @@ public class Invoker {
         }
         
         List<InvokerResult> resultInfo = new ArrayList<InvokerResult>(invokerServicesOrdered.size());
+        if (isParallel()) {
+            return invokeMethodsConcurrently(invokerServicesOrdered, resultInfo);
+        }
+
         for (int pass = 0, end = getLastPass(); pass <= end; pass++) {
         	LOG.debug("starting pass {}", pass);
             
@@ -204,7 +224,7 @@ public class Invoker {
                     
 
                     try {
-                        Object result = invoke(invoke, mbean);
+                        Object result = timedInvoke(name, invoke, mbean);
                         resultInfo.add(new InvokerResult(service, mbean, result, null));
                     } catch (Throwable t) {
                         resultInfo.add(new InvokerResult(service, mbean, null, t));
@@ -222,6 +242,202 @@ public class Invoker {
         return resultInfo;
     }
 
+    /**
+     * Runs the passes like {@link #invokeMethods()}, but lets services run
+     * their invocations for a pass at the same time where they do not depend
+     * on each other.
+     *
+     * Dependencies are inferred from the configured order and the barrier
+     * services (Eventd by default): every service up to and including the
+     * first barrier runs on its own, each barrier waits for every service
+     * before it, and the services between two barriers run concurrently.
+     * Each pass still finishes completely before the next one starts.
+     */
+    private List<InvokerResult> invokeMethodsConcurrently(final List<InvokerService> invokerServicesOrdered, final List<InvokerResult> resultInfo) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, getThreads()), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(runnable, "Invoker-Thread-" + threadNumber.incrementAndGet());
+            }
+        });
+
+        try {
+            for (int pass = 0, end = getLastPass(); pass <= end; pass++) {
+                LOG.debug("starting pass {}", pass);
+
+                final List<InvokerService> segment = new ArrayList<InvokerService>();
+                boolean barrierSeen = false;
+                for (InvokerService invokerService : invokerServicesOrdered) {
+                    if (invokerService.isBadService()) {
+                        if (!invokeSegment(executor, pass, segment, resultInfo)) {
+                            return resultInfo;
+                        }
+                        resultInfo.add(new InvokerResult(invokerService.getService(), invokerService.getMbean(), null, invokerService.getBadThrowable()));
+                        if (isFailFast()) {
+                            return resultInfo;
+                        }
+                    }
+
+                    final boolean barrier = getBarriers().contains(invokerService.getService().getName());
+                    if (barrier || !barrierSeen) {
+                        // run alone, after everything before it has finished
+                        if (!invokeSegment(executor, pass, segment, resultInfo)) {
+                            return resultInfo;
+                        }
+                        segment.add(invokerService);
+                        if (!invokeSegment(executor, pass, segment, resultInfo)) {
+                            return resultInfo;
+                        }
+                        barrierSeen |= barrier;
+                    } else {
+                        segment.add(invokerService);
+                    }
+                }
+                if (!invokeSegment(executor, pass, segment, resultInfo)) {
+                    return resultInfo;
+                }
+
+                LOG.debug("completed pass {}", pass);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return resultInfo;
+    }
+
+    /**
+     * Runs one pass of the given services' invocations concurrently, waits
+     * for all of them, and adds their results in configuration order. The
+     * segment is cleared afterwards.
+     *
+     * @return false if an invocation failed and the invoker is fail-fast
+     */
+    private boolean invokeSegment(final ExecutorService executor, final int pass, final List<InvokerService> segment, final List<InvokerResult> resultInfo) {
+        if (segment.isEmpty()) {
+            return true;
+        }
+
+        final List<Future<List<InvokerResult>>> futures = new ArrayList<Future<List<InvokerResult>>>(segment.size());
+        for (final InvokerService invokerService : segment) {
+            final Map<String,String> mdc = Logging.getCopyOfContextMap();
+            futures.add(executor.submit(new Callable<List<InvokerResult>>() {
+                @Override
+                public List<InvokerResult> call() {
+                    Logging.setContextMap(mdc);
+                    return invokePass(pass, invokerService);
+                }
+            }));
+        }
+        segment.clear();
+
+        boolean failed = false;
+        for (final Future<List<InvokerResult>> future : futures) {
+            final List<InvokerResult> results;
+            try {
+                results = future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for services to finish pass " + pass, e);
+            } catch (final ExecutionException e) {
+                throw new IllegalStateException("Unexpected error while invoking pass " + pass, e.getCause());
+            }
+            for (final InvokerResult result : results) {
+                resultInfo.add(result);
+                failed |= result.getThrowable() != null;
+            }
+        }
+        return !(failed && isFailFast());
+    }
+
+    /**
+     * Invokes one service's methods for the given pass, in configuration
+     * order, stopping at the first failure if the invoker is fail-fast.
+     */
+    private List<InvokerResult> invokePass(final int pass, final InvokerService invokerService) {
+        final List<InvokerResult> results = new ArrayList<InvokerResult>();
+        final Service service = invokerService.getService();
+        final String name = service.getName();
+        final ObjectInstance mbean = invokerService.getMbean();
+
+        for (Invoke invoke : service.getInvoke()) {
+            if (invoke.getPass() != pass || !getAtType().equals(invoke.getAt())) {
+                continue;
+            }
+
+            LOG.debug("pass {} on service {} will invoke method \"{}\"", pass, name, invoke.getMethod());
+
+            try {
+                results.add(new InvokerResult(service, mbean, timedInvoke(name, invoke, mbean), null));
+            } catch (Throwable t) {
+                results.add(new InvokerResult(service, mbean, null, t));
+                if (isFailFast()) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    private Object timedInvoke(final String name, final Invoke invoke, final ObjectInstance mbean) throws Throwable {
+        final long start = System.currentTimeMillis();
+        try {
+            return invoke(invoke, mbean);
+        } finally {
+            final long elapsed = System.currentTimeMillis() - start;
+            LOG.debug("Invocation {} on {} took {}ms", invoke.getMethod(), name, elapsed);
+            synchronized (m_timings) {
+                Map<String,Long> methods = m_timings.get(name);
+                if (methods == null) {
+                    methods = new LinkedHashMap<String,Long>();
+                    m_timings.put(name, methods);
+                }
+                final Long previous = methods.get(invoke.getMethod());
+                methods.put(invoke.getMethod(), previous == null ? elapsed : previous + elapsed);
+            }
+        }
+    }
+
+    /**
+     * Returns how long each service spent in the methods invoked so far, one
+     * line per service, slowest first, for example
+     * <code>OpenNMS:Name=Pollerd: 5210ms (init=5000ms, start=210ms)</code>.
+     * With concurrent invocation the times overlap, so they can add up to
+     * more than the elapsed wall-clock time.
+     *
+     * @return a {@link java.util.List} object.
+     */
+    public List<String> getTimingReport() {
+        final List<Map.Entry<String,Long>> totals = new ArrayList<Map.Entry<String,Long>>();
+        final Map<String,String> details = new LinkedHashMap<String,String>();
+        synchronized (m_timings) {
+            for (final Map.Entry<String,Map<String,Long>> entry : m_timings.entrySet()) {
+                long total = 0;
+                final StringBuilder detail = new StringBuilder();
+                for (final Map.Entry<String,Long> method : entry.getValue().entrySet()) {
+                    total += method.getValue();
+                    detail.append(detail.length() == 0 ? "" : ", ").append(method.getKey()).append('=').append(method.getValue()).append("ms");
+                }
+                totals.add(new AbstractMap.SimpleImmutableEntry<String,Long>(entry.getKey(), total));
+                details.put(entry.getKey(), detail.toString());
+            }
+        }
+
+        Collections.sort(totals, new Comparator<Map.Entry<String,Long>>() {
+            @Override
+            public int compare(final Map.Entry<String,Long> a, final Map.Entry<String,Long> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+
+        final List<String> report = new ArrayList<String>(totals.size());
+        for (final Map.Entry<String,Long> total : totals) {
+            report.add(total.getKey() + ": " + total.getValue() + "ms (" + details.get(total.getKey()) + ")");
+        }
+        return report;
+    }
+
     /**
      * Get the last pass for a set of InvokerServices.
      * 
@@ -370,6 +586,64 @@ public class Invoker {
         m_reverse = reverse;
     }
 
+    /**
+     * <p>isParallel</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isParallel() {
+        return m_parallel;
+    }
+
+    /**
+     * Whether independent services run their invocations for a pass at the
+     * same time. See {@link #setBarriers(Set)} for how dependencies are
+     * inferred.
+     *
+     * @param parallel a boolean.
+     */
+    public void setParallel(boolean parallel) {
+        m_parallel = parallel;
+    }
+
+    /**
+     * <p>getThreads</p>
+     *
+     * @return a int.
+     */
+    public int getThreads() {
+        return m_threads;
+    }
+
+    /**
+     * <p>setThreads</p>
+     *
+     * @param threads the number of services invoked at the same time
+     */
+    public void setThreads(int threads) {
+        m_threads = threads;
+    }
+
+    /**
+     * <p>getBarriers</p>
+     *
+     * @return a {@link java.util.Set} object.
+     */
+    public Set<String> getBarriers() {
+        return m_barriers;
+    }
+
+    /**
+     * Sets the names of the services that everything configured after them
+     * depends on. In parallel mode a barrier service waits for every service
+     * before it, and no service after it starts until it has finished.
+     *
+     * @param barriers a {@link java.util.Set} object.
+     */
+    public void setBarriers(Set<String> barriers) {
+        m_barriers = barriers;
+    }
+
     /**
      * <p>getServer</p>
      *
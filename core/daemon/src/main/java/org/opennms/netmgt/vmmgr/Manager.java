@@ -90,6 +90,7 @@ public class Manager implements ManagerMBean {
     private static final String LOG4J_CATEGORY = "manager";
     private static final String m_osName = System.getProperty("os.name") == null? "" : System.getProperty("os.name").toLowerCase();
     private static long startTime = System.currentTimeMillis();
+    private static volatile List<String> startupReport = new ArrayList<String>();
 
     /**
      * <p>stop</p>
@@ -303,4 +304,13 @@ public class Manager implements ManagerMBean {
     public Long getUptime() {
         return (System.currentTimeMillis() - startTime);
     }
+
+    static void setStartupReport(final List<String> report) {
+        startupReport = new ArrayList<String>(report);
+    }
+
+    @Override
+    public List<String> getStartupReport() {
+        return new ArrayList<String>(startupReport);
+    }
 }
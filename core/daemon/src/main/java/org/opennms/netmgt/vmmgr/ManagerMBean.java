@@ -60,4 +60,12 @@ public interface ManagerMBean {
      * since the manager first started 
      */
     public Long getUptime();
+
+    /**
+     * <p>getStartupReport</p>
+     *
+     * @return a {@link java.util.List} with how long each service took to
+     * start, slowest first
+     */
+    public List<String> getStartupReport();
 }
@@ -34,9 +34,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TreeMap;
 
 import javax.management.MBeanServer;
@@ -85,6 +87,20 @@ public class Starter {
      */
     private static final String LOG4J_CATEGORY = "manager";
 
+    /**
+     * Whether services that do not depend on each other are started
+     * concurrently. See {@link Invoker#setParallel(boolean)}.
+     */
+    private static final String PARALLEL_STARTUP_PROPERTY = "org.opennms.vmmgr.parallelStartup";
+
+    private static final String STARTUP_THREADS_PROPERTY = "org.opennms.vmmgr.startupThreads";
+
+    /**
+     * Comma-separated service names the services configured after them
+     * depend on. See {@link Invoker#setBarriers(java.util.Set)}.
+     */
+    private static final String STARTUP_BARRIERS_PROPERTY = "org.opennms.vmmgr.startupBarriers";
+
     private void setLogPrefix() {
         Logging.putPrefix(LOG4J_CATEGORY);
     }
@@ -243,10 +259,28 @@ public class Starter {
         invoker.setAtType(InvokeAtType.START);
         List<InvokerService> services = InvokerService.createServiceList(new ServiceConfigFactory().getServices());
         invoker.setServices(services);
+        invoker.setParallel(Boolean.getBoolean(PARALLEL_STARTUP_PROPERTY));
+        invoker.setThreads(Integer.getInteger(STARTUP_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+        final String barriers = System.getProperty(STARTUP_BARRIERS_PROPERTY);
+        if (barriers != null && !"".equals(barriers.trim())) {
+            final Set<String> names = new HashSet<String>();
+            for (final String name : barriers.split(",")) {
+                names.add(name.trim());
+            }
+            invoker.setBarriers(names);
+        }
         invoker.instantiateClasses();
 
+        final long startupBegin = System.currentTimeMillis();
         List<InvokerResult> resultInfo = invoker.invokeMethods();
 
+        final List<String> report = invoker.getTimingReport();
+        LOG.info("Service startup took {}ms ({}):", System.currentTimeMillis() - startupBegin, invoker.isParallel() ? "parallel" : "sequential");
+        for (final String line : report) {
+            LOG.info("  {}", line);
+        }
+        Manager.setStartupReport(report);
+
         for (InvokerResult result : resultInfo) {
             if (result != null && result.getThrowable() != null) {
                 Service service = result.getService();
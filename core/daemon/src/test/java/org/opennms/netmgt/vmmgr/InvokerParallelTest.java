@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.vmmgr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.config.service.Argument;
+import org.opennms.netmgt.config.service.Attribute;
+import org.opennms.netmgt.config.service.Invoke;
+import org.opennms.netmgt.config.service.Service;
+import org.opennms.netmgt.config.service.types.InvokeAtType;
+
+public class InvokerParallelTest {
+    private static final String[] NAMES = new String[] {
+        "test:Name=First", "test:Name=Barrier", "test:Name=A", "test:Name=B", "test:Name=C"
+    };
+
+    private MBeanServer m_server;
+
+    @Before
+    public void setUp() {
+        m_server = MBeanServerFactory.newMBeanServer();
+        SleepingService.STARTS.clear();
+    }
+
+    @Test
+    public void testIndependentServicesStartTogether() throws Exception {
+        final Invoker invoker = new Invoker();
+        invoker.setServer(m_server);
+        invoker.setAtType(InvokeAtType.START);
+        invoker.setParallel(true);
+        invoker.setThreads(4);
+        invoker.setBarriers(Collections.singleton("test:Name=Barrier"));
+        invoker.setServices(InvokerService.createServiceList(getServices()));
+        invoker.instantiateClasses();
+
+        final List<InvokerResult> results = invoker.invokeMethods();
+
+        // init and start for every service, in configuration order within each pass
+        assertEquals(10, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertNull(results.get(i).getThrowable());
+            assertEquals(NAMES[i % NAMES.length], results.get(i).getService().getName());
+        }
+
+        final long[] first = SleepingService.STARTS.get("test:Name=First");
+        final long[] barrier = SleepingService.STARTS.get("test:Name=Barrier");
+        assertTrue(barrier[0] >= first[1]);
+
+        long earliest = Long.MAX_VALUE;
+        long latest = Long.MIN_VALUE;
+        for (final String name : new String[] { "test:Name=A", "test:Name=B", "test:Name=C" }) {
+            final long[] times = SleepingService.STARTS.get(name);
+            assertTrue(times[0] >= barrier[1]);
+            earliest = Math.min(earliest, times[0]);
+            latest = Math.max(latest, times[1]);
+        }
+        // the three independent services overlapped instead of taking 3 * SLEEP
+        assertTrue("took " + (latest - earliest) + "ms", latest - earliest < 2 * SleepingService.SLEEP);
+
+        assertEquals(NAMES.length, invoker.getTimingReport().size());
+    }
+
+    private static Service[] getServices() {
+        final List<Service> services = new ArrayList<Service>();
+        for (final String name : NAMES) {
+            final List<Invoke> invokes = new ArrayList<Invoke>();
+            invokes.add(new Invoke(InvokeAtType.START, 0, "init", new ArrayList<Argument>()));
+            invokes.add(new Invoke(InvokeAtType.START, 1, "start", new ArrayList<Argument>()));
+            services.add(new Service(name, SleepingService.class.getName(), new ArrayList<Attribute>(), invokes));
+        }
+        return services.toArray(new Service[0]);
+    }
+}
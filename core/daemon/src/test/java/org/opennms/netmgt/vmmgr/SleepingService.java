@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.vmmgr;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records when each instance's start() ran so tests can check which
+ * services overlapped.
+ */
+public class SleepingService implements SleepingServiceMBean, MBeanRegistration {
+    static final long SLEEP = 300;
+    static final Map<String,long[]> STARTS = new ConcurrentHashMap<String,long[]>();
+
+    private String m_name;
+
+    @Override
+    public void init() {
+    }
+
+    @Override
+    public void start() {
+        final long begin = System.currentTimeMillis();
+        try {
+            Thread.sleep(SLEEP);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        STARTS.put(m_name, new long[] { begin, System.currentTimeMillis() });
+    }
+
+    @Override
+    public ObjectName preRegister(final MBeanServer server, final ObjectName name) {
+        m_name = name.toString();
+        return name;
+    }
+
+    @Override
+    public void postRegister(final Boolean registrationDone) {
+    }
+
+    @Override
+    public void preDeregister() {
+    }
+
+    @Override
+    public void postDeregister() {
+    }
+}
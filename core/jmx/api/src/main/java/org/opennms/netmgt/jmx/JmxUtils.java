@@ -28,10 +28,14 @@
 
 package org.opennms.netmgt.jmx;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 
 import org.opennms.netmgt.config.collectd.jmx.Mbean;
 import org.slf4j.Logger;
@@ -66,6 +70,30 @@ public final class JmxUtils {
         return null;
     }
 
+    /**
+     * Builds a key identifying the agent behind a connection: the connection name, the address and a
+     * SHA-256 digest of the connection properties. The properties may hold credentials, so the key
+     * does not contain them and can be logged.
+     *
+     * @param connectionName The name of the connection (e.g. jsr160).
+     * @param ipAddress The address of the agent.
+     * @param properties The connection properties. May be null.
+     * @return A key that is equal for equal arguments.
+     */
+    public static String getAgentKey(final String connectionName, final String ipAddress, final Map<String, String> properties) {
+        final String propertiesString = properties == null ? "" : new TreeMap<>(properties).toString();
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(propertiesString.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return connectionName + "|" + ipAddress + "|" + hex;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
     public static String getCollectionDirectory(final Map<String, String> map, final String friendlyName, final String serviceName) {
         Objects.requireNonNull(map, "Map must be initialized!");
 
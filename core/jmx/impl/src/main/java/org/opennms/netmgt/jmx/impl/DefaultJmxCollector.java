@@ -56,10 +56,12 @@ import org.opennms.netmgt.config.collectd.jmx.Mbean;
 import org.opennms.netmgt.jmx.JmxCollector;
 import org.opennms.netmgt.jmx.JmxCollectorConfig;
 import org.opennms.netmgt.jmx.JmxSampleProcessor;
+import org.opennms.netmgt.jmx.JmxUtils;
 import org.opennms.netmgt.jmx.connection.JmxConnectionManager;
 import org.opennms.netmgt.jmx.connection.JmxServerConnectionException;
 import org.opennms.netmgt.jmx.connection.JmxServerConnectionWrapper;
 import org.opennms.netmgt.jmx.impl.connection.connectors.DefaultConnectionManager;
+import org.opennms.netmgt.jmx.impl.connection.connectors.PooledConnectionManager;
 import org.opennms.netmgt.jmx.samples.JmxAttributeSample;
 import org.opennms.netmgt.jmx.samples.JmxCompositeSample;
 import org.slf4j.Logger;
@@ -75,31 +77,74 @@ public class DefaultJmxCollector implements JmxCollector {
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
+    /**
+     * The connection manager shared by all collections, or null to connect for each collection.
+     */
+    private final JmxConnectionManager connectionManager;
+
+    private final ObjectNameCache objectNameCache;
+
+    /**
+     * Creates a collector which connects and disconnects for each collection.
+     */
+    public DefaultJmxCollector() {
+        this(null, 0);
+    }
+
+    /**
+     * Creates a collector which gets its connections from the given connection manager
+     * and remembers wildcard object name expansions for <code>objectNameCacheTtl</code> milliseconds.
+     *
+     * @param connectionManager  The connection manager to use, e.g. a {@link PooledConnectionManager}. May be null.
+     * @param objectNameCacheTtl The time to keep wildcard expansions. If <= 0 the MBean server is queried on each collection.
+     */
+    public DefaultJmxCollector(JmxConnectionManager connectionManager, long objectNameCacheTtl) {
+        this.connectionManager = connectionManager;
+        this.objectNameCache = new ObjectNameCache(objectNameCacheTtl);
+    }
+
     @Override
     public void collect(JmxCollectorConfig config, JmxSampleProcessor sampleProcessor) throws JmxServerConnectionException {
-        JmxConnectionManager connectionManager = new DefaultConnectionManager(config.getRetries());
+        final JmxConnectionManager connectionManager = this.connectionManager != null ? this.connectionManager : new DefaultConnectionManager(config.getRetries());
+        final String agentKey = JmxUtils.getAgentKey(config.getConnectionName(), config.getAgentAddress(), config.getServiceProperties());
         try (JmxServerConnectionWrapper connectionWrapper = connectionManager.connect(config.getConnectionName(), config.getAgentAddress(), config.getServiceProperties(), null)) {
             Objects.requireNonNull(connectionWrapper, "connectionWrapper should never be null");
             Objects.requireNonNull(connectionWrapper.getMBeanServerConnection(), "connectionWrapper.getMBeanServerConnection() should never be null");
 
             final MBeanServerConnection concreteConnection = connectionWrapper.getMBeanServerConnection();
-            collect(concreteConnection, config.getJmxCollection(), sampleProcessor);
+            try {
+                collect(concreteConnection, agentKey, config.getJmxCollection(), sampleProcessor);
+            } catch (IOException e) {
+                logger.error("Could not communicate with MBeanServer", e);
+                objectNameCache.invalidate(agentKey);
+                if (connectionManager instanceof PooledConnectionManager) {
+                    ((PooledConnectionManager) connectionManager).invalidate(connectionWrapper);
+                }
+            }
         }
     }
 
-    private void collect(MBeanServerConnection concreteConnection, JmxCollection jmxCollection, JmxSampleProcessor sampleProcessor) {
+    private void collect(MBeanServerConnection concreteConnection, String agentKey, JmxCollection jmxCollection, JmxSampleProcessor sampleProcessor) throws IOException {
         try {
             for (Mbean eachMbean : jmxCollection.getMbeans()) {
                 logger.debug("Collecting MBean (objectname={}, wildcard={})", eachMbean.getObjectname(), isWildcard(eachMbean.getObjectname()));
 
-                final Collection<ObjectName> objectNames = getObjectNames(concreteConnection, eachMbean.getObjectname());
+                final Collection<ObjectName> objectNames = getObjectNames(concreteConnection, agentKey, eachMbean.getObjectname());
                 for (ObjectName eachObjectName : objectNames) {
                     logger.debug("Collecting ObjectName {}", eachObjectName);
 
-                    boolean collect = canBeCollected(concreteConnection, eachObjectName, eachMbean.getKeyfield(), eachMbean.getExclude());
+                    boolean collect = canBeCollected(eachObjectName, eachMbean.getKeyfield(), eachMbean.getExclude());
                     if (collect) {
                         List<String> attributeNames = extractAttributeNames(eachMbean);
-                        List<Attribute> attributes = getAttributes(concreteConnection, eachObjectName, attributeNames);
+                        List<Attribute> attributes;
+                        try {
+                            attributes = getAttributes(concreteConnection, eachObjectName, attributeNames);
+                        } catch (InstanceNotFoundException e) {
+                            // asking for the attributes tells us just as well as isRegistered() would
+                            logger.debug("ObjectName {} is not registered.", eachObjectName);
+                            objectNameCache.invalidate(agentKey, eachMbean.getObjectname());
+                            continue;
+                        }
 
                         for (Attribute eachAttribute : attributes) {
                             if (eachAttribute.getValue() instanceof CompositeData) {
@@ -122,27 +167,21 @@ public class DefaultJmxCollector implements JmxCollector {
             }
         } catch (JMException e) {
             logger.error("Could not collect data", e);
-        } catch (IOException e) {
-            logger.error("Could not communicate with MBeanServer", e);
         }
     }
 
     /**
      * Checks if a given objectName can be collected.
-     * It cannot be collected if it is excluded or not registered, otherwise it can be collected.
+     * It cannot be collected if it is excluded, otherwise it can be collected.
+     * Whether it is registered shows when its attributes are fetched.
      *
      * @return if it can be collected.
-     * @throws IOException If an error while communicating with the MBeanServer occurs.
      */
-    private boolean canBeCollected(MBeanServerConnection connection, ObjectName objectName, String keyField, String excludeList) throws IOException {
+    private boolean canBeCollected(ObjectName objectName, String keyField, String excludeList) {
         if (isExcluded(objectName, keyField, excludeList)) {
             logger.debug("ObjectName {} with key {} is in excludeList {}.", objectName, keyField, excludeList);
             return false;
         }
-        if (!connection.isRegistered(objectName)) {
-            logger.debug("ObjectName {} is not registered.", objectName);
-            return false;
-        }
         return true;
     }
 
@@ -253,18 +292,19 @@ public class DefaultJmxCollector implements JmxCollector {
      * @throws MalformedObjectNameException
      * @throws IOException
      */
-    private Set<ObjectName> getObjectNames(MBeanServerConnection mbeanServer, String objectName) throws MalformedObjectNameException, IOException {
-        Set<ObjectName> objectNames = new HashSet<>();
-
+    private Set<ObjectName> getObjectNames(MBeanServerConnection mbeanServer, String agentKey, String objectName) throws MalformedObjectNameException, IOException {
         // if we have a wildcard in the object Name, we have to query the server for
-        // all object names matching that expression
+        // all object names matching that expression, unless we did so recently
         if (isWildcard(objectName)) {
-            Set<ObjectName> retrievedObjectNames = mbeanServer.queryNames(new ObjectName(objectName), null);
-            objectNames.addAll(retrievedObjectNames);
-        } else {
-            // we do not have a wildcard
-            objectNames.add(new ObjectName(objectName));
+            final Set<ObjectName> cachedObjectNames = objectNameCache.get(agentKey, objectName);
+            if (cachedObjectNames != null) {
+                return cachedObjectNames;
+            }
+            final Set<ObjectName> retrievedObjectNames = Collections.unmodifiableSet(new HashSet<>(mbeanServer.queryNames(new ObjectName(objectName), null)));
+            objectNameCache.put(agentKey, objectName, retrievedObjectNames);
+            return retrievedObjectNames;
         }
-        return Collections.unmodifiableSet(objectNames);
+        // we do not have a wildcard
+        return Collections.singleton(new ObjectName(objectName));
     }
 }
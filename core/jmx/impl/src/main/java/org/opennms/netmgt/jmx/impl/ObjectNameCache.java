@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.jmx.impl;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.ObjectName;
+
+/**
+ * Remembers the expansion of wildcard object names per agent for a while, so
+ * the MBean server does not have to be queried on every collection.
+ */
+class ObjectNameCache {
+
+    private static class Entry {
+        private final Set<ObjectName> objectNames;
+        private final long expires;
+
+        private Entry(Set<ObjectName> objectNames, long expires) {
+            this.objectNames = objectNames;
+            this.expires = expires;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final long ttl;
+
+    /**
+     * @param ttl How long an expansion is kept, in milliseconds. Caching is disabled if <= 0.
+     */
+    ObjectNameCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return the cached expansion or null if there is none or it expired.
+     */
+    Set<ObjectName> get(String agentKey, String objectName) {
+        if (ttl <= 0) {
+            return null;
+        }
+        final String key = agentKey + "|" + objectName;
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires < System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.objectNames;
+    }
+
+    void put(String agentKey, String objectName, Set<ObjectName> objectNames) {
+        if (ttl > 0) {
+            entries.put(agentKey + "|" + objectName, new Entry(objectNames, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    /**
+     * Forgets the expansion, e.g. because one of its MBeans has been unregistered.
+     */
+    void invalidate(String agentKey, String objectName) {
+        entries.remove(agentKey + "|" + objectName);
+    }
+
+    /**
+     * Forgets all expansions of an agent, e.g. because the connection to it was lost.
+     */
+    void invalidate(String agentKey) {
+        final String prefix = agentKey + "|";
+        for (String eachKey : entries.keySet()) {
+            if (eachKey.startsWith(prefix)) {
+                entries.remove(eachKey);
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.jmx.impl.connection.connectors;
+
+import org.opennms.netmgt.jmx.JmxUtils;
+import org.opennms.netmgt.jmx.ParameterName;
+import org.opennms.netmgt.jmx.connection.JmxConnectionManager;
+import org.opennms.netmgt.jmx.connection.JmxServerConnectionException;
+import org.opennms.netmgt.jmx.connection.JmxServerConnectionWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServerConnection;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one established connection per agent (connection name, address and
+ * a digest of the connection properties, which may hold credentials) and
+ * hands it out to every caller, instead of connecting and disconnecting for
+ * each collection or poll.
+ * <p/>
+ * The wrappers returned by {@link #connect(String, String, java.util.Map, RetryCallback)}
+ * do not close the underlying connection. A pooled connection is
+ * <ul>
+ *     <li>checked with a cheap round trip before it is handed out, if it has not been used for a while,</li>
+ *     <li>dropped when a caller reports it as broken via {@link #invalidate(JmxServerConnectionWrapper)},</li>
+ *     <li>closed after it has been idle for longer than the idle timeout.</li>
+ * </ul>
+ * New connections are established by a {@link DefaultConnectionManager}, using the
+ * <code>retry</code> connection property if present.
+ */
+public class PooledConnectionManager implements JmxConnectionManager, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledConnectionManager.class);
+
+    /**
+     * Longer than the common 5 minute collection interval, so regularly used connections are kept.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(15);
+
+    public static final long DEFAULT_VALIDATION_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    private final ConcurrentMap<String, PooledConnection> connections = new ConcurrentHashMap<>();
+
+    private final int retries;
+
+    private final long idleTimeout;
+
+    private final long validationInterval;
+
+    private volatile long lastEviction = System.currentTimeMillis();
+
+    public PooledConnectionManager(int retries, long idleTimeout, long validationInterval) {
+        this.retries = retries;
+        this.idleTimeout = idleTimeout;
+        this.validationInterval = validationInterval;
+    }
+
+    /**
+     * Same as {@link #PooledConnectionManager(int, long, long)} with the default idle timeout and validation interval.
+     */
+    public PooledConnectionManager(int retries) {
+        this(retries, DEFAULT_IDLE_TIMEOUT, DEFAULT_VALIDATION_INTERVAL);
+    }
+
+    @Override
+    public JmxServerConnectionWrapper connect(String connectionName, String ipAddress, Map<String, String> properties, RetryCallback retryCallback) throws JmxServerConnectionException {
+        final long now = System.currentTimeMillis();
+        evictIdleConnections(now);
+
+        final String key = JmxUtils.getAgentKey(connectionName, ipAddress, properties);
+        PooledConnection pooled = connections.get(key);
+        if (pooled != null && !pooled.isValid(now, validationInterval)) {
+            LOG.debug("Pooled connection to {} is broken, reconnecting", ipAddress);
+            discard(pooled);
+            pooled = null;
+        }
+
+        if (pooled == null) {
+            final JmxServerConnectionWrapper connection = new DefaultConnectionManager(getRetries(properties)).connect(connectionName, ipAddress, properties, retryCallback);
+            final PooledConnection created = new PooledConnection(key, connectionName + "@" + ipAddress, connection, now);
+            pooled = connections.putIfAbsent(key, created);
+            if (pooled == null) {
+                LOG.debug("Pooled new connection to {}", ipAddress);
+                pooled = created;
+            } else {
+                // somebody else connected at the same time
+                connection.close();
+            }
+        }
+
+        pooled.touch(now);
+        return new Lease(pooled);
+    }
+
+    /**
+     * Removes the connection behind the given wrapper from the pool and closes it.
+     * Callers should do so when using the connection failed with an {@link java.io.IOException}.
+     *
+     * @param wrapper A wrapper returned by this connection manager. Other wrappers are ignored.
+     */
+    public void invalidate(JmxServerConnectionWrapper wrapper) {
+        if (wrapper instanceof Lease) {
+            discard(((Lease) wrapper).pooled);
+        }
+    }
+
+    /**
+     * @return the number of pooled connections.
+     */
+    public int size() {
+        return connections.size();
+    }
+
+    /**
+     * Closes all pooled connections.
+     */
+    @Override
+    public void close() {
+        for (PooledConnection eachConnection : connections.values()) {
+            discard(eachConnection);
+        }
+    }
+
+    private void evictIdleConnections(long now) {
+        // no need to look more often than connections could expire
+        if (now - lastEviction < validationInterval) {
+            return;
+        }
+        lastEviction = now;
+
+        for (Iterator<PooledConnection> it = connections.values().iterator(); it.hasNext(); ) {
+            final PooledConnection eachConnection = it.next();
+            if (now - eachConnection.lastUsed > idleTimeout) {
+                LOG.debug("Closing idle connection {}", eachConnection.description);
+                discard(eachConnection);
+            }
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        if (connections.remove(pooled.key, pooled)) {
+            pooled.connection.close();
+        }
+    }
+
+    private int getRetries(Map<String, String> properties) {
+        final String retry = properties == null ? null : properties.get(ParameterName.RETRY.toString());
+        if (retry != null) {
+            try {
+                return Integer.parseInt(retry);
+            } catch (NumberFormatException e) {
+                LOG.debug("Ignoring invalid retry count {}", retry);
+            }
+        }
+        return retries;
+    }
+
+    private static class PooledConnection {
+        private final String key;
+        private final String description;
+        private final JmxServerConnectionWrapper connection;
+        private volatile long lastUsed;
+        private volatile long lastValidated;
+
+        private PooledConnection(String key, String description, JmxServerConnectionWrapper connection, long now) {
+            this.key = key;
+            this.description = description;
+            this.connection = Objects.requireNonNull(connection, "connection must not be null");
+            this.lastUsed = now;
+            this.lastValidated = now;
+        }
+
+        private void touch(long now) {
+            lastUsed = now;
+        }
+
+        private boolean isValid(long now, long validationInterval) {
+            if (now - lastValidated < validationInterval) {
+                return true;
+            }
+            try {
+                connection.getMBeanServerConnection().getMBeanCount();
+                lastValidated = now;
+                return true;
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("Validation of connection {} failed", description, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * What the callers get: closing it returns the connection to the pool.
+     */
+    private static class Lease implements JmxServerConnectionWrapper {
+        private final PooledConnection pooled;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public MBeanServerConnection getMBeanServerConnection() {
+            return pooled.connection.getMBeanServerConnection();
+        }
+
+        @Override
+        public void close() {
+            pooled.touch(System.currentTimeMillis());
+        }
+    }
+}
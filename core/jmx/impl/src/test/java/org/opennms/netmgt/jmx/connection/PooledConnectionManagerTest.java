@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.jmx.connection;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opennms.netmgt.jmx.impl.connection.connectors.PooledConnectionManager;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PooledConnectionManagerTest {
+
+    private final Map<String, String> properties = Collections.singletonMap("port", "1099");
+
+    @Test
+    public void testConnectionIsReused() throws JmxServerConnectionException {
+        final PooledConnectionManager connectionManager = new PooledConnectionManager(1);
+        final AtomicInteger connects = new AtomicInteger();
+        final JmxConnectionManager.RetryCallback callback = new JmxConnectionManager.RetryCallback() {
+            @Override
+            public void onRetry() {
+                connects.incrementAndGet();
+            }
+        };
+
+        for (int i = 0; i < 3; i++) {
+            try (JmxServerConnectionWrapper connection = connectionManager.connect(JmxConnectors.PLATFORM, "127.0.0.1", properties, callback)) {
+                Assert.assertNotNull(connection.getMBeanServerConnection());
+            }
+        }
+
+        Assert.assertEquals(1, connects.get());
+        Assert.assertEquals(1, connectionManager.size());
+    }
+
+    @Test
+    public void testConnectionsPerAgent() throws JmxServerConnectionException {
+        final PooledConnectionManager connectionManager = new PooledConnectionManager(1);
+        connectionManager.connect(JmxConnectors.PLATFORM, "127.0.0.1", properties, null).close();
+        connectionManager.connect(JmxConnectors.PLATFORM, "127.0.0.2", properties, null).close();
+        connectionManager.connect(JmxConnectors.PLATFORM, "127.0.0.1", Collections.singletonMap("port", "1100"), null).close();
+
+        Assert.assertEquals(3, connectionManager.size());
+
+        connectionManager.close();
+        Assert.assertEquals(0, connectionManager.size());
+    }
+
+    @Test
+    public void testInvalidatedConnectionIsReplaced() throws JmxServerConnectionException {
+        final PooledConnectionManager connectionManager = new PooledConnectionManager(1);
+        final JmxServerConnectionWrapper connection = connectionManager.connect(JmxConnectors.PLATFORM, "127.0.0.1", properties, null);
+        connectionManager.invalidate(connection);
+        Assert.assertEquals(0, connectionManager.size());
+
+        connectionManager.connect(JmxConnectors.PLATFORM, "127.0.0.1", properties, null).close();
+        Assert.assertEquals(1, connectionManager.size());
+    }
+
+    @Test
+    public void testIdleConnectionIsEvicted() throws Exception {
+        final PooledConnectionManager connectionManager = new PooledConnectionManager(1, 1, 1);
+        connectionManager.connect(JmxConnectors.PLATFORM, "127.0.0.1", properties, null).close();
+        Thread.sleep(10);
+
+        // connecting to another agent sweeps the idle connection
+        connectionManager.connect(JmxConnectors.PLATFORM, "127.0.0.2", properties, null).close();
+        Assert.assertEquals(1, connectionManager.size());
+    }
+}
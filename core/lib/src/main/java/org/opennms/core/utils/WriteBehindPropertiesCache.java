@@ -0,0 +1,424 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded, write-behind variant of {@link PropertiesCache} for the many
+ * small metadata files kept next to RRD data (<code>strings.properties</code>,
+ * <code>ds.properties</code>).
+ *
+ * <ul>
+ * <li>Entries are spread over shards by the hash of their canonical path,
+ * so lookups for different files do not contend on one lock.</li>
+ * <li>Each shard keeps at most <code>maxEntries / shards</code> files in
+ * memory and evicts the least recently used ones.</li>
+ * <li>Updates to an existing file are applied in memory and written back by a
+ * background thread, so several changes to the same file within the write
+ * delay cost a single write.  A file that does not exist yet is written
+ * immediately, so new resources are visible on disk right away.</li>
+ * <li>Readers going through the cache always see their own writes, including
+ * writes that are still queued for files that were evicted.</li>
+ * </ul>
+ *
+ * <p>The size and delay can be tuned with the
+ * <code>org.opennms.utils.propertiesCache.maxEntries</code> and
+ * <code>org.opennms.utils.propertiesCache.writeDelay</code> (milliseconds)
+ * system properties.  {@link PropertiesCache#CHECK_LAST_MODIFY_STRING} is
+ * honoured for files without pending changes.</p>
+ */
+public class WriteBehindPropertiesCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindPropertiesCache.class);
+
+    public static final String MAX_ENTRIES_PROPERTY = "org.opennms.utils.propertiesCache.maxEntries";
+
+    public static final String WRITE_DELAY_PROPERTY = "org.opennms.utils.propertiesCache.writeDelay";
+
+    private static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    private static final long DEFAULT_WRITE_DELAY = 5000L;
+
+    private static final int SHARDS = 16;
+
+    private class PropertiesHolder {
+        private final File m_file;
+        private final String m_key;
+        private final Lock m_lock = new ReentrantLock();
+        private Properties m_properties;
+        private long m_lastModify = 0;
+        private boolean m_dirty = false;
+        private final boolean m_checkLastModify = Boolean.getBoolean(PropertiesCache.CHECK_LAST_MODIFY_STRING);
+
+        PropertiesHolder(final File file, final String key) {
+            m_file = file;
+            m_key = key;
+        }
+
+        private Properties read() throws IOException {
+            if (!m_file.canRead()) {
+                return null;
+            }
+            try (InputStream in = new FileInputStream(m_file)) {
+                final Properties prop = new Properties();
+                prop.load(in);
+                m_lastModify = m_file.lastModified();
+                return prop;
+            }
+        }
+
+        /**
+         * Write the current properties to disk. Must be called with the lock held.
+         *
+         * @param createParents whether missing parent directories may be created;
+         *     queued writes do not re-create resource directories that were
+         *     deleted in the meantime
+         */
+        private void write(final boolean createParents) throws IOException {
+            final File parent = m_file.getParentFile();
+            if (!parent.isDirectory()) {
+                if (!createParents) {
+                    LOG.debug("Not writing {}: the resource directory no longer exists", m_file);
+                    m_dirty = false;
+                    return;
+                }
+                if (!parent.mkdirs() && !parent.exists()) {
+                    LOG.warn("Could not make directory: {}", parent.getPath());
+                }
+            }
+            // write to a temporary file first so readers never see a partial file
+            final File temp = new File(parent, "." + m_file.getName() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temp)) {
+                m_properties.store(out, null);
+            }
+            Files.move(temp.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            m_lastModify = m_file.lastModified();
+            m_dirty = false;
+        }
+
+        private void load(final boolean createIfMissing) throws IOException {
+            if (m_properties == null) {
+                m_properties = read();
+                if (m_properties == null && createIfMissing) {
+                    m_properties = new Properties();
+                }
+            } else if (!m_dirty && m_checkLastModify && m_file.canRead() && m_lastModify != m_file.lastModified()) {
+                m_properties = read();
+            }
+        }
+
+        private void changed() throws IOException {
+            if (m_file.exists()) {
+                if (!m_dirty) {
+                    m_dirty = true;
+                    m_pending.put(m_key, this);
+                }
+            } else {
+                write(true);
+            }
+        }
+
+        Properties get() throws IOException {
+            m_lock.lock();
+            try {
+                load(true);
+                return m_properties;
+            } finally {
+                m_lock.unlock();
+            }
+        }
+
+        Properties find() throws IOException {
+            m_lock.lock();
+            try {
+                load(false);
+                return m_properties;
+            } finally {
+                m_lock.unlock();
+            }
+        }
+
+        String getProperty(final String key) throws IOException {
+            return get().getProperty(key);
+        }
+
+        void put(final Properties properties) throws IOException {
+            m_lock.lock();
+            try {
+                m_properties = properties;
+                write(true);
+                m_pending.remove(m_key, this);
+            } finally {
+                m_lock.unlock();
+            }
+        }
+
+        void update(final Map<String, String> props) throws IOException {
+            m_lock.lock();
+            try {
+                load(true);
+                boolean save = false;
+                for (final Entry<String, String> e : props.entrySet()) {
+                    if (!e.getValue().equals(m_properties.get(e.getKey()))) {
+                        m_properties.put(e.getKey(), e.getValue());
+                        save = true;
+                    }
+                }
+                if (save) {
+                    changed();
+                }
+            } finally {
+                m_lock.unlock();
+            }
+        }
+
+        void setProperty(final String key, final String value) throws IOException {
+            m_lock.lock();
+            try {
+                load(true);
+                if (!value.equals(m_properties.get(key))) {
+                    m_properties.put(key, value);
+                    changed();
+                }
+            } finally {
+                m_lock.unlock();
+            }
+        }
+
+        boolean flush() {
+            m_lock.lock();
+            try {
+                if (m_dirty) {
+                    write(false);
+                }
+                return true;
+            } catch (final IOException e) {
+                LOG.warn("Unable to write {}, will retry", m_file, e);
+                return false;
+            } finally {
+                m_lock.unlock();
+            }
+        }
+    }
+
+    private static class Shard extends LinkedHashMap<String, PropertiesHolder> {
+        private static final long serialVersionUID = 1L;
+        private final int m_maxEntries;
+
+        Shard(final int maxEntries) {
+            super(16, 0.75f, true);
+            m_maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Entry<String, PropertiesHolder> eldest) {
+            // dirty holders stay reachable through the pending map until written
+            return size() > m_maxEntries;
+        }
+    }
+
+    private final Shard[] m_shards = new Shard[SHARDS];
+    private final ConcurrentMap<String, PropertiesHolder> m_pending = new ConcurrentHashMap<String, PropertiesHolder>();
+    private final ScheduledExecutorService m_writer;
+
+    /**
+     * <p>Constructor for WriteBehindPropertiesCache using the system property defaults.</p>
+     */
+    public WriteBehindPropertiesCache() {
+        this(Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES), Long.getLong(WRITE_DELAY_PROPERTY, DEFAULT_WRITE_DELAY));
+    }
+
+    /**
+     * <p>Constructor for WriteBehindPropertiesCache.</p>
+     *
+     * @param maxEntries the maximum number of files kept in memory
+     * @param writeDelay milliseconds between write-behind passes
+     */
+    public WriteBehindPropertiesCache(final int maxEntries, final long writeDelay) {
+        for (int i = 0; i < SHARDS; i++) {
+            m_shards[i] = new Shard(Math.max(1, maxEntries / SHARDS));
+        }
+        m_writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "PropertiesCache-Writer");
+            t.setDaemon(true);
+            return t;
+        });
+        m_writer.scheduleWithFixedDelay(this::flush, writeDelay, writeDelay, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "PropertiesCache-Shutdown"));
+    }
+
+    private PropertiesHolder getHolder(final File propFile) throws IOException {
+        final String key = propFile.getCanonicalPath();
+        // shard by the key, so every path naming the same file finds the same holder
+        final Shard shard = m_shards[key.hashCode() & (SHARDS - 1)];
+        synchronized (shard) {
+            PropertiesHolder holder = shard.get(key);
+            if (holder == null) {
+                // an evicted holder with unwritten changes is still authoritative
+                holder = m_pending.get(key);
+                if (holder == null) {
+                    holder = new PropertiesHolder(propFile, key);
+                }
+                shard.put(key, holder);
+            }
+            return holder;
+        }
+    }
+
+    /**
+     * Write all pending changes to disk.  Called periodically by the
+     * background writer and at shutdown.
+     */
+    public void flush() {
+        final List<PropertiesHolder> pending = new ArrayList<PropertiesHolder>(m_pending.values());
+        int written = 0;
+        for (final PropertiesHolder holder : pending) {
+            if (holder.flush()) {
+                m_pending.remove(holder.m_key, holder);
+                written++;
+            }
+        }
+        if (written > 0) {
+            LOG.debug("flush: wrote {} properties files", written);
+        }
+    }
+
+    /**
+     * Write pending changes and drop all cached files.
+     */
+    public void clear() {
+        flush();
+        for (final Shard shard : m_shards) {
+            synchronized (shard) {
+                shard.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the current properties object from the cache, loading it in memory.
+     * An empty object is returned if the file does not exist.
+     *
+     * @param propFile a {@link java.io.File} object.
+     * @throws java.io.IOException if any.
+     * @return a {@link java.util.Properties} object.
+     */
+    public Properties getProperties(final File propFile) throws IOException {
+        return getHolder(propFile).get();
+    }
+
+    /**
+     * <p>findProperties</p>
+     *
+     * @param propFile a {@link java.io.File} object.
+     * @return a {@link java.util.Properties} object, or null if the file does not exist
+     * @throws java.io.IOException if any.
+     */
+    public Properties findProperties(final File propFile) throws IOException {
+        return getHolder(propFile).find();
+    }
+
+    /**
+     * Replace the contents of a file.  The file is written immediately.
+     *
+     * @param propFile a {@link java.io.File} object.
+     * @param properties a {@link java.util.Properties} object.
+     * @throws java.io.IOException if any.
+     */
+    public void saveProperties(final File propFile, final Properties properties) throws IOException {
+        getHolder(propFile).put(properties);
+    }
+
+    /**
+     * <p>updateProperties</p>
+     *
+     * @param propFile a {@link java.io.File} object.
+     * @param props a {@link java.util.Map} object.
+     * @throws java.io.IOException if any.
+     */
+    public void updateProperties(final File propFile, final Map<String, String> props) throws IOException {
+        if (props == null) return;
+        getHolder(propFile).update(props);
+    }
+
+    /**
+     * <p>setProperty</p>
+     *
+     * @param propFile a {@link java.io.File} object.
+     * @param key a {@link java.lang.String} object.
+     * @param value a {@link java.lang.String} object.
+     * @throws java.io.IOException if any.
+     */
+    public void setProperty(final File propFile, final String key, final String value) throws IOException {
+        getHolder(propFile).setProperty(key, value);
+    }
+
+    /**
+     * <p>getProperty</p>
+     *
+     * @param propFile a {@link java.io.File} object.
+     * @param key a {@link java.lang.String} object.
+     * @return a {@link java.lang.String} object.
+     * @throws java.io.IOException if any.
+     */
+    public String getProperty(final File propFile, final String key) throws IOException {
+        return getHolder(propFile).getProperty(key);
+    }
+
+    /**
+     * @return the number of files with changes not yet written to disk
+     */
+    public int getPendingWrites() {
+        return m_pending.size();
+    }
+}
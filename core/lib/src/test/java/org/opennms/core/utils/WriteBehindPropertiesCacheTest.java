@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteBehindPropertiesCacheTest {
+    private File m_dir;
+
+    @Before
+    public void setUp() throws Exception {
+        m_dir = Files.createTempDirectory("WriteBehindPropertiesCacheTest").toFile();
+        m_dir.deleteOnExit();
+    }
+
+    private static Properties load(final File file) throws IOException {
+        final Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        }
+        return props;
+    }
+
+    @Test
+    public void testNewFileIsWrittenImmediately() throws Exception {
+        final WriteBehindPropertiesCache cache = new WriteBehindPropertiesCache(100, 60000);
+        final File file = new File(m_dir, "node/strings.properties");
+        cache.setProperty(file, "year", "2015");
+        assertTrue(file.exists());
+        assertEquals("2015", load(file).getProperty("year"));
+        assertEquals(0, cache.getPendingWrites());
+    }
+
+    @Test
+    public void testUpdatesAreCoalesced() throws Exception {
+        final WriteBehindPropertiesCache cache = new WriteBehindPropertiesCache(100, 60000);
+        final File file = new File(m_dir, "node/strings.properties");
+        cache.setProperty(file, "value", "1");
+        cache.setProperty(file, "value", "2");
+        cache.updateProperties(file, Collections.singletonMap("other", "3"));
+
+        // readers see their writes before the file is written
+        assertEquals("2", cache.getProperty(file, "value"));
+        assertEquals("1", load(file).getProperty("value"));
+        assertEquals(1, cache.getPendingWrites());
+
+        cache.flush();
+        assertEquals(0, cache.getPendingWrites());
+        final Properties props = load(file);
+        assertEquals("2", props.getProperty("value"));
+        assertEquals("3", props.getProperty("other"));
+    }
+
+    @Test
+    public void testEvictedChangesAreNotLost() throws Exception {
+        final WriteBehindPropertiesCache cache = new WriteBehindPropertiesCache(16, 60000);
+        final File file = new File(m_dir, "node/strings.properties");
+        cache.setProperty(file, "value", "1");
+        cache.setProperty(file, "value", "2");
+        for (int i = 0; i < 100; i++) {
+            cache.setProperty(new File(m_dir, "other" + i + "/strings.properties"), "value", Integer.toString(i));
+        }
+        assertEquals("2", cache.getProperty(file, "value"));
+        cache.flush();
+        assertEquals("2", load(file).getProperty("value"));
+    }
+
+    @Test
+    public void testNonCanonicalPathsShareTheEntry() throws Exception {
+        final WriteBehindPropertiesCache cache = new WriteBehindPropertiesCache(100, 60000);
+        final File file = new File(m_dir, "node/strings.properties");
+        final File alias = new File(m_dir, "node/../node/./strings.properties");
+        cache.setProperty(file, "value", "1");
+        cache.setProperty(alias, "value", "2");
+        cache.setProperty(file, "other", "3");
+
+        assertEquals("2", cache.getProperty(file, "value"));
+        assertEquals("3", cache.getProperty(alias, "other"));
+        cache.flush();
+        final Properties props = load(file);
+        assertEquals("2", props.getProperty("value"));
+        assertEquals("3", props.getProperty("other"));
+    }
+
+    @Test
+    public void testDeletedDirectoryIsNotRecreated() throws Exception {
+        final WriteBehindPropertiesCache cache = new WriteBehindPropertiesCache(100, 60000);
+        final File dir = new File(m_dir, "deleted");
+        final File file = new File(dir, "ds.properties");
+        cache.setProperty(file, "ds", "group");
+        cache.setProperty(file, "ds", "other");
+        assertTrue(file.delete());
+        assertTrue(dir.delete());
+        cache.flush();
+        assertFalse(dir.exists());
+    }
+
+    @Test
+    public void testFindMissingFile() throws Exception {
+        final WriteBehindPropertiesCache cache = new WriteBehindPropertiesCache(100, 60000);
+        assertNull(cache.findProperties(new File(m_dir, "missing/strings.properties")));
+        assertEquals(0, cache.getProperties(new File(m_dir, "missing/strings.properties")).size());
+    }
+}
@@ -0,0 +1,402 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.xml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.xml.sax.InputSource;
+
+/**
+ * Loads JAXB configuration files through a directory of compiled snapshots.
+ *
+ * The first time a file is loaded it is unmarshalled (and validated) by
+ * {@link JaxbUtils} as usual, and the resulting object graph is serialized to
+ * a snapshot along with a checksum of the XML it came from. As long as the
+ * file's contents are unchanged, later loads, typically on the next restart,
+ * deserialize the snapshot instead of parsing and validating the XML again.
+ * Each snapshot also records a fingerprint of the configuration classes: the
+ * package's implementation version and the names and types of the
+ * serialized fields of every class in the package reachable from the
+ * configuration class. The model classes keep fixed serialVersionUIDs, so
+ * this is what keeps a snapshot written before an upgrade from being
+ * deserialized into changed classes with missing fields. Snapshots that are
+ * missing, stale, from another version of the classes or otherwise
+ * unreadable are silently replaced.
+ *
+ * Only serializable configuration classes are cached, and a snapshot may
+ * only contain classes from the configuration class's own package and the
+ * core JDK collections.
+ *
+ * The default cache is enabled by pointing the
+ * <code>org.opennms.core.xml.compiledConfigCache.dir</code> system property
+ * at a writable directory; without it, loads go straight to JaxbUtils.
+ */
+public class CompiledConfigCache {
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledConfigCache.class);
+
+    public static final String DIRECTORY_PROPERTY = "org.opennms.core.xml.compiledConfigCache.dir";
+
+    private static final int MAGIC = 0x4f4e4343;
+
+    private static final int FORMAT_VERSION = 2;
+
+    private static final CompiledConfigCache DISABLED = new CompiledConfigCache(null);
+
+    private static final ConcurrentMap<Class<?>, String> s_fingerprints = new ConcurrentHashMap<Class<?>, String>();
+
+    private static CompiledConfigCache s_default;
+
+    private static String s_defaultDirectory;
+
+    private final File m_directory;
+
+    private final AtomicLong m_hits = new AtomicLong();
+
+    private final AtomicLong m_misses = new AtomicLong();
+
+    /**
+     * Creates a cache keeping its snapshots in the given directory, or a
+     * disabled cache if the directory is null.
+     */
+    public CompiledConfigCache(final File directory) {
+        m_directory = directory;
+    }
+
+    /**
+     * Returns the cache configured by the
+     * <code>org.opennms.core.xml.compiledConfigCache.dir</code> system
+     * property, which is disabled if the property is not set.
+     */
+    public static synchronized CompiledConfigCache getDefault() {
+        final String directory = System.getProperty(DIRECTORY_PROPERTY, "").trim();
+        if (s_default == null || !directory.equals(s_defaultDirectory)) {
+            s_defaultDirectory = directory;
+            s_default = "".equals(directory) ? DISABLED : new CompiledConfigCache(new File(directory));
+        }
+        return s_default;
+    }
+
+    public boolean isEnabled() {
+        return m_directory != null;
+    }
+
+    public File getDirectory() {
+        return m_directory;
+    }
+
+    /**
+     * The number of loads served from a snapshot.
+     */
+    public long getHits() {
+        return m_hits.get();
+    }
+
+    /**
+     * The number of loads that had to unmarshal the XML.
+     */
+    public long getMisses() {
+        return m_misses.get();
+    }
+
+    /**
+     * Loads the configuration in the resource, from its snapshot if the
+     * resource hasn't changed since the snapshot was written.
+     */
+    public <T> T unmarshal(final Class<T> clazz, final Resource resource) {
+        if (m_directory == null || !Serializable.class.isAssignableFrom(clazz)) {
+            return JaxbUtils.unmarshal(clazz, resource);
+        }
+
+        final byte[] contents;
+        InputStream in = null;
+        try {
+            in = resource.getInputStream();
+            contents = IOUtils.toByteArray(in);
+        } catch (final IOException e) {
+            throw new MarshallingExceptionTranslator().translate("getting a configuration resource from spring", e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+
+        final String checksum = checksum(contents);
+        final File snapshot = getSnapshotFile(clazz, resource);
+
+        final String fingerprint = getFingerprint(clazz);
+        final T cached = readSnapshot(clazz, snapshot, fingerprint, checksum);
+        if (cached != null) {
+            LOG.debug("Loaded {} from compiled snapshot {}", resource, snapshot);
+            m_hits.incrementAndGet();
+            return cached;
+        }
+
+        m_misses.incrementAndGet();
+        final T config = JaxbUtils.unmarshal(clazz, new InputSource(new ByteArrayInputStream(contents)));
+        writeSnapshot(snapshot, fingerprint, checksum, (Serializable) config);
+        return config;
+    }
+
+    /**
+     * Removes all snapshots.
+     */
+    public void clear() {
+        if (m_directory == null) {
+            return;
+        }
+        final File[] files = m_directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            if (file.getName().endsWith(".snapshot") && !file.delete()) {
+                LOG.warn("Unable to delete compiled configuration snapshot {}", file);
+            }
+        }
+    }
+
+    private File getSnapshotFile(final Class<?> clazz, final Resource resource) {
+        String location;
+        try {
+            location = resource.getURL().toExternalForm();
+        } catch (final IOException e) {
+            location = resource.getDescription();
+        }
+        return new File(m_directory, clazz.getSimpleName() + "-" + checksum(location.getBytes()) + ".snapshot");
+    }
+
+    private <T> T readSnapshot(final Class<T> clazz, final File snapshot, final String fingerprint, final String checksum) {
+        if (!snapshot.canRead()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot), 64 * 1024));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !clazz.getName().equals(in.readUTF()) || !fingerprint.equals(in.readUTF()) || !checksum.equals(in.readUTF())) {
+                LOG.debug("Compiled snapshot {} is stale", snapshot);
+                return null;
+            }
+
+            final Object config = new SnapshotInputStream(in, clazz).readObject();
+            return clazz.cast(config);
+        } catch (final Exception e) {
+            LOG.info("Ignoring unreadable compiled snapshot {}: {}", snapshot, e.getMessage());
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private void writeSnapshot(final File snapshot, final String fingerprint, final String checksum, final Serializable config) {
+        if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+            LOG.warn("Unable to create the compiled configuration directory {}", m_directory);
+            return;
+        }
+
+        File temp = null;
+        DataOutputStream out = null;
+        try {
+            temp = File.createTempFile(snapshot.getName(), ".tmp", m_directory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(config.getClass().getName());
+            out.writeUTF(fingerprint);
+            out.writeUTF(checksum);
+
+            final ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(config);
+            oos.close();
+            out = null;
+
+            // readers only ever see a complete snapshot
+            if (!temp.renameTo(snapshot) && !(snapshot.delete() && temp.renameTo(snapshot))) {
+                throw new IOException("unable to rename " + temp + " to " + snapshot);
+            }
+            temp = null;
+        } catch (final IOException e) {
+            LOG.warn("Unable to write compiled configuration snapshot {}", snapshot, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (temp != null && !temp.delete()) {
+                LOG.debug("Unable to delete {}", temp);
+            }
+        }
+    }
+
+    /**
+     * Returns a checksum of the package's implementation version and the
+     * serialized fields of the configuration class and of every class in
+     * its package reachable through those fields, so any change to the
+     * model's structure invalidates existing snapshots.
+     */
+    static String getFingerprint(final Class<?> clazz) {
+        String fingerprint = s_fingerprints.get(clazz);
+        if (fingerprint == null) {
+            final String packagePrefix = clazz.getPackage() == null ? "" : clazz.getPackage().getName() + ".";
+            final StringBuilder structure = new StringBuilder();
+            structure.append(clazz.getPackage() == null ? null : clazz.getPackage().getImplementationVersion()).append('\n');
+
+            final Set<Class<?>> visited = new HashSet<Class<?>>();
+            final List<Class<?>> pending = new ArrayList<Class<?>>();
+            pending.add(clazz);
+            while (!pending.isEmpty()) {
+                final Class<?> current = pending.remove(0);
+                if (!visited.add(current)) {
+                    continue;
+                }
+                structure.append(current.getName()).append('{');
+                for (Class<?> c = current; c != null && c.getName().startsWith(packagePrefix); c = c.getSuperclass()) {
+                    final List<Field> fields = new ArrayList<Field>();
+                    Collections.addAll(fields, c.getDeclaredFields());
+                    Collections.sort(fields, new Comparator<Field>() {
+                        @Override
+                        public int compare(final Field a, final Field b) {
+                            return a.getName().compareTo(b.getName());
+                        }
+                    });
+                    for (final Field field : fields) {
+                        if ((field.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) != 0) {
+                            continue;
+                        }
+                        structure.append(c.getSimpleName()).append('.').append(field.getName()).append(':').append(field.getGenericType().toString()).append(';');
+                        collectModelClasses(field.getGenericType(), packagePrefix, pending);
+                    }
+                }
+                structure.append("}\n");
+            }
+            fingerprint = checksum(structure.toString().getBytes());
+            s_fingerprints.putIfAbsent(clazz, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    private static void collectModelClasses(final Type type, final String packagePrefix, final List<Class<?>> classes) {
+        if (type instanceof Class) {
+            Class<?> c = (Class<?>) type;
+            while (c.isArray()) {
+                c = c.getComponentType();
+            }
+            if (c.getName().startsWith(packagePrefix)) {
+                classes.add(c);
+            }
+        } else if (type instanceof ParameterizedType) {
+            collectModelClasses(((ParameterizedType) type).getRawType(), packagePrefix, classes);
+            for (final Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                collectModelClasses(argument, packagePrefix, classes);
+            }
+        } else if (type instanceof GenericArrayType) {
+            collectModelClasses(((GenericArrayType) type).getGenericComponentType(), packagePrefix, classes);
+        } else if (type instanceof WildcardType) {
+            for (final Type bound : ((WildcardType) type).getUpperBounds()) {
+                collectModelClasses(bound, packagePrefix, classes);
+            }
+        }
+    }
+
+    private static String checksum(final byte[] contents) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(contents);
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * Only resolves the classes a configuration snapshot can legitimately
+     * contain.
+     */
+    private static final class SnapshotInputStream extends ObjectInputStream {
+        private final String m_package;
+        private final ClassLoader m_classLoader;
+
+        SnapshotInputStream(final InputStream in, final Class<?> clazz) throws IOException {
+            super(in);
+            m_package = clazz.getPackage() == null ? "" : clazz.getPackage().getName() + ".";
+            m_classLoader = clazz.getClassLoader();
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            while (name.startsWith("[")) {
+                name = name.substring(1);
+            }
+            if (name.length() == 1 || (name.startsWith("L") && name.endsWith(";"))) {
+                name = name.length() == 1 ? "" : name.substring(1, name.length() - 1);
+            }
+            if (name.length() > 0 && !name.startsWith(m_package) && !name.startsWith("java.lang.") && !name.startsWith("java.util.")) {
+                throw new InvalidClassException(desc.getName(), "not allowed in a configuration snapshot");
+            }
+            if (name.startsWith(m_package) && m_classLoader != null) {
+                return Class.forName(desc.getName(), false, m_classLoader);
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
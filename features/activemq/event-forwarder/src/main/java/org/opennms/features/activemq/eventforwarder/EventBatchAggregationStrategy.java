@@ -0,0 +1,44 @@
+package org.opennms.features.activemq.eventforwarder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.processor.aggregate.AggregationStrategy;
+import org.opennms.netmgt.events.api.support.EventBatch;
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Collects forwarded events into an {@link EventBatch}, keeping the
+ * requisition headers of each event with it.
+ */
+public class EventBatchAggregationStrategy implements AggregationStrategy {
+
+	@Override
+	public Exchange aggregate(final Exchange oldExchange, final Exchange newExchange) {
+		final Event event = newExchange.getIn().getBody(Event.class);
+
+		final Map<String,String> headers = new LinkedHashMap<String,String>(4);
+		copyHeader(newExchange, ForeignSourceForeignIdHeaderProcessor.EVENT_HEADER_FOREIGNSOURCE, headers);
+		copyHeader(newExchange, ForeignSourceForeignIdHeaderProcessor.EVENT_HEADER_FOREIGNID, headers);
+
+		if (oldExchange == null) {
+			final EventBatch batch = new EventBatch();
+			batch.add(event, headers);
+			newExchange.getIn().setBody(batch, EventBatch.class);
+			newExchange.getIn().removeHeader(ForeignSourceForeignIdHeaderProcessor.EVENT_HEADER_FOREIGNSOURCE);
+			newExchange.getIn().removeHeader(ForeignSourceForeignIdHeaderProcessor.EVENT_HEADER_FOREIGNID);
+			return newExchange;
+		}
+
+		oldExchange.getIn().getBody(EventBatch.class).add(event, headers);
+		return oldExchange;
+	}
+
+	private static void copyHeader(final Exchange exchange, final String name, final Map<String,String> headers) {
+		final String value = exchange.getIn().getHeader(name, String.class);
+		if (value != null) {
+			headers.put(name, value);
+		}
+	}
+}
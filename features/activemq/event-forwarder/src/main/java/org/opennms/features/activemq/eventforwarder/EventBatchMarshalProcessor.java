@@ -0,0 +1,23 @@
+package org.opennms.features.activemq.eventforwarder;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.opennms.netmgt.events.api.support.EventBatch;
+import org.opennms.netmgt.events.api.support.EventBatchCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Encodes an {@link EventBatch} with the binary {@link EventBatchCodec}.
+ */
+public class EventBatchMarshalProcessor implements Processor {
+	public static final Logger LOG = LoggerFactory.getLogger(EventBatchMarshalProcessor.class);
+
+	@Override
+	public void process(final Exchange exchange) throws Exception {
+		final EventBatch batch = exchange.getIn().getBody(EventBatch.class);
+		final byte[] data = EventBatchCodec.encode(batch);
+		LOG.debug("Encoded {} events into {} bytes", batch.size(), data.length);
+		exchange.getIn().setBody(data, byte[].class);
+	}
+}
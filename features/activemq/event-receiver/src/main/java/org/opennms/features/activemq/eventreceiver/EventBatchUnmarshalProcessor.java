@@ -0,0 +1,23 @@
+package org.opennms.features.activemq.eventreceiver;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.opennms.netmgt.events.api.support.EventBatch;
+import org.opennms.netmgt.events.api.support.EventBatchCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes an {@link EventBatch} written by the binary {@link EventBatchCodec}.
+ */
+public class EventBatchUnmarshalProcessor implements Processor {
+	public static final Logger LOG = LoggerFactory.getLogger(EventBatchUnmarshalProcessor.class);
+
+	@Override
+	public void process(final Exchange exchange) throws Exception {
+		final byte[] data = exchange.getIn().getBody(byte[].class);
+		final EventBatch batch = EventBatchCodec.decode(data);
+		LOG.debug("Decoded {} events from {} bytes", batch.size(), data.length);
+		exchange.getIn().setBody(batch, EventBatch.class);
+	}
+}
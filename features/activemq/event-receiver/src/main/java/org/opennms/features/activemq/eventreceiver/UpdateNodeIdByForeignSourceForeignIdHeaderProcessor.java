@@ -1,11 +1,16 @@
 package org.opennms.features.activemq.eventreceiver;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.camel.Endpoint;
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.events.api.support.EventBatch;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,12 +40,53 @@ public class UpdateNodeIdByForeignSourceForeignIdHeaderProcessor implements Proc
 		final Event event = exchange.getIn().getBody(Event.class);
 		
 		String from = exchange.getIn().getHeader(EVENT_HEADER_LOCATION, String.class);
+		String foreignSource = exchange.getIn().getHeader(EVENT_HEADER_FOREIGNSOURCE, String.class);
+		String foreignId = exchange.getIn().getHeader(EVENT_HEADER_FOREIGNID, String.class);
 
-		if (event.getNodeid() > 0) {
-			String foreignSource = exchange.getIn().getHeader(EVENT_HEADER_FOREIGNSOURCE, String.class);
-			String foreignId = exchange.getIn().getHeader(EVENT_HEADER_FOREIGNID, String.class);
+		if (!updateNodeId(event, from, foreignSource, foreignId, new HashMap<String,OnmsNode>())) {
+			// Halt the route if we cannot translate the node ID
+			exchange.setProperty(Exchange.ROUTE_STOP, Boolean.TRUE);
+		}
+	}
 
-			OnmsNode node = nodeDao.findByForeignId(foreignSource, foreignId);
+	/**
+	 * Translates the node IDs of all events in an {@link EventBatch} body
+	 * and replaces the body with a {@link Log} of the events that could be
+	 * translated.
+	 */
+	public void processBatch(final Exchange exchange) throws Exception {
+		final EventBatch batch = exchange.getIn().getBody(EventBatch.class);
+
+		String from = exchange.getIn().getHeader(EVENT_HEADER_LOCATION, String.class);
+
+		// events of one batch often concern the same few nodes
+		final Map<String,OnmsNode> nodes = new HashMap<String,OnmsNode>();
+		final Log log = new Log();
+		for (int i = 0; i < batch.size(); i++) {
+			final Event event = batch.getEvent(i);
+			final Map<String,String> headers = batch.getHeaders(i);
+			if (updateNodeId(event, from, headers.get(EVENT_HEADER_FOREIGNSOURCE), headers.get(EVENT_HEADER_FOREIGNID), nodes)) {
+				log.addEvent(event);
+			}
+		}
+
+		if (log.getEvents() == null) {
+			exchange.setProperty(Exchange.ROUTE_STOP, Boolean.TRUE);
+		} else {
+			exchange.getIn().setBody(log, Log.class);
+		}
+	}
+
+	private boolean updateNodeId(final Event event, final String from, final String foreignSource, final String foreignId, final Map<String,OnmsNode> nodes) {
+		if (event.getNodeid() > 0) {
+			final String key = foreignSource + ":" + foreignId;
+			OnmsNode node = nodes.get(key);
+			if (node == null) {
+				node = nodeDao.findByForeignId(foreignSource, foreignId);
+				if (node != null) {
+					nodes.put(key, node);
+				}
+			}
 
 			if (node != null && node.getId() != null) {
 				event.setNodeid(node.getId().longValue());
@@ -48,9 +94,9 @@ public class UpdateNodeIdByForeignSourceForeignIdHeaderProcessor implements Proc
 				event.setSource("Endpoint="+from+":"+event.getSource());
 			} else {
 				LOG.warn("Could not find node {}/{} in the database, cannot update node ID to local value; discarding event", foreignSource, foreignId);
-				// Halt the route if we cannot translate the node ID
-				exchange.setProperty(Exchange.ROUTE_STOP, Boolean.TRUE);
+				return false;
 			}
 		}
+		return true;
 	}
 }
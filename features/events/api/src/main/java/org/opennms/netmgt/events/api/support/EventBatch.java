@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.events.api.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+
+/**
+ * A batch of events as it travels between two OpenNMS systems. Each event
+ * may carry a few string headers that only make sense to the receiving
+ * side, like the requisition identity of its node.
+ *
+ * @see EventBatchCodec
+ */
+public class EventBatch {
+    private final List<Event> m_events = new ArrayList<Event>();
+    private final List<Map<String, String>> m_headers = new ArrayList<Map<String, String>>();
+
+    public void add(final Event event) {
+        add(event, Collections.<String, String>emptyMap());
+    }
+
+    public void add(final Event event, final Map<String, String> headers) {
+        m_events.add(event);
+        m_headers.add(headers == null ? Collections.<String, String>emptyMap() : headers);
+    }
+
+    public int size() {
+        return m_events.size();
+    }
+
+    public List<Event> getEvents() {
+        return Collections.unmodifiableList(m_events);
+    }
+
+    public Event getEvent(final int index) {
+        return m_events.get(index);
+    }
+
+    public Map<String, String> getHeaders(final int index) {
+        return m_headers.get(index);
+    }
+
+    /**
+     * @return a {@link Log} holding the events of this batch, in order
+     */
+    public Log toLog() {
+        final Log log = new Log();
+        for (final Event event : m_events) {
+            log.addEvent(event);
+        }
+        return log;
+    }
+
+    @Override
+    public String toString() {
+        return "EventBatch[" + m_events.size() + " events]";
+    }
+}
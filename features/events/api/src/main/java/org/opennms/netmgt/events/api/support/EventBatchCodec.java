@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.events.api.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Logmsg;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.opennms.netmgt.xml.event.UpdateField;
+import org.opennms.netmgt.xml.event.Value;
+
+/**
+ * Compact binary encoding of an {@link EventBatch}.
+ *
+ * <p>A batch starts with the schema version and the number of events,
+ * followed by one length-prefixed record per event. A record holds the
+ * event's headers and then its fields in a fixed order; events using
+ * anything beyond the fields that are commonly forwarded (masks,
+ * auto-actions, trouble tickets and the like) are stored as event XML
+ * instead. Readers skip whatever is left of a record after the fields
+ * they know, so fields can be appended in later versions.</p>
+ */
+public abstract class EventBatchCodec {
+
+    public static final int VERSION = 1;
+
+    private static final byte RECORD_BINARY = 0;
+    private static final byte RECORD_XML = 1;
+
+    public static byte[] encode(final EventBatch batch) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * batch.size() + 8);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeInt(batch.size());
+
+        final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(512);
+        final DataOutputStream record = new DataOutputStream(recordBytes);
+        for (int i = 0; i < batch.size(); i++) {
+            recordBytes.reset();
+            writeRecord(record, batch.getEvent(i), batch.getHeaders(i));
+            record.flush();
+            out.writeInt(recordBytes.size());
+            recordBytes.writeTo(out);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static EventBatch decode(final byte[] data) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        final int version = in.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Unsupported event batch version " + version + ", expected at most " + VERSION);
+        }
+        final int count = in.readInt();
+        final EventBatch batch = new EventBatch();
+        for (int i = 0; i < count; i++) {
+            final byte[] record = new byte[in.readInt()];
+            in.readFully(record);
+            readRecord(new DataInputStream(new ByteArrayInputStream(record)), batch);
+        }
+        return batch;
+    }
+
+    private static void writeRecord(final DataOutputStream out, final Event event, final Map<String, String> headers) throws IOException {
+        final boolean binary = isBinaryEncodable(event);
+        out.writeByte(binary ? RECORD_BINARY : RECORD_XML);
+
+        out.writeInt(headers.size());
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            writeString(out, header.getKey());
+            writeString(out, header.getValue());
+        }
+
+        if (!binary) {
+            writeString(out, JaxbUtils.marshal(event));
+            return;
+        }
+
+        writeString(out, event.getUuid());
+        writeInteger(out, event.getDbid());
+        writeString(out, event.getDistPoller());
+        writeDate(out, event.getCreationTime());
+        writeString(out, event.getMasterStation());
+        writeString(out, event.getUei());
+        writeString(out, event.getSource());
+        writeLong(out, event.getNodeid());
+        writeDate(out, event.getTime());
+        writeString(out, event.getHost());
+        writeString(out, event.getInterface());
+        writeString(out, event.getSnmphost());
+        writeString(out, event.getService());
+
+        final Snmp snmp = event.getSnmp();
+        out.writeBoolean(snmp != null);
+        if (snmp != null) {
+            writeString(out, snmp.getId());
+            writeString(out, snmp.getIdtext());
+            writeString(out, snmp.getVersion());
+            writeInteger(out, snmp.getSpecific());
+            writeInteger(out, snmp.getGeneric());
+            writeString(out, snmp.getCommunity());
+            writeLong(out, snmp.getTimeStamp());
+        }
+
+        final List<Parm> parms = event.getParmCollection();
+        out.writeInt(parms.size());
+        for (final Parm parm : parms) {
+            writeString(out, parm.getParmName());
+            final Value value = parm.getValue();
+            out.writeBoolean(value != null);
+            if (value != null) {
+                writeString(out, value.getContent());
+                writeString(out, value.getType());
+                writeString(out, value.getEncoding());
+            }
+        }
+
+        writeString(out, event.getDescr());
+
+        final Logmsg logmsg = event.getLogmsg();
+        out.writeBoolean(logmsg != null);
+        if (logmsg != null) {
+            writeString(out, logmsg.getContent());
+            writeBoolean(out, logmsg.getNotify());
+            writeString(out, logmsg.getDest());
+        }
+
+        writeString(out, event.getSeverity());
+        writeString(out, event.getPathoutage());
+        writeString(out, event.getOperinstruct());
+
+        final List<String> loggroups = event.getLoggroupCollection();
+        out.writeInt(loggroups == null ? 0 : loggroups.size());
+        if (loggroups != null) {
+            for (final String loggroup : loggroups) {
+                writeString(out, loggroup);
+            }
+        }
+
+        writeInteger(out, event.getIfIndex());
+        writeString(out, event.getIfAlias());
+        writeString(out, event.getMouseovertext());
+
+        final AlarmData alarmData = event.getAlarmData();
+        out.writeBoolean(alarmData != null);
+        if (alarmData != null) {
+            writeString(out, alarmData.getReductionKey());
+            writeInteger(out, alarmData.getAlarmType());
+            writeString(out, alarmData.getClearKey());
+            writeBoolean(out, alarmData.getAutoClean());
+            writeString(out, alarmData.getX733AlarmType());
+            writeInteger(out, alarmData.getX733ProbableCause());
+            final List<UpdateField> updateFields = alarmData.getUpdateFieldList();
+            out.writeInt(updateFields.size());
+            for (final UpdateField updateField : updateFields) {
+                writeString(out, updateField.getFieldName());
+                writeBoolean(out, updateField.isUpdateOnReduction());
+            }
+        }
+    }
+
+    private static void readRecord(final DataInputStream in, final EventBatch batch) throws IOException {
+        final byte type = in.readByte();
+
+        final int headerCount = in.readInt();
+        final Map<String, String> headers = new LinkedHashMap<String, String>(headerCount * 2);
+        for (int i = 0; i < headerCount; i++) {
+            headers.put(readString(in), readString(in));
+        }
+
+        if (type == RECORD_XML) {
+            batch.add(JaxbUtils.unmarshal(Event.class, readString(in)), headers);
+            return;
+        } else if (type != RECORD_BINARY) {
+            throw new IOException("Unknown event record type " + type);
+        }
+
+        final Event event = new Event();
+        event.setUuid(readString(in));
+        event.setDbid(readInteger(in));
+        event.setDistPoller(readString(in));
+        event.setCreationTime(readDate(in));
+        event.setMasterStation(readString(in));
+        event.setUei(readString(in));
+        event.setSource(readString(in));
+        event.setNodeid(readLong(in));
+        event.setTime(readDate(in));
+        event.setHost(readString(in));
+        event.setInterface(readString(in));
+        event.setSnmphost(readString(in));
+        event.setService(readString(in));
+
+        if (in.readBoolean()) {
+            final Snmp snmp = new Snmp();
+            snmp.setId(readString(in));
+            snmp.setIdtext(readString(in));
+            snmp.setVersion(readString(in));
+            snmp.setSpecific(readInteger(in));
+            snmp.setGeneric(readInteger(in));
+            snmp.setCommunity(readString(in));
+            snmp.setTimeStamp(readLong(in));
+            event.setSnmp(snmp);
+        }
+
+        final int parmCount = in.readInt();
+        final List<Parm> parms = new ArrayList<Parm>(parmCount);
+        for (int i = 0; i < parmCount; i++) {
+            final Parm parm = new Parm();
+            parm.setParmName(readString(in));
+            if (in.readBoolean()) {
+                final Value value = new Value();
+                value.setContent(readString(in));
+                value.setType(readString(in));
+                value.setEncoding(readString(in));
+                parm.setValue(value);
+            }
+            parms.add(parm);
+        }
+        event.setParmCollection(parms);
+
+        event.setDescr(readString(in));
+
+        if (in.readBoolean()) {
+            final Logmsg logmsg = new Logmsg();
+            logmsg.setContent(readString(in));
+            logmsg.setNotify(readBoolean(in));
+            logmsg.setDest(readString(in));
+            event.setLogmsg(logmsg);
+        }
+
+        event.setSeverity(readString(in));
+        event.setPathoutage(readString(in));
+        event.setOperinstruct(readString(in));
+
+        final int loggroupCount = in.readInt();
+        for (int i = 0; i < loggroupCount; i++) {
+            event.addLoggroup(readString(in));
+        }
+
+        event.setIfIndex(readInteger(in));
+        event.setIfAlias(readString(in));
+        event.setMouseovertext(readString(in));
+
+        if (in.readBoolean()) {
+            final AlarmData alarmData = new AlarmData();
+            alarmData.setReductionKey(readString(in));
+            alarmData.setAlarmType(readInteger(in));
+            alarmData.setClearKey(readString(in));
+            alarmData.setAutoClean(readBoolean(in));
+            alarmData.setX733AlarmType(readString(in));
+            alarmData.setX733ProbableCause(readInteger(in));
+            final int updateFieldCount = in.readInt();
+            final List<UpdateField> updateFields = new ArrayList<UpdateField>(updateFieldCount);
+            for (int i = 0; i < updateFieldCount; i++) {
+                final UpdateField updateField = new UpdateField();
+                updateField.setFieldName(readString(in));
+                updateField.setUpdateOnReduction(readBoolean(in));
+                updateFields.add(updateField);
+            }
+            alarmData.setUpdateField(updateFields);
+            event.setAlarmData(alarmData);
+        }
+
+        batch.add(event, headers);
+    }
+
+    /**
+     * The binary records only cover the fields that forwarded events
+     * commonly carry; anything else goes out as XML so nothing is lost.
+     */
+    private static boolean isBinaryEncodable(final Event event) {
+        return event.getMask() == null
+                && event.getCorrelation() == null
+                && event.getAutoacknowledge() == null
+                && event.getTticket() == null
+                && event.getAutoactionCount() == 0
+                && event.getOperactionCount() == 0
+                && event.getForwardCount() == 0
+                && event.getScriptCount() == 0;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInteger(final DataOutputStream out, final Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? Integer.valueOf(in.readInt()) : null;
+    }
+
+    private static void writeLong(final DataOutputStream out, final Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? Long.valueOf(in.readLong()) : null;
+    }
+
+    private static void writeDate(final DataOutputStream out, final Date value) throws IOException {
+        writeLong(out, value == null ? null : value.getTime());
+    }
+
+    private static Date readDate(final DataInputStream in) throws IOException {
+        final Long time = readLong(in);
+        return time == null ? null : new Date(time);
+    }
+
+    private static void writeBoolean(final DataOutputStream out, final Boolean value) throws IOException {
+        out.writeByte(value == null ? -1 : value ? 1 : 0);
+    }
+
+    private static Boolean readBoolean(final DataInputStream in) throws IOException {
+        final byte value = in.readByte();
+        return value < 0 ? null : Boolean.valueOf(value == 1);
+    }
+}
@@ -0,0 +1,537 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2002-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.events.api.support;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.events.api.EventProxy;
+import org.opennms.netmgt.events.api.EventProxyException;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link EventProxy} that speaks the same TCP protocol as
+ * {@link TcpEventProxy}, but keeps a small pool of persistent connections to
+ * the event daemon instead of opening one per send. Events handed in by
+ * concurrent callers are queued, and each connection's sender thread
+ * coalesces whatever is waiting (up to the batch size) into a single
+ * {@link Log} document, so events that arrive while a batch is being written
+ * go out together in the next one. With a non-zero flush interval a sender
+ * additionally lingers that long for more events before writing a batch,
+ * trading latency for fewer, larger documents.
+ *
+ * Events can be sent asynchronously with {@link #sendAsync(Event)}; the
+ * returned future completes once the batch holding the event has been written
+ * to the daemon, or completes exceptionally if it could not be. The blocking
+ * {@link #send(Event)} and {@link #send(Log)} methods wait on those futures.
+ * Note that a completed future only means the batch was handed to the
+ * socket, not that the daemon has processed it.
+ *
+ * A write that fails before any of the batch reached the socket (usually a
+ * connection the daemon dropped while it was idle) is retried once on a new
+ * connection. A write that fails part way through is not retried, since the
+ * daemon may already have received some of the events and would otherwise
+ * get them twice; the futures of that batch fail even though some of its
+ * events may have been delivered.
+ *
+ * The proxy must be {@link #close() closed} when it is no longer needed, which
+ * sends any events still queued.
+ */
+public final class PooledTcpEventProxy implements EventProxy, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledTcpEventProxy.class);
+
+    /** Constant <code>DEFAULT_CONNECTIONS=2</code> */
+    public static final int DEFAULT_CONNECTIONS = 2;
+
+    /** Constant <code>DEFAULT_FLUSH_INTERVAL=0</code>, in milliseconds */
+    public static final long DEFAULT_FLUSH_INTERVAL = 0;
+
+    /** Constant <code>DEFAULT_BATCH_SIZE=500</code> */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** Constant <code>DEFAULT_QUEUE_SIZE=10000</code> */
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    /**
+     * A connection that has been idle this long is checked for having been
+     * closed by the daemon before it is written to again.
+     */
+    private static final long IDLE_CHECK_INTERVAL = 1000;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final InetSocketAddress m_address;
+
+    private final int m_timeout;
+
+    private final long m_flushInterval;
+
+    private final int m_batchSize;
+
+    private final BlockingQueue<PendingEvent> m_queue;
+
+    private final List<Sender> m_senders;
+
+    private volatile boolean m_closed = false;
+
+    private final AtomicLong m_eventsSent = new AtomicLong();
+
+    private final AtomicLong m_batchesSent = new AtomicLong();
+
+    private final AtomicLong m_eventsFailed = new AtomicLong();
+
+    private final AtomicLong m_connects = new AtomicLong();
+
+    /**
+     * <p>Constructor for PooledTcpEventProxy.</p>
+     *
+     * @param address a {@link java.net.InetSocketAddress} object.
+     */
+    public PooledTcpEventProxy(final InetSocketAddress address) {
+        this(address, TcpEventProxy.DEFAULT_TIMEOUT, DEFAULT_CONNECTIONS, DEFAULT_FLUSH_INTERVAL, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * <p>Constructor for PooledTcpEventProxy.</p>
+     *
+     * @param address the address of the event daemon
+     * @param timeout the connect timeout, and the longest a caller waits for
+     *            room in the queue, in milliseconds; must be positive
+     * @param connections the number of persistent connections
+     * @param flushInterval how long a sender waits for more events to join a
+     *            batch, in milliseconds
+     * @param batchSize the most events sent in one {@link Log}
+     * @param queueSize the most events waiting to be sent
+     */
+    public PooledTcpEventProxy(final InetSocketAddress address, final int timeout, final int connections, final long flushInterval, final int batchSize, final int queueSize) {
+        if (timeout < 1 || connections < 1 || batchSize < 1 || queueSize < 1 || flushInterval < 0) {
+            throw new IllegalArgumentException("timeout, connections, batchSize and queueSize must be positive and flushInterval must not be negative");
+        }
+        m_address = address;
+        m_timeout = timeout;
+        m_flushInterval = flushInterval;
+        m_batchSize = batchSize;
+        m_queue = new LinkedBlockingQueue<PendingEvent>(queueSize);
+
+        m_senders = new ArrayList<Sender>(connections);
+        for (int i = 1; i <= connections; i++) {
+            final Sender sender = new Sender("PooledTcpEventProxy-Sender-" + i + " [" + address + "]");
+            m_senders.add(sender);
+            sender.start();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Blocks until the batch holding the event has been written.
+     */
+    @Override
+    public void send(final Event event) throws EventProxyException {
+        await(sendAsync(event));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The events of the log are queued individually, so they may be sent
+     * together with events from other callers. Blocks until all of them have
+     * been written.
+     */
+    @Override
+    public void send(final Log eventLog) throws EventProxyException {
+        if (eventLog.getEvents() == null || eventLog.getEvents().getEventCount() == 0) {
+            return;
+        }
+
+        final List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+        for (final Event event : eventLog.getEvents().getEventCollection()) {
+            futures.add(sendAsync(event));
+        }
+        await(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])));
+    }
+
+    /**
+     * Queues an event to be sent with the next batch.
+     *
+     * @param event the event to send
+     * @return a future that completes once the event has been written to the
+     *         event daemon, or completes exceptionally with an
+     *         {@link EventProxyException} if it could not be sent
+     */
+    public CompletableFuture<Void> sendAsync(final Event event) {
+        final PendingEvent pending = new PendingEvent(event);
+        if (m_closed) {
+            pending.fail(new EventProxyException("The event proxy for " + m_address + " has been closed"));
+            return pending.m_future;
+        }
+
+        try {
+            if (!m_queue.offer(pending, m_timeout, TimeUnit.MILLISECONDS)) {
+                pending.fail(new EventProxyException("Timed out waiting to queue an event for " + m_address + ", " + m_queue.size() + " events are waiting to be sent"));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.fail(new EventProxyException("Interrupted while queueing an event for " + m_address, e));
+        }
+        return pending.m_future;
+    }
+
+    /**
+     * Stops accepting events, sends everything still queued and closes the
+     * connections.
+     */
+    @Override
+    public void close() {
+        if (m_closed) {
+            return;
+        }
+        m_closed = true;
+
+        for (final Sender sender : m_senders) {
+            sender.interrupt();
+        }
+        for (final Sender sender : m_senders) {
+            try {
+                sender.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // anything a sender couldn't get to
+        final List<PendingEvent> remaining = new ArrayList<PendingEvent>();
+        m_queue.drainTo(remaining);
+        for (final PendingEvent pending : remaining) {
+            pending.fail(new EventProxyException("The event proxy for " + m_address + " was closed before the event could be sent"));
+        }
+    }
+
+    /**
+     * <p>getEventsSent</p>
+     *
+     * @return the number of events written to the event daemon
+     */
+    public long getEventsSent() {
+        return m_eventsSent.get();
+    }
+
+    /**
+     * <p>getBatchesSent</p>
+     *
+     * @return the number of {@link Log} documents written to the event daemon
+     */
+    public long getBatchesSent() {
+        return m_batchesSent.get();
+    }
+
+    /**
+     * <p>getEventsFailed</p>
+     *
+     * @return the number of events that could not be sent
+     */
+    public long getEventsFailed() {
+        return m_eventsFailed.get();
+    }
+
+    /**
+     * <p>getConnects</p>
+     *
+     * @return the number of connections opened to the event daemon
+     */
+    public long getConnects() {
+        return m_connects.get();
+    }
+
+    private static void await(final CompletableFuture<?> future) throws EventProxyException {
+        try {
+            future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProxyException("Interrupted while waiting for events to be sent", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof EventProxyException) {
+                throw (EventProxyException) e.getCause();
+            }
+            throw new EventProxyException("Unknown exception while sending event: " + e.getCause(), e.getCause());
+        }
+    }
+
+    private static final class PendingEvent {
+        private final Event m_event;
+        private final CompletableFuture<Void> m_future = new CompletableFuture<Void>();
+
+        PendingEvent(final Event event) {
+            m_event = event;
+        }
+
+        void fail(final EventProxyException e) {
+            m_future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Owns one persistent connection, and sends the batches it collects from
+     * the shared queue over it.
+     */
+    private final class Sender extends Thread {
+        private Socket m_sock;
+        private Writer m_writer;
+        private InputStream m_input;
+        private long m_lastUsed;
+        /** Bytes handed to the socket since the current batch started. */
+        private long m_bytesWritten;
+
+        Sender(final String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            final List<PendingEvent> batch = new ArrayList<PendingEvent>(m_batchSize);
+            try {
+                while (!m_closed || !m_queue.isEmpty()) {
+                    boolean interrupted = false;
+                    try {
+                        collect(batch);
+                    } catch (final InterruptedException e) {
+                        // close() wakes the senders to finish what is queued, anything else stops them
+                        interrupted = !m_closed;
+                    }
+                    if (!batch.isEmpty()) {
+                        sendBatch(batch);
+                        batch.clear();
+                    }
+                    if (interrupted) {
+                        break;
+                    }
+                }
+            } finally {
+                closeConnection();
+            }
+        }
+
+        /**
+         * Waits for the first event, then takes whatever else is queued and
+         * keeps adding events until the flush window has passed or the batch
+         * is full.
+         */
+        private void collect(final List<PendingEvent> batch) throws InterruptedException {
+            final PendingEvent first = m_closed ? m_queue.poll() : m_queue.poll(m_timeout, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return;
+            }
+            batch.add(first);
+
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_flushInterval);
+            while (batch.size() < m_batchSize) {
+                m_queue.drainTo(batch, m_batchSize - batch.size());
+                final long remaining = deadline - System.nanoTime();
+                if (batch.size() >= m_batchSize || remaining <= 0 || m_closed) {
+                    break;
+                }
+                final PendingEvent next = m_queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+            }
+        }
+
+        private void sendBatch(final List<PendingEvent> batch) {
+            final Events events = new Events();
+            for (final PendingEvent pending : batch) {
+                events.addEvent(pending.m_event);
+            }
+            final Log eventLog = new Log();
+            eventLog.setEvents(events);
+
+            IOException lastException = null;
+            // a connection the daemon has dropped is only noticed on write, so retry once on a fresh one
+            for (int attempt = 0; attempt < 2; attempt++) {
+                m_bytesWritten = 0;
+                try {
+                    write(eventLog);
+                    m_eventsSent.addAndGet(batch.size());
+                    m_batchesSent.incrementAndGet();
+                    for (final PendingEvent pending : batch) {
+                        pending.m_future.complete(null);
+                    }
+                    return;
+                } catch (final IOException e) {
+                    LOG.debug("Failed to send {} events to {} on attempt {}", batch.size(), m_address, attempt + 1, e);
+                    lastException = e;
+                    closeConnection();
+                    if (m_bytesWritten > 0) {
+                        // part of the batch may have been delivered, resending it could duplicate events
+                        break;
+                    }
+                } catch (final RuntimeException e) {
+                    LOG.warn("Failed to marshal {} events for {}", batch.size(), m_address, e);
+                    fail(batch, new EventProxyException("Unknown exception while sending event: " + e, e));
+                    return;
+                }
+            }
+
+            LOG.warn("Could not send {} events to event daemon {}: {}", batch.size(), m_address, lastException.getMessage());
+            fail(batch, new EventProxyException("Could not connect to event daemon " + m_address + " to send event: " + lastException.getMessage(), lastException));
+        }
+
+        private void fail(final List<PendingEvent> batch, final EventProxyException e) {
+            m_eventsFailed.addAndGet(batch.size());
+            for (final PendingEvent pending : batch) {
+                pending.fail(e);
+            }
+        }
+
+        private void write(final Log eventLog) throws IOException {
+            if (m_sock != null && System.currentTimeMillis() - m_lastUsed > IDLE_CHECK_INTERVAL && !isOpen()) {
+                LOG.debug("Connection to {} was closed by the event daemon", m_address);
+                closeConnection();
+            }
+            if (m_sock == null) {
+                connect();
+            }
+
+            JaxbUtils.marshal(eventLog, m_writer);
+            m_writer.flush();
+            m_lastUsed = System.currentTimeMillis();
+
+            try {
+                discardReceipts();
+            } catch (final IOException e) {
+                // the batch has been written, the next one will reconnect
+                LOG.debug("Failed to read receipts from {}", m_address, e);
+                closeConnection();
+            }
+        }
+
+        private void connect() throws IOException {
+            final Socket sock = new Socket();
+            try {
+                sock.connect(m_address, m_timeout);
+                sock.setTcpNoDelay(true);
+                final OutputStream output = new FilterOutputStream(sock.getOutputStream()) {
+                    @Override
+                    public void write(final int b) throws IOException {
+                        out.write(b);
+                        m_bytesWritten++;
+                    }
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) throws IOException {
+                        out.write(b, off, len);
+                        m_bytesWritten += len;
+                    }
+                };
+                m_writer = new OutputStreamWriter(new BufferedOutputStream(output), UTF8);
+                m_input = sock.getInputStream();
+            } catch (final IOException e) {
+                sock.close();
+                throw e;
+            }
+            m_sock = sock;
+            m_connects.incrementAndGet();
+            LOG.debug("Opened connection to event daemon {}", m_address);
+        }
+
+        /**
+         * The daemon answers with event receipts that nobody is waiting for;
+         * read them off so they can't fill up the socket buffers.
+         */
+        private void discardReceipts() throws IOException {
+            int available;
+            while ((available = m_input.available()) > 0) {
+                m_input.skip(available);
+            }
+        }
+
+        /**
+         * Checks whether the daemon has closed the connection, without
+         * blocking for more than a millisecond.
+         */
+        private boolean isOpen() {
+            try {
+                discardReceipts();
+                m_sock.setSoTimeout(1);
+                try {
+                    final int ch = m_input.read();
+                    if (ch == -1) {
+                        return false;
+                    }
+                } catch (final SocketTimeoutException e) {
+                    // nothing to read, the connection is still there
+                } finally {
+                    m_sock.setSoTimeout(0);
+                }
+                return true;
+            } catch (final IOException e) {
+                return false;
+            }
+        }
+
+        private void closeConnection() {
+            if (m_sock != null) {
+                try {
+                    m_sock.close();
+                } catch (final IOException e) {
+                    LOG.warn("Error closing socket {}", m_sock, e);
+                }
+            }
+            m_sock = null;
+            m_writer = null;
+            m_input = null;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.events.api.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Test;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Autoaction;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Logmsg;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Value;
+
+public class EventBatchCodecTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final EventBatch batch = new EventBatch();
+        batch.add(createEvent(1), Collections.singletonMap("foreignSource", "routers"));
+        batch.add(createEvent(2));
+        batch.add(new Event());
+
+        final EventBatch decoded = EventBatchCodec.decode(EventBatchCodec.encode(batch));
+
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(JaxbUtils.marshal(batch.getEvent(i)), JaxbUtils.marshal(decoded.getEvent(i)));
+            assertEquals(batch.getHeaders(i), decoded.getHeaders(i));
+        }
+    }
+
+    @Test
+    public void testUncommonFieldsSurvive() throws IOException {
+        final Event event = createEvent(3);
+        final Autoaction autoaction = new Autoaction();
+        autoaction.setContent("/bin/true");
+        event.addAutoaction(autoaction);
+
+        final EventBatch batch = new EventBatch();
+        batch.add(event);
+        final EventBatch decoded = EventBatchCodec.decode(EventBatchCodec.encode(batch));
+
+        assertEquals(JaxbUtils.marshal(event), JaxbUtils.marshal(decoded.getEvent(0)));
+    }
+
+    @Test
+    public void testSmallerThanXml() throws IOException {
+        final EventBatch batch = new EventBatch();
+        int xmlSize = 0;
+        for (int i = 0; i < 100; i++) {
+            final Event event = createEvent(i);
+            batch.add(event);
+            xmlSize += JaxbUtils.marshal(event).length();
+        }
+        final int binarySize = EventBatchCodec.encode(batch).length;
+        assertTrue("binary batch of " + binarySize + " bytes should be smaller than " + xmlSize + " bytes of XML", binarySize < xmlSize);
+    }
+
+    @Test
+    public void testRejectsNewerVersion() {
+        final byte[] data = new byte[] { (byte)(EventBatchCodec.VERSION + 1), 0, 0, 0, 0 };
+        try {
+            EventBatchCodec.decode(data);
+            fail("expected an IOException");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+    }
+
+    private static Event createEvent(final int nodeId) {
+        final Event event = new Event();
+        event.setUei("uei.opennms.org/nodes/nodeDown");
+        event.setSource("EventBatchCodecTest");
+        event.setNodeid(Long.valueOf(nodeId));
+        event.setTime(new Date(1400000000000L + nodeId));
+        event.setCreationTime(new Date(1400000000000L));
+        event.setInterface("192.168.1." + nodeId);
+        event.setService("ICMP");
+        event.setSeverity("Major");
+        event.setDescr("<p>Node " + nodeId + " is down.</p>");
+        event.addLoggroup("nodes");
+
+        final Logmsg logmsg = new Logmsg();
+        logmsg.setContent("Node " + nodeId + " is down \u00e9");
+        logmsg.setDest("logndisplay");
+        event.setLogmsg(logmsg);
+
+        final Parm parm = new Parm();
+        parm.setParmName("eventReason");
+        final Value value = new Value();
+        value.setContent("Timeout");
+        parm.setValue(value);
+        event.addParm(parm);
+
+        final AlarmData alarmData = new AlarmData();
+        alarmData.setReductionKey("uei.opennms.org/nodes/nodeDown::" + nodeId);
+        alarmData.setAlarmType(1);
+        event.setAlarmData(alarmData);
+        return event;
+    }
+}
@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2002-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.events.api.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.netmgt.events.api.EventProxy;
+import org.opennms.netmgt.events.api.EventProxyException;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class PooledTcpEventProxyTest {
+    private static final Logger LOG = LoggerFactory.getLogger(PooledTcpEventProxyTest.class);
+
+    private EventdStub m_eventd;
+
+    private PooledTcpEventProxy m_proxy;
+
+    @Before
+    public void setUp() throws Exception {
+        m_eventd = new EventdStub();
+        m_eventd.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_proxy != null) {
+            m_proxy.close();
+        }
+        m_eventd.stop();
+    }
+
+    @Test
+    public void testSend() throws Exception {
+        m_proxy = new PooledTcpEventProxy(m_eventd.getAddress());
+
+        m_proxy.send(createEvent(1));
+
+        m_eventd.waitForEvents(1);
+        assertEquals(1, m_proxy.getEventsSent());
+        assertEquals(1, m_proxy.getConnects());
+    }
+
+    @Test
+    public void testSendLog() throws Exception {
+        m_proxy = new PooledTcpEventProxy(m_eventd.getAddress());
+
+        final Log eventLog = new Log();
+        final Events events = new Events();
+        for (int i = 0; i < 10; i++) {
+            events.addEvent(createEvent(i));
+        }
+        eventLog.setEvents(events);
+        m_proxy.send(eventLog);
+
+        m_eventd.waitForEvents(10);
+        assertEquals(10, m_proxy.getEventsSent());
+    }
+
+    @Test
+    public void testConcurrentSendsAreCoalesced() throws Exception {
+        m_proxy = new PooledTcpEventProxy(new InetSocketAddress(InetAddress.getLoopbackAddress(), m_eventd.getPort()), 2000, 2, 50, 500, 10000);
+
+        final int threads = 8;
+        final int eventsPerThread = 250;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * eventsPerThread;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < eventsPerThread; i++) {
+                        final CompletableFuture<Void> future = m_proxy.sendAsync(createEvent(offset + i));
+                        synchronized (futures) {
+                            futures.add(future);
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get(30, TimeUnit.SECONDS);
+
+        final int total = threads * eventsPerThread;
+        m_eventd.waitForEvents(total);
+        assertEquals(total, m_proxy.getEventsSent());
+        assertEquals(0, m_proxy.getEventsFailed());
+        assertTrue("expected events to be batched, got " + m_proxy.getBatchesSent() + " batches", m_proxy.getBatchesSent() < total / 10);
+        assertTrue("expected persistent connections, got " + m_proxy.getConnects() + " connects", m_proxy.getConnects() <= 2);
+    }
+
+    @Test
+    public void testCloseSendsQueuedEvents() throws Exception {
+        m_proxy = new PooledTcpEventProxy(m_eventd.getAddress(), 2000, 1, 1000, 500, 10000);
+
+        final List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(m_proxy.sendAsync(createEvent(i)));
+        }
+        m_proxy.close();
+
+        for (final CompletableFuture<Void> future : futures) {
+            assertTrue(future.isDone());
+            future.get();
+        }
+        m_eventd.waitForEvents(100);
+    }
+
+    @Test
+    public void testSendFailsWhenEventdIsDown() throws Exception {
+        final InetSocketAddress address = m_eventd.getAddress();
+        m_eventd.stop();
+
+        m_proxy = new PooledTcpEventProxy(address, 500, 1, 0, 500, 100);
+        try {
+            m_proxy.send(createEvent(1));
+            fail("expected an EventProxyException");
+        } catch (final EventProxyException e) {
+            // expected
+        }
+        assertEquals(1, m_proxy.getEventsFailed());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testRejectsZeroTimeout() throws Exception {
+        m_proxy = new PooledTcpEventProxy(m_eventd.getAddress(), 0, 1, 0, 500, 100);
+    }
+
+    /**
+     * Compares the throughput of a single caller sending one event at a time
+     * through {@link TcpEventProxy} and {@link PooledTcpEventProxy}, and of
+     * concurrent callers using the pooled proxy asynchronously. Not run by
+     * default since it only prints timings.
+     */
+    @Test
+    @Ignore
+    public void testThroughput() throws Exception {
+        final int count = 5000;
+
+        final EventProxy tcpProxy = new TcpEventProxy(m_eventd.getAddress());
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            tcpProxy.send(createEvent(i));
+        }
+        m_eventd.waitForEvents(count);
+        LOG.info("TcpEventProxy: {} events/s", Math.round(count / ((System.nanoTime() - start) / 1e9)));
+
+        m_eventd.reset();
+        m_proxy = new PooledTcpEventProxy(m_eventd.getAddress());
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            m_proxy.send(createEvent(i));
+        }
+        m_eventd.waitForEvents(count);
+        LOG.info("PooledTcpEventProxy, send: {} events/s", Math.round(count / ((System.nanoTime() - start) / 1e9)));
+
+        m_eventd.reset();
+        final int asyncCount = count * 20;
+        final List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(asyncCount);
+        start = System.nanoTime();
+        for (int i = 0; i < asyncCount; i++) {
+            futures.add(m_proxy.sendAsync(createEvent(i)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get();
+        m_eventd.waitForEvents(asyncCount);
+        LOG.info("PooledTcpEventProxy, sendAsync: {} events/s in {} batches", Math.round(asyncCount / ((System.nanoTime() - start) / 1e9)), m_proxy.getBatchesSent());
+    }
+
+    private static Event createEvent(final int i) {
+        final Event event = new Event();
+        event.setUei("uei.opennms.org/test/pooledTcpEventProxy");
+        event.setSource("PooledTcpEventProxyTest");
+        event.setUuid(Integer.toString(i));
+        return event;
+    }
+
+    /**
+     * Stands in for eventd: accepts connections and counts the events in the
+     * documents sent over them, without parsing them.
+     */
+    private static final class EventdStub implements Runnable {
+        private static final byte[] EVENT_TAG = "<event ".getBytes();
+
+        private final ServerSocket m_serverSocket;
+        private final AtomicInteger m_events = new AtomicInteger();
+        private final List<Socket> m_connections = new ArrayList<Socket>();
+        private final CountDownLatch m_stopped = new CountDownLatch(1);
+
+        EventdStub() throws IOException {
+            m_serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        }
+
+        InetSocketAddress getAddress() {
+            return new InetSocketAddress(m_serverSocket.getInetAddress(), m_serverSocket.getLocalPort());
+        }
+
+        int getPort() {
+            return m_serverSocket.getLocalPort();
+        }
+
+        void start() {
+            final Thread thread = new Thread(this, "EventdStub");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws Exception {
+            m_serverSocket.close();
+            synchronized (m_connections) {
+                for (final Socket socket : m_connections) {
+                    socket.close();
+                }
+            }
+            m_stopped.await(5, TimeUnit.SECONDS);
+        }
+
+        void reset() {
+            m_events.set(0);
+        }
+
+        void waitForEvents(final int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 30000;
+            while (m_events.get() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(count, m_events.get());
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = m_serverSocket.accept();
+                    synchronized (m_connections) {
+                        m_connections.add(socket);
+                    }
+                    final Thread reader = new Thread("EventdStub Reader") {
+                        @Override
+                        public void run() {
+                            read(socket);
+                        }
+                    };
+                    reader.setDaemon(true);
+                    reader.start();
+                }
+            } catch (final IOException e) {
+                // server socket closed
+            } finally {
+                m_stopped.countDown();
+            }
+        }
+
+        private void read(final Socket socket) {
+            try {
+                final InputStream in = socket.getInputStream();
+                final byte[] buffer = new byte[8192];
+                int matched = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    for (int i = 0; i < read; i++) {
+                        if (buffer[i] == EVENT_TAG[matched]) {
+                            if (++matched == EVENT_TAG.length) {
+                                m_events.incrementAndGet();
+                                matched = 0;
+                            }
+                        } else {
+                            matched = buffer[i] == EVENT_TAG[0] ? 1 : 0;
+                        }
+                    }
+                }
+            } catch (final IOException e) {
+                // connection closed
+            }
+        }
+    }
+}
@@ -35,7 +35,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.opennms.core.spring.BeanUtils;
@@ -46,6 +45,8 @@ import org.opennms.netmgt.xml.event.Parm;
 import org.opennms.netmgt.xml.event.Snmp;
 import org.opennms.netmgt.xml.event.Tticket;
 import org.opennms.netmgt.xml.event.Value;
+import org.opennms.netmgt.xml.eventconf.ExpansionTemplate;
+import org.opennms.netmgt.xml.eventconf.ExpansionTemplate.Token;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -372,31 +373,50 @@ public abstract class AbstractEventUtil implements EventUtil {
 	 */
 	@Override
 	public String getValueOfParm(String parm, Event event) {
+		return getValueOfToken(ExpansionTemplate.parseToken(parm), event);
+	}
+
+	/**
+	 * Get the value of a parsed %parm% token for the event
+	 *
+	 * @param token
+	 *            the token for which value is needed from the event
+	 * @param event
+	 *            the event whose parm value is required
+	 * @return value of the event parm/element
+	 */
+	protected String getValueOfToken(final Token token, final Event event) {
 
 		String retParmVal = null;
 		final String ifString = event.getInterface();
-		
-		if (parm.equals(TAG_UEI)) {
+
+		switch (token.getType()) {
+		case UEI:
 			retParmVal = event.getUei();
-		}
-		if (parm.equals(TAG_EVENT_DB_ID)) {
+			break;
+		case EVENT_DB_ID:
 			if (event.hasDbid()) {
 				retParmVal = Integer.toString(event.getDbid());
 			} else {
 				retParmVal = "eventid-unknown";
 			}
-		} else if (parm.equals(TAG_SOURCE)) {
+			break;
+		case SOURCE:
 			retParmVal = event.getSource();
-		} else if (parm.equals(TAG_DPNAME)) {
+			break;
+		case DPNAME:
 			retParmVal = event.getDistPoller();
-		} else if (parm.equals(TAG_DESCR)) {
+			break;
+		case DESCR:
 			retParmVal = event.getDescr();
-				} else if (parm.equals(TAG_LOGMSG)) {
-					retParmVal = event.getLogmsg().getContent();
-		} else if (parm.equals(TAG_NODEID)) {
-			retParmVal = Long.toString(event.getNodeid());
-		} else if (parm.equals(TAG_NODELABEL)) {
+			break;
+		case LOGMSG:
+			retParmVal = event.getLogmsg().getContent();
+			break;
+		case NODEID:
 			retParmVal = Long.toString(event.getNodeid());
+			break;
+		case NODELABEL:
 			String nodeLabel = null;
 			if (event.getNodeid() > 0) {
 				try {
@@ -409,36 +429,39 @@ public abstract class AbstractEventUtil implements EventUtil {
 				retParmVal = WebSecurityUtils.sanitizeString(nodeLabel);
 			else
 				retParmVal = "Unknown";
-		} else if (parm.equals(TAG_TIME)) {
+			break;
+		case TIME:
 			Date eventTime = event.getTime(); //This will be in GMT
-			if (eventTime == null) {
-				retParmVal = null;
-			} else {
+			if (eventTime != null) {
 				DateFormat df = DateFormat.getDateTimeInstance(DateFormat.FULL, DateFormat.FULL);
 				retParmVal = df.format(eventTime);
-			} 
-		} else if (parm.equals(TAG_SHORT_TIME)) {
-			Date eventTime = event.getTime(); //This will be in GMT
-			if (eventTime == null) {
-				retParmVal = null;
-			} else {
+			}
+			break;
+		case SHORT_TIME:
+			Date shortEventTime = event.getTime(); //This will be in GMT
+			if (shortEventTime != null) {
 				DateFormat df = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
-				retParmVal = df.format(eventTime);
+				retParmVal = df.format(shortEventTime);
 			}
-		} else if (parm.equals(TAG_HOST)) {
+			break;
+		case HOST:
 			retParmVal = event.getHost();
-		} else if (parm.equals(TAG_INTERFACE)) {
+			break;
+		case INTERFACE:
 			retParmVal = ifString;
-		} else if (parm.equals(TAG_IFINDEX)) {
+			break;
+		case IFINDEX:
 			if (event.hasIfIndex()) {
 				retParmVal = Integer.toString(event.getIfIndex());
-				} else {
-					retParmVal = "N/A";
-				}
-		} else if (parm.equals(TAG_INTERFACE_RESOLVE)) {
+			} else {
+				retParmVal = "N/A";
+			}
+			break;
+		case INTERFACE_RESOLVE:
 			InetAddress addr = event.getInterfaceAddress();
-			if (addr != null) retParmVal = addr.getHostName();
-		} else if (parm.equals(TAG_IFALIAS)) {
+			if (addr != null) retParmVal = resolveHostName(event.getNodeid(), addr);
+			break;
+		case IFALIAS:
 			String ifAlias = null;
 			if (event.getNodeid() > 0 && event.getInterface() != null) {
 				try {
@@ -452,121 +475,131 @@ public abstract class AbstractEventUtil implements EventUtil {
 				retParmVal = ifAlias;
 			else
 				retParmVal = ifString;
-		} else if (parm.equals(TAG_PERCENT_SIGN)) {
-			String pctSign = "%";
-			retParmVal = pctSign;
-		} else if (parm.equals(TAG_SNMPHOST)) {
+			break;
+		case PERCENT_SIGN:
+			retParmVal = "%";
+			break;
+		case SNMPHOST:
 			retParmVal = event.getSnmphost();
-		} else if (parm.equals(TAG_SERVICE)) {
+			break;
+		case SERVICE:
 			retParmVal = event.getService();
-		} else if (parm.equals(TAG_SNMP)) {
+			break;
+		case SNMP:
 			Snmp info = event.getSnmp();
-			if (info == null)
-				retParmVal = null;
-			else {
-				StringBuffer snmpStr = new StringBuffer(info.getId());
+			if (info != null) {
+				StringBuilder snmpStr = new StringBuilder(info.getId());
 				if (info.getIdtext() != null)
-					snmpStr.append(ATTRIB_DELIM
-						+ escape(info.getIdtext().trim(), ATTRIB_DELIM));
+					snmpStr.append(ATTRIB_DELIM).append(escape(info.getIdtext().trim(), ATTRIB_DELIM));
 				else
-					snmpStr.append(ATTRIB_DELIM + "undefined");
+					snmpStr.append(ATTRIB_DELIM).append("undefined");
 
-				snmpStr.append(ATTRIB_DELIM + info.getVersion());
+				snmpStr.append(ATTRIB_DELIM).append(info.getVersion());
 
 				if (info.hasSpecific())
-					snmpStr.append(ATTRIB_DELIM
-						+ Integer.toString(info.getSpecific()));
+					snmpStr.append(ATTRIB_DELIM).append(Integer.toString(info.getSpecific()));
 				else
-					snmpStr.append(ATTRIB_DELIM + "undefined");
+					snmpStr.append(ATTRIB_DELIM).append("undefined");
 
 				if (info.hasGeneric())
-					snmpStr.append(ATTRIB_DELIM
-						+ Integer.toString(info.getGeneric()));
+					snmpStr.append(ATTRIB_DELIM).append(Integer.toString(info.getGeneric()));
 				else
-					snmpStr.append(ATTRIB_DELIM + "undefined");
+					snmpStr.append(ATTRIB_DELIM).append("undefined");
 
 				if (info.getCommunity() != null) {
-					snmpStr.append(ATTRIB_DELIM + info.getCommunity().trim());
+					snmpStr.append(ATTRIB_DELIM).append(info.getCommunity().trim());
 				} else
-					snmpStr.append(ATTRIB_DELIM + "undefined");
+					snmpStr.append(ATTRIB_DELIM).append("undefined");
 
 				retParmVal = snmpStr.toString();
 			}
-		} else if (parm.equals(TAG_SNMP_ID)) {
-			Snmp info = event.getSnmp();
-			if (info != null) {
-				retParmVal = info.getId();
+			break;
+		case SNMP_ID:
+			if (event.getSnmp() != null) {
+				retParmVal = event.getSnmp().getId();
 			}
-		} else if (parm.equals(TAG_SNMP_IDTEXT)) {
-			Snmp info = event.getSnmp();
-			if (info != null && info.getIdtext() != null) {
-				retParmVal = info.getIdtext();
+			break;
+		case SNMP_IDTEXT:
+			if (event.getSnmp() != null) {
+				retParmVal = event.getSnmp().getIdtext();
 			}
-		} else if (parm.equals(TAG_SNMP_VERSION)) {
-			Snmp info = event.getSnmp();
-			if (info != null) {
-				retParmVal = info.getVersion();
+			break;
+		case SNMP_VERSION:
+			if (event.getSnmp() != null) {
+				retParmVal = event.getSnmp().getVersion();
 			}
-		} else if (parm.equals(TAG_SNMP_SPECIFIC)) {
-			Snmp info = event.getSnmp();
-			if (info != null && info.hasSpecific()) {
-				retParmVal = Integer.toString(info.getSpecific());
+			break;
+		case SNMP_SPECIFIC:
+			if (event.getSnmp() != null && event.getSnmp().hasSpecific()) {
+				retParmVal = Integer.toString(event.getSnmp().getSpecific());
 			}
-		} else if (parm.equals(TAG_SNMP_GENERIC)) {
-			Snmp info = event.getSnmp();
-			if (info != null && info.hasGeneric()) {
-				retParmVal = Integer.toString(info.getGeneric());
+			break;
+		case SNMP_GENERIC:
+			if (event.getSnmp() != null && event.getSnmp().hasGeneric()) {
+				retParmVal = Integer.toString(event.getSnmp().getGeneric());
 			}
-		} else if (parm.equals(TAG_SNMP_COMMUNITY)) {
-			Snmp info = event.getSnmp();
-			if (info != null && info.getCommunity() != null) {
-				retParmVal = info.getCommunity();
+			break;
+		case SNMP_COMMUNITY:
+			if (event.getSnmp() != null) {
+				retParmVal = event.getSnmp().getCommunity();
 			}
-		} else if (parm.equals(TAG_SEVERITY)) {
+			break;
+		case SEVERITY:
 			retParmVal = event.getSeverity();
-		} else if (parm.equals(TAG_OPERINSTR)) {
+			break;
+		case OPERINSTRUCT:
 			retParmVal = event.getOperinstruct();
-		} else if (parm.equals(TAG_MOUSEOVERTEXT)) {
+			break;
+		case MOUSEOVERTEXT:
 			retParmVal = event.getMouseovertext();
-				} else if (parm.equals(TAG_TTICKET_ID)) {
-					Tticket ticket = event.getTticket();
-					retParmVal = ticket == null ? "" : ticket.getContent();
-		} else if (parm.equals(PARMS_VALUES)) {
+			break;
+		case TTICKET_ID:
+			Tticket ticket = event.getTticket();
+			retParmVal = ticket == null ? "" : ticket.getContent();
+			break;
+		case PARMS_VALUES:
 			retParmVal = getAllParmValues(event);
-		} else if (parm.equals(PARMS_NAMES)) {
+			break;
+		case PARMS_NAMES:
 			retParmVal = getAllParmNames(event);
-		} else if (parm.equals(PARMS_ALL)) {
+			break;
+		case PARMS_ALL:
 			retParmVal = getAllParamValues(event);
-		} else if (parm.equals(NUM_PARMS_STR)) {
+			break;
+		case NUM_PARMS:
 			retParmVal = String.valueOf(event.getParmCollection().size());
-		} else if (parm.startsWith(PARM_NUM_PREFIX)) {
-			retParmVal = getNumParmValue(parm, event);
-		} else if (parm.startsWith(PARM_NAME_NUMBERED_PREFIX)) {
-			retParmVal = getNumParmName(parm, event);
-		} else if (parm.startsWith(PARM_BEGIN)) {
-		    if (parm.length() > PARM_BEGIN_LENGTH) {
-			retParmVal = getNamedParmValue(parm, event);
-		    }
-		} else if (parm.startsWith(ASSET_BEGIN)) {
-		    retParmVal = null;
-		    String assetFieldValue = null;
-		    if (event.getNodeid() > 0) {
-			assetFieldValue = getAssetFieldValue(parm, event.getNodeid());
-		    }
-		    if (assetFieldValue != null)
-			retParmVal = assetFieldValue;
-		    else
-			retParmVal = "Unknown";
-		} else if (parm.startsWith(HARDWARE_BEGIN)) {
-		    retParmVal = null;
-		    String hwFieldValue = null;
-		    if (event.getNodeid() > 0) {
-			hwFieldValue = getHardwareFieldValue(parm, event.getNodeid());
-		    }
-		    if (hwFieldValue != null)
-			retParmVal = hwFieldValue;
-		    else
-			retParmVal = "Unknown";
+			break;
+		case PARM_NUMBERED_VALUE:
+			retParmVal = getNumParmValue(token, event);
+			break;
+		case PARM_NUMBERED_NAME:
+			retParmVal = getNumParmName(token, event);
+			break;
+		case PARM_NAMED:
+			retParmVal = getNamedParmValue(token.getParmName(), event.getParmCollection());
+			break;
+		case ASSET:
+			String assetFieldValue = null;
+			if (event.getNodeid() > 0) {
+				assetFieldValue = getAssetFieldValue(token.getText(), event.getNodeid());
+			}
+			if (assetFieldValue != null)
+				retParmVal = assetFieldValue;
+			else
+				retParmVal = "Unknown";
+			break;
+		case HARDWARE:
+			String hwFieldValue = null;
+			if (event.getNodeid() > 0) {
+				hwFieldValue = getHardwareFieldValue(token.getText(), event.getNodeid());
+			}
+			if (hwFieldValue != null)
+				retParmVal = hwFieldValue;
+			else
+				retParmVal = "Unknown";
+			break;
+		default:
+			break;
 		}
 
 		return (retParmVal == null ? null : retParmVal.trim());
@@ -583,7 +616,7 @@ public abstract class AbstractEventUtil implements EventUtil {
 		if (event.getParmCollection().size() < 1) {
 			retParmVal = null;
 		} else {
-			StringBuffer ret = new StringBuffer();
+			StringBuilder ret = new StringBuilder();
 
 			for (Parm evParm : event.getParmCollection()) {
 				Value parmValue = evParm.getValue();
@@ -615,7 +648,7 @@ public abstract class AbstractEventUtil implements EventUtil {
 		if (event.getParmCollection().size() <= 0) {
 			return null;
 		} else {
-			StringBuffer ret = new StringBuffer();
+			StringBuilder ret = new StringBuilder();
 
 			for (Parm evParm : event.getParmCollection()) {
 				String parmName = evParm.getParmName();
@@ -642,7 +675,7 @@ public abstract class AbstractEventUtil implements EventUtil {
 		if (event.getParmCollection().size() < 1) {
 			return null;
 		} else {
-			final StringBuffer ret = new StringBuffer();
+			final StringBuilder ret = new StringBuilder();
 
 			for (final Parm evParm : event.getParmCollection()) {
 				final String parmName = evParm.getParmName();
@@ -671,68 +704,45 @@ public abstract class AbstractEventUtil implements EventUtil {
 	 * @return The name of a parameter based on its ordinal position in the event's list of parameters
 	 */
 	protected static String getNumParmName(String parm, Event event) {
-		String retParmVal = null;
+		return getNumParmName(ExpansionTemplate.parseToken(parm), event);
+	}
+
+	/**
+	 * Helper method.
+	 * 
+	 * @param token a parsed <code>parm[name-#N]</code> token
+	 * @param event
+	 * @return The name of a parameter based on its ordinal position in the event's list of parameters
+	 */
+	protected static String getNumParmName(final Token token, final Event event) {
 		final List<Parm> parms = event.getParmCollection();
-		int end = parm.lastIndexOf(PARM_END_SUFFIX);
-		if (end != -1 && parms != null && parms.size() > 0) {
-			// Get the string between the '#' and ']'
-			String parmSpec = parm.substring(PARM_NAME_NUMBERED_PREFIX_LENGTH, end);
-			String eparmnum = null;
-			String eparmsep = null;
-			String eparmoffset = null;
-			String eparmrangesep = null;
-			String eparmrangelen = null;
-			if (parmSpec.matches("^\\d+$")) {
-				eparmnum = parmSpec;
-			} else {
-				Matcher m = Pattern.compile("^(\\d+)([^0-9+-]+)([+-]?\\d+)((:)([+-]?\\d+)?)?$").matcher(parmSpec);
-				if (m.matches()) {
-					eparmnum = m.group(1);
-					eparmsep = m.group(2);
-					eparmoffset = m.group(3);
-					eparmrangesep = m.group(5);
-					eparmrangelen = m.group(6);
-				}
-			}
-			int parmNum = -1;
-			try {
-				parmNum = Integer.parseInt(eparmnum);
-			} catch (NumberFormatException nfe) {
-				parmNum = -1;
-				retParmVal = null;
-			}
+		final int parmNum = token.getParmNumber();
+		if (parms == null || parmNum <= 0 || parmNum > parms.size()) {
+			return null;
+		}
 
-			if (parmNum > 0 && parmNum <= parms.size()) {
-				final Parm evParm = parms.get(parmNum - 1);
-
-				// get parm name
-				String eparmname = evParm.getParmName();
-				
-				// If separator and offset specified, split and extract accordingly
-				if ((eparmsep != null) && (eparmoffset != null)) {
-					int parmOffset = Integer.parseInt(eparmoffset);
-					boolean doRange = ":".equals(eparmrangesep);
-					int parmRangeLen = (eparmrangelen == null) ? 0 : Integer.parseInt(eparmrangelen);
-					retParmVal = splitAndExtract(eparmname, eparmsep, parmOffset, doRange, parmRangeLen);
-				} else {
-					retParmVal = eparmname;
-				}
-			} else {
-				retParmVal = null;
-			}
+		// get parm name
+		final String eparmname = parms.get(parmNum - 1).getParmName();
+
+		// If separator and offset specified, split and extract accordingly
+		if (token.getSeparator() != null && eparmname != null) {
+			return splitAndExtract(eparmname, token.getSeparator(), token.getSeparatorPattern(), token.getOffset(), token.isRange(), token.getRangeLength());
+		} else {
+			return eparmname;
 		}
-		return retParmVal;
 	}
 
 	public static String splitAndExtract(String src, String sep, int offset, boolean doRange, int rangeLen) {
-		String sepLiteral = Pattern.quote(sep);
-		
+		return splitAndExtract(src, sep, Pattern.compile(Pattern.quote(sep)), offset, doRange, rangeLen);
+	}
+
+	private static String splitAndExtract(String src, final String sep, final Pattern sepPattern, final int offset, final boolean doRange, final int rangeLen) {
 		// If the src string starts with the separator, lose the first separator
 		if (src.startsWith(sep)) {
-			src = src.replaceFirst(sepLiteral, "");
+			src = src.substring(sep.length());
 		}
 		
-		String[] components = src.split(sepLiteral);
+		String[] components = sepPattern.split(src);
 		int startIndex, endIndex;
 		if ((Math.abs(offset) > components.length) || (offset == 0)) {
 			return null;
@@ -756,7 +766,7 @@ public abstract class AbstractEventUtil implements EventUtil {
 			endIndex = startIndex - 1 + rangeLen;
 		}
 		
-		StringBuffer retVal = new StringBuffer();
+		StringBuilder retVal = new StringBuilder();
 		for (int i = startIndex; i <= endIndex; i++) {
 			retVal.append(components[i]);
 			if (i < endIndex) {
@@ -774,33 +784,26 @@ public abstract class AbstractEventUtil implements EventUtil {
 	 * @return The value of a parameter based on its ordinal position in the event's list of parameters
 	 */
 	protected static String getNumParmValue(String parm, Event event) {
-		String retParmVal = null;
-		final List<Parm> parms = event.getParmCollection();
-		int end = parm.lastIndexOf(PARM_END_SUFFIX);
-		if (end != -1 && parms != null && parms.size() > 0) {
-			// Get the value between the '#' and ']'
-			String eparmname = parm.substring(PARM_NUM_PREFIX_LENGTH, end);
-			int parmNum = -1;
-			try {
-				parmNum = Integer.parseInt(eparmname);
-			} catch (NumberFormatException nfe) {
-				parmNum = -1;
-				retParmVal = null;
-			}
-
-			if (parmNum > 0 && parmNum <= parms.size()) {
-			final Parm evParm = parms.get(parmNum - 1);
+		return getNumParmValue(ExpansionTemplate.parseToken(parm), event);
+	}
 
-				// get parm value
-				Value eparmval = evParm.getValue();
-				if (eparmval != null) {
-					retParmVal = EventConstants.getValueAsString(eparmval);
-				}
-			} else {
-				retParmVal = null;
-			}
+	/**
+	 * Helper method.
+	 * 
+	 * @param token a parsed <code>parm[#N]</code> token
+	 * @param event
+	 * @return The value of a parameter based on its ordinal position in the event's list of parameters
+	 */
+	protected static String getNumParmValue(final Token token, final Event event) {
+		final List<Parm> parms = event.getParmCollection();
+		final int parmNum = token.getParmNumber();
+		if (parms == null || parmNum <= 0 || parmNum > parms.size()) {
+			return null;
 		}
-		return retParmVal;
+
+		// get parm value
+		final Value eparmval = parms.get(parmNum - 1).getValue();
+		return eparmval == null ? null : EventConstants.getValueAsString(eparmval);
 	}
 
 	/**
@@ -811,26 +814,30 @@ public abstract class AbstractEventUtil implements EventUtil {
 	 * @return A parameter's value as a String using the parameter's name..
 	 */
 	public String getNamedParmValue(String parm, Event event) {
-		String retParmVal = null;
 		int end = parm.indexOf(PARM_END_SUFFIX, PARM_BEGIN_LENGTH);
 		if (end != -1) {
 			// Get the value between the '[' and ']'
-			String eparmname = parm.substring(PARM_BEGIN_LENGTH, end);
+			return getNamedParmValue(parm.substring(PARM_BEGIN_LENGTH, end), event.getParmCollection());
+		}
+		return null;
+	}
 
-			for (Parm evParm : event.getParmCollection()) {
-				String parmName = evParm.getParmName();
-				if (parmName != null
-					&& parmName.trim().equals(eparmname)) {
-					// get parm value
-					Value eparmval = evParm.getValue();
-					if (eparmval != null) {
-					retParmVal = EventConstants.getValueAsString(eparmval);
-					break;
-					}
+	private static String getNamedParmValue(final String eparmname, final List<Parm> parms) {
+		if (eparmname == null) {
+			return null;
+		}
+		for (Parm evParm : parms) {
+			String parmName = evParm.getParmName();
+			if (parmName != null
+				&& parmName.trim().equals(eparmname)) {
+				// get parm value
+				Value eparmval = evParm.getValue();
+				if (eparmval != null) {
+					return EventConstants.getValueAsString(eparmval);
 				}
 			}
 		}
-		return retParmVal;
+		return null;
 	}
 
 	/**
@@ -898,75 +905,54 @@ public abstract class AbstractEventUtil implements EventUtil {
 	 * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
 	 */
 	public String expandParms(String inp, Event event, Map<String, Map<String, String>> decode) {
-		int index1 = -1;
-		int index2 = -1;
-
 		if (inp == null) {
 			return null;
 		}
+		return expandParms(ExpansionTemplate.compile(inp), event, decode);
+	}
+
+	/**
+	 * Expand a template that was compiled ahead of time, typically when the
+	 * event configuration was loaded. See
+	 * {@link #expandParms(String, Event, Map)} for the supported tokens.
+	 *
+	 * @param template
+	 *            the compiled template
+	 * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
+	 * @param decode
+	 *            the varbind decode for this
+	 * @return expanded value if the value had any parameter to expand, null
+	 *         otherwise
+	 */
+	@Override
+	public String expandParms(final ExpansionTemplate template, final Event event, final Map<String, Map<String, String>> decode) {
+		if (template == null || template.getTokenCount() == 0) {
+			return null;
+		}
 
-		StringBuffer ret = new StringBuffer();
-
-		String tempInp = inp;
-		int inpLen = inp.length();
-
-		// check input string to see if it has any %xxx% substring
-		while ((tempInp != null) && ((index1 = tempInp.indexOf(PERCENT)) != -1)) {
-		        LOG.debug("checking input " + tempInp);
-			// copy till first %
-			ret.append(tempInp.substring(0, index1));
-			tempInp = tempInp.substring(index1);
-
-			index2 = tempInp.indexOf(PERCENT, 1);
-			if (index2 != -1) {
-				// Get the value between the %s
-				String parm = tempInp.substring(1, index2);
-				LOG.debug("parm: " + parm + " found in value");
-
-				// If there's any whitespace in between the % signs, then do not try to 
-				// expand it with a parameter value
-				if (parm.matches(".*\\s(?s).*")) {
-					ret.append(PERCENT);
-					tempInp = tempInp.substring(1);
-		                        LOG.debug("skipping parm: " + parm + " because whitespace found in value");
-					continue;
-				}
+		final int tokenCount = template.getTokenCount();
+		final StringBuilder ret = new StringBuilder(template.getSource().length() + 16 * tokenCount);
 
-				String parmVal = getValueOfParm(parm, event);
-				LOG.debug("value of parm: " + parmVal);
-
-				if (parmVal != null) {
-					if (decode != null && decode.containsKey(parm) && decode.get(parm).containsKey(parmVal)) {
-					ret.append(decode.get(parm).get(parmVal));
-					ret.append("(");
-					ret.append(parmVal);
-					ret.append(")");
-					} else {
-					ret.append(parmVal);
-					}
-				}
+		for (int i = 0; i < tokenCount; i++) {
+			ret.append(template.getLiteral(i));
 
-				if (index2 < (inpLen - 1)) {
-					tempInp = tempInp.substring(index2 + 1);
-				} else {
-					tempInp = null;
-				}
-			}
-			else {
-				break;
+			final Token token = template.getToken(i);
+			final String parmVal = getValueOfToken(token, event);
+			if (parmVal == null) {
+				continue;
 			}
-		}
 
-		if ((index1 == -1 || index2 == -1) && (tempInp != null)) {
-			ret.append(tempInp);
+			final Map<String, String> parmDecode = decode == null ? null : decode.get(token.getText());
+			if (parmDecode != null && parmDecode.containsKey(parmVal)) {
+				ret.append(parmDecode.get(parmVal)).append('(').append(parmVal).append(')');
+			} else {
+				ret.append(parmVal);
+			}
 		}
+		ret.append(template.getLiteral(tokenCount));
 
-		String retStr = ret.toString();
-		if (retStr != null && !retStr.equals(inp)) {
-			return retStr;
-		} else {
-			return null;
-		}
+		final String retStr = ret.toString();
+		return retStr.equals(template.getSource()) ? null : retStr;
 	}
 
 	/**
@@ -995,6 +981,21 @@ public abstract class AbstractEventUtil implements EventUtil {
 		}
 	}
 
+	/**
+	 * Resolve the host name of an event's interface for
+	 * <code>%interfaceresolve%</code>.
+	 *
+	 * @param nodeId
+	 *            Node identifier of the event, or 0
+	 * @param addr
+	 *            Interface address
+	 *
+	 * @return the host name, or the textual address if it cannot be resolved
+	 */
+	protected String resolveHostName(long nodeId, InetAddress addr) {
+		return addr.getHostName();
+	}
+
 	/**
 	 * Retrieve nodeLabel from the node table of the database given a particular
 	 * nodeId.
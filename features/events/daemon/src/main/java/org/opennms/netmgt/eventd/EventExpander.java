@@ -45,6 +45,7 @@ import org.opennms.netmgt.xml.event.Operaction;
 import org.opennms.netmgt.xml.event.Tticket;
 import org.opennms.netmgt.xml.event.UpdateField;
 import org.opennms.netmgt.xml.eventconf.Decode;
+import org.opennms.netmgt.xml.eventconf.ExpansionTemplate;
 import org.opennms.netmgt.xml.eventconf.Maskelement;
 import org.opennms.netmgt.xml.eventconf.Varbindsdecode;
 import org.springframework.beans.factory.InitializingBean;
@@ -404,8 +405,8 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
     /**
      * Expand parms in the event logmsg
      */
-    private void expandParms(Logmsg logmsg, Event event, Map<String, Map<String, String>> decode) {
-        String strRet = AbstractEventUtil.getInstance().expandParms(logmsg.getContent(), event, decode);
+    private void expandParms(Logmsg logmsg, Event event, org.opennms.netmgt.xml.eventconf.Event econf, Map<String, Map<String, String>> decode) {
+        String strRet = expandParms(logmsg.getContent(), event, econf, decode);
         if (strRet != null) {
             logmsg.setContent(strRet);
         }
@@ -414,11 +415,11 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
     /**
      * Expand parms in the event autoaction(s)
      */
-    private void expandParms(Autoaction[] autoactions, Event event) {
+    private void expandParms(Autoaction[] autoactions, Event event, org.opennms.netmgt.xml.eventconf.Event econf) {
         boolean expanded = false;
 
         for (Autoaction action : autoactions) {
-            String strRet = AbstractEventUtil.getInstance().expandParms(action.getContent(), event);
+            String strRet = expandParms(action.getContent(), event, econf, null);
             if (strRet != null) {
                 action.setContent(strRet);
                 expanded = true;
@@ -433,11 +434,11 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
     /**
      * Expand parms in the event operaction(s)
      */
-    private void expandParms(Operaction[] operactions, Event event) {
+    private void expandParms(Operaction[] operactions, Event event, org.opennms.netmgt.xml.eventconf.Event econf) {
         boolean expanded = false;
 
         for (Operaction action : operactions) {
-            String strRet = AbstractEventUtil.getInstance().expandParms(action.getContent(), event);
+            String strRet = expandParms(action.getContent(), event, econf, null);
             if (strRet != null) {
                 action.setContent(strRet);
                 expanded = true;
@@ -452,8 +453,8 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
     /**
      * Expand parms in the event tticket
      */
-    private void expandParms(Tticket tticket, Event event) {
-        String strRet = AbstractEventUtil.getInstance().expandParms(tticket.getContent(), event);
+    private void expandParms(Tticket tticket, Event event, org.opennms.netmgt.xml.eventconf.Event econf) {
+        String strRet = expandParms(tticket.getContent(), event, econf, null);
         if (strRet != null) {
             tticket.setContent(strRet);
         }
@@ -470,13 +471,16 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
      * parameter named 'name', if present - %parm[# <num>]% is replaced by the
      * value of the parameter number 'num', if present - %parm[##]% is replaced
      * by the number of parameters
+     *
+     * Values copied from the event configuration are expanded with the
+     * templates compiled when it was loaded.
      */
-    private void expandParms(Event event, Map<String, Map<String, String>> decode) {
+    private void expandParms(Event event, org.opennms.netmgt.xml.eventconf.Event econf, Map<String, Map<String, String>> decode) {
         String strRet = null;
 
         // description
         if (event.getDescr() != null) {
-            strRet = AbstractEventUtil.getInstance().expandParms(event.getDescr(), event,decode);
+            strRet = expandParms(event.getDescr(), event, econf, decode);
             if (strRet != null) {
                 event.setDescr(strRet);
                 strRet = null;
@@ -485,12 +489,12 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
 
         // logmsg
         if (event.getLogmsg() != null) {
-            expandParms(event.getLogmsg(), event, decode);
+            expandParms(event.getLogmsg(), event, econf, decode);
         }
 
         // operinstr
         if (event.getOperinstruct() != null) {
-            strRet = AbstractEventUtil.getInstance().expandParms(event.getOperinstruct(), event);
+            strRet = expandParms(event.getOperinstruct(), event, econf, null);
             if (strRet != null) {
                 event.setOperinstruct(strRet);
                 strRet = null;
@@ -499,27 +503,27 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
 
         // autoaction
         if (event.getAutoaction() != null) {
-            expandParms(event.getAutoaction(), event);
+            expandParms(event.getAutoaction(), event, econf);
         }
 
         // operaction
         if (event.getOperaction() != null) {
-            expandParms(event.getOperaction(), event);
+            expandParms(event.getOperaction(), event, econf);
         }
 
         // tticket
         if (event.getTticket() != null) {
-            expandParms(event.getTticket(), event);
+            expandParms(event.getTticket(), event, econf);
         }
         
         // reductionKey
         if (event.getAlarmData() != null) {
-            strRet = AbstractEventUtil.getInstance().expandParms(event.getAlarmData().getReductionKey(), event);
+            strRet = expandParms(event.getAlarmData().getReductionKey(), event, econf, null);
             if (strRet != null) {
                 event.getAlarmData().setReductionKey(strRet);
             }
             strRet = null;
-            strRet = AbstractEventUtil.getInstance().expandParms(event.getAlarmData().getClearKey(), event);
+            strRet = expandParms(event.getAlarmData().getClearKey(), event, econf, null);
             if (strRet != null) {
             	event.getAlarmData().setClearKey(strRet);
             }
@@ -527,6 +531,22 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
 
     }
 
+    /**
+     * Expand a single value, using the template compiled for it when the
+     * event configuration was loaded if the value came from there unchanged.
+     */
+    private static String expandParms(String value, Event event, org.opennms.netmgt.xml.eventconf.Event econf, Map<String, Map<String, String>> decode) {
+        if (value == null) {
+            return null;
+        }
+        final ExpansionTemplate template = econf == null ? null : econf.getExpansionTemplate(value);
+        if (template == null) {
+            return AbstractEventUtil.getInstance().expandParms(value, event, decode);
+        } else {
+            return AbstractEventUtil.getInstance().expandParms(template, event, decode);
+        }
+    }
+
     /**
      * <p>
      * This method is invoked to check and configure a received event. The event
@@ -739,7 +759,7 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
         }// end fill of event using econf
 
         // do the event parm expansion
-        expandParms(e, decode);
+        expandParms(e, econf, decode);
 
     } // end expandEvent()
 
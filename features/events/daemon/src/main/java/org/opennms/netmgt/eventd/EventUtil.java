@@ -32,6 +32,7 @@ import java.sql.SQLException;
 import java.util.Map;
 
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.eventconf.ExpansionTemplate;
 
 /**
  * EventUtil is used primarily for the event parm expansion - has methods used
@@ -50,6 +51,8 @@ public interface EventUtil {
 	
 	String expandParms(String inp, Event event, Map<String, Map<String, String>> decode);
 
+	String expandParms(ExpansionTemplate template, Event event, Map<String, Map<String, String>> decode);
+
 	String getNamedParmValue(String string, Event event);
 
 	void expandMapValues(Map<String, String> parmMap, Event event);
@@ -30,6 +30,7 @@ package org.opennms.netmgt.eventd;
 
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -44,6 +45,7 @@ import org.opennms.core.criteria.Order;
 import org.opennms.core.criteria.Alias.JoinType;
 import org.opennms.core.criteria.restrictions.EqRestriction;
 import org.opennms.core.criteria.restrictions.LikeRestriction;
+import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.AssetRecordDao;
 import org.opennms.netmgt.dao.api.HwEntityDao;
 import org.opennms.netmgt.dao.api.IpInterfaceDao;
@@ -53,6 +55,7 @@ import org.opennms.netmgt.model.OnmsAssetRecord;
 import org.opennms.netmgt.model.OnmsHwEntity;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.eventconf.ExpansionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -85,13 +88,35 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
 
 	private final static Map<String, PropertyDescriptor> hwEntityDescriptorsByName = getDescriptorsForStrings(OnmsHwEntity.class);
 
+	private ExpansionLookupCache lookupCache;
+
     @Override
-    protected String getNodeLabel(long nodeId) {
-        return nodeDao.getLabelForId(Integer.valueOf((int)nodeId));
+    protected String getNodeLabel(final long nodeId) {
+        if (lookupCache == null) {
+            return nodeDao.getLabelForId(Integer.valueOf((int)nodeId));
+        }
+        return lookupCache.get((int)nodeId, TAG_NODELABEL, new ExpansionLookupCache.Loader() {
+            @Override
+            public String load() {
+                return nodeDao.getLabelForId(Integer.valueOf((int)nodeId));
+            }
+        });
     }
 
     @Override
-    protected String getIfAlias(long nodeId, String ipaddr) {
+    protected String getIfAlias(final long nodeId, final String ipaddr) {
+        if (lookupCache == null) {
+            return loadIfAlias(nodeId, ipaddr);
+        }
+        return lookupCache.get((int)nodeId, TAG_IFALIAS + ":" + ipaddr, new ExpansionLookupCache.Loader() {
+            @Override
+            public String load() {
+                return loadIfAlias(nodeId, ipaddr);
+            }
+        });
+    }
+
+    private String loadIfAlias(long nodeId, String ipaddr) {
         OnmsIpInterface iface = ipInterfaceDao.findByNodeIdAndIpAddress((int)nodeId, ipaddr);
         if (iface != null && iface.getSnmpInterface() != null) {
             return iface.getSnmpInterface().getIfAlias();
@@ -101,7 +126,19 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
     }
 
     @Override
-    protected String getAssetFieldValue(String parm, long nodeId) {
+    protected String getAssetFieldValue(final String parm, final long nodeId) {
+        if (lookupCache == null) {
+            return loadAssetFieldValue(parm, nodeId);
+        }
+        return lookupCache.get((int)nodeId, parm, new ExpansionLookupCache.Loader() {
+            @Override
+            public String load() {
+                return loadAssetFieldValue(parm, nodeId);
+            }
+        });
+    }
+
+    private String loadAssetFieldValue(String parm, long nodeId) {
         final Matcher matcher = ASSET_PARM_PATTERN.matcher(parm);
         if (!matcher.matches()) {
             LOG.warn("Unsupported asset field parameter '{}'.", parm);
@@ -118,7 +155,19 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
     }
 
     @Override
-    public String getHardwareFieldValue(String parm, long nodeId) {
+    public String getHardwareFieldValue(final String parm, final long nodeId) {
+        if (lookupCache == null) {
+            return loadHardwareFieldValue(parm, nodeId);
+        }
+        return lookupCache.get((int)nodeId, parm, new ExpansionLookupCache.Loader() {
+            @Override
+            public String load() {
+                return loadHardwareFieldValue(parm, nodeId);
+            }
+        });
+    }
+
+    private String loadHardwareFieldValue(String parm, long nodeId) {
         final Matcher matcher = HW_PARM_PATTERN.matcher(parm);
         if (!matcher.matches()) {
             LOG.warn("Unsupported hardware field parameter '{}'.", parm);
@@ -142,7 +191,6 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
                         Order.desc("id")
                 }));
             List<OnmsHwEntity> hwEntities = hwEntityDao.findMatching(criteria);
-            System.err.println(hwEntities);
             if (hwEntities.size() < 1) {
                 return null;
             }
@@ -183,7 +231,18 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
      */
     @Override
     public String getHostName(final int nodeId, final String hostip) {
+        if (lookupCache == null) {
+            return loadHostName(nodeId, hostip);
+        }
+        return lookupCache.get(nodeId, TAG_HOST + ":" + hostip, new ExpansionLookupCache.Loader() {
+            @Override
+            public String load() {
+                return loadHostName(nodeId, hostip);
+            }
+        });
+    }
 
+    private String loadHostName(final int nodeId, final String hostip) {
         OnmsIpInterface ints = ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, hostip);
         if (ints == null) {
             return hostip;
@@ -205,6 +264,43 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
         return super.expandParms(inp, event, decode);
     }
 
+    @Override
+    @Transactional(readOnly=true)
+    public String expandParms(ExpansionTemplate template, Event event, Map<String, Map<String, String>> decode) {
+        return super.expandParms(template, event, decode);
+    }
+
+    /**
+     * Resolves the interface host name once per node and address while
+     * a lookup cache is set, since each resolution may be a DNS query.
+     */
+    @Override
+    protected String resolveHostName(final long nodeId, final InetAddress addr) {
+        if (lookupCache == null) {
+            return super.resolveHostName(nodeId, addr);
+        }
+        return lookupCache.get((int)nodeId, TAG_INTERFACE_RESOLVE + ":" + InetAddressUtils.str(addr), new ExpansionLookupCache.Loader() {
+            @Override
+            public String load() {
+                return addr.getHostName();
+            }
+        });
+    }
+
+    public ExpansionLookupCache getLookupCache() {
+        return lookupCache;
+    }
+
+    /**
+     * Sets the cache used for node, interface, asset and hardware lookups.
+     * Without one, every expansion queries the database.
+     *
+     * @param lookupCache a {@link org.opennms.netmgt.eventd.ExpansionLookupCache} object.
+     */
+    public void setLookupCache(ExpansionLookupCache lookupCache) {
+        this.lookupCache = lookupCache;
+    }
+
     /**
      * Retrieves the property with the given name on the bean.
      *
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventIpcManager;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * A bounded cache of the node labels, interface, asset and hardware values
+ * that {@link EventUtilDaoImpl} looks up while expanding event parameters,
+ * so that a burst of events from one node does not repeat the same queries.
+ *
+ * <p>Values are grouped by node ID. A node's values are dropped when an
+ * event reports that the node, its interfaces, its assets or its hardware
+ * inventory changed, when the node is the least recently used one beyond
+ * <code>maxNodes</code>, and after <code>timeToLive</code> milliseconds
+ * to pick up changes that are not announced by an event.</p>
+ */
+public class ExpansionLookupCache implements EventListener, InitializingBean, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExpansionLookupCache.class);
+
+    /**
+     * Looks up a value on a cache miss.
+     */
+    public interface Loader {
+        String load();
+    }
+
+    /**
+     * Events after which a node's cached values are dropped.
+     */
+    protected static final List<String> INVALIDATING_UEIS = Arrays.asList(
+        EventConstants.NODE_UPDATED_EVENT_UEI,
+        EventConstants.NODE_INFO_CHANGED_EVENT_UEI,
+        EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+        EventConstants.NODE_DELETED_EVENT_UEI,
+        EventConstants.DUP_NODE_DELETED_EVENT_UEI,
+        EventConstants.ASSET_INFO_CHANGED_EVENT_UEI,
+        EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+        EventConstants.INTERFACE_DELETED_EVENT_UEI,
+        EventConstants.INTERFACE_INDEX_CHANGED_EVENT_UEI,
+        EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+        EventConstants.HARDWARE_INVENTORY_SUCCESSFUL_UEI
+    );
+
+    private static final Object NULL_VALUE = new Object();
+
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    private final AtomicLong m_invalidations = new AtomicLong();
+
+    private int m_maxNodes = Integer.getInteger("org.opennms.eventd.lookupCache.maxNodes", 10000);
+    private long m_timeToLive = Long.getLong("org.opennms.eventd.lookupCache.timeToLive", TimeUnit.MINUTES.toMillis(5));
+    private EventIpcManager m_eventIpcManager;
+
+    /**
+     * Guarded by itself, in access order so the eldest entry is the least
+     * recently used node.
+     */
+    private final Map<Integer, NodeValues> m_nodes = new LinkedHashMap<Integer, NodeValues>(16, 0.75f, true) {
+        private static final long serialVersionUID = -2370484128413364718L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, NodeValues> eldest) {
+            return size() > m_maxNodes;
+        }
+    };
+
+    private static final class NodeValues {
+        private final long m_expires;
+        private final ConcurrentMap<String, Object> m_values = new ConcurrentHashMap<String, Object>();
+
+        private NodeValues(final long expires) {
+            m_expires = expires;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void afterPropertiesSet() {
+        if (m_eventIpcManager == null) {
+            LOG.warn("No event manager set; cached lookups will only expire after {} ms.", m_timeToLive);
+        } else {
+            m_eventIpcManager.addEventListener(this, INVALIDATING_UEIS);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void destroy() {
+        if (m_eventIpcManager != null) {
+            m_eventIpcManager.removeEventListener(this);
+        }
+    }
+
+    /**
+     * Returns the cached value for a node and key, calling the loader and
+     * caching its result (including null) on a miss.
+     *
+     * @param nodeId the node the value belongs to
+     * @param key identifies the value within the node, e.g. <code>asset[building]</code>
+     * @param loader looks up the value on a miss
+     * @return the value, or null
+     */
+    public String get(final int nodeId, final String key, final Loader loader) {
+        if (m_maxNodes <= 0) {
+            return loader.load();
+        }
+
+        final NodeValues values = getNodeValues(nodeId);
+        final Object cached = values.m_values.get(key);
+        if (cached != null) {
+            m_hits.incrementAndGet();
+            return cached == NULL_VALUE ? null : (String)cached;
+        }
+
+        m_misses.incrementAndGet();
+        final String value = loader.load();
+        // if the node was invalidated during the load this goes to the discarded entry
+        values.m_values.put(key, value == null ? NULL_VALUE : value);
+        return value;
+    }
+
+    private NodeValues getNodeValues(final int nodeId) {
+        final long now = System.currentTimeMillis();
+        synchronized (m_nodes) {
+            NodeValues values = m_nodes.get(nodeId);
+            if (values == null || values.m_expires <= now) {
+                values = new NodeValues(now + m_timeToLive);
+                m_nodes.put(nodeId, values);
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Drops everything cached for a node.
+     *
+     * @param nodeId a int.
+     */
+    public void invalidate(final int nodeId) {
+        synchronized (m_nodes) {
+            m_nodes.remove(nodeId);
+        }
+        m_invalidations.incrementAndGet();
+    }
+
+    /**
+     * Drops everything.
+     */
+    public void invalidateAll() {
+        synchronized (m_nodes) {
+            m_nodes.clear();
+        }
+        m_invalidations.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return "Eventd:ExpansionLookupCache";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onEvent(final Event event) {
+        if (!event.hasNodeid()) {
+            LOG.debug("Dropping all cached lookups after {} without a node", event.getUei());
+            invalidateAll();
+            return;
+        }
+
+        LOG.debug("Dropping cached lookups for node {} after {}", event.getNodeid(), event.getUei());
+        invalidate(event.getNodeid().intValue());
+
+        if (EventConstants.INTERFACE_REPARENTED_EVENT_UEI.equals(event.getUei())) {
+            for (final Parm parm : event.getParmCollection()) {
+                if (EventConstants.PARM_OLD_NODEID.equals(parm.getParmName())) {
+                    try {
+                        invalidate(Integer.parseInt(EventConstants.getValueAsString(parm.getValue())));
+                    } catch (final NumberFormatException e) {
+                        invalidateAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHits() {
+        return m_hits.get();
+    }
+
+    /**
+     * @return the number of lookups that went to the database
+     */
+    public long getMisses() {
+        return m_misses.get();
+    }
+
+    /**
+     * @return the number of times a node, or the whole cache, was dropped
+     */
+    public long getInvalidations() {
+        return m_invalidations.get();
+    }
+
+    /**
+     * @return the number of nodes with cached values
+     */
+    public int getSize() {
+        synchronized (m_nodes) {
+            return m_nodes.size();
+        }
+    }
+
+    public int getMaxNodes() {
+        return m_maxNodes;
+    }
+
+    /**
+     * @param maxNodes the number of nodes to keep values for; 0 disables caching
+     */
+    public void setMaxNodes(final int maxNodes) {
+        m_maxNodes = maxNodes;
+    }
+
+    public long getTimeToLive() {
+        return m_timeToLive;
+    }
+
+    /**
+     * @param timeToLive how long, in milliseconds, a node's values are kept
+     */
+    public void setTimeToLive(final long timeToLive) {
+        m_timeToLive = timeToLive;
+    }
+
+    public EventIpcManager getEventIpcManager() {
+        return m_eventIpcManager;
+    }
+
+    public void setEventIpcManager(final EventIpcManager eventIpcManager) {
+        m_eventIpcManager = eventIpcManager;
+    }
+}
@@ -52,9 +52,9 @@ import org.springframework.util.Assert;
  * This fiber sets up an server socket that accepts incoming connections on the
  * configured port (port 5817 by default).
  *
- * When a connection is established a new thread is started to process the
- * socket connection. The event document is decoded and each of the events are
- * passed to the handlers. Based upon the action of the handlers an event receipt
+ * All connections are serviced by a single selector thread, and the event
+ * documents they send are decoded by a fixed pool of worker threads, each of
+ * the events being passed to the handlers as soon as it is read. Based upon the action of the handlers an event receipt
  * is generated and sent to the remote client.
  *
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
@@ -107,6 +107,11 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
      */
     private int m_recsPerConn;
 
+    /**
+     * The number of threads decoding event records.
+     */
+    private int m_workers;
+
     /**
      * The IP address that the TcpServer will listen on.  If null, bind to all
      * interfaces.
@@ -141,6 +146,7 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
         m_worker = null;
         m_logPrefix = null;
         m_recsPerConn = UNLIMITED_EVENTS;
+        m_workers = TcpServer.DEFAULT_WORKERS;
     }
 
     /**
@@ -169,6 +175,7 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
             if (m_recsPerConn != UNLIMITED_EVENTS) {
                 m_server.setEventsPerConnection(m_recsPerConn);
             }
+            m_server.setWorkers(m_workers);
         } catch (IOException e) {
             throw new UndeclaredThrowableException(e, "Error opening server socket: " + e);
         }
@@ -387,6 +394,19 @@ public final class TcpEventReceiver implements EventReceiver, TcpEventReceiverMB
         m_recsPerConn = number.intValue();
     }
 
+    /**
+     * {@inheritDoc}
+     * The number of threads used to decode the event records received over
+     * all connections.
+     */
+    @Override
+    public synchronized void setWorkers(final Integer number) {
+        assertNotRunning();
+        Assert.isTrue(number.intValue() > 0, "The number of workers must be positive");
+
+        m_workers = number.intValue();
+    }
+
     private void assertNotRunning() {
         Assert.state(m_status == START_PENDING || m_status == STOPPED, "The fiber is already running and cannot be modified or started");
     }
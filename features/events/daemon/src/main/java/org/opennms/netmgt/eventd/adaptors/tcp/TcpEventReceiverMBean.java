@@ -103,4 +103,14 @@ public interface TcpEventReceiverMBean extends BaseOnmsMBean{
      *            The number of event records.
      */
     void setEventsPerConnection(Integer number);
+
+    /**
+     * The number of worker threads that decode and dispatch the event
+     * records received over all connections. This can only be set prior to
+     * starting the managed bean.
+     *
+     * @param number
+     *            The number of worker threads.
+     */
+    void setWorkers(Integer number);
 }
@@ -28,415 +28,146 @@
 
 package org.opennms.netmgt.eventd.adaptors.tcp;
 
-import java.io.BufferedInputStream;
-import java.io.EOFException;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InterruptedIOException;
-import java.io.OutputStream;
-import java.io.PipedOutputStream;
-import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.List;
 
-import org.opennms.core.utils.InetAddressUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 /**
- * This class is used to do the initial read of data from the input stream and
- * break it up into records. Each record is written to a piped writer. This
- * means that the reader never gets too far ahead of the parse. It means more
- * threads for less memory usage. As always there is a tradeoff.
+ * This class is used to break the raw bytes read from a connection up into
+ * records. A record is everything from the first <code>&lt;</code> up to and
+ * including the closing <code>&lt;/log&gt;</code> tag (optionally namespace
+ * prefixed). Whitespace between records is discarded.
+ *
+ * The handler keeps no thread of its own; the selector thread feeds it
+ * whatever bytes are available and collects the records completed so far.
  * 
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
  * @author <a href="http;//www.opennms.org">OpenNMS </a>
  * 
  */
-final class TcpRecordHandler implements Runnable {
-    private static final Logger LOG = LoggerFactory.getLogger(TcpRecordHandler.class);
-    /**
-     * When set the runnable should exit as fast as possible.
-     */
-    private volatile boolean m_stop;
-
+final class TcpRecordHandler {
     /**
-     * The thread context running this runnable
+     * The state between records, where everything up to the next
+     * <code>&lt;</code> is discarded.
      */
-    private Thread m_context;
+    private static final int BETWEEN_RECORDS = 8;
 
     /**
-     * The list of piped output streams and execptions.
+     * The largest record the handler will buffer before giving up on the
+     * connection.
      */
-    private List<Object> m_xchange;
+    private final int m_maxRecordSize;
 
     /**
-     * The input stream socket
+     * The bytes of the record currently being assembled.
      */
-    private Socket m_connection;
+    private final ByteArrayOutputStream m_record = new ByteArrayOutputStream(4096);
 
     /**
-     * The current pipe.
+     * The current state of the tokenizer, which looks for
+     * '&lt;/([a-zA-Z0-9]+:)?log&gt;'.
      */
-    private OutputStream m_out;
-
-    /**
-     * The set of state managers
-     */
-    private StateManager[] m_tokenizer;
-
-    /**
-     * This class is use to model the set of states, the attached
-     * TcpRecordHandler, and the transition actions.
-     */
-    private static class StateManager {
-        /**
-         * The level of this manager
-         */
-        protected int m_level;
-
-        /**
-         * The record handler this manager is attached to
-         */
-        protected TcpRecordHandler m_handler;
-
-        /**
-         * Constructs a new state manager.
-         * 
-         * @param level
-         *            The level of the state manager
-         * @param handler
-         *            The handler to fire events at.
-         */
-        StateManager(final int level, final TcpRecordHandler handler) {
-            m_level = level;
-            m_handler = handler;
-        }
-
-        /**
-         * The level for this manager
-         */
-        @SuppressWarnings("unused")
-        int getLevel() {
-            return m_level;
-        }
-
-        /**
-         * handle the next character, returns the next level
-         */
-        int next(final char ch) throws IOException {
-            onTransition(ch);
-            return m_level;
-        }
-
-        /**
-         * Handle the transition from character to character.
-         */
-        void onTransition(final char ch) throws IOException {
-            m_handler.forward(ch);
-        }
-    }
+    private int m_level = BETWEEN_RECORDS;
 
     /**
-     * Closes the current stream if any
+     * Constructs a new record handler.
+     * 
+     * @param maxRecordSize
+     *            The largest record, in bytes, that will be accepted.
      */
-    private void closeStream() throws IOException {
-        // close the current output stream
-        if (m_out != null) {
-            m_out.close();
-        }
-        m_out = null;
+    TcpRecordHandler(final int maxRecordSize) {
+        m_maxRecordSize = maxRecordSize;
     }
 
     /**
-     * Allocates a new stream
+     * Consumes all remaining bytes in the buffer, adding each completed
+     * record to the passed list.
+     * 
+     * @param buffer
+     *            The bytes read from the connection.
+     * @param records
+     *            The list completed records are added to.
+     * @throws IOException
+     *             Thrown if the record being assembled exceeds the maximum
+     *             record size. The records completed before it have already
+     *             been added to the list.
      */
-    private void newStream() throws IOException {
-        LOG.debug("Opening new PipedOutputStream and adding it to the queue");
-
-        // create a new piped writer
-        final PipedOutputStream pipeOut = new PipedOutputStream();
-        try {
-            synchronized (pipeOut) {
-                synchronized (m_xchange) {
-                    m_xchange.add(pipeOut);
-                    m_xchange.notify();
-                }
-                LOG.debug("Added pipe to the xchange list");
-
-                pipeOut.wait();
-
-                LOG.debug("Pipe Signaled");
+    void append(final ByteBuffer buffer, final List<byte[]> records) throws IOException {
+        while (buffer.hasRemaining()) {
+            final char ch = (char) (buffer.get() & 0xff);
+            if (m_level == BETWEEN_RECORDS && ch != '<') {
+                continue;
             }
-        } catch (final InterruptedException e) {
-		LOG.debug("An I/O error occured.", e);
-            throw new IOException("The thread was interrupted");
-        }
-
-        LOG.debug("PipedOutputStream connected");
 
-        m_out = pipeOut;
-    }
+            m_record.write(ch);
+            m_level = next(m_level, ch);
 
-    /**
-     * forwards the characters to the attached pipe.
-     */
-    private void forward(final char ch) throws IOException {
-        try {
-            if (m_out != null) {
-                m_out.write((int) ch);
+            if (m_level == BETWEEN_RECORDS) {
+                records.add(m_record.toByteArray());
+                m_record.reset();
+            } else if (m_record.size() > m_maxRecordSize) {
+                throw new IOException("Event record exceeds the maximum size of " + m_maxRecordSize + " bytes");
             }
-        } catch (final IOException e) {
-		LOG.debug("An I/O error occured.", e);
-            throw e;
         }
     }
 
     /**
-     * Constructs a new record handler.
-     * 
-     * @param s
-     *            The socket to read from
-     * @param xchange
-     *            The io exchange
+     * Returns true if part of a record has been read but not yet completed.
      */
-    TcpRecordHandler(final Socket s, final List<Object> xchange) {
-        m_stop = false;
-        m_context = null;
-        m_xchange = xchange;
-        m_connection = s;
-
-        // looks for '</([a-zA-Z0-9]+:)?log>'
-        m_tokenizer = new StateManager[] { new StateManager(0, this) {
-            @Override
-            int next(final char ch) throws IOException {
-                onTransition(ch);
-                if (ch == '<') {
-                    return 1;
-                }
-                return m_level;
-            }
-        }, new StateManager(1, this) {
-            @Override
-            int next(final char ch) throws IOException {
-                onTransition(ch);
-                if (ch == '/') {
-                    return 2;
-                }
-                return 0;
-            }
-        }, new StateManager(2, this) {
-            @Override
-            int next(final char ch) throws IOException {
-                onTransition(ch);
-                if (ch == 'l') {
-                    return 5;
-                } else if (Character.isLetterOrDigit(ch)){
-                    return 3;
-                }
-                return 0;
-            }
-        }, new StateManager(3, this) {
-            @Override
-            int next(final char ch) throws IOException {
-                onTransition(ch);
-                if (ch == ':') {
-                    return 4;
-                } else if (Character.isLetterOrDigit(ch)) {
-                    return m_level;
-                }
-                return 0;
-            }
-        }, new StateManager(4, this) {
-            @Override
-            int next(final char ch) throws IOException {
-                onTransition(ch);
-                if (ch == 'l') {
-                    return 5;
-                }
-                return 0;
-            }
-        }, new StateManager(5, this) {
-            @Override
-            int next(final char ch) throws IOException {
-                onTransition(ch);
-                if (ch == 'o') {
-                    return 6;
-                }
-                return 0;
-            }
-        }, new StateManager(6, this) {
-            @Override
-            int next(final char ch) throws IOException {
-                onTransition(ch);
-                if (ch == 'g') {
-                    return 7;
-                }
-                return 0;
-            }
-        }, new StateManager(7, this) {
-            @Override
-            int next(final char ch) throws IOException {
-                onTransition(ch);
-                if (ch == '>') {
-                    m_handler.closeStream();
-                    return 8;
-                }
-                return 0;
-            }
-        },
-        
-        // The state tree starts here!
-        new StateManager(8, this) { // gobbles up white space after
-            // record
-            @Override
-            int next(final char ch) throws IOException {
-                if (ch == '<') {
-                    onTransition(ch);
-                    return 1;
-                } // else discard
-                return m_level;
-            }
-
-            @Override
-            void onTransition(final char ch) throws IOException {
-                m_handler.newStream();
-                super.onTransition(ch);
-            }
-        } };
+    boolean isPartial() {
+        return m_level != BETWEEN_RECORDS;
     }
 
     /**
-     * Returns true if the context is alive
+     * Handle the next character, returns the next level.
      */
-    boolean isAlive() {
-        if (m_context != null) {
-            return m_context.isAlive();
-        } else {
-            return false;
+    private static int next(final int level, final char ch) {
+        switch (level) {
+        case 0:
+            return ch == '<' ? 1 : 0;
+        case 1:
+            return ch == '/' ? 2 : (ch == '<' ? 1 : 0);
+        case 2:
+            if (ch == 'l') {
+                return 5;
+            }
+            return Character.isLetterOrDigit(ch) ? 3 : restart(ch);
+        case 3:
+            if (ch == ':') {
+                return 4;
+            }
+            return Character.isLetterOrDigit(ch) ? 3 : restart(ch);
+        case 4:
+            return ch == 'l' ? 5 : restart(ch);
+        case 5:
+            return ch == 'o' ? 6 : prefix(ch);
+        case 6:
+            return ch == 'g' ? 7 : prefix(ch);
+        case 7:
+            return ch == '>' ? BETWEEN_RECORDS : prefix(ch);
+        case BETWEEN_RECORDS:
+            return 1;
+        default:
+            throw new IllegalStateException("Unknown tokenizer state " + level);
         }
     }
 
     /**
-     * Stops and joins the current context.
+     * What looked like the start of <code>log</code> may still turn out to
+     * be a namespace prefix such as <code>lo:</code>.
      */
-    void stop() throws InterruptedException {
-        m_stop = true;
-        if (m_context != null) {
-		LOG.debug("Interrupting thread {}", m_context.getName());
-            m_context.interrupt();
-            LOG.debug("Joining Thread {}", m_context.getName());
-            m_context.join();
-            LOG.debug("Thread {} Joined", m_context.getName());
+    private static int prefix(final char ch) {
+        if (ch == ':') {
+            return 4;
         }
+        return Character.isLetterOrDigit(ch) ? 3 : restart(ch);
     }
 
     /**
-     * The execution context.
+     * A character that breaks a partial match may itself start a new one.
      */
-    @Override
-    public void run() {
-        // get the thread context right off
-        m_context = Thread.currentThread();
-        synchronized (m_context) {
-            m_context.notifyAll();
-        }
-
-        /*
-         * Check the stop flag, if it is set then go a head and exit
-         * before doing any work on the socket
-         */
-        if (m_stop) {
-            LOG.debug("Stop flag set before thread startup, thread exiting");
-
-            return;
-        } else {
-            LOG.debug("Thread started, remote is {}", InetAddressUtils.str(m_connection.getInetAddress()));
-        }
-
-        // get the input stream
-        InputStream socketIn = null;
-        try {
-            m_connection.setSoTimeout(500); // needed in case connection closed!
-            socketIn = new BufferedInputStream(m_connection.getInputStream());
-        } catch (final IOException e) {
-            if (!m_stop) {
-                LOG.warn("An I/O Exception occured.", e);
-            }
-            m_xchange.add(e);
-
-            LOG.debug("Thread exiting due to socket exception, stop flag = {}", Boolean.valueOf(m_stop));
-
-            return;
-        }
-
-        int level = 8;
-        int ch = 0;
-        boolean moreInput = true;
-        while (moreInput) {
-            // check to see if the thread is interrupted
-            if (Thread.interrupted()) {
-                LOG.debug("Thread Interrupted");
-                break;
-            }
-
-            try {
-                ch = socketIn.read();
-                if (ch == -1) {
-                    moreInput = false;
-                    continue;
-                }
-
-            } catch (final InterruptedIOException e) {
-                // this was expected
-                continue;
-            } catch (final EOFException e) {
-                m_xchange.add(e);
-                moreInput = false;
-                continue;
-            } catch (final IOException e) {
-                m_xchange.add(e);
-                if (!m_stop) {
-                    LOG.warn("An I/O error occured reading from the remote host.", e);
-                }
-                moreInput = false;
-                continue;
-            }
-
-            try {
-                level = m_tokenizer[level].next((char) ch);
-            } catch (final IOException e) {
-                if (!m_stop) {
-                    LOG.warn("An I/O error occured writing to the processor stream.", e);
-                    LOG.warn("Discarding the remainder of the event contents");
-                    try {
-                        /*
-                         * this will discard current stream
-                         * and cause all forwards to be discarded.
-                         */
-                        closeStream();
-                    } catch (final IOException e2) {
-                    }
-                } else {
-                    m_xchange.add(e);
-                    moreInput = false;
-                }
-            }
-        }
-
-        // ensure that the receiver knows that no new element is coming!
-        try {
-            if (m_out != null) {
-                m_out.close();
-            }
-        } catch (final IOException e) {
-            if (!m_stop) {
-                LOG.warn("An I/O Error occured closing the processor stream.", e);
-            }
-        }
-
-        m_xchange.add(new EOFException("No More Input"));
-
-        LOG.debug("Thread Terminated");
-
+    private static int restart(final char ch) {
+        return ch == '<' ? 1 : 0;
     }
 }
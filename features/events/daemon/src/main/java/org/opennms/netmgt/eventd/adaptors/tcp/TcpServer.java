@@ -29,15 +29,22 @@
 package org.opennms.netmgt.eventd.adaptors.tcp;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.fiber.Fiber;
 import org.opennms.core.logging.Logging;
 import org.opennms.core.utils.InetAddressUtils;
@@ -47,19 +54,20 @@ import org.slf4j.LoggerFactory;
 
 /**
  * This class implement the server features necessary to receive events from
- * incoming connections.
- * 
+ * incoming connections. A single selector thread accepts connections and does
+ * all of the socket I/O; the event records read from the connections are
+ * parsed and handed to the event handlers by a small, fixed pool of worker
+ * threads, so the number of threads no longer grows with the number of
+ * connected agents.
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
  * @author <a href="http;//www.opennms.org">OpenNMS </a>
- * 
  */
 final class TcpServer implements Runnable {
     
     private static final Logger LOG = LoggerFactory.getLogger(TcpServer.class);
     
     /**
-     * The default TCP/IP port where the server listens for connections. Each
-     * connection to the server will be processed by its own thread.
+     * The default TCP/IP port where the server listens for connections.
      */
     static final int TCP_PORT = 5817;
 
@@ -68,6 +76,22 @@ final class TcpServer implements Runnable {
      */
     static final String DEFAULT_IP_ADDRESS = "127.0.0.1";
 
+    /**
+     * The default number of threads used to process event records.
+     */
+    static final int DEFAULT_WORKERS = 5;
+
+    /**
+     * The largest event record, in bytes, a connection may send. Connections
+     * sending anything larger are dropped.
+     */
+    private static final int MAX_RECORD_SIZE = Integer.getInteger("org.opennms.netmgt.eventd.tcp.maxRecordSize", 16 * 1024 * 1024);
+
+    /**
+     * The size of the buffer the selector thread reads into.
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
     /**
      * The TCP/IP Port for the server socket's binding. By default this should
      * be equal to {@link #TCP_PORT TCP_PORT}but it can be overridden in the
@@ -76,34 +100,36 @@ final class TcpServer implements Runnable {
     private int m_tcpPort;
 
     /**
-     * The TCP/IP Port for the server socket's binding. By default this should
-     * be equal to {@link #TCP_PORT TCP_PORT}but it can be overridden in the
-     * constructor.
+     * The server socket channel, accepting connections on
+     * {@link #m_tcpPort m_tcpPort}.
      */
-    private ServerSocket m_tcpSock;
+    private ServerSocketChannel m_tcpSock;
 
     /**
-     * When set true the server thread will exit.
+     * The selector used to multiplex the server socket and all connections.
      */
-    private volatile boolean m_stop;
+    private Selector m_selector;
+
+    /**
+     * Connections whose interest set has to be updated by the selector
+     * thread, because a worker queued a receipt or finished its records.
+     */
+    private final Queue<TcpStreamHandler> m_pendingUpdates = new ConcurrentLinkedQueue<TcpStreamHandler>();
+
+    /**
+     * The threads that parse and dispatch event records.
+     */
+    private volatile ExecutorService m_workers;
 
     /**
-     * <p>
-     * The list of receivers that are currently being processed. Each instance
-     * in this list is of type {@link java.lang.Thread Thread}and will remain
-     * in the list so long as it's alive.
-     * </p>
-     * 
-     * <p>
-     * This list is periodically cleaned by the main server thread.
-     * </p>
+     * When set true the server thread will exit.
      */
-    private List<TcpStreamHandler> m_receivers;
+    private volatile boolean m_stop;
 
     /**
      * The thread which is executing the server context
      */
-    private Thread m_context;
+    private volatile Thread m_context;
 
     /**
      * The parent fiber.
@@ -125,12 +151,21 @@ final class TcpServer implements Runnable {
      */
     private int m_recsPerConn;
 
+    /**
+     * the number of worker threads
+     */
+    private int m_workerCount;
+
+    /**
+     * the largest event record accepted on a connection, in bytes
+     */
+    private int m_maxRecordSize;
+
     private InetAddress m_ipAddress;
 
     /**
      * Constructs a new instance of an server to handle incoming tcp
      * connections.
-     *
      * @param parent
      *            The parent fiber
      * @param handlers a {@link java.util.List} object.
@@ -143,12 +178,12 @@ final class TcpServer implements Runnable {
     /**
      * Constructs a new instance of an server to handle incoming TCP
      * connections.
-     *
      * @param parent
      *            The parent fiber
      * @param port
      *            The port to listen on.
-     * @param address TODO
+     * @param address
+     *            The address to listen on, or null for all interfaces.
      * @param handlers a {@link java.util.List} object.
      * @throws java.io.IOException if any.
      */
@@ -156,16 +191,23 @@ final class TcpServer implements Runnable {
         m_parent = parent;
         m_tcpPort = port;
         m_ipAddress = address;
-        m_receivers = new LinkedList<TcpStreamHandler>();
         m_stop = false;
         m_context = null;
         m_handlers = handlers;
         m_logPrefix = org.opennms.netmgt.eventd.Eventd.LOG4J_CATEGORY;
         m_recsPerConn = TcpEventReceiver.UNLIMITED_EVENTS;
+        m_workerCount = DEFAULT_WORKERS;
+        m_maxRecordSize = MAX_RECORD_SIZE;
 
         try {
-            m_tcpSock = new ServerSocket(m_tcpPort, 0, m_ipAddress);
+            m_selector = Selector.open();
+            m_tcpSock = ServerSocketChannel.open();
+            m_tcpSock.socket().setReuseAddress(true);
+            m_tcpSock.socket().bind(new InetSocketAddress(m_ipAddress, m_tcpPort));
+            m_tcpSock.configureBlocking(false);
+            m_tcpSock.register(m_selector, SelectionKey.OP_ACCEPT);
         } catch (IOException e) {
+            closeQuietly();
             IOException n = new IOException("Could not create listening TCP socket on " + m_ipAddress + ":" + m_tcpPort + ": " + e);
             n.initCause(e);
             throw n;
@@ -175,7 +217,6 @@ final class TcpServer implements Runnable {
     /**
      * This is called inform the current execution of this object is stopped.
      * Once called the object cannot be reused in another thread.
-     *
      * @throws java.lang.InterruptedException if any.
      */
     public void stop() throws InterruptedException {
@@ -183,34 +224,17 @@ final class TcpServer implements Runnable {
 
         // Stop this context
         m_stop = true;
-        if (m_context != null) {
-            LOG.debug("Interrupting and joining context thread {}", m_context.getName());
-
-            m_context.interrupt();
-            m_context.join();
-
-            LOG.debug("Thread context stopped and joined {}", m_context.getName());
+        m_selector.wakeup();
 
-            m_context = null;
-        }
+        final Thread context = m_context;
+        if (context != null) {
+            LOG.debug("Joining context thread {}", context.getName());
 
-        LOG.debug("Attempting to stop and join all stream handlers");
-        LOG.debug("There are {} receivers", m_receivers.size());
+            context.join();
 
-        // stop all the receivers
-        int ndx = 0; // for tracing!
-        Iterator<TcpStreamHandler> i = m_receivers.iterator();
-        while (i.hasNext()) {
-            TcpStreamHandler t = i.next();
-            if (t.isAlive()) {
-                LOG.debug("Calling stop on handler index {}", ndx);
+            LOG.debug("Thread context stopped and joined {}", context.getName());
 
-                t.stop();
-
-                LOG.debug("Stopped handler index {}", ndx);
-            }
-            ndx++;
-            i.remove();
+            m_context = null;
         }
 
         LOG.debug("All TCP Handlers are stopped and removed");
@@ -218,31 +242,52 @@ final class TcpServer implements Runnable {
 
     /**
      * Returns true if this runnable is executing.
-     *
      * @return a boolean.
      */
     public boolean isAlive() {
-        boolean rc = false;
-        if (m_context != null) {
-            rc = m_context.isAlive();
-        }
+        final Thread context = m_context;
+        return context != null && context.isAlive();
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     */
+    int getLocalPort() {
+        return m_tcpSock.socket().getLocalPort();
+    }
+
+    /**
+     * Returns true once the server has been asked to stop.
+     */
+    boolean isStopping() {
+        return m_stop || m_parent.getStatus() == Fiber.STOP_PENDING || m_parent.getStatus() == Fiber.STOPPED;
+    }
 
-        return rc;
+    /**
+     * Runs the passed connection's record processing on a worker thread.
+     */
+    void execute(final TcpStreamHandler handler) {
+        m_workers.execute(handler);
+    }
+
+    /**
+     * Asks the selector thread to update the interest set of the passed
+     * connection.
+     */
+    void update(final TcpStreamHandler handler) {
+        m_pendingUpdates.add(handler);
+        m_selector.wakeup();
     }
 
     /**
      * The logic execution context to accept and process incoming connection
-     * requests. When a new connection is received a new thread of control is
-     * created to process the connection. This method encapsulates that control
-     * logic so that it can be executed in it's own java thread.
+     * requests and the data sent over them. This method encapsulates that
+     * control logic so that it can be executed in it's own java thread.
      */
     @Override
     public void run() {
         // get the thread context for the ability to stop the process
         m_context = Thread.currentThread();
-        synchronized (m_context) {
-            m_context.notifyAll();
-        }
 
         // get the log information
         Logging.putPrefix(m_logPrefix);
@@ -251,43 +296,18 @@ final class TcpServer implements Runnable {
         if (m_stop) {
             LOG.debug("Stop flag set on thread startup");
 
-            try {
-                if (m_tcpSock != null) {
-                    m_tcpSock.close();
-                }
-
-                LOG.debug("The socket has been closed");
-            } catch (Throwable e) {
-                LOG.warn("An exception occured closing the socket", e);
-            }
+            closeQuietly();
 
             LOG.debug("Thread exiting");
 
             return;
         }
 
-        LOG.debug("Server connection processor started on {}:{}", m_ipAddress, m_tcpPort);
+        m_workers = Executors.newFixedThreadPool(m_workerCount, new LogPreservingThreadFactory(m_parent.getName() + " Worker", m_workerCount));
 
-        /*
-         *
-         * Set the initial timeout on the socket. This allows
-         * the thread to wake up every 1/2 second and check the
-         * shutdown status.
-         */
-        try {
-            m_tcpSock.setSoTimeout(500);
-        } catch (SocketException e) {
-            if (!m_stop) {
-                LOG.warn("An I/O exception occured setting the socket timeout", e);
-            }
+        LOG.debug("Server connection processor started on {}:{} with {} workers", m_ipAddress, m_tcpPort, m_workerCount);
 
-            LOG.debug("Thread exiting due to socket error", e);
-
-            return;
-        }
-        
-        // used to avoid seeing the trace message repeatedly
-        boolean ioInterrupted = false;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
 
         /*
          * Check the status of the fiber and respond
@@ -295,85 +315,121 @@ final class TcpServer implements Runnable {
          * STOP PENDING state then shutdown occurs by exiting
          * the while loop
          */
-        while (m_parent.getStatus() != Fiber.STOPPED && m_parent.getStatus() != Fiber.STOP_PENDING && !m_stop) {
+        while (!isStopping()) {
             try {
-                if (!ioInterrupted) {
-                    LOG.debug("Waiting for new connection");
-                }
-
-                /*
-                 * Get the newbie socket connection from the client.
-                 * After accepting the connection start up a thread
-                 * to process the request
-                 */
-                Socket newbie = m_tcpSock.accept();
-                ioInterrupted = false; // reset the flag
-
-                // build a connection string for the thread identifier
-                StringBuffer connection = new StringBuffer(InetAddressUtils.str(newbie.getInetAddress()));
-                connection.append(":").append(newbie.getPort());
-
-                LOG.debug("New connection accepted from {}", connection);
-
-                // start a new handler
-                TcpStreamHandler handler = new TcpStreamHandler(m_parent, newbie, m_handlers, m_recsPerConn);
-                Thread processor = new Thread(handler, m_parent.getName() + "[" + connection + "]");
-                synchronized (processor) {
-                    processor.start();
-                    try {
-                        processor.wait();
-                    } catch (InterruptedException e) {
-                        LOG.warn("The thread was interrupted", e);
-                    }
-                }
-
-                LOG.debug("A new stream handler thread has been started");
-
-                // add the handler to the list
-                m_receivers.add(handler);
-            } catch (InterruptedIOException e) {
-                /*
-                 * do nothing on interrupted I/O
-                 * DON'T Continue, the end of the loop
-                 * checks and removes terminated threads
-                 */
-                ioInterrupted = true;
+                m_selector.select(500);
             } catch (IOException e) {
                 LOG.error("Server Socket I/O Error", e);
                 break;
             }
 
-            /*
-             * Go through the threads in the list of
-             * receivers and find the dead ones. When
-             * they are no longer alive just remove them
-             * from the list.
-             */
-            Iterator<TcpStreamHandler> i = m_receivers.iterator();
-            while (i.hasNext()) {
-                TcpStreamHandler t = i.next();
-                if (!t.isAlive()) {
-                    i.remove();
+            TcpStreamHandler changed;
+            while ((changed = m_pendingUpdates.poll()) != null) {
+                changed.updateInterest();
+            }
+
+            final Iterator<SelectionKey> keys = m_selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                final SelectionKey key = keys.next();
+                keys.remove();
+
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+
+                final TcpStreamHandler handler = (TcpStreamHandler) key.attachment();
+                if (key.isWritable()) {
+                    handler.write();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    handler.read(buffer);
                 }
             }
         }
 
         // Either a fatal I/O error has occured or the service has been stopped.
+        LOG.debug("Attempting to stop the worker threads");
+        m_workers.shutdown();
         try {
-            LOG.debug("closing the server socket connection");
+            if (!m_workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOG.warn("The worker threads did not finish their event records in time");
+                m_workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("The thread was interrupted while waiting for the worker threads", e);
+            m_workers.shutdownNow();
+        }
 
-            m_tcpSock.close();
-        } catch (Throwable t) {
-            LOG.error("An I/O Error Occcured Closing the Server Socket", t);
+        LOG.debug("closing the server socket connection and all client connections");
+        for (final SelectionKey key : m_selector.keys()) {
+            if (key.attachment() instanceof TcpStreamHandler) {
+                ((TcpStreamHandler) key.attachment()).close();
+            }
         }
+        closeQuietly();
 
         // Log the termination of this runnable
         LOG.debug("TCP Server Shutdown");
     }
 
+    /**
+     * Accepts a waiting connection and registers it with the selector.
+     */
+    private void accept() {
+        final SocketChannel newbie;
+        try {
+            newbie = m_tcpSock.accept();
+        } catch (IOException e) {
+            LOG.error("Server Socket I/O Error accepting a connection", e);
+            return;
+        }
+        if (newbie == null) {
+            return;
+        }
+
+        try {
+            newbie.configureBlocking(false);
+
+            final TcpStreamHandler handler = new TcpStreamHandler(this, newbie, m_handlers, m_recsPerConn, m_maxRecordSize);
+            handler.register(m_selector);
+
+            LOG.debug("New connection accepted from {}", handler);
+        } catch (IOException e) {
+            LOG.warn("An I/O exception occured setting up a new connection", e);
+            try {
+                newbie.close();
+            } catch (IOException e2) {
+                // do nothing
+            }
+        }
+    }
+
+    /**
+     * Closes the server socket and the selector.
+     */
+    private void closeQuietly() {
+        try {
+            if (m_tcpSock != null) {
+                m_tcpSock.close();
+            }
+        } catch (Throwable t) {
+            LOG.error("An I/O Error Occcured Closing the Server Socket", t);
+        }
+        try {
+            if (m_selector != null) {
+                m_selector.close();
+            }
+        } catch (Throwable t) {
+            LOG.error("An I/O Error Occcured Closing the Selector", t);
+        }
+    }
+
     /**
      * <p>setLogPrefix</p>
-     *
      * @param prefix a {@link java.lang.String} object.
      */
     public void setLogPrefix(String prefix) {
@@ -382,10 +438,25 @@ final class TcpServer implements Runnable {
 
     /**
      * <p>setEventsPerConnection</p>
-     *
      * @param number a int.
      */
     public void setEventsPerConnection(int number) {
         m_recsPerConn = number;
     }
+
+    /**
+     * <p>setWorkers</p>
+     * @param number the number of threads used to process event records.
+     */
+    public void setWorkers(int number) {
+        m_workerCount = number;
+    }
+
+    /**
+     * <p>setMaxRecordSize</p>
+     * @param size the largest event record, in bytes, accepted before the connection is dropped.
+     */
+    public void setMaxRecordSize(int size) {
+        m_maxRecordSize = size;
+    }
 }
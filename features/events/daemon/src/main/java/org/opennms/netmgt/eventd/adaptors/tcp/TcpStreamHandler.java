@@ -28,414 +28,462 @@
 
 package org.opennms.netmgt.eventd.adaptors.tcp;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.io.StringWriter;
-import java.io.Writer;
-import java.net.InetAddress;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
 
-import org.apache.commons.io.IOUtils;
-import org.opennms.core.fiber.Fiber;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.netmgt.eventd.adaptors.EventHandler;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.EventReceipt;
-import org.opennms.netmgt.xml.event.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.InputSource;
 
 /**
- * Provides the logic and context of execution necessary to actually process a
- * client's event XML document. When a new stream handler is created and
- * assigned to an execution context it will unmarshal the remote document. The
- * events from the remote document are then passed to the registered event
- * handlers. All successfully processed events are acknowledged to the client by
+ * Holds the state of a single client connection and provides the logic to
+ * process the client's event XML documents. The {@link TcpServer} selector
+ * thread feeds the handler the bytes read from the connection and writes out
+ * whatever it has queued for the client; complete records are parsed on one of
+ * the server's worker threads. The events of a record are streamed out of the
+ * document and passed to the registered event handlers as soon as each one is
+ * read. All successfully processed events are acknowledged to the client by
  * the generation of an XML event receipt.
  * 
+ * Records from one connection are always processed one at a time and in the
+ * order they were received, so receipts go back in the same order.
+ * 
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
  * @author <a href="http;//www.opennms.org">OpenNMS </a>
- * 
  */
 final class TcpStreamHandler implements Runnable {
     
     private static final Logger LOG = LoggerFactory.getLogger(TcpStreamHandler.class);
-    
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String EVENT_NAMESPACE = "http://xmlns.opennms.org/xsd/event";
+
     /**
-     * The registered list of event handlers. Each incoming event will be
-     * passed to all event handlers. The event handlers <em>MUST NOT</em>
-     * modify the passed event.
+     * The number of complete records that may be waiting for a worker before
+     * the server stops reading from the connection.
      */
-    private List<EventHandler> m_handlers;
+    private static final int MAX_PENDING_RECORDS = 16;
+
+    private static final XMLInputFactory s_inputFactory = XMLInputFactory.newInstance();
+
+    static {
+        s_inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        s_inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
 
     /**
-     * Set to stop the thread context.
+     * The registered list of event handlers. Each incoming event will be
+     * passed to all event handlers. The event handlers <em>MUST NOT</em>
+     * modify the passed event.
      */
-    private volatile boolean m_stop;
+    private final List<EventHandler> m_handlers;
 
     /**
-     * The parent of this stream handler.
+     * The server this connection was accepted by.
      */
-    private Fiber m_parent;
+    private final TcpServer m_server;
 
     /**
      * The socket connection to receive and process events from. The
      * successfully processed events will be acknowledged in an event-recipt
      * document.
      */
-    private Socket m_connection;
+    private final SocketChannel m_connection;
+
+    /**
+     * The remote end of the connection, for logging.
+     */
+    private final String m_remote;
 
     /**
-     * The thread context this runnable is executing in
+     * Breaks the incoming bytes up into records.
      */
-    private Thread m_context;
+    private final TcpRecordHandler m_chunker;
 
     /**
-     * The number of records per connection
+     * The complete records waiting to be processed.
+     */
+    private final LinkedList<byte[]> m_records = new LinkedList<byte[]>();
+
+    /**
+     * The receipts waiting to be written to the client.
+     */
+    private final LinkedList<ByteBuffer> m_output = new LinkedList<ByteBuffer>();
+
+    /**
+     * The number of records per connection. Only touched by the selector
+     * thread.
      */
     private int m_recsPerConn;
 
     /**
-     * Constructs a new TCP/IP stream handler to process the remote document.
-     * 
-     * @param parent
-     *            The parent fiber
-     * @param sock
+     * The selection key of the connection. Only touched by the selector
+     * thread.
+     */
+    private SelectionKey m_key;
+
+    /**
+     * Set once no more records will be read from the connection.
+     */
+    private boolean m_inputClosed = false;
+
+    /**
+     * Set while a worker thread owns the record queue.
+     */
+    private boolean m_processing = false;
+
+    /**
+     * Constructs a new TCP/IP stream handler to process the remote documents.
+     * @param server
+     *            The server the connection was accepted by
+     * @param connection
      *            The socket connection
      * @param handlers
      *            The list of event handlers.
      * @param number
      *            The number of event records to process
+     * @param maxRecordSize
+     *            The largest record, in bytes, that will be accepted
      */
-    TcpStreamHandler(Fiber parent, Socket sock, List<EventHandler> handlers, int number) {
-        m_parent = parent;
-        m_connection = sock;
+    TcpStreamHandler(final TcpServer server, final SocketChannel connection, final List<EventHandler> handlers, final int number, final int maxRecordSize) {
+        m_server = server;
+        m_connection = connection;
         m_handlers = handlers;
-        m_stop = false;
-        m_context = null;
         m_recsPerConn = number;
+        m_chunker = new TcpRecordHandler(maxRecordSize);
+        m_remote = InetAddressUtils.str(connection.socket().getInetAddress()) + ":" + connection.socket().getPort();
     }
 
     /**
-     * Returns true if the context is alive.
+     * Registers the connection with the server's selector.
      */
-    boolean isAlive() {
-        boolean rc = false;
-        if (m_context != null)
-            rc = m_context.isAlive();
-
-        return rc;
+    void register(final Selector selector) throws ClosedChannelException {
+        m_key = m_connection.register(selector, SelectionKey.OP_READ, this);
     }
 
     /**
-     * Stops and joins the context.
+     * Reads whatever is available from the connection and queues any records
+     * it completes. Called by the selector thread.
      */
-    void stop() throws InterruptedException {
-        m_stop = true;
-        if (m_context != null) {
-            LOG.debug("Interrupting and joining the thread context {}", m_context.getName());
+    void read(final ByteBuffer buffer) {
+        final List<byte[]> records = new ArrayList<byte[]>();
+        boolean eof = false;
+        try {
+            buffer.clear();
+            if (m_connection.read(buffer) < 0) {
+                LOG.debug("The remote host {} closed the connection", m_remote);
+                eof = true;
+            } else {
+                buffer.flip();
+                m_chunker.append(buffer, records);
+            }
+        } catch (final IOException e) {
+            // stop reading, but still process and acknowledge the records completed before the error
+            LOG.warn("An I/O error occured reading from the remote host {}.", m_remote, e);
+            eof = true;
+        }
 
-            m_context.interrupt();
-            m_context.join();
+        if (eof && m_chunker.isPartial()) {
+            LOG.warn("Discarding an incomplete event record from {}", m_remote);
+        }
 
-            LOG.debug("Context stopped and joined");
+        synchronized (this) {
+            for (final byte[] record : records) {
+                if (m_recsPerConn == 0) {
+                    break;
+                }
+                // decrement the record count if greater than zero
+                m_recsPerConn -= (m_recsPerConn > 0 ? 1 : 0);
+                m_records.add(record);
+            }
+            if (eof || m_recsPerConn == 0) {
+                m_inputClosed = true;
+            }
+            schedule();
         }
+
+        updateInterest();
     }
 
     /**
-     * The main execution context for processing a remote XML document. Once the
-     * document is processed and an event receipt is returned to the client the
-     * thread will exit.
+     * Writes as much of the queued receipts as the connection will take.
+     * Called by the selector thread.
      */
-    @Override
-    public void run() {
-        // get the context and stop if necessary
-        m_context = Thread.currentThread();
-        synchronized (m_context) {
-            m_context.notifyAll();
-        }
-
-        // check the stop flag
-        if (m_stop) {
-            LOG.debug("The stop flag was set prior to thread entry, closing connection");
-            try {
-                m_connection.close();
-            } catch (final IOException e) {
-            	LOG.error("An error occured while closing the connection.", e);
+    void write() {
+        try {
+            synchronized (this) {
+                while (!m_output.isEmpty()) {
+                    final ByteBuffer receipt = m_output.getFirst();
+                    m_connection.write(receipt);
+                    if (receipt.hasRemaining()) {
+                        break;
+                    }
+                    m_output.removeFirst();
+                }
             }
+        } catch (final IOException e) {
+            LOG.warn("Failed to send event-receipt XML document to {}.", m_remote, e);
+            close();
+            return;
+        }
 
-            LOG.debug("Thread context exiting");
+        updateInterest();
+    }
 
+    /**
+     * Brings the interest set of the connection in line with its state, and
+     * closes the connection once there is nothing left to do. Called by the
+     * selector thread.
+     */
+    void updateInterest() {
+        if (m_key == null || !m_key.isValid()) {
             return;
         }
 
-        // Log the startup of this stream handler
-        final InetAddress sender = m_connection.getInetAddress();
-        LOG.debug("Event Log Stream Handler Started for {}", sender);
-
-        /*
-         * This linked list is used to exchange
-         * instances of PipedOutputStreams. Whenever a
-         * pipe output stream is recovered it must be
-         * signaled to inform the EOT thread of the
-         * ability to write to the pipe. Also, when
-         * the descriptor is close a EOFException is
-         * passed on the list.
-         */
-        final LinkedList<Object> pipeXchange = new LinkedList<Object>();
-        final TcpRecordHandler chunker = new TcpRecordHandler(m_connection, pipeXchange);
-        final Thread tchunker = new Thread(chunker, "TCPRecord Chunker[" + InetAddressUtils.str(m_connection.getInetAddress()) + ":" + m_connection.getPort() + "]");
-        synchronized (tchunker) {
-            tchunker.start();
-            try {
-                tchunker.wait();
-            } catch (final InterruptedException e) {
-            	LOG.error("The thread was interrupted.", e);
+        int ops = 0;
+        synchronized (this) {
+            if (m_inputClosed && !m_processing && m_records.isEmpty() && m_output.isEmpty()) {
+                close();
+                return;
+            }
+            if (!m_inputClosed && m_records.size() < MAX_PENDING_RECORDS) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!m_output.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
             }
         }
+        m_key.interestOps(ops);
+    }
 
-        MAINLOOP: while (!m_stop && m_parent.getStatus() != Fiber.STOP_PENDING && m_parent.getStatus() != Fiber.STOPPED && m_recsPerConn != 0) {
-            // get a new pipe input stream
-            PipedInputStream pipeIn = null;
-            synchronized (pipeXchange) {
-                while (pipeXchange.isEmpty()) {
-                    if (chunker.isAlive()) {
-                        try {
-                            pipeXchange.wait(500);
-                        } catch (final InterruptedException e) {
-                            LOG.error("The thread was interrupted.", e);
-                            break MAINLOOP;
-                        }
-                    } else {
-                        break MAINLOOP;
-                    }
-                }
+    /**
+     * Closes the connection.
+     */
+    void close() {
+        if (m_key != null) {
+            m_key.cancel();
+        }
 
-                // if an exception occured then just exit the BAL (Big Ass Loop)
-                final Object o = pipeXchange.removeFirst();
-                if (o instanceof Throwable) {
-                    break MAINLOOP;
-                }
+        // regardless of any errors, be sure to release the socket.
+        try {
+            LOG.debug("closing connnection to {}", m_remote);
 
-                // construct the other end of the pipe
-                try {
-                    pipeIn = new PipedInputStream((PipedOutputStream) o);
-                } catch (final IOException e) {
-                    LOG.error("An I/O exception occured construction a record reader.", e);
-                    break MAINLOOP;
-                }
+            m_connection.close();
+        } catch (final IOException e) {
+            LOG.warn("An I/O exception occured while closing the TCP/IP connection.", e);
+        }
+    }
+
+    /**
+     * Hands the record queue to a worker unless one already owns it. The
+     * caller must hold the lock on this handler.
+     */
+    private void schedule() {
+        if (m_processing || m_records.isEmpty()) {
+            return;
+        }
 
-                // signal that we got the stream
-                synchronized (o) {
-                    o.notify();
+        m_processing = true;
+        try {
+            m_server.execute(this);
+        } catch (final RejectedExecutionException e) {
+            LOG.debug("The server is stopping, discarding {} event records from {}", m_records.size(), m_remote);
+            m_processing = false;
+            m_records.clear();
+            m_inputClosed = true;
+        }
+    }
+
+    /**
+     * Processes the queued records in order on a worker thread. Once the
+     * queue is drained the worker gives it up again.
+     */
+    @Override
+    public void run() {
+        while (!m_server.isStopping()) {
+            final byte[] record;
+            final boolean wasFull;
+            synchronized (this) {
+                wasFull = m_records.size() >= MAX_PENDING_RECORDS;
+                record = m_records.poll();
+                if (record == null) {
+                    break;
                 }
             }
 
-            // decrement the record count if greater than zero
-            m_recsPerConn -= (m_recsPerConn > 0 ? 1 : 0);
-
-            // convert the pipe input stream into a buffered input stream
-            final InputStream stream = new BufferedInputStream(pipeIn);
-
-            // Unmarshal the XML document
-            Log eLog = null;
-            boolean doCleanup = false;
-            try {
-            	eLog = JaxbUtils.unmarshal(Log.class, new InputSource(stream));
-                LOG.debug("Event record converted");
-            } catch (final Exception e) {
-                LOG.error("Could not unmarshall the XML record.", e);
-                doCleanup = true;
-            } finally {
-                if (stream != null) {
-                    IOUtils.closeQuietly(stream);
-                }
+            if (wasFull) {
+                // there is room again, so resume reading
+                m_server.update(this);
             }
+            processRecord(record);
+        }
 
-            // clean up the data on the current pipe if necessary
-            if (doCleanup) {
-                /*
-                 * Cleanup a failed record. Need to read
-                 * the remaining bytes from the other thread
-                 * to synchronize up. The other thread might
-                 * be blocked writing.
-                 */
+        synchronized (this) {
+            m_processing = false;
+        }
+        m_server.update(this);
+    }
+
+    /**
+     * Parses a single record, passing each event to the handlers as soon as
+     * it has been read, then queues the receipt for the events that were
+     * accepted.
+     */
+    private void processRecord(final byte[] record) {
+        final List<Event> okEvents = new ArrayList<Event>();
+        int count = 0;
+
+        XMLStreamReader reader = null;
+        try {
+            reader = new EventNamespaceReader(s_inputFactory.createXMLStreamReader(new ByteArrayInputStream(record)));
+            final Unmarshaller unmarshaller = JaxbUtils.getUnmarshallerFor(Event.class, null, false);
+
+            while (reader.hasNext()) {
+                if (reader.isStartElement() && "event".equals(reader.getLocalName())) {
+                    // leaves the reader positioned after the end of the event
+                    final Event event = unmarshaller.unmarshal(reader, Event.class).getValue();
+                    processEvent(event, okEvents);
+                    count++;
+                } else {
+                    reader.next();
+                }
+            }
+        } catch (final XMLStreamException e) {
+            LOG.error("Could not unmarshall the XML record from {}.", m_remote, e);
+        } catch (final JAXBException e) {
+            LOG.error("Could not unmarshall the XML record from {}.", m_remote, e);
+        } finally {
+            if (reader != null) {
                 try {
-                    while (stream.read() != -1) {
-                        /* do nothing */;
-                    }
-                } catch (final IOException e) {
+                    reader.close();
+                } catch (final XMLStreamException e) {
                     // do nothing
                 }
-
-                // start from the top!
-                continue MAINLOOP;
             }
+        }
 
-            // Now that we have a list of events, process them
-            final Event[] events = eLog.getEvents().getEvent();
-
-            // sort the events by time
-            Arrays.sort(events, new Comparator<Event>() {
-                @Override
-                public int compare(final Event e1, final Event e2) {
-                    final boolean e1t = (e1.getTime() != null);
-                    final boolean e2t = (e2.getTime() != null);
-                    if (e1t && !e2t) {
-                        return 1;
-                    } else if (!e1t && e2t) {
-                        return -1;
-                    } else if (!e1t && !e2t) {
-                        return 0;
-                    }
+        if (count == 0) {
+            LOG.debug("The agent at {} sent an empty event stream", m_remote);
+            return;
+        }
+        LOG.debug("Event record from {} processed, {} of {} events accepted", m_remote, okEvents.size(), count);
 
-                    Date de1 = e1.getTime();
-                    Date de2 = e2.getTime();
-
-                    if (de1 != null && de2 != null) {
-                        return (int) (de1.getTime() - de2.getTime());
-                    } else if (de1 == null && de2 != null) {
-                        return -1;
-                    } else if (de1 != null && de2 == null) {
-                        return 1;
-                    } else {
-                        return 0;
-                    }
-                }
-            });
-
-            // process the events
-            if (events != null && events.length != 0) {
-                final List<Event> okEvents = new ArrayList<Event>(events.length);
-
-                /*
-                 * This synchronization loop will hold onto the lock
-                 * for a while. If the handlers are going to change
-                 * often, which is shouldn't then might want to consider
-                 * duplicating the handlers into an array before processing
-                 * the events.
-                 *
-                 * Doing the synchronization in the outer loop prevents spending
-                 * lots of cycles doing synchronization when it should not
-                 * normally be necesary.
-                 */
-                synchronized (m_handlers) {
-                    for (final EventHandler hdl : m_handlers) {
-                        /*
-                         * get the handler and then have it process all
-                         * the events in the document before moving to the
-                         * next event handler.
-                         */
-                        for (final Event event : events) {
-                            /*
-                             * Process the event and log any errors,
-                             *  but don't die on these errors
-                             */
-                            try {
-                            	LOG.debug("handling event: {}", event);
-
-                                // shortcut and BOTH parts MUST execute!
-                                if (hdl.processEvent(event)) {
-                                    if (!okEvents.contains(event)) {
-                                        okEvents.add(event);
-                                    }
-                                }
-                            } catch (final Throwable t) {
-                                LOG.warn("An exception occured while processing an event.", t);
-                            }
-                        }
-                    }
-                }
+        sendReceipt(okEvents);
+    }
 
-                // Now process the good events and send a receipt message
-                boolean hasReceipt = false;
-                final EventReceipt receipt = new EventReceipt();
-                
-                for (final Event event : okEvents) {
-                    if (event.getUuid() != null) {
-                        receipt.addUuid(event.getUuid());
-                        hasReceipt = true;
-                    }
-                }
+    /**
+     * Passes the event to every handler and remembers it if any of them
+     * accepted it. Errors are logged, but don't stop the record.
+     */
+    private void processEvent(final Event event, final List<Event> okEvents) {
+        LOG.debug("handling event: {}", event);
 
-                if (hasReceipt) {
-                    // Transform it to XML and send it to the socket in one call
-                    try {
-                    	final Writer writer = new BufferedWriter(new OutputStreamWriter(m_connection.getOutputStream(), "UTF-8"));
-                    	JaxbUtils.marshal(receipt, writer);
-                        writer.flush();
-
-                        synchronized (m_handlers) {
-                            for (final EventHandler hdl : m_handlers) {
-                                /*
-                                 * Get the handler and then have it process all
-                                 * the events in the document before moving to
-                                 * the next event hander.
-                                 */
-                                try {
-                                    hdl.receiptSent(receipt);
-                                } catch (final Throwable t) {
-                                    LOG.warn("An exception occured while processing an event receipt.", t);
-                                }
-                            }
-                        }
-
-                        if (LOG.isDebugEnabled()) {
-                            try {
-                            	final StringWriter swriter = new StringWriter();
-                            	JaxbUtils.marshal(receipt, swriter);
-
-                                LOG.debug("Sent Event Receipt {");
-                                LOG.debug(swriter.getBuffer().toString());
-                                LOG.debug("}");
-                            } catch (final Throwable e) {
-                                LOG.error("An error occured during marshalling of event receipt for the log.", e);
-                            }
-                        }
-                    } catch (final IOException e) {
-                        LOG.warn("Failed to send event-receipt XML document.", e);
-                        break MAINLOOP;
+        synchronized (m_handlers) {
+            for (final EventHandler hdl : m_handlers) {
+                try {
+                    if (hdl.processEvent(event) && !okEvents.contains(event)) {
+                        okEvents.add(event);
                     }
+                } catch (final Throwable t) {
+                    LOG.warn("An exception occured while processing an event.", t);
                 }
-            } else {
-                LOG.debug("The agent sent an empty event stream");
+            }
+        }
+    }
+
+    /**
+     * Queues an event receipt for the accepted events that carry a uuid.
+     */
+    private void sendReceipt(final List<Event> okEvents) {
+        boolean hasReceipt = false;
+        final EventReceipt receipt = new EventReceipt();
+
+        for (final Event event : okEvents) {
+            if (event.getUuid() != null) {
+                receipt.addUuid(event.getUuid());
+                hasReceipt = true;
             }
         }
 
+        if (!hasReceipt) {
+            return;
+        }
+
+        final String xml;
         try {
-            LOG.debug("stopping record handler");
+            xml = JaxbUtils.marshal(receipt);
+        } catch (final Throwable t) {
+            LOG.error("An error occured during marshalling of the event receipt.", t);
+            return;
+        }
 
-            chunker.stop();
+        synchronized (this) {
+            m_output.add(ByteBuffer.wrap(xml.getBytes(UTF8)));
+        }
+        m_server.update(this);
 
-            LOG.debug("record handler stopped");
-        } catch (final InterruptedException e) {
-            LOG.warn("The thread was interrupted while trying to close the record handler.", e);
+        synchronized (m_handlers) {
+            for (final EventHandler hdl : m_handlers) {
+                try {
+                    hdl.receiptSent(receipt);
+                } catch (final Throwable t) {
+                    LOG.warn("An exception occured while processing an event receipt.", t);
+                }
+            }
         }
 
-        // regardless of any errors, be sure to release the socket.
-        try {
-            LOG.debug("closing connnection");
+        LOG.debug("Queued Event Receipt for {}: {}", m_remote, xml);
+    }
 
-            m_connection.close();
+    @Override
+    public String toString() {
+        return m_remote;
+    }
 
-            LOG.debug("connnection closed ");
-        } catch (final IOException e) {
-            LOG.warn("An I/O exception occured while closing the TCP/IP connection.", e);
+    /**
+     * Puts every element into the event namespace, like the
+     * {@link org.opennms.core.xml.SimpleNamespaceFilter} does for whole
+     * documents, since most agents send their events without one.
+     */
+    private static final class EventNamespaceReader extends StreamReaderDelegate {
+        EventNamespaceReader(final XMLStreamReader reader) {
+            super(reader);
         }
 
-        LOG.debug("Thread exiting");
+        @Override
+        public String getNamespaceURI() {
+            if (isStartElement() || isEndElement()) {
+                return EVENT_NAMESPACE;
+            }
+            return super.getNamespaceURI();
+        }
+
+        @Override
+        public QName getName() {
+            return new QName(EVENT_NAMESPACE, getLocalName());
+        }
     }
 }
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.eventd.jmx;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
+import org.opennms.netmgt.eventd.ExpansionLookupCache;
 
 /**
  * <p>Eventd class.</p>
@@ -48,4 +49,26 @@ public class Eventd extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
     protected String getSpringContext() {
         return "eventDaemonContext";       
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getExpansionLookupCacheHits() {
+        return getLookupCache().getHits();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getExpansionLookupCacheMisses() {
+        return getLookupCache().getMisses();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getExpansionLookupCacheSize() {
+        return getLookupCache().getSize();
+    }
+
+    private ExpansionLookupCache getLookupCache() {
+        return getContext().getBean("eventUtilLookupCache", ExpansionLookupCache.class);
+    }
 }
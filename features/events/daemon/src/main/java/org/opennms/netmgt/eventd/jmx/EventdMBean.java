@@ -37,4 +37,20 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface EventdMBean extends BaseOnmsMBean {
+
+    /**
+     * @return the number of node, interface, asset and hardware lookups
+     *         for parameter expansion that were answered from the cache
+     */
+    public long getExpansionLookupCacheHits();
+
+    /**
+     * @return the number of those lookups that went to the database
+     */
+    public long getExpansionLookupCacheMisses();
+
+    /**
+     * @return the number of nodes with cached lookups
+     */
+    public int getExpansionLookupCacheSize();
 }
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.model.events.EventBuilder;
+
+public class ExpansionLookupCacheTest {
+
+    private ExpansionLookupCache m_cache;
+    private final AtomicInteger m_loads = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        m_cache = new ExpansionLookupCache();
+        m_cache.setMaxNodes(2);
+        m_cache.setTimeToLive(60000);
+        m_cache.afterPropertiesSet();
+    }
+
+    private ExpansionLookupCache.Loader loader(final String value) {
+        return new ExpansionLookupCache.Loader() {
+            @Override
+            public String load() {
+                m_loads.incrementAndGet();
+                return value;
+            }
+        };
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        assertEquals("router", m_cache.get(1, "nodelabel", loader("router")));
+        assertEquals("router", m_cache.get(1, "nodelabel", loader("changed")));
+        assertNull(m_cache.get(1, "asset[building]", loader(null)));
+        assertNull(m_cache.get(1, "asset[building]", loader("changed")));
+
+        assertEquals(2, m_loads.get());
+        assertEquals(2, m_cache.getHits());
+        assertEquals(2, m_cache.getMisses());
+    }
+
+    @Test
+    public void testInvalidatedByEvent() {
+        m_cache.get(1, "nodelabel", loader("router"));
+        m_cache.get(2, "nodelabel", loader("switch"));
+
+        m_cache.onEvent(new EventBuilder(EventConstants.ASSET_INFO_CHANGED_EVENT_UEI, "test").setNodeid(1).getEvent());
+        assertEquals("router-1", m_cache.get(1, "nodelabel", loader("router-1")));
+        assertEquals("switch", m_cache.get(2, "nodelabel", loader("switch-2")));
+
+        m_cache.onEvent(new EventBuilder(EventConstants.INTERFACE_REPARENTED_EVENT_UEI, "test").setNodeid(1).addParam(EventConstants.PARM_OLD_NODEID, 2).getEvent());
+        assertEquals("switch-2", m_cache.get(2, "nodelabel", loader("switch-2")));
+        assertEquals(4, m_loads.get());
+    }
+
+    @Test
+    public void testBounded() {
+        m_cache.get(1, "nodelabel", loader("a"));
+        m_cache.get(2, "nodelabel", loader("b"));
+        m_cache.get(1, "nodelabel", loader("a"));
+        m_cache.get(3, "nodelabel", loader("c"));
+        assertEquals(2, m_cache.getSize());
+
+        // node 2 was the least recently used
+        m_cache.get(1, "nodelabel", loader("a"));
+        m_cache.get(2, "nodelabel", loader("b"));
+        assertEquals(4, m_loads.get());
+    }
+
+    @Test
+    public void testExpires() throws Exception {
+        m_cache.setTimeToLive(10);
+        m_cache.get(1, "nodelabel", loader("a"));
+        Thread.sleep(20);
+        m_cache.get(1, "nodelabel", loader("a"));
+        assertEquals(2, m_loads.get());
+    }
+
+    @Test
+    public void testDisabled() {
+        m_cache.setMaxNodes(0);
+        m_cache.get(1, "nodelabel", loader("a"));
+        m_cache.get(1, "nodelabel", loader("a"));
+        assertEquals(2, m_loads.get());
+        assertEquals(0, m_cache.getSize());
+    }
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.netmgt.config.DefaultEventConfDao;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.eventconf.ExpansionTemplate;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Expands the descriptions and log messages of the stock event
+ * configuration against a typical linkDown-style trap.
+ */
+public class ExpansionTemplateTest {
+
+    private final AbstractEventUtil m_eventUtil = new StaticEventUtil();
+    private final List<org.opennms.netmgt.xml.eventconf.Event> m_eventConfs = new ArrayList<org.opennms.netmgt.xml.eventconf.Event>();
+    private final List<Event> m_events = new ArrayList<Event>();
+
+    @Before
+    public void setUp() throws Exception {
+        DefaultEventConfDao eventConfDao = new DefaultEventConfDao();
+        eventConfDao.setConfigResource(new FileSystemResource(ConfigurationTestUtils.getFileForConfigFile("eventconf.xml")));
+        eventConfDao.afterPropertiesSet();
+
+        for (org.opennms.netmgt.xml.eventconf.Event eventConf : eventConfDao.getAllEvents()) {
+            if (eventConf.getDescr() == null || eventConf.getLogmsg() == null) {
+                continue;
+            }
+            m_eventConfs.add(eventConf);
+            m_events.add(createTrap(eventConf.getUei()));
+        }
+        assertFalse(m_eventConfs.isEmpty());
+    }
+
+    @Test
+    public void testCompiledTemplatesMatchStringExpansion() {
+        for (int i = 0; i < m_eventConfs.size(); i++) {
+            org.opennms.netmgt.xml.eventconf.Event eventConf = m_eventConfs.get(i);
+            Event event = m_events.get(i);
+
+            ExpansionTemplate descr = eventConf.getExpansionTemplate(eventConf.getDescr());
+            assertEquals(eventConf.getUei(), m_eventUtil.expandParms(eventConf.getDescr(), event, null), m_eventUtil.expandParms(descr, event, null));
+
+            ExpansionTemplate logmsg = eventConf.getExpansionTemplate(eventConf.getLogmsg().getContent());
+            assertEquals(eventConf.getUei(), m_eventUtil.expandParms(eventConf.getLogmsg().getContent(), event, null), m_eventUtil.expandParms(logmsg, event, null));
+        }
+    }
+
+    /**
+     * Compares expanding the stock templates from their strings, which
+     * parses each one again, with expanding the templates compiled when the
+     * configuration was loaded.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void testExpansionThroughput() {
+        final int iterations = 200;
+
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long start = System.nanoTime();
+            long expansions = 0;
+            for (int n = 0; n < iterations; n++) {
+                for (int i = 0; i < m_eventConfs.size(); i++) {
+                    org.opennms.netmgt.xml.eventconf.Event eventConf = m_eventConfs.get(i);
+                    m_eventUtil.expandParms(eventConf.getDescr(), m_events.get(i), null);
+                    m_eventUtil.expandParms(eventConf.getLogmsg().getContent(), m_events.get(i), null);
+                    expansions += 2;
+                }
+            }
+            long stringElapsed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int n = 0; n < iterations; n++) {
+                for (int i = 0; i < m_eventConfs.size(); i++) {
+                    org.opennms.netmgt.xml.eventconf.Event eventConf = m_eventConfs.get(i);
+                    m_eventUtil.expandParms(eventConf.getExpansionTemplate(eventConf.getDescr()), m_events.get(i), null);
+                    m_eventUtil.expandParms(eventConf.getExpansionTemplate(eventConf.getLogmsg().getContent()), m_events.get(i), null);
+                }
+            }
+            long compiledElapsed = System.nanoTime() - start;
+
+            System.err.printf("%d expansions of %d stock templates: from strings %.0f/s, precompiled %.0f/s.%n",
+                              expansions, m_eventConfs.size() * 2,
+                              expansions * 1e9 / stringElapsed, expansions * 1e9 / compiledElapsed);
+        }
+    }
+
+    private static Event createTrap(final String uei) throws Exception {
+        final EventBuilder bldr = new EventBuilder(uei, "trapd");
+        bldr.setNodeid(1);
+        bldr.setInterface(InetAddress.getByName("192.168.1.1"));
+        bldr.setHost("192.168.1.1");
+        bldr.setSnmpVersion("v2c");
+        bldr.setCommunity("public");
+        bldr.setEnterpriseId(".1.3.6.1.6.3.1.1.5");
+        bldr.setGeneric(2);
+        bldr.setSpecific(0);
+        bldr.addParam(".1.3.6.1.2.1.2.2.1.1.3", 3);
+        bldr.addParam(".1.3.6.1.2.1.2.2.1.7.3", 1);
+        bldr.addParam(".1.3.6.1.2.1.2.2.1.8.3", 2);
+        bldr.addParam(".1.3.6.1.2.1.2.2.1.2.3", "GigabitEthernet0/3");
+        bldr.addParam(".1.3.6.1.2.1.31.1.1.1.18.3", "uplink to core");
+        return bldr.getEvent();
+    }
+
+    private static class StaticEventUtil extends AbstractEventUtil {
+        @Override
+        protected String getNodeLabel(long nodeId) {
+            return "router-" + nodeId;
+        }
+
+        @Override
+        protected String getIfAlias(long nodeId, String ipaddr) {
+            return "uplink to core";
+        }
+
+        @Override
+        protected String getAssetFieldValue(String parm, long nodeId) {
+            return null;
+        }
+
+        @Override
+        public String getHardwareFieldValue(String parm, long nodeId) {
+            return null;
+        }
+
+        @Override
+        public String getHostName(int nodeId, String hostip) {
+            return hostip;
+        }
+    }
+}
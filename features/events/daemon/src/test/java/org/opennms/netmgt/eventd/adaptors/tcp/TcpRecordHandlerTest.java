@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TcpRecordHandlerTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String RECORD_1 = "<log><events><event uuid=\"1\"><uei>uei.opennms.org/test</uei></event></events></log>";
+
+    private static final String RECORD_2 = "<e:log xmlns:e=\"http://xmlns.opennms.org/xsd/event\"><e:events/></e:log>";
+
+    private final TcpRecordHandler m_handler = new TcpRecordHandler(1024);
+
+    private final List<byte[]> m_records = new ArrayList<byte[]>();
+
+    @Test
+    public void testRecordSplitAcrossReads() throws Exception {
+        append(RECORD_1.substring(0, 20));
+        assertEquals(0, m_records.size());
+        assertTrue(m_handler.isPartial());
+
+        append(RECORD_1.substring(20));
+        assertRecords(RECORD_1);
+        assertFalse(m_handler.isPartial());
+    }
+
+    @Test
+    public void testSeveralRecordsInOneBuffer() throws Exception {
+        append(RECORD_1 + "\n  " + RECORD_2 + "\n" + RECORD_1);
+        assertRecords(RECORD_1, RECORD_2, RECORD_1);
+        assertFalse(m_handler.isPartial());
+    }
+
+    @Test
+    public void testPrefixedEndTagSplitAcrossBuffers() throws Exception {
+        final int split = RECORD_2.indexOf("</e:log>") + 4;
+        append(RECORD_2.substring(0, split));
+        assertEquals(0, m_records.size());
+
+        append(RECORD_2.substring(split, split + 1));
+        assertEquals(0, m_records.size());
+
+        append(RECORD_2.substring(split + 1) + RECORD_1.substring(0, 5));
+        assertRecords(RECORD_2);
+        assertTrue(m_handler.isPartial());
+    }
+
+    @Test
+    public void testOversizedRecordKeepsEarlierRecords() throws Exception {
+        final StringBuilder oversized = new StringBuilder("<log><events>");
+        while (oversized.length() <= 1024) {
+            oversized.append("<event/>");
+        }
+        try {
+            append(RECORD_1 + RECORD_2 + oversized);
+            fail("expected an IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+        assertRecords(RECORD_1, RECORD_2);
+    }
+
+    private void append(final String data) throws IOException {
+        m_handler.append(ByteBuffer.wrap(data.getBytes(UTF8)), m_records);
+    }
+
+    private void assertRecords(final String... expected) {
+        assertEquals(expected.length, m_records.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], new String(m_records.get(i), UTF8));
+        }
+    }
+}
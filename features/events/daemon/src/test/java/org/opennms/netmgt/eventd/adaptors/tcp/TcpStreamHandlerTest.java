@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd.adaptors.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.fiber.Fiber;
+import org.opennms.netmgt.eventd.adaptors.EventHandler;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.EventReceipt;
+
+public class TcpStreamHandlerTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final List<String> m_uuids = Collections.synchronizedList(new ArrayList<String>());
+
+    private TcpServer m_server;
+
+    private Thread m_serverThread;
+
+    @Before
+    public void setUp() throws Exception {
+        final Fiber parent = new Fiber() {
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void stop() {
+            }
+
+            @Override
+            public String getName() {
+                return "TcpStreamHandlerTest";
+            }
+
+            @Override
+            public int getStatus() {
+                return RUNNING;
+            }
+        };
+        final EventHandler handler = new EventHandler() {
+            @Override
+            public boolean processEvent(final Event event) {
+                m_uuids.add(event.getUuid());
+                return true;
+            }
+
+            @Override
+            public void receiptSent(final EventReceipt receipt) {
+            }
+        };
+
+        m_server = new TcpServer(parent, Collections.singletonList(handler), 0, InetAddress.getLoopbackAddress());
+        m_server.setMaxRecordSize(1024);
+        m_serverThread = new Thread(m_server, "TcpServer");
+        m_serverThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_server.stop();
+    }
+
+    @Test
+    public void testRecordSplitAcrossWrites() throws Exception {
+        final String record = record("1") + record("2");
+        try (final Socket socket = connect()) {
+            final OutputStream out = socket.getOutputStream();
+            final int split = record.indexOf("</log>") + 3;
+            out.write(record.substring(0, split).getBytes(UTF8));
+            out.flush();
+            Thread.sleep(100);
+            out.write(record.substring(split).getBytes(UTF8));
+            socket.shutdownOutput();
+
+            final String receipts = readAll(socket.getInputStream());
+            assertTrue(receipts, receipts.contains("<uuid>1</uuid>"));
+            assertTrue(receipts, receipts.contains("<uuid>2</uuid>"));
+        }
+        assertEquals(2, m_uuids.size());
+    }
+
+    @Test
+    public void testOversizedRecordAfterCompleteRecords() throws Exception {
+        final StringBuilder data = new StringBuilder(record("1")).append(record("2")).append("<log><events>");
+        while (data.length() < 1600) {
+            data.append("<event/>");
+        }
+        try (final Socket socket = connect()) {
+            socket.getOutputStream().write(data.toString().getBytes(UTF8));
+
+            // the complete records are still processed and acknowledged before the connection is dropped
+            final String receipts = readAll(socket.getInputStream());
+            assertTrue(receipts, receipts.contains("<uuid>1</uuid>"));
+            assertTrue(receipts, receipts.contains("<uuid>2</uuid>"));
+        }
+        assertEquals(2, m_uuids.size());
+    }
+
+    private Socket connect() throws Exception {
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), m_server.getLocalPort());
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    private static String record(final String uuid) {
+        return "<log><events><event uuid=\"" + uuid + "\"><uei>uei.opennms.org/test</uei><source>TcpStreamHandlerTest</source></event></events></log>\n";
+    }
+
+    private static String readAll(final InputStream in) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), UTF8);
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * A {@link ServiceMonitor} that is able to perform its poll without holding
+ * the calling thread while it waits on the network.
+ * </p>
+ *
+ * <p>
+ * The poller checks for this interface when it dispatches a poll.  When it is
+ * present, {@link #pollAsync(MonitoredService, Map)} is called on a poller
+ * thread which is released as soon as the request has been sent.  The
+ * returned future is typically completed from a shared I/O event loop, so
+ * any work attached to it that may block must be handed off to another
+ * executor.
+ * </p>
+ *
+ * <P>
+ * Implementations must still provide a working {@link #poll(MonitoredService, Map)}
+ * since callers such as the remote poller and the monitor tester use the
+ * blocking variant.
+ * </P>
+ *
+ * @see org.opennms.netmgt.poller.monitors.AbstractAsyncServiceMonitor
+ */
+public interface AsyncServiceMonitor extends ServiceMonitor {
+
+    /**
+     * <P>
+     * Starts a poll of the given service and returns immediately.
+     * </P>
+     *
+     * <P>
+     * The returned future must always complete, either with the resulting
+     * {@link PollStatus} or exceptionally if an unrecoverable error occurred.
+     * Timeouts and unreachable services are reported as a status, not as an
+     * exceptional completion.
+     * </P>
+     *
+     * @param svc the service to poll
+     * @param parameters
+     *            The package parameters (timeout, retry, etc...) to be used for
+     *            this poll.
+     * @return a future that completes with the availability of the service
+     */
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters);
+}
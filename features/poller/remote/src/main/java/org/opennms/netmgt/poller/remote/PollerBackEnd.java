@@ -30,6 +30,7 @@ package org.opennms.netmgt.poller.remote;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.opennms.netmgt.config.poller.Package;
@@ -130,6 +131,16 @@ public interface PollerBackEnd {
      */
     void reportResult(int locationMonitorID, int serviceId, PollStatus status);
 
+    /**
+     * Report a batch of poll results from the client to the server.  The
+     * results are processed in order, so several results for the same
+     * service are handled just as if they were reported one at a time.
+     *
+     * @param locationMonitorID the id of the location monitor that did the polls
+     * @param results the poll results, in the order they were collected
+     */
+    void reportResults(int locationMonitorID, List<ServicePollResult> results);
+
 
     /**
      * <p>configurationUpdated</p>
@@ -75,6 +75,7 @@ import org.opennms.netmgt.poller.remote.PolledService;
 import org.opennms.netmgt.poller.remote.PollerBackEnd;
 import org.opennms.netmgt.poller.remote.PollerConfiguration;
 import org.opennms.netmgt.poller.remote.RemoteHostThreadLocal;
+import org.opennms.netmgt.poller.remote.ServicePollResult;
 import org.opennms.netmgt.rrd.RrdException;
 import org.opennms.netmgt.rrd.RrdUtils;
 import org.slf4j.Logger;
@@ -134,6 +135,53 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
             return m_serverTime;
         }
     }
+
+    /**
+     * The parts of a monitored service needed to store its response time,
+     * so that unchanged results don't need to load the service.
+     */
+    private static class ServiceInfo {
+        private final int m_serviceId;
+        private final String m_serviceName;
+        private final InetAddress m_ipAddress;
+
+        ServiceInfo(final int serviceId, final OnmsMonitoredService monSvc) {
+            m_serviceId = serviceId;
+            m_serviceName = monSvc.getServiceName();
+            m_ipAddress = monSvc.getIpAddress();
+        }
+
+        public int getServiceId() {
+            return m_serviceId;
+        }
+
+        public String getServiceName() {
+            return m_serviceName;
+        }
+
+        public InetAddress getIpAddress() {
+            return m_ipAddress;
+        }
+    }
+
+    private static class PendingResponseTime {
+        private final ServiceInfo m_service;
+        private final double m_responseTime;
+
+        PendingResponseTime(final ServiceInfo service, final double responseTime) {
+            m_service = service;
+            m_responseTime = responseTime;
+        }
+
+        public ServiceInfo getService() {
+            return m_service;
+        }
+
+        public double getResponseTime() {
+            return m_responseTime;
+        }
+    }
+
     private LocationMonitorDao m_locMonDao;
     private MonitoredServiceDao m_monSvcDao;
     private EventIpcManager m_eventIpcManager;
@@ -146,6 +194,10 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
     private final AtomicReference<Date> m_configurationTimestamp = new AtomicReference<Date>();
     private final AtomicReference<ConcurrentHashMap<String, SimplePollerConfiguration>> m_configCache = new AtomicReference<ConcurrentHashMap<String,SimplePollerConfiguration>>();
 
+    /** the most recent status of each service, by location monitor ID and service ID */
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, PollStatus>> m_statusCache = new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, PollStatus>>();
+    private final AtomicReference<ConcurrentHashMap<Integer, ServiceInfo>> m_serviceInfoCache = new AtomicReference<ConcurrentHashMap<Integer, ServiceInfo>>(new ConcurrentHashMap<Integer, ServiceInfo>());
+
     /**
      * <p>afterPropertiesSet</p>
      *
@@ -245,6 +297,7 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
     public void configurationUpdated() {
         m_configurationTimestamp.set(m_timeKeeper.getCurrentDate());
         m_configCache.set(new ConcurrentHashMap<String, SimplePollerConfiguration>());
+        m_serviceInfoCache.set(new ConcurrentHashMap<Integer, ServiceInfo>());
     }
 
     private static EventBuilder createEventBuilder(final OnmsLocationMonitor mon, final String uei) {
@@ -424,6 +477,8 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
         }
         mon.setStatus(MonitorStatus.STARTED);
         mon.setLastCheckInTime(m_timeKeeper.getCurrentDate());
+        // re-read the last known statuses from the database
+        m_statusCache.remove(locationMonitorId);
 
         updateConnectionHostDetails(mon, pollerDetails);
 
@@ -533,6 +588,24 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
     /** {@inheritDoc} */
     @Override
     public void reportResult(final int locationMonitorId, final int serviceId, final PollStatus pollResult) {
+        reportResults(locationMonitorId, Collections.singletonList(new ServicePollResult(serviceId, pollResult)));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The last known status of each (location monitor, service) pair is
+     * kept in memory, so a result that does not change the status only
+     * touches the database to look up the location monitor once per batch.
+     * Status changes are saved in the same transaction, and the response
+     * times are written once the whole batch has been processed.
+     */
+    @Override
+    public void reportResults(final int locationMonitorId, final List<ServicePollResult> results) {
+        if (results == null || results.isEmpty()) {
+            return;
+        }
+
         final OnmsLocationMonitor locationMonitor;
         try {
         	locationMonitor = m_locMonDao.get(locationMonitorId);
@@ -542,42 +615,108 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
         }
         if (locationMonitor == null) {
             LOG.info("Unable to report result for location monitor ID {}: Location monitor does not exist.", locationMonitorId);
+            m_statusCache.remove(locationMonitorId);
             return;
         }
 
-        final OnmsMonitoredService monSvc;
-        try {
-        	monSvc = m_monSvcDao.get(serviceId);
-        } catch (final Exception e) {
-		LOG.warn("Unable to report result for location monitor ID {}, monitored service ID {}: Monitored service does not exist.", locationMonitorId, serviceId, e);
-        	return;
-        }
-        if (monSvc == null) {
-		LOG.warn("Unable to report result for location monitor ID {}, monitored service ID {}: Monitored service does not exist.", locationMonitorId, serviceId);
-            return;
+        final ConcurrentHashMap<Integer, PollStatus> statuses = getStatusCache(locationMonitorId);
+        final ConcurrentHashMap<Integer, ServiceInfo> services = m_serviceInfoCache.get();
+        final List<PendingResponseTime> responseTimes = new ArrayList<PendingResponseTime>(results.size());
+
+        for (final ServicePollResult result : results) {
+            final int serviceId = result.getServiceId();
+            final PollStatus pollResult = result.getPollStatus();
+            if (pollResult == null) {
+                LOG.warn("Unable to report result for location monitor ID {}, monitored service ID {}: Poll result is null!", locationMonitorId, serviceId);
+                continue;
+            }
+
+            final PollStatus lastStatus = statuses.get(serviceId);
+            ServiceInfo service = services.get(serviceId);
+            if (lastStatus != null && lastStatus.equals(pollResult) && (service != null || pollResult.getResponseTime() == null)) {
+                // nothing changed, so there is nothing to write to the database
+                if (pollResult.getResponseTime() != null) {
+                    responseTimes.add(new PendingResponseTime(service, pollResult.getResponseTime()));
+                }
+                continue;
+            }
+
+            final OnmsMonitoredService monSvc;
+            try {
+                monSvc = m_monSvcDao.get(serviceId);
+            } catch (final Exception e) {
+                LOG.warn("Unable to report result for location monitor ID {}, monitored service ID {}: Monitored service does not exist.", locationMonitorId, serviceId, e);
+                continue;
+            }
+            if (monSvc == null) {
+                LOG.warn("Unable to report result for location monitor ID {}, monitored service ID {}: Monitored service does not exist.", locationMonitorId, serviceId);
+                continue;
+            }
+
+            service = new ServiceInfo(serviceId, monSvc);
+            services.put(serviceId, service);
+            if (pollResult.getResponseTime() != null) {
+                responseTimes.add(new PendingResponseTime(service, pollResult.getResponseTime()));
+            }
+
+            try {
+                updateStatus(locationMonitorId, serviceId, statuses, new OnmsLocationSpecificStatus(locationMonitor, monSvc, pollResult));
+            } catch (final Exception e) {
+                statuses.remove(serviceId);
+                LOG.error("Unable to save result for location monitor ID {}, monitored service ID {}.", locationMonitorId, serviceId, e);
+            }
         }
-        if (pollResult == null) {
-		LOG.warn("Unable to report result for location monitor ID {}, monitored service ID {}: Poll result is null!", locationMonitorId, serviceId);
-        	return;
+
+        saveResponseTimes(locationMonitor, responseTimes);
+    }
+
+    private void updateStatus(final int locationMonitorId, final int serviceId, final Map<Integer, PollStatus> statuses, final OnmsLocationSpecificStatus newStatus) {
+        final PollStatus lastStatus = statuses.get(serviceId);
+        if (lastStatus == null) {
+            final OnmsLocationSpecificStatus currentStatus = m_locMonDao.getMostRecentStatusChange(newStatus.getLocationMonitor(), newStatus.getMonitoredService());
+            processStatusChange(currentStatus, newStatus);
+        } else if (!lastStatus.equals(newStatus.getPollResult())) {
+            m_locMonDao.saveStatusChange(newStatus);
+            // the current status is known, so this is always a logical status change
+            sendRegainedOrLostServiceEvent(newStatus, newStatus.getPollResult());
         }
+        // either way the most recent status in the database now matches the new one
+        statuses.put(serviceId, newStatus.getPollResult());
+    }
 
-        final OnmsLocationSpecificStatus newStatus = new OnmsLocationSpecificStatus(locationMonitor, monSvc, pollResult);
+    private void saveResponseTimes(final OnmsLocationMonitor locationMonitor, final List<PendingResponseTime> responseTimes) {
+        if (responseTimes.isEmpty()) {
+            return;
+        }
 
+        final String monitorId = Integer.toString(locationMonitor.getId());
+        final Package pkg;
         try {
-			if (newStatus.getPollResult().getResponseTime() != null) {
-			    final Package pkg = getPollingPackageForMonitor(locationMonitor);
-			    saveResponseTimeData(Integer.toString(locationMonitorId), monSvc, newStatus.getPollResult().getResponseTime(), pkg);
-			}
-		} catch (final Exception e) {
-			LOG.error("Unable to save response time data for location monitor ID {}, monitored service ID {}.", locationMonitorId, serviceId, e);
-		}
+            pkg = getPollingPackageForMonitor(locationMonitor);
+        } catch (final Exception e) {
+            LOG.error("Unable to save response time data for location monitor ID {}.", monitorId, e);
+            return;
+        }
 
-		try {
-	        final OnmsLocationSpecificStatus currentStatus = m_locMonDao.getMostRecentStatusChange(locationMonitor, monSvc);
-	        processStatusChange(currentStatus, newStatus);
-		} catch (final Exception e) {
-			LOG.error("Unable to save result for location monitor ID {}, monitored service ID {}.", locationMonitorId, serviceId, e);
-		}
+        for (final PendingResponseTime responseTime : responseTimes) {
+            try {
+                saveResponseTimeData(monitorId, responseTime.getService().getServiceName(), responseTime.getService().getIpAddress(), responseTime.getResponseTime(), pkg);
+            } catch (final Exception e) {
+                LOG.error("Unable to save response time data for location monitor ID {}, monitored service ID {}.", monitorId, responseTime.getService().getServiceId(), e);
+            }
+        }
+    }
+
+    private ConcurrentHashMap<Integer, PollStatus> getStatusCache(final int locationMonitorId) {
+        ConcurrentHashMap<Integer, PollStatus> statuses = m_statusCache.get(locationMonitorId);
+        if (statuses == null) {
+            statuses = new ConcurrentHashMap<Integer, PollStatus>();
+            final ConcurrentHashMap<Integer, PollStatus> existing = m_statusCache.putIfAbsent(locationMonitorId, statuses);
+            if (existing != null) {
+                statuses = existing;
+            }
+        }
+        return statuses;
     }
 
     /**
@@ -590,7 +729,10 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
      */
     @Override
     public void saveResponseTimeData(final String locationMonitor, final OnmsMonitoredService monSvc, final double responseTime, final Package pkg) {
-        final String svcName = monSvc.getServiceName();
+        saveResponseTimeData(locationMonitor, monSvc.getServiceName(), monSvc.getIpAddress(), responseTime, pkg);
+    }
+
+    private void saveResponseTimeData(final String locationMonitor, final String svcName, final InetAddress ipAddress, final double responseTime, final Package pkg) {
         final Service svc = m_pollerConfig.getServiceInPackage(svcName, pkg);
         
         final String dsName = getServiceParameter(svc, "ds-name");
@@ -603,7 +745,7 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
             return;
         }
         
-        final String rrdDir = rrdRepository+File.separatorChar+"distributed"+File.separatorChar+locationMonitor+File.separator+str(monSvc.getIpAddress());
+        final String rrdDir = rrdRepository+File.separatorChar+"distributed"+File.separatorChar+locationMonitor+File.separator+str(ipAddress);
 
         try {
             final File rrdFile = new File(rrdDir, dsName);
@@ -612,7 +754,7 @@ public class DefaultPollerBackEnd implements PollerBackEnd, SpringServiceDaemon
             }
             RrdUtils.updateRRD(locationMonitor, rrdDir, dsName, System.currentTimeMillis(), String.valueOf(responseTime));
         } catch (final RrdException e) {
-            throw new PermissionDeniedDataAccessException("Unable to store rrdData from "+locationMonitor+" for service "+monSvc, e);
+            throw new PermissionDeniedDataAccessException("Unable to store rrdData from "+locationMonitor+" for service "+svcName+" on "+str(ipAddress), e);
         }
     }
     
@@ -32,6 +32,7 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -42,6 +43,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.model.OnmsLocationMonitor.MonitorStatus;
@@ -55,6 +60,7 @@ import org.opennms.netmgt.poller.remote.PollerBackEnd;
 import org.opennms.netmgt.poller.remote.PollerConfiguration;
 import org.opennms.netmgt.poller.remote.PollerFrontEnd;
 import org.opennms.netmgt.poller.remote.PollerSettings;
+import org.opennms.netmgt.poller.remote.ServicePollResult;
 import org.opennms.netmgt.poller.remote.ServicePollState;
 import org.opennms.netmgt.poller.remote.ServicePollStateChangedEvent;
 import org.opennms.netmgt.poller.remote.ServicePollStateChangedListener;
@@ -202,6 +208,7 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
         @Override
         public void checkIn() {
             try {
+                flushResults();
                 final MonitorStatus status = doCheckIn();
                 switch (status) {
                     case CONFIG_CHANGED:
@@ -384,6 +391,16 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
     // current state of polled services
     private Map<Integer, ServicePollState> m_pollState = new LinkedHashMap<Integer, ServicePollState>();
 
+    // poll results waiting to be reported to the backend
+    private final List<ServicePollResult> m_pendingResults = new ArrayList<ServicePollResult>();
+    private long m_pendingResultsSince = 0;
+    // counts the batches drained so far, so a scheduled flush can tell whether its batch is still pending
+    private long m_pendingResultsGeneration = 0;
+    private int m_resultBatchSize = 1;
+    private long m_resultBatchInterval = 5000;
+    // reports a batch once its interval has passed, even if no more results come in
+    private ScheduledExecutorService m_resultFlusher;
+
     /** {@inheritDoc} */
     @Override
     public void addConfigurationChangedListener(ConfigurationChangedListener l) {
@@ -514,7 +531,107 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
 
         updateServicePollState(polledServiceId, result);
 
-        m_backEnd.reportResult(getMonitorId(), polledServiceId, result);
+        reportResult(polledServiceId, result);
+    }
+
+    /**
+     * Reports the result to the backend, either right away or, if a result
+     * batch size greater than one is set, as part of a batch that is sent
+     * once it is full or its oldest result has waited for the batch interval.
+     */
+    private void reportResult(final Integer polledServiceId, final PollStatus result) {
+        if (m_resultBatchSize <= 1) {
+            m_backEnd.reportResult(getMonitorId(), polledServiceId, result);
+            return;
+        }
+
+        final List<ServicePollResult> batch;
+        synchronized (m_pendingResults) {
+            final long now = System.currentTimeMillis();
+            if (m_pendingResults.isEmpty()) {
+                m_pendingResultsSince = now;
+                scheduleResultFlush();
+            }
+            m_pendingResults.add(new ServicePollResult(polledServiceId, result));
+            if (m_pendingResults.size() < m_resultBatchSize && now - m_pendingResultsSince < m_resultBatchInterval) {
+                return;
+            }
+            batch = drainPendingResults();
+        }
+        reportResults(batch);
+    }
+
+    /**
+     * Schedules a check for the batch that was just started, so that its
+     * results are reported after the batch interval even on a poller whose
+     * other services are polled rarely. Must be called while holding the
+     * lock on m_pendingResults.
+     */
+    private void scheduleResultFlush() {
+        if (m_resultFlusher == null) {
+            m_resultFlusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "PollerFrontEnd-ResultFlusher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        final long generation = m_pendingResultsGeneration;
+        m_resultFlusher.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flushResults(generation);
+            }
+        }, m_resultBatchInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the pending poll results if they are still the batch the flush
+     * was scheduled for. If that batch was already sent because it filled
+     * up, a newer batch has its own flush scheduled.
+     */
+    private void flushResults(final long generation) {
+        final List<ServicePollResult> batch;
+        synchronized (m_pendingResults) {
+            if (m_pendingResults.isEmpty() || m_pendingResultsGeneration != generation) {
+                return;
+            }
+            batch = drainPendingResults();
+        }
+        reportResults(batch);
+    }
+
+    /**
+     * Sends any poll results that are still waiting to be reported.
+     */
+    private void flushResults() {
+        final List<ServicePollResult> batch;
+        synchronized (m_pendingResults) {
+            batch = drainPendingResults();
+        }
+        reportResults(batch);
+    }
+
+    private List<ServicePollResult> drainPendingResults() {
+        final List<ServicePollResult> batch = new ArrayList<ServicePollResult>(m_pendingResults);
+        m_pendingResults.clear();
+        m_pendingResultsGeneration++;
+        return batch;
+    }
+
+    private void reportResults(final List<ServicePollResult> batch) {
+        final Integer monitorId = getMonitorId();
+        if (batch.isEmpty() || monitorId == null) {
+            return;
+        }
+        LOG.debug("Reporting {} poll results", batch.size());
+        try {
+            m_backEnd.reportResults(monitorId, batch);
+        } catch (final Throwable e) {
+            LOG.warn("Unable to report {} poll results.", batch.size(), e);
+        }
     }
 
     /**
@@ -718,6 +835,28 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
         m_pollerSettings = settings;
     }
 
+    /**
+     * Sets the number of poll results to report to the backend in one call.
+     * The default of 1 reports each result as soon as it is collected.
+     *
+     * @param resultBatchSize the maximum number of results per batch
+     */
+    public void setResultBatchSize(final int resultBatchSize) {
+        m_resultBatchSize = resultBatchSize;
+    }
+
+    /**
+     * Sets the maximum time, in milliseconds, a poll result waits for its
+     * batch to fill up before the batch is reported anyway, whether or not
+     * any more results come in.  Pending results are also reported on every
+     * configuration check.
+     *
+     * @param resultBatchInterval the interval in milliseconds
+     */
+    public void setResultBatchInterval(final long resultBatchInterval) {
+        m_resultBatchInterval = resultBatchInterval;
+    }
+
     /**
      * @param timeAdjustment the timeAdjustment to set
      */
@@ -739,6 +878,13 @@ public class DefaultPollerFrontEnd implements PollerFrontEnd, InitializingBean,
      */
     @Override
     public void stop() {
+        flushResults();
+        synchronized (m_pendingResults) {
+            if (m_resultFlusher != null) {
+                m_resultFlusher.shutdownNow();
+                m_resultFlusher = null;
+            }
+        }
         doStop();
         setState(new Stopped());
     }
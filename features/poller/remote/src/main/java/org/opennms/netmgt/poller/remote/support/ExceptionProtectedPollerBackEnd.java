@@ -30,6 +30,7 @@ package org.opennms.netmgt.poller.remote.support;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -43,6 +44,7 @@ import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitorLocator;
 import org.opennms.netmgt.poller.remote.PollerBackEnd;
 import org.opennms.netmgt.poller.remote.PollerConfiguration;
+import org.opennms.netmgt.poller.remote.ServicePollResult;
 import org.springframework.remoting.RemoteAccessException;
 
 /**
@@ -196,6 +198,17 @@ public class ExceptionProtectedPollerBackEnd implements PollerBackEnd {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void reportResults(int locationMonitorID, List<ServicePollResult> results) {
+        try {
+            m_delegate.reportResults(locationMonitorID, results);
+        } catch (Throwable t) {
+            LOG.error("Unexpected exception thrown in remote poller backend.", t);
+            throw new RemoteAccessException("Unexpected Exception Occurred on the server.", t);
+        }
+    }
+
     @Override
     public void saveResponseTimeData(String locationMonitor, OnmsMonitoredService monSvc, double responseTime, Package pkg) {
         try {
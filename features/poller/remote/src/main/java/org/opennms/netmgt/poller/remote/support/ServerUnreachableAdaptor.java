@@ -31,6 +31,7 @@ package org.opennms.netmgt.poller.remote.support;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -44,6 +45,7 @@ import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitorLocator;
 import org.opennms.netmgt.poller.remote.PollerBackEnd;
 import org.opennms.netmgt.poller.remote.PollerConfiguration;
+import org.opennms.netmgt.poller.remote.ServicePollResult;
 import org.springframework.remoting.RemoteAccessException;
 
 /**
@@ -174,6 +176,19 @@ public class ServerUnreachableAdaptor implements PollerBackEnd {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void reportResults(final int locationMonitorID, final List<ServicePollResult> results) {
+        if (!m_serverUnresponsive) {
+            try {
+                m_remoteBackEnd.reportResults(locationMonitorID, results);
+            } catch (RemoteAccessException e) {
+                m_serverUnresponsive = true;
+                LOG.warn("Server is unable to respond due to the following exception.", e);
+            }
+        }
+    }
+
 
     /** {@inheritDoc} */
     @Override
@@ -702,6 +702,46 @@ public class PollerBackEndTest extends TestCase {
         m_backEnd.reportResult(1, 2, newStatus);
     }
 
+    public void testUnchangedStatusSkipsDatabase() {
+        expect(m_locMonDao.get(1)).andReturn(m_locationMonitor).times(2);
+        expect(m_monSvcDao.get(2)).andReturn(m_dnsService);
+
+        // only looked up for the first result, after that the status is cached
+        expect(m_locMonDao.getMostRecentStatusChange(m_locationMonitor, m_dnsService)).andReturn(m_dnsCurrentStatus);
+
+        // expect no status changes
+
+        m_mocks.replayAll();
+
+        m_backEnd.reportResult(1, 2, PollStatus.unavailable("Still Down"));
+        m_backEnd.reportResults(1, Arrays.asList(new ServicePollResult(2, PollStatus.unavailable("Still Down")), new ServicePollResult(2, PollStatus.unavailable("Still Down"))));
+    }
+
+    public void testStatusChangeInBatch() {
+        expect(m_locMonDao.get(1)).andReturn(m_locationMonitor);
+        expect(m_monSvcDao.get(2)).andReturn(m_dnsService).times(2);
+
+        expect(m_locMonDao.getMostRecentStatusChange(m_locationMonitor, m_dnsService)).andReturn(m_dnsCurrentStatus);
+
+        final PollStatus newStatus = PollStatus.available();
+
+        OnmsLocationSpecificStatus expectedStatus = new OnmsLocationSpecificStatus(m_locationMonitor, m_dnsService, newStatus);
+
+        m_locMonDao.saveStatusChange(isA(OnmsLocationSpecificStatus.class));
+        expectLastCall().andAnswer(new StatusChecker(expectedStatus));
+
+        EventBuilder eventBuilder = new EventBuilder(EventConstants.REMOTE_NODE_REGAINED_SERVICE_UEI, "PollerBackEnd")
+        .setMonitoredService(m_dnsService)
+        .addParam(EventConstants.PARM_LOCATION_MONITOR_ID, "1");
+
+        m_eventIpcManager.sendNow(eq(eventBuilder.getEvent()));
+
+        m_mocks.replayAll();
+
+        // the first result is unchanged, the second one is processed against the cached status
+        m_backEnd.reportResults(1, Arrays.asList(new ServicePollResult(2, PollStatus.unavailable("Still Down")), new ServicePollResult(2, newStatus)));
+    }
+
     public void testStatusUpWhenNoneKnown() {
 
         expect(m_locMonDao.get(1)).andReturn(m_locationMonitor);
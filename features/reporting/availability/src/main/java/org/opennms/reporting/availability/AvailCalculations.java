@@ -74,7 +74,7 @@ public class AvailCalculations extends Object {
      * Castor object that holds all the information required for the generating
      * xml to be translated to the pdf.
      */
-    private static Report m_report = null;
+    private Report m_report = null;
 
     /**
      * Services map
@@ -107,9 +107,54 @@ public class AvailCalculations extends Object {
     private static final int NMONTHS = 12;
 
     /**
-     * Nodes that match this category.
+     * End time of the report.
      */
-    private List<Node> m_nodes;
+    private long m_endTime;
+
+    /**
+     * Number of days from the first of the month up to the end time.
+     */
+    private int m_daysInMonthToDate;
+
+    /**
+     * Number of nodes that match this category.
+     */
+    private int m_nodeCount;
+
+    /**
+     * Number of interfaces of the nodes in this category.
+     */
+    private int m_ipaddrCount;
+
+    /**
+     * Number of services of the nodes in this category.
+     */
+    private int m_serviceCount;
+
+    /**
+     * Down time of all services for each day up to the end time.
+     */
+    private DowntimeWindows m_daily;
+
+    /**
+     * Down time of all services for each day of the last month.
+     */
+    private DowntimeWindows m_lastMonthDaily;
+
+    /**
+     * Down time of all services for each of the last N months.
+     */
+    private DowntimeWindows m_monthly;
+
+    /**
+     * Down time per service name for each of the last 30 days.
+     */
+    private Map<String, DowntimeWindows> m_serviceDaily;
+
+    /**
+     * Down time per service name for each day of the last month.
+     */
+    private Map<String, DowntimeWindows> m_serviceLastMonthDaily;
 
     /**
      * Monitored Services for the category
@@ -148,6 +193,116 @@ public class AvailCalculations extends Object {
      * @param sectionIndex a int.
      */
     public AvailCalculations(final List<Node> nodes, final long endTime, final long lastMonthEndTime, final List<String> monitoredServices, final Report report, final Map<Double, List<String>> offenders, final double warning, final double normal, final String comments, final String name, final String format, final String monthFormat, final int catIndex, final int sectionIndex) {
+        this(nodes, endTime, lastMonthEndTime, monitoredServices);
+        writeCategory(report, offenders, warning, normal, comments, name, format, monthFormat, catIndex, sectionIndex);
+    }
+
+    /**
+     * Computes the down time of every window the report needs in a single
+     * pass over the outages of the nodes. The report is not touched, so the
+     * categories of a report can be computed concurrently and then written
+     * one after the other, in order, using
+     * {@link #writeCategory(Report, Map, double, double, String, String, String, String, int, int)}.
+     *
+     * @param nodes
+     *            List of nodes
+     * @param endTime
+     *            End time ( end of yesterday in milliseconds)
+     * @param lastMonthEndTime
+     *            Last months end time (end of the last day of last month in
+     *            milliseconds)
+     * @param monitoredServices
+     *            Monitored services belonging to the category.
+     */
+    AvailCalculations(final List<Node> nodes, final long endTime, final long lastMonthEndTime, final List<String> monitoredServices) {
+        Logging.withPrefix(LOG4J_CATEGORY, new Runnable() {
+            @Override public void run() {
+                LOG.debug("Aggregating outages of {} nodes using endTime {}", nodes.size(), endTime);
+
+                m_monitoredServices = monitoredServices;
+                m_endTime = endTime;
+                m_endLastMonthTime = lastMonthEndTime;
+                m_daysInLastMonth = getDaysForMonth(m_endLastMonthTime);
+
+                Calendar calendar = new GregorianCalendar();
+                calendar.setTime(new Date(endTime));
+                m_daysInMonthToDate = calendar.get(Calendar.DAY_OF_MONTH);
+
+                m_daily = DowntimeWindows.consecutive(endTime, ROLLING_WINDOW, Math.max(THIRTY, m_daysInMonthToDate));
+                m_lastMonthDaily = DowntimeWindows.consecutive(m_endLastMonthTime, ROLLING_WINDOW, m_daysInLastMonth);
+                m_monthly = lastNMonthsWindows(NMONTHS, m_endLastMonthTime);
+                m_services = new HashMap<String, Map<IfService, OutageSvcTimesList>>();
+                m_serviceDaily = new HashMap<String, DowntimeWindows>();
+                m_serviceLastMonthDaily = new HashMap<String, DowntimeWindows>();
+                m_nodeCount = nodes.size();
+
+                for(Node node : nodes) {
+                    if (node != null) {
+                        m_ipaddrCount += node.getInterfaceCount();
+                        m_serviceCount += node.getServiceCount();
+                        for(Interface intf : node.getInterfaces()) {
+                            if (intf != null) {
+                                for(Service svc : intf.getServices()) {
+                                    if (svc != null) {
+                                        OutageSvcTimesList outages = svc.getOutages();
+                                        if (outages != null) {
+                                            m_daily.add(outages);
+                                            m_lastMonthDaily.add(outages);
+                                            m_monthly.add(outages);
+
+                                            IfService ifservice = new IfService(node.getNodeID(), intf.getName(), -1, node.getName(), svc.getName());
+                                            Map<IfService, OutageSvcTimesList> svcOutages = m_services.get(svc.getName());
+                                            if (svcOutages == null)
+                                                svcOutages = new HashMap<IfService, OutageSvcTimesList>();
+                                            svcOutages.put(ifservice, outages);
+                                            m_services.put(svc.getName(), svcOutages);
+
+                                            DowntimeWindows daily = m_serviceDaily.get(svc.getName());
+                                            if (daily == null) {
+                                                daily = DowntimeWindows.consecutive(endTime, ROLLING_WINDOW, THIRTY);
+                                                m_serviceDaily.put(svc.getName(), daily);
+                                            }
+                                            daily.add(outages);
+
+                                            DowntimeWindows lastMonthDaily = m_serviceLastMonthDaily.get(svc.getName());
+                                            if (lastMonthDaily == null) {
+                                                lastMonthDaily = DowntimeWindows.consecutive(m_endLastMonthTime, ROLLING_WINDOW, m_daysInLastMonth);
+                                                m_serviceLastMonthDaily.put(svc.getName(), lastMonthDaily);
+                                            }
+                                            lastMonthDaily.add(outages);
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+
+                LOG.debug("Services {}", m_services);
+            }
+        });
+    }
+
+    /**
+     * Adds the category and its sections to the report. Categories have to
+     * be written in order since the section index carries on from one
+     * category to the next.
+     *
+     * @param report
+     *            Castor Report class.
+     * @param offenders
+     *            Map of all offenders -- percent/(list of node) pairs
+     * @param warning a double.
+     * @param normal a double.
+     * @param comments a {@link java.lang.String} object.
+     * @param name a {@link java.lang.String} object.
+     * @param format
+     *            Value can be "SVG / all"
+     * @param monthFormat a {@link java.lang.String} object.
+     * @param catIndex a int.
+     * @param sectionIndex a int.
+     */
+    void writeCategory(final Report report, final Map<Double, List<String>> offenders, final double warning, final double normal, final String comments, final String name, final String format, final String monthFormat, final int catIndex, final int sectionIndex) {
         Logging.withPrefix(LOG4J_CATEGORY, new Runnable() {
             @Override public void run() {
                 m_sectionIndex = sectionIndex;
@@ -157,30 +312,16 @@ public class AvailCalculations extends Object {
                 category.setCatComments(comments);
                 category.setCatName(name);
                 category.setCatIndex(catIndex);
-                category.setNodeCount(nodes.size());
-                int ipaddrCount = 0;
-                int serviceCount = 0;
-
-                for(Node tmpNode : nodes) {
-                    if (tmpNode != null) {
-                        ipaddrCount += tmpNode.getInterfaceCount();
-                        serviceCount += tmpNode.getServiceCount();
-                    }
-                }
-                category.setIpaddrCount(ipaddrCount);
-                category.setServiceCount(serviceCount);
+                category.setNodeCount(m_nodeCount);
+                category.setIpaddrCount(m_ipaddrCount);
+                category.setServiceCount(m_serviceCount);
 
                 org.opennms.reporting.availability.Categories categories = report.getCategories();
 
-                LOG.debug("Inside AvailCalculations using endTime {}", endTime);
+                LOG.debug("Inside AvailCalculations using endTime {}", m_endTime);
 
-                m_monitoredServices = monitoredServices;
-                m_endLastMonthTime = lastMonthEndTime;
-                m_daysInLastMonth = getDaysForMonth(m_endLastMonthTime);
                 m_report = report;
 
-                m_nodes = nodes;
-
                 String label;
                 String descr;
 
@@ -204,7 +345,7 @@ public class AvailCalculations extends Object {
                 if (descr == null || descr.length() == 0)
                     descr = "The last 12 Months Availability";
                 CatSections catSections = new CatSections();
-                lastNMonthsAvailability(NMONTHS, m_endLastMonthTime, catSections, label, descr);
+                lastNMonthsAvailability(m_monthly, catSections, label, descr);
 
                 LOG.debug("Computed lastNMonthsAvailability");
 
@@ -220,9 +361,9 @@ public class AvailCalculations extends Object {
                 if (descr == null || descr.length() == 0)
                     descr = "Daily Average of svcs monitored and availability of svcs divided by the total svc minutes (last month)";
                 if (monthFormat.equalsIgnoreCase("calendar")){
-                    lastCalMoDailyAvailability(m_daysInLastMonth, m_endLastMonthTime, catSections, label, descr, "LastMonthsDailyAvailability");
+                    lastCalMoDailyAvailability(m_daysInLastMonth, m_endLastMonthTime, m_lastMonthDaily, catSections, label, descr, "LastMonthsDailyAvailability");
                 }else {
-                    lastMoDailyAvailability(m_daysInLastMonth, m_endLastMonthTime, catSections, label, descr, "LastMonthsDailyAvailability");
+                    lastMoDailyAvailability(m_daysInLastMonth, m_endLastMonthTime, m_lastMonthDaily, catSections, label, descr, "LastMonthsDailyAvailability");
                 }
 
                 LOG.debug("Computed lastNDaysDailyAvailability");
@@ -238,13 +379,10 @@ public class AvailCalculations extends Object {
                     label = "Month To Date Daily Availability";
                 if (descr == null || descr.length() == 0)
                     descr = "Daily Average of svc monitored and availability of svcs div by total svc minutes of month frm 1st till date";
-                Calendar calendar = new GregorianCalendar();
-                calendar.setTime(new Date(endTime));
-                int numDaysInMonth = calendar.get(Calendar.DAY_OF_MONTH);
                 if (monthFormat.equalsIgnoreCase("calendar")){
-                    lastCalMTDDailyAvailability(numDaysInMonth, endTime, catSections, label, descr, "MonthToDateDailyAvailability");
+                    lastCalMTDDailyAvailability(m_daysInMonthToDate, m_endTime, m_daily, catSections, label, descr, "MonthToDateDailyAvailability");
                 }else {
-                    lastMTDDailyAvailability(numDaysInMonth, endTime, catSections, label, descr, "MonthToDateDailyAvailability");
+                    lastMTDDailyAvailability(m_daysInMonthToDate, m_endTime, m_daily, catSections, label, descr, "MonthToDateDailyAvailability");
                 }
 
 
@@ -277,7 +415,7 @@ public class AvailCalculations extends Object {
                         label = "The last 30 Days Daily Availability";
                     if (descr == null || descr.length() == 0)
                         descr = "Daily average of svcs and dvcs monitored and their availability divided by total mins for 30days";
-                    lastNDaysDailyAvailability(THIRTY, endTime, catSections, label, descr, "Last30DaysDailyAvailability");
+                    lastNDaysDailyAvailability(THIRTY, m_endTime, m_daily, catSections, label, descr, "Last30DaysDailyAvailability");
 
                     LOG.debug("Computed lastNDaysDailyAvailability");
                 }
@@ -294,7 +432,7 @@ public class AvailCalculations extends Object {
                         label = "The last 30 Days Total Availability";
                     if (descr == null || descr.length() == 0)
                         descr = "Average of svcs monitored and availability of svcs divided by total svc minutes of the last 30 days";
-                    lastNDaysTotalAvailability(THIRTY, endTime, catSections, label, descr);
+                    lastNDaysTotalAvailability(THIRTY, m_endTime, m_daily, catSections, label, descr);
 
                     LOG.debug("Computed lastNDaysTotalAvailability");
                 }
@@ -311,7 +449,7 @@ public class AvailCalculations extends Object {
                         label = "The last Months Total Availability";
                     if (descr == null || descr.length() == 0)
                         descr = "Average of svcs monitored and availability of svcs divided by the total svc minutes of the month";
-                    lastMoTotalAvailability(m_daysInLastMonth, m_endLastMonthTime, catSections, label, descr);
+                    lastMoTotalAvailability(m_daysInLastMonth, m_endLastMonthTime, m_lastMonthDaily, catSections, label, descr);
 
                     LOG.debug("Computed lastNDaysDailyAvailability");
                 }
@@ -328,37 +466,11 @@ public class AvailCalculations extends Object {
                         label = "Month To Date Total Availability";
                     if (descr == null || descr.length() == 0)
                         descr = "Average of svc monitored and availability of svcs dividedby total svc minutes of month frm 1st till date";
-                    lastMoTotalAvailability(numDaysInMonth, endTime, catSections, label, descr);
+                    lastMoTotalAvailability(m_daysInMonthToDate, m_endTime, m_daily, catSections, label, descr);
 
                     LOG.debug("Computed MTDTotalAvailability");
                 }
 
-                m_services = new HashMap<String, Map<IfService, OutageSvcTimesList>>();
-
-                for(Node node : nodes) {
-                    if (node != null) {
-                        for(Interface intf : node.getInterfaces()) {
-                            if (intf != null) {
-                                for(Service svc : intf.getServices()) {
-                                    if (svc != null) {
-                                        OutageSvcTimesList outages = svc.getOutages();
-                                        if (outages != null) {
-                                            IfService ifservice = new IfService(node.getNodeID(), intf.getName(), -1, node.getName(), svc.getName());
-                                            Map<IfService, OutageSvcTimesList> svcOutages = m_services.get(svc.getName());
-                                            if (svcOutages == null)
-                                                svcOutages = new HashMap<IfService, OutageSvcTimesList>();
-                                            svcOutages.put(ifservice, outages);
-                                            m_services.put(svc.getName(), svcOutages);
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-
-                LOG.debug("Services {}", m_services);
-                m_nodes = null;
                 //
                 // N Days Daily Service Availability
                 //
@@ -371,7 +483,7 @@ public class AvailCalculations extends Object {
                         label = "The last 30 days Daily Service Availability";
                     if (descr == null || descr.length() == 0)
                         descr = "The last 30 days Daily Service Availability is the daily average of services";
-                    lastNDaysDailyServiceAvailability(THIRTY, endTime, catSections, label, descr);
+                    lastNDaysDailyServiceAvailability(THIRTY, m_endTime, m_serviceDaily, catSections, label, descr);
 
                     LOG.debug("Computed lastNDaysDailyServiceAvailability");
                 }
@@ -388,7 +500,7 @@ public class AvailCalculations extends Object {
                         label = "The last Months Daily Service Availability";
                     if (descr == null || descr.length() == 0)
                         descr = "The last Months Daily Service Availability is the daily average of services and devices";
-                    lastNDaysDailyServiceAvailability(m_daysInLastMonth, m_endLastMonthTime, catSections, label, descr);
+                    lastNDaysDailyServiceAvailability(m_daysInLastMonth, m_endLastMonthTime, m_serviceLastMonthDaily, catSections, label, descr);
 
                     LOG.debug("Computed lastNDaysDailyServiceAvailability");
                 }
@@ -540,6 +652,8 @@ public class AvailCalculations extends Object {
      *            made.
      * @param endTime
      *            End time
+     * @param windows
+     *            Daily down time, the first window ending at end time
      * @param sections
      *            Castors sections
      * @param label
@@ -549,8 +663,8 @@ public class AvailCalculations extends Object {
      * @param sectionName
      *            Section name.
      */
-    private void lastMTDDailyAvailability(int days, long endTime, CatSections sections, String label, String descr, String sectionName) {
-        lastNDaysDailyAvailability(days, endTime, sections, label, descr, sectionName);
+    private void lastMTDDailyAvailability(int days, long endTime, DowntimeWindows windows, CatSections sections, String label, String descr, String sectionName) {
+        lastNDaysDailyAvailability(days, endTime, windows, sections, label, descr, sectionName);
     }
 
     /**
@@ -561,6 +675,8 @@ public class AvailCalculations extends Object {
      *            made.
      * @param endTime
      *            End time
+     * @param windows
+     *            Daily down time, the first window ending at end time
      * @param sections
      *            Castors sections
      * @param label
@@ -570,8 +686,8 @@ public class AvailCalculations extends Object {
      * @param sectionName
      *            Section name.
      */
-    private void lastCalMTDDailyAvailability(int days, long endTime, CatSections sections, String label, String descr, String sectionName) {
-        lastNDaysCalDailyAvailability(days, endTime, sections, label, descr, sectionName);
+    private void lastCalMTDDailyAvailability(int days, long endTime, DowntimeWindows windows, CatSections sections, String label, String descr, String sectionName) {
+        lastNDaysCalDailyAvailability(days, endTime, windows, sections, label, descr, sectionName);
     }
     /**
      * Last N Days Total Availability.
@@ -581,6 +697,8 @@ public class AvailCalculations extends Object {
      *            made.
      * @param endTime
      *            End time
+     * @param windows
+     *            Daily down time, the first window ending at end time
      * @param catSections
      *            Castors sections
      * @param label
@@ -588,8 +706,8 @@ public class AvailCalculations extends Object {
      * @param descr
      *            Section descr.
      */
-    private void lastMoTotalAvailability(int days, long endTime, CatSections catSections, String label, String descr) {
-        lastNDaysTotalAvailability(days, endTime, catSections, label, descr);
+    private void lastMoTotalAvailability(int days, long endTime, DowntimeWindows windows, CatSections catSections, String label, String descr) {
+        lastNDaysTotalAvailability(days, endTime, windows, catSections, label, descr);
     }
 
 
@@ -674,6 +792,8 @@ public class AvailCalculations extends Object {
      *            made
      * @param endTime
      *            End time
+     * @param windows
+     *            Daily down time, the first window ending at end time
      * @param sections
      *            Castors sections
      * @param label
@@ -683,8 +803,8 @@ public class AvailCalculations extends Object {
      * @param sectionName
      *            Section name
      */
-    private void lastMoDailyAvailability(int days, long endTime, CatSections sections, String label, String descr, String sectionName) {
-        lastNDaysDailyAvailability(days, endTime, sections, label, descr, sectionName);
+    private void lastMoDailyAvailability(int days, long endTime, DowntimeWindows windows, CatSections sections, String label, String descr, String sectionName) {
+        lastNDaysDailyAvailability(days, endTime, windows, sections, label, descr, sectionName);
     }
     /**
      * Last Months Daily availability
@@ -694,6 +814,8 @@ public class AvailCalculations extends Object {
      *            made
      * @param endTime
      *            End time
+     * @param windows
+     *            Daily down time, the first window ending at end time
      * @param sections
      *            Castors sections
      * @param label
@@ -703,8 +825,8 @@ public class AvailCalculations extends Object {
      * @param sectionName
      *            Section name
      */
-    private void lastCalMoDailyAvailability(int days, long endTime, CatSections sections, String label, String descr, String sectionName) {
-        lastNDaysCalDailyAvailability(days, endTime, sections, label, descr, sectionName);
+    private void lastCalMoDailyAvailability(int days, long endTime, DowntimeWindows windows, CatSections sections, String label, String descr, String sectionName) {
+        lastNDaysCalDailyAvailability(days, endTime, windows, sections, label, descr, sectionName);
     }
 
     /**
@@ -715,6 +837,8 @@ public class AvailCalculations extends Object {
      *            made.
      * @param endTime
      *            End time
+     * @param windows
+     *            Daily down time, the first window ending at end time
      * @param catSections
      *            Castors sections
      * @param label
@@ -724,7 +848,7 @@ public class AvailCalculations extends Object {
      * @param sectionName
      *            Section name
      */
-    private void lastNDaysCalDailyAvailability(int days, long endTime, CatSections catSections, String label, String descr, String sectionName) {
+    private void lastNDaysCalDailyAvailability(int days, long endTime, DowntimeWindows windows, CatSections catSections, String label, String descr, String sectionName) {
 
         LOG.debug("Inside lastNDaysDailyAvailability");
         int numdays = 0;
@@ -736,15 +860,8 @@ public class AvailCalculations extends Object {
         while (numdays++ < days) {
 
             LOG.debug("Computing for {}", new Date(endTime));
-            int serviceCount = 0;
-            long outage = 0;
-            //
-            // get the outage and service count.
-            //
-            for(Node node : m_nodes) {
-                outage += node.getOutage(endTime, ROLLING_WINDOW);
-                serviceCount += node.getServiceCount();
-            }
+            int serviceCount = m_serviceCount;
+            long outage = windows.getDownTime(numdays - 1);
             double percentAvail;
             if (serviceCount > 0){
 
@@ -794,6 +911,8 @@ public class AvailCalculations extends Object {
      *            made.
      * @param endTime
      *            End time
+     * @param windows
+     *            Daily down time, the first window ending at end time
      * @param catSections
      *            Castors sections
      * @param label
@@ -803,7 +922,7 @@ public class AvailCalculations extends Object {
      * @param sectionName
      *            Section name
      */
-    private void lastNDaysDailyAvailability(int days, long endTime, CatSections catSections, String label, String descr, String sectionName) {
+    private void lastNDaysDailyAvailability(int days, long endTime, DowntimeWindows windows, CatSections catSections, String label, String descr, String sectionName) {
 
         LOG.debug("Inside lastNDaysDailyAvailability");
         int numdays = 0;
@@ -815,15 +934,8 @@ public class AvailCalculations extends Object {
         while (numdays++ < days) {
 
             LOG.debug("Computing for {}", new Date(endTime));
-            int serviceCount = 0;
-            long outage = 0;
-            //
-            // get the outage and service count.
-            //
-            for(Node node : m_nodes) {
-                outage += node.getOutage(endTime, ROLLING_WINDOW);
-                serviceCount += node.getServiceCount();
-            }
+            int serviceCount = m_serviceCount;
+            long outage = windows.getDownTime(numdays - 1);
             double percentAvail;
             if (serviceCount > 0)
                 percentAvail = 100.0 * (1 - (outage * 1.0) / (1.0 * serviceCount * ROLLING_WINDOW));
@@ -881,6 +993,8 @@ public class AvailCalculations extends Object {
      *            made.
      * @param endTime
      *            End time
+     * @param windows
+     *            Daily down time, the first window ending at end time
      * @param catSections
      *            Castors sections
      * @param label
@@ -888,7 +1002,7 @@ public class AvailCalculations extends Object {
      * @param descr
      *            Section descr.
      */
-    private void lastNDaysTotalAvailability(int days, long endTime, CatSections catSections, String label, String descr) {
+    private void lastNDaysTotalAvailability(int days, long endTime, DowntimeWindows windows, CatSections catSections, String label, String descr) {
         LOG.debug("Inside lastNDaysTotalAvailability");
         Rows rows = new Rows();
         int serviceCount = 0;
@@ -898,13 +1012,8 @@ public class AvailCalculations extends Object {
         String periodEnd = fmt.format(new java.util.Date(endTime));
         String periodFrom = "";
         while (numdays++ < days) {
-            //
-            // get the outage and service count.
-            //
-            for(Node node : m_nodes) {
-                serviceCount += node.getServiceCount();
-                outage += node.getOutage(endTime, ROLLING_WINDOW);
-            }
+            serviceCount += m_serviceCount;
+            outage += windows.getDownTime(numdays - 1);
             periodFrom = fmt.format(new java.util.Date(endTime)) + " to " + periodEnd;
             endTime -= ROLLING_WINDOW;
         }
@@ -946,11 +1055,8 @@ public class AvailCalculations extends Object {
     /**
      * Last N Months Availability
      * 
-     * @param nMonths
-     *            Number of months for which the availability computations are
-     *            made.
-     * @param endTime
-     *            End time
+     * @param months
+     *            Down time of each month, starting with the last one
      * @param catSections
      *            Castors sections
      * @param label
@@ -958,38 +1064,23 @@ public class AvailCalculations extends Object {
      * @param descr
      *            Section descr.
      */
-    private void lastNMonthsAvailability(int nMonths, long endTime, CatSections catSections, String label, String descr) {
+    private void lastNMonthsAvailability(DowntimeWindows months, CatSections catSections, String label, String descr) {
         LOG.debug("Inside lastNMonthsAvailability");
         Rows rows = new Rows();
-        int numMonths = 0;
-
-        int numDays = getDaysForMonth(endTime);
-        Calendar calendar = new GregorianCalendar();
-        calendar.setTime(new Date(endTime));
-        int month = calendar.get(Calendar.MONTH);
-        int year = calendar.get(Calendar.YEAR);
 
-        calendar.set(year, month, numDays, 23, 59, 59);
-        endTime = calendar.getTime().getTime();
         final SimpleDateFormat fmt = new SimpleDateFormat("MMM, yyyy");
-        String periodEnd = fmt.format(new java.util.Date(endTime));
+        String periodEnd = fmt.format(new java.util.Date(months.getEnd(0)));
         TreeMap<Date, String> treeMap = new TreeMap<Date, String>(); // Holds all the month/percent
         // values to be displayed in order
         // on pdf.
         String periodFrom = null;
 
-        while (numMonths++ < nMonths) {
-            int serviceCount = 0;
-            long outage = 0;
-            LOG.debug("Number of days {} in month of {}", numDays, new Date(endTime));
-            long rollingWindow = numDays * ROLLING_WINDOW * 1L;
-            //
-            // get the outage and service count.
-            //
-            for(Node node : m_nodes) {
-                serviceCount += node.getServiceCount();
-                outage += node.getOutage(endTime, rollingWindow);
-            }
+        for (int numMonths = 0; numMonths < months.size(); numMonths++) {
+            long endTime = months.getEnd(numMonths);
+            long rollingWindow = months.getLength(numMonths);
+            LOG.debug("Number of days {} in month of {}", rollingWindow / ROLLING_WINDOW, new Date(endTime));
+            int serviceCount = m_serviceCount;
+            long outage = months.getDownTime(numMonths);
             double percentAvail;
             if (serviceCount > 0)
                 percentAvail = 100.0 * (1 - (outage * 1.0) / (1.0 * serviceCount * rollingWindow));
@@ -999,19 +1090,6 @@ public class AvailCalculations extends Object {
             treeMap.put(new java.util.Date(endTime), formatNumber(percentAvail + ""));
 
             periodFrom = fmt.format(new java.util.Date(endTime));
-            calendar = new GregorianCalendar();
-            calendar.setTime(new Date(endTime));
-            month = calendar.get(Calendar.MONTH);
-            year = calendar.get(Calendar.YEAR);
-
-            calendar.set(year, month - 1, 1, 0, 0, 0);
-            endTime = calendar.getTime().getTime();
-            month = calendar.get(Calendar.MONTH);
-            year = calendar.get(Calendar.YEAR);
-
-            numDays = getDaysForMonth(endTime);
-            calendar.set(year, month, numDays, 23, 59, 59);
-            endTime = calendar.getTime().getTime();
         }
 
         final SimpleDateFormat fmtmp = new SimpleDateFormat("MMM");
@@ -1051,6 +1129,51 @@ public class AvailCalculations extends Object {
         LOG.debug("Leaving lastNMonthsAvailability");
     }
 
+    /**
+     * Returns the calendar months ending with the month of endTime, the
+     * last month first.
+     * 
+     * @param nMonths
+     *            Number of months
+     * @param endTime
+     *            End time
+     */
+    private DowntimeWindows lastNMonthsWindows(int nMonths, long endTime) {
+        long[] ends = new long[nMonths];
+        long[] lengths = new long[nMonths];
+        int numMonths = 0;
+
+        int numDays = getDaysForMonth(endTime);
+        Calendar calendar = new GregorianCalendar();
+        calendar.setTime(new Date(endTime));
+        int month = calendar.get(Calendar.MONTH);
+        int year = calendar.get(Calendar.YEAR);
+
+        calendar.set(year, month, numDays, 23, 59, 59);
+        endTime = calendar.getTime().getTime();
+
+        while (numMonths < nMonths) {
+            ends[numMonths] = endTime;
+            lengths[numMonths] = numDays * ROLLING_WINDOW * 1L;
+            numMonths++;
+
+            calendar = new GregorianCalendar();
+            calendar.setTime(new Date(endTime));
+            month = calendar.get(Calendar.MONTH);
+            year = calendar.get(Calendar.YEAR);
+
+            calendar.set(year, month - 1, 1, 0, 0, 0);
+            endTime = calendar.getTime().getTime();
+            month = calendar.get(Calendar.MONTH);
+            year = calendar.get(Calendar.YEAR);
+
+            numDays = getDaysForMonth(endTime);
+            calendar.set(year, month, numDays, 23, 59, 59);
+            endTime = calendar.getTime().getTime();
+        }
+        return new DowntimeWindows(ends, lengths);
+    }
+
     /**
      * Returns the number of days in the month, also considers checks for leap
      * year.
@@ -1106,6 +1229,9 @@ public class AvailCalculations extends Object {
      * 
      * @param endTime
      *            End time
+     * @param serviceWindows
+     *            Daily down time per service name, the first window ending
+     *            at end time
      * @param catSections
      *            Castors sections
      * @param label
@@ -1113,12 +1239,11 @@ public class AvailCalculations extends Object {
      * @param descr
      *            Section descr.
      */
-    private void lastNDaysDailyServiceAvailability(int days, long endTime, CatSections catSections, String label, String descr) {
+    private void lastNDaysDailyServiceAvailability(int days, long endTime, Map<String, DowntimeWindows> serviceWindows, CatSections catSections, String label, String descr) {
         LOG.debug("Inside lastNDaysDailyServiceAvailability {}", days);
 
         final SimpleDateFormat fmtmp = new SimpleDateFormat("dd MMM, yyyy");
 
-        long outage;
         String periodFrom = "";
         String periodTo = "";
         periodTo = fmtmp.format(new java.util.Date(endTime));
@@ -1176,29 +1301,14 @@ public class AvailCalculations extends Object {
                 m_sectionIndex++;
                 catSections.addSection(section);
             } else {
+                final DowntimeWindows windows = serviceWindows.get(service);
                 int daysCnt = 0;
                 while (daysCnt++ < days) {
                     LOG.debug("DAy : {} end time {} ROLLING_WINDOW {}", daysCnt, new Date(curTime), ROLLING_WINDOW);
-                    int serviceCnt = 0;
-                    long outageTime = 0;
-                    // For each node in the service table.
+                    // Every ifservice of this service is being monitored.
                     //
-                    // Iterate each svc node for getting the ifservice
-                    for (final Map.Entry<IfService, OutageSvcTimesList> entry : svcOutages.entrySet()) {
-                        final IfService ifservice = entry.getKey();
-                        final OutageSvcTimesList outageList = entry.getValue();
-
-                        LOG.debug(ifservice.toString());
-
-                        if (outageList != null) {
-                            outage = outageList.getDownTime(curTime, ROLLING_WINDOW);
-                            // Keep track of the number of services being
-                            // monitored.
-                            //
-                            outageTime += outage;
-                        }
-                        serviceCnt++;
-                    }
+                    int serviceCnt = svcOutages.size();
+                    long outageTime = windows.getDownTime(daysCnt - 1);
                     LOG.debug("Outage Time {}", outageTime);
                     long den = (ROLLING_WINDOW * serviceCnt);
                     double outag = 1.0 * outageTime;
@@ -63,6 +63,18 @@ public abstract class AvailabilityConstants {
                                                                                                                                                                                                         // > ?)
                                                                                                                                                                                                         // )";
 
+    /**
+     * The sql statement that is used to get all active services on managed
+     * interfaces of active nodes.
+     */
+    public static final String DB_GET_MANAGED_SERVICES = "SELECT ifServices.nodeid, node.nodelabel, ifServices.ipaddr, ifServices.serviceid, service.servicename " + "FROM ifServices, ipInterface, node, service WHERE ((ifServices.nodeid = ipInterface.nodeid) AND (ifServices.ipaddr = ipInterface.ipaddr) AND " + "(ifServices.nodeid = node.nodeid) AND (ifServices.serviceid = service.serviceid) AND (node.nodeType = 'A') AND " + "(ipInterface.isManaged = 'M') AND (ifServices.status = 'A')) ORDER BY ifServices.nodeid, ifServices.ipaddr, ifServices.serviceid";
+
+    /**
+     * The sql statement for getting all outage entries that overlap the
+     * report period, ordered by nodeid/ip/serviceid
+     */
+    public static final String DB_GET_OUTAGES_FOR_PERIOD = "SELECT outages.nodeid, outages.ipaddr, outages.serviceid, ifLostService, ifRegainedService FROM outages " + "WHERE (ifLostService < ?) AND ((ifRegainedService IS NULL) OR (ifRegainedService > ?)) " + "ORDER BY outages.nodeid, outages.ipaddr, outages.serviceid, ifLostService";
+
     /**
      * The list of Availability Report Constants that are needed to display
      * appropriate messages on the report.
@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
@@ -39,6 +40,10 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.ValidationException;
@@ -65,6 +70,12 @@ public class AvailabilityData {
      */
     private static final String LOG4J_CATEGORY = "reports";
 
+    /**
+     * Number of categories prepared at the same time when the report covers
+     * more than one category.
+     */
+    private static final int CATEGORY_THREADS = Integer.getInteger("org.opennms.reporting.availability.categoryThreads", Runtime.getRuntime().availableProcessors());
+
     /**
      * List of Node objects that satisfy the filter rule for the category.
      */
@@ -202,23 +213,22 @@ public class AvailabilityData {
                 m_catFactory.getReadLock().lock();
                 try {
                     if (categoryName.equals("") || categoryName.equals("all")) {
-                        int catCount = 0;
-                        LOG.debug("catCount {}", catCount);
+                        final List<org.opennms.netmgt.config.categories.Category> cats = new ArrayList<org.opennms.netmgt.config.categories.Category>();
                         
                         for(final Categorygroup cg : config.getCategorygroupCollection()) {
                         
                             for(org.opennms.netmgt.config.categories.Category cat : cg.getCategories().getCategoryCollection()) {
                 
                                 LOG.debug("CATEGORY {}", cat.getLabel());
-                                catCount++;
-                                populateDataStructures(cat, report, format, monthFormat, catCount);
+                                cats.add(cat);
                             }
                         }
-                        LOG.debug("catCount {}", catCount);
+                        LOG.debug("catCount {}", cats.size());
+                        populateDataStructures(cats, report, format, monthFormat);
                     } else {
                         org.opennms.netmgt.config.categories.Category cat = (org.opennms.netmgt.config.categories.Category) m_catFactory.getCategory(categoryName);
                         LOG.debug("CATEGORY - now populating data structures {}", cat.getLabel());
-                        populateDataStructures(cat, report, format, monthFormat, 1);
+                        populateDataStructures(Collections.singletonList(cat), report, format, monthFormat);
                     }
                 
                     final SimpleDateFormat simplePeriod = new SimpleDateFormat("MMMMMMMMMMM dd, yyyy");
@@ -241,93 +251,159 @@ public class AvailabilityData {
     }
 
     /**
-     * Populates the data structure for this category. This method only
-     * computes for monitored services in this category.
+     * Populates the data structures for these categories. This method only
+     * computes for monitored services in each category. The outages of all
+     * categories are read at once and the categories are computed
+     * concurrently, but they are added to the report one after the other
+     * since the section index carries on from one category to the next.
      * 
-     * @param cat
-     *            Category
+     * @param cats
+     *            Categories, in report order
      * @param report
      *            Report Castor class
      * @param format
      *            SVG-specific/all reports
      */
     private void populateDataStructures(
-            org.opennms.netmgt.config.categories.Category cat, Report report,
-            String format, String monthFormat, int catIndex) throws Exception {
+            final List<org.opennms.netmgt.config.categories.Category> cats, final Report report,
+            final String format, final String monthFormat) throws Exception {
 
-        LOG.debug("Inside populate data Structures {}", catIndex);
-        report.setCatCount(catIndex);
         LOG.debug("Inside populate data Structures");
+        ExecutorService executor = null;
         try {
 
-            List<String> monitoredServices = new ArrayList<String>(cat.getServiceCollection());
-
             if (m_availabilityDataService == null) {
                 LOG.debug("DATA SERVICE IS NULL");
                 throw new IllegalStateException("Data service is null");
             }
-            m_nodes = m_availabilityDataService.getNodes(cat, m_startTime, m_endTime);
-            
-            LOG.debug("Nodes {}", m_nodes);
-            
-            // remove all the nodes that do not have outages
-            
-            ListIterator<Node> cleanNodes = m_nodes.listIterator();
-            while (cleanNodes.hasNext()) {
-                Node node = (Node) cleanNodes.next();
-                if (node != null && !node.hasOutages()) {
-                    LOG.debug("Removing node: {}", node);
-                    cleanNodes.remove();
-                }
-            }
-            LOG.debug("Cleaned Nodes {}", m_nodes);
-            
-            Map<Double, List<String>> topOffenders = getPercentNode();
+            final List<List<Node>> catNodes = m_availabilityDataService.getNodes(cats, m_startTime, m_endTime);
 
-            LOG.debug("TOP OFFENDERS {}", topOffenders);
-            if (m_nodes.size() <= 0) {
-                m_nodes = null;
+            executor = Executors.newFixedThreadPool(Math.max(1, Math.min(CATEGORY_THREADS, cats.size())));
+            final List<Future<PreparedCategory>> prepared = new ArrayList<Future<PreparedCategory>>(cats.size());
+            for (int i = 0; i < cats.size(); i++) {
+                final org.opennms.netmgt.config.categories.Category cat = cats.get(i);
+                final List<Node> nodes = catNodes.get(i);
+                prepared.add(executor.submit(new Callable<PreparedCategory>() {
+                    @Override
+                    public PreparedCategory call() throws Exception {
+                        return Logging.withPrefix(LOG4J_CATEGORY, new Callable<PreparedCategory>() {
+                            @Override
+                            public PreparedCategory call() {
+                                return prepareCategory(cat, nodes);
+                            }
+                        });
+                    }
+                }));
             }
-            if (m_nodes != null) {
-                AvailCalculations availCalculations = new AvailCalculations(
-                                                                            m_nodes,
-                                                                            m_endTime,
-                                                                            m_lastMonthEndTime,
-                                                                            monitoredServices,
-                                                                            report,
-                                                                            topOffenders,
-                                                                            cat.getWarning(),
-                                                                            cat.getNormal(),
-                                                                            cat.getComment(),
-                                                                            cat.getLabel(),
-                                                                            format,
-                                                                            monthFormat,
-                                                                            catIndex,
-                                                                            m_sectionIndex);
-                m_sectionIndex = availCalculations.getSectionIndex();
-                report.setSectionCount(m_sectionIndex - 1);
-            } else {
-                org.opennms.reporting.availability.Category category = new org.opennms.reporting.availability.Category();
-                category.setCatComments(cat.getComment());
-                category.setCatName(cat.getLabel());
-                category.setCatIndex(catIndex);
-                category.setNodeCount(0);
-                category.setIpaddrCount(0);
-                category.setServiceCount(0);
-                Section section = new Section();
-                section.setSectionIndex(m_sectionIndex);
-                org.opennms.reporting.availability.CatSections catSections = new org.opennms.reporting.availability.CatSections();
-                catSections.addSection(section);
-                category.addCatSections(catSections);
-                org.opennms.reporting.availability.Categories categories = report.getCategories();
-                categories.addCategory(category);
-                report.setCategories(categories);
-                report.setSectionCount(m_sectionIndex);
-                m_sectionIndex++;
+
+            for (int i = 0; i < cats.size(); i++) {
+                final PreparedCategory preparedCategory;
+                try {
+                    preparedCategory = prepared.get(i).get();
+                } catch (final ExecutionException e) {
+                    throw e.getCause();
+                }
+                writeCategory(cats.get(i), preparedCategory, report, format, monthFormat, i + 1);
             }
         } catch (Throwable e) {
             LOG.error("Exception has occurred", e);
             throw new Exception(e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Removes the nodes without outages and computes the availability of
+     * the remaining nodes. Does not touch the report.
+     * 
+     * @param cat
+     *            Category
+     * @param nodes
+     *            Nodes of the category
+     */
+    private PreparedCategory prepareCategory(org.opennms.netmgt.config.categories.Category cat, List<Node> nodes) {
+        LOG.debug("Nodes {}", nodes);
+        
+        // remove all the nodes that do not have outages
+        
+        ListIterator<Node> cleanNodes = nodes.listIterator();
+        while (cleanNodes.hasNext()) {
+            Node node = (Node) cleanNodes.next();
+            if (node != null && !node.hasOutages()) {
+                LOG.debug("Removing node: {}", node);
+                cleanNodes.remove();
+            }
+        }
+        LOG.debug("Cleaned Nodes {}", nodes);
+        
+        final PreparedCategory prepared = new PreparedCategory();
+        prepared.m_topOffenders = getPercentNode(nodes);
+
+        LOG.debug("TOP OFFENDERS {}", prepared.m_topOffenders);
+        if (nodes.size() > 0) {
+            prepared.m_nodes = nodes;
+            prepared.m_availCalculations = new AvailCalculations(
+                                                                 nodes,
+                                                                 m_endTime,
+                                                                 m_lastMonthEndTime,
+                                                                 new ArrayList<String>(cat.getServiceCollection()));
+        }
+        return prepared;
+    }
+
+    /**
+     * Adds a prepared category to the report.
+     * 
+     * @param cat
+     *            Category
+     * @param prepared
+     *            The computed availability of the category
+     * @param report
+     *            Report Castor class
+     * @param format
+     *            SVG-specific/all reports
+     */
+    private void writeCategory(
+            org.opennms.netmgt.config.categories.Category cat, PreparedCategory prepared, Report report,
+            String format, String monthFormat, int catIndex) {
+
+        LOG.debug("Inside populate data Structures {}", catIndex);
+        report.setCatCount(catIndex);
+        m_nodes = prepared.m_nodes;
+        if (prepared.m_availCalculations != null) {
+            prepared.m_availCalculations.writeCategory(report,
+                                                       prepared.m_topOffenders,
+                                                       cat.getWarning(),
+                                                       cat.getNormal(),
+                                                       cat.getComment(),
+                                                       cat.getLabel(),
+                                                       format,
+                                                       monthFormat,
+                                                       catIndex,
+                                                       m_sectionIndex);
+            m_sectionIndex = prepared.m_availCalculations.getSectionIndex();
+            report.setSectionCount(m_sectionIndex - 1);
+        } else {
+            org.opennms.reporting.availability.Category category = new org.opennms.reporting.availability.Category();
+            category.setCatComments(cat.getComment());
+            category.setCatName(cat.getLabel());
+            category.setCatIndex(catIndex);
+            category.setNodeCount(0);
+            category.setIpaddrCount(0);
+            category.setServiceCount(0);
+            Section section = new Section();
+            section.setSectionIndex(m_sectionIndex);
+            org.opennms.reporting.availability.CatSections catSections = new org.opennms.reporting.availability.CatSections();
+            catSections.addSection(section);
+            category.addCatSections(catSections);
+            org.opennms.reporting.availability.Categories categories = report.getCategories();
+            categories.addCategory(category);
+            report.setCategories(categories);
+            report.setSectionCount(m_sectionIndex);
+            m_sectionIndex++;
         }
     }
 
@@ -395,6 +471,10 @@ public class AvailabilityData {
      * @return a {@link java.util.TreeMap} object.
      */
     public Map<Double, List<String>> getPercentNode() {
+        return getPercentNode(m_nodes);
+    }
+
+    private Map<Double, List<String>> getPercentNode(List<Node> nodes) {
         int days = m_daysInLastMonth;
         long endTime = m_lastMonthEndTime;
         Calendar cal = new GregorianCalendar();
@@ -406,7 +486,7 @@ public class AvailabilityData {
         LOG.debug("getPercentNode: End time {}", new java.util.Date(endTime));
         TreeMap<Double, List<String>> percentNode = new TreeMap<Double, List<String>>();
         
-        for(Node node : m_nodes) {
+        for(Node node : nodes) {
             if (node != null) {
                 double percent = node.getPercentAvail(endTime, rollingWindow);
                 String nodeName = node.getName();
@@ -436,4 +516,15 @@ public class AvailabilityData {
         LOG.debug("setting m_availabilityDataService");
         m_availabilityDataService = availabilityDataService;
     }
+
+    /**
+     * The outcome of preparing a category: its nodes with outages, the
+     * last months top offenders and the computed availability, or no nodes
+     * and no availability if none of the nodes had an outage.
+     */
+    private static final class PreparedCategory {
+        private List<Node> m_nodes;
+        private Map<Double, List<String>> m_topOffenders;
+        private AvailCalculations m_availCalculations;
+    }
 }
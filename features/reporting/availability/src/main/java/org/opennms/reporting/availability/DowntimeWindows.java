@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.reporting.availability;
+
+import org.opennms.reporting.datablock.Outage;
+import org.opennms.reporting.datablock.OutageSvcTimesList;
+
+/**
+ * Accumulates service down time for a fixed set of report windows in a single
+ * pass over the outages. Every window covers the <code>length</code>
+ * milliseconds before its end time, and each outage is credited with exactly
+ * the down time {@link Outage#getDownTime(long, long)} reports for that
+ * window, so the totals are the same as summing the outages window by window.
+ */
+final class DowntimeWindows {
+
+    private final long[] m_ends;
+
+    private final long[] m_lengths;
+
+    private final long[] m_downTime;
+
+    DowntimeWindows(final long[] ends, final long[] lengths) {
+        if (ends.length != lengths.length) {
+            throw new IllegalArgumentException("Got " + ends.length + " window ends but " + lengths.length + " window lengths");
+        }
+        m_ends = ends;
+        m_lengths = lengths;
+        m_downTime = new long[ends.length];
+    }
+
+    /**
+     * Creates <code>count</code> back-to-back windows of <code>length</code>
+     * milliseconds. Window 0 ends at <code>endTime</code> and every following
+     * window ends where the previous one starts.
+     */
+    static DowntimeWindows consecutive(final long endTime, final long length, final int count) {
+        final long[] ends = new long[count];
+        final long[] lengths = new long[count];
+        for (int i = 0; i < count; i++) {
+            ends[i] = endTime - i * length;
+            lengths[i] = length;
+        }
+        return new DowntimeWindows(ends, lengths);
+    }
+
+    void add(final OutageSvcTimesList outages) {
+        if (outages == null) {
+            return;
+        }
+        for (final Outage outage : outages) {
+            add(outage.getLostTime(), outage.getRegainedTime());
+        }
+    }
+
+    void add(final long lostTime, final long regainedTime) {
+        // an outage that has not been regained yet lasts until the end of every window
+        final long outageEnd = regainedTime == -1 ? Long.MAX_VALUE : regainedTime;
+        for (int i = 0; i < m_ends.length; i++) {
+            final long from = Math.max(lostTime, m_ends[i] - m_lengths[i]);
+            final long to = Math.min(outageEnd, m_ends[i]);
+            if (to > from) {
+                m_downTime[i] += to - from;
+            }
+        }
+    }
+
+    int size() {
+        return m_ends.length;
+    }
+
+    long getEnd(final int index) {
+        return m_ends[index];
+    }
+
+    long getLength(final int index) {
+        return m_lengths[index];
+    }
+
+    long getDownTime(final int index) {
+        return m_downTime[index];
+    }
+}
@@ -48,4 +48,16 @@ public interface AvailabilityDataService {
      */
     public List<Node> getNodes(org.opennms.netmgt.config.categories.Category category, long startTime, long endTime) throws AvailabilityDataServiceException;
 
+    /**
+     * Gets the nodes of several categories at once, reading the outages of
+     * the period only once for all of them.
+     *
+     * @param categories a {@link java.util.List} object.
+     * @param startTime a long.
+     * @param endTime a long.
+     * @return the nodes of each category, in the order of the categories
+     * @throws org.opennms.reporting.availability.svclayer.AvailabilityDataServiceException if any.
+     */
+    public List<List<Node>> getNodes(List<org.opennms.netmgt.config.categories.Category> categories, long startTime, long endTime) throws AvailabilityDataServiceException;
+
 }
@@ -37,9 +37,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 import org.opennms.core.db.DataSourceFactory;
@@ -47,25 +52,29 @@ import org.opennms.core.logging.Logging;
 import org.opennms.core.utils.DBUtils;
 import org.opennms.netmgt.config.CategoryFactory;
 import org.opennms.netmgt.config.api.CatFactory;
+import org.opennms.netmgt.config.categories.Category;
 import org.opennms.netmgt.filter.FilterDaoFactory;
 import org.opennms.reporting.availability.AvailabilityConstants;
 import org.opennms.reporting.datablock.Node;
-import org.opennms.reporting.datablock.Outage;
-import org.opennms.reporting.datablock.OutageSvcTimesList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * <p>LegacyAvailabilityDataService class.</p>
+ *
+ * <p>All managed services and all outages of the report period are read
+ * with one query each, the outages streamed in node/interface/service
+ * order, and the nodes of every category are then assembled in memory.</p>
  */
 public class LegacyAvailabilityDataService implements AvailabilityDataService {
     private static final Logger LOG = LoggerFactory.getLogger(LegacyAvailabilityDataService.class);
 
-    CatFactory m_catFactory;
-
-    private Connection m_availConn;
+    /**
+     * Number of outage rows fetched from the database in one round trip.
+     */
+    private static final int OUTAGE_FETCH_SIZE = 1000;
 
-    private List<Node> m_nodes;
+    CatFactory m_catFactory;
 
     private static final String LOG4J_CATEGORY = "reports";
 
@@ -77,18 +86,16 @@ public class LegacyAvailabilityDataService implements AvailabilityDataService {
 
     /** {@inheritDoc} */
     @Override
-    public List<Node> getNodes(final org.opennms.netmgt.config.categories.Category category, final long startTime, final long endTime) throws AvailabilityDataServiceException {
-        try {
-            return Logging.withPrefix(LOG4J_CATEGORY, new Callable<List<Node>>() {
-                @Override public List<Node> call() throws Exception {
-                    final DBUtils db = new DBUtils();
-                    m_nodes = new ArrayList<Node>();
-
-                    PreparedStatement ipInfoGetStmt = null;
-                    PreparedStatement servicesGetStmt = null;
-                    PreparedStatement outagesGetStmt = null;
+    public List<Node> getNodes(final Category category, final long startTime, final long endTime) throws AvailabilityDataServiceException {
+        return getNodes(Collections.singletonList(category), startTime, endTime).get(0);
+    }
 
-                    String categoryName = category.getLabel();
+    /** {@inheritDoc} */
+    @Override
+    public List<List<Node>> getNodes(final List<Category> categories, final long startTime, final long endTime) throws AvailabilityDataServiceException {
+        try {
+            return Logging.withPrefix(LOG4J_CATEGORY, new Callable<List<List<Node>>>() {
+                @Override public List<List<Node>> call() throws Exception {
                     try {
                         CategoryFactory.init();
                         m_catFactory = CategoryFactory.getInstance();
@@ -100,258 +107,200 @@ public class LegacyAvailabilityDataService implements AvailabilityDataService {
                     m_catFactory.getReadLock().lock();
 
                     try {
-                        String commonRule = m_catFactory.getEffectiveRule(categoryName);
-
                         FilterDaoFactory.getInstance().flushActiveIpAddressListCache();
-                        final List<InetAddress> nodeIPs = FilterDaoFactory.getInstance().getActiveIPAddressList(commonRule);
-                        LOG.debug("Number of IPs satisfying rule: {}", nodeIPs.size());
-
-                        final List<String> monitoredServices = new ArrayList<String>(category.getServiceCollection());
-                        LOG.debug("categories in monitoredServices = {}", monitoredServices);
-
-                        initialiseConnection();
-                        db.watch(m_availConn);
-                        // Prepare the statement to get service entries for each IP
-
-                        // Prepared statement to get node info for an IP
-                        ipInfoGetStmt = m_availConn.prepareStatement(AvailabilityConstants.DB_GET_INFO_FOR_IP);
-                        db.watch(ipInfoGetStmt);
-
-                        // Prepared statedment to get services info for an IP address
-                        servicesGetStmt = m_availConn.prepareStatement(AvailabilityConstants.DB_GET_SVC_ENTRIES);
-                        db.watch(servicesGetStmt);
-
-                        // Prepared statement to get outages entries
-                        outagesGetStmt = m_availConn.prepareStatement(AvailabilityConstants.DB_GET_OUTAGE_ENTRIES);
-                        db.watch(outagesGetStmt);
-
-                        /*
-                         * For each of these IP addresses, get the details from the
-                         * ifServices and services tables.
-                         */
-                        Iterator<InetAddress> ipIter = nodeIPs.iterator();
-                        String ip = null;
-                        ResultSet ipRS = null;
-
-                        // Prepared statement to get node info for an IP
-                        ipInfoGetStmt = m_availConn.prepareStatement(AvailabilityConstants.DB_GET_INFO_FOR_IP);
-                        db.watch(ipInfoGetStmt);
-
-                        while (ipIter.hasNext()) {
-                            ip = str(ipIter.next());
-                            LOG.debug("ecexuting {} for {}", ip, AvailabilityConstants.DB_GET_INFO_FOR_IP);
-
-                            // get node info for this ip
-                            ipInfoGetStmt.setString(1, ip);
-
-                            ipRS = ipInfoGetStmt.executeQuery();
-                            db.watch(ipRS);
-
-                            // now handle all the results from this
-                            while (ipRS.next()) {
-                                int nodeid = ipRS.getInt(1);
-                                final String nodeName = ipRS.getString(2);
-
-                                // get the services for this IP address
-                                ResultSet svcRS = null;
-                                servicesGetStmt.setLong(1, nodeid);
-                                servicesGetStmt.setString(2, ip);
-                                servicesGetStmt.setString(3, ip);
-                                servicesGetStmt.setLong(4, nodeid);
-                                svcRS = servicesGetStmt.executeQuery();
-                                db.watch(svcRS);
+                        final List<List<InetAddress>> categoryIPs = new ArrayList<List<InetAddress>>(categories.size());
+                        for (final Category category : categories) {
+                            final String commonRule = m_catFactory.getEffectiveRule(category.getLabel());
+                            final List<InetAddress> nodeIPs = FilterDaoFactory.getInstance().getActiveIPAddressList(commonRule);
+                            LOG.debug("Number of IPs satisfying rule for {}: {}", category.getLabel(), nodeIPs.size());
+                            categoryIPs.add(nodeIPs);
+                        }
 
-                                // create node objects for this nodeID/IP/service
-                                while (svcRS.next()) {
-                                    // read data from the resultSet
-                                    final int svcid = svcRS.getInt(1);
-                                    final String svcname = svcRS.getString(2);
+                        final Map<String, List<ManagedService>> services = getManagedServices(startTime, endTime);
 
-                                    /*
-                                     * If the list is empty, we assume all services are
-                                     * monitored. If it has any, we use it as a filter
-                                     */
-                                    if (monitoredServices.isEmpty() || monitoredServices.contains(svcname)) {
-                                        final OutageSvcTimesList outageSvcTimesList = new OutageSvcTimesList();
-                                        getOutagesNodeIpSvc(nodeid, nodeName, ip, svcid, svcname, outageSvcTimesList, outagesGetStmt, startTime, endTime);
-                                    }
-                                }
-                            }
+                        final List<List<Node>> nodes = new ArrayList<List<Node>>(categories.size());
+                        for (int i = 0; i < categories.size(); i++) {
+                            nodes.add(getNodes(categories.get(i), categoryIPs.get(i), services));
                         }
+                        return nodes;
                     } catch (final Exception e) {
-                        LOG.debug("Failed to get nodes for category {}", category, e);
-                        throw new AvailabilityDataServiceException("Failed to get nodes for category " + category, e);
+                        LOG.debug("Failed to get nodes for categories {}", categories, e);
+                        throw new AvailabilityDataServiceException("Failed to get nodes for categories " + categories, e);
                     } finally {
-                        db.cleanUp();
                         m_catFactory.getReadLock().unlock();
                     }
-
-                    return m_nodes;
                 }
             });
         } catch (final Exception e) {
             if (e instanceof AvailabilityDataServiceException) throw (AvailabilityDataServiceException)e;
             throw new AvailabilityDataServiceException(e);
         }
-
     }
 
     /**
-     * Get all outages for this nodeid/ipaddr/service combination and add it
-     * to m_nodes.
+     * Assembles the nodes of a category from the IP addresses matching its
+     * rule, keeping the nodes in the order in which their first address
+     * matched.
      */
-    private void getOutagesNodeIpSvc(int nodeid, String nodeName, String ipaddr, int serviceid, String serviceName, OutageSvcTimesList outageSvcTimesList, PreparedStatement outagesGetStmt, long startTime,long endTime) throws SQLException {
-        // Get outages for this node/ip/svc pair
-        try {
-            outagesGetStmt.setInt(1, nodeid);
-            outagesGetStmt.setString(2, ipaddr);
-            outagesGetStmt.setInt(3, serviceid);
-
-            ResultSet rs = outagesGetStmt.executeQuery();
-
-
-            if (m_nodes != null && m_nodes.size() > 0) {
-                ListIterator<Node> lstIter = m_nodes.listIterator();
-                boolean foundFlag = false;
-                Node oldNode = null;
-                while (lstIter.hasNext()) {
-                    oldNode = (Node) lstIter.next();
-                    if (oldNode != null && oldNode.getNodeID() == nodeid) {
-                        foundFlag = true;
-                        break;
-                    }
-                }
-                if (!foundFlag) {
-                    Node newNode = new Node(nodeName, nodeid);
-                    newNode.addInterface(ipaddr, serviceName);
-                    m_nodes.add(newNode);
-                } else {
-                    oldNode.addInterface(ipaddr, serviceName);
-                }
-            } else {
-                Node newNode = new Node(nodeName, nodeid);
-                newNode.addInterface(ipaddr, serviceName);
-                if (m_nodes == null) {
-                    LOG.debug("NODES IS NULL");
-                }
-                m_nodes.add(newNode);
+    private static List<Node> getNodes(final Category category, final List<InetAddress> nodeIPs, final Map<String, List<ManagedService>> services) {
+        final Set<String> monitoredServices = new HashSet<String>(category.getServiceCollection());
+        LOG.debug("categories in monitoredServices = {}", monitoredServices);
+
+        final Map<Integer, Node> nodes = new LinkedHashMap<Integer, Node>();
+        for (final InetAddress nodeIP : nodeIPs) {
+            final String ip = str(nodeIP);
+            final List<ManagedService> ipServices = services.get(ip);
+            if (ipServices == null) {
+                continue;
             }
-
-            while (rs.next()) {
-                Timestamp lost = rs.getTimestamp(1);
-                Timestamp regained = rs.getTimestamp(2);
-                long losttime = lost.getTime();
-                long regainedtime = 0;
-
-                if (regained != null) {
-                    regainedtime = regained.getTime();
+            for (final ManagedService service : ipServices) {
+                /*
+                 * If the list is empty, we assume all services are
+                 * monitored. If it has any, we use it as a filter
+                 */
+                if (!monitoredServices.isEmpty() && !monitoredServices.contains(service.m_serviceName)) {
+                    continue;
                 }
-
-                if (regainedtime > 0) {
-                    if (regainedtime <= startTime
-                            || losttime >= endTime) {
-                        continue;
-                    }
-                } else {
-                    if (losttime >= endTime) {
-                        continue;
+                Node node = nodes.get(service.m_nodeId);
+                if (node == null) {
+                    node = new Node(service.m_nodeLabel, service.m_nodeId);
+                    nodes.put(service.m_nodeId, node);
+                }
+                node.addInterface(ip, service.m_serviceName);
+                for (int i = 0; i < service.m_outageCount; i++) {
+                    final long losttime = service.m_outages[2 * i];
+                    final long regainedtime = service.m_outages[2 * i + 1];
+                    if (losttime > 0) {
+                        if (regainedtime > 0) {
+                            node.addInterface(ip, service.m_serviceName, losttime, regainedtime);
+                        } else {
+                            node.addInterface(ip, service.m_serviceName, losttime);
+                        }
+                    } else {
+                        node.addInterface(ip, service.m_serviceName);
                     }
                 }
-                Outage outage = new Outage(losttime, regainedtime);
-                outageSvcTimesList.add(outage);
-                addNode(nodeName, nodeid, ipaddr, serviceName, losttime, regainedtime);
-            }
-            if (rs != null) {
-                rs.close();
             }
-
-        } catch (SQLException e) {
-            LOG.error("SQL Error occured while getting the outages ", e);
-            throw e;
         }
+        return new ArrayList<Node>(nodes.values());
     }
 
     /**
-     * This method adds a unique tuple to the list of nodes m_nodes.
+     * Reads all active services on managed interfaces of active nodes
+     * together with their outages during the report period.
      *
-     * @param nodeName a {@link java.lang.String} object.
-     * @param nodeid a int.
-     * @param ipaddr a {@link java.lang.String} object.
-     * @param serviceid a {@link java.lang.String} object.
-     * @param losttime a long.
-     * @param regainedtime a long.
+     * @return the services grouped by IP address
      */
-    public void addNode(final String nodeName, final int nodeid, final String ipaddr, final String serviceid, final long losttime, final long regainedtime) {
-        if (m_nodes == null) {
-            m_nodes = new ArrayList<Node>();
-        } else {
-            if (m_nodes.size() <= 0) {
-                Node newNode = new Node(nodeName, nodeid);
-                // if(log.isDebugEnabled())
-                // LOG.debug("Created the new node.");
-                if (losttime > 0) {
-                    if (regainedtime > 0) {
-                        newNode.addInterface(ipaddr, serviceid, losttime, regainedtime);
-                    } else {
-                        newNode.addInterface(ipaddr, serviceid, losttime);
-                    }
-                } else {
-                    newNode.addInterface(ipaddr, serviceid);
-                }
-                m_nodes.add(newNode);
-                return;
-            } else // look for the node with the nodeName
-            {
-                Node newNode = null;
-                boolean foundFlag = false;
-                ListIterator<Node> lstIter = m_nodes.listIterator();
-                while (lstIter.hasNext()) {
-                    newNode = lstIter.next();
-                    if (newNode.getNodeID() == nodeid) {
-                        foundFlag = true;
-                        break;
-                    }
+    private static Map<String, List<ManagedService>> getManagedServices(final long startTime, final long endTime) throws AvailabilityDataServiceException, SQLException {
+        final DBUtils db = new DBUtils(LegacyAvailabilityDataService.class);
+        try {
+            final Connection conn = getConnection();
+            db.watch(conn);
+
+            final Map<String, List<ManagedService>> servicesByIp = new HashMap<String, List<ManagedService>>();
+            final Map<String, ManagedService> servicesByKey = new HashMap<String, ManagedService>();
+
+            final PreparedStatement servicesStmt = conn.prepareStatement(AvailabilityConstants.DB_GET_MANAGED_SERVICES);
+            db.watch(servicesStmt);
+            final ResultSet servicesRS = servicesStmt.executeQuery();
+            db.watch(servicesRS);
+            while (servicesRS.next()) {
+                final ManagedService service = new ManagedService(servicesRS.getInt(1), servicesRS.getString(2), servicesRS.getString(3), servicesRS.getInt(4), servicesRS.getString(5));
+                List<ManagedService> ipServices = servicesByIp.get(service.m_ipAddr);
+                if (ipServices == null) {
+                    ipServices = new ArrayList<ManagedService>(4);
+                    servicesByIp.put(service.m_ipAddr, ipServices);
                 }
-                if (!foundFlag) {
-                    newNode = new Node(nodeName, nodeid);
-                    if (losttime > 0) {
-                        if (regainedtime > 0) {
-                            newNode.addInterface(ipaddr, serviceid, losttime, regainedtime);
-                        } else {
-                            newNode.addInterface(ipaddr, serviceid, losttime);
-                        }
-                    } else {
-                        newNode.addInterface(ipaddr, serviceid);
-                    }
-                    m_nodes.add(newNode);
-                    return;
-                } else {
-                    if (losttime > 0) {
-                        if (regainedtime > 0) {
-                            newNode.addInterface(ipaddr, serviceid, losttime, regainedtime);
-                        } else {
-                            newNode.addInterface(ipaddr, serviceid, losttime);
+                ipServices.add(service);
+                servicesByKey.put(key(service.m_nodeId, service.m_ipAddr, service.m_serviceId), service);
+            }
+            LOG.debug("Loaded {} managed services on {} interfaces", servicesByKey.size(), servicesByIp.size());
+
+            // PostgreSQL only honors the fetch size inside a transaction
+            final boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                final PreparedStatement outagesStmt = conn.prepareStatement(AvailabilityConstants.DB_GET_OUTAGES_FOR_PERIOD);
+                db.watch(outagesStmt);
+                outagesStmt.setFetchSize(OUTAGE_FETCH_SIZE);
+                outagesStmt.setTimestamp(1, new Timestamp(endTime));
+                outagesStmt.setTimestamp(2, new Timestamp(startTime));
+                final ResultSet outagesRS = outagesStmt.executeQuery();
+                db.watch(outagesRS);
+
+                // the outages are ordered by service, so consecutive rows usually hit the same one
+                ManagedService service = null;
+                int outageCount = 0;
+                while (outagesRS.next()) {
+                    final int nodeId = outagesRS.getInt(1);
+                    final String ipAddr = outagesRS.getString(2);
+                    final int serviceId = outagesRS.getInt(3);
+                    if (service == null || service.m_nodeId != nodeId || service.m_serviceId != serviceId || !service.m_ipAddr.equals(ipAddr)) {
+                        service = servicesByKey.get(key(nodeId, ipAddr, serviceId));
+                        if (service == null) {
+                            continue;
                         }
-                    } else {
-                        newNode.addInterface(ipaddr, serviceid);
                     }
-                    return;
+                    final Timestamp regained = outagesRS.getTimestamp(5);
+                    service.addOutage(outagesRS.getTimestamp(4).getTime(), regained == null ? 0 : regained.getTime());
+                    outageCount++;
                 }
+                LOG.debug("Loaded {} outages between {} and {}", outageCount, new Timestamp(startTime), new Timestamp(endTime));
+            } finally {
+                conn.setAutoCommit(autoCommit);
             }
+
+            return servicesByIp;
+        } finally {
+            db.cleanUp();
         }
     }
+
+    private static String key(final int nodeId, final String ipAddr, final int serviceId) {
+        return nodeId + "/" + ipAddr + "/" + serviceId;
+    }
+
     /**
-     * Initializes the database connection.
+     * Gets a database connection.
      */
-    private void initialiseConnection() throws AvailabilityDataServiceException {
-        //
-        // Initialize the DataCollectionConfigFactory
-        //
+    private static Connection getConnection() throws AvailabilityDataServiceException {
         try {
-            m_availConn = DataSourceFactory.getInstance().getConnection();
+            return DataSourceFactory.getInstance().getConnection();
         } catch (SQLException e) {
             LOG.error("initialize: Failed getting connection to the database.", e);
             throw new AvailabilityDataServiceException("failed to load data collection configuration");
         }
     }
+
+    /**
+     * An active service on a managed interface with its lost/regained
+     * times, kept as pairs in a primitive array. The regained time is 0 for
+     * outages that are still open.
+     */
+    private static final class ManagedService {
+        private final int m_nodeId;
+        private final String m_nodeLabel;
+        private final String m_ipAddr;
+        private final int m_serviceId;
+        private final String m_serviceName;
+        private long[] m_outages = new long[0];
+        private int m_outageCount = 0;
+
+        private ManagedService(final int nodeId, final String nodeLabel, final String ipAddr, final int serviceId, final String serviceName) {
+            m_nodeId = nodeId;
+            m_nodeLabel = nodeLabel;
+            m_ipAddr = ipAddr;
+            m_serviceId = serviceId;
+            m_serviceName = serviceName;
+        }
+
+        private void addOutage(final long lostTime, final long regainedTime) {
+            if (2 * m_outageCount == m_outages.length) {
+                m_outages = Arrays.copyOf(m_outages, Math.max(4, 2 * m_outages.length));
+            }
+            m_outages[2 * m_outageCount] = lostTime;
+            m_outages[2 * m_outageCount + 1] = regainedTime;
+            m_outageCount++;
+        }
+    }
 }
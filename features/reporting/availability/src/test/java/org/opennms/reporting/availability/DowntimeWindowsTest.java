@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.reporting.availability;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.opennms.reporting.datablock.Node;
+
+public class DowntimeWindowsTest {
+
+    private static final long DAY = 86400000L;
+
+    private static final long END = 1400000000000L;
+
+    @Test
+    public void testOutageSpanningWindows() {
+        final DowntimeWindows windows = DowntimeWindows.consecutive(END, DAY, 3);
+        windows.add(END - DAY - 1000, END - DAY + 500);
+
+        assertEquals(500, windows.getDownTime(0));
+        assertEquals(1000, windows.getDownTime(1));
+        assertEquals(0, windows.getDownTime(2));
+    }
+
+    @Test
+    public void testOpenOutage() {
+        final DowntimeWindows windows = DowntimeWindows.consecutive(END, DAY, 3);
+        windows.add(END - 2 * DAY + 1000, -1);
+
+        assertEquals(DAY, windows.getDownTime(0));
+        assertEquals(DAY - 1000, windows.getDownTime(1));
+        assertEquals(0, windows.getDownTime(2));
+    }
+
+    @Test
+    public void testOutageAfterEndTime() {
+        final DowntimeWindows windows = DowntimeWindows.consecutive(END, DAY, 1);
+        windows.add(END + 1, -1);
+        windows.add(END, END + 1000);
+
+        assertEquals(0, windows.getDownTime(0));
+    }
+
+    /**
+     * The windows have to add up to exactly what the nodes report for each
+     * window on their own, or the report would change.
+     */
+    @Test
+    public void testMatchesNodeDownTime() {
+        final Random random = new Random(42);
+        final Node node = new Node("node1", 1);
+        for (int i = 0; i < 500; i++) {
+            final String ip = "192.168.1." + random.nextInt(4);
+            final String service = random.nextBoolean() ? "ICMP" : "HTTP";
+            final long lost = END - (long)(random.nextDouble() * 40 * DAY);
+            if (random.nextInt(10) == 0) {
+                node.addInterface(ip, service, lost);
+            } else {
+                node.addInterface(ip, service, lost, lost + (long)(random.nextDouble() * 3 * DAY));
+            }
+        }
+
+        final long[] ends = new long[] { END, END - 30 * DAY, END - 31 * DAY };
+        final long[] lengths = new long[] { 30 * DAY, DAY, 28 * DAY };
+        final DowntimeWindows monthly = new DowntimeWindows(ends, lengths);
+        final DowntimeWindows daily = DowntimeWindows.consecutive(END, DAY, 31);
+        for (final org.opennms.reporting.datablock.Interface intf : node.getInterfaces()) {
+            for (final org.opennms.reporting.datablock.Service service : intf.getServices()) {
+                monthly.add(service.getOutages());
+                daily.add(service.getOutages());
+            }
+        }
+
+        for (int i = 0; i < monthly.size(); i++) {
+            assertEquals(node.getOutage(ends[i], lengths[i]), monthly.getDownTime(i));
+        }
+        for (int i = 0; i < daily.size(); i++) {
+            assertEquals(node.getOutage(END - i * DAY, DAY), daily.getDownTime(i));
+        }
+    }
+}
@@ -291,6 +291,14 @@ public class MockNodeDao implements NodeDao {
         return null;
     }
 
+    @Override
+    public SurveillanceStatus[][] findSurveillanceStatusByCategoryMatrix(
+            List<? extends Collection<OnmsCategory>> rowCategories,
+            List<? extends Collection<OnmsCategory>> columnCategories) {
+        // TODO Auto-generated method stub
+        return null;
+    }
+
     @Override
     public Integer getNextNodeId(Integer nodeId) {
         // TODO Auto-generated method stub
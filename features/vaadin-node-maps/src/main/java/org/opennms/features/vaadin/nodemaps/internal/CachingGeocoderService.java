@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.vaadin.nodemaps.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.opennms.features.geocoder.Coordinates;
+import org.opennms.features.geocoder.GeocoderException;
+import org.opennms.features.geocoder.GeocoderService;
+import org.opennms.features.geocoder.TemporaryGeocoderException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link GeocoderService} decorator that remembers every answer from the
+ * wrapped service in a properties file, keyed by address. Addresses the
+ * geocoder could not resolve are stored as {@link Coordinates#BAD_COORDINATES}
+ * so they are not looked up again; temporary failures are not cached.
+ * New results are kept in memory until {@link #flush()} writes the file,
+ * which {@link NodeMapModel} does once per node refresh.
+ */
+public class CachingGeocoderService implements GeocoderService {
+    private static final Logger LOG = LoggerFactory.getLogger(CachingGeocoderService.class);
+
+    private final Properties m_cache = new Properties();
+    private GeocoderService m_delegate;
+    private File m_cacheFile;
+    private boolean m_dirty = false;
+
+    public void setGeocoderService(final GeocoderService geocoderService) {
+        m_delegate = geocoderService;
+    }
+
+    public void setCacheFile(final String cacheFile) {
+        m_cacheFile = cacheFile == null || "".equals(cacheFile.trim()) ? null : new File(cacheFile);
+    }
+
+    public void init() {
+        if (m_cacheFile == null) {
+            m_cacheFile = new File(System.getProperty("opennms.home", ""), "share" + File.separator + "geocoder" + File.separator + "cache.properties");
+        }
+        if (!m_cacheFile.exists()) {
+            LOG.debug("Geocoder cache {} does not exist yet.", m_cacheFile);
+            return;
+        }
+        try (final InputStream in = new FileInputStream(m_cacheFile)) {
+            synchronized (m_cache) {
+                m_cache.load(in);
+            }
+            LOG.debug("Loaded {} cached geocoder results from {}.", m_cache.size(), m_cacheFile);
+        } catch (final IOException e) {
+            LOG.warn("Unable to read geocoder cache {}.", m_cacheFile, e);
+        }
+    }
+
+    public void destroy() {
+        flush();
+    }
+
+    @Override
+    public Coordinates getCoordinates(final String address) throws GeocoderException {
+        final String cached = m_cache.getProperty(address);
+        if (cached != null) {
+            if (Coordinates.BAD_COORDINATES.equals(cached)) {
+                throw new GeocoderException("Address '" + address + "' could not be resolved previously.");
+            }
+            return new Coordinates(cached);
+        }
+
+        final Coordinates coordinates;
+        try {
+            coordinates = m_delegate.getCoordinates(address);
+        } catch (final TemporaryGeocoderException e) {
+            throw e;
+        } catch (final GeocoderException e) {
+            store(address, Coordinates.BAD_COORDINATES);
+            throw e;
+        }
+        store(address, coordinates == null ? Coordinates.BAD_COORDINATES : coordinates.getLongitudeAsDouble() + "," + coordinates.getLatitudeAsDouble());
+        return coordinates;
+    }
+
+    private void store(final String address, final String value) {
+        synchronized (m_cache) {
+            m_cache.setProperty(address, value);
+            m_dirty = true;
+        }
+    }
+
+    /**
+     * Writes the cache file if any results were added since it was last
+     * written.
+     */
+    public void flush() {
+        synchronized (m_cache) {
+            if (!m_dirty || m_cacheFile == null) {
+                return;
+            }
+
+            // write to a temporary file first so a failed write never truncates the cache
+            final File parent = m_cacheFile.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                LOG.warn("Unable to create directory {} for the geocoder cache.", parent);
+                return;
+            }
+            final File tmp = new File(m_cacheFile.getPath() + ".tmp");
+            try {
+                try (final OutputStream out = new FileOutputStream(tmp)) {
+                    m_cache.store(out, "Geocoder results by address");
+                }
+                if (tmp.renameTo(m_cacheFile) || (m_cacheFile.delete() && tmp.renameTo(m_cacheFile))) {
+                    m_dirty = false;
+                } else {
+                    LOG.warn("Unable to replace geocoder cache {}.", m_cacheFile);
+                }
+            } catch (final IOException e) {
+                LOG.warn("Unable to write geocoder cache {}.", m_cacheFile, e);
+            }
+        }
+    }
+}
@@ -33,34 +33,16 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.TimeUnit;
 
 import com.github.wolfie.refresher.Refresher;
-import org.opennms.core.criteria.CriteriaBuilder;
-import org.opennms.core.criteria.restrictions.Restrictions;
-import org.opennms.features.geocoder.Coordinates;
-import org.opennms.features.geocoder.GeocoderException;
-import org.opennms.features.geocoder.GeocoderService;
-import org.opennms.features.geocoder.TemporaryGeocoderException;
 import org.opennms.features.topology.api.geo.GeoAssetProvider;
 import org.opennms.features.topology.api.topo.AbstractVertex;
 import org.opennms.features.topology.api.topo.VertexRef;
-import org.opennms.netmgt.dao.api.AlarmDao;
-import org.opennms.netmgt.dao.api.AssetRecordDao;
+import org.opennms.features.vaadin.nodemaps.internal.NodeMapModel.Delta;
+import org.opennms.features.vaadin.nodemaps.internal.NodeMapModel.Snapshot;
+import org.opennms.features.vaadin.nodemaps.internal.NodeQuadTree.Cluster;
+import org.opennms.features.vaadin.nodemaps.internal.gwt.client.MapCluster;
 import org.opennms.netmgt.dao.api.NodeDao;
-import org.opennms.netmgt.model.OnmsAlarm;
-import org.opennms.netmgt.model.OnmsAssetRecord;
-import org.opennms.netmgt.model.OnmsGeolocation;
-import org.opennms.netmgt.model.OnmsNode;
-import org.opennms.netmgt.model.OnmsSeverity;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.transaction.TransactionStatus;
-import org.springframework.transaction.support.TransactionCallbackWithoutResult;
-import org.springframework.transaction.support.TransactionOperations;
 
 /**
  * @author Marcus Hellberg (marcus@vaadin.com)
@@ -77,22 +59,25 @@ public class MapWidgetComponent extends NodeMapComponent implements GeoAssetProv
     }
 
     private static final long serialVersionUID = -6364929103619363239L;
-    private static final Logger LOG = LoggerFactory.getLogger(MapWidgetComponent.class);
 
-    private final ScheduledExecutorService m_executor = Executors.newScheduledThreadPool(1, new ThreadFactory() {
-        @Override public Thread newThread(final Runnable runnable) {
-            return new Thread(runnable, "NodeMapUpdater-Thread");
-        }
-    });
+    /**
+     * Above this many nodes in the viewport the server sends clusters rather
+     * than leaving the client to cluster every marker itself.
+     */
+    private static final int MAX_VIEWPORT_NODES = 1000;
+
+    /** Approximate width of a server-side cluster cell on screen, in pixels. */
+    private static final int CLUSTER_CELL_PIXELS = 80;
 
     private NodeDao m_nodeDao;
-    private AssetRecordDao m_assetDao;
-    private AlarmDao m_alarmDao;
-    private GeocoderService m_geocoderService;
-    private TransactionOperations m_transaction;
+    private NodeMapModel m_nodeMapModel;
     private Boolean m_aclsEnabled = false;
 
     private Map<Integer,NodeEntry> m_activeNodes = new HashMap<Integer,NodeEntry>();
+    private long m_version = -1;
+    private Map<Integer,NodeEntry> m_shownNodes = null;
+    private double[] m_viewport = null;
+    private int m_zoom;
 
     public NodeDao getNodeDao() {
         return m_nodeDao;
@@ -102,40 +87,15 @@ public class MapWidgetComponent extends NodeMapComponent implements GeoAssetProv
         m_nodeDao = nodeDao;
     }
 
-    public AssetRecordDao getAssetRecordDao() {
-        return m_assetDao;
-    }
-
-    public void setAssetRecordDao(final AssetRecordDao assetDao) {
-        m_assetDao = assetDao;
-    }
-
-    public AlarmDao getAlarmDao() {
-        return m_alarmDao;
+    public NodeMapModel getNodeMapModel() {
+        return m_nodeMapModel;
     }
 
-    public void setAlarmDao(final AlarmDao alarmDao) {
-        m_alarmDao = alarmDao;
-    }
-
-    public GeocoderService getGeocoderService() {
-        return m_geocoderService;
-    }
-
-    public void setGeocoderService(final GeocoderService geocoderService) {
-        m_geocoderService = geocoderService;
-    }
-
-    public void setTransactionOperations(final TransactionOperations tx) {
-        m_transaction = tx;
+    public void setNodeMapModel(final NodeMapModel nodeMapModel) {
+        m_nodeMapModel = nodeMapModel;
     }
 
     public void init() {
-        m_executor.scheduleWithFixedDelay(new Runnable() {
-            @Override public void run() {
-                refreshNodeData();
-            }
-        }, 0, 5, TimeUnit.MINUTES);
         checkAclsEnabled();
         setupAutoRefresher();
     }
@@ -153,19 +113,26 @@ public class MapWidgetComponent extends NodeMapComponent implements GeoAssetProv
     }
 
     public void refresh() {
+        m_shownNodes = null;
         refreshView();
     }
 
     @Override
     public Collection<VertexRef> getNodesWithCoordinates() {
         final List<VertexRef> nodes = new ArrayList<VertexRef>();
-        for (final Map.Entry<Integer,NodeEntry> entry : m_activeNodes.entrySet()) {
+        if (m_nodeMapModel == null) {
+            return nodes;
+        }
+        for (final Map.Entry<Integer,NodeEntry> entry : m_nodeMapModel.getSnapshot().getNodes().entrySet()) {
             nodes.add(new AbstractVertex("nodes", entry.getKey().toString(), entry.getValue().getNodeLabel()));
         }
         return nodes;
     }
 
     private void refreshView() {
+        final boolean changed = updateActiveNodes();
+
+        final Map<Integer,NodeEntry> visibleNodes;
         if(m_aclsEnabled) {
             Map<Integer, String> nodes = getNodeDao().getAllLabelsById();
 
@@ -173,168 +140,98 @@ public class MapWidgetComponent extends NodeMapComponent implements GeoAssetProv
             for (Integer nodeId : nodes.keySet()) {
                 if (m_activeNodes.containsKey(nodeId)) aclOnlyNodes.put(nodeId, m_activeNodes.get(nodeId));
             }
-            showNodes(aclOnlyNodes);
+            if (!changed && aclOnlyNodes.equals(m_shownNodes)) {
+                return;
+            }
+            visibleNodes = aclOnlyNodes;
+        } else if (changed || m_shownNodes == null) {
+            visibleNodes = m_activeNodes;
         } else {
-            showNodes(m_activeNodes);
-        }
-    }
-
-    private void refreshNodeData() {
-        if (getNodeDao() == null) {
-            LOG.warn("No node DAO!  Can't refresh node data.");
             return;
         }
 
-        LOG.debug("Refreshing node data.");
-
-        // Retrieves nodes with addresses or lat/lon fields
-        final CriteriaBuilder cb = new CriteriaBuilder(OnmsNode.class)
-            .alias("assetRecord", "asset")
-            .or(
-                   Restrictions.any(
-                           Restrictions.isNotNull("asset.geolocation.address1"),
-                           Restrictions.isNotNull("asset.geolocation.address2"),
-                           Restrictions.isNotNull("asset.geolocation.city"),
-                           Restrictions.isNotNull("asset.geolocation.state"),
-                           Restrictions.isNotNull("asset.geolocation.zip"),
-                           Restrictions.isNotNull("asset.geolocation.country")
-                   ),
-                   Restrictions.and(
-                           Restrictions.isNotNull("asset.geolocation.latitude"),
-                           Restrictions.isNotNull("asset.geolocation.longitude")
-                  )
-             )
-            .orderBy("id").asc();
-
-        final List<OnmsAssetRecord> updatedAssets = new ArrayList<OnmsAssetRecord>();
-        final Map<Integer, NodeEntry> nodes = new HashMap<Integer, NodeEntry>();
-
-        m_transaction.execute(new TransactionCallbackWithoutResult() {
-            @Override
-            protected void doInTransactionWithoutResult(final TransactionStatus status) {
-                for (final OnmsNode node : getNodeDao().findMatching(cb.toCriteria())) {
-                    LOG.trace("processing node {}", node.getId());
-
-                    // pass 1: get the nodes with asset data
-                    final OnmsAssetRecord assets = node.getAssetRecord();
-                    if (assets != null && assets.getGeolocation() != null) {
-                        final OnmsGeolocation geolocation = assets.getGeolocation();
-                        final String addressString = geolocation.asAddressString();
-
-                        final Float longitude = geolocation.getLongitude();
-                        final Float latitude = geolocation.getLatitude();
-
-                        if (longitude != null && latitude != null) {
-                            if (longitude == Float.NEGATIVE_INFINITY || latitude == Float.NEGATIVE_INFINITY) {
-                                // we've already cached it as bad, skip it
-                                continue;
-                            } else {
-                                // we've already got good coordinates, return the node
-                                nodes.put(node.getId(), new NodeEntry(node));
-                                continue;
-                            }
-                        } else if (addressString != null && ! "".equals(addressString)) {
-                            LOG.debug("Node {} has an asset record with address \"{}\", but no coordinates.", node.getId(), addressString);
-                            final Coordinates coordinates = getCoordinates(addressString);
-
-                            if (coordinates == null) {
-                                LOG.debug("Node {} has an asset record with address, but we were unable to find valid coordinates.", node.getId());
-                                continue;
-                            }
-
-                            geolocation.setLongitude(coordinates.getLongitude());
-                            geolocation.setLatitude(coordinates.getLatitude());
-                            updatedAssets.add(assets);
-
-                            if (coordinates.getLongitude() == Float.NEGATIVE_INFINITY || coordinates.getLatitude() == Float.NEGATIVE_INFINITY) {
-                                // we got bad coordinates
-                                LOG.debug("Node {} has an asset record with address, but we were unable to find valid coordinates.", node.getId());
-                                continue;
-                            } else {
-                                // valid coordinates, add to the list
-                                nodes.put(node.getId(), new NodeEntry(node));
-                            }
-                        } else {
-                            // We shouldn't hit this block with our criteria, so we warn
-                            LOG.warn("Node {} has no address or latitude/longitude information.", node.getId());
-                        }
-                    } else {
-                        // We shouldn't hit this block with our criteria, so we warn
-                        LOG.warn("Node {} has no asset information.", node.getId());
-                    }
-                }
-
-                int lastId = -1;
-                int unackedCount = 0;
-
-                // pass 2: get alarm data for anything that's been grabbed from the DB
-                if (!nodes.isEmpty()) {
-                    LOG.debug("getting alarms for nodes");
-                    final CriteriaBuilder ab = new CriteriaBuilder(OnmsAlarm.class);
-                    ab.alias("node", "node");
-                    ab.ge("severity", OnmsSeverity.WARNING);
-                    ab.in("node.id", nodes.keySet());
-                    ab.orderBy("node.id").asc();
-                    ab.orderBy("severity").desc();
-
-                    for (final OnmsAlarm alarm : getAlarmDao().findMatching(ab.toCriteria())) {
-                        final int nodeId = alarm.getNodeId();
-                        LOG.debug("nodeId = {}, lastId = {}, unackedCount = {}", new Object[]{nodeId, lastId, unackedCount});
-                        if (nodeId != lastId) {
-                            LOG.debug("  setting severity for node {} to {}", new Object[]{nodeId, alarm.getSeverity().getLabel()});
-                            final NodeEntry nodeEntry = nodes.get(nodeId);
-                            nodeEntry.setSeverity(alarm.getSeverity());
-                            if (lastId != -1) {
-                                nodeEntry.setUnackedCount(unackedCount);
-                                unackedCount = 0;
-                            }
-                        }
-                        if (alarm.getAckUser() == null) {
-                            unackedCount++;
-                        }
-
-                        lastId = nodeId;
-                    }
-                }
+        // the full list is only sent once; after that the client gets what changed
+        if (m_shownNodes == null) {
+            showNodes(visibleNodes);
+        } else {
+            updateNodes(visibleNodes);
+        }
+        m_shownNodes = visibleNodes;
+        updateClusters();
+    }
 
-                if (lastId != -1) {
-                    nodes.get(lastId).setUnackedCount(unackedCount);
-                }
+    @Override
+    protected void setViewport(final double west, final double south, final double east, final double north, final int zoom) {
+        m_viewport = new double[] { Math.max(-180d, west), Math.max(-90d, south), Math.min(180d, east), Math.min(90d, north) };
+        m_zoom = zoom;
+        updateClusters();
+    }
 
-                // pass 3: save any asset updates to the database
-                LOG.debug("saving {} updated asset records to the database", updatedAssets.size());
-                for (final OnmsAssetRecord asset : updatedAssets) {
-                    getAssetRecordDao().saveOrUpdate(asset);
+    /**
+     * Clusters the current viewport from the shared model's quadtree. The
+     * tree holds every node, so nothing is clustered on the server when ACLs
+     * restrict which nodes this user may see.
+     */
+    private void updateClusters() {
+        final List<MapCluster> clusters = new ArrayList<MapCluster>();
+        if (m_nodeMapModel != null && m_viewport != null && !m_aclsEnabled) {
+            final double cellSize = CLUSTER_CELL_PIXELS * 360d / (256d * Math.pow(2, m_zoom));
+            final List<Cluster> found = m_nodeMapModel.getClusters(m_viewport[0], m_viewport[1], m_viewport[2], m_viewport[3], cellSize);
+            int count = 0;
+            for (final Cluster cluster : found) {
+                count += cluster.getCount();
+            }
+            if (count > MAX_VIEWPORT_NODES) {
+                for (final Cluster cluster : found) {
+                    clusters.add(createCluster(cluster));
                 }
             }
-        });
-
+        }
+        if (!clusters.isEmpty() || !getState().clusters.isEmpty()) {
+            getState().clusters = clusters;
+        }
+    }
 
-        m_activeNodes = nodes;
+    private static MapCluster createCluster(final Cluster cluster) {
+        final MapCluster mapCluster = new MapCluster();
+        mapCluster.setLatitude(cluster.getLatitude());
+        mapCluster.setLongitude(cluster.getLongitude());
+        mapCluster.setCount(cluster.getCount());
+        mapCluster.setSeverity(String.valueOf(cluster.getSeverity().getId()));
+        mapCluster.setSeverityLabel(cluster.getSeverity().getLabel());
+        mapCluster.setUnackedCount(cluster.getUnackedCount());
+        return mapCluster;
     }
 
     /**
-     * Given an address, return the coordinates for that address.
+     * Brings the local copy of the model up to date, applying the deltas
+     * published since the last refresh when they are still available.
      *
-     * @param address the complete address, in a format a geolocator can understand
-     * @return the coordinates for the given address
+     * @return true if anything changed
      */
-    private Coordinates getCoordinates(final String address) {
-        Coordinates coordinates = null;
-        try {
-            coordinates = getGeocoderService().getCoordinates(address);
-            if (coordinates == null) {
-                coordinates = new Coordinates(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
-            }
-        } catch (final TemporaryGeocoderException e) {
-            LOG.debug("Failed to find coordinates for address '{}' due to a temporary failure.", address);
-        } catch (final GeocoderException e) {
-            LOG.debug("Failed to find coordinates for address '{}'.", address);
-            coordinates = new Coordinates(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+    private boolean updateActiveNodes() {
+        if (m_nodeMapModel == null) {
+            return false;
         }
-        return coordinates;
-    }
 
+        final List<Delta> changes = m_nodeMapModel.getChangesSince(m_version);
+        if (changes == null) {
+            final Snapshot snapshot = m_nodeMapModel.getSnapshot();
+            m_activeNodes = new HashMap<Integer,NodeEntry>(snapshot.getNodes());
+            m_version = snapshot.getVersion();
+            return true;
+        }
+        if (changes.isEmpty()) {
+            return false;
+        }
+        final Map<Integer,NodeEntry> nodes = new HashMap<Integer,NodeEntry>(m_activeNodes);
+        for (final Delta delta : changes) {
+            delta.applyTo(nodes);
+            m_version = delta.getVersion();
+        }
+        m_activeNodes = nodes;
+        return true;
+    }
 
     public void setSearchString(final String searchString) {
         getState().searchString = searchString;
@@ -29,9 +29,14 @@
 package org.opennms.features.vaadin.nodemaps.internal;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.features.vaadin.nodemaps.internal.gwt.client.MapNode;
@@ -62,8 +67,18 @@ public class NodeMapComponent extends AbstractComponent {
         public void refresh() {
             ((NodeMapsApplication)UI.getCurrent()).refresh();
         }
+        @Override
+        public void setViewport(final double west, final double south, final double east, final double north, final int zoom) {
+            NodeMapComponent.this.setViewport(west, south, east, north, zoom);
+        }
     };
 
+    /** The nodes the client has, or will have once the pending changes are sent. */
+    private Map<Integer, NodeEntry> m_sentNodes = new HashMap<Integer, NodeEntry>();
+    private final Map<Integer, MapNode> m_pendingUpdates = new LinkedHashMap<Integer, MapNode>();
+    private final Set<Integer> m_pendingRemovals = new LinkedHashSet<Integer>();
+    private boolean m_nodesStale = false;
+
     public NodeMapComponent() {
         registerRpc(m_rpc);
     }
@@ -79,13 +94,85 @@ public class NodeMapComponent extends AbstractComponent {
     public void showNodes(final Map<Integer, NodeEntry> nodeEntries) {
         LOG.info("Updating map node list: {} entries.", nodeEntries.size());
 
+        m_sentNodes = new HashMap<Integer, NodeEntry>(nodeEntries);
+        m_pendingUpdates.clear();
+        m_pendingRemovals.clear();
+        m_nodesStale = false;
+
+        final NodeMapState state = getState();
+        state.nodes = createNodes(m_sentNodes);
+        state.updatedNodes = new ArrayList<MapNode>();
+        state.removedNodeIds = new ArrayList<Integer>();
+
+        LOG.info("Finished updating map node list.");
+    }
+
+    /**
+     * Sends only the nodes that differ from what the client already has.
+     * Changes are collected until the next response, so a client that misses
+     * a refresh still receives every change once.
+     */
+    public void updateNodes(final Map<Integer, NodeEntry> nodeEntries) {
+        int changes = 0;
+        for (final Map.Entry<Integer, NodeEntry> entry : nodeEntries.entrySet()) {
+            if (!entry.getValue().equals(m_sentNodes.get(entry.getKey()))) {
+                m_pendingUpdates.put(entry.getKey(), entry.getValue().createNode());
+                m_pendingRemovals.remove(entry.getKey());
+                changes++;
+            }
+        }
+        for (final Integer nodeId : m_sentNodes.keySet()) {
+            if (!nodeEntries.containsKey(nodeId)) {
+                m_pendingUpdates.remove(nodeId);
+                m_pendingRemovals.add(nodeId);
+                changes++;
+            }
+        }
+        m_sentNodes = new HashMap<Integer, NodeEntry>(nodeEntries);
+
+        if (changes > 0) {
+            LOG.debug("Queued {} map node changes.", changes);
+            markAsDirty();
+        }
+    }
+
+    @Override
+    public void beforeClientResponse(final boolean initial) {
+        super.beforeClientResponse(initial);
+
+        final NodeMapState state = getState();
+        if (initial) {
+            // a new or reloaded client starts from the full list
+            if (m_nodesStale || !m_pendingUpdates.isEmpty() || !m_pendingRemovals.isEmpty()) {
+                state.nodes = createNodes(m_sentNodes);
+                m_nodesStale = false;
+            }
+            state.updatedNodes = new ArrayList<MapNode>();
+            state.removedNodeIds = new ArrayList<Integer>();
+        } else if (!m_pendingUpdates.isEmpty() || !m_pendingRemovals.isEmpty()) {
+            state.updatedNodes = new ArrayList<MapNode>(m_pendingUpdates.values());
+            state.removedNodeIds = new ArrayList<Integer>(m_pendingRemovals);
+            state.nodeChangeCount++;
+            m_nodesStale = true;
+        } else {
+            return;
+        }
+        m_pendingUpdates.clear();
+        m_pendingRemovals.clear();
+    }
+
+    private static List<MapNode> createNodes(final Map<Integer, NodeEntry> nodeEntries) {
         final List<MapNode> nodes = new LinkedList<MapNode>();
         for (final NodeEntry node : nodeEntries.values()) {
             nodes.add(node.createNode());
         }
-        getState().nodes = nodes;
+        return nodes;
+    }
 
-        LOG.info("Finished updating map node list.");
+    /**
+     * Called when the client reports that its map was panned or zoomed.
+     */
+    protected void setViewport(final double west, final double south, final double east, final double north, final int zoom) {
     }
 
     @Override
@@ -155,6 +242,21 @@ public class NodeMapComponent extends AbstractComponent {
             }
         }
 
+        NodeEntry(final NodeEntry entry) {
+            m_longitude     = entry.m_longitude;
+            m_latitude      = entry.m_latitude;
+            m_nodeId        = entry.m_nodeId;
+            m_nodeLabel     = entry.m_nodeLabel;
+            m_foreignSource = entry.m_foreignSource;
+            m_foreignId     = entry.m_foreignId;
+            m_description   = entry.m_description;
+            m_maintcontract = entry.m_maintcontract;
+            m_ipAddress     = entry.m_ipAddress;
+            m_severity      = entry.m_severity;
+            m_categories    = new ArrayList<String>(entry.m_categories);
+            m_unackedCount  = entry.m_unackedCount;
+        }
+
         public Integer getNodeId() {
             return m_nodeId;
         }
@@ -163,10 +265,26 @@ public class NodeMapComponent extends AbstractComponent {
             return m_nodeLabel;
         }
 
+        public Float getLongitude() {
+            return m_longitude;
+        }
+
+        public Float getLatitude() {
+            return m_latitude;
+        }
+
+        public OnmsSeverity getSeverity() {
+            return m_severity;
+        }
+
         public void setSeverity(final OnmsSeverity severity) {
             m_severity = severity;
         }
 
+        public int getUnackedCount() {
+            return m_unackedCount;
+        }
+
         public MapNode createNode() {
             final MapNode node = new MapNode();
 
@@ -191,5 +309,29 @@ public class NodeMapComponent extends AbstractComponent {
         public void setUnackedCount(final int unackedCount) {
             m_unackedCount = unackedCount;
         }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(m_nodeId, m_nodeLabel, m_longitude, m_latitude, m_severity, m_unackedCount);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof NodeEntry)) return false;
+            final NodeEntry other = (NodeEntry) obj;
+            return Objects.equals(m_nodeId, other.m_nodeId)
+                    && Objects.equals(m_nodeLabel, other.m_nodeLabel)
+                    && Objects.equals(m_longitude, other.m_longitude)
+                    && Objects.equals(m_latitude, other.m_latitude)
+                    && Objects.equals(m_foreignSource, other.m_foreignSource)
+                    && Objects.equals(m_foreignId, other.m_foreignId)
+                    && Objects.equals(m_description, other.m_description)
+                    && Objects.equals(m_maintcontract, other.m_maintcontract)
+                    && Objects.equals(m_ipAddress, other.m_ipAddress)
+                    && Objects.equals(m_severity, other.m_severity)
+                    && Objects.equals(m_categories, other.m_categories)
+                    && m_unackedCount == other.m_unackedCount;
+        }
     }
 }
@@ -0,0 +1,503 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.vaadin.nodemaps.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.criteria.CriteriaBuilder;
+import org.opennms.core.criteria.restrictions.Restrictions;
+import org.opennms.features.geocoder.Coordinates;
+import org.opennms.features.geocoder.GeocoderException;
+import org.opennms.features.geocoder.GeocoderService;
+import org.opennms.features.geocoder.TemporaryGeocoderException;
+import org.opennms.features.vaadin.nodemaps.internal.NodeMapComponent.NodeEntry;
+import org.opennms.features.vaadin.nodemaps.internal.NodeQuadTree.Cluster;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.AssetRecordDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsAssetRecord;
+import org.opennms.netmgt.model.OnmsGeolocation;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionOperations;
+
+/**
+ * Node map data shared by every {@link MapWidgetComponent}. A single updater
+ * thread reloads nodes and assets periodically and refreshes alarm severities
+ * more often; each reload is diffed against the previous one and published as
+ * a versioned {@link Delta}, so map instances only patch what changed. The
+ * nodes are also indexed in a {@link NodeQuadTree} for viewport clustering.
+ */
+public class NodeMapModel {
+    private static final Logger LOG = LoggerFactory.getLogger(NodeMapModel.class);
+
+    /**
+     * An immutable view of the model at a given version.
+     */
+    public static final class Snapshot {
+        private final long m_version;
+        private final Map<Integer,NodeEntry> m_nodes;
+
+        private Snapshot(final long version, final Map<Integer,NodeEntry> nodes) {
+            m_version = version;
+            m_nodes = nodes;
+        }
+
+        public long getVersion() {
+            return m_version;
+        }
+
+        public Map<Integer,NodeEntry> getNodes() {
+            return m_nodes;
+        }
+    }
+
+    /**
+     * The nodes that were added, changed or removed to reach a version.
+     */
+    public static final class Delta {
+        private final long m_version;
+        private final Map<Integer,NodeEntry> m_updated;
+        private final Set<Integer> m_removed;
+
+        private Delta(final long version, final Map<Integer,NodeEntry> updated, final Set<Integer> removed) {
+            m_version = version;
+            m_updated = Collections.unmodifiableMap(updated);
+            m_removed = Collections.unmodifiableSet(removed);
+        }
+
+        public long getVersion() {
+            return m_version;
+        }
+
+        public Map<Integer,NodeEntry> getUpdated() {
+            return m_updated;
+        }
+
+        public Set<Integer> getRemoved() {
+            return m_removed;
+        }
+
+        public void applyTo(final Map<Integer,NodeEntry> nodes) {
+            for (final Integer nodeId : m_removed) {
+                nodes.remove(nodeId);
+            }
+            nodes.putAll(m_updated);
+        }
+    }
+
+    private static final class AlarmSummary {
+        private OnmsSeverity m_severity;
+        private int m_unackedCount = 0;
+    }
+
+    private NodeDao m_nodeDao;
+    private AssetRecordDao m_assetDao;
+    private AlarmDao m_alarmDao;
+    private GeocoderService m_geocoderService;
+    private TransactionOperations m_transaction;
+    private long m_nodeRefreshInterval = 300;
+    private long m_alarmRefreshInterval = 30;
+    private int m_maxDeltas = 100;
+
+    private ScheduledExecutorService m_executor;
+
+    private final Object m_lock = new Object();
+    private final NodeQuadTree m_tree = new NodeQuadTree();
+    private final LinkedList<Delta> m_deltas = new LinkedList<Delta>();
+    private Snapshot m_snapshot = new Snapshot(0, Collections.<Integer,NodeEntry>emptyMap());
+
+    public void setNodeDao(final NodeDao nodeDao) {
+        m_nodeDao = nodeDao;
+    }
+
+    public void setAssetRecordDao(final AssetRecordDao assetDao) {
+        m_assetDao = assetDao;
+    }
+
+    public void setAlarmDao(final AlarmDao alarmDao) {
+        m_alarmDao = alarmDao;
+    }
+
+    public void setGeocoderService(final GeocoderService geocoderService) {
+        m_geocoderService = geocoderService;
+    }
+
+    public void setTransactionOperations(final TransactionOperations tx) {
+        m_transaction = tx;
+    }
+
+    /**
+     * @param seconds how often nodes and assets are reloaded
+     */
+    public void setNodeRefreshInterval(final long seconds) {
+        m_nodeRefreshInterval = seconds;
+    }
+
+    /**
+     * @param seconds how often alarm severities are refreshed
+     */
+    public void setAlarmRefreshInterval(final long seconds) {
+        m_alarmRefreshInterval = seconds;
+    }
+
+    /**
+     * @param maxDeltas how many deltas are kept for map instances to catch up
+     *        with before they have to take a full snapshot
+     */
+    public void setMaxDeltas(final int maxDeltas) {
+        m_maxDeltas = maxDeltas;
+    }
+
+    public void init() {
+        m_executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "NodeMapUpdater-Thread");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        m_executor.scheduleWithFixedDelay(new Runnable() {
+            @Override public void run() {
+                try {
+                    refreshNodeData();
+                } catch (final RuntimeException e) {
+                    LOG.warn("Failed to refresh node map data.", e);
+                }
+            }
+        }, 0, m_nodeRefreshInterval, TimeUnit.SECONDS);
+        m_executor.scheduleWithFixedDelay(new Runnable() {
+            @Override public void run() {
+                try {
+                    refreshAlarmData();
+                } catch (final RuntimeException e) {
+                    LOG.warn("Failed to refresh node map alarm data.", e);
+                }
+            }
+        }, m_alarmRefreshInterval, m_alarmRefreshInterval, TimeUnit.SECONDS);
+    }
+
+    public void destroy() {
+        if (m_executor != null) {
+            m_executor.shutdownNow();
+        }
+    }
+
+    public Snapshot getSnapshot() {
+        synchronized (m_lock) {
+            return m_snapshot;
+        }
+    }
+
+    /**
+     * Returns the deltas published after the given version, oldest first.
+     *
+     * @return the deltas, or null if they are no longer retained and the
+     *         caller has to start over from {@link #getSnapshot()}
+     */
+    public List<Delta> getChangesSince(final long version) {
+        synchronized (m_lock) {
+            final long current = m_snapshot.getVersion();
+            if (version == current) {
+                return Collections.emptyList();
+            }
+            if (version > current || m_deltas.isEmpty() || m_deltas.getFirst().getVersion() > version + 1) {
+                return null;
+            }
+            final List<Delta> changes = new ArrayList<Delta>();
+            for (final Delta delta : m_deltas) {
+                if (delta.getVersion() > version) {
+                    changes.add(delta);
+                }
+            }
+            return changes;
+        }
+    }
+
+    /**
+     * Clusters the nodes inside the given bounds.
+     *
+     * @see NodeQuadTree#getClusters(double, double, double, double, double)
+     */
+    public List<Cluster> getClusters(final double west, final double south, final double east, final double north, final double cellSize) {
+        synchronized (m_lock) {
+            return m_tree.getClusters(west, south, east, north, cellSize);
+        }
+    }
+
+    /**
+     * Replaces the model contents, publishing the difference to the previous
+     * contents as a new version. Nothing is published if nothing changed.
+     */
+    void publish(final Map<Integer,NodeEntry> nodes) {
+        synchronized (m_lock) {
+            final Map<Integer,NodeEntry> previous = m_snapshot.getNodes();
+            final Map<Integer,NodeEntry> updated = new HashMap<Integer,NodeEntry>();
+            final Set<Integer> removed = new HashSet<Integer>();
+
+            for (final Map.Entry<Integer,NodeEntry> entry : nodes.entrySet()) {
+                final NodeEntry old = previous.get(entry.getKey());
+                if (!entry.getValue().equals(old)) {
+                    if (old != null) {
+                        m_tree.remove(old);
+                    }
+                    m_tree.insert(entry.getValue());
+                    updated.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (final Map.Entry<Integer,NodeEntry> entry : previous.entrySet()) {
+                if (!nodes.containsKey(entry.getKey())) {
+                    m_tree.remove(entry.getValue());
+                    removed.add(entry.getKey());
+                }
+            }
+            if (updated.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+
+            final long version = m_snapshot.getVersion() + 1;
+            m_snapshot = new Snapshot(version, Collections.unmodifiableMap(new HashMap<Integer,NodeEntry>(nodes)));
+            m_deltas.addLast(new Delta(version, updated, removed));
+            while (m_deltas.size() > m_maxDeltas) {
+                m_deltas.removeFirst();
+            }
+            LOG.debug("Published node map version {}: {} updated, {} removed.", version, updated.size(), removed.size());
+        }
+    }
+
+    void refreshNodeData() {
+        if (m_nodeDao == null) {
+            LOG.warn("No node DAO!  Can't refresh node data.");
+            return;
+        }
+
+        LOG.debug("Refreshing node data.");
+
+        // Retrieves nodes with addresses or lat/lon fields
+        final CriteriaBuilder cb = new CriteriaBuilder(OnmsNode.class)
+            .alias("assetRecord", "asset")
+            .or(
+                   Restrictions.any(
+                           Restrictions.isNotNull("asset.geolocation.address1"),
+                           Restrictions.isNotNull("asset.geolocation.address2"),
+                           Restrictions.isNotNull("asset.geolocation.city"),
+                           Restrictions.isNotNull("asset.geolocation.state"),
+                           Restrictions.isNotNull("asset.geolocation.zip"),
+                           Restrictions.isNotNull("asset.geolocation.country")
+                   ),
+                   Restrictions.and(
+                           Restrictions.isNotNull("asset.geolocation.latitude"),
+                           Restrictions.isNotNull("asset.geolocation.longitude")
+                  )
+             )
+            .orderBy("id").asc();
+
+        final List<OnmsAssetRecord> updatedAssets = new ArrayList<OnmsAssetRecord>();
+        final Map<Integer, NodeEntry> nodes = new HashMap<Integer, NodeEntry>();
+
+        m_transaction.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                for (final OnmsNode node : m_nodeDao.findMatching(cb.toCriteria())) {
+                    LOG.trace("processing node {}", node.getId());
+
+                    // pass 1: get the nodes with asset data
+                    final OnmsAssetRecord assets = node.getAssetRecord();
+                    if (assets != null && assets.getGeolocation() != null) {
+                        final OnmsGeolocation geolocation = assets.getGeolocation();
+                        final String addressString = geolocation.asAddressString();
+
+                        final Float longitude = geolocation.getLongitude();
+                        final Float latitude = geolocation.getLatitude();
+
+                        if (longitude != null && latitude != null) {
+                            if (longitude == Float.NEGATIVE_INFINITY || latitude == Float.NEGATIVE_INFINITY) {
+                                // we've already cached it as bad, skip it
+                                continue;
+                            } else {
+                                // we've already got good coordinates, return the node
+                                nodes.put(node.getId(), new NodeEntry(node));
+                                continue;
+                            }
+                        } else if (addressString != null && ! "".equals(addressString)) {
+                            LOG.debug("Node {} has an asset record with address \"{}\", but no coordinates.", node.getId(), addressString);
+                            final Coordinates coordinates = getCoordinates(addressString);
+
+                            if (coordinates == null) {
+                                LOG.debug("Node {} has an asset record with address, but we were unable to find valid coordinates.", node.getId());
+                                continue;
+                            }
+
+                            geolocation.setLongitude(coordinates.getLongitude());
+                            geolocation.setLatitude(coordinates.getLatitude());
+                            updatedAssets.add(assets);
+
+                            if (coordinates.getLongitude() == Float.NEGATIVE_INFINITY || coordinates.getLatitude() == Float.NEGATIVE_INFINITY) {
+                                // we got bad coordinates
+                                LOG.debug("Node {} has an asset record with address, but we were unable to find valid coordinates.", node.getId());
+                                continue;
+                            } else {
+                                // valid coordinates, add to the list
+                                nodes.put(node.getId(), new NodeEntry(node));
+                            }
+                        } else {
+                            // We shouldn't hit this block with our criteria, so we warn
+                            LOG.warn("Node {} has no address or latitude/longitude information.", node.getId());
+                        }
+                    } else {
+                        // We shouldn't hit this block with our criteria, so we warn
+                        LOG.warn("Node {} has no asset information.", node.getId());
+                    }
+                }
+
+                // pass 2: get alarm data for anything that's been grabbed from the DB
+                final Map<Integer,AlarmSummary> alarms = getAlarmSummaries(nodes.keySet());
+                for (final Map.Entry<Integer,AlarmSummary> entry : alarms.entrySet()) {
+                    final NodeEntry nodeEntry = nodes.get(entry.getKey());
+                    nodeEntry.setSeverity(entry.getValue().m_severity);
+                    nodeEntry.setUnackedCount(entry.getValue().m_unackedCount);
+                }
+
+                // pass 3: save any asset updates to the database
+                LOG.debug("saving {} updated asset records to the database", updatedAssets.size());
+                for (final OnmsAssetRecord asset : updatedAssets) {
+                    m_assetDao.saveOrUpdate(asset);
+                }
+            }
+        });
+
+        // new geocoder results are written out once per pass rather than once per address
+        if (m_geocoderService instanceof CachingGeocoderService) {
+            ((CachingGeocoderService) m_geocoderService).flush();
+        }
+
+        publish(nodes);
+    }
+
+    /**
+     * Re-reads alarm severities and unacknowledged counts for the nodes
+     * already in the model, without reloading nodes or assets.
+     */
+    void refreshAlarmData() {
+        final Map<Integer,NodeEntry> current = getSnapshot().getNodes();
+        if (current.isEmpty()) {
+            return;
+        }
+
+        final Map<Integer,AlarmSummary> alarms = new HashMap<Integer,AlarmSummary>();
+        m_transaction.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                alarms.putAll(getAlarmSummaries(current.keySet()));
+            }
+        });
+
+        final Map<Integer,NodeEntry> nodes = new HashMap<Integer,NodeEntry>(current);
+        for (final NodeEntry entry : current.values()) {
+            final AlarmSummary summary = alarms.get(entry.getNodeId());
+            final OnmsSeverity severity = summary == null ? OnmsSeverity.NORMAL : summary.m_severity;
+            final int unackedCount = summary == null ? 0 : summary.m_unackedCount;
+            if (entry.getSeverity() != severity || entry.getUnackedCount() != unackedCount) {
+                final NodeEntry changed = new NodeEntry(entry);
+                changed.setSeverity(severity);
+                changed.setUnackedCount(unackedCount);
+                nodes.put(entry.getNodeId(), changed);
+            }
+        }
+        publish(nodes);
+    }
+
+    private Map<Integer,AlarmSummary> getAlarmSummaries(final Set<Integer> nodeIds) {
+        final Map<Integer,AlarmSummary> summaries = new HashMap<Integer,AlarmSummary>();
+        if (nodeIds.isEmpty()) {
+            return summaries;
+        }
+
+        LOG.debug("getting alarms for nodes");
+        final CriteriaBuilder ab = new CriteriaBuilder(OnmsAlarm.class);
+        ab.alias("node", "node");
+        ab.ge("severity", OnmsSeverity.WARNING);
+        ab.in("node.id", nodeIds);
+        ab.orderBy("node.id").asc();
+        ab.orderBy("severity").desc();
+
+        for (final OnmsAlarm alarm : m_alarmDao.findMatching(ab.toCriteria())) {
+            AlarmSummary summary = summaries.get(alarm.getNodeId());
+            if (summary == null) {
+                // alarms are sorted by severity, so the first one is the highest
+                summary = new AlarmSummary();
+                summary.m_severity = alarm.getSeverity();
+                summaries.put(alarm.getNodeId(), summary);
+            }
+            if (alarm.getAckUser() == null) {
+                summary.m_unackedCount++;
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Given an address, return the coordinates for that address.
+     *
+     * @param address the complete address, in a format a geolocator can understand
+     * @return the coordinates for the given address
+     */
+    private Coordinates getCoordinates(final String address) {
+        Coordinates coordinates = null;
+        try {
+            coordinates = m_geocoderService.getCoordinates(address);
+            if (coordinates == null) {
+                coordinates = new Coordinates(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+            }
+        } catch (final TemporaryGeocoderException e) {
+            LOG.debug("Failed to find coordinates for address '{}' due to a temporary failure.", address);
+        } catch (final GeocoderException e) {
+            LOG.debug("Failed to find coordinates for address '{}'.", address);
+            coordinates = new Coordinates(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+        }
+        return coordinates;
+    }
+}
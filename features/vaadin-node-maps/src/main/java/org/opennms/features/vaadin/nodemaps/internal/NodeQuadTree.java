@@ -0,0 +1,349 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.vaadin.nodemaps.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opennms.features.vaadin.nodemaps.internal.NodeMapComponent.NodeEntry;
+import org.opennms.netmgt.model.OnmsSeverity;
+
+/**
+ * Region quadtree over node coordinates. Every cell keeps a running count,
+ * centroid sums, unacknowledged alarm total and a per-severity histogram of
+ * the nodes below it, so that a viewport can be clustered by walking only the
+ * cells that intersect it instead of visiting every node.
+ *
+ * <p>This class is not thread-safe; {@link NodeMapModel} guards access.</p>
+ */
+final class NodeQuadTree {
+    private static final int LEAF_CAPACITY = 32;
+    private static final int MAX_DEPTH = 16;
+    private static final int SEVERITY_SLOTS = OnmsSeverity.CRITICAL.getId() + 1;
+
+    /**
+     * A group of nodes reported as one marker.
+     */
+    public static final class Cluster {
+        private final int m_count;
+        private final double m_longitude;
+        private final double m_latitude;
+        private final OnmsSeverity m_severity;
+        private final int m_unackedCount;
+        private final List<NodeEntry> m_nodes;
+
+        private Cluster(final Cell cell, final List<NodeEntry> nodes) {
+            m_count = cell.m_count;
+            m_longitude = cell.m_lonSum / cell.m_count;
+            m_latitude = cell.m_latSum / cell.m_count;
+            m_severity = cell.getSeverity();
+            m_unackedCount = cell.m_unackedCount;
+            m_nodes = nodes;
+        }
+
+        public int getCount() {
+            return m_count;
+        }
+
+        public double getLongitude() {
+            return m_longitude;
+        }
+
+        public double getLatitude() {
+            return m_latitude;
+        }
+
+        public OnmsSeverity getSeverity() {
+            return m_severity;
+        }
+
+        public int getUnackedCount() {
+            return m_unackedCount;
+        }
+
+        /**
+         * @return the nodes in this cluster, or an empty list if the cluster
+         *         was summarized from a cell that was not expanded
+         */
+        public List<NodeEntry> getNodes() {
+            return m_nodes;
+        }
+    }
+
+    private static final class Cell {
+        private final double m_west;
+        private final double m_south;
+        private final double m_east;
+        private final double m_north;
+        private final int m_depth;
+
+        private Cell[] m_children;
+        private List<NodeEntry> m_entries = new ArrayList<NodeEntry>();
+
+        private int m_count;
+        private double m_lonSum;
+        private double m_latSum;
+        private int m_unackedCount;
+        private final int[] m_severities = new int[SEVERITY_SLOTS];
+
+        private Cell(final double west, final double south, final double east, final double north, final int depth) {
+            m_west = west;
+            m_south = south;
+            m_east = east;
+            m_north = north;
+            m_depth = depth;
+        }
+
+        private boolean isLeaf() {
+            return m_children == null;
+        }
+
+        private boolean intersects(final double west, final double south, final double east, final double north) {
+            return m_west <= east && m_east >= west && m_south <= north && m_north >= south;
+        }
+
+        private void account(final NodeEntry entry, final int sign) {
+            m_count += sign;
+            m_lonSum += sign * entry.getLongitude();
+            m_latSum += sign * entry.getLatitude();
+            m_unackedCount += sign * entry.getUnackedCount();
+            m_severities[entry.getSeverity().getId()] += sign;
+        }
+
+        private OnmsSeverity getSeverity() {
+            for (int i = m_severities.length - 1; i > 0; i--) {
+                if (m_severities[i] > 0) {
+                    return OnmsSeverity.get(i);
+                }
+            }
+            return OnmsSeverity.NORMAL;
+        }
+
+        private Cell childFor(final double longitude, final double latitude) {
+            final double midLon = (m_west + m_east) / 2d;
+            final double midLat = (m_south + m_north) / 2d;
+            return m_children[(longitude < midLon ? 0 : 1) + (latitude < midLat ? 0 : 2)];
+        }
+
+        private void split() {
+            final double midLon = (m_west + m_east) / 2d;
+            final double midLat = (m_south + m_north) / 2d;
+            m_children = new Cell[] {
+                new Cell(m_west, m_south, midLon, midLat, m_depth + 1),
+                new Cell(midLon, m_south, m_east, midLat, m_depth + 1),
+                new Cell(m_west, midLat, midLon, m_north, m_depth + 1),
+                new Cell(midLon, midLat, m_east, m_north, m_depth + 1)
+            };
+            for (final NodeEntry entry : m_entries) {
+                final Cell child = childFor(entry.getLongitude(), entry.getLatitude());
+                child.m_entries.add(entry);
+                child.account(entry, 1);
+            }
+            m_entries = null;
+        }
+
+        private void collapse() {
+            final List<NodeEntry> entries = new ArrayList<NodeEntry>(m_count);
+            collect(entries);
+            m_children = null;
+            m_entries = entries;
+        }
+
+        private void collect(final List<NodeEntry> target) {
+            if (isLeaf()) {
+                target.addAll(m_entries);
+            } else {
+                for (final Cell child : m_children) {
+                    child.collect(target);
+                }
+            }
+        }
+    }
+
+    private final Cell m_root = new Cell(-180d, -90d, 180d, 90d, 0);
+
+    /**
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return m_root.m_count;
+    }
+
+    /**
+     * Adds a node. Entries without coordinates are ignored.
+     *
+     * @return true if the node was added
+     */
+    public boolean insert(final NodeEntry entry) {
+        if (!isPlaceable(entry)) {
+            return false;
+        }
+        final double longitude = clamp(entry.getLongitude(), -180d, 180d);
+        final double latitude = clamp(entry.getLatitude(), -90d, 90d);
+
+        Cell cell = m_root;
+        while (true) {
+            cell.account(entry, 1);
+            if (cell.isLeaf()) {
+                cell.m_entries.add(entry);
+                if (cell.m_entries.size() > LEAF_CAPACITY && cell.m_depth < MAX_DEPTH) {
+                    cell.split();
+                }
+                return true;
+            }
+            cell = cell.childFor(longitude, latitude);
+        }
+    }
+
+    /**
+     * Removes a node previously added with {@link #insert(NodeEntry)}.
+     *
+     * @return true if the node was found and removed
+     */
+    public boolean remove(final NodeEntry entry) {
+        if (!isPlaceable(entry)) {
+            return false;
+        }
+        final double longitude = clamp(entry.getLongitude(), -180d, 180d);
+        final double latitude = clamp(entry.getLatitude(), -90d, 90d);
+
+        final List<Cell> path = new ArrayList<Cell>();
+        Cell cell = m_root;
+        while (!cell.isLeaf()) {
+            path.add(cell);
+            cell = cell.childFor(longitude, latitude);
+        }
+        if (!cell.m_entries.remove(entry)) {
+            return false;
+        }
+        cell.account(entry, -1);
+        for (int i = path.size() - 1; i >= 0; i--) {
+            final Cell parent = path.get(i);
+            parent.account(entry, -1);
+            if (parent.m_count <= LEAF_CAPACITY / 2) {
+                parent.collapse();
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        m_root.m_children = null;
+        m_root.m_entries = new ArrayList<NodeEntry>();
+        m_root.m_count = 0;
+        m_root.m_lonSum = 0;
+        m_root.m_latSum = 0;
+        m_root.m_unackedCount = 0;
+        for (int i = 0; i < m_root.m_severities.length; i++) {
+            m_root.m_severities[i] = 0;
+        }
+    }
+
+    /**
+     * Returns every node inside the given bounds.
+     */
+    public List<NodeEntry> find(final double west, final double south, final double east, final double north) {
+        final List<NodeEntry> found = new ArrayList<NodeEntry>();
+        find(m_root, west, south, east, north, found);
+        return found;
+    }
+
+    private static void find(final Cell cell, final double west, final double south, final double east, final double north, final List<NodeEntry> found) {
+        if (cell.m_count == 0 || !cell.intersects(west, south, east, north)) {
+            return;
+        }
+        if (cell.isLeaf()) {
+            for (final NodeEntry entry : cell.m_entries) {
+                if (contains(entry, west, south, east, north)) {
+                    found.add(entry);
+                }
+            }
+        } else {
+            for (final Cell child : cell.m_children) {
+                find(child, west, south, east, north, found);
+            }
+        }
+    }
+
+    /**
+     * Clusters the nodes inside the given bounds. Cells no wider than
+     * <code>cellSize</code> degrees are reported from their aggregates
+     * without visiting their nodes; larger leaves report each node as a
+     * cluster of one.
+     */
+    public List<Cluster> getClusters(final double west, final double south, final double east, final double north, final double cellSize) {
+        final List<Cluster> clusters = new ArrayList<Cluster>();
+        cluster(m_root, west, south, east, north, cellSize, clusters);
+        return clusters;
+    }
+
+    private static void cluster(final Cell cell, final double west, final double south, final double east, final double north, final double cellSize, final List<Cluster> clusters) {
+        if (cell.m_count == 0 || !cell.intersects(west, south, east, north)) {
+            return;
+        }
+        if (cell.m_east - cell.m_west <= cellSize) {
+            if (cell.m_count == 1 || cell.isLeaf()) {
+                final List<NodeEntry> nodes = new ArrayList<NodeEntry>(cell.m_count);
+                cell.collect(nodes);
+                clusters.add(new Cluster(cell, nodes));
+            } else {
+                clusters.add(new Cluster(cell, new ArrayList<NodeEntry>(0)));
+            }
+        } else if (cell.isLeaf()) {
+            for (final NodeEntry entry : cell.m_entries) {
+                if (contains(entry, west, south, east, north)) {
+                    final Cell single = new Cell(entry.getLongitude(), entry.getLatitude(), entry.getLongitude(), entry.getLatitude(), cell.m_depth);
+                    single.account(entry, 1);
+                    final List<NodeEntry> nodes = new ArrayList<NodeEntry>(1);
+                    nodes.add(entry);
+                    clusters.add(new Cluster(single, nodes));
+                }
+            }
+        } else {
+            for (final Cell child : cell.m_children) {
+                cluster(child, west, south, east, north, cellSize, clusters);
+            }
+        }
+    }
+
+    private static boolean isPlaceable(final NodeEntry entry) {
+        return entry.getLongitude() != null && entry.getLatitude() != null
+                && !entry.getLongitude().isInfinite() && !entry.getLatitude().isInfinite()
+                && !entry.getLongitude().isNaN() && !entry.getLatitude().isNaN();
+    }
+
+    private static boolean contains(final NodeEntry entry, final double west, final double south, final double east, final double north) {
+        return entry.getLongitude() >= west && entry.getLongitude() <= east && entry.getLatitude() >= south && entry.getLatitude() <= north;
+    }
+
+    private static double clamp(final double value, final double min, final double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -31,6 +31,8 @@ package org.opennms.features.vaadin.nodemaps.internal.gwt.client;
 import org.discotools.gwt.leaflet.client.jsobject.JSObject;
 import org.discotools.gwt.leaflet.client.map.MapOptions;
 
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+
 public class Map extends org.discotools.gwt.leaflet.client.map.Map {
     public Map(final JSObject self) {
         super(self);
@@ -47,4 +49,57 @@ public class Map extends org.discotools.gwt.leaflet.client.map.Map {
     private native int getMaxZoom(final JSObject self) /*-{
         return self.getMaxZoom();
     }-*/;
+
+    public int getZoomLevel() {
+        return getZoomLevel(getJSObject());
+    }
+
+    private native int getZoomLevel(final JSObject self) /*-{
+        return self.getZoom();
+    }-*/;
+
+    public double getWest() {
+        return getWest(getJSObject());
+    }
+
+    private native double getWest(final JSObject self) /*-{
+        return self.getBounds().getSouthWest().lng;
+    }-*/;
+
+    public double getSouth() {
+        return getSouth(getJSObject());
+    }
+
+    private native double getSouth(final JSObject self) /*-{
+        return self.getBounds().getSouthWest().lat;
+    }-*/;
+
+    public double getEast() {
+        return getEast(getJSObject());
+    }
+
+    private native double getEast(final JSObject self) /*-{
+        return self.getBounds().getNorthEast().lng;
+    }-*/;
+
+    public double getNorth() {
+        return getNorth(getJSObject());
+    }
+
+    private native double getNorth(final JSObject self) /*-{
+        return self.getBounds().getNorthEast().lat;
+    }-*/;
+
+    /**
+     * Runs the command whenever the map has finished panning or zooming.
+     */
+    public void onMoveEnd(final ScheduledCommand command) {
+        onMoveEnd(getJSObject(), command);
+    }
+
+    private native void onMoveEnd(final JSObject self, final ScheduledCommand command) /*-{
+        self.on('moveend', function() {
+            command.@com.google.gwt.core.client.Scheduler.ScheduledCommand::execute()();
+        });
+    }-*/;
 }
\ No newline at end of file
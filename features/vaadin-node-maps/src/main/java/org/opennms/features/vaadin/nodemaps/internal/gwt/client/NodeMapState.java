@@ -41,6 +41,14 @@ public class NodeMapState extends AbstractComponentState {
     private static final long serialVersionUID = -476104177779046228L;
     public String searchString;
     public List<MapNode> nodes = new LinkedList<MapNode>();
+    /** Nodes added or changed since the previous response; applied on top of {@link #nodes}. */
+    public List<MapNode> updatedNodes = new ArrayList<MapNode>();
+    /** Nodes removed since the previous response. */
+    public List<Integer> removedNodeIds = new ArrayList<Integer>();
+    /** Incremented whenever a new set of updated and removed nodes is sent. */
+    public int nodeChangeCount;
+    /** Server-side clusters for the reported viewport; empty when the client should cluster its own markers. */
+    public List<MapCluster> clusters = new ArrayList<MapCluster>();
     public List<Integer> nodeIds = new ArrayList<Integer>();
     public int minimumSeverity;
     public boolean groupByState = true;
@@ -99,6 +99,14 @@ public class MarkerFilterImpl implements MarkerFilter, AlarmSeverityUpdatedEvent
         m_eventManager.fireEvent(new FilterUpdatedEvent());
     }
 
+    /**
+     * @return true if a search string or a minimum severity above normal
+     *         narrows the markers shown
+     */
+    public boolean isActive() {
+        return m_minimumSeverity.isGreaterThan(AlarmSeverity.NORMAL) || (m_searchString != null && !"".equals(m_searchString));
+    }
+
     @Override
     public boolean matches(final NodeMarker marker) {
         if (marker == null) return false;
@@ -35,4 +35,5 @@ import com.vaadin.shared.communication.ServerRpc;
 public interface NodeIdSelectionRpc extends ServerRpc {
     public void setSelectedNodes(List<Integer> nodeIds);
     public void refresh();
+    public void setViewport(double west, double south, double east, double north, int zoom);
 }
@@ -31,6 +31,7 @@ package org.opennms.features.vaadin.nodemaps.internal.gwt.client.ui;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -61,6 +62,7 @@ public class NodeMapConnector extends AbstractComponentConnector implements HasH
     private Logger LOG = Logger.getLogger(getClass().getName());
 
     private Map<String, Icon> m_icons;
+    private Map<String, JSNodeMarker> m_markers = new LinkedHashMap<String, JSNodeMarker>();
 
     private NodeIdSelectionRpc m_rpc = RpcProxy.create(NodeIdSelectionRpc.class, this);
 
@@ -93,6 +95,14 @@ public class NodeMapConnector extends AbstractComponentConnector implements HasH
             updateNodes();
         }
 
+        if (stateChangeEvent.hasPropertyChanged("nodeChangeCount")) {
+            applyNodeChanges();
+        }
+
+        if (stateChangeEvent.hasPropertyChanged("clusters")) {
+            getWidget().setViewportClusters(getState().clusters);
+        }
+
         if (stateChangeEvent.hasPropertyChanged("nodeIds")) {
             final List<Integer> nodeIds = getState().nodeIds;
             LOG.info("NodeMapConnector.onStateChanged(): nodeIds is now: " + nodeIds);
@@ -114,44 +124,62 @@ public class NodeMapConnector extends AbstractComponentConnector implements HasH
     private void updateNodes() {
         final List<MapNode> nodes = getState().nodes;
         LOG.info("NodeMapConnector.onStateChanged(): nodes list is now: " + nodes);
-        final List<JSNodeMarker> featureCollection = new ArrayList<JSNodeMarker>();
+        m_markers = new LinkedHashMap<String, JSNodeMarker>();
+        for (final MapNode node : nodes) {
+            m_markers.put(node.getNodeId(), createMarker(node));
+        }
+        getWidget().setMarkers(new ArrayList<JSNodeMarker>(m_markers.values()));
+        getConnection().getLoadingIndicator().hide();
+    }
 
-        if (nodes.isEmpty()) {
-            getWidget().setMarkers(featureCollection);
+    /**
+     * Patches the current markers with the nodes the server reports as
+     * changed or removed since its previous response.
+     */
+    private void applyNodeChanges() {
+        final List<MapNode> updated = getState().updatedNodes;
+        final List<Integer> removed = getState().removedNodeIds;
+        if (updated.isEmpty() && removed.isEmpty()) {
             return;
         }
+        LOG.info("NodeMapConnector.applyNodeChanges(): " + updated.size() + " updated, " + removed.size() + " removed");
+        for (final Integer nodeId : removed) {
+            m_markers.remove(String.valueOf(nodeId));
+        }
+        for (final MapNode node : updated) {
+            m_markers.put(node.getNodeId(), createMarker(node));
+        }
+        getWidget().setMarkers(new ArrayList<JSNodeMarker>(m_markers.values()));
+    }
 
-        for (final MapNode node : nodes) {
-            final JSNodeMarker marker = new JSNodeMarker(new LatLng(node.getLatitude(), node.getLongitude()));
-            marker.putProperty(JSNodeMarker.Property.NODE_ID, node.getNodeId());
-            marker.putProperty(JSNodeMarker.Property.NODE_LABEL, node.getNodeLabel());
-            marker.putProperty(JSNodeMarker.Property.FOREIGN_SOURCE, node.getForeignSource());
-            marker.putProperty(JSNodeMarker.Property.FOREIGN_ID, node.getForeignId());
-            marker.putProperty(JSNodeMarker.Property.DESCRIPTION, node.getDescription());
-            marker.putProperty(JSNodeMarker.Property.MAINTCONTRACT, node.getMaintcontract());
-            marker.putProperty(JSNodeMarker.Property.IP_ADDRESS, node.getIpAddress());
-            marker.putProperty(JSNodeMarker.Property.SEVERITY, node.getSeverity());
-            marker.putProperty(JSNodeMarker.Property.SEVERITY_LABEL, node.getSeverityLabel());
-
-            final List<String> categories = node.getCategories();
-            if (categories != null) {
-                marker.setCategories(categories.toArray(new String[]{}));
-            }
+    private JSNodeMarker createMarker(final MapNode node) {
+        final JSNodeMarker marker = new JSNodeMarker(new LatLng(node.getLatitude(), node.getLongitude()));
+        marker.putProperty(JSNodeMarker.Property.NODE_ID, node.getNodeId());
+        marker.putProperty(JSNodeMarker.Property.NODE_LABEL, node.getNodeLabel());
+        marker.putProperty(JSNodeMarker.Property.FOREIGN_SOURCE, node.getForeignSource());
+        marker.putProperty(JSNodeMarker.Property.FOREIGN_ID, node.getForeignId());
+        marker.putProperty(JSNodeMarker.Property.DESCRIPTION, node.getDescription());
+        marker.putProperty(JSNodeMarker.Property.MAINTCONTRACT, node.getMaintcontract());
+        marker.putProperty(JSNodeMarker.Property.IP_ADDRESS, node.getIpAddress());
+        marker.putProperty(JSNodeMarker.Property.SEVERITY, node.getSeverity());
+        marker.putProperty(JSNodeMarker.Property.SEVERITY_LABEL, node.getSeverityLabel());
+
+        final List<String> categories = node.getCategories();
+        if (categories != null) {
+            marker.setCategories(categories.toArray(new String[]{}));
+        }
 
-            // TODO: Icon handling should be moved to the Widget
-            if (m_icons.containsKey(marker.getSeverityLabel())) {
-                marker.setIcon(m_icons.get(marker.getSeverityLabel()));
-            } else {
-                marker.setIcon(m_icons.get("Normal"));
-            }
+        // TODO: Icon handling should be moved to the Widget
+        if (m_icons.containsKey(marker.getSeverityLabel())) {
+            marker.setIcon(m_icons.get(marker.getSeverityLabel()));
+        } else {
+            marker.setIcon(m_icons.get("Normal"));
+        }
 
-            // TODO: This should be moved to the Widget
-            marker.bindPopup(NodeMarkerClusterCallback.getPopupTextForMarker(marker));
+        // TODO: This should be moved to the Widget
+        marker.bindPopup(NodeMarkerClusterCallback.getPopupTextForMarker(marker));
 
-            featureCollection.add(marker);
-        }
-        getWidget().setMarkers(featureCollection);
-        getConnection().getLoadingIndicator().hide();
+        return marker;
     }
 
     @Override
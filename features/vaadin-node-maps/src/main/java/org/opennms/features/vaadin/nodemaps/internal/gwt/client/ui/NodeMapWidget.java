@@ -48,6 +48,7 @@ import org.opennms.features.vaadin.nodemaps.internal.gwt.client.AlarmSeverity;
 import org.opennms.features.vaadin.nodemaps.internal.gwt.client.ComponentTracker;
 import org.opennms.features.vaadin.nodemaps.internal.gwt.client.JSNodeMarker;
 import org.opennms.features.vaadin.nodemaps.internal.gwt.client.Map;
+import org.opennms.features.vaadin.nodemaps.internal.gwt.client.MapCluster;
 import org.opennms.features.vaadin.nodemaps.internal.gwt.client.NodeMarker;
 import org.opennms.features.vaadin.nodemaps.internal.gwt.client.OpenNMSEventManager;
 import org.opennms.features.vaadin.nodemaps.internal.gwt.client.event.ApplicationInitializedEvent;
@@ -82,6 +83,8 @@ public class NodeMapWidget extends AbsolutePanel implements MarkerProvider, Filt
     private MarkerContainer m_markerContainer;
     private MarkerClusterGroup m_markerClusterGroup;
     private MarkerClusterGroup[] m_stateClusterGroups;
+    private final ViewportClusterLayer m_viewportClusterLayer = new ViewportClusterLayer();
+    private List<MapCluster> m_viewportClusters = new ArrayList<MapCluster>();
 
     private boolean m_firstUpdate = true;
     private SearchControl m_searchControl;
@@ -162,6 +165,7 @@ public class NodeMapWidget extends AbsolutePanel implements MarkerProvider, Filt
         // createGoogleLayer();
         addTileLayer();
         addMarkerLayer();
+        addViewportListener();
 
         // overlay controls
         addSearchControl();
@@ -239,6 +243,23 @@ public class NodeMapWidget extends AbsolutePanel implements MarkerProvider, Filt
         }
     }
 
+    private void addViewportListener() {
+        LOG.info("NodeMapWidget.addViewportListener()");
+        m_map.onMoveEnd(new ScheduledCommand() {
+            @Override public void execute() {
+                sendViewportToBackend();
+            }
+        });
+        sendViewportToBackend();
+    }
+
+    private void sendViewportToBackend() {
+        if (m_map == null || m_clientToServerRpc == null) {
+            return;
+        }
+        m_clientToServerRpc.setViewport(m_map.getWest(), m_map.getSouth(), m_map.getEast(), m_map.getNorth(), m_map.getZoomLevel());
+    }
+
     private void addSearchControl() {
         LOG.info("NodeMapWidget.addSearchControl()");
         m_searchControl = new SearchControl(m_markerContainer, this, m_eventManager, m_componentTracker);
@@ -305,6 +326,40 @@ public class NodeMapWidget extends AbsolutePanel implements MarkerProvider, Filt
         removeDisabledMarkers();
         zoomToFit();
         sendSelectionToBackend();
+        updateViewportClusterLayer();
+    }
+
+    public void setViewportClusters(final List<MapCluster> clusters) {
+        m_viewportClusters = clusters == null? new ArrayList<MapCluster>() : clusters;
+        m_viewportClusterLayer.setClusters(m_viewportClusters);
+        updateViewportClusterLayer();
+    }
+
+    /**
+     * Shows the server's clusters instead of the node markers while the
+     * server has any for this viewport. The clusters cover every node, so the
+     * markers are used whenever a search or severity filter is active.
+     */
+    private void updateViewportClusterLayer() {
+        if (m_map == null || m_markerClusterGroup == null || m_filter == null) {
+            return;
+        }
+        final boolean useViewportClusters = !m_viewportClusters.isEmpty() && !m_filter.isActive();
+        if (useViewportClusters && !m_viewportClusterLayer.isOnMap()) {
+            LOG.info("NodeMapWidget.updateViewportClusterLayer(): showing " + m_viewportClusters.size() + " server-side clusters");
+            m_map.removeLayer(m_markerClusterGroup);
+            for (int i = 0; i < m_stateClusterGroups.length; i++) {
+                m_map.removeLayer(m_stateClusterGroups[i]);
+            }
+            m_viewportClusterLayer.addTo(m_map);
+        } else if (!useViewportClusters && m_viewportClusterLayer.isOnMap()) {
+            LOG.info("NodeMapWidget.updateViewportClusterLayer(): showing node markers");
+            m_viewportClusterLayer.removeFrom(m_map);
+            m_map.addLayer(m_markerClusterGroup);
+            for (int i = 0; i < m_stateClusterGroups.length; i++) {
+                m_map.addLayer(m_stateClusterGroups[i]);
+            }
+        }
     }
 
     private void clearExistingMarkers() {
@@ -449,6 +504,7 @@ public class NodeMapWidget extends AbsolutePanel implements MarkerProvider, Filt
             }
         }
         if (m_map != null) {
+            m_viewportClusterLayer.removeFrom(m_map);
             m_map.removeLayer(m_markerClusterGroup);
             m_map.removeLayer(m_layer);
             m_map = null;
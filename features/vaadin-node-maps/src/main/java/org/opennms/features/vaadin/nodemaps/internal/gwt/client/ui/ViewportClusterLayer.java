@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.features.vaadin.nodemaps.internal.gwt.client.ui;
+
+import java.util.List;
+
+import org.discotools.gwt.leaflet.client.jsobject.JSObject;
+import org.opennms.features.vaadin.nodemaps.internal.gwt.client.Map;
+import org.opennms.features.vaadin.nodemaps.internal.gwt.client.MapCluster;
+
+/**
+ * Layer of cluster markers computed on the server for the current viewport.
+ * Clicking a cluster zooms in on it.
+ */
+public class ViewportClusterLayer {
+    private JSObject m_layer;
+    private boolean m_onMap = false;
+
+    public void setClusters(final List<MapCluster> clusters) {
+        final JSObject layer = getLayer();
+        clearLayers(layer);
+        if (clusters == null) {
+            return;
+        }
+        for (final MapCluster cluster : clusters) {
+            addCluster(layer, cluster.getLatitude(), cluster.getLongitude(), cluster.getCount(), cluster.getSeverityLabel());
+        }
+    }
+
+    public boolean isOnMap() {
+        return m_onMap;
+    }
+
+    public void addTo(final Map map) {
+        if (!m_onMap) {
+            addTo(getLayer(), map.getJSObject());
+            m_onMap = true;
+        }
+    }
+
+    public void removeFrom(final Map map) {
+        if (m_onMap) {
+            removeFrom(getLayer(), map.getJSObject());
+            m_onMap = false;
+        }
+    }
+
+    private JSObject getLayer() {
+        if (m_layer == null) {
+            m_layer = create();
+        }
+        return m_layer;
+    }
+
+    private static native JSObject create() /*-{
+        return new $wnd.L.LayerGroup();
+    }-*/;
+
+    private static native void clearLayers(final JSObject self) /*-{
+        self.clearLayers();
+    }-*/;
+
+    private static native void addCluster(final JSObject self, final double lat, final double lng, final int count, final String severityLabel) /*-{
+        var latlng = new $wnd.L.LatLng(lat, lng);
+        var icon = new $wnd.L.DivIcon({
+            html: '<div><span>' + count + '</span></div>',
+            className: 'marker-cluster marker-cluster-' + severityLabel,
+            iconSize: new $wnd.L.Point(40, 40)
+        });
+        var marker = new $wnd.L.Marker(latlng, { icon: icon });
+        marker.on('click', function() {
+            var map = marker._map;
+            if (map) {
+                map.setView(latlng, Math.min(map.getZoom() + 2, map.getMaxZoom()));
+            }
+        });
+        self.addLayer(marker);
+    }-*/;
+
+    private static native void addTo(final JSObject self, final JSObject map) /*-{
+        map.addLayer(self);
+    }-*/;
+
+    private static native void removeFrom(final JSObject self, final JSObject map) /*-{
+        map.removeLayer(self);
+    }-*/;
+}
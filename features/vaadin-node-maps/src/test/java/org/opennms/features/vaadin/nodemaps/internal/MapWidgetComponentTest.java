@@ -29,6 +29,7 @@
 package org.opennms.features.vaadin.nodemaps.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -38,6 +39,7 @@ import java.util.logging.Logger;
 import org.junit.Before;
 import org.junit.Test;
 import org.opennms.features.vaadin.nodemaps.internal.NodeMapComponent.NodeEntry;
+import org.opennms.features.vaadin.nodemaps.internal.gwt.client.MapCluster;
 import org.opennms.features.vaadin.nodemaps.internal.gwt.client.MapNode;
 import org.opennms.features.vaadin.nodemaps.internal.gwt.client.NodeMapState;
 
@@ -47,15 +49,19 @@ public class MapWidgetComponentTest {
         Logger.getLogger(MapNode.class.getName()).setLevel(Level.ALL);
     }
 
-    @Test
-    public void testShowNodes() {
-        final NodeMapState state = new NodeMapState();
-        final MapWidgetComponent component = new MapWidgetComponent() {
+    private static MapWidgetComponent createComponent(final NodeMapState state) {
+        return new MapWidgetComponent() {
             private static final long serialVersionUID = 1L;
             public NodeMapState getState() {
                 return state;
             }
         };
+    }
+
+    @Test
+    public void testShowNodes() {
+        final NodeMapState state = new NodeMapState();
+        final MapWidgetComponent component = createComponent(state);
 
         final Map<Integer,NodeEntry> entries = new HashMap<Integer,NodeEntry>();
         component.showNodes(entries);
@@ -79,4 +85,82 @@ public class MapWidgetComponentTest {
         component.showNodes(entries);
         assertEquals(0, state.nodes.size());
     }
+
+    @Test
+    public void testUpdateNodesSendsOnlyChanges() {
+        final NodeMapState state = new NodeMapState();
+        final MapWidgetComponent component = createComponent(state);
+
+        final Map<Integer,NodeEntry> entries = new HashMap<Integer,NodeEntry>();
+        entries.put(1, new NodeEntry(1, "one", 1f, 1f));
+        entries.put(2, new NodeEntry(2, "two", 2f, 2f));
+        component.showNodes(entries);
+        component.beforeClientResponse(true);
+        assertEquals(2, state.nodes.size());
+        assertEquals(0, state.nodeChangeCount);
+
+        // nothing changed, nothing is sent
+        component.updateNodes(new HashMap<Integer,NodeEntry>(entries));
+        component.beforeClientResponse(false);
+        assertEquals(0, state.nodeChangeCount);
+
+        entries.put(2, new NodeEntry(2, "zwei", 2f, 2f));
+        entries.put(3, new NodeEntry(3, "three", 3f, 3f));
+        component.updateNodes(new HashMap<Integer,NodeEntry>(entries));
+        entries.remove(1);
+        component.updateNodes(new HashMap<Integer,NodeEntry>(entries));
+        component.beforeClientResponse(false);
+
+        // both refreshes go out together, and the full list is left alone
+        assertEquals(1, state.nodeChangeCount);
+        assertEquals(2, state.nodes.size());
+        assertEquals(2, state.updatedNodes.size());
+        assertEquals("zwei", state.updatedNodes.get(0).getNodeLabel());
+        assertEquals("three", state.updatedNodes.get(1).getNodeLabel());
+        assertEquals(1, state.removedNodeIds.size());
+        assertEquals(Integer.valueOf(1), state.removedNodeIds.get(0));
+
+        // a node that comes back is an update rather than a removal
+        entries.put(1, new NodeEntry(1, "one", 1f, 1f));
+        component.updateNodes(new HashMap<Integer,NodeEntry>(entries));
+        component.beforeClientResponse(false);
+        assertEquals(2, state.nodeChangeCount);
+        assertEquals(1, state.updatedNodes.size());
+        assertEquals("1", state.updatedNodes.get(0).getNodeId());
+        assertTrue(state.removedNodeIds.isEmpty());
+
+        // a reloaded client gets the current full list and no changes
+        component.beforeClientResponse(true);
+        assertEquals(3, state.nodes.size());
+        assertTrue(state.updatedNodes.isEmpty());
+        assertTrue(state.removedNodeIds.isEmpty());
+    }
+
+    @Test
+    public void testViewportClusters() {
+        final NodeMapState state = new NodeMapState();
+        final MapWidgetComponent component = createComponent(state);
+        final NodeMapModel model = new NodeMapModel();
+        component.setNodeMapModel(model);
+
+        final Map<Integer,NodeEntry> entries = new HashMap<Integer,NodeEntry>();
+        for (int i = 0; i < 1500; i++) {
+            entries.put(i, new NodeEntry(i, "node" + i, (i % 360) - 180f, (i % 160) - 80f));
+        }
+        model.publish(entries);
+
+        // the whole world at a low zoom holds too many nodes to draw one by one
+        component.setViewport(-180, -90, 180, 90, 1);
+        assertTrue(state.clusters.size() > 0);
+        assertTrue(state.clusters.size() < 1500);
+        int count = 0;
+        for (final MapCluster cluster : state.clusters) {
+            count += cluster.getCount();
+        }
+        assertEquals(1500, count);
+
+        // a small viewport is left to the client
+        component.setViewport(0, 0, 10, 10, 8);
+        assertTrue(state.clusters.isEmpty());
+    }
 }
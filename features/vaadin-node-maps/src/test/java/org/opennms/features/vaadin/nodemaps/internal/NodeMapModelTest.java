@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.vaadin.nodemaps.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.opennms.features.vaadin.nodemaps.internal.NodeMapComponent.NodeEntry;
+import org.opennms.features.vaadin.nodemaps.internal.NodeMapModel.Delta;
+import org.opennms.features.vaadin.nodemaps.internal.NodeQuadTree.Cluster;
+import org.opennms.netmgt.model.OnmsSeverity;
+
+public class NodeMapModelTest {
+
+    @Test
+    public void testPublishDeltas() {
+        final NodeMapModel model = new NodeMapModel();
+        model.setMaxDeltas(2);
+
+        final Map<Integer,NodeEntry> nodes = new HashMap<Integer,NodeEntry>();
+        nodes.put(1, new NodeEntry(1, "one", 1f, 1f));
+        nodes.put(2, new NodeEntry(2, "two", 2f, 2f));
+        model.publish(nodes);
+        assertEquals(1, model.getSnapshot().getVersion());
+        assertEquals(2, model.getSnapshot().getNodes().size());
+
+        // publishing the same data is not a change
+        model.publish(new HashMap<Integer,NodeEntry>(nodes));
+        assertEquals(1, model.getSnapshot().getVersion());
+        assertTrue(model.getChangesSince(1).isEmpty());
+
+        final NodeEntry critical = new NodeEntry(nodes.get(2));
+        critical.setSeverity(OnmsSeverity.CRITICAL);
+        nodes.put(2, critical);
+        nodes.remove(1);
+        model.publish(nodes);
+
+        final List<Delta> changes = model.getChangesSince(1);
+        assertEquals(1, changes.size());
+        assertEquals(2, changes.get(0).getVersion());
+        assertEquals(1, changes.get(0).getUpdated().size());
+        assertEquals(critical, changes.get(0).getUpdated().get(2));
+        assertTrue(changes.get(0).getRemoved().contains(1));
+        assertEquals(OnmsSeverity.CRITICAL, model.getSnapshot().getNodes().get(2).getSeverity());
+
+        final Map<Integer,NodeEntry> local = new HashMap<Integer,NodeEntry>();
+        local.put(1, new NodeEntry(1, "one", 1f, 1f));
+        local.put(2, new NodeEntry(2, "two", 2f, 2f));
+        changes.get(0).applyTo(local);
+        assertEquals(model.getSnapshot().getNodes(), local);
+
+        nodes.put(3, new NodeEntry(3, "three", 3f, 3f));
+        model.publish(nodes);
+        assertEquals(2, model.getChangesSince(1).size());
+
+        // version 1's successor has been dropped, so callers must take a snapshot
+        nodes.put(4, new NodeEntry(4, "four", 4f, 4f));
+        model.publish(nodes);
+        assertNull(model.getChangesSince(1));
+        assertEquals(1, model.getChangesSince(3).size());
+    }
+
+    @Test
+    public void testClustersFollowPublishedNodes() {
+        final NodeMapModel model = new NodeMapModel();
+
+        final Map<Integer,NodeEntry> nodes = new HashMap<Integer,NodeEntry>();
+        nodes.put(1, new NodeEntry(1, "one", 1f, 1f));
+        nodes.put(2, new NodeEntry(2, "two", 2f, 2f));
+        nodes.put(3, new NodeEntry(3, "three", -100f, 40f));
+        model.publish(nodes);
+
+        List<Cluster> clusters = model.getClusters(-180, -90, 180, 90, 360);
+        assertEquals(1, clusters.size());
+        assertEquals(3, clusters.get(0).getCount());
+        assertEquals(OnmsSeverity.NORMAL, clusters.get(0).getSeverity());
+
+        // with small cells, only the nodes inside the viewport are reported
+        clusters = model.getClusters(0, 0, 3, 3, 10);
+        assertEquals(2, clusters.size());
+        assertEquals(1, clusters.get(0).getCount());
+        assertEquals(1, clusters.get(1).getCount());
+
+        // severity changes and removals update the cell aggregates
+        final NodeEntry major = new NodeEntry(nodes.get(2));
+        major.setSeverity(OnmsSeverity.MAJOR);
+        major.setUnackedCount(4);
+        nodes.put(2, major);
+        nodes.remove(3);
+        model.publish(nodes);
+
+        clusters = model.getClusters(-180, -90, 180, 90, 360);
+        assertEquals(1, clusters.size());
+        assertEquals(2, clusters.get(0).getCount());
+        assertEquals(OnmsSeverity.MAJOR, clusters.get(0).getSeverity());
+        assertEquals(4, clusters.get(0).getUnackedCount());
+
+        // moving a node moves it between cells
+        nodes.put(1, new NodeEntry(1, "one", 120f, -30f));
+        model.publish(nodes);
+        assertEquals(1, model.getClusters(0, 0, 3, 3, 10).size());
+        assertEquals(1, model.getClusters(100, -40, 130, -20, 10).size());
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.features.vaadin.nodemaps.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.opennms.features.vaadin.nodemaps.internal.NodeMapComponent.NodeEntry;
+import org.opennms.features.vaadin.nodemaps.internal.NodeQuadTree.Cluster;
+import org.opennms.netmgt.model.OnmsSeverity;
+
+public class NodeQuadTreeTest {
+
+    @Test
+    public void testInsertFindAndRemove() {
+        final NodeQuadTree tree = new NodeQuadTree();
+        final Random random = new Random(42);
+        final List<NodeEntry> entries = new ArrayList<NodeEntry>();
+        for (int i = 0; i < 1000; i++) {
+            final NodeEntry entry = new NodeEntry(i, "node" + i, random.nextFloat() * 360f - 180f, random.nextFloat() * 180f - 90f);
+            entries.add(entry);
+            assertTrue(tree.insert(entry));
+        }
+        assertEquals(1000, tree.size());
+
+        int expected = 0;
+        for (final NodeEntry entry : entries) {
+            if (entry.getLongitude() >= -10 && entry.getLongitude() <= 30 && entry.getLatitude() >= 0 && entry.getLatitude() <= 45) {
+                expected++;
+            }
+        }
+        assertEquals(expected, tree.find(-10, 0, 30, 45).size());
+
+        for (int i = 0; i < 900; i++) {
+            assertTrue(tree.remove(entries.get(i)));
+        }
+        assertFalse(tree.remove(entries.get(0)));
+        assertEquals(100, tree.size());
+        assertEquals(100, tree.find(-180, -90, 180, 90).size());
+    }
+
+    @Test
+    public void testIgnoresBadCoordinates() {
+        final NodeQuadTree tree = new NodeQuadTree();
+        assertFalse(tree.insert(new NodeEntry(1, "bad", Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY)));
+        assertEquals(0, tree.size());
+    }
+
+    @Test
+    public void testClusterAggregates() {
+        final NodeQuadTree tree = new NodeQuadTree();
+        for (int i = 0; i < 100; i++) {
+            final NodeEntry entry = new NodeEntry(i, "node" + i, -79.0f + (i % 10) * 0.01f, 35.7f + (i / 10) * 0.01f);
+            if (i == 17) {
+                entry.setSeverity(OnmsSeverity.MAJOR);
+                entry.setUnackedCount(3);
+            }
+            tree.insert(entry);
+        }
+        tree.insert(new NodeEntry(100, "far away", 151.2f, -33.9f));
+
+        final List<Cluster> clusters = tree.getClusters(-180, -90, 180, 90, 10);
+        assertEquals(2, clusters.size());
+
+        int total = 0;
+        for (final Cluster cluster : clusters) {
+            total += cluster.getCount();
+            if (cluster.getCount() == 100) {
+                assertEquals(OnmsSeverity.MAJOR, cluster.getSeverity());
+                assertEquals(3, cluster.getUnackedCount());
+                assertEquals(-78.955, cluster.getLongitude(), 0.001);
+                assertEquals(35.745, cluster.getLatitude(), 0.001);
+            } else {
+                assertEquals(OnmsSeverity.NORMAL, cluster.getSeverity());
+                assertEquals(1, cluster.getNodes().size());
+            }
+        }
+        assertEquals(101, total);
+
+        // only the viewport around the far node
+        assertEquals(1, tree.getClusters(150, -35, 152, -33, 10).size());
+    }
+}
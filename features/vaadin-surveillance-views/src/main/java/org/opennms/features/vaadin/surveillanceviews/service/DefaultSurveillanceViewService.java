@@ -27,6 +27,7 @@
  *******************************************************************************/
 package org.opennms.features.vaadin.surveillanceviews.service;
 
+import com.google.common.base.Throwables;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import org.opennms.core.criteria.Alias;
@@ -37,6 +38,9 @@ import org.opennms.core.criteria.restrictions.Restriction;
 import org.opennms.core.criteria.restrictions.Restrictions;
 import org.opennms.features.vaadin.surveillanceviews.config.SurveillanceViewProvider;
 import org.opennms.features.vaadin.surveillanceviews.model.Category;
+import org.opennms.features.vaadin.surveillanceviews.model.ColumnDef;
+import org.opennms.features.vaadin.surveillanceviews.model.Def;
+import org.opennms.features.vaadin.surveillanceviews.model.RowDef;
 import org.opennms.features.vaadin.surveillanceviews.model.View;
 import org.opennms.netmgt.config.GroupDao;
 import org.opennms.netmgt.config.groups.Group;
@@ -79,7 +83,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 
 /**
  * Service class that encapsulate helper methods for surveillance views.
@@ -108,6 +117,18 @@ public class DefaultSurveillanceViewService implements SurveillanceViewService {
      * the shared executor service pool
      */
     ListeningExecutorService m_listeningExecutorService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(10));
+    /**
+     * whether the cell status of a view is computed by one query instead of one query per cell
+     */
+    private boolean m_singleQueryCellStatus = true;
+    /**
+     * time in milliseconds a computed cell status is shared between sessions, 0 disables the cache
+     */
+    private long m_cellStatusCacheTtl = 0;
+    /**
+     * the cell status cache, keyed by the category names of the view's rows and columns
+     */
+    private final ConcurrentMap<List<List<List<String>>>, CachedCellStatus> m_cellStatusCache = new ConcurrentHashMap<>();
 
     /**
      * Method to set the node dao.
@@ -190,6 +211,26 @@ public class DefaultSurveillanceViewService implements SurveillanceViewService {
         this.m_outageDao = outageDao;
     }
 
+    /**
+     * Method to set whether the cell status of a view is computed by a single query for the whole
+     * matrix instead of a query per cell.
+     *
+     * @param singleQueryCellStatus true to use a single query
+     */
+    public void setSingleQueryCellStatus(boolean singleQueryCellStatus) {
+        this.m_singleQueryCellStatus = singleQueryCellStatus;
+    }
+
+    /**
+     * Method to set the time a computed cell status is shared between all sessions displaying
+     * the same view.
+     *
+     * @param cellStatusCacheTtl the time to live in milliseconds, 0 disables the cache
+     */
+    public void setCellStatusCacheTtl(long cellStatusCacheTtl) {
+        this.m_cellStatusCacheTtl = cellStatusCacheTtl;
+    }
+
     /**
      * Method to set the transaction operations instance
      *
@@ -240,18 +281,64 @@ public class DefaultSurveillanceViewService implements SurveillanceViewService {
      */
     @Override
     public SurveillanceStatus[][] calculateCellStatus(final View view) {
+        if (m_cellStatusCacheTtl <= 0) {
+            return computeCellStatus(view);
+        }
+
+        final List<List<List<String>>> key = new ArrayList<>();
+        key.add(getCategoryNames(view.getRows()));
+        key.add(getCategoryNames(view.getColumns()));
+
+        final long now = System.currentTimeMillis();
+        CachedCellStatus cached = m_cellStatusCache.get(key);
+
+        if (cached == null || cached.isExpired(now)) {
+            final CachedCellStatus computing = new CachedCellStatus(view, now + m_cellStatusCacheTtl);
+
+            if (cached == null ? m_cellStatusCache.putIfAbsent(key, computing) == null : m_cellStatusCache.replace(key, cached, computing)) {
+                /**
+                 * this session computes the status, concurrent sessions wait for the result
+                 */
+                computing.run();
+                removeExpiredCellStatus(now);
+            }
+            cached = m_cellStatusCache.get(key);
+            if (cached == null) {
+                cached = computing;
+            }
+        }
+
+        return copyOf(cached.getCellStatus());
+    }
+
+    /**
+     * Computes the cell status of a view from the database.
+     *
+     * @param view the view to use
+     * @return the array of {@link SurveillanceStatus} instances
+     */
+    private SurveillanceStatus[][] computeCellStatus(final View view) {
         return m_transactionOperations.execute(new TransactionCallback<SurveillanceStatus[][]>() {
             @Override
             public SurveillanceStatus[][] doInTransaction(TransactionStatus transactionStatus) {
+                final List<Set<OnmsCategory>> rowCategories = new ArrayList<>();
+                for (final RowDef rowDef : view.getRows()) {
+                    rowCategories.add(getOnmsCategoriesFromViewCategories(rowDef.getCategories()));
+                }
 
-                final SurveillanceStatus[][] cellStatus = new SurveillanceStatus[view.getRows().size()][view.getColumns().size()];
-                for (int rowIndex = 0; rowIndex < view.getRows().size(); rowIndex++) {
-                    for (int colIndex = 0; colIndex < view.getColumns().size(); colIndex++) {
-                        final Collection<OnmsCategory> rowCategories = getOnmsCategoriesFromViewCategories(view.getRows().get(rowIndex).getCategories());
-                        final Collection<OnmsCategory> columnCategories = getOnmsCategoriesFromViewCategories(view.getColumns().get(colIndex).getCategories());
-                        final SurveillanceStatus status = m_nodeDao.findSurveillanceStatusByCategoryLists(rowCategories, columnCategories);
+                final List<Set<OnmsCategory>> columnCategories = new ArrayList<>();
+                for (final ColumnDef columnDef : view.getColumns()) {
+                    columnCategories.add(getOnmsCategoriesFromViewCategories(columnDef.getCategories()));
+                }
 
-                        cellStatus[rowIndex][colIndex] = status;
+                if (m_singleQueryCellStatus) {
+                    return m_nodeDao.findSurveillanceStatusByCategoryMatrix(rowCategories, columnCategories);
+                }
+
+                final SurveillanceStatus[][] cellStatus = new SurveillanceStatus[rowCategories.size()][columnCategories.size()];
+                for (int rowIndex = 0; rowIndex < rowCategories.size(); rowIndex++) {
+                    for (int colIndex = 0; colIndex < columnCategories.size(); colIndex++) {
+                        cellStatus[rowIndex][colIndex] = m_nodeDao.findSurveillanceStatusByCategoryLists(rowCategories.get(rowIndex), columnCategories.get(colIndex));
                     }
                 }
                 return cellStatus;
@@ -259,6 +346,88 @@ public class DefaultSurveillanceViewService implements SurveillanceViewService {
         });
     }
 
+    /**
+     * Returns the category names of the given row or column definitions.
+     *
+     * @param defs the row or column definitions
+     * @return the list of category names for each definition
+     */
+    private List<List<String>> getCategoryNames(final List<? extends Def> defs) {
+        final List<List<String>> names = new ArrayList<>();
+        for (final Def def : defs) {
+            final List<String> defNames = new ArrayList<>();
+            for (final Category category : def.getCategories()) {
+                defNames.add(category.getName());
+            }
+            names.add(defNames);
+        }
+        return names;
+    }
+
+    /**
+     * Removes cached cell status entries that have expired.
+     *
+     * @param now the current time in milliseconds
+     */
+    private void removeExpiredCellStatus(final long now) {
+        for (final Map.Entry<List<List<List<String>>>, CachedCellStatus> entry : m_cellStatusCache.entrySet()) {
+            if (entry.getValue().isExpired(now) && entry.getValue().isDone()) {
+                m_cellStatusCache.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of a cell status matrix so that a shared result can't be modified by a caller.
+     *
+     * @param cellStatus the matrix to copy
+     * @return the copy
+     */
+    private static SurveillanceStatus[][] copyOf(final SurveillanceStatus[][] cellStatus) {
+        final SurveillanceStatus[][] copy = new SurveillanceStatus[cellStatus.length][];
+        for (int i = 0; i < cellStatus.length; i++) {
+            copy[i] = cellStatus[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * A cell status computation shared by all sessions displaying the same view.
+     */
+    private class CachedCellStatus extends FutureTask<SurveillanceStatus[][]> {
+        /**
+         * the time in milliseconds this entry expires
+         */
+        private final long m_expires;
+
+        public CachedCellStatus(final View view, final long expires) {
+            super(new Callable<SurveillanceStatus[][]>() {
+                @Override
+                public SurveillanceStatus[][] call() throws Exception {
+                    return computeCellStatus(view);
+                }
+            });
+            m_expires = expires;
+        }
+
+        public boolean isExpired(final long now) {
+            return now >= m_expires;
+        }
+
+        public SurveillanceStatus[][] getCellStatus() {
+            try {
+                return get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the surveillance view status", e);
+            } catch (ExecutionException e) {
+                m_cellStatusCache.values().remove(this);
+                Throwables.propagateIfPossible(e.getCause());
+                throw new IllegalStateException("Unable to compute the surveillance view status", e.getCause());
+            }
+        }
+    }
+
     /**
      * Creates a SQL query string for filtering on categories.
      *
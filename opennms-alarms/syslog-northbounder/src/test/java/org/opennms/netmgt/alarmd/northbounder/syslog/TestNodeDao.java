@@ -256,6 +256,13 @@ public class TestNodeDao implements NodeDao {
 		return null;
 	}
 
+	@Override
+	public SurveillanceStatus[][] findSurveillanceStatusByCategoryMatrix(
+			List<? extends Collection<OnmsCategory>> rowCategories,
+			List<? extends Collection<OnmsCategory>> columnCategories) {
+		return null;
+	}
+
 	@Override
 	public Integer getNextNodeId(Integer nodeId) {
 		return null;
@@ -210,6 +210,12 @@ public class Event implements Serializable, Comparable<Event> {
     @XmlTransient
     private EventOrderIndex m_index;
 
+    /**
+     * The %parm% templates of this event, compiled by {@link #initialize(EventOrderIndex)}.
+     */
+    @XmlTransient
+    private transient ExpansionTemplate[] m_templates;
+
     public EventOrderIndex getIndex() {
         return m_index;
     }
@@ -911,6 +917,53 @@ public class Event implements Serializable, Comparable<Event> {
 	public void initialize(EventOrderIndex eventOrderIndex) {
 		m_index = eventOrderIndex;
 		m_matcher = constructMatcher();
+		m_templates = compileTemplates();
+	}
+
+	private ExpansionTemplate[] compileTemplates() {
+		final List<ExpansionTemplate> templates = new ArrayList<ExpansionTemplate>();
+		addTemplate(templates, m_descr);
+		addTemplate(templates, m_logmsg == null ? null : m_logmsg.getContent());
+		addTemplate(templates, m_operinstruct);
+		for (final Autoaction autoaction : m_autoactions) {
+			addTemplate(templates, autoaction.getContent());
+		}
+		for (final Operaction operaction : m_operactions) {
+			addTemplate(templates, operaction.getContent());
+		}
+		addTemplate(templates, m_tticket == null ? null : m_tticket.getContent());
+		if (m_alarmData != null) {
+			addTemplate(templates, m_alarmData.getReductionKey());
+			addTemplate(templates, m_alarmData.getClearKey());
+		}
+		return templates.toArray(new ExpansionTemplate[templates.size()]);
+	}
+
+	private static void addTemplate(final List<ExpansionTemplate> templates, final String source) {
+		if (source != null) {
+			templates.add(ExpansionTemplate.compile(source));
+		}
+	}
+
+	/**
+	 * Returns the template compiled for one of this event's descr, logmsg,
+	 * operinstruct, autoaction, operaction, tticket, reduction-key or
+	 * clear-key values when it was initialized.
+	 *
+	 * @param value the text to be expanded
+	 * @return the compiled template, or null if value is not one of this
+	 *         event's templates (or it was changed since initialization)
+	 */
+	public ExpansionTemplate getExpansionTemplate(final String value) {
+		if (value == null || m_templates == null) {
+			return null;
+		}
+		for (final ExpansionTemplate template : m_templates) {
+			if (value.equals(template.getSource())) {
+				return template;
+			}
+		}
+		return null;
 	}
 	
 	public List<String> getMaskElementValues(String mename) {
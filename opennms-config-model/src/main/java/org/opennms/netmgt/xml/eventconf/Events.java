@@ -46,6 +46,11 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -54,6 +59,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlType;
 
+import org.opennms.core.xml.CompiledConfigCache;
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.core.xml.ValidateUsing;
 import org.springframework.core.io.DefaultResourceLoader;
@@ -334,12 +340,26 @@ public class Events implements Serializable {
 	}
 
     public Map<String, Long> loadEventFiles(Resource configResource) throws IOException {
+        return loadEventFiles(configResource, CompiledConfigCache.getDefault());
+    }
+
+    public Map<String, Long> loadEventFiles(Resource configResource, CompiledConfigCache cache) throws IOException {
         Map<String, Long> lastModifiedEventFiles = new LinkedHashMap<String, Long>();
-        loadEventFilesIfModified(configResource, lastModifiedEventFiles);
+        loadEventFilesIfModified(configResource, lastModifiedEventFiles, cache);
         return lastModifiedEventFiles;
     }
 
     public void loadEventFilesIfModified(Resource configResource, Map<String, Long> lastModifiedEventFiles) throws IOException {
+        loadEventFilesIfModified(configResource, lastModifiedEventFiles, CompiledConfigCache.getDefault());
+    }
+
+    /**
+     * Loads the included event files that are new or have been modified
+     * since they were last loaded. The files are parsed in parallel, through
+     * the given compiled configuration cache, but are always added in the
+     * order they are listed in.
+     */
+    public void loadEventFilesIfModified(Resource configResource, Map<String, Long> lastModifiedEventFiles, final CompiledConfigCache cache) throws IOException {
         // Remove any event files that we're previously loaded, and no
         // longer appear in the list of event files
         for(Iterator<Map.Entry<String, Events>> it = m_loadedEventFiles.entrySet().iterator(); it.hasNext(); ) {
@@ -352,6 +372,7 @@ public class Events implements Serializable {
         }
 
         // Conditionally load or reload the event files
+        final Map<String, Resource> eventResources = new LinkedHashMap<String, Resource>();
         for(String eventFile : m_eventFiles) {
             Resource eventResource = getRelative(configResource, eventFile);
             long lastModified = eventResource.lastModified();
@@ -372,20 +393,62 @@ public class Events implements Serializable {
             }
 
             lastModifiedEventFiles.put(eventFile, lastModified);
+            eventResources.put(eventFile, eventResource);
+        }
+
+        if (eventResources.isEmpty()) {
+            return;
+        }
 
-            Events events = JaxbUtils.unmarshal(Events.class, eventResource);
-            if (events.getEventCount() <= 0) {
-                throw new IllegalStateException("Uh oh! An event file "+eventResource.getFile()+" with no events has been laoded!");
+        final Map<String, Future<Events>> parsedEventFiles = new LinkedHashMap<String, Future<Events>>();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(eventResources.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            for (final Entry<String, Resource> entry : eventResources.entrySet()) {
+                parsedEventFiles.put(entry.getKey(), executor.submit(new Callable<Events>() {
+                    @Override
+                    public Events call() {
+                        return cache.unmarshal(Events.class, entry.getValue());
+                    }
+                }));
             }
-            if (events.getGlobal() != null) {
-                throw new ObjectRetrievalFailureException(Resource.class, eventResource, "The event resource " + eventResource + " included from the root event configuration file cannot have a 'global' element", null);
+
+            for (final Entry<String, Future<Events>> entry : parsedEventFiles.entrySet()) {
+                addParsedEventFile(entry.getKey(), eventResources.get(entry.getKey()), getParsedEventFile(entry.getValue()));
             }
-            if (events.getEventFileCollection().size() > 0) {
-                throw new ObjectRetrievalFailureException(Resource.class, eventResource, "The event resource " + eventResource + " included from the root event configuration file cannot include other configuration files: " + StringUtils.collectionToCommaDelimitedString(events.getEventFileCollection()), null);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Events getParsedEventFile(final Future<Events> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading event files", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
             }
+            throw new IOException(e.getCause());
+        }
+    }
 
-            m_loadedEventFiles.put(eventFile, events);
+    private void addParsedEventFile(final String eventFile, final Resource eventResource, final Events events) throws IOException {
+        if (events.getEventCount() <= 0) {
+            throw new IllegalStateException("Uh oh! An event file "+eventResource.getFile()+" with no events has been laoded!");
+        }
+        if (events.getGlobal() != null) {
+            throw new ObjectRetrievalFailureException(Resource.class, eventResource, "The event resource " + eventResource + " included from the root event configuration file cannot have a 'global' element", null);
         }
+        if (events.getEventFileCollection().size() > 0) {
+            throw new ObjectRetrievalFailureException(Resource.class, eventResource, "The event resource " + eventResource + " included from the root event configuration file cannot include other configuration files: " + StringUtils.collectionToCommaDelimitedString(events.getEventFileCollection()), null);
+        }
+
+        m_loadedEventFiles.put(eventFile, events);
     }
 
 	public boolean isSecureTag(String tag) {
@@ -0,0 +1,397 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.xml.eventconf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A string containing %parm% tokens, such as an event's description or log
+ * message, split once into literal text and parsed tokens. Expanding a
+ * compiled template is a single pass over its segments instead of a fresh
+ * scan of the string for every event.
+ *
+ * <p>The parsing rules are the ones event expansion has always used: text
+ * between a pair of '%' characters is a token unless it contains whitespace,
+ * in which case the first '%' is kept as literal text and scanning resumes
+ * just after it. A '%' without a closing '%' is literal text.</p>
+ *
+ * <p>Instances are immutable and may be shared between threads.</p>
+ */
+public final class ExpansionTemplate {
+
+    /**
+     * The kinds of token understood in event expansion.
+     */
+    public static enum TokenType {
+        UEI("uei"),
+        EVENT_DB_ID("eventid"),
+        SOURCE("source"),
+        DPNAME("dpname"),
+        DESCR("descr"),
+        LOGMSG("logmsg"),
+        NODEID("nodeid"),
+        NODELABEL("nodelabel"),
+        TIME("time"),
+        SHORT_TIME("shorttime"),
+        HOST("host"),
+        INTERFACE("interface"),
+        IFINDEX("ifindex"),
+        INTERFACE_RESOLVE("interfaceresolve"),
+        IFALIAS("ifalias"),
+        PERCENT_SIGN("pctsign"),
+        SNMPHOST("snmphost"),
+        SERVICE("service"),
+        SNMP("snmp"),
+        SNMP_ID("id"),
+        SNMP_IDTEXT("idtext"),
+        SNMP_VERSION("version"),
+        SNMP_SPECIFIC("specific"),
+        SNMP_GENERIC("generic"),
+        SNMP_COMMUNITY("community"),
+        SEVERITY("severity"),
+        OPERINSTRUCT("operinstruct"),
+        MOUSEOVERTEXT("mouseovertext"),
+        TTICKET_ID("tticketid"),
+        PARMS_VALUES("parm[values-all]"),
+        PARMS_NAMES("parm[names-all]"),
+        PARMS_ALL("parm[all]"),
+        NUM_PARMS("parm[##]"),
+        /** <code>parm[#N]</code>, the value of the Nth parameter */
+        PARM_NUMBERED_VALUE(null),
+        /** <code>parm[name-#N]</code>, the name (or part of it) of the Nth parameter */
+        PARM_NUMBERED_NAME(null),
+        /** <code>parm[name]</code>, the value of a parameter by name */
+        PARM_NAMED(null),
+        ASSET(null),
+        HARDWARE(null),
+        UNKNOWN(null);
+
+        private final String m_tag;
+
+        private TokenType(final String tag) {
+            m_tag = tag;
+        }
+
+        public String getTag() {
+            return m_tag;
+        }
+    }
+
+    /**
+     * A single %token%, with any parameter number, name or split
+     * specification already parsed.
+     */
+    public static final class Token {
+        private final String m_text;
+        private final TokenType m_type;
+        private final String m_parmName;
+        private final int m_parmNumber;
+        private final String m_separator;
+        private final Pattern m_separatorPattern;
+        private final int m_offset;
+        private final boolean m_range;
+        private final int m_rangeLength;
+
+        private Token(final String text, final TokenType type, final String parmName, final int parmNumber) {
+            this(text, type, parmName, parmNumber, null, 0, false, 0);
+        }
+
+        private Token(final String text, final TokenType type, final String parmName, final int parmNumber, final String separator, final int offset, final boolean range, final int rangeLength) {
+            m_text = text;
+            m_type = type;
+            m_parmName = parmName;
+            m_parmNumber = parmNumber;
+            m_separator = separator;
+            m_separatorPattern = separator == null ? null : Pattern.compile(Pattern.quote(separator));
+            m_offset = offset;
+            m_range = range;
+            m_rangeLength = rangeLength;
+        }
+
+        /**
+         * @return the text between the '%' characters, e.g. <code>parm[#1]</code>
+         */
+        public String getText() {
+            return m_text;
+        }
+
+        public TokenType getType() {
+            return m_type;
+        }
+
+        /**
+         * @return the parameter name of a {@link TokenType#PARM_NAMED} token,
+         *         or null if the token has no closing ']'
+         */
+        public String getParmName() {
+            return m_parmName;
+        }
+
+        /**
+         * @return the 1-based parameter number of a numbered token, or -1 if
+         *         it is not a valid number
+         */
+        public int getParmNumber() {
+            return m_parmNumber;
+        }
+
+        /**
+         * @return the separator a numbered parameter name is split on, or
+         *         null if the whole name is wanted
+         */
+        public String getSeparator() {
+            return m_separator;
+        }
+
+        /**
+         * @return {@link #getSeparator()} as a literal pattern
+         */
+        public Pattern getSeparatorPattern() {
+            return m_separatorPattern;
+        }
+
+        public int getOffset() {
+            return m_offset;
+        }
+
+        public boolean isRange() {
+            return m_range;
+        }
+
+        public int getRangeLength() {
+            return m_rangeLength;
+        }
+
+        @Override
+        public String toString() {
+            return "%" + m_text + "%";
+        }
+    }
+
+    private static final String PARM_BEGIN = "parm[";
+    private static final String PARM_NUM_PREFIX = "parm[#";
+    private static final String PARM_NAME_NUMBERED_PREFIX = "parm[name-#";
+    private static final String ASSET_BEGIN = "asset[";
+    private static final String HARDWARE_BEGIN = "hardware[";
+    private static final String PARM_END_SUFFIX = "]";
+    private static final char PERCENT = '%';
+
+    private static final Pattern DIGITS = Pattern.compile("^\\d+$");
+    private static final Pattern PARM_NAME_SPEC = Pattern.compile("^(\\d+)([^0-9+-]+)([+-]?\\d+)((:)([+-]?\\d+)?)?$");
+
+    private static final Map<String, Token> s_simpleTokens = new HashMap<String, Token>();
+
+    static {
+        for (final TokenType type : TokenType.values()) {
+            if (type.getTag() != null) {
+                s_simpleTokens.put(type.getTag(), new Token(type.getTag(), type, null, -1));
+            }
+        }
+    }
+
+    private final String m_source;
+    private final String[] m_literals;
+    private final Token[] m_tokens;
+
+    private ExpansionTemplate(final String source, final String[] literals, final Token[] tokens) {
+        m_source = source;
+        m_literals = literals;
+        m_tokens = tokens;
+    }
+
+    /**
+     * Parses a template.
+     *
+     * @param source the string to parse
+     * @return the compiled template, or null if source is null
+     */
+    public static ExpansionTemplate compile(final String source) {
+        if (source == null) {
+            return null;
+        }
+
+        final List<String> literals = new ArrayList<String>();
+        final List<Token> tokens = new ArrayList<Token>();
+        final StringBuilder literal = new StringBuilder();
+
+        int pos = 0;
+        while (true) {
+            final int start = source.indexOf(PERCENT, pos);
+            if (start == -1) {
+                break;
+            }
+            final int end = source.indexOf(PERCENT, start + 1);
+            if (end == -1) {
+                break;
+            }
+
+            literal.append(source, pos, start);
+            if (containsWhitespace(source, start + 1, end)) {
+                // not a token, keep the '%' and look for one starting at the next character
+                literal.append(PERCENT);
+                pos = start + 1;
+                continue;
+            }
+
+            literals.add(literal.toString());
+            literal.setLength(0);
+            tokens.add(parseToken(source.substring(start + 1, end)));
+            pos = end + 1;
+        }
+        literal.append(source, pos, source.length());
+        literals.add(literal.toString());
+
+        return new ExpansionTemplate(source, literals.toArray(new String[literals.size()]), tokens.toArray(new Token[tokens.size()]));
+    }
+
+    /**
+     * Parses the text between a pair of '%' characters.
+     *
+     * @param text the token text, e.g. <code>nodelabel</code> or <code>parm[#2]</code>
+     * @return the parsed token; its type is {@link TokenType#UNKNOWN} if the
+     *         text is not a recognized token
+     */
+    public static Token parseToken(final String text) {
+        final Token simple = s_simpleTokens.get(text);
+        if (simple != null) {
+            return simple;
+        }
+
+        if (text.startsWith(PARM_NUM_PREFIX)) {
+            final int end = text.lastIndexOf(PARM_END_SUFFIX);
+            final int parmNumber = end == -1 ? -1 : parseParmNumber(text.substring(PARM_NUM_PREFIX.length(), end));
+            return new Token(text, TokenType.PARM_NUMBERED_VALUE, null, parmNumber);
+        } else if (text.startsWith(PARM_NAME_NUMBERED_PREFIX)) {
+            return parseNumberedNameToken(text);
+        } else if (text.startsWith(PARM_BEGIN)) {
+            final int end = text.indexOf(PARM_END_SUFFIX, PARM_BEGIN.length());
+            final String parmName = end == -1 ? null : text.substring(PARM_BEGIN.length(), end);
+            return new Token(text, TokenType.PARM_NAMED, parmName, -1);
+        } else if (text.startsWith(ASSET_BEGIN)) {
+            return new Token(text, TokenType.ASSET, null, -1);
+        } else if (text.startsWith(HARDWARE_BEGIN)) {
+            return new Token(text, TokenType.HARDWARE, null, -1);
+        } else {
+            return new Token(text, TokenType.UNKNOWN, null, -1);
+        }
+    }
+
+    private static Token parseNumberedNameToken(final String text) {
+        final int end = text.lastIndexOf(PARM_END_SUFFIX);
+        if (end == -1) {
+            return new Token(text, TokenType.PARM_NUMBERED_NAME, null, -1);
+        }
+
+        // Get the string between the '#' and ']'
+        final String parmSpec = text.substring(PARM_NAME_NUMBERED_PREFIX.length(), end);
+        if (DIGITS.matcher(parmSpec).matches()) {
+            return new Token(text, TokenType.PARM_NUMBERED_NAME, null, parseParmNumber(parmSpec));
+        }
+
+        final Matcher m = PARM_NAME_SPEC.matcher(parmSpec);
+        if (!m.matches()) {
+            return new Token(text, TokenType.PARM_NUMBERED_NAME, null, -1);
+        }
+        try {
+            final int offset = Integer.parseInt(m.group(3));
+            final boolean range = ":".equals(m.group(5));
+            final int rangeLength = m.group(6) == null ? 0 : Integer.parseInt(m.group(6));
+            return new Token(text, TokenType.PARM_NUMBERED_NAME, null, parseParmNumber(m.group(1)), m.group(2), offset, range, rangeLength);
+        } catch (final NumberFormatException e) {
+            return new Token(text, TokenType.PARM_NUMBERED_NAME, null, -1);
+        }
+    }
+
+    private static int parseParmNumber(final String number) {
+        try {
+            return Integer.parseInt(number);
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Matches the <code>\s</code> character class.
+     */
+    private static boolean containsWhitespace(final String s, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            switch (s.charAt(i)) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\u000B':
+            case '\f':
+            case '\r':
+                return true;
+            default:
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the string this template was compiled from
+     */
+    public String getSource() {
+        return m_source;
+    }
+
+    /**
+     * @return the number of tokens; a template without tokens always
+     *         expands to its source
+     */
+    public int getTokenCount() {
+        return m_tokens.length;
+    }
+
+    /**
+     * @param index 0 to {@link #getTokenCount()}, inclusive
+     * @return the literal text before token <code>index</code>, or the
+     *         trailing text for <code>index == getTokenCount()</code>
+     */
+    public String getLiteral(final int index) {
+        return m_literals[index];
+    }
+
+    public Token getToken(final int index) {
+        return m_tokens[index];
+    }
+
+    @Override
+    public String toString() {
+        return m_source;
+    }
+}
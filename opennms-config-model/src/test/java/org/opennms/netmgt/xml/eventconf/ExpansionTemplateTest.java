@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.opennms.netmgt.xml.eventconf.ExpansionTemplate.Token;
+import org.opennms.netmgt.xml.eventconf.ExpansionTemplate.TokenType;
+
+public class ExpansionTemplateTest {
+
+    @Test
+    public void testLiteralsAndTokens() {
+        final ExpansionTemplate template = ExpansionTemplate.compile("Node %nodelabel% (%interface%) is down%pctsign%");
+        assertEquals(3, template.getTokenCount());
+        assertEquals("Node ", template.getLiteral(0));
+        assertEquals(TokenType.NODELABEL, template.getToken(0).getType());
+        assertEquals(" (", template.getLiteral(1));
+        assertEquals(TokenType.INTERFACE, template.getToken(1).getType());
+        assertEquals(") is down", template.getLiteral(2));
+        assertEquals(TokenType.PERCENT_SIGN, template.getToken(2).getType());
+        assertEquals("", template.getLiteral(3));
+    }
+
+    @Test
+    public void testWhitespaceIsNotAToken() {
+        // "% of the %" contains whitespace, so the first '%' is literal and "%parm[#1]%" is the token
+        final ExpansionTemplate template = ExpansionTemplate.compile("50% of the %parm[#1]% disk");
+        assertEquals(1, template.getTokenCount());
+        assertEquals("50% of the ", template.getLiteral(0));
+        assertEquals(TokenType.PARM_NUMBERED_VALUE, template.getToken(0).getType());
+        assertEquals(1, template.getToken(0).getParmNumber());
+        assertEquals(" disk", template.getLiteral(1));
+
+        final ExpansionTemplate multiline = ExpansionTemplate.compile("a %b\nc% d");
+        assertEquals(0, multiline.getTokenCount());
+        assertEquals("a %b\nc% d", multiline.getLiteral(0));
+    }
+
+    @Test
+    public void testUnterminatedToken() {
+        final ExpansionTemplate template = ExpansionTemplate.compile("%uei% 100%");
+        assertEquals(1, template.getTokenCount());
+        assertEquals(" 100%", template.getLiteral(1));
+    }
+
+    @Test
+    public void testParmTokens() {
+        assertSame(ExpansionTemplate.parseToken("parm[##]"), ExpansionTemplate.parseToken("parm[##]"));
+        assertEquals(TokenType.PARMS_ALL, ExpansionTemplate.parseToken("parm[all]").getType());
+
+        Token token = ExpansionTemplate.parseToken("parm[ifDescr]");
+        assertEquals(TokenType.PARM_NAMED, token.getType());
+        assertEquals("ifDescr", token.getParmName());
+
+        token = ExpansionTemplate.parseToken("parm[#x]");
+        assertEquals(TokenType.PARM_NUMBERED_VALUE, token.getType());
+        assertEquals(-1, token.getParmNumber());
+
+        token = ExpansionTemplate.parseToken("parm[name-#2]");
+        assertEquals(TokenType.PARM_NUMBERED_NAME, token.getType());
+        assertEquals(2, token.getParmNumber());
+        assertNull(token.getSeparator());
+
+        token = ExpansionTemplate.parseToken("parm[name-#1.-4:2]");
+        assertEquals(1, token.getParmNumber());
+        assertEquals(".", token.getSeparator());
+        assertEquals(-4, token.getOffset());
+        assertTrue(token.isRange());
+        assertEquals(2, token.getRangeLength());
+
+        token = ExpansionTemplate.parseToken("parm[name-#1.5]");
+        assertEquals(5, token.getOffset());
+        assertFalse(token.isRange());
+
+        assertEquals(TokenType.ASSET, ExpansionTemplate.parseToken("asset[building]").getType());
+        assertEquals(TokenType.UNKNOWN, ExpansionTemplate.parseToken("").getType());
+    }
+
+    @Test
+    public void testEventTemplates() {
+        final Event event = new Event();
+        event.setUei("uei.opennms.org/test");
+        event.setDescr("<p>%parm[#1]%</p>");
+        final Logmsg logmsg = new Logmsg();
+        logmsg.setContent("%uei% on %nodelabel%");
+        event.setLogmsg(logmsg);
+
+        assertNull(event.getExpansionTemplate(event.getDescr()));
+
+        event.initialize(new EventOrdering().next());
+        assertEquals("<p>%parm[#1]%</p>", event.getExpansionTemplate("<p>%parm[#1]%</p>").getSource());
+        assertEquals(2, event.getExpansionTemplate("%uei% on %nodelabel%").getTokenCount());
+        assertNull(event.getExpansionTemplate("%uei%"));
+    }
+}
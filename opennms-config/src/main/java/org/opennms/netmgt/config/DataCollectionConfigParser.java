@@ -42,7 +42,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
-import org.opennms.core.xml.JaxbUtils;
+import org.opennms.core.xml.CompiledConfigCache;
 import org.opennms.netmgt.config.datacollection.DatacollectionGroup;
 import org.opennms.netmgt.config.datacollection.Group;
 import org.opennms.netmgt.config.datacollection.Groups;
@@ -222,7 +222,7 @@ public class DataCollectionConfigParser {
                 public void run() {
                     try {
                         LOG.debug("parseExternalResources: parsing {}", file);
-                        DatacollectionGroup group = JaxbUtils.unmarshal(DatacollectionGroup.class, new FileSystemResource(file));
+                        DatacollectionGroup group = CompiledConfigCache.getDefault().unmarshal(DatacollectionGroup.class, new FileSystemResource(file));
                         // Synchronize around the map that holds the results
                         synchronized(externalGroupsMap) {
                             externalGroupsMap.put(group.getName(), group);
@@ -39,7 +39,7 @@ import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
-import org.opennms.core.xml.JaxbUtils;
+import org.opennms.core.xml.CompiledConfigCache;
 import org.opennms.netmgt.config.api.EventConfDao;
 import org.opennms.netmgt.xml.eventconf.Event;
 import org.opennms.netmgt.xml.eventconf.EventLabelComparator;
@@ -76,6 +76,12 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
      */
     private Map<String, Long> m_lastModifiedEventFiles = new LinkedHashMap<String, Long>();
 
+    /**
+     * Compiled snapshots of the event files, or null to use the default
+     * cache.
+     */
+    private CompiledConfigCache m_compiledConfigCache;
+
 	public String getProgrammaticStoreRelativeUrl() {
 		return m_programmaticStoreRelativePath;
 	}
@@ -238,6 +244,14 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 	public void setConfigResource(Resource configResource) throws IOException {
 		m_configResource = configResource;
 	}
+
+	public void setCompiledConfigCache(CompiledConfigCache compiledConfigCache) {
+		m_compiledConfigCache = compiledConfigCache;
+	}
+
+	private CompiledConfigCache getCompiledConfigCache() {
+		return m_compiledConfigCache == null ? CompiledConfigCache.getDefault() : m_compiledConfigCache;
+	}
 	
 	@Override
 	public void afterPropertiesSet() throws DataAccessException {
@@ -272,7 +286,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
     private synchronized void reloadConfig() throws DataAccessException {
         try {
             // Load the root event file
-            Events events = JaxbUtils.unmarshal(Events.class, m_configResource);
+            Events events = getCompiledConfigCache().unmarshal(Events.class, m_configResource);
 
             // Hash the list of event files for efficient lookup
             Set<String> eventFiles = new HashSet<String>();
@@ -289,7 +303,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
             }
 
             // Load/reload the event files as necessary
-            events.loadEventFilesIfModified(m_configResource, m_lastModifiedEventFiles);
+            events.loadEventFilesIfModified(m_configResource, m_lastModifiedEventFiles, getCompiledConfigCache());
 
             // Order the events for efficient searching
             events.initialize(m_partition, new EventOrdering());
@@ -302,8 +316,8 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 
 	private synchronized void loadConfig() throws DataAccessException {
 		try {
-			Events events = JaxbUtils.unmarshal(Events.class, m_configResource);
-			m_lastModifiedEventFiles = events.loadEventFiles(m_configResource);
+			Events events = getCompiledConfigCache().unmarshal(Events.class, m_configResource);
+			m_lastModifiedEventFiles = events.loadEventFiles(m_configResource, getCompiledConfigCache());
 
 			m_partition = new EnterpriseIdPartition();
 			events.initialize(m_partition, new EventOrdering());
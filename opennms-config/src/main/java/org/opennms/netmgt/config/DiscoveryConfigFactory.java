@@ -518,20 +518,23 @@ public class DiscoveryConfigFactory implements DiscoveryConfigurationFactory {
     public boolean isExcluded(final InetAddress address) {
         getReadLock().lock();
         try {
-            final List<ExcludeRange> excludeRange = getConfiguration().getExcludeRangeCollection();
-            if (excludeRange != null) {
-                final byte[] laddr = address.getAddress();
+            return isExcluded(address, getConfiguration().getExcludeRangeCollection());
+        } finally {
+            getReadLock().unlock();
+        }
+    }
 
-                for (final ExcludeRange range : excludeRange) {
-                    if (InetAddressUtils.isInetAddressInRange(laddr, range.getBegin(), range.getEnd())) {
-                        return true;
-                    }
+    private static boolean isExcluded(final InetAddress address, final List<ExcludeRange> excludeRange) {
+        if (excludeRange != null) {
+            final byte[] laddr = address.getAddress();
+
+            for (final ExcludeRange range : excludeRange) {
+                if (InetAddressUtils.isInetAddressInRange(laddr, range.getBegin(), range.getEnd())) {
+                    return true;
                 }
             }
-            return false;
-        } finally {
-            getReadLock().unlock();
         }
+        return false;
     }
 
     public String getForeignSource(InetAddress address) {
@@ -596,6 +599,20 @@ public class DiscoveryConfigFactory implements DiscoveryConfigurationFactory {
         }
     }
 
+    /**
+     * <p>getPacketsPerSecond</p>
+     *
+     * @return the configured discovery ping rate
+     */
+    public int getPacketsPerSecond() {
+        getReadLock().lock();
+        try {
+            return getConfiguration().getPacketsPerSecond();
+        } finally {
+            getReadLock().unlock();
+        }
+    }
+
     /**
      * <p>getExcludingInterator</p>
      *
@@ -615,6 +632,10 @@ public class DiscoveryConfigFactory implements DiscoveryConfigurationFactory {
     /**
      * <p>getConfiguredAddresses</p>
      *
+     * <p>The addresses are taken from the configuration as it is when this
+     * method is called, so they can be iterated after the read lock has been
+     * released, even if the configuration is reloaded in the meantime.</p>
+     *
      * @return a {@link java.lang.Iterable} object.
      */
     public Iterable<IPPollAddress> getConfiguredAddresses() {
@@ -624,11 +645,17 @@ public class DiscoveryConfigFactory implements DiscoveryConfigurationFactory {
             final List<IPPollRange> ranges = getRanges();
             specifics.addAll(getURLSpecifics());
 
+            final List<ExcludeRange> excludeRanges = getConfiguration().getExcludeRangeCollection() == null ? null : new ArrayList<ExcludeRange>(getConfiguration().getExcludeRangeCollection());
             final List<Iterator<IPPollAddress>> iters = new ArrayList<Iterator<IPPollAddress>>();
             iters.add(specifics.iterator());
 
             for(final IPPollRange range : ranges) {
-                iters.add(getExcludingInterator(range.iterator()));
+                iters.add(new FilteringIterator<IPPollAddress>(range.iterator()) {
+                    @Override
+                    protected boolean matches(final IPPollAddress item) {
+                        return !isExcluded(item.getAddress(), excludeRanges);
+                    }
+                });
             }
 
             return new IteratorIterator<IPPollAddress>(iters);
@@ -12,6 +12,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.xml.CompiledConfigCache;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
@@ -126,6 +127,51 @@ public class EventConfDaoReloadTest {
         assertEquals(5, eventConfDao.getAllEvents().size());
     }
 
+    /**
+     * Verify that events are loaded from the compiled snapshots while the
+     * files are unchanged, and that modified files are parsed again.
+     */
+    @Test
+    public void canReloadEventsThroughCompiledConfigCache() throws Exception {
+        File eventconfXml = tempFolder.newFile("eventconf.xml");
+        File bgp4eventsXml = tempFolder.newFile("BGP4.events.xml");
+        CompiledConfigCache cache = new CompiledConfigCache(tempFolder.newFolder("config-cache"));
+
+        FileUtils.copyInputStreamToFile(getResourceForRelativePath("reloaded/eventconf.xml").getInputStream(),
+                eventconfXml);
+        FileUtils.copyInputStreamToFile(getResourceForRelativePath("reloaded/BGP4.events.xml").getInputStream(),
+                bgp4eventsXml);
+
+        // Load, compiling both files
+        DefaultEventConfDao eventConfDao = new DefaultEventConfDao();
+        eventConfDao.setCompiledConfigCache(cache);
+        eventConfDao.setConfigResource(new FileSystemResource(eventconfXml));
+        eventConfDao.afterPropertiesSet();
+        assertEquals(3, eventConfDao.getAllEvents().size());
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // Load again, as on a restart, from the snapshots
+        DefaultEventConfDao restartedEventConfDao = new DefaultEventConfDao();
+        restartedEventConfDao.setCompiledConfigCache(cache);
+        restartedEventConfDao.setConfigResource(new FileSystemResource(eventconfXml));
+        restartedEventConfDao.afterPropertiesSet();
+        assertEquals(3, restartedEventConfDao.getAllEvents().size());
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // Replace the BGP4.events.xml with another that has a few more events
+        Thread.sleep(1000);
+        FileUtils.copyInputStreamToFile(getResourceForRelativePath("reloaded/BGP4.more.events.xml").getInputStream(),
+                bgp4eventsXml);
+
+        // Reload, the root is unchanged but the event file must be parsed
+        restartedEventConfDao.reload();
+        assertEquals(5, restartedEventConfDao.getAllEvents().size());
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
     private Resource getResourceForRelativePath(String resourceSuffix) {
         return new ClassPathResource("/org/opennms/netmgt/config/eventd/" + resourceSuffix);
     }
@@ -130,6 +130,16 @@ public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
      * @throws java.lang.Exception if any.
      */
     public void initialize() throws Exception {
+        m_workingMemory = newWorkingMemory(buildRuleBase());
+    }
+
+    /**
+     * Compiles the configured rules files into a new rule base.
+     *
+     * @return the compiled {@link org.drools.core.RuleBase}
+     * @throws java.lang.Exception if the rules cannot be loaded or compiled
+     */
+    protected RuleBase buildRuleBase() throws Exception {
     	final Properties props = new Properties();
         
         props.setProperty("drools.dialect.java.compiler.lnglevel", "1.6");
@@ -157,13 +167,24 @@ public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
         }
 
         ruleBase.addPackage( builder.getPackage() );
+        return ruleBase;
+    }
 
-        m_workingMemory = ruleBase.newStatefulSession();
-        m_workingMemory.setGlobal("engine", this);
+    /**
+     * Creates a new stateful session on the given rule base with the
+     * <code>engine</code> global and the configured globals set.
+     *
+     * @param ruleBase the compiled rule base
+     * @return a new {@link org.drools.core.WorkingMemory}
+     */
+    protected WorkingMemory newWorkingMemory(final RuleBase ruleBase) {
+        final WorkingMemory workingMemory = ruleBase.newStatefulSession();
+        workingMemory.setGlobal("engine", this);
         
         for (final Map.Entry<String, Object> entry : m_globals.entrySet()) {
-            m_workingMemory.setGlobal(entry.getKey(), entry.getValue());
+            workingMemory.setGlobal(entry.getKey(), entry.getValue());
         }
+        return workingMemory;
     }
 
     private void loadRules(final PackageBuilder builder) throws DroolsParserException, IOException {
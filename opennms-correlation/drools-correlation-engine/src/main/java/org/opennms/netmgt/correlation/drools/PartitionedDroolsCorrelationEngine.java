@@ -0,0 +1,502 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.correlation.drools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drools.core.FactHandle;
+import org.drools.core.RuleBase;
+import org.drools.core.WorkingMemory;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link DroolsCorrelationEngine} that spreads its facts over several
+ * independent stateful sessions.
+ *
+ * <p>Each incoming event is routed to a partition by hashing its partition
+ * key (<code>nodeid</code> by default), so all events sharing a key are seen
+ * by the same session and in the order they were received.  Every partition
+ * is driven by its own thread, which drains up to <code>batchSize</code>
+ * queued facts, inserts them and then fires the rules once for the whole
+ * batch.  Timers are delivered to the partition whose rules set them.</p>
+ *
+ * <p>Events are handed over without blocking the thread that delivers them:
+ * when a partition's queue is full the event is dropped and counted (see
+ * {@link #getDroppedFacts()}), so one slow partition cannot stall event
+ * dispatch.  Timer expirations wait a little for room before they are
+ * dropped.</p>
+ *
+ * <p>When a fact time-to-live is configured, events and timer expirations
+ * inserted by the engine that are still in working memory after that long
+ * are retracted, which bounds the memory of rule sets that never clean up
+ * after themselves.</p>
+ *
+ * <p>Partitioning is only correct for rule sets that correlate facts
+ * sharing the same key; rules that join facts across keys (such as the
+ * node parent rules, which relate a node to its parent) must keep using a
+ * single session.</p>
+ */
+public class PartitionedDroolsCorrelationEngine extends DroolsCorrelationEngine {
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionedDroolsCorrelationEngine.class);
+
+    public static final String DEFAULT_PARTITION_KEY = "nodeid";
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    private static final long IDLE_POLL_MILLIS = 1000;
+    private static final long TIMER_OFFER_MILLIS = 1000;
+    private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+
+    private final ThreadLocal<Partition> m_currentPartition = new ThreadLocal<>();
+    private final Map<Integer, Partition> m_timerPartitions = new ConcurrentHashMap<>();
+    private final AtomicInteger m_pending = new AtomicInteger(0);
+    private final AtomicLong m_dropped = new AtomicLong(0);
+
+    private int m_partitionCount = Runtime.getRuntime().availableProcessors();
+    private String m_partitionKey = DEFAULT_PARTITION_KEY;
+    private int m_batchSize = DEFAULT_BATCH_SIZE;
+    private int m_queueSize = DEFAULT_QUEUE_SIZE;
+    private long m_factTtl = 0;
+
+    private Partition[] m_partitions;
+    private volatile boolean m_stopped = false;
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize() throws Exception {
+        if (m_partitionCount < 1) {
+            throw new IllegalStateException("partitions must be at least 1 for engine " + getName());
+        }
+        if (m_batchSize < 1) {
+            throw new IllegalStateException("batch-size must be at least 1 for engine " + getName());
+        }
+
+        final RuleBase ruleBase = buildRuleBase();
+        final Partition[] partitions = new Partition[m_partitionCount];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(i, newWorkingMemory(ruleBase));
+        }
+        m_partitions = partitions;
+
+        for (final Partition partition : partitions) {
+            partition.start();
+        }
+        LOG.info("Started correlation engine {} with {} partitions keyed on {} (batch size {}, fact TTL {}ms)", getName(), partitions.length, m_partitionKey, m_batchSize, m_factTtl);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void correlate(final Event e) {
+        LOG.debug("Queueing Event {} uei: {} for correlation", e.getDbid(), e.getUei());
+        enqueue(getPartition(getPartitionKey(e)), e, 0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void timerExpired(final Integer timerId) {
+        Partition partition = m_timerPartitions.remove(timerId);
+        if (partition == null) {
+            partition = m_partitions[0];
+        }
+        LOG.info("Queueing Timer {} for correlation on partition {}", timerId, partition.getIndex());
+        enqueue(partition, new TimerExpired(timerId), TIMER_OFFER_MILLIS);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Integer setTimer(final long millis) {
+        final Integer timerId = super.setTimer(millis);
+        final Partition partition = m_currentPartition.get();
+        if (partition != null) {
+            m_timerPartitions.put(timerId, partition);
+        }
+        return timerId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void cancelTimer(final Integer timerId) {
+        super.cancelTimer(timerId);
+        m_timerPartitions.remove(timerId);
+    }
+
+    private void enqueue(final Partition partition, final Object fact, final long waitMillis) {
+        if (m_stopped) {
+            LOG.debug("Engine {} is stopped; ignoring {}", getName(), fact);
+            return;
+        }
+        m_pending.incrementAndGet();
+        boolean queued = false;
+        try {
+            queued = partition.getQueue().offer(fact, waitMillis, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queued) {
+            m_pending.decrementAndGet();
+            final long dropped = m_dropped.incrementAndGet();
+            if (dropped == 1 || dropped % 1000 == 0) {
+                LOG.warn("Partition {} of engine {} is full; {} facts dropped so far", partition.getIndex(), getName(), dropped);
+            }
+        }
+    }
+
+    private Partition getPartition(final Object key) {
+        final Partition[] partitions = m_partitions;
+        if (key == null) {
+            return partitions[0];
+        }
+        return partitions[(key.hashCode() & Integer.MAX_VALUE) % partitions.length];
+    }
+
+    /**
+     * Extracts the partition key from an event.  The well-known keys
+     * <code>nodeid</code>, <code>interface</code>, <code>service</code>,
+     * <code>uei</code>, <code>source</code> and <code>host</code> map to the
+     * corresponding event fields; any other key names an event parameter.
+     *
+     * @param e the event
+     * @return the key, or null if the event does not carry one
+     */
+    protected Object getPartitionKey(final Event e) {
+        if ("nodeid".equals(m_partitionKey)) {
+            return e.getNodeid();
+        } else if ("interface".equals(m_partitionKey)) {
+            return e.getInterface();
+        } else if ("service".equals(m_partitionKey)) {
+            return e.getService();
+        } else if ("uei".equals(m_partitionKey)) {
+            return e.getUei();
+        } else if ("source".equals(m_partitionKey)) {
+            return e.getSource();
+        } else if ("host".equals(m_partitionKey)) {
+            return e.getHost();
+        }
+
+        final Parm parm = e.getParm(m_partitionKey);
+        if (parm == null || parm.getValue() == null) {
+            return null;
+        }
+        return parm.getValue().getContent();
+    }
+
+    /**
+     * Waits until every queued fact has been inserted and its rules fired.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the engine became idle, false if the timeout elapsed
+     * @throws java.lang.InterruptedException if interrupted while waiting
+     */
+    public boolean waitForIdle(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (m_pending.get() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the partition threads and cancels the pending timers.  Facts
+     * still queued are discarded.
+     */
+    @Override
+    public void tearDown() {
+        m_stopped = true;
+        super.tearDown();
+        final Partition[] partitions = m_partitions;
+        if (partitions == null) {
+            return;
+        }
+        for (final Partition partition : partitions) {
+            partition.stop();
+        }
+        for (final Partition partition : partitions) {
+            try {
+                partition.join(SHUTDOWN_WAIT_MILLIS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            final List<Object> discarded = new ArrayList<>();
+            partition.getQueue().drainTo(discarded);
+            m_pending.addAndGet(-discarded.size());
+        }
+        LOG.info("Stopped correlation engine {}", getName());
+    }
+
+    /**
+     * <p>getDroppedFacts</p>
+     *
+     * @return the number of events and timer expirations dropped because
+     * their partition's queue was full
+     */
+    public long getDroppedFacts() {
+        return m_dropped.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getMemorySize() {
+        int count = 0;
+        for (final Partition partition : m_partitions) {
+            synchronized (partition) {
+                for (final Iterator<?> it = partition.getWorkingMemory().iterateObjects(); it.hasNext(); it.next()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<Object> getMemoryObjects() {
+        final List<Object> objects = new LinkedList<>();
+        for (final Partition partition : m_partitions) {
+            synchronized (partition) {
+                for (final Iterator<?> it = partition.getWorkingMemory().iterateObjects(); it.hasNext(); ) {
+                    objects.add(it.next());
+                }
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Returns the working memory of the first partition.  Use
+     * {@link #getWorkingMemories()} to reach every partition.
+     *
+     * @return a {@link org.drools.core.WorkingMemory} object.
+     */
+    @Override
+    public WorkingMemory getWorkingMemory() {
+        return m_partitions[0].getWorkingMemory();
+    }
+
+    /**
+     * <p>getWorkingMemories</p>
+     *
+     * @return the working memory of every partition
+     */
+    public List<WorkingMemory> getWorkingMemories() {
+        final List<WorkingMemory> memories = new ArrayList<>(m_partitions.length);
+        for (final Partition partition : m_partitions) {
+            memories.add(partition.getWorkingMemory());
+        }
+        return memories;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setGlobal(final String name, final Object value) {
+        for (final Partition partition : m_partitions) {
+            synchronized (partition) {
+                partition.getWorkingMemory().setGlobal(name, value);
+            }
+        }
+    }
+
+    public int getPartitions() {
+        return m_partitionCount;
+    }
+
+    public void setPartitions(final int partitions) {
+        m_partitionCount = partitions;
+    }
+
+    public String getPartitionKey() {
+        return m_partitionKey;
+    }
+
+    public void setPartitionKey(final String partitionKey) {
+        m_partitionKey = partitionKey == null ? DEFAULT_PARTITION_KEY : partitionKey;
+    }
+
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    public int getQueueSize() {
+        return m_queueSize;
+    }
+
+    public void setQueueSize(final int queueSize) {
+        m_queueSize = queueSize;
+    }
+
+    public long getFactTtl() {
+        return m_factTtl;
+    }
+
+    /**
+     * <p>setFactTtl</p>
+     *
+     * @param factTtl how long, in milliseconds, facts inserted by the engine
+     * may stay in working memory; 0 keeps them until the rules retract them
+     */
+    public void setFactTtl(final long factTtl) {
+        m_factTtl = factTtl;
+    }
+
+    private static final class InsertedFact {
+        private final FactHandle m_handle;
+        private final long m_insertTime;
+
+        private InsertedFact(final FactHandle handle, final long insertTime) {
+            m_handle = handle;
+            m_insertTime = insertTime;
+        }
+    }
+
+    private final class Partition implements Runnable {
+        private final int m_index;
+        private final WorkingMemory m_workingMemory;
+        private final BlockingQueue<Object> m_queue;
+        private final Deque<InsertedFact> m_insertedFacts = new ArrayDeque<>();
+        private final Thread m_thread;
+        private volatile boolean m_running = true;
+
+        private Partition(final int index, final WorkingMemory workingMemory) {
+            m_index = index;
+            m_workingMemory = workingMemory;
+            m_queue = new LinkedBlockingQueue<>(m_queueSize);
+            m_thread = new Thread(this, getName() + "-correlation-" + index);
+            m_thread.setDaemon(true);
+        }
+
+        public int getIndex() {
+            return m_index;
+        }
+
+        public WorkingMemory getWorkingMemory() {
+            return m_workingMemory;
+        }
+
+        public BlockingQueue<Object> getQueue() {
+            return m_queue;
+        }
+
+        public void start() {
+            m_thread.start();
+        }
+
+        public void stop() {
+            m_running = false;
+            m_thread.interrupt();
+        }
+
+        public void join(final long millis) throws InterruptedException {
+            m_thread.join(millis);
+        }
+
+        @Override
+        public void run() {
+            m_currentPartition.set(this);
+            final long pollMillis = m_factTtl > 0 ? Math.min(m_factTtl, IDLE_POLL_MILLIS) : IDLE_POLL_MILLIS;
+            final List<Object> batch = new ArrayList<>(m_batchSize);
+
+            while (m_running) {
+                try {
+                    final Object first = m_queue.poll(pollMillis, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        m_queue.drainTo(batch, m_batchSize - 1);
+                    }
+                    process(batch);
+                } catch (final InterruptedException e) {
+                    LOG.debug("Partition {} of engine {} interrupted", m_index, getName());
+                } catch (final Throwable t) {
+                    LOG.error("Correlation failed on partition {} of engine {}", m_index, getName(), t);
+                } finally {
+                    if (!batch.isEmpty()) {
+                        m_pending.addAndGet(-batch.size());
+                        batch.clear();
+                    }
+                }
+            }
+        }
+
+        private synchronized void process(final List<Object> batch) {
+            final long now = System.currentTimeMillis();
+            if (!batch.isEmpty()) {
+                LOG.debug("Begin correlation of {} facts on partition {}", batch.size(), m_index);
+                for (final Object fact : batch) {
+                    final FactHandle handle = m_workingMemory.insert(fact);
+                    if (m_factTtl > 0) {
+                        m_insertedFacts.addLast(new InsertedFact(handle, now));
+                    }
+                }
+                m_workingMemory.fireAllRules();
+                LOG.debug("End correlation of {} facts on partition {}", batch.size(), m_index);
+            }
+
+            if (m_factTtl > 0 && retractExpiredFacts(now - m_factTtl) > 0) {
+                m_workingMemory.fireAllRules();
+            }
+        }
+
+        private int retractExpiredFacts(final long expiredBefore) {
+            int retracted = 0;
+            while (!m_insertedFacts.isEmpty() && m_insertedFacts.peekFirst().m_insertTime <= expiredBefore) {
+                final FactHandle handle = m_insertedFacts.removeFirst().m_handle;
+                if (m_workingMemory.getObject(handle) != null) {
+                    m_workingMemory.retract(handle);
+                    retracted++;
+                }
+            }
+            if (retracted > 0) {
+                LOG.debug("Retracted {} expired facts from partition {}", retracted, m_index);
+            }
+            return retracted;
+        }
+    }
+}
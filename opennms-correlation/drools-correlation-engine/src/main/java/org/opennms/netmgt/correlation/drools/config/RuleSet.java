@@ -56,6 +56,7 @@ import org.opennms.core.utils.PropertiesUtils;
 import org.opennms.netmgt.correlation.CorrelationEngine;
 import org.opennms.netmgt.correlation.drools.ConfigFileApplicationContext;
 import org.opennms.netmgt.correlation.drools.DroolsCorrelationEngine;
+import org.opennms.netmgt.correlation.drools.PartitionedDroolsCorrelationEngine;
 import org.opennms.netmgt.events.api.EventIpcManager;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.io.Resource;
@@ -80,6 +81,18 @@ public class RuleSet implements Serializable {
 
     @XmlAttribute(name = "event-processing-mode")
     private String _eventProcessingMode;
+
+    @XmlAttribute(name = "partitions")
+    private Integer _partitions;
+
+    @XmlAttribute(name = "partition-key")
+    private String _partitionKey;
+
+    @XmlAttribute(name = "batch-size")
+    private Integer _batchSize;
+
+    @XmlAttribute(name = "fact-ttl")
+    private Long _factTtl;
     
     @XmlElement(name = "rule-file")
     private List<String> _ruleFileList;
@@ -115,6 +128,44 @@ public class RuleSet implements Serializable {
     public void setEventProcessingMode(String eventProcessingMode) {
         this._eventProcessingMode = eventProcessingMode;
     }
+
+    /**
+     * Returns the number of partitions, or null if the rule set runs in a
+     * single session.
+     *
+     * @return the value of field 'Partitions'.
+     */
+    public Integer getPartitions() {
+        return _partitions;
+    }
+
+    public void setPartitions(Integer partitions) {
+        this._partitions = partitions;
+    }
+
+    public String getPartitionKey() {
+        return _partitionKey == null ? PartitionedDroolsCorrelationEngine.DEFAULT_PARTITION_KEY : _partitionKey;
+    }
+
+    public void setPartitionKey(String partitionKey) {
+        this._partitionKey = partitionKey;
+    }
+
+    public int getBatchSize() {
+        return _batchSize == null ? PartitionedDroolsCorrelationEngine.DEFAULT_BATCH_SIZE : _batchSize;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this._batchSize = batchSize;
+    }
+
+    public long getFactTtl() {
+        return _factTtl == null ? 0 : _factTtl;
+    }
+
+    public void setFactTtl(Long factTtl) {
+        this._factTtl = factTtl;
+    }
     
     /**
      *
@@ -834,7 +885,17 @@ public class RuleSet implements Serializable {
     public CorrelationEngine constructEngine(Resource basePath, ApplicationContext appContext, EventIpcManager eventIpcManager) {
         final ApplicationContext configContext = new ConfigFileApplicationContext(basePath, getConfigLocation(), appContext);
 
-        final DroolsCorrelationEngine engine = new DroolsCorrelationEngine();
+        final DroolsCorrelationEngine engine;
+        if (getPartitions() == null) {
+            engine = new DroolsCorrelationEngine();
+        } else {
+            final PartitionedDroolsCorrelationEngine partitionedEngine = new PartitionedDroolsCorrelationEngine();
+            partitionedEngine.setPartitions(getPartitions());
+            partitionedEngine.setPartitionKey(getPartitionKey());
+            partitionedEngine.setBatchSize(getBatchSize());
+            partitionedEngine.setFactTtl(getFactTtl());
+            engine = partitionedEngine;
+        }
         engine.setName(getName());
         engine.setAssertBehaviour(getAssertBehaviour());
         engine.setEventProcessingMode(getEventProcessingMode());
@@ -847,6 +908,7 @@ public class RuleSet implements Serializable {
             engine.initialize();
             return engine;
         } catch (final Throwable e) {
+            engine.tearDown();
             throw new RuntimeException("Unable to initialize Drools engine " + getName(), e);
         }
     }
@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.correlation.drools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.netmgt.dao.mock.MockEventIpcManager;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+public class PartitionedDroolsCorrelationEngineTest {
+
+    private static final String RULES_DIR = "src/test/opennms-home/etc/drools-engine.d/";
+    private static final String WS_OUTAGE_UEI = "uei.opennms.org/correlation/remote/wideSpreadOutage";
+
+    private MockEventIpcManager m_eventIpcMgr;
+    private final List<DroolsCorrelationEngine> m_engines = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        m_eventIpcMgr = new MockEventIpcManager();
+    }
+
+    @After
+    public void tearDown() {
+        for (final DroolsCorrelationEngine engine : m_engines) {
+            engine.tearDown();
+        }
+    }
+
+    @Test
+    public void testWideSpreadOutagesOnSeveralPartitions() throws Exception {
+        final PartitionedDroolsCorrelationEngine engine = new PartitionedDroolsCorrelationEngine();
+        engine.setPartitions(4);
+        engine.setBatchSize(10);
+        initializeLocationMonitorEngine(engine);
+
+        for (int nodeId = 1; nodeId <= 8; nodeId++) {
+            m_eventIpcMgr.getEventAnticipator().anticipateEvent(createWideSpreadOutageEvent(nodeId));
+        }
+
+        for (int monitor = 7; monitor <= 9; monitor++) {
+            for (int nodeId = 1; nodeId <= 8; nodeId++) {
+                engine.correlate(createRemoteEvent(EventConstants.REMOTE_NODE_LOST_SERVICE_UEI, nodeId, monitor));
+            }
+        }
+        assertTrue(engine.waitForIdle(10, TimeUnit.SECONDS));
+
+        m_eventIpcMgr.getEventAnticipator().verifyAnticipated(0, 0, 0, 0, 0);
+        // one affliction and three flaps per node
+        assertEquals(32, engine.getMemorySize());
+
+        for (int monitor = 7; monitor <= 9; monitor++) {
+            for (int nodeId = 1; nodeId <= 8; nodeId++) {
+                engine.correlate(createRemoteEvent(EventConstants.REMOTE_NODE_REGAINED_SERVICE_UEI, nodeId, monitor));
+            }
+        }
+        assertTrue(engine.waitForIdle(10, TimeUnit.SECONDS));
+
+        // the flap timers must come back to the partition holding their flaps
+        Thread.sleep(1100);
+        assertTrue(engine.waitForIdle(10, TimeUnit.SECONDS));
+        assertEquals(engine.getMemoryObjects().toString(), 0, engine.getMemorySize());
+    }
+
+    @Test
+    public void testFactTtl() throws Exception {
+        final PartitionedDroolsCorrelationEngine engine = new PartitionedDroolsCorrelationEngine();
+        engine.setPartitions(2);
+        engine.setFactTtl(200);
+
+        final Map<String, Object> globals = new HashMap<>();
+        globals.put("PROVISIONING_GROUP", "ApplicationServers");
+        globals.put("SERVICE_NAME", "Tomcat");
+        initializeEngine(engine, "simpleRules/SimpleRules.drl", globals, EventConstants.NODE_LOST_SERVICE_EVENT_UEI);
+
+        engine.correlate(new EventBuilder(EventConstants.NODE_LOST_SERVICE_EVENT_UEI, "test").setNodeid(1).setService("Tomcat").getEvent());
+        engine.correlate(new EventBuilder(EventConstants.NODE_LOST_SERVICE_EVENT_UEI, "test").setNodeid(2).setService("Tomcat").getEvent());
+        assertTrue(engine.waitForIdle(10, TimeUnit.SECONDS));
+
+        // nothing in the rules retracts these events
+        assertEquals(2, engine.getMemorySize());
+
+        Thread.sleep(500);
+        assertEquals(0, engine.getMemorySize());
+    }
+
+    @Test
+    public void testFullPartitionDropsEvents() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final PartitionedDroolsCorrelationEngine engine = new PartitionedDroolsCorrelationEngine();
+        engine.setPartitions(1);
+        engine.setBatchSize(1);
+        engine.setQueueSize(2);
+
+        final Map<String, Object> globals = new HashMap<>();
+        globals.put("POLL_INTERVAL", 3000L);
+        globals.put("nodeService", new NodeService() {
+            @Override
+            public Long getParentNode(final Long nodeid) {
+                // hold the partition thread inside the rules until the test lets go
+                blocked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        });
+        initializeEngine(engine, "nodeParentRules/NodeParentRules.drl", globals, EventConstants.NODE_DOWN_EVENT_UEI, EventConstants.NODE_UP_EVENT_UEI);
+
+        engine.correlate(new EventBuilder(EventConstants.NODE_DOWN_EVENT_UEI, "test").setNodeid(1).getEvent());
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        // two events fit in the queue, the rest are dropped without waiting
+        final long start = System.currentTimeMillis();
+        for (int nodeId = 2; nodeId <= 11; nodeId++) {
+            engine.correlate(new EventBuilder(EventConstants.NODE_DOWN_EVENT_UEI, "test").setNodeid(nodeId).getEvent());
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(8, engine.getDroppedFacts());
+
+        release.countDown();
+        assertTrue(engine.waitForIdle(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTearDownStopsPartitions() throws Exception {
+        final PartitionedDroolsCorrelationEngine engine = new PartitionedDroolsCorrelationEngine();
+        engine.setPartitions(3);
+        initializeLocationMonitorEngine(engine);
+        assertEquals(3, countPartitionThreads(engine));
+
+        engine.tearDown();
+        assertEquals(0, countPartitionThreads(engine));
+
+        // events that still arrive are ignored
+        engine.correlate(createRemoteEvent(EventConstants.REMOTE_NODE_LOST_SERVICE_UEI, 1, 7));
+        assertTrue(engine.waitForIdle(0, TimeUnit.SECONDS));
+        assertEquals(0, engine.getDroppedFacts());
+    }
+
+    private static int countPartitionThreads(final DroolsCorrelationEngine engine) {
+        int count = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith(engine.getName() + "-correlation-")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testPartitionKeyFromParameter() throws Exception {
+        final PartitionedDroolsCorrelationEngine engine = new PartitionedDroolsCorrelationEngine();
+        engine.setPartitionKey(EventConstants.PARM_LOCATION_MONITOR_ID);
+
+        assertEquals("7", engine.getPartitionKey(createRemoteEvent(EventConstants.REMOTE_NODE_LOST_SERVICE_UEI, 1, 7)));
+        assertNull(engine.getPartitionKey(new EventBuilder(EventConstants.NODE_DOWN_EVENT_UEI, "test").getEvent()));
+
+        engine.setPartitionKey("nodeid");
+        assertEquals(Long.valueOf(1), engine.getPartitionKey(createRemoteEvent(EventConstants.REMOTE_NODE_LOST_SERVICE_UEI, 1, 7)));
+    }
+
+    /**
+     * Compares the single session engine with batched and partitioned
+     * engines on the bundled flap and root cause rule sets.  The root
+     * cause rules relate nodes to their parents so they can only use a
+     * single partition, which still gets the benefit of batching.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void testThroughput() throws Exception {
+        final int nodes = 1000;
+        final int rounds = 20;
+
+        final List<Event> flapEvents = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            for (int nodeId = 1; nodeId <= nodes; nodeId++) {
+                flapEvents.add(createRemoteEvent(EventConstants.REMOTE_NODE_LOST_SERVICE_UEI, nodeId, 7));
+                flapEvents.add(createRemoteEvent(EventConstants.REMOTE_NODE_REGAINED_SERVICE_UEI, nodeId, 7));
+            }
+        }
+        m_eventIpcMgr.getEventAnticipator().setDiscardUnanticipated(true);
+
+        System.err.printf("flap rules, %d events%n", flapEvents.size());
+        runFlapBenchmark("single session", new DroolsCorrelationEngine(), flapEvents);
+        runFlapBenchmark("1 partition", createPartitionedEngine(1, 100), flapEvents);
+        runFlapBenchmark("4 partitions", createPartitionedEngine(4, 100), flapEvents);
+        runFlapBenchmark("8 partitions", createPartitionedEngine(8, 100), flapEvents);
+
+        final List<Event> rootCauseEvents = new ArrayList<>();
+        for (int nodeId = 1; nodeId <= nodes; nodeId++) {
+            rootCauseEvents.add(new EventBuilder(EventConstants.NODE_DOWN_EVENT_UEI, "test").setNodeid(nodeId).getEvent());
+        }
+        for (int nodeId = 1; nodeId <= nodes; nodeId++) {
+            rootCauseEvents.add(new EventBuilder(EventConstants.NODE_UP_EVENT_UEI, "test").setNodeid(nodeId).getEvent());
+        }
+
+        System.err.printf("root cause rules, %d events%n", rootCauseEvents.size());
+        runRootCauseBenchmark("single session", new DroolsCorrelationEngine(), rootCauseEvents);
+        runRootCauseBenchmark("1 partition", createPartitionedEngine(1, 100), rootCauseEvents);
+    }
+
+    private PartitionedDroolsCorrelationEngine createPartitionedEngine(final int partitions, final int batchSize) {
+        final PartitionedDroolsCorrelationEngine engine = new PartitionedDroolsCorrelationEngine();
+        engine.setPartitions(partitions);
+        engine.setBatchSize(batchSize);
+        return engine;
+    }
+
+    private void runFlapBenchmark(final String name, final DroolsCorrelationEngine engine, final List<Event> events) throws Exception {
+        initializeLocationMonitorEngine(engine);
+        runBenchmark(name, engine, events);
+    }
+
+    private void runRootCauseBenchmark(final String name, final DroolsCorrelationEngine engine, final List<Event> events) throws Exception {
+        final Map<String, Object> globals = new HashMap<>();
+        globals.put("POLL_INTERVAL", 3000L);
+        globals.put("nodeService", new NodeService() {
+            @Override
+            public Long getParentNode(final Long nodeid) {
+                return nodeid > 10 ? nodeid / 10 : null;
+            }
+        });
+        initializeEngine(engine, "nodeParentRules/NodeParentRules.drl", globals, EventConstants.NODE_DOWN_EVENT_UEI, EventConstants.NODE_UP_EVENT_UEI);
+        runBenchmark(name, engine, events);
+    }
+
+    private void runBenchmark(final String name, final DroolsCorrelationEngine engine, final List<Event> events) throws Exception {
+        final long start = System.nanoTime();
+        for (final Event event : events) {
+            engine.correlate(event);
+        }
+        if (engine instanceof PartitionedDroolsCorrelationEngine) {
+            assertTrue(((PartitionedDroolsCorrelationEngine) engine).waitForIdle(5, TimeUnit.MINUTES));
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.err.printf("  %-15s %6dms %8.0f events/s%n", name, elapsed, events.size() * 1000.0 / Math.max(elapsed, 1));
+    }
+
+    private void initializeLocationMonitorEngine(final DroolsCorrelationEngine engine) throws Exception {
+        final Map<String, Object> globals = new HashMap<>();
+        globals.put("WIDE_SPREAD_THRESHOLD", 3);
+        globals.put("FLAP_INTERVAL", 1000L);
+        globals.put("FLAP_COUNT", 3);
+        initializeEngine(engine, "locationMonitorRules/LocationMonitorRules.drl", globals, EventConstants.REMOTE_NODE_LOST_SERVICE_UEI, EventConstants.REMOTE_NODE_REGAINED_SERVICE_UEI);
+    }
+
+    private void initializeEngine(final DroolsCorrelationEngine engine, final String rulesFile, final Map<String, Object> globals, final String... ueis) throws Exception {
+        engine.setName(rulesFile.substring(0, rulesFile.indexOf('/')));
+        engine.setEventIpcManager(m_eventIpcMgr);
+        engine.setScheduler(new ScheduledThreadPoolExecutor(1));
+        engine.setInterestingEvents(Arrays.asList(ueis));
+        engine.setRulesResources(Collections.<Resource>singletonList(new FileSystemResource(RULES_DIR + rulesFile)));
+        engine.setGlobals(globals);
+        engine.initialize();
+        m_engines.add(engine);
+    }
+
+    private Event createRemoteEvent(final String uei, final int nodeId, final int locationMonitor) {
+        return new EventBuilder(uei, "test")
+            .setNodeid(nodeId).setInterface(addr("192.168.1.1"))
+            .setService("HTTP")
+            .addParam(EventConstants.PARM_LOCATION_MONITOR_ID, locationMonitor)
+            .getEvent();
+    }
+
+    private Event createWideSpreadOutageEvent(final int nodeId) {
+        return new EventBuilder(WS_OUTAGE_UEI, "Drools")
+            .setNodeid(nodeId).setInterface(addr("192.168.1.1"))
+            .setService("HTTP")
+            .getEvent();
+    }
+}
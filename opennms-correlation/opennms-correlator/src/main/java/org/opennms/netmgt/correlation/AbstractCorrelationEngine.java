@@ -108,6 +108,17 @@ public abstract class AbstractCorrelationEngine implements CorrelationEngine {
         }
     }
     
+    /**
+     * Cancels the timers still pending.  The scheduler is injected and may be
+     * shared, so it is left running.
+     */
+    @Override
+    public void tearDown() {
+        for (final Integer timerId : m_pendingTasks.keySet()) {
+            cancelTimer(timerId);
+        }
+    }
+
     /**
      * <p>timerExpired</p>
      *
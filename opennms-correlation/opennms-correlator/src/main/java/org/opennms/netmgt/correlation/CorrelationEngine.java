@@ -61,4 +61,10 @@ public interface CorrelationEngine {
 	 */
 	void correlate(Event e);
 
+	/**
+	 * Releases the threads and timers of the engine.  The engine receives
+	 * no more events afterwards.
+	 */
+	void tearDown();
+
 }
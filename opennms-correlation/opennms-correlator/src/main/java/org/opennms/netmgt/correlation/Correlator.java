@@ -74,6 +74,11 @@ public class Correlator extends AbstractServiceDaemon implements CorrelationEngi
 		public void onEvent(final Event e) {
 			m_engine.correlate(e);
 		}
+
+		public void tearDown() {
+			m_eventIpcManager.removeEventListener(this);
+			m_engine.tearDown();
+		}
 		
 	}
 
@@ -99,6 +104,15 @@ public class Correlator extends AbstractServiceDaemon implements CorrelationEngi
 		
 	}
 
+	@Override
+	protected void onStop() {
+		for (final EngineAdapter adapter : m_adapters) {
+			LOG.info("Stopping correlation engine: {}", adapter.getName());
+			adapter.tearDown();
+		}
+		m_adapters.clear();
+	}
+
 	/**
 	 * <p>setCorrelationEngines</p>
 	 *
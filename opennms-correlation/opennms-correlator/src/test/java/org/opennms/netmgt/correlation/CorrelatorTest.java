@@ -77,6 +77,9 @@ public class CorrelatorTest extends TestCase {
 		
 		expect(m_engine.getInterestingEvents()).andReturn(interestingEvents);
 		m_eventIpcManager.addEventListener(isA(EventListener.class), same(interestingEvents));
+		// stopping the correlator unregisters the engine and tears it down
+		m_eventIpcManager.removeEventListener(isA(EventListener.class));
+		m_engine.tearDown();
 
 		replayMocks();
 		
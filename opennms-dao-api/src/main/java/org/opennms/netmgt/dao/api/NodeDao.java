@@ -234,6 +234,18 @@ public interface NodeDao extends LegacyOnmsDao<OnmsNode, Integer> {
 
     SurveillanceStatus findSurveillanceStatusByCategoryLists(Collection<OnmsCategory> rowCategories, Collection<OnmsCategory> columnCategories);
 
+    /**
+     * Calculates the status of every cell of a surveillance view at once.
+     * The cell at <code>[row][column]</code> is the status
+     * {@link #findSurveillanceStatusByCategoryLists(Collection, Collection)}
+     * would return for the categories of that row and column.
+     *
+     * @param rowCategories the categories of each row
+     * @param columnCategories the categories of each column
+     * @return the status of each cell, indexed by row and then column
+     */
+    SurveillanceStatus[][] findSurveillanceStatusByCategoryMatrix(List<? extends Collection<OnmsCategory>> rowCategories, List<? extends Collection<OnmsCategory>> columnCategories);
+
     Integer getNextNodeId (Integer nodeId);
 
     Integer getPreviousNodeId (Integer nodeId);
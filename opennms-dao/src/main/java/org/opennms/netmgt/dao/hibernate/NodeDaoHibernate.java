@@ -36,8 +36,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
@@ -325,6 +327,108 @@ public class NodeDaoHibernate extends AbstractDaoHibernate<OnmsNode, Integer> im
     }
 
 
+    @Override
+    public SurveillanceStatus[][] findSurveillanceStatusByCategoryMatrix(final List<? extends Collection<OnmsCategory>> rowCategories, final List<? extends Collection<OnmsCategory>> columnCategories) {
+        final Set<Integer> categoryIds = new HashSet<Integer>();
+        final Map<Integer, List<Integer>> rowsByCategory = indexCategories(rowCategories, categoryIds);
+        final Map<Integer, List<Integer>> columnsByCategory = indexCategories(columnCategories, categoryIds);
+
+        final int[][] serviceOutages = new int[rowCategories.size()][columnCategories.size()];
+        final int[][] upNodeCount = new int[rowCategories.size()][columnCategories.size()];
+        final int[][] nodeCount = new int[rowCategories.size()][columnCategories.size()];
+
+        if (!categoryIds.isEmpty()) {
+            // one row per (node, category) pair, carrying the per node outage counts
+            final List<Object[]> rows = getHibernateTemplate().execute(new HibernateCallback<List<Object[]>>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public List<Object[]> doInHibernate(Session session) throws HibernateException, SQLException {
+                    return (List<Object[]>)session.createSQLQuery("select" +
+                            " cn.nodeid, cn.categoryid, svc.svcCount, svc.upSvcCount" +
+                            " from category_node cn" +
+                            " join (select node.nodeid," +
+                            "  count(distinct case when outages.outageid is not null and monSvc.status = 'A' then monSvc.id else null end) as svcCount," +
+                            "  count(distinct case when outages.outageid is null and monSvc.status = 'A' then monSvc.id else null end) as upSvcCount" +
+                            "  from node" +
+                            "  left outer join ipinterface ip using (nodeid)" +
+                            "  left outer join ifservices monsvc on (monsvc.ipinterfaceid = ip.id)" +
+                            "  left outer join outages on (outages.ifserviceid = monsvc.id and outages.ifregainedservice is null)" +
+                            "  where nodeType <> 'D'" +
+                            "  and node.nodeid in (select nodeid from category_node where categoryid in (:categories))" +
+                            "  group by node.nodeid) svc on (svc.nodeid = cn.nodeid)" +
+                            " where cn.categoryid in (:categories)" +
+                            " order by cn.nodeid"
+                            )
+                            .setParameterList("categories", categoryIds)
+                            .list();
+                }
+            });
+
+            final Set<Integer> nodeRows = new HashSet<Integer>();
+            final Set<Integer> nodeColumns = new HashSet<Integer>();
+            Integer currentNode = null;
+            int currentOutages = 0;
+            boolean currentUp = false;
+
+            for (final Object[] row : rows) {
+                final Integer nodeId = ((Number)row[0]).intValue();
+                if (!nodeId.equals(currentNode)) {
+                    addToMatrix(nodeRows, nodeColumns, currentOutages, currentUp, serviceOutages, upNodeCount, nodeCount);
+                    nodeRows.clear();
+                    nodeColumns.clear();
+                    currentNode = nodeId;
+                    currentOutages = ((Number)row[2]).intValue();
+                    currentUp = ((Number)row[3]).intValue() > 0;
+                }
+                final Integer categoryId = ((Number)row[1]).intValue();
+                if (rowsByCategory.containsKey(categoryId)) {
+                    nodeRows.addAll(rowsByCategory.get(categoryId));
+                }
+                if (columnsByCategory.containsKey(categoryId)) {
+                    nodeColumns.addAll(columnsByCategory.get(categoryId));
+                }
+            }
+            addToMatrix(nodeRows, nodeColumns, currentOutages, currentUp, serviceOutages, upNodeCount, nodeCount);
+        }
+
+        final SurveillanceStatus[][] status = new SurveillanceStatus[rowCategories.size()][columnCategories.size()];
+        for (int row = 0; row < status.length; row++) {
+            for (int column = 0; column < status[row].length; column++) {
+                status[row][column] = new SimpleSurveillanceStatus(serviceOutages[row][column], upNodeCount[row][column], nodeCount[row][column]);
+            }
+        }
+        return status;
+    }
+
+    private static Map<Integer, List<Integer>> indexCategories(final List<? extends Collection<OnmsCategory>> categoryLists, final Set<Integer> categoryIds) {
+        final Map<Integer, List<Integer>> index = new HashMap<Integer, List<Integer>>();
+        for (int i = 0; i < categoryLists.size(); i++) {
+            for (final OnmsCategory category : categoryLists.get(i)) {
+                List<Integer> positions = index.get(category.getId());
+                if (positions == null) {
+                    positions = new ArrayList<Integer>();
+                    index.put(category.getId(), positions);
+                }
+                positions.add(i);
+                categoryIds.add(category.getId());
+            }
+        }
+        return index;
+    }
+
+    private static void addToMatrix(final Set<Integer> nodeRows, final Set<Integer> nodeColumns, final int outages, final boolean up, final int[][] serviceOutages, final int[][] upNodeCount, final int[][] nodeCount) {
+        for (final Integer row : nodeRows) {
+            for (final Integer column : nodeColumns) {
+                serviceOutages[row][column] += outages;
+                if (up) {
+                    upNodeCount[row][column]++;
+                }
+                nodeCount[row][column]++;
+            }
+        }
+    }
+
+
     /** {@inheritDoc} */
     @SuppressWarnings("unchecked")
     @Override
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.dao.hibernate;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.exception.JDBCExceptionHelper;
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.SequenceGenerator;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A sequence generator that fetches <code>pool_size</code> values from the
+ * sequence in a single round trip and hands them out one at a time.
+ *
+ * <p>Unlike a hi/lo scheme every identifier is a real value of the sequence,
+ * so rows inserted by Hibernate can never collide with rows inserted through
+ * JDBC or a <code>DEFAULT nextval(...)</code> column. Identifiers are no
+ * longer strictly increasing in insert order across generators that share a
+ * sequence, and values left in the pool at shutdown are never used.</p>
+ *
+ * <p>Pooling needs PostgreSQL's <code>generate_series</code>; with any other
+ * dialect, or with a pool size of 1, this behaves like
+ * {@link SequenceGenerator}.</p>
+ */
+public class PooledSequenceGenerator extends SequenceGenerator {
+    private static final Logger LOG = LoggerFactory.getLogger(PooledSequenceGenerator.class);
+
+    /**
+     * The generator parameter holding the number of values to fetch at once.
+     */
+    public static final String POOL_SIZE = "pool_size";
+
+    private Type m_identifierType;
+    private int m_poolSize = 1;
+    private String m_poolSql;
+
+    private long[] m_values = new long[0];
+    private int m_next = 0;
+
+    /** {@inheritDoc} */
+    @Override
+    public void configure(final Type type, final Properties params, final Dialect dialect) throws MappingException {
+        super.configure(type, params, dialect);
+        m_identifierType = type;
+
+        final String poolSize = params.getProperty(POOL_SIZE);
+        if (poolSize != null) {
+            try {
+                m_poolSize = Integer.parseInt(poolSize.trim());
+            } catch (final NumberFormatException e) {
+                throw new MappingException("Invalid " + POOL_SIZE + " '" + poolSize + "' for sequence " + getSequenceName(), e);
+            }
+        }
+
+        if (m_poolSize > 1 && dialect instanceof PostgreSQLDialect) {
+            m_poolSql = "select nextval('" + getSequenceName() + "') from generate_series(1, " + m_poolSize + ")";
+        } else if (m_poolSize > 1) {
+            LOG.info("Sequence pooling is not supported by {}; sequence {} will be read one value at a time.", dialect.getClass().getSimpleName(), getSequenceName());
+        }
+    }
+
+    /**
+     * <p>getPoolSize</p>
+     *
+     * @return the number of values fetched per round trip
+     */
+    public int getPoolSize() {
+        return m_poolSql == null ? 1 : m_poolSize;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized Serializable generate(final SessionImplementor session, final Object obj) throws HibernateException {
+        if (m_poolSql == null) {
+            return super.generate(session, obj);
+        }
+
+        if (m_next >= m_values.length) {
+            m_values = fetchValues(session);
+            m_next = 0;
+        }
+
+        return IdentifierGeneratorHelper.getIntegralDataTypeHolder(m_identifierType.getReturnedClass())
+            .initialize(m_values[m_next++])
+            .makeValue();
+    }
+
+    private long[] fetchValues(final SessionImplementor session) throws HibernateException {
+        try {
+            final PreparedStatement st = session.getBatcher().prepareSelectStatement(m_poolSql);
+            try {
+                final ResultSet rs = st.executeQuery();
+                try {
+                    final long[] values = new long[m_poolSize];
+                    int count = 0;
+                    while (count < values.length && rs.next()) {
+                        values[count++] = rs.getLong(1);
+                    }
+                    if (count == 0) {
+                        throw new HibernateException("Sequence " + getSequenceName() + " returned no values");
+                    }
+                    LOG.trace("Fetched {} values from sequence {}", count, getSequenceName());
+                    if (count < values.length) {
+                        final long[] fetched = new long[count];
+                        System.arraycopy(values, 0, fetched, 0, count);
+                        return fetched;
+                    }
+                    return values;
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                session.getBatcher().closeStatement(st);
+            }
+        } catch (final SQLException e) {
+            throw JDBCExceptionHelper.convert(session.getFactory().getSQLExceptionConverter(), e, "could not get next sequence values", m_poolSql);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.dao.hibernate;
+
+import java.util.Iterator;
+import java.util.Properties;
+
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.id.SequenceGenerator;
+import org.hibernate.mapping.KeyValue;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.SimpleValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.orm.hibernate3.annotation.AnnotationSessionFactoryBean;
+
+/**
+ * An {@link AnnotationSessionFactoryBean} that switches the identifiers of
+ * every sequence-backed entity to {@link PooledSequenceGenerator} when
+ * <code>idPoolSize</code> is greater than 1.
+ *
+ * <p>The entities keep their <code>@SequenceGenerator</code> annotations;
+ * only the generator that reads the sequence changes, so the pool size can be
+ * tuned per installation without touching the model.</p>
+ */
+public class PooledSequenceSessionFactoryBean extends AnnotationSessionFactoryBean {
+    private static final Logger LOG = LoggerFactory.getLogger(PooledSequenceSessionFactoryBean.class);
+
+    private int m_idPoolSize = 1;
+
+    /**
+     * <p>setIdPoolSize</p>
+     *
+     * @param idPoolSize the number of identifiers to fetch from a sequence at once
+     */
+    public void setIdPoolSize(final int idPoolSize) {
+        m_idPoolSize = idPoolSize;
+    }
+
+    /**
+     * <p>getIdPoolSize</p>
+     *
+     * @return the number of identifiers fetched from a sequence at once
+     */
+    public int getIdPoolSize() {
+        return m_idPoolSize;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void postProcessConfiguration(final Configuration config) throws HibernateException {
+        super.postProcessConfiguration(config);
+
+        if (m_idPoolSize <= 1) {
+            return;
+        }
+
+        int pooled = 0;
+        for (final Iterator<?> it = config.getClassMappings(); it.hasNext(); ) {
+            final PersistentClass persistentClass = (PersistentClass) it.next();
+            if (usePooledSequence(persistentClass.getIdentifier())) {
+                LOG.debug("Allocating {} identifiers per round trip for {}", m_idPoolSize, persistentClass.getEntityName());
+                pooled++;
+            }
+        }
+        LOG.info("Allocating {} identifiers per round trip for {} sequence-backed entities", m_idPoolSize, pooled);
+    }
+
+    private boolean usePooledSequence(final KeyValue identifier) {
+        if (!(identifier instanceof SimpleValue)) {
+            return false;
+        }
+
+        final SimpleValue id = (SimpleValue) identifier;
+        final String strategy = id.getIdentifierGeneratorStrategy();
+        final Properties params = id.getIdentifierGeneratorProperties();
+
+        // @SequenceGenerator without an explicit strategy is mapped to "native",
+        // which is a plain sequence on PostgreSQL
+        if (params == null || params.getProperty(SequenceGenerator.SEQUENCE) == null) {
+            return false;
+        }
+        if (!"native".equals(strategy) && !"sequence".equals(strategy)) {
+            return false;
+        }
+
+        final Properties pooledParams = new Properties();
+        pooledParams.putAll(params);
+        pooledParams.setProperty(PooledSequenceGenerator.POOL_SIZE, Integer.toString(m_idPoolSize));
+        id.setIdentifierGeneratorStrategy(PooledSequenceGenerator.class.getName());
+        id.setIdentifierGeneratorProperties(pooledParams);
+        return true;
+    }
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.dao.hibernate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventIpcManager;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Evicts the second-level cache regions of slowly changing reference
+ * entities (service types, categories, distributed pollers) when an event
+ * reports that they may have been changed outside of Hibernate, for example
+ * by a provisioning import or a configuration reload.
+ *
+ * <p>Changes made through the DAOs already keep the cache current; this only
+ * covers the writers that bypass the session factory.</p>
+ */
+public class ReferenceEntityCacheInvalidator implements EventListener, InitializingBean, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReferenceEntityCacheInvalidator.class);
+
+    /**
+     * Events after which the cached reference entities are evicted.
+     */
+    protected static final List<String> INVALIDATING_UEIS = Arrays.asList(
+        EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI,
+        EventConstants.IMPORT_SUCCESSFUL_UEI,
+        EventConstants.RELOAD_DAEMON_CONFIG_UEI
+    );
+
+    private SessionFactory m_sessionFactory;
+    private EventIpcManager m_eventIpcManager;
+    private List<Class<?>> m_entityClasses = new ArrayList<Class<?>>();
+
+    /**
+     * <p>setSessionFactory</p>
+     *
+     * @param sessionFactory the session factory whose cache is evicted
+     */
+    public void setSessionFactory(final SessionFactory sessionFactory) {
+        m_sessionFactory = sessionFactory;
+    }
+
+    /**
+     * <p>setEventIpcManager</p>
+     *
+     * @param eventIpcManager the manager to receive invalidating events from
+     */
+    public void setEventIpcManager(final EventIpcManager eventIpcManager) {
+        m_eventIpcManager = eventIpcManager;
+    }
+
+    /**
+     * <p>setEntityClasses</p>
+     *
+     * @param entityClasses the cached entities to evict
+     */
+    public void setEntityClasses(final List<Class<?>> entityClasses) {
+        m_entityClasses = entityClasses;
+    }
+
+    /**
+     * <p>getEntityClasses</p>
+     *
+     * @return the cached entities that are evicted
+     */
+    public List<Class<?>> getEntityClasses() {
+        return m_entityClasses;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(m_sessionFactory, "sessionFactory property must be set");
+        Assert.notNull(m_eventIpcManager, "eventIpcManager property must be set");
+        m_eventIpcManager.addEventListener(this, INVALIDATING_UEIS);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void destroy() {
+        if (m_eventIpcManager != null) {
+            m_eventIpcManager.removeEventListener(this);
+        }
+    }
+
+    /**
+     * Evicts every configured entity from the second-level cache.
+     */
+    public void evict() {
+        for (final Class<?> entityClass : m_entityClasses) {
+            m_sessionFactory.getCache().evictEntityRegion(entityClass);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return "Hibernate:ReferenceEntityCacheInvalidator";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onEvent(final Event event) {
+        LOG.debug("Evicting cached {} after {}", m_entityClasses, event.getUei());
+        evict();
+    }
+}
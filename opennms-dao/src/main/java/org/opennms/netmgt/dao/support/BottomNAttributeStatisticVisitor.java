@@ -31,6 +31,8 @@ package org.opennms.netmgt.dao.support;
 import java.util.Comparator;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.opennms.netmgt.model.AttributeStatistic;
 import org.opennms.netmgt.model.AttributeStatisticVisitorWithResults;
@@ -47,7 +49,13 @@ import org.springframework.util.Assert;
 public class BottomNAttributeStatisticVisitor implements AttributeStatisticVisitorWithResults, InitializingBean {
 
     private Integer m_count;
-    private SortedSet<AttributeStatistic> m_results = new TreeSet<AttributeStatistic>(new AttributeStatisticComparator());
+
+    /*
+     * One bounded partial result set per visiting thread.  When the
+     * statistics are computed in parallel each worker only touches its own
+     * set, and the partial sets are folded together in getResults().
+     */
+    private final ConcurrentMap<Thread, SortedSet<AttributeStatistic>> m_partialResults = new ConcurrentHashMap<Thread, SortedSet<AttributeStatistic>>();
     protected Comparator<Double> m_comparator = new DoubleComparator();
 
     /**
@@ -61,8 +69,20 @@ public class BottomNAttributeStatisticVisitor implements AttributeStatisticVisit
     @Override
     public void visit(OnmsAttribute attribute, double statistic) {
         Assert.notNull(attribute, "attribute argument must not be null");
-        
-        m_results.add(new AttributeStatistic(attribute, statistic));
+
+        final Thread current = Thread.currentThread();
+        SortedSet<AttributeStatistic> results = m_partialResults.get(current);
+        if (results == null) {
+            results = new TreeSet<AttributeStatistic>(new AttributeStatisticComparator());
+            m_partialResults.put(current, results);
+        }
+
+        results.add(new AttributeStatistic(attribute, statistic));
+
+        // We only ever report the first getCount() entries, so don't hang on to the rest
+        if (m_count != null && results.size() > m_count) {
+            results.remove(results.last());
+        }
     }
 
     /**
@@ -98,9 +118,14 @@ public class BottomNAttributeStatisticVisitor implements AttributeStatisticVisit
      */
     @Override
     public SortedSet<AttributeStatistic> getResults() {
+        SortedSet<AttributeStatistic> merged = new TreeSet<AttributeStatistic>(new AttributeStatisticComparator());
+        for (SortedSet<AttributeStatistic> partial : m_partialResults.values()) {
+            merged.addAll(partial);
+        }
+
         SortedSet<AttributeStatistic> top = new TreeSet<AttributeStatistic>(new AttributeStatisticComparator());
         
-        for (AttributeStatistic stat : m_results) {
+        for (AttributeStatistic stat : merged) {
             top.add(stat);
             
             if (top.size() >= m_count) {
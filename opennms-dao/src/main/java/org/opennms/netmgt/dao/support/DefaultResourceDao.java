@@ -29,7 +29,6 @@
 package org.opennms.netmgt.dao.support;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.UndeclaredThrowableException;
@@ -39,7 +38,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -67,6 +65,7 @@ import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.rrd.RrdFileConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.orm.ObjectRetrievalFailureException;
 import org.springframework.util.Assert;
@@ -78,7 +77,7 @@ import org.springframework.util.Assert;
  * @author <a href="mailto:larry@opennms.org">Lawrence Karnowski </a>
  * @author <a href="mailto:dj@opennms.org">DJ Gregor</a>
  */
-public class DefaultResourceDao implements ResourceDao, InitializingBean {
+public class DefaultResourceDao implements ResourceDao, InitializingBean, DisposableBean {
     
     private static final Logger LOG = LoggerFactory.getLogger(DefaultResourceDao.class);
 
@@ -97,6 +96,9 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     private NodeResourceType m_nodeResourceType;
     private DomainResourceType m_domainResourceType;
     private NodeSourceResourceType m_nodeSourceResourceType;
+
+    private long m_resourceIndexRefreshInterval = ResourceDirectoryIndex.DEFAULT_REFRESH_INTERVAL;
+    private ResourceDirectoryIndex m_resourceIndex;
     
     /**
      * <p>Constructor for DefaultResourceDao.</p>
@@ -213,6 +215,24 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
         m_ipInterfaceDao = ipInterfaceDao;
     }
 
+    /**
+     * <p>setResourceIndexRefreshInterval</p>
+     *
+     * @param refreshInterval milliseconds between full scans of the RRD directory
+     */
+    public void setResourceIndexRefreshInterval(long refreshInterval) {
+        m_resourceIndexRefreshInterval = refreshInterval;
+    }
+
+    /**
+     * <p>getResourceIndex</p>
+     *
+     * @return the index of top-level resource directories
+     */
+    public ResourceDirectoryIndex getResourceIndex() {
+        return m_resourceIndex;
+    }
+
     /**
      * <p>afterPropertiesSet</p>
      *
@@ -241,6 +261,19 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
         }
 
         initResourceTypes();
+        m_resourceIndex = new ResourceDirectoryIndex(m_rrdDirectory, m_resourceIndexRefreshInterval);
+    }
+
+    /**
+     * <p>destroy</p>
+     *
+     * @throws java.io.IOException if any.
+     */
+    @Override
+    public void destroy() throws IOException {
+        if (m_resourceIndex != null) {
+            m_resourceIndex.close();
+        }
     }
     
 
@@ -505,10 +538,10 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     protected List<OnmsResource> findNodeResources() {
         List<OnmsResource> resources = new LinkedList<OnmsResource>();
 
-        Set<Integer> snmpNodes = findSnmpNodeDirectories();
+        Set<Integer> snmpNodes = m_resourceIndex.getSnmpNodes();
         Set<String> nodeSources = findNodeSourceDirectories();
-        Set<String> responseTimeInterfaces = findChildrenMatchingFilter(new File(getRrdDirectory(), ResourceTypeUtils.RESPONSE_DIRECTORY), RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
-        Set<String> distributedResponseTimeInterfaces = findChildrenChildrenMatchingFilter(new File(new File(getRrdDirectory(), ResourceTypeUtils.RESPONSE_DIRECTORY), "distributed"), RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+        Set<String> responseTimeInterfaces = m_resourceIndex.getResponseTimeInterfaces();
+        Set<String> distributedResponseTimeInterfaces = m_resourceIndex.getDistributedResponseTimeInterfaces();
 
         List<OnmsNode> nodes = m_nodeDao.findAll();
         Set<Integer> nodesFound = new TreeSet<Integer>();
@@ -562,16 +595,10 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     public List<OnmsResource> findDomainResources() {
         List<OnmsResource> resources = new LinkedList<OnmsResource>();
         
-        File snmp = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY);
-
-        // Get all of the non-numeric directory names in the RRD directory; these
-        // are the names of the domains that have performance data
-        File[] domainDirs = snmp.listFiles(RrdFileConstants.DOMAIN_DIRECTORY_FILTER);
-
-        if (domainDirs != null && domainDirs.length > 0) {
-            for (File domainDir : domainDirs) {
-                resources.add(m_domainResourceType.createChildResource(domainDir.getName()));
-            }
+        // The non-numeric directory names in the RRD directory are the names
+        // of the domains that have performance data
+        for (String domain : new TreeSet<String>(m_resourceIndex.getDomains())) {
+            resources.add(m_domainResourceType.createChildResource(domain));
         }
         
         return resources;
@@ -610,7 +637,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     protected OnmsResource getForeignSourceNodeEntityResource(String resource) {
         
         File idDir = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY + File.separator + ResourceTypeUtils.getRelativeNodeSourceDirectory(resource).toString());
-        if (idDir.isDirectory() && RrdFileConstants.NODESOURCE_DIRECTORY_FILTER.accept(idDir)) {
+        if (m_resourceIndex.getNodeSources().contains(resource) || (idDir.isDirectory() && RrdFileConstants.NODESOURCE_DIRECTORY_FILTER.accept(idDir))) {
             return m_nodeSourceResourceType.createChildResource(resource);
         } else {
            LOG.debug("resource {} not found by foreign source/foreignId. Trying as a node resource instead...", resource);
@@ -647,96 +674,13 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
         return m_domainResourceType.createChildResource(domain);
     }
 
-    private Set<Integer> findSnmpNodeDirectories() {
-        Set<Integer> nodes = new TreeSet<Integer>();
-        
-        File directory = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY);
-        File[] nodeDirs = directory.listFiles(RrdFileConstants.NODE_DIRECTORY_FILTER);
-
-        if (nodeDirs == null || nodeDirs.length == 0) {
-            return nodes;
-        }
-
-        for (File nodeDir : nodeDirs) {
-            try {
-                Integer nodeId = Integer.valueOf(nodeDir.getName());
-                nodes.add(nodeId);
-            } catch (NumberFormatException e) {
-                // skip... don't add
-            }
-        }
-        
-        return nodes;
-    }
-    
     /**
      * <p>findNodeSourceDirectories</p>
      *
      * @return a Set<String> of directory names.
      */
     protected Set<String> findNodeSourceDirectories() {
-       Set<String> nodeSourceDirectories = new HashSet<String>();
-       File snmpDir = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY);
-       File forSrcDir = new File(snmpDir, ResourceTypeUtils.FOREIGN_SOURCE_DIRECTORY);
-       File[] sourceDirs = forSrcDir.listFiles(); // TODO There is no need to filter by RrdFileConstants.SOURCE_DIRECTORY_FILTER
-       if (sourceDirs != null && sourceDirs.length > 0) {
-           for (File sourceDir : sourceDirs) {
-               File [] ids = sourceDir.listFiles(RrdFileConstants.NODESOURCE_DIRECTORY_FILTER);
-               for (File id : ids) {
-                   nodeSourceDirectories.add(sourceDir.getName() + ":" + id.getName());
-               }
-           }
-       }
-       
-       return nodeSourceDirectories;
-       
-    }
-
-    private static Set<String> findChildrenMatchingFilter(File directory, FileFilter filter) {
-        Set<String> children = new HashSet<String>();
-        
-        File[] nodeDirs = directory.listFiles(filter);
-
-        if (nodeDirs == null || nodeDirs.length == 0) {
-            return children;
-        }
-
-        for (File nodeDir : nodeDirs) {
-            children.add(nodeDir.getName());
-        }
-        
-        return children;
-    }
-
-    /**
-     * 
-     * @param directory
-     * @param filter
-     * @return
-     * 
-     * XXX should include the location monitor in the returned data
-     */
-    private static Set<String> findChildrenChildrenMatchingFilter(File directory, FileFilter filter) {
-        Set<String> children = new HashSet<String>();
-        
-        File[] locationMonitorDirs = directory.listFiles();
-        if (locationMonitorDirs == null) {
-            return children;
-        }
-        
-        for (File locationMonitorDir : locationMonitorDirs) {
-            File[] intfDirs = locationMonitorDir.listFiles(filter);
-
-            if (intfDirs == null || intfDirs.length == 0) {
-                continue;
-            }
-
-            for (File intfDir : intfDirs) {
-                children.add(intfDir.getName());
-            }
-        }
-        
-        return children;
+        return m_resourceIndex.getNodeSources();
     }
 
     /**
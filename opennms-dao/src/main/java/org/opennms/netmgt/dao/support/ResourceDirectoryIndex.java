@@ -0,0 +1,411 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opennms.netmgt.model.ResourceTypeUtils;
+import org.opennms.netmgt.rrd.RrdFileConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the top-level resource directories below the RRD
+ * directory: SNMP node directories, store-by-foreign-source node directories,
+ * domain directories and (distributed) response time interface directories.
+ *
+ * <p>Evaluating the RRD directory filters requires listing every node and
+ * interface directory, which is very slow on large repositories. The index
+ * is built once by a parallel scan and then kept current in two ways:</p>
+ * <ul>
+ * <li>a {@link WatchService} on the top-level directories queues created and
+ * deleted entries, which are re-evaluated (at most every few seconds) the
+ * next time the index is read.  Newly created directories usually hold no
+ * RRD files yet, so they stay queued until they pass the filter;</li>
+ * <li>a full reconciliation scan runs in the background on access once the
+ * index is older than the refresh interval, which covers file systems where
+ * watching is not supported (NFS) and dropped watch events.</li>
+ * </ul>
+ */
+public class ResourceDirectoryIndex implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceDirectoryIndex.class);
+
+    /** Default interval between full reconciliation scans: 5 minutes. */
+    public static final long DEFAULT_REFRESH_INTERVAL = 300000L;
+
+    private static final long PENDING_CHECK_INTERVAL = 5000L;
+
+    private static final String DISTRIBUTED_DIRECTORY = "distributed";
+
+    private final File m_rrdDirectory;
+    private final File m_snmpDirectory;
+    private final File m_foreignSourceDirectory;
+    private final File m_responseDirectory;
+    private final File m_distributedDirectory;
+    private final long m_refreshInterval;
+
+    private volatile Snapshot m_snapshot;
+    private final AtomicBoolean m_rebuilding = new AtomicBoolean(false);
+
+    private final ConcurrentMap<File, Long> m_pending = new ConcurrentHashMap<File, Long>();
+    private volatile long m_lastPendingCheck = 0;
+
+    private final ConcurrentMap<WatchKey, File> m_watchedDirectories = new ConcurrentHashMap<WatchKey, File>();
+    private WatchService m_watcher;
+    private Thread m_watchThread;
+    private volatile boolean m_closed = false;
+
+    private static final class Snapshot {
+        final Set<Integer> snmpNodes = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        final Set<String> nodeSources = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final Set<String> domains = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final Set<String> responseTimeInterfaces = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final Set<String> distributedResponseTimeInterfaces = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final long builtAt = System.currentTimeMillis();
+    }
+
+    /**
+     * <p>Constructor for ResourceDirectoryIndex.</p>
+     *
+     * @param rrdDirectory the RRD base directory
+     * @param refreshInterval milliseconds between full reconciliation scans
+     */
+    public ResourceDirectoryIndex(final File rrdDirectory, final long refreshInterval) {
+        m_rrdDirectory = rrdDirectory;
+        m_snmpDirectory = new File(rrdDirectory, ResourceTypeUtils.SNMP_DIRECTORY);
+        m_foreignSourceDirectory = new File(m_snmpDirectory, ResourceTypeUtils.FOREIGN_SOURCE_DIRECTORY);
+        m_responseDirectory = new File(rrdDirectory, ResourceTypeUtils.RESPONSE_DIRECTORY);
+        m_distributedDirectory = new File(m_responseDirectory, DISTRIBUTED_DIRECTORY);
+        m_refreshInterval = refreshInterval;
+    }
+
+    /**
+     * @return node IDs that have a queryable directory below <code>snmp</code>
+     */
+    public Set<Integer> getSnmpNodes() {
+        return Collections.unmodifiableSet(current().snmpNodes);
+    }
+
+    /**
+     * @return "foreignSource:foreignId" keys that have a queryable directory below <code>snmp/fs</code>
+     */
+    public Set<String> getNodeSources() {
+        return Collections.unmodifiableSet(current().nodeSources);
+    }
+
+    /**
+     * @return names of queryable domain directories below <code>snmp</code>
+     */
+    public Set<String> getDomains() {
+        return Collections.unmodifiableSet(current().domains);
+    }
+
+    /**
+     * @return IP addresses that have response time data
+     */
+    public Set<String> getResponseTimeInterfaces() {
+        return Collections.unmodifiableSet(current().responseTimeInterfaces);
+    }
+
+    /**
+     * @return IP addresses that have distributed response time data for any location monitor
+     */
+    public Set<String> getDistributedResponseTimeInterfaces() {
+        return Collections.unmodifiableSet(current().distributedResponseTimeInterfaces);
+    }
+
+    /**
+     * Discard the current index; the next read rebuilds it synchronously.
+     */
+    public void invalidate() {
+        m_snapshot = null;
+    }
+
+    private Snapshot current() {
+        Snapshot snapshot = m_snapshot;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = m_snapshot;
+                if (snapshot == null) {
+                    snapshot = scan();
+                    m_snapshot = snapshot;
+                    startWatching();
+                }
+            }
+            return snapshot;
+        }
+
+        final long now = System.currentTimeMillis();
+        if (now - snapshot.builtAt >= m_refreshInterval && m_rebuilding.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    m_snapshot = scan();
+                    registerWatches();
+                } catch (final Throwable t) {
+                    LOG.warn("Failed to reconcile the resource directory index for {}", m_rrdDirectory, t);
+                } finally {
+                    m_rebuilding.set(false);
+                }
+            });
+        }
+        if (!m_pending.isEmpty() && now - m_lastPendingCheck >= PENDING_CHECK_INTERVAL) {
+            m_lastPendingCheck = now;
+            processPending(snapshot, now);
+        }
+        return snapshot;
+    }
+
+    private Snapshot scan() {
+        final long start = System.currentTimeMillis();
+        final Snapshot snapshot = new Snapshot();
+
+        Arrays.stream(listDirectories(m_snmpDirectory)).parallel().forEach(dir -> {
+            if (!dir.equals(m_foreignSourceDirectory)) {
+                evaluate(snapshot, dir);
+            }
+        });
+
+        Arrays.stream(listDirectories(m_foreignSourceDirectory))
+            .flatMap(source -> Arrays.stream(listDirectories(source)))
+            .parallel()
+            .forEach(dir -> evaluate(snapshot, dir));
+
+        Arrays.stream(listDirectories(m_responseDirectory)).parallel().forEach(dir -> evaluate(snapshot, dir));
+
+        Arrays.stream(listDirectories(m_distributedDirectory))
+            .flatMap(monitor -> Arrays.stream(listDirectories(monitor)))
+            .parallel()
+            .forEach(dir -> evaluate(snapshot, dir));
+
+        LOG.debug("Indexed resource directories below {} in {}ms: {} nodes, {} node sources, {} domains, {} response time interfaces, {} distributed interfaces",
+                  m_rrdDirectory, System.currentTimeMillis() - start, snapshot.snmpNodes.size(), snapshot.nodeSources.size(),
+                  snapshot.domains.size(), snapshot.responseTimeInterfaces.size(), snapshot.distributedResponseTimeInterfaces.size());
+        return snapshot;
+    }
+
+    private static File[] listDirectories(final File directory) {
+        final File[] dirs = directory.listFiles(File::isDirectory);
+        return dirs == null ? new File[0] : dirs;
+    }
+
+    /**
+     * Apply the RRD directory filters to a single directory and update the
+     * snapshot accordingly.
+     *
+     * @return false if the directory exists but does not (yet) hold RRD data
+     */
+    private boolean evaluate(final Snapshot snapshot, final File dir) {
+        final File parent = dir.getParentFile();
+        final String name = dir.getName();
+        final boolean exists = dir.isDirectory();
+        boolean accepted = false;
+
+        if (dir.equals(m_foreignSourceDirectory) || dir.equals(m_distributedDirectory)) {
+            return true;
+        } else if (m_snmpDirectory.equals(parent)) {
+            Integer nodeId = null;
+            try {
+                nodeId = Integer.valueOf(name);
+            } catch (final NumberFormatException e) {
+                // not a node directory
+            }
+            if (nodeId != null) {
+                accepted = exists && RrdFileConstants.NODE_DIRECTORY_FILTER.accept(dir);
+                update(snapshot.snmpNodes, nodeId, accepted);
+            } else {
+                accepted = exists && RrdFileConstants.DOMAIN_DIRECTORY_FILTER.accept(dir);
+                update(snapshot.domains, name, accepted);
+            }
+        } else if (parent != null && m_foreignSourceDirectory.equals(parent.getParentFile())) {
+            accepted = exists && RrdFileConstants.NODESOURCE_DIRECTORY_FILTER.accept(dir);
+            update(snapshot.nodeSources, parent.getName() + ":" + name, accepted);
+        } else if (m_responseDirectory.equals(parent)) {
+            accepted = exists && RrdFileConstants.INTERFACE_DIRECTORY_FILTER.accept(dir);
+            update(snapshot.responseTimeInterfaces, name, accepted);
+        } else if (parent != null && m_distributedDirectory.equals(parent.getParentFile())) {
+            accepted = exists && RrdFileConstants.INTERFACE_DIRECTORY_FILTER.accept(dir);
+            if (accepted) {
+                snapshot.distributedResponseTimeInterfaces.add(name);
+            } else if (!anyMonitorHasInterface(name)) {
+                snapshot.distributedResponseTimeInterfaces.remove(name);
+            }
+        } else {
+            return true;
+        }
+
+        return accepted || !exists;
+    }
+
+    private boolean anyMonitorHasInterface(final String name) {
+        for (final File monitor : listDirectories(m_distributedDirectory)) {
+            if (RrdFileConstants.INTERFACE_DIRECTORY_FILTER.accept(new File(monitor, name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> void update(final Set<T> set, final T value, final boolean present) {
+        if (present) {
+            set.add(value);
+        } else {
+            set.remove(value);
+        }
+    }
+
+    private void processPending(final Snapshot snapshot, final long now) {
+        for (final Iterator<Entry<File, Long>> it = m_pending.entrySet().iterator(); it.hasNext(); ) {
+            final Entry<File, Long> entry = it.next();
+            if (evaluate(snapshot, entry.getKey()) || now - entry.getValue() >= m_refreshInterval) {
+                // resolved, or left for the next reconciliation scan
+                it.remove();
+            }
+        }
+    }
+
+    private synchronized void startWatching() {
+        if (m_watcher != null || m_closed) {
+            return;
+        }
+        try {
+            m_watcher = FileSystems.getDefault().newWatchService();
+        } catch (final IOException | UnsupportedOperationException e) {
+            LOG.info("Unable to watch {} for new resources, relying on periodic reconciliation only: {}", m_rrdDirectory, e.getMessage());
+            return;
+        }
+        registerWatches();
+        m_watchThread = new Thread(this::watch, "ResourceDirectoryIndex-" + m_rrdDirectory.getName());
+        m_watchThread.setDaemon(true);
+        m_watchThread.start();
+    }
+
+    private synchronized void registerWatches() {
+        if (m_watcher == null) {
+            return;
+        }
+        register(m_snmpDirectory);
+        register(m_foreignSourceDirectory);
+        for (final File source : listDirectories(m_foreignSourceDirectory)) {
+            register(source);
+        }
+        register(m_responseDirectory);
+        register(m_distributedDirectory);
+        for (final File monitor : listDirectories(m_distributedDirectory)) {
+            register(monitor);
+        }
+    }
+
+    private void register(final File directory) {
+        if (!directory.isDirectory() || m_watchedDirectories.containsValue(directory)) {
+            return;
+        }
+        try {
+            final WatchKey key = directory.toPath().register(m_watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+            m_watchedDirectories.put(key, directory);
+        } catch (final IOException e) {
+            LOG.debug("Unable to watch {}", directory, e);
+        }
+    }
+
+    private void watch() {
+        while (!m_closed) {
+            final WatchKey key;
+            try {
+                key = m_watcher.take();
+            } catch (final InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+
+            final File directory = m_watchedDirectories.get(key);
+            for (final WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    LOG.debug("Watch events for {} overflowed, forcing a reconciliation scan", directory);
+                    invalidate();
+                    continue;
+                }
+                if (directory == null) {
+                    continue;
+                }
+                final File child = new File(directory, ((Path)event.context()).toString());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && isContainerDirectory(directory, child)) {
+                    // a new foreign source or location monitor directory
+                    registerWatches();
+                    for (final File grandChild : listDirectories(child)) {
+                        m_pending.putIfAbsent(grandChild, System.currentTimeMillis());
+                    }
+                } else {
+                    m_pending.putIfAbsent(child, System.currentTimeMillis());
+                }
+            }
+            if (!key.reset()) {
+                m_watchedDirectories.remove(key);
+            }
+        }
+    }
+
+    private boolean isContainerDirectory(final File directory, final File child) {
+        return directory.equals(m_foreignSourceDirectory) || directory.equals(m_distributedDirectory)
+                || child.equals(m_foreignSourceDirectory) || child.equals(m_distributedDirectory);
+    }
+
+    /**
+     * Stop watching the RRD directory.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        m_closed = true;
+        if (m_watcher != null) {
+            m_watcher.close();
+            m_watcher = null;
+        }
+        if (m_watchThread != null) {
+            m_watchThread.interrupt();
+            m_watchThread = null;
+        }
+        m_watchedDirectories.clear();
+    }
+}
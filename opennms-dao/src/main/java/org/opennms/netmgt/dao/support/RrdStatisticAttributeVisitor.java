@@ -28,6 +28,11 @@
 
 package org.opennms.netmgt.dao.support;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
 import org.opennms.netmgt.dao.api.RrdDao;
 import org.opennms.netmgt.model.AttributeStatisticVisitor;
 import org.opennms.netmgt.model.AttributeVisitor;
@@ -51,15 +56,61 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
     private Long m_startTime;
     private Long m_endTime;
     private AttributeStatisticVisitor m_statisticVisitor;
+    private ForkJoinPool m_pool;
+    private final Queue<ForkJoinTask<?>> m_pendingTasks = new ConcurrentLinkedQueue<ForkJoinTask<?>>();
     
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * If a fork-join pool has been set, the RRD consolidation for the
+     * attribute is handed to the pool and this method returns right away;
+     * call {@link #awaitCompletion()} once the walk is done to wait for the
+     * outstanding statistics.
+     */
     @Override
-    public void visit(OnmsAttribute attribute) {
+    public void visit(final OnmsAttribute attribute) {
         if (!RrdGraphAttribute.class.isAssignableFrom(attribute.getClass())) {
             // Nothing to do if we can't cast to an RrdGraphAttribute
             return;
         }
         
+        if (m_pool == null) {
+            computeStatistic(attribute);
+        } else {
+            m_pendingTasks.add(m_pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    computeStatistic(attribute);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Wait for all of the statistics handed to the fork-join pool to be
+     * computed.  The first failure, if any, is rethrown after every
+     * outstanding task has finished.
+     */
+    public void awaitCompletion() {
+        RuntimeException failure = null;
+        ForkJoinTask<?> task;
+        while ((task = m_pendingTasks.poll()) != null) {
+            try {
+                task.join();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    LOG.debug("Additional failure while computing statistics", e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void computeStatistic(OnmsAttribute attribute) {
         double statistic = m_rrdDao.getPrintValue(attribute, m_consolidationFunction, m_startTime, m_endTime);
         
         LOG.debug("The value of {} is {}", attribute, statistic);
@@ -129,6 +180,24 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
         m_statisticVisitor = statisticVisitor;
     }
 
+    /**
+     * <p>getPool</p>
+     *
+     * @return the fork-join pool statistics are computed on, or null if they are computed on the visiting thread
+     */
+    public ForkJoinPool getPool() {
+        return m_pool;
+    }
+
+    /**
+     * <p>setPool</p>
+     *
+     * @param pool a {@link java.util.concurrent.ForkJoinPool} object, or null to compute statistics on the visiting thread.
+     */
+    public void setPool(ForkJoinPool pool) {
+        m_pool = pool;
+    }
+
     /**
      * <p>getConsolidationFunction</p>
      *
@@ -34,7 +34,9 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
@@ -52,15 +54,18 @@ import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
 import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.LldpUtils.LldpChassisIdSubType;
+import org.opennms.netmgt.dao.api.CategoryDao;
 import org.opennms.netmgt.dao.api.DistPollerDao;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.model.LldpElement;
+import org.opennms.netmgt.model.OnmsCategory;
 import org.opennms.netmgt.model.OnmsDistPoller;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsSnmpInterface;
 import org.opennms.netmgt.model.PathElement;
+import org.opennms.netmgt.model.SurveillanceStatus;
 import org.opennms.test.JUnitConfigurationEnvironment;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -94,6 +99,9 @@ public class NodeDaoTest implements InitializingBean {
     @Autowired
     NodeDao m_nodeDao;
 
+    @Autowired
+    CategoryDao m_categoryDao;
+
     @Autowired
     JdbcTemplate m_jdbcTemplate;
 
@@ -632,6 +640,42 @@ public class NodeDaoTest implements InitializingBean {
         assertEquals("category1", n.getAssetRecord().getDisplayCategory());
     }
 
+    @Test
+    @Transactional
+    public void testSurveillanceStatusMatrixMatchesLists() {
+        // only active services count towards outages
+        getJdbcTemplate().update("UPDATE ifservices SET status = 'A'");
+
+        final List<OnmsCategory> categories = m_categoryDao.findAll();
+        assertTrue(categories.size() > 1);
+
+        // every category on its own, plus all of them together so that a node can fall into several cells of a row
+        final List<Collection<OnmsCategory>> groups = new ArrayList<Collection<OnmsCategory>>();
+        for (final OnmsCategory category : categories) {
+            groups.add(Collections.singleton(category));
+        }
+        groups.add(categories);
+
+        final SurveillanceStatus[][] matrix = getNodeDao().findSurveillanceStatusByCategoryMatrix(groups, groups);
+        assertEquals(groups.size(), matrix.length);
+
+        boolean sawOutage = false;
+        for (int row = 0; row < groups.size(); row++) {
+            assertEquals(groups.size(), matrix[row].length);
+            for (int column = 0; column < groups.size(); column++) {
+                final SurveillanceStatus expected = getNodeDao().findSurveillanceStatusByCategoryLists(groups.get(row), groups.get(column));
+                final SurveillanceStatus actual = matrix[row][column];
+                final String cell = "cell " + groups.get(row) + " x " + groups.get(column);
+                assertEquals(cell, expected.getDownEntityCount(), actual.getDownEntityCount());
+                assertEquals(cell, expected.getTotalEntityCount(), actual.getTotalEntityCount());
+                assertEquals(cell, expected.getStatus(), actual.getStatus());
+                sawOutage |= !"Normal".equals(actual.getStatus());
+            }
+        }
+        // the populated database has an open outage, so at least one cell must show it
+        assertTrue(sawOutage);
+    }
+
     private OnmsDistPoller getDistPoller() {
         OnmsDistPoller distPoller = getDistPollerDao().load("localhost");
         assertNotNull(distPoller);
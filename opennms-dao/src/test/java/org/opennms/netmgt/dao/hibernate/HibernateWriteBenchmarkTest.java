@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.dao.hibernate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.spring.BeanUtils;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.core.utils.LldpUtils.LldpChassisIdSubType;
+import org.opennms.core.utils.LldpUtils.LldpPortIdSubType;
+import org.opennms.netmgt.dao.api.DistPollerDao;
+import org.opennms.netmgt.dao.api.LldpLinkDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.dao.api.ServiceTypeDao;
+import org.opennms.netmgt.model.LldpLink;
+import org.opennms.netmgt.model.NetworkBuilder;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Measures the write patterns of a provisioning import (nodes with their
+ * interfaces and services) and of the enlinkd LLDP store.
+ *
+ * <p>Run once with the defaults and once with
+ * <code>-Dorg.opennms.hibernate.jdbc.batchSize=0 -Dorg.opennms.hibernate.idPoolSize=1</code>
+ * to compare batched, pooled writes with one statement and one sequence
+ * round trip per row.</p>
+ */
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-commonConfigs.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase
+public class HibernateWriteBenchmarkTest implements InitializingBean {
+    private static final int NODES = 2000;
+    private static final int NODES_PER_TRANSACTION = 50;
+    private static final int INTERFACES_PER_NODE = 4;
+    private static final int LINKS_PER_NODE = 8;
+
+    @Autowired
+    private DistPollerDao m_distPollerDao;
+
+    @Autowired
+    private NodeDao m_nodeDao;
+
+    @Autowired
+    private ServiceTypeDao m_serviceTypeDao;
+
+    @Autowired
+    private LldpLinkDao m_lldpLinkDao;
+
+    @Autowired
+    private TransactionTemplate m_transactionTemplate;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        BeanUtils.assertAutowiring(this);
+    }
+
+    @Test
+    @Ignore("benchmark")
+    public void testImportThroughput() {
+        createServiceTypes();
+
+        final long start = System.nanoTime();
+        final List<Integer> nodeIds = importNodes();
+        final long elapsed = System.nanoTime() - start;
+
+        System.err.printf("Imported %d nodes with %d interfaces each in %d ms (%.0f nodes/s).%n",
+                nodeIds.size(), INTERFACES_PER_NODE, elapsed / 1000000, nodeIds.size() * 1e9 / elapsed);
+    }
+
+    @Test
+    @Ignore("benchmark")
+    public void testLldpLinkStoreThroughput() {
+        createServiceTypes();
+        final List<Integer> nodeIds = importNodes();
+
+        final long start = System.nanoTime();
+        for (final Integer nodeId : nodeIds) {
+            m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                    final Date now = new Date();
+                    final OnmsNode node = m_nodeDao.get(nodeId);
+                    for (int port = 1; port <= LINKS_PER_NODE; port++) {
+                        LldpLink link = m_lldpLinkDao.get(nodeId, port);
+                        if (link == null) {
+                            link = new LldpLink(node, port, port, "port" + port, "port " + port, LldpPortIdSubType.LLDP_PORTID_SUBTYPE_INTERFACENAME,
+                                                "00:00:00:00:00:" + String.format("%02x", port), "remote" + port, LldpChassisIdSubType.LLDP_CHASSISID_SUBTYPE_MACADDRESS,
+                                                "port" + port, LldpPortIdSubType.LLDP_PORTID_SUBTYPE_INTERFACENAME, "port " + port);
+                        }
+                        link.setLldpLinkLastPollTime(now);
+                        m_lldpLinkDao.saveOrUpdate(link);
+                    }
+                    m_lldpLinkDao.flush();
+                }
+            });
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        System.err.printf("Stored %d LLDP links for %d nodes in %d ms (%.0f links/s).%n",
+                nodeIds.size() * LINKS_PER_NODE, nodeIds.size(), elapsed / 1000000, nodeIds.size() * LINKS_PER_NODE * 1e9 / elapsed);
+    }
+
+    private void createServiceTypes() {
+        m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                m_serviceTypeDao.save(new OnmsServiceType("ICMP"));
+                m_serviceTypeDao.save(new OnmsServiceType("SNMP"));
+            }
+        });
+    }
+
+    private List<Integer> importNodes() {
+        final List<Integer> nodeIds = new ArrayList<Integer>(NODES);
+        for (int first = 0; first < NODES; first += NODES_PER_TRANSACTION) {
+            final int from = first;
+            nodeIds.addAll(m_transactionTemplate.execute(new TransactionCallback<List<Integer>>() {
+                @Override
+                public List<Integer> doInTransaction(final TransactionStatus status) {
+                    final NetworkBuilder builder = new NetworkBuilder(m_distPollerDao.load("localhost"));
+                    final OnmsServiceType icmp = m_serviceTypeDao.findByName("ICMP");
+                    final OnmsServiceType snmp = m_serviceTypeDao.findByName("SNMP");
+                    final List<Integer> ids = new ArrayList<Integer>(NODES_PER_TRANSACTION);
+                    for (int n = from; n < from + NODES_PER_TRANSACTION && n < NODES; n++) {
+                        builder.addNode("node" + n).setForeignSource("benchmark").setForeignId(Integer.toString(n));
+                        for (int i = 1; i <= INTERFACES_PER_NODE; i++) {
+                            builder.addSnmpInterface(i)
+                                .setIfName("eth" + i)
+                                .addIpInterface(String.format("10.%d.%d.%d", n / 250, n % 250, i)).setIsManaged("M").setIsSnmpPrimary(i == 1 ? "P" : "N");
+                            builder.addService(icmp);
+                            if (i == 1) {
+                                builder.addService(snmp);
+                            }
+                        }
+                        m_nodeDao.save(builder.getCurrentNode());
+                        ids.add(builder.getCurrentNode().getId());
+                    }
+                    m_nodeDao.flush();
+                    return ids;
+                }
+            }));
+        }
+        return nodeIds;
+    }
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.dao.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.EJB3NamingStrategy;
+import org.hibernate.cfg.NamingStrategy;
+import org.hibernate.cfg.ObjectNameNormalizer;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.id.SequenceGenerator;
+import org.hibernate.type.IntegerType;
+import org.hibernate.type.LongType;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.spring.BeanUtils;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-commonConfigs.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase
+public class PooledSequenceGeneratorTest implements InitializingBean {
+    @Autowired
+    private SessionFactory m_sessionFactory;
+
+    @Autowired
+    private JdbcTemplate m_jdbcTemplate;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        BeanUtils.assertAutowiring(this);
+    }
+
+    @Test
+    @Transactional
+    public void testPooledValuesComeFromTheSequence() {
+        final PooledSequenceGenerator generator = createGenerator(5);
+        assertEquals(5, generator.getPoolSize());
+
+        final SessionImplementor session = (SessionImplementor) m_sessionFactory.getCurrentSession();
+        final int first = (Integer) generator.generate(session, null);
+        for (int i = 1; i < 5; i++) {
+            assertEquals(first + i, generator.generate(session, null));
+        }
+
+        // the pool is used up, so the sequence has already moved past it
+        final long next = m_jdbcTemplate.queryForObject("select nextval('opennmsNxtId')", Long.class);
+        assertEquals(first + 5, next);
+
+        // and the next value comes from a new pool
+        assertEquals(first + 6, generator.generate(session, null));
+    }
+
+    @Test
+    @Transactional
+    public void testIdentifierType() {
+        final PooledSequenceGenerator generator = new PooledSequenceGenerator();
+        generator.configure(LongType.INSTANCE, getParams(3), new PostgreSQLDialect());
+
+        final SessionImplementor session = (SessionImplementor) m_sessionFactory.getCurrentSession();
+        assertTrue(generator.generate(session, null) instanceof Long);
+    }
+
+    @Test
+    @Transactional
+    public void testPoolSizeOfOneReadsTheSequence() {
+        final PooledSequenceGenerator generator = createGenerator(1);
+        assertEquals(1, generator.getPoolSize());
+
+        final SessionImplementor session = (SessionImplementor) m_sessionFactory.getCurrentSession();
+        final int first = (Integer) generator.generate(session, null);
+        final long next = m_jdbcTemplate.queryForObject("select nextval('opennmsNxtId')", Long.class);
+        assertEquals(first + 1, next);
+    }
+
+    private static PooledSequenceGenerator createGenerator(final int poolSize) {
+        final PooledSequenceGenerator generator = new PooledSequenceGenerator();
+        generator.configure(IntegerType.INSTANCE, getParams(poolSize), new PostgreSQLDialect());
+        return generator;
+    }
+
+    private static Properties getParams(final int poolSize) {
+        final Properties params = new Properties();
+        params.put(PersistentIdentifierGenerator.IDENTIFIER_NORMALIZER, new ObjectNameNormalizer() {
+            @Override
+            protected boolean isUseQuotedIdentifiersGlobally() {
+                return false;
+            }
+
+            @Override
+            protected NamingStrategy getNamingStrategy() {
+                return EJB3NamingStrategy.INSTANCE;
+            }
+        });
+        params.setProperty(SequenceGenerator.SEQUENCE, "opennmsNxtId");
+        params.setProperty(PooledSequenceGenerator.POOL_SIZE, Integer.toString(poolSize));
+        return params;
+    }
+}
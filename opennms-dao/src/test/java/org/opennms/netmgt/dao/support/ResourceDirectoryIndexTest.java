@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.rrd.RrdUtils;
+import org.opennms.netmgt.rrd.jrobin.JRobinRrdStrategy;
+import org.opennms.test.FileAnticipator;
+
+public class ResourceDirectoryIndexTest {
+    private FileAnticipator m_fileAnticipator;
+    private ResourceDirectoryIndex m_index;
+
+    @Before
+    public void setUp() throws Exception {
+        RrdUtils.setStrategy(new JRobinRrdStrategy());
+        m_fileAnticipator = new FileAnticipator();
+        m_index = new ResourceDirectoryIndex(m_fileAnticipator.getTempDir(), ResourceDirectoryIndex.DEFAULT_REFRESH_INTERVAL);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_index.close();
+        m_fileAnticipator.tearDown();
+    }
+
+    @Test
+    public void testEmptyRrdDirectory() {
+        assertTrue(m_index.getSnmpNodes().isEmpty());
+        assertTrue(m_index.getNodeSources().isEmpty());
+        assertTrue(m_index.getDomains().isEmpty());
+        assertTrue(m_index.getResponseTimeInterfaces().isEmpty());
+        assertTrue(m_index.getDistributedResponseTimeInterfaces().isEmpty());
+    }
+
+    @Test
+    public void testIndexesTopLevelDirectories() throws Exception {
+        final File snmp = m_fileAnticipator.tempDir("snmp");
+        m_fileAnticipator.tempFile(m_fileAnticipator.tempDir(snmp, "1"), "foo" + RrdUtils.getExtension());
+        m_fileAnticipator.tempDir(snmp, "2"); // no data, not queryable
+        m_fileAnticipator.tempFile(m_fileAnticipator.tempDir(m_fileAnticipator.tempDir(snmp, "example1"), "server1"), "ifInOctets" + RrdUtils.getExtension());
+
+        final File source = m_fileAnticipator.tempDir(m_fileAnticipator.tempDir(snmp, "fs"), "source1");
+        m_fileAnticipator.tempFile(m_fileAnticipator.tempDir(source, "123"), "foo" + RrdUtils.getExtension());
+
+        final File response = m_fileAnticipator.tempDir("response");
+        m_fileAnticipator.tempFile(m_fileAnticipator.tempDir(response, "192.168.1.1"), "icmp" + RrdUtils.getExtension());
+        final File monitor = m_fileAnticipator.tempDir(m_fileAnticipator.tempDir(response, "distributed"), "1");
+        m_fileAnticipator.tempFile(m_fileAnticipator.tempDir(monitor, "192.168.1.2"), "http" + RrdUtils.getExtension());
+
+        assertEquals(Collections.singleton(1), m_index.getSnmpNodes());
+        assertEquals(Collections.singleton("example1"), m_index.getDomains());
+        assertEquals(Collections.singleton("source1:123"), m_index.getNodeSources());
+        assertEquals(Collections.singleton("192.168.1.1"), m_index.getResponseTimeInterfaces());
+        assertEquals(Collections.singleton("192.168.1.2"), m_index.getDistributedResponseTimeInterfaces());
+    }
+
+    @Test
+    public void testInvalidateRescans() throws Exception {
+        final File snmp = m_fileAnticipator.tempDir("snmp");
+        m_fileAnticipator.tempFile(m_fileAnticipator.tempDir(snmp, "1"), "foo" + RrdUtils.getExtension());
+        assertEquals(Collections.singleton(1), m_index.getSnmpNodes());
+
+        m_fileAnticipator.tempFile(m_fileAnticipator.tempDir(snmp, "2"), "foo" + RrdUtils.getExtension());
+        m_index.invalidate();
+        assertTrue(m_index.getSnmpNodes().contains(2));
+        assertFalse(m_index.getSnmpNodes().contains(3));
+    }
+}
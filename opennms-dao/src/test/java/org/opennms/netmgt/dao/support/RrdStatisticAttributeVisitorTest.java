@@ -31,6 +31,7 @@ package org.opennms.netmgt.dao.support;
 import static org.easymock.EasyMock.expect;
 
 import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
 
 import junit.framework.TestCase;
 
@@ -186,6 +187,34 @@ public class RrdStatisticAttributeVisitorTest extends TestCase {
         m_mocks.verifyAll();
     }
     
+    public void testVisitWithRrdAttributeOnPool() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            RrdStatisticAttributeVisitor attributeVisitor = new RrdStatisticAttributeVisitor();
+            attributeVisitor.setRrdDao(m_rrdDao);
+            attributeVisitor.setConsolidationFunction("AVERAGE");
+            attributeVisitor.setStartTime(m_startTime);
+            attributeVisitor.setEndTime(m_endTime);
+            attributeVisitor.setStatisticVisitor(m_statisticVisitor);
+            attributeVisitor.setPool(pool);
+            attributeVisitor.afterPropertiesSet();
+
+            MockResourceType resourceType = new MockResourceType();
+            resourceType.setName("interfaceSnmp");
+            OnmsAttribute attribute = new RrdGraphAttribute("ifInOctets", "something", "something else");
+            new OnmsResource("1", "Node One", resourceType, Collections.singleton(attribute));
+            expect(m_rrdDao.getPrintValue(attribute, attributeVisitor.getConsolidationFunction(), attributeVisitor.getStartTime(), attributeVisitor.getEndTime())).andReturn(1.0);
+            m_statisticVisitor.visit(attribute, 1.0);
+
+            m_mocks.replayAll();
+            attributeVisitor.visit(attribute);
+            attributeVisitor.awaitCompletion();
+            m_mocks.verifyAll();
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
     public void testVisitWithNonRrdAttribute() throws Exception {
         RrdStatisticAttributeVisitor attributeVisitor = new RrdStatisticAttributeVisitor();
         attributeVisitor.setRrdDao(m_rrdDao);
@@ -28,7 +28,9 @@
 
 package org.opennms.netmgt.dao.support;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.Map.Entry;
@@ -199,6 +201,47 @@ public class TopNAttributeStatisticVisitorTest extends TestCase {
             i++;
         }
     }
+
+    public void testVisitFromSeveralThreadsMergesResults() throws Exception {
+        final BottomNAttributeStatisticVisitor visitor = new TopNAttributeStatisticVisitor();
+        visitor.setCount(20);
+        visitor.afterPropertiesSet();
+        
+        final Map<OnmsAttribute, Double> attributes = new HashMap<OnmsAttribute, Double>();
+        for (int i = 0; i < 100; i++) {
+            attributes.put(new MockAttribute("foo"), 0.0 + i);
+        }
+        new OnmsResource("1", "Node One", new MockResourceType(), attributes.keySet());
+        
+        final List<Entry<OnmsAttribute, Double>> entries = new ArrayList<Entry<OnmsAttribute, Double>>(attributes.entrySet());
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final List<Entry<OnmsAttribute, Double>> slice = entries.subList(t * 25, (t + 1) * 25);
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (Entry<OnmsAttribute, Double> entry : slice) {
+                        visitor.visit(entry.getKey(), entry.getValue());
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        SortedSet<AttributeStatistic> top = visitor.getResults();
+        assertNotNull("topN list should not be null", top);
+        assertEquals("topN list size", 20, top.size());
+
+        int i = 0;
+        for (AttributeStatistic stat : top) { 
+            assertEquals("topN[" + i + "] value", 99.0 - i, stat.getStatistic());
+            i++;
+        }
+    }
     
     
     public class MockAttribute implements OnmsAttribute {
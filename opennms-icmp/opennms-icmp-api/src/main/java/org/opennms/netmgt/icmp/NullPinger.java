@@ -2,6 +2,7 @@ package org.opennms.netmgt.icmp;
 
 import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +47,14 @@ public class NullPinger implements Pinger {
         throw UNSUPPORTED;
     }
 
+    @Override
+    public CompletableFuture<List<Number>> parallelPingAsync(InetAddress host, int count, long timeout, long pingInterval) {
+        LOG.trace("parallel-ping-async: host={}, count={}, timeout={}, interval={}", host, count, timeout, pingInterval);
+        final CompletableFuture<List<Number>> future = new CompletableFuture<List<Number>>();
+        future.completeExceptionally(UNSUPPORTED);
+        return future;
+    }
+
     @Override
     public void initialize4() throws Exception {
         LOG.info("initialize4() called.");
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.icmp;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends a train of packets at a fixed interval from a single shared timer
+ * thread, so that callers never sleep between packets.
+ *
+ * <p>The first packet is sent on the calling thread. Every later tick sends
+ * all the packets that have fallen due since the train started, so a late
+ * timer produces a small burst rather than a slower train.</p>
+ */
+public final class PacketTrainScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(PacketTrainScheduler.class);
+
+    /**
+     * Sends the packets of a train.
+     */
+    public interface PacketSender {
+        /**
+         * Sends packet number <code>index</code> of the train, counting from 0.
+         *
+         * @return false if the train is complete and nothing was sent
+         * @throws Exception if the packet could not be sent; the train is abandoned
+         */
+        boolean send(int index) throws Exception;
+    }
+
+    private static final ScheduledExecutorService s_timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        private final AtomicInteger m_threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "ICMP-PacketTrain-" + m_threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private PacketTrainScheduler() {
+    }
+
+    /**
+     * Starts a packet train.
+     *
+     * @param interval the time between two packets
+     * @param unit the unit of <code>interval</code>
+     * @param sender sends the packets
+     * @return a future completed with the number of packets sent once the
+     *     sender reports that the train is complete, or completed exceptionally
+     *     if a packet could not be sent
+     */
+    public static CompletableFuture<Integer> schedule(final long interval, final TimeUnit unit, final PacketSender sender) {
+        final Train train = new Train(Math.max(0, unit.toNanos(interval)), sender);
+        train.run();
+        return train.m_future;
+    }
+
+    private static class Train implements Runnable {
+        private final long m_intervalNanos;
+        private final PacketSender m_sender;
+        private final long m_start = System.nanoTime();
+        private final CompletableFuture<Integer> m_future = new CompletableFuture<Integer>();
+        private int m_sent = 0;
+
+        Train(final long intervalNanos, final PacketSender sender) {
+            m_intervalNanos = intervalNanos;
+            m_sender = sender;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final long elapsed = System.nanoTime() - m_start;
+                final long due = m_intervalNanos == 0 ? Long.MAX_VALUE : elapsed / m_intervalNanos + 1;
+                while (m_sent < due) {
+                    if (!m_sender.send(m_sent)) {
+                        m_future.complete(m_sent);
+                        return;
+                    }
+                    m_sent++;
+                }
+                final long delay = m_sent * m_intervalNanos - (System.nanoTime() - m_start);
+                s_timer.schedule(this, Math.max(0, delay), TimeUnit.NANOSECONDS);
+            } catch (final Throwable t) {
+                LOG.debug("Abandoning packet train after {} packets", m_sent, t);
+                m_future.completeExceptionally(t);
+            }
+        }
+    }
+}
@@ -31,6 +31,7 @@ package org.opennms.netmgt.icmp;
 import java.net.InetAddress;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -50,6 +51,8 @@ public class ParallelPingResponseCallback implements PingResponseCallback {
     
     Throwable m_error;
 
+    private final CompletableFuture<List<Number>> m_future = new CompletableFuture<List<Number>>();
+
     /**
      * <p>Constructor for ParallelPingResponseCallback.</p>
      *
@@ -58,6 +61,9 @@ public class ParallelPingResponseCallback implements PingResponseCallback {
     public ParallelPingResponseCallback(int count) {
         m_latch = new CountDownLatch(count);
         m_responseTimes = new Number[count];
+        if (count == 0) {
+            m_future.complete(getResponseTimes());
+        }
     }
 
     /** {@inheritDoc} */
@@ -69,7 +75,7 @@ public class ParallelPingResponseCallback implements PingResponseCallback {
             }
             m_error = t;
         } finally {
-            m_latch.countDown();
+            countDown();
         }
     }
 
@@ -81,7 +87,7 @@ public class ParallelPingResponseCallback implements PingResponseCallback {
                 m_responseTimes[response.getSequenceNumber()] = response.elapsedTime(TimeUnit.MICROSECONDS);
             }
         } finally {
-            m_latch.countDown();
+            countDown();
         }
     }
 
@@ -93,10 +99,27 @@ public class ParallelPingResponseCallback implements PingResponseCallback {
                 m_responseTimes[request.getSequenceNumber()] = null;
             }
         } finally {
-            m_latch.countDown();
+            countDown();
+        }
+    }
+
+    private void countDown() {
+        m_latch.countDown();
+        if (m_latch.getCount() == 0) {
+            m_future.complete(getResponseTimes());
         }
     }
 
+    /**
+     * Returns a future that is completed with the response times once every
+     * ping has been answered, has timed out or has failed.
+     *
+     * @return the future response times
+     */
+    public CompletableFuture<List<Number>> getFuture() {
+        return m_future;
+    }
+
     /**
      * <p>waitFor</p>
      *
@@ -31,6 +31,7 @@ package org.opennms.netmgt.icmp;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>Pinger class.</p>
@@ -117,6 +118,22 @@ public interface Pinger {
 	 *     echo reply, it will contain a number, otherwise a null value.
 	 */
 	public List<Number> parallelPing(InetAddress host, int count, long timeout, long pingInterval) throws Exception;
+
+	/**
+	 * Ping a remote host, sending 1 or more packets at the given interval, without
+	 * blocking the calling thread.  The packets are sent from a shared timer, so no
+	 * thread waits between packets.
+	 *
+     * @param host The {@link java.net.InetAddress} address to poll.
+     * @param count The number of packets to send.
+     * @param timeout The time to wait for each reply.
+     * @param pingInterval The interval at which packets will be sent.
+	 * @return a future that is completed with the same response times as
+	 *     {@link #parallelPing(InetAddress, int, long, long)} once every packet has
+	 *     been answered or has timed out, or completed exceptionally if the
+	 *     packets could not be sent.
+	 */
+	public CompletableFuture<List<Number>> parallelPingAsync(InetAddress host, int count, long timeout, long pingInterval);
 	
 	/**
 	 * Initialize IPv4 in this Pinger implementation.  If unable to do so, implementations should throw an exception.
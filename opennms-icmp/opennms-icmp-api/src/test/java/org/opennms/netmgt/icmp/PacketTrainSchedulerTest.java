@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PacketTrainSchedulerTest {
+
+    /**
+     * Records when, and on which thread, each packet of a train is sent.
+     */
+    private static class RecordingSender implements PacketTrainScheduler.PacketSender {
+        private final int m_count;
+        private final List<Long> m_times = new ArrayList<Long>();
+        private final List<String> m_threads = new ArrayList<String>();
+
+        public RecordingSender(final int count) {
+            m_count = count;
+        }
+
+        @Override
+        public synchronized boolean send(final int index) throws Exception {
+            if (index >= m_count) {
+                return false;
+            }
+            assertEquals(m_times.size(), index);
+            m_times.add(System.nanoTime());
+            m_threads.add(Thread.currentThread().getName());
+            return true;
+        }
+
+        public synchronized List<Long> getTimes() {
+            return new ArrayList<Long>(m_times);
+        }
+
+        public synchronized List<String> getThreads() {
+            return new ArrayList<String>(m_threads);
+        }
+    }
+
+    @Test
+    public void testPacing() throws Exception {
+        final RecordingSender sender = new RecordingSender(6);
+        final long start = System.nanoTime();
+        final CompletableFuture<Integer> future = PacketTrainScheduler.schedule(20, TimeUnit.MILLISECONDS, sender);
+        assertEquals(Integer.valueOf(6), future.get(5, TimeUnit.SECONDS));
+
+        final List<Long> times = sender.getTimes();
+        assertEquals(6, times.size());
+        for (int i = 0; i < times.size(); i++) {
+            // a late tick may send a burst, but no packet is ever sent early
+            assertTrue("packet " + i + " was sent too early", times.get(i) - start >= TimeUnit.MILLISECONDS.toNanos(20 * i));
+        }
+    }
+
+    @Test
+    public void testLaterPacketsAreSentFromTheTimer() throws Exception {
+        final RecordingSender sender = new RecordingSender(3);
+        PacketTrainScheduler.schedule(10, TimeUnit.MILLISECONDS, sender).get(5, TimeUnit.SECONDS);
+
+        final List<String> threads = sender.getThreads();
+        assertEquals(Thread.currentThread().getName(), threads.get(0));
+        assertTrue(threads.get(1), threads.get(1).startsWith("ICMP-PacketTrain-"));
+        assertTrue(threads.get(2), threads.get(2).startsWith("ICMP-PacketTrain-"));
+    }
+
+    @Test
+    public void testZeroIntervalSendsEverythingAtOnce() throws Exception {
+        final RecordingSender sender = new RecordingSender(10);
+        final CompletableFuture<Integer> future = PacketTrainScheduler.schedule(0, TimeUnit.MILLISECONDS, sender);
+        assertTrue(future.isDone());
+        assertEquals(Integer.valueOf(10), future.get());
+        for (final String thread : sender.getThreads()) {
+            assertEquals(Thread.currentThread().getName(), thread);
+        }
+    }
+
+    @Test
+    public void testEmptyTrain() throws Exception {
+        final CompletableFuture<Integer> future = PacketTrainScheduler.schedule(1, TimeUnit.SECONDS, new RecordingSender(0));
+        assertTrue(future.isDone());
+        assertEquals(Integer.valueOf(0), future.get());
+    }
+
+    @Test
+    public void testFailedPacketAbandonsTrain() throws Exception {
+        final IllegalStateException failure = new IllegalStateException("no ICMP socket");
+        final List<Integer> attempts = new ArrayList<Integer>();
+        final CompletableFuture<Integer> future = PacketTrainScheduler.schedule(10, TimeUnit.MILLISECONDS, index -> {
+            synchronized (attempts) {
+                attempts.add(index);
+            }
+            if (index == 2) {
+                throw failure;
+            }
+            return true;
+        });
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("the train should have failed");
+        } catch (final ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+        Thread.sleep(50);
+        synchronized (attempts) {
+            assertEquals(3, attempts.size());
+        }
+    }
+
+    @Test
+    public void testConcurrentTrainsShareOneTimer() throws Exception {
+        final List<RecordingSender> senders = new ArrayList<RecordingSender>();
+        final List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+        for (int i = 0; i < 100; i++) {
+            final RecordingSender sender = new RecordingSender(5);
+            senders.add(sender);
+            futures.add(PacketTrainScheduler.schedule(10, TimeUnit.MILLISECONDS, sender));
+        }
+
+        final Set<String> timerThreads = new HashSet<String>();
+        for (int i = 0; i < senders.size(); i++) {
+            assertEquals(Integer.valueOf(5), futures.get(i).get(5, TimeUnit.SECONDS));
+            final List<String> threads = senders.get(i).getThreads();
+            timerThreads.addAll(threads.subList(1, threads.size()));
+        }
+        assertEquals(timerThreads.toString(), 1, timerThreads.size());
+        assertFalse(timerThreads.contains(Thread.currentThread().getName()));
+    }
+}
@@ -31,7 +31,9 @@ package org.opennms.netmgt.icmp.jna;
 import java.net.InetAddress;
 import java.net.NoRouteToHostException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
@@ -245,6 +247,45 @@ public class JnaPingTest extends TestCase {
         assertTrue("Collection contained some numeric values when all parallel pings should have failed", CollectionMath.countNotNull(items) == 0);
     }
 
+    public void testParallelPingAsyncIPv4() throws Exception {
+        parallelPingAsyncGood(m_goodHost);
+    }
+
+    public void testParallelPingAsyncIPv6() throws Exception {
+        parallelPingAsyncGood(m_ipv6goodHost);
+    }
+
+    public void testParallelPingAsyncFailureIPv4() throws Exception {
+        parallelPingAsyncFailure(m_badHost);
+    }
+
+    public void testParallelPingAsyncFailureIPv6() throws Exception {
+        parallelPingAsyncFailure(m_ipv6badHost);
+    }
+
+    private void parallelPingAsyncGood(InetAddress addr) throws Exception {
+        final long start = System.currentTimeMillis();
+        final CompletableFuture<List<Number>> future = s_jnaPinger.parallelPingAsync(addr, 20, PingConstants.DEFAULT_TIMEOUT, 50);
+        // the packets are sent from the shared timer, so the call returns before the train is complete
+        assertFalse(future.isDone());
+        List<Number> items = future.get(20 * 50 + PingConstants.DEFAULT_TIMEOUT + 5000, TimeUnit.MILLISECONDS);
+        assertTrue("The train completed before the last packet was due", System.currentTimeMillis() - start >= 19 * 50);
+        printResponse(items);
+        assertEquals(20, items.size());
+        for (Number item : items) {
+            assertNotNull("Found a null reponse time in the response", item);
+            assertTrue("Negative RTT value returned from ping", item.floatValue() > 0);
+        }
+    }
+
+    private void parallelPingAsyncFailure(InetAddress addr) throws Exception {
+        final CompletableFuture<List<Number>> future = s_jnaPinger.parallelPingAsync(addr, 20, PingConstants.DEFAULT_TIMEOUT, 50);
+        List<Number> items = future.get(20 * 50 + PingConstants.DEFAULT_TIMEOUT + 5000, TimeUnit.MILLISECONDS);
+        printResponse(items);
+        assertEquals(20, items.size());
+        assertTrue("Collection contained some numeric values when all parallel pings should have failed", CollectionMath.countNotNull(items) == 0);
+    }
+
     private void printResponse(List<Number> items) {
         Long passed = CollectionMath.countNotNull(items);
         Long failed = CollectionMath.countNull(items);
@@ -37,9 +37,13 @@ import java.net.InetAddress;
 import java.security.SecureRandom;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.icmp.LogPrefixPreservingPingResponseCallback;
+import org.opennms.netmgt.icmp.PacketTrainScheduler;
 import org.opennms.netmgt.icmp.ParallelPingResponseCallback;
 import org.opennms.netmgt.icmp.PingResponseCallback;
 import org.opennms.netmgt.icmp.Pinger;
@@ -288,18 +292,37 @@ public class JniPinger implements Pinger {
      */
     @Override
     public List<Number> parallelPing(final InetAddress host, final int count, final long timeout, final long pingInterval) throws Exception {
-        initialize();
-        final ParallelPingResponseCallback cb = new ParallelPingResponseCallback(count);
+        try {
+            return parallelPingAsync(host, count, timeout, pingInterval).get();
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+        }
+    }
 
-        final long threadId = JniPingRequest.getNextTID();
-        for (int seqNum = 0; seqNum < count; seqNum++) {
-            final JniPingRequest request = new JniPingRequest(host, m_pingerId, seqNum, threadId, timeout == 0? DEFAULT_TIMEOUT : timeout, 0, DEFAULT_PACKET_SIZE, cb);
-            s_pingTracker.sendRequest(request);
-            Thread.sleep(pingInterval);
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<List<Number>> parallelPingAsync(final InetAddress host, final int count, final long timeout, final long pingInterval) {
+        final ParallelPingResponseCallback cb = new ParallelPingResponseCallback(count);
+        try {
+            initialize();
+        } catch (final Throwable t) {
+            cb.getFuture().completeExceptionally(t);
+            return cb.getFuture();
         }
 
-        cb.waitFor();
-        return cb.getResponseTimes();
+        final long threadId = JniPingRequest.getNextTID();
+        PacketTrainScheduler.schedule(pingInterval, TimeUnit.MILLISECONDS, seqNum -> {
+            if (seqNum >= count) {
+                return false;
+            }
+            s_pingTracker.sendRequest(new JniPingRequest(host, m_pingerId, seqNum, threadId, timeout == 0? DEFAULT_TIMEOUT : timeout, 0, DEFAULT_PACKET_SIZE, cb));
+            return true;
+        }).whenComplete((sent, t) -> {
+            if (t != null) {
+                cb.getFuture().completeExceptionally(t);
+            }
+        });
+        return cb.getFuture();
     }
 
 }
@@ -39,9 +39,13 @@ import java.net.InetAddress;
 import java.security.SecureRandom;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.icmp.LogPrefixPreservingPingResponseCallback;
+import org.opennms.netmgt.icmp.PacketTrainScheduler;
 import org.opennms.netmgt.icmp.ParallelPingResponseCallback;
 import org.opennms.netmgt.icmp.PingResponseCallback;
 import org.opennms.netmgt.icmp.Pinger;
@@ -311,24 +315,48 @@ public class Jni6Pinger implements Pinger {
      */
     @Override
     public List<Number> parallelPing(final InetAddress host, final int count, final long timeout, final long pingInterval) throws Exception {
-        if (host instanceof Inet4Address) {
-            initialize4();
-            return m_jniPinger.parallelPing(host, count, timeout, pingInterval);
-        } else {
-            initialize6();
-            final ParallelPingResponseCallback cb = new ParallelPingResponseCallback(count);
+        try {
+            return parallelPingAsync(host, count, timeout, pingInterval).get();
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+        }
+    }
 
-            final long threadId = Jni6PingRequest.getNextTID();
-            for (int seqNum = 0; seqNum < count; seqNum++) {
-                final Jni6PingRequest request = new Jni6PingRequest((Inet6Address)host, m_pingerId, seqNum, threadId, timeout == 0? DEFAULT_TIMEOUT : timeout, 0 , DEFAULT_PACKET_SIZE, cb);
-                s_pingTracker.sendRequest(request);
-                Thread.sleep(pingInterval);
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<List<Number>> parallelPingAsync(final InetAddress host, final int count, final long timeout, final long pingInterval) {
+        if (host instanceof Inet4Address) {
+            try {
+                initialize4();
+            } catch (final Throwable t) {
+                final CompletableFuture<List<Number>> future = new CompletableFuture<List<Number>>();
+                future.completeExceptionally(t);
+                return future;
             }
+            return m_jniPinger.parallelPingAsync(host, count, timeout, pingInterval);
+        }
 
-            cb.waitFor();
-            return cb.getResponseTimes();
-
+        final ParallelPingResponseCallback cb = new ParallelPingResponseCallback(count);
+        try {
+            initialize6();
+        } catch (final Throwable t) {
+            cb.getFuture().completeExceptionally(t);
+            return cb.getFuture();
         }
+
+        final long threadId = Jni6PingRequest.getNextTID();
+        PacketTrainScheduler.schedule(pingInterval, TimeUnit.MILLISECONDS, seqNum -> {
+            if (seqNum >= count) {
+                return false;
+            }
+            s_pingTracker.sendRequest(new Jni6PingRequest((Inet6Address)host, m_pingerId, seqNum, threadId, timeout == 0? DEFAULT_TIMEOUT : timeout, 0, DEFAULT_PACKET_SIZE, cb));
+            return true;
+        }).whenComplete((sent, t) -> {
+            if (t != null) {
+                cb.getFuture().completeExceptionally(t);
+            }
+        });
+        return cb.getFuture();
     }
 
-}
\ No newline at end of file
+}
@@ -31,7 +31,9 @@ package org.opennms.netmgt.icmp.jni6;
 import java.net.InetAddress;
 import java.net.NoRouteToHostException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
@@ -229,6 +231,37 @@ public class Jni6PingTest extends TestCase {
         assertTrue("Collection contained some numeric values when all parallel pings should have failed", CollectionMath.countNotNull(items) == 0);
     }
     
+    public void testParallelPingAsyncJni() throws Exception {
+        parallelPingAsyncGood(s_jniPinger);
+    }
+
+    public void testParallelPingAsyncFailureJni() throws Exception {
+        parallelPingAsyncFailure(s_jniPinger);
+    }
+
+    private void parallelPingAsyncGood(Pinger pinger) throws Exception {
+        final long start = System.currentTimeMillis();
+        final CompletableFuture<List<Number>> future = pinger.parallelPingAsync(m_goodHost, 20, PingConstants.DEFAULT_TIMEOUT, 50);
+        // the packets are sent from the shared timer, so the call returns before the train is complete
+        assertFalse(future.isDone());
+        List<Number> items = future.get(20 * 50 + PingConstants.DEFAULT_TIMEOUT + 5000, TimeUnit.MILLISECONDS);
+        assertTrue("The train completed before the last packet was due", System.currentTimeMillis() - start >= 19 * 50);
+        printResponse(items);
+        assertEquals(20, items.size());
+        for (Number item : items) {
+            assertNotNull("Found a null reponse time in the response", item);
+            assertTrue("Negative RTT value returned from ping", item.floatValue() > 0);
+        }
+    }
+
+    private void parallelPingAsyncFailure(Pinger pinger) throws Exception {
+        final CompletableFuture<List<Number>> future = pinger.parallelPingAsync(m_badHost, 20, PingConstants.DEFAULT_TIMEOUT, 50);
+        List<Number> items = future.get(20 * 50 + PingConstants.DEFAULT_TIMEOUT + 5000, TimeUnit.MILLISECONDS);
+        printResponse(items);
+        assertEquals(20, items.size());
+        assertTrue("Collection contained some numeric values when all parallel pings should have failed", CollectionMath.countNotNull(items) == 0);
+    }
+
     private void printResponse(List<Number> items) {
         Long passed = CollectionMath.countNotNull(items);
         Long failed = CollectionMath.countNull(items);
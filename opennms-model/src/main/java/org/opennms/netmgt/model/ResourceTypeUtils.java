@@ -38,7 +38,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.regex.Pattern;
 
-import org.opennms.core.utils.PropertiesCache;
+import org.opennms.core.utils.WriteBehindPropertiesCache;
 import org.opennms.netmgt.rrd.RrdFileConstants;
 import org.opennms.netmgt.rrd.RrdUtils;
 import org.slf4j.Logger;
@@ -79,7 +79,7 @@ public abstract class ResourceTypeUtils {
      */
     public static final String FOREIGN_SOURCE_DIRECTORY = "fs";
 
-    private static final PropertiesCache s_cache = new PropertiesCache();
+    private static final WriteBehindPropertiesCache s_cache = new WriteBehindPropertiesCache();
 
     private static final String[] s_numericTypes = new String[] { "counter", "gauge", "timeticks", "integer", "octetstring" };
 
@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2004-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a bounded number of JRobin {@link RrdDb} handles open so that
+ * repeated updates and fetches against the same file don't pay for opening
+ * the file and parsing its header every time.
+ *
+ * <p>Handles are reference counted: {@link #acquire(String)} hands out the
+ * shared handle for a file and every caller must give it back with
+ * {@link #release(RrdDb)}.  Once more than {@link #getCapacity()} handles are
+ * open, the least recently used handles that nobody is holding are closed.
+ * Handles that are in use are never closed underneath their users.</p>
+ *
+ * <p>A single handle is shared between writers and readers of the same file;
+ * JRobin serializes {@link RrdDb#store} and {@link RrdDb#fetchData} on the
+ * handle itself, so a fetch running during an update sees either the old or
+ * the new row, never a partial one.</p>
+ */
+public class JRobinRrdDbCache implements JRobinRrdDbCacheMBean {
+    private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdDbCache.class);
+
+    /** The name the cache statistics are published under in the platform MBean server. */
+    public static final String OBJECT_NAME = "OpenNMS:Name=JRobinRrdDbCache";
+
+    private static class Entry {
+        private final String m_path;
+        private final RrdDb m_rrdDb;
+        private int m_references = 0;
+        private boolean m_retired = false;
+
+        public Entry(String path, RrdDb rrdDb) {
+            m_path = path;
+            m_rrdDb = rrdDb;
+        }
+    }
+
+    private final int m_capacity;
+
+    // access-ordered, so iteration starts with the least recently used handle
+    private final LinkedHashMap<String, Entry> m_entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final Map<RrdDb, Entry> m_entriesByHandle = new IdentityHashMap<RrdDb, Entry>();
+
+    private long m_hits = 0;
+    private long m_misses = 0;
+    private long m_evictions = 0;
+
+    /**
+     * <p>Constructor for JRobinRrdDbCache.</p>
+     *
+     * @param capacity the number of idle handles to keep open
+     */
+    public JRobinRrdDbCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        m_capacity = capacity;
+    }
+
+    /**
+     * Returns the open handle for the given file, opening it if necessary.
+     * The handle must be handed back with {@link #release(RrdDb)}.
+     *
+     * @param path the path of the RRD file
+     * @return an open {@link org.jrobin.core.RrdDb}
+     * @throws java.io.IOException if the file cannot be opened
+     * @throws org.jrobin.core.RrdException if the file is not a valid RRD
+     */
+    public RrdDb acquire(final String path) throws IOException, RrdException {
+        final List<Entry> toClose = new ArrayList<Entry>();
+        try {
+            synchronized (this) {
+                final Entry entry = m_entries.get(path);
+                if (entry != null) {
+                    if (new File(path).exists()) {
+                        entry.m_references++;
+                        m_hits++;
+                        return entry.m_rrdDb;
+                    }
+                    // the file was removed behind our back; don't keep writing to the unlinked copy
+                    retire(entry, toClose);
+                }
+                m_misses++;
+            }
+
+            // Open outside of the lock so that a slow open doesn't block every other file
+            final RrdDb rrdDb = new RrdDb(path);
+
+            synchronized (this) {
+                Entry entry = m_entries.get(path);
+                if (entry != null) {
+                    // somebody else opened the same file in the meantime; use theirs
+                    entry.m_references++;
+                    toClose.add(new Entry(path, rrdDb));
+                    return entry.m_rrdDb;
+                }
+
+                entry = new Entry(path, rrdDb);
+                entry.m_references++;
+                m_entries.put(path, entry);
+                m_entriesByHandle.put(rrdDb, entry);
+                trim(toClose);
+                return rrdDb;
+            }
+        } finally {
+            closeAll(toClose);
+        }
+    }
+
+    /**
+     * Hands back a handle obtained from {@link #acquire(String)}.  Handles
+     * that were not handed out by this cache are simply closed.
+     *
+     * @param rrdDb the handle to release
+     */
+    public void release(final RrdDb rrdDb) {
+        final List<Entry> toClose = new ArrayList<Entry>();
+        synchronized (this) {
+            final Entry entry = m_entriesByHandle.get(rrdDb);
+            if (entry == null) {
+                toClose.add(new Entry(null, rrdDb));
+            } else {
+                entry.m_references--;
+                if (entry.m_references <= 0 && entry.m_retired) {
+                    m_entriesByHandle.remove(rrdDb);
+                    toClose.add(entry);
+                } else {
+                    trim(toClose);
+                }
+            }
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * Drops the handle for the given file, e.g. because the file is about to
+     * be recreated.  If the handle is still in use it is closed once its last
+     * user releases it.
+     *
+     * @param path the path of the RRD file
+     */
+    public void invalidate(final String path) {
+        final List<Entry> toClose = new ArrayList<Entry>();
+        synchronized (this) {
+            final Entry entry = m_entries.get(path);
+            if (entry != null) {
+                retire(entry, toClose);
+            }
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * Closes every idle handle.  Handles that are still in use are closed
+     * when they are released.
+     */
+    public void close() {
+        final List<Entry> toClose = new ArrayList<Entry>();
+        synchronized (this) {
+            for (final Entry entry : new ArrayList<Entry>(m_entries.values())) {
+                retire(entry, toClose);
+            }
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * Publishes the cache statistics in the platform MBean server under
+     * {@link #OBJECT_NAME}, replacing any previously registered cache.
+     */
+    public void register() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (final JMException e) {
+            LOG.warn("Unable to register {} in the MBean server", OBJECT_NAME, e);
+        }
+    }
+
+    private void retire(final Entry entry, final List<Entry> toClose) {
+        m_entries.remove(entry.m_path);
+        entry.m_retired = true;
+        if (entry.m_references <= 0) {
+            m_entriesByHandle.remove(entry.m_rrdDb);
+            toClose.add(entry);
+        }
+    }
+
+    private void trim(final List<Entry> toClose) {
+        int excess = m_entries.size() - m_capacity;
+        final Iterator<Entry> it = m_entries.values().iterator();
+        while (excess > 0 && it.hasNext()) {
+            final Entry entry = it.next();
+            if (entry.m_references > 0) {
+                continue;
+            }
+            it.remove();
+            entry.m_retired = true;
+            m_entriesByHandle.remove(entry.m_rrdDb);
+            toClose.add(entry);
+            m_evictions++;
+            excess--;
+        }
+    }
+
+    private static void closeAll(final List<Entry> entries) {
+        for (final Entry entry : entries) {
+            try {
+                entry.m_rrdDb.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to close RRD file {}", entry.m_rrdDb.getPath(), e);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getCapacity() {
+        return m_capacity;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized int getOpenHandles() {
+        return m_entriesByHandle.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized int getHandlesInUse() {
+        int inUse = 0;
+        for (final Entry entry : m_entriesByHandle.values()) {
+            if (entry.m_references > 0) {
+                inUse++;
+            }
+        }
+        return inUse;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized long getHits() {
+        return m_hits;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized long getMisses() {
+        return m_misses;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized double getHitRate() {
+        final long requests = m_hits + m_misses;
+        return requests == 0 ? 0.0 : (100.0 * m_hits) / requests;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized long getEvictions() {
+        return m_evictions;
+    }
+}
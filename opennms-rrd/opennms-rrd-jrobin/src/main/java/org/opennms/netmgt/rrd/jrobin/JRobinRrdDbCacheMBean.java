@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2004-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+/**
+ * Statistics for the {@link JRobinRrdDbCache}.
+ */
+public interface JRobinRrdDbCacheMBean {
+    /**
+     * @return The maximum number of idle handles kept open
+     */
+    public int getCapacity();
+
+    /**
+     * @return The number of RRD handles that are currently open
+     */
+    public int getOpenHandles();
+
+    /**
+     * @return The number of open handles that are currently in use
+     */
+    public int getHandlesInUse();
+
+    /**
+     * @return The number of requests that were satisfied with an already open handle
+     */
+    public long getHits();
+
+    /**
+     * @return The number of requests that had to open the RRD file
+     */
+    public long getMisses();
+
+    /**
+     * @return The percentage of requests satisfied with an already open handle
+     */
+    public double getHitRate();
+
+    /**
+     * @return The number of handles closed to make room for other files
+     */
+    public long getEvictions();
+}
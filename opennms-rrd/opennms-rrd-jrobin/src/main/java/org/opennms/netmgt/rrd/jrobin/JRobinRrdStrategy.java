@@ -66,6 +66,11 @@ import org.slf4j.LoggerFactory;
  * FILE mode (NIO is too memory consuming for the large number of files that we
  * open)
  *
+ * When org.opennms.rrd.jrobin.handleCache is enabled, open RrdDb handles are
+ * kept in a bounded {@link JRobinRrdDbCache} and shared between updates and
+ * fetches.  Since the number of open files is then bounded as well, the
+ * memory-mapped NIO backend becomes a reasonable choice.
+ *
  * @author ranger
  * @version $Id: $
  */
@@ -73,6 +78,9 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdStrategy.class);
     private static final String BACKEND_FACTORY_PROPERTY = "org.jrobin.core.RrdBackendFactory";
     private static final String DEFAULT_BACKEND_FACTORY = "FILE";
+    private static final String HANDLE_CACHE_PROPERTY = "org.opennms.rrd.jrobin.handleCache";
+    private static final String HANDLE_CACHE_SIZE_PROPERTY = "org.opennms.rrd.jrobin.handleCache.size";
+    private static final int DEFAULT_HANDLE_CACHE_SIZE = 1000;
 
     /*
      * Ensure that we only initialize certain things *once* per
@@ -82,6 +90,12 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
 
     private Properties m_configurationProperties;
 
+    /*
+     * When set, RrdDb handles are shared and kept open between calls
+     * instead of being opened and closed for every update and fetch.
+     */
+    private JRobinRrdDbCache m_handleCache;
+
     /**
      * An extremely simple Plottable for holding static datasources that
      * can't be represented with an SDEF -- currently used only for PERCENT
@@ -138,6 +152,31 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
                 LOG.error("Could not set default JRobin RRD factory", e);
             }
         }
+
+        if (m_handleCache != null) {
+            m_handleCache.close();
+            m_handleCache = null;
+        }
+        if (m_configurationProperties != null && Boolean.parseBoolean(m_configurationProperties.getProperty(HANDLE_CACHE_PROPERTY, "false"))) {
+            int size = DEFAULT_HANDLE_CACHE_SIZE;
+            try {
+                size = Integer.parseInt(m_configurationProperties.getProperty(HANDLE_CACHE_SIZE_PROPERTY, String.valueOf(DEFAULT_HANDLE_CACHE_SIZE)));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value for {}, using {}", HANDLE_CACHE_SIZE_PROPERTY, DEFAULT_HANDLE_CACHE_SIZE, e);
+            }
+            LOG.info("Caching up to {} open JRobin RRD handles", size);
+            m_handleCache = new JRobinRrdDbCache(size);
+            m_handleCache.register();
+        }
+    }
+
+    /**
+     * <p>getHandleCache</p>
+     *
+     * @return the cache of open RRD handles, or null if handles are opened and closed on every call
+     */
+    public JRobinRrdDbCache getHandleCache() {
+        return m_handleCache;
     }
 
     /**
@@ -148,7 +187,11 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
      */
     @Override
     public void closeFile(final RrdDb rrdFile) throws Exception {
-        rrdFile.close();
+        if (m_handleCache != null) {
+            m_handleCache.release(rrdFile);
+        } else {
+            rrdFile.close();
+        }
     }
 
     /** {@inheritDoc} */
@@ -203,6 +246,11 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         }
         LOG.info("createRRD: creating RRD file {}", rrdDef.getPath());
 
+        if (m_handleCache != null) {
+            // don't keep handing out a handle to a file that is being replaced
+            m_handleCache.invalidate(rrdDef.getPath());
+        }
+
         RrdDb rrd = new RrdDb(rrdDef);
         rrd.close();
 
@@ -223,6 +271,9 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
      */
     @Override
     public RrdDb openFile(final String fileName) throws Exception {
+        if (m_handleCache != null) {
+            return m_handleCache.acquire(fileName);
+        }
         return new RrdDb(fileName);
     }
 
@@ -266,7 +317,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         try {
             long now = System.currentTimeMillis();
             long collectTime = (now - (now % interval)) / 1000L;
-            rrd = new RrdDb(fileName, true);
+            rrd = openForFetch(fileName);
             FetchData data = rrd.createFetchRequest(consolidationFunction, collectTime, collectTime).fetchData();
             LOG.debug(data.toString());
             double[] vals = data.getValues(ds);
@@ -280,11 +331,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
             throw new org.opennms.netmgt.rrd.RrdException("Exception occurred fetching data from " + fileName, e);
         } finally {
             if (rrd != null) {
-                try {
-                    rrd.close();
-                } catch (IOException e) {
-                    LOG.error("Failed to close rrd file: {}", fileName, e);
-                }
+                closeAfterFetch(rrd, fileName);
             }
         }
     }
@@ -294,7 +341,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     public Double fetchLastValueInRange(final String fileName, final String ds, final int interval, final int range) throws NumberFormatException, org.opennms.netmgt.rrd.RrdException {
         RrdDb rrd = null;
         try {
-        	rrd = new RrdDb(fileName, true);
+        	rrd = openForFetch(fileName);
          	long now = System.currentTimeMillis();
             long latestUpdateTime = (now - (now % interval)) / 1000L;
             long earliestUpdateTime = ((now - (now % interval)) - range) / 1000L;
@@ -322,15 +369,30 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
             throw new org.opennms.netmgt.rrd.RrdException("Exception occurred fetching data from " + fileName, e);
         } finally {
             if (rrd != null) {
-                try {
-                    rrd.close();
-                } catch (IOException e) {
-                    LOG.error("Failed to close rrd file: {}", fileName, e);
-                }
+                closeAfterFetch(rrd, fileName);
             }
         }
     }
 
+    private RrdDb openForFetch(final String fileName) throws IOException, RrdException {
+        if (m_handleCache != null) {
+            return m_handleCache.acquire(fileName);
+        }
+        return new RrdDb(fileName, true);
+    }
+
+    private void closeAfterFetch(final RrdDb rrd, final String fileName) {
+        if (m_handleCache != null) {
+            m_handleCache.release(rrd);
+            return;
+        }
+        try {
+            rrd.close();
+        } catch (IOException e) {
+            LOG.error("Failed to close rrd file: {}", fileName, e);
+        }
+    }
+
     private Color getColor(final String colorValue) {
         int rVal = Integer.parseInt(colorValue.substring(0, 2), 16);
         int gVal = Integer.parseInt(colorValue.substring(2, 4), 16);
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2004-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdDef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.rrd.RrdDataSource;
+import org.opennms.netmgt.rrd.RrdUtils;
+import org.opennms.test.FileAnticipator;
+
+public class JRobinRrdDbCacheTest {
+
+    private JRobinRrdStrategy m_strategy;
+    private FileAnticipator m_fileAnticipator;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(true, "DEBUG");
+
+        m_strategy = new JRobinRrdStrategy();
+        m_fileAnticipator = new FileAnticipator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_strategy.getHandleCache() != null) {
+            m_strategy.getHandleCache().close();
+        }
+        m_fileAnticipator.deleteExpected();
+        m_fileAnticipator.tearDown();
+    }
+
+    @Test
+    public void testHandleIsShared() throws Exception {
+        JRobinRrdDbCache cache = new JRobinRrdDbCache(10);
+        File rrdFile = createRrdFile("foo");
+
+        RrdDb first = cache.acquire(rrdFile.getAbsolutePath());
+        RrdDb second = cache.acquire(rrdFile.getAbsolutePath());
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(50.0, cache.getHitRate(), 0.0);
+        assertEquals(1, cache.getOpenHandles());
+        assertEquals(1, cache.getHandlesInUse());
+
+        cache.release(first);
+        cache.release(second);
+        assertEquals(1, cache.getOpenHandles());
+        assertEquals(0, cache.getHandlesInUse());
+        assertFalse(first.isClosed());
+
+        cache.close();
+        assertTrue(first.isClosed());
+        assertEquals(0, cache.getOpenHandles());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIdleHandleIsEvicted() throws Exception {
+        JRobinRrdDbCache cache = new JRobinRrdDbCache(2);
+        File foo = createRrdFile("foo");
+        File bar = createRrdFile("bar");
+        File baz = createRrdFile("baz");
+
+        RrdDb fooDb = cache.acquire(foo.getAbsolutePath());
+        cache.release(fooDb);
+        RrdDb barDb = cache.acquire(bar.getAbsolutePath());
+        cache.release(barDb);
+
+        // touch foo so that bar becomes the least recently used
+        cache.release(cache.acquire(foo.getAbsolutePath()));
+
+        RrdDb bazDb = cache.acquire(baz.getAbsolutePath());
+        cache.release(bazDb);
+
+        assertEquals(2, cache.getOpenHandles());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(barDb.isClosed());
+        assertFalse(fooDb.isClosed());
+        assertFalse(bazDb.isClosed());
+
+        cache.close();
+    }
+
+    @Test
+    public void testHandleInUseIsNotClosed() throws Exception {
+        JRobinRrdDbCache cache = new JRobinRrdDbCache(1);
+        File foo = createRrdFile("foo");
+        File bar = createRrdFile("bar");
+
+        RrdDb fooDb = cache.acquire(foo.getAbsolutePath());
+        RrdDb barDb = cache.acquire(bar.getAbsolutePath());
+        assertEquals(2, cache.getOpenHandles());
+        assertFalse(fooDb.isClosed());
+
+        cache.release(fooDb);
+        assertTrue(fooDb.isClosed());
+        assertEquals(1, cache.getOpenHandles());
+
+        cache.invalidate(bar.getAbsolutePath());
+        assertFalse(barDb.isClosed());
+        cache.release(barDb);
+        assertTrue(barDb.isClosed());
+        assertEquals(0, cache.getOpenHandles());
+    }
+
+    @Test
+    public void testStrategyWithHandleCache() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("org.jrobin.core.RrdBackendFactory", "FILE");
+        p.setProperty("org.opennms.rrd.jrobin.handleCache", "true");
+        p.setProperty("org.opennms.rrd.jrobin.handleCache.size", "5");
+        m_strategy.setConfigurationProperties(p);
+        JRobinRrdDbCache cache = m_strategy.getHandleCache();
+        assertEquals(5, cache.getCapacity());
+
+        File rrdFile = createRrdFile("foo");
+        long now = System.currentTimeMillis() / 1000;
+
+        RrdDb rrdDb = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.updateFile(rrdDb, "test", (now - 300) + ":1.0");
+        m_strategy.closeFile(rrdDb);
+
+        RrdDb again = m_strategy.openFile(rrdFile.getAbsolutePath());
+        assertSame(rrdDb, again);
+        m_strategy.updateFile(again, "test", now + ":2.0");
+        m_strategy.closeFile(again);
+
+        m_strategy.fetchLastValue(rrdFile.getAbsolutePath(), "bar", 300000);
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        assertEquals(0, cache.getHandlesInUse());
+        assertFalse(rrdDb.isClosed());
+    }
+
+    /**
+     * Compares update throughput with and without the handle cache over a
+     * synthetic set of files.  Not run by default since it only prints timings.
+     */
+    @Test
+    @Ignore
+    public void testUpdateThroughput() throws Exception {
+        final int files = 200;
+        final int rounds = 20;
+
+        List<File> rrdFiles = new ArrayList<File>(files);
+        for (int i = 0; i < files; i++) {
+            rrdFiles.add(createRrdFile("bench" + i));
+        }
+
+        long timestamp = 1000 + 300;
+        for (String mode : new String[] { "false", "true" }) {
+            Properties p = new Properties();
+            p.setProperty("org.jrobin.core.RrdBackendFactory", "FILE");
+            p.setProperty("org.opennms.rrd.jrobin.handleCache", mode);
+            p.setProperty("org.opennms.rrd.jrobin.handleCache.size", String.valueOf(files));
+            m_strategy.setConfigurationProperties(p);
+
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                timestamp += 300;
+                for (File rrdFile : rrdFiles) {
+                    RrdDb rrdDb = m_strategy.openFile(rrdFile.getAbsolutePath());
+                    m_strategy.updateFile(rrdDb, "bench", timestamp + ":" + round);
+                    m_strategy.closeFile(rrdDb);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.err.printf("handleCache=%s: %.0f updates/s%n", mode, (files * rounds) / (elapsed / 1e9));
+        }
+    }
+
+    private File createRrdFile(String name) throws Exception {
+        List<RrdDataSource> dataSources = new ArrayList<RrdDataSource>();
+        dataSources.add(new RrdDataSource("bar", "GAUGE", 3000, "U", "U"));
+        List<String> rraList = new ArrayList<String>();
+        rraList.add("RRA:AVERAGE:0.5:1:2016");
+        RrdDef def = m_strategy.createDefinition("hello!", m_fileAnticipator.getTempDir().getAbsolutePath(), name, 300, dataSources, rraList);
+        m_strategy.createFile(def, null);
+
+        return m_fileAnticipator.expecting(name + RrdUtils.getExtension());
+    }
+}
@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2004-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.tcp;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReading;
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReadings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams performance data readings to an external listener over a single,
+ * long-lived TCP connection.
+ *
+ * <p>Each batch is written as a length-delimited
+ * {@link PerformanceDataReadings} message (see
+ * {@link com.google.protobuf.MessageLite#writeDelimitedTo(OutputStream)}), so
+ * the receiver reads messages with
+ * {@link PerformanceDataReadings#parseDelimitedFrom(java.io.InputStream)}
+ * until the connection closes.</p>
+ *
+ * <p>Readings wait in a bounded in-memory queue.  When the queue is full,
+ * while older readings are still in the spool, or when a batch cannot be
+ * sent because the receiver is down, readings go to an optional
+ * {@link PerformanceDataSpool}.  After a reconnect the spool is
+ * drained before newer readings are sent, so readings arrive in the order
+ * they were taken.  Readings are dropped when the spool is full, or when
+ * there is no spool and the queue is full or the receiver is down.</p>
+ *
+ * <p>{@link #stop()} moves the readings still in memory to the spool, so
+ * with a spool nothing is lost across an orderly restart.  Readings in
+ * memory are lost if the process dies without stopping the exporter.  A
+ * batch that fails partway through is sent again in full, so the receiver
+ * may see some readings twice.</p>
+ */
+public class PerformanceDataExporter {
+    private static final Logger LOG = LoggerFactory.getLogger(PerformanceDataExporter.class);
+
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final long MIN_RECONNECT_DELAY = 1000;
+    private static final long MAX_RECONNECT_DELAY = 30000;
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private final String m_host;
+    private final int m_port;
+    private final BlockingQueue<PerformanceDataReading> m_queue;
+    private final PerformanceDataSpool m_spool;
+    private final Thread m_thread;
+    private volatile boolean m_running = false;
+
+    private Socket m_socket;
+    private OutputStream m_out;
+
+    private final AtomicLong m_queued = new AtomicLong();
+    private final AtomicLong m_sent = new AtomicLong();
+    private final AtomicLong m_spooled = new AtomicLong();
+    private final AtomicLong m_dropped = new AtomicLong();
+    private final AtomicLong m_connects = new AtomicLong();
+
+    /**
+     * <p>Constructor for PerformanceDataExporter.</p>
+     *
+     * @param host the host name or address of the receiver
+     * @param port the TCP port of the receiver
+     * @param queueSize the number of readings to buffer in memory
+     * @param spoolFile the overflow spool file, or null to drop readings that don't fit in memory
+     * @param spoolSize the size of the overflow spool file in bytes
+     * @throws java.io.IOException if the spool file cannot be opened
+     */
+    public PerformanceDataExporter(final String host, final int port, final int queueSize, final File spoolFile, final int spoolSize) throws IOException {
+        m_host = host;
+        m_port = port;
+        m_queue = new LinkedBlockingQueue<PerformanceDataReading>(queueSize);
+        m_spool = spoolFile == null ? null : new PerformanceDataSpool(spoolFile, spoolSize);
+        m_thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                PerformanceDataExporter.this.run();
+            }
+        }, getClass().getSimpleName());
+        m_thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the sender thread.
+     */
+    public synchronized void start() {
+        if (!m_running) {
+            m_running = true;
+            m_thread.start();
+        }
+    }
+
+    /**
+     * Stops the sender thread and closes the connection and the spool.
+     * Readings still in memory are moved to the spool so they survive a
+     * restart.
+     *
+     * @throws java.lang.InterruptedException if interrupted while waiting for the sender thread
+     */
+    public synchronized void stop() throws InterruptedException {
+        m_running = false;
+        m_thread.interrupt();
+        m_thread.join();
+        disconnect();
+
+        final List<PerformanceDataReading> remaining = new ArrayList<PerformanceDataReading>();
+        m_queue.drainTo(remaining);
+        spool(remaining);
+
+        if (m_spool != null) {
+            try {
+                m_spool.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to close performance data spool", e);
+            }
+        }
+    }
+
+    /**
+     * Queues a reading for export.  Never waits: the reading goes straight
+     * to the spool when the queue is full, or while the spool is being
+     * replayed, since the sender does not take from the queue until the
+     * spool is empty.
+     *
+     * @param reading the reading to export
+     */
+    public void offer(final PerformanceDataReading reading) {
+        if ((m_spool == null || m_spool.isEmpty()) && m_queue.offer(reading)) {
+            m_queued.incrementAndGet();
+        } else {
+            spool(reading);
+        }
+    }
+
+    private void run() {
+        long reconnectDelay = MIN_RECONNECT_DELAY;
+        final List<PerformanceDataReading> batch = new ArrayList<PerformanceDataReading>(MAX_BATCH_SIZE);
+        while (m_running) {
+            try {
+                if (m_socket == null) {
+                    if (!connect()) {
+                        // Don't let writers block on a full queue while the receiver is away
+                        batch.clear();
+                        m_queue.drainTo(batch);
+                        spool(batch);
+                        Thread.sleep(reconnectDelay);
+                        reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY);
+                        continue;
+                    }
+                    reconnectDelay = MIN_RECONNECT_DELAY;
+                }
+
+                // Older readings in the spool go out before anything newer
+                if (m_spool != null && !m_spool.isEmpty()) {
+                    final PerformanceDataSpool.Batch spooled = m_spool.peek(MAX_BATCH_SIZE);
+                    if (send(spooled.getReadings())) {
+                        m_spool.commit(spooled);
+                    }
+                    continue;
+                }
+
+                batch.clear();
+                final PerformanceDataReading first = m_queue.poll(1000, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    m_queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    if (!send(batch)) {
+                        spool(batch);
+                    }
+                }
+            } catch (final InterruptedException e) {
+                LOG.debug("Performance data exporter interrupted");
+            } catch (final Throwable e) {
+                LOG.error("Unexpected exception while exporting performance data", e);
+            }
+        }
+    }
+
+    private boolean connect() {
+        Socket socket = null;
+        try {
+            socket = new Socket();
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(InetAddressUtils.addr(m_host), m_port), CONNECT_TIMEOUT);
+            m_out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+            m_socket = socket;
+            m_connects.incrementAndGet();
+            LOG.info("Connected to performance data receiver at {}:{}", m_host, m_port);
+            return true;
+        } catch (final Throwable e) {
+            LOG.warn("Unable to connect to performance data receiver at {}:{}: {}", m_host, m_port, e.getMessage());
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (final IOException ex) {
+                    // ignore
+                }
+            }
+            return false;
+        }
+    }
+
+    private boolean send(final List<PerformanceDataReading> readings) {
+        if (readings.isEmpty()) {
+            return true;
+        }
+        try {
+            PerformanceDataReadings.newBuilder().addAllMessage(readings).build().writeDelimitedTo(m_out);
+            m_out.flush();
+            m_sent.addAndGet(readings.size());
+            return true;
+        } catch (final IOException e) {
+            LOG.warn("Lost connection to performance data receiver at {}:{}: {}", m_host, m_port, e.getMessage());
+            disconnect();
+            return false;
+        }
+    }
+
+    private void disconnect() {
+        if (m_socket != null) {
+            try {
+                m_socket.close();
+            } catch (final IOException e) {
+                LOG.warn("IOException when closing TCP performance data socket: {}", e.getMessage());
+            }
+        }
+        m_socket = null;
+        m_out = null;
+    }
+
+    private void spool(final List<PerformanceDataReading> readings) {
+        for (final PerformanceDataReading reading : readings) {
+            spool(reading);
+        }
+    }
+
+    private void spool(final PerformanceDataReading reading) {
+        if (m_spool != null && m_spool.append(reading)) {
+            m_spooled.incrementAndGet();
+        } else {
+            m_dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * <p>getQueueSize</p>
+     *
+     * @return the number of readings waiting in memory
+     */
+    public int getQueueSize() {
+        return m_queue.size();
+    }
+
+    /**
+     * <p>getSpoolSize</p>
+     *
+     * @return the number of readings waiting in the spool
+     */
+    public int getSpoolSize() {
+        return m_spool == null ? 0 : m_spool.size();
+    }
+
+    /**
+     * <p>getQueued</p>
+     *
+     * @return the number of readings accepted into the in-memory queue
+     */
+    public long getQueued() {
+        return m_queued.get();
+    }
+
+    /**
+     * <p>getSent</p>
+     *
+     * @return the number of readings written to the receiver
+     */
+    public long getSent() {
+        return m_sent.get();
+    }
+
+    /**
+     * <p>getSpooled</p>
+     *
+     * @return the number of readings written to the spool
+     */
+    public long getSpooled() {
+        return m_spooled.get();
+    }
+
+    /**
+     * <p>getDropped</p>
+     *
+     * @return the number of readings that were lost because both the queue and the spool were full
+     */
+    public long getDropped() {
+        return m_dropped.get();
+    }
+
+    /**
+     * <p>getConnects</p>
+     *
+     * @return the number of times a connection to the receiver was established
+     */
+    public long getConnects() {
+        return m_connects.get();
+    }
+
+    /**
+     * <p>getStats</p>
+     *
+     * @return a summary of the exporter counters
+     */
+    public String getStats() {
+        return "queued=" + getQueued()
+                + ", sent=" + getSent()
+                + ", spooled=" + getSpooled()
+                + ", dropped=" + getDropped()
+                + ", connects=" + getConnects()
+                + ", inQueue=" + getQueueSize()
+                + ", inSpool=" + getSpoolSize();
+    }
+}
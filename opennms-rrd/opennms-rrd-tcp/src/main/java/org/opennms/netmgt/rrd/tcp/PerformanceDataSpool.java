@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2004-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.tcp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReading;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * A fixed-size, memory-mapped FIFO of {@link PerformanceDataReading}s that
+ * could not be sent right away.  The read and write positions are kept in
+ * the file header, so readings spooled before a restart are replayed after
+ * it.
+ *
+ * <p>Readings are only removed from the spool once {@link #commit(Batch)} is
+ * called, so a batch that fails to send is offered again on the next
+ * {@link #peek(int)}.</p>
+ */
+class PerformanceDataSpool implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(PerformanceDataSpool.class);
+
+    private static final int MAGIC = 0x4f4e5350; // "ONSP"
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * A set of readings read from the spool along with the position the
+     * spool advances to once they have been sent.
+     */
+    static class Batch {
+        private final List<PerformanceDataReading> m_readings;
+        private final long m_nextHead;
+        private final int m_records;
+        private final int m_epoch;
+
+        private Batch(List<PerformanceDataReading> readings, long nextHead, int records, int epoch) {
+            m_readings = readings;
+            m_nextHead = nextHead;
+            m_records = records;
+            m_epoch = epoch;
+        }
+
+        public List<PerformanceDataReading> getReadings() {
+            return m_readings;
+        }
+    }
+
+    private final File m_file;
+    private final RandomAccessFile m_raf;
+    private final MappedByteBuffer m_buffer;
+    private final int m_capacity;
+    private int m_head;
+    private int m_tail;
+    private int m_count;
+
+    /*
+     * Compaction moves the spooled records to the start of the file, so
+     * batches remember their position relative to m_base, which grows by
+     * the distance the records were moved.  m_epoch changes whenever the
+     * spool is reset, which invalidates any outstanding batch.
+     */
+    private long m_base = 0;
+    private int m_epoch = 0;
+
+    /**
+     * <p>Constructor for PerformanceDataSpool.</p>
+     *
+     * @param file the spool file, created if it doesn't exist
+     * @param capacity the size of the spool file in bytes
+     * @throws java.io.IOException if the file cannot be mapped
+     */
+    public PerformanceDataSpool(File file, int capacity) throws IOException {
+        if (capacity <= HEADER_SIZE) {
+            throw new IllegalArgumentException("spool capacity must be larger than " + HEADER_SIZE + " bytes");
+        }
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        m_file = file;
+        m_capacity = capacity;
+        m_raf = new RandomAccessFile(file, "rw");
+        m_buffer = m_raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        m_head = m_buffer.getInt(4);
+        m_tail = m_buffer.getInt(8);
+        if (m_buffer.getInt(0) != MAGIC || m_head < HEADER_SIZE || m_tail < m_head || m_tail > m_capacity) {
+            reset();
+        } else {
+            m_count = countRecords();
+            if (m_count > 0) {
+                LOG.info("Found {} spooled performance data readings in {}", m_count, m_file);
+            }
+        }
+    }
+
+    /**
+     * Appends a reading to the spool.
+     *
+     * @param reading the reading to spool
+     * @return false if the spool has no room for the reading
+     */
+    public synchronized boolean append(PerformanceDataReading reading) {
+        final byte[] bytes = reading.toByteArray();
+        final int needed = 4 + bytes.length;
+        if (m_tail + needed > m_capacity) {
+            compact();
+            if (m_tail + needed > m_capacity) {
+                return false;
+            }
+        }
+        m_buffer.putInt(m_tail, bytes.length);
+        m_buffer.position(m_tail + 4);
+        m_buffer.put(bytes);
+        m_tail += needed;
+        m_count++;
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Reads up to max readings from the head of the spool without removing
+     * them.
+     *
+     * @param max the maximum number of readings to return
+     * @return a batch, empty if there is nothing spooled
+     */
+    public synchronized Batch peek(int max) {
+        final List<PerformanceDataReading> readings = new ArrayList<PerformanceDataReading>();
+        int position = m_head;
+        int records = 0;
+        while (records < max && position < m_tail) {
+            final int length = m_buffer.getInt(position);
+            if (length < 0 || position + 4 + length > m_tail) {
+                LOG.warn("Spool file {} is corrupt at offset {}, discarding {} spooled readings", m_file, position, m_count);
+                reset();
+                return new Batch(new ArrayList<PerformanceDataReading>(), m_base + m_head, 0, m_epoch);
+            }
+            final byte[] bytes = new byte[length];
+            m_buffer.position(position + 4);
+            m_buffer.get(bytes);
+            position += 4 + length;
+            records++;
+            try {
+                readings.add(PerformanceDataReading.parseFrom(bytes));
+            } catch (final InvalidProtocolBufferException e) {
+                LOG.warn("Skipping unreadable spooled reading in {}: {}", m_file, e.getMessage());
+            }
+        }
+        return new Batch(readings, m_base + position, records, m_epoch);
+    }
+
+    /**
+     * Removes the readings returned by {@link #peek(int)} from the spool.
+     *
+     * @param batch the batch that was sent
+     */
+    public synchronized void commit(Batch batch) {
+        final long nextHead = batch.m_nextHead - m_base;
+        if (batch.m_epoch != m_epoch || nextHead <= m_head || nextHead > m_tail) {
+            // the spool was reset since the batch was read
+            return;
+        }
+        m_count -= batch.m_records;
+        m_head = (int) nextHead;
+        if (m_head == m_tail) {
+            // everything has been sent, start over at the beginning of the file
+            m_base += m_head - HEADER_SIZE;
+            m_head = m_tail = HEADER_SIZE;
+            m_count = 0;
+        }
+        writeHeader();
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of readings in the spool
+     */
+    public synchronized int size() {
+        return m_count;
+    }
+
+    /**
+     * <p>isEmpty</p>
+     *
+     * @return true if nothing is spooled
+     */
+    public synchronized boolean isEmpty() {
+        return m_count == 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void close() throws IOException {
+        m_buffer.force();
+        m_raf.close();
+    }
+
+    private void compact() {
+        if (m_head == HEADER_SIZE) {
+            return;
+        }
+        final int length = m_tail - m_head;
+        final byte[] bytes = new byte[length];
+        m_buffer.position(m_head);
+        m_buffer.get(bytes);
+        m_buffer.position(HEADER_SIZE);
+        m_buffer.put(bytes);
+        m_base += m_head - HEADER_SIZE;
+        m_head = HEADER_SIZE;
+        m_tail = HEADER_SIZE + length;
+        writeHeader();
+    }
+
+    private void reset() {
+        m_head = m_tail = HEADER_SIZE;
+        m_count = 0;
+        m_epoch++;
+        m_buffer.putInt(0, MAGIC);
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        m_buffer.putInt(4, m_head);
+        m_buffer.putInt(8, m_tail);
+    }
+
+    private int countRecords() {
+        int count = 0;
+        int position = m_head;
+        while (position < m_tail) {
+            final int length = m_buffer.getInt(position);
+            if (length < 0) {
+                break;
+            }
+            position += 4 + length;
+            count++;
+        }
+        return count;
+    }
+}
@@ -62,6 +62,7 @@ public class QueuingTcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefi
     private static final Logger LOG = LoggerFactory.getLogger(QueuingTcpRrdStrategy.class);
 
     private final BlockingQueue<PerformanceDataReading> m_queue;
+    private final PerformanceDataExporter m_exporter;
     private final TcpRrdStrategy m_delegate;
     private int m_skippedReadings = 0;
 
@@ -125,10 +126,62 @@ public class QueuingTcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefi
     public QueuingTcpRrdStrategy(TcpRrdStrategy delegate, int queueSize) {
         m_delegate = delegate;
         m_queue = new LinkedBlockingQueue<PerformanceDataReading>(queueSize);
+        m_exporter = null;
         ConsumerThread consumerThread = new ConsumerThread(delegate, m_queue);
         consumerThread.start();
     }
 
+    /**
+     * <p>Constructor for QueuingTcpRrdStrategy.</p>
+     *
+     * When streaming is enabled, readings are sent over a single long-lived
+     * connection by a {@link PerformanceDataExporter} as length-delimited
+     * messages, and readings that can't be sent are kept in the spool file
+     * until the receiver is back.  Otherwise this behaves like
+     * {@link #QueuingTcpRrdStrategy(TcpRrdStrategy, int)}.
+     *
+     * @param delegate a {@link org.opennms.netmgt.rrd.tcp.TcpRrdStrategy} object.
+     * @param queueSize the number of readings to buffer in memory
+     * @param streaming whether to use a persistent, length-delimited stream
+     * @param spoolFile the overflow spool file; blank to keep no spool
+     * @param spoolSize the size of the spool file in bytes
+     * @throws java.io.IOException if the spool file cannot be opened
+     */
+    public QueuingTcpRrdStrategy(TcpRrdStrategy delegate, int queueSize, boolean streaming, String spoolFile, int spoolSize) throws IOException {
+        m_delegate = delegate;
+        if (!streaming) {
+            m_queue = new LinkedBlockingQueue<PerformanceDataReading>(queueSize);
+            m_exporter = null;
+            ConsumerThread consumerThread = new ConsumerThread(delegate, m_queue);
+            consumerThread.start();
+        } else {
+            m_queue = null;
+            m_exporter = new PerformanceDataExporter(delegate.getHost(), delegate.getPort(), queueSize, spoolFile == null || "".equals(spoolFile.trim()) ? null : new File(spoolFile), spoolSize);
+            m_exporter.start();
+        }
+    }
+
+    /**
+     * Stops the streaming exporter, if any, moving the readings still in
+     * memory to its spool.
+     *
+     * @throws java.lang.InterruptedException if interrupted while waiting for the exporter to stop
+     */
+    public void destroy() throws InterruptedException {
+        if (m_exporter != null) {
+            m_exporter.stop();
+        }
+    }
+
+    /**
+     * <p>getExporter</p>
+     *
+     * @return the streaming exporter, or null if readings are sent with a new connection per batch
+     */
+    public PerformanceDataExporter getExporter() {
+        return m_exporter;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void setConfigurationProperties(Properties configurationParameters) {
@@ -172,6 +225,10 @@ public class QueuingTcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefi
     /** {@inheritDoc} */
     @Override
     public void updateFile(String fileName, String owner, String data) throws Exception {
+        if (m_exporter != null) {
+            m_exporter.offer(RrdOutputSocket.createReading(fileName, owner, data));
+            return;
+        }
         if (m_queue.offer(new PerformanceDataReading(fileName, owner, data), 500, TimeUnit.MILLISECONDS)) {
             if (m_skippedReadings > 0) {
                 LOG.warn("Skipped {} performance data message(s) because of queue overflow", m_skippedReadings);
@@ -260,6 +317,9 @@ public class QueuingTcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefi
      */
     @Override
     public String getStats() {
+        if (m_exporter != null) {
+            return m_exporter.getStats();
+        }
         return m_delegate.getStats();
     }
 
@@ -31,8 +31,6 @@ package org.opennms.netmgt.rrd.tcp;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,17 +73,44 @@ public class RrdOutputSocket {
      * @param data a {@link java.lang.String} object.
      */
     public void addData(String filename, String owner, String data) {
-        Long timestamp = parseRrdTimestamp(data);
-        List<Double> values = parseRrdValues(data);
-        m_messages.addMessage(PerformanceDataReading.newBuilder()
-                .setPath(filename)
-                .setOwner(owner)
-                .setTimestamp(timestamp).
-                addAllValue(values)
-        );
+        m_messages.addMessage(createReading(filename, owner, data));
         m_messageCount++;
     }
 
+    /**
+     * Builds a reading from an RRD update string such as "N:1.0:U:3" or
+     * "1400000000:1.0:2.0".  The string is scanned in place rather than
+     * split, since this runs for every sample we export.
+     *
+     * @param filename the RRD path the data belongs to
+     * @param owner the owner of the update
+     * @param data the RRD update string
+     * @return a {@link org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReading} object.
+     */
+    static PerformanceDataReading createReading(String filename, String owner, String data) {
+        final PerformanceDataReading.Builder reading = PerformanceDataReading.newBuilder()
+                .setPath(filename)
+                .setOwner(owner);
+
+        int end = data.indexOf(':');
+        if (end < 0) {
+            end = data.length();
+        }
+        reading.setTimestamp(parseRrdTimestamp(data.substring(0, end)));
+
+        // Everything after the timestamp is a list of values
+        int start = end + 1;
+        while (start < data.length()) {
+            end = data.indexOf(':', start);
+            if (end < 0) {
+                end = data.length();
+            }
+            reading.addValue(parseRrdValue(data.substring(start, end)));
+            start = end + 1;
+        }
+        return reading.build();
+    }
+
     /**
      * <p>writeData</p>
      */
@@ -111,31 +136,24 @@ public class RrdOutputSocket {
         }
     };
 
-    private Long parseRrdTimestamp(String data) {
-        if (data.startsWith("N:")) {
+    private static long parseRrdTimestamp(String timestamp) {
+        if ("N".equals(timestamp)) {
             return System.currentTimeMillis();
         } else {
-            String timestamp = data.split(":")[0];
             // RRD timestamps are in seconds, we want to return milliseconds
-            return Long.valueOf(timestamp) * 1000;
+            return Long.parseLong(timestamp) * 1000;
         }
     }
 
-    private List<Double> parseRrdValues(String data) {
-        List<Double> retval = new ArrayList<Double>();
-        String[] values = data.split(":");
-        // Skip index zero, that's the timestamp
-        for (int i = 1; i < values.length; i++) {
-            if (values[i] == null || "null".equals(values[i])) {
-                // Handle null values
-                retval.add(Double.NaN);
-            } else if ("U".equals(values[i])) {
-                // Parse the RRD value for "unknown"
-                retval.add(Double.NaN);
-            } else {
-                retval.add(new Double(values[i]));
-            }
+    private static double parseRrdValue(String value) {
+        if ("null".equals(value)) {
+            // Handle null values
+            return Double.NaN;
+        } else if ("U".equals(value)) {
+            // Parse the RRD value for "unknown"
+            return Double.NaN;
+        } else {
+            return Double.parseDouble(value);
         }
-        return retval;
     }
 }
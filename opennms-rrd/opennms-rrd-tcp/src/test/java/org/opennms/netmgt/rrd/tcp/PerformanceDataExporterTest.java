@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2004-2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReading;
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReadings;
+import org.opennms.test.FileAnticipator;
+
+public class PerformanceDataExporterTest {
+
+    private FileAnticipator m_fileAnticipator;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        m_fileAnticipator = new FileAnticipator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_fileAnticipator.deleteExpected();
+        m_fileAnticipator.tearDown();
+    }
+
+    @Test
+    public void testCreateReading() {
+        PerformanceDataReading reading = RrdOutputSocket.createReading("/rrd/snmp/1/foo", "owner", "1400000000:1.5:U:null:3");
+        assertEquals("/rrd/snmp/1/foo", reading.getPath());
+        assertEquals("owner", reading.getOwner());
+        assertEquals(1400000000000L, reading.getTimestamp());
+        assertEquals(4, reading.getValueCount());
+        assertEquals(1.5, reading.getValue(0), 0.0);
+        assertTrue(Double.isNaN(reading.getValue(1)));
+        assertTrue(Double.isNaN(reading.getValue(2)));
+        assertEquals(3.0, reading.getValue(3), 0.0);
+
+        reading = RrdOutputSocket.createReading("/rrd/snmp/1/foo", "owner", "N:2");
+        assertTrue(reading.getTimestamp() > 0);
+        assertEquals(1, reading.getValueCount());
+        assertEquals(2.0, reading.getValue(0), 0.0);
+    }
+
+    @Test
+    public void testSpoolSurvivesReopen() throws Exception {
+        File file = m_fileAnticipator.expecting("spool.dat");
+
+        PerformanceDataSpool spool = new PerformanceDataSpool(file, 4096);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(spool.append(reading(i)));
+        }
+        PerformanceDataSpool.Batch batch = spool.peek(2);
+        assertEquals(2, batch.getReadings().size());
+        spool.commit(batch);
+        assertEquals(3, spool.size());
+        spool.close();
+
+        spool = new PerformanceDataSpool(file, 4096);
+        assertEquals(3, spool.size());
+        batch = spool.peek(10);
+        assertEquals(3, batch.getReadings().size());
+        assertEquals("/rrd/2", batch.getReadings().get(0).getPath());
+        spool.commit(batch);
+        assertTrue(spool.isEmpty());
+        spool.close();
+    }
+
+    @Test
+    public void testSpoolFull() throws Exception {
+        File file = m_fileAnticipator.expecting("spool.dat");
+
+        PerformanceDataSpool spool = new PerformanceDataSpool(file, 64);
+        int appended = 0;
+        while (spool.append(reading(appended))) {
+            appended++;
+        }
+        assertTrue(appended > 0);
+
+        // sending the head of the spool makes room again
+        spool.commit(spool.peek(1));
+        assertTrue(spool.append(reading(appended)));
+        assertEquals(appended, spool.size());
+        spool.close();
+    }
+
+    @Test(timeout=30000)
+    public void testStreamAndReplaySpool() throws Exception {
+        File file = m_fileAnticipator.expecting("spool.dat");
+
+        ServerSocket server = new ServerSocket(0);
+        int port = server.getLocalPort();
+        server.close();
+
+        // Nobody is listening yet, so everything ends up in the spool
+        PerformanceDataExporter exporter = new PerformanceDataExporter("127.0.0.1", port, 1, file, 1024 * 1024);
+        exporter.start();
+        for (int i = 0; i < 10; i++) {
+            exporter.offer(reading(i));
+        }
+        while (exporter.getSpoolSize() + exporter.getQueueSize() < 10) {
+            Thread.sleep(50);
+        }
+
+        server = new ServerSocket(port);
+        try {
+            Socket socket = server.accept();
+            List<PerformanceDataReading> received = new ArrayList<PerformanceDataReading>();
+            while (received.size() < 10) {
+                PerformanceDataReadings readings = PerformanceDataReadings.parseDelimitedFrom(socket.getInputStream());
+                assertNotNull(readings);
+                received.addAll(readings.getMessageList());
+            }
+            assertEquals(10, received.size());
+            socket.close();
+        } finally {
+            server.close();
+        }
+
+        exporter.stop();
+        assertEquals(0, exporter.getDropped());
+        assertEquals(10, exporter.getSent());
+        assertEquals(0, exporter.getSpoolSize());
+    }
+
+    @Test(timeout=30000)
+    public void testStopSpoolsQueuedReadings() throws Exception {
+        File file = m_fileAnticipator.expecting("spool.dat");
+
+        ServerSocket server = new ServerSocket(0);
+        int port = server.getLocalPort();
+        server.close();
+
+        PerformanceDataExporter exporter = new PerformanceDataExporter("127.0.0.1", port, 100, file, 1024 * 1024);
+        exporter.start();
+        for (int i = 0; i < 10; i++) {
+            exporter.offer(reading(i));
+        }
+        exporter.stop();
+        assertEquals(0, exporter.getDropped());
+
+        // everything that was still in memory is waiting in the spool for the next start
+        PerformanceDataSpool spool = new PerformanceDataSpool(file, 1024 * 1024);
+        assertEquals(10, spool.size());
+        spool.close();
+    }
+
+    @Test(timeout=30000)
+    public void testOfferDoesNotWaitForFullQueue() throws Exception {
+        File file = m_fileAnticipator.expecting("spool.dat");
+
+        // not started, so nothing takes readings off the queue
+        PerformanceDataExporter exporter = new PerformanceDataExporter("127.0.0.1", 1, 1, file, 1024 * 1024);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            exporter.offer(reading(i));
+        }
+        assertTrue(System.currentTimeMillis() - start < 500);
+        assertEquals(1, exporter.getQueueSize());
+        assertEquals(9, exporter.getSpoolSize());
+        exporter.stop();
+        assertEquals(0, exporter.getDropped());
+    }
+
+    @Test(timeout=30000)
+    public void testOfferAppendsToNonEmptySpool() throws Exception {
+        File file = m_fileAnticipator.expecting("spool.dat");
+
+        PerformanceDataSpool spool = new PerformanceDataSpool(file, 1024 * 1024);
+        assertTrue(spool.append(reading(0)));
+        spool.close();
+
+        // the queue has room, but it is not drained until the spool is replayed
+        PerformanceDataExporter exporter = new PerformanceDataExporter("127.0.0.1", 1, 100, file, 1024 * 1024);
+        for (int i = 1; i < 5; i++) {
+            exporter.offer(reading(i));
+        }
+        assertEquals(0, exporter.getQueueSize());
+        assertEquals(5, exporter.getSpoolSize());
+        exporter.stop();
+    }
+
+    private static PerformanceDataReading reading(int i) {
+        return RrdOutputSocket.createReading("/rrd/" + i, "test", (1400000000 + i) + ":" + i);
+    }
+}
@@ -35,6 +35,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.db.DataSourceFactory;
 import org.opennms.core.utils.AlphaNumeric;
@@ -61,6 +62,7 @@ import org.opennms.netmgt.jmx.JmxCollectorConfig;
 import org.opennms.netmgt.jmx.JmxSampleProcessor;
 import org.opennms.netmgt.jmx.JmxUtils;
 import org.opennms.netmgt.jmx.impl.DefaultJmxCollector;
+import org.opennms.netmgt.jmx.impl.connection.connectors.PooledConnectionManager;
 import org.opennms.netmgt.jmx.samples.JmxAttributeSample;
 import org.opennms.netmgt.jmx.samples.JmxCompositeSample;
 import org.opennms.netmgt.events.api.EventProxy;
@@ -130,6 +132,15 @@ public abstract class JMXCollector implements ServiceCollector {
      */
     private String serviceName = null;
 
+    /**
+     * Keeps the connections to the JVMs open between collections, unless disabled.
+     */
+    private final PooledConnectionManager connectionManager =
+            Boolean.parseBoolean(System.getProperty("org.opennms.jmx.connectionPool.enabled", "true")) ? new PooledConnectionManager(3) : null;
+
+    private final JmxCollector jmxCollector =
+            new DefaultJmxCollector(connectionManager, Long.getLong("org.opennms.jmx.objectNameCacheTtl", TimeUnit.MINUTES.toMillis(5)));
+
     /**
      * <p>
      * Returns the name of the service that the plug-in collects ("JMX").
@@ -205,7 +216,9 @@ public abstract class JMXCollector implements ServiceCollector {
      */
     @Override
     public void release() {
-        // Nothing to release...
+        if (connectionManager != null) {
+            connectionManager.close();
+        }
     }
 
     /**
@@ -292,7 +305,6 @@ public abstract class JMXCollector implements ServiceCollector {
             config.setServiceProperties(stringMap);
             config.setJmxCollection(JMXDataCollectionConfigFactory.getInstance().getJmxCollection(collectionName));
 
-            final JmxCollector jmxCollector = new DefaultJmxCollector();
             jmxCollector.collect(config, new JmxSampleProcessor() {
 
                 private final Map<String, AttributeGroupType> groupNameAttributeGroupTypeMap = new HashMap<>();
@@ -34,19 +34,17 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.ValidationException;
 import org.opennms.core.db.DataSourceFactory;
 import org.opennms.core.utils.DBUtils;
-import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.DiscoveryConfigFactory;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.events.api.EventConstants;
@@ -54,6 +52,7 @@ import org.opennms.netmgt.events.api.EventForwarder;
 import org.opennms.netmgt.events.api.EventIpcManagerFactory;
 import org.opennms.netmgt.events.api.annotations.EventHandler;
 import org.opennms.netmgt.events.api.annotations.EventListener;
+import org.opennms.netmgt.icmp.PacketTrainScheduler;
 import org.opennms.netmgt.icmp.Pinger;
 import org.opennms.netmgt.model.discovery.IPPollAddress;
 import org.opennms.netmgt.model.events.EventBuilder;
@@ -80,7 +79,7 @@ public class Discovery extends AbstractServiceDaemon {
     /**
      * The callback that sends newSuspect events upon successful ping response.
      */
-    private static final DiscoveryPingResponseCallback cb = new DiscoveryPingResponseCallback();
+    private final DiscoveryPingResponseCallback cb = new DiscoveryPingResponseCallback();
 
     private static final String LOG4J_CATEGORY = "discover";
 
@@ -93,21 +92,40 @@ public class Discovery extends AbstractServiceDaemon {
      * The SQL query used to get the list of managed IP addresses from the database
      */
     private static final String ALL_IP_ADDRS_SQL = "SELECT DISTINCT ipAddr FROM ipInterface WHERE isManaged <> 'D'";
-    
+
+    /**
+     * The most known addresses a sweep skips in one packet slot. The sweep
+     * runs on the timer shared with other packet trains, so a long run of
+     * known addresses is spread over several slots instead of holding it up.
+     */
+    private static final int MAX_SKIPPED_PER_PACKET = 1000;
+
     /**
      * a set of devices to skip discovery on
      */
-    private Set<String> m_alreadyDiscovered = Collections.synchronizedSet(new HashSet<String>());
+    private volatile KnownAddressSet m_alreadyDiscovered = new KnownAddressSet();
 
     private DiscoveryConfigFactory m_discoveryFactory;
 
     private Timer m_timer;
 
-    private int m_xstatus = PING_IDLE;
+    private volatile int m_xstatus = PING_IDLE;
+
+    /**
+     * Identifies the sweep in progress; a sweep stops sending once this changes.
+     */
+    private volatile Object m_currentSweep;
     
     private volatile EventForwarder m_eventForwarder;
 
     private Pinger m_pinger;
+
+    private final AtomicLong m_sweepsCompleted = new AtomicLong();
+    private final AtomicLong m_sweepAddressesProcessed = new AtomicLong();
+    private final AtomicLong m_sweepPingsSent = new AtomicLong();
+    private final AtomicLong m_sweepAddressesSkipped = new AtomicLong();
+    private volatile long m_sweepStartTime;
+    private volatile long m_lastSweepDuration;
     
     /**
      * <p>setEventForwarder</p>
@@ -174,6 +192,8 @@ public class Discovery extends AbstractServiceDaemon {
         //Wiring doesn't seem to be working.
         Assert.state(m_discoveryFactory != null, "must set the Discovery Factory propertly");
         cb.setDiscoveryFactory(m_discoveryFactory);
+        cb.setEventForwarder(m_eventForwarder);
+        cb.setKnownAddresses(m_alreadyDiscovered);
         
         try {
         	LOG.debug("Initializing configuration...");
@@ -193,6 +213,11 @@ public class Discovery extends AbstractServiceDaemon {
     }
     
     private void doPings() {
+        if (m_currentSweep != null) {
+            LOG.warn("previous ping sweep has not finished yet; skipping this one");
+            return;
+        }
+
         LOG.info("starting ping sweep");
         
         try {
@@ -203,84 +228,151 @@ public class Discovery extends AbstractServiceDaemon {
 
 
         m_xstatus = PING_RUNNING;
-
+        m_sweepStartTime = System.currentTimeMillis();
+        m_sweepAddressesProcessed.set(0);
+        m_sweepPingsSent.set(0);
+        m_sweepAddressesSkipped.set(0);
+        cb.expireSuspects(m_sweepStartTime);
+
+        final Iterator<IPPollAddress> addresses;
+        final int packetsPerSecond;
         getDiscoveryFactory().getReadLock().lock();
         try {
-            for (IPPollAddress pollAddress : getDiscoveryFactory().getConfiguredAddresses()) {
-                if (m_xstatus == PING_FINISHING || m_timer == null) {
-                    m_xstatus = PING_IDLE;
-                    return;
-                }
-                LOG.debug("Pinging: {} of foreign source {}", pollAddress.getAddress().toString(), m_discoveryFactory.getForeignSource(pollAddress.getAddress()));
-                ping(pollAddress);
-                try {
-                    Thread.sleep(getDiscoveryFactory().getIntraPacketDelay());
-                } catch (InterruptedException e) {
-                    LOG.info("interrupting discovery sweep");
-                    break;
-                }
-            }
+            packetsPerSecond = Math.max(1, getDiscoveryFactory().getPacketsPerSecond());
+            // a snapshot of the configuration, so it can be walked after the lock is released
+            addresses = getDiscoveryFactory().getConfiguredAddresses().iterator();
         } finally {
             getDiscoveryFactory().getReadLock().unlock();
         }
 
-        LOG.info("finished discovery sweep");
+        // the sweep is paced by the shared packet train timer, so no thread waits between pings
+        final Object sweep = new Object();
+        m_currentSweep = sweep;
+        PacketTrainScheduler.schedule(TimeUnit.SECONDS.toNanos(1) / packetsPerSecond, TimeUnit.NANOSECONDS, index -> {
+            if (m_currentSweep != sweep) {
+                return false;
+            }
+            int skipped = 0;
+            while (addresses.hasNext()) {
+                if (skipped >= MAX_SKIPPED_PER_PACKET) {
+                    // leave this slot unused and carry on in the next one
+                    return true;
+                }
+                final IPPollAddress pollAddress = addresses.next();
+                m_sweepAddressesProcessed.incrementAndGet();
+                final InetAddress address = pollAddress.getAddress();
+                if (address == null) {
+                    skipped++;
+                    continue;
+                }
+                if (isAlreadyDiscovered(address)) {
+                    // known addresses do not consume a packet slot
+                    LOG.debug("{} already discovered.", address);
+                    m_sweepAddressesSkipped.incrementAndGet();
+                    skipped++;
+                    continue;
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Pinging: {} of foreign source {}", address, m_discoveryFactory.getForeignSource(address));
+                }
+                ping(pollAddress);
+                return true;
+            }
+            return false;
+        }).whenComplete((sent, t) -> {
+            if (t != null) {
+                LOG.warn("discovery sweep failed", t);
+            }
+            finishSweep(sweep);
+        });
+    }
+
+    private synchronized void finishSweep(final Object sweep) {
+        if (m_currentSweep != sweep) {
+            LOG.info("interrupted discovery sweep after {}ms: {} addresses, {} pinged",
+                     System.currentTimeMillis() - m_sweepStartTime, m_sweepAddressesProcessed.get(), m_sweepPingsSent.get());
+            if (m_currentSweep == null) {
+                m_xstatus = PING_IDLE;
+            }
+            return;
+        }
+        m_currentSweep = null;
+        m_lastSweepDuration = System.currentTimeMillis() - m_sweepStartTime;
+        m_sweepsCompleted.incrementAndGet();
+        LOG.info("finished discovery sweep in {}ms: {} addresses, {} pinged, {} already managed, {} replies still pending",
+                 m_lastSweepDuration, m_sweepAddressesProcessed.get(), m_sweepPingsSent.get(), m_sweepAddressesSkipped.get(), cb.getPendingRequests());
         m_xstatus = PING_IDLE;
+        scheduleSweep(getDiscoveryFactory().getRestartSleepTime());
     }
 
     private void ping(IPPollAddress pollAddress) {
-        InetAddress address = pollAddress.getAddress();
-        if (address != null) {
-            if (!isAlreadyDiscovered(address)) {
-                try {
-                    m_pinger.ping(address, pollAddress.getTimeout(), pollAddress.getRetries(), (short) 1, cb);
-                } catch (Throwable e) {
-                    LOG.debug("error pinging {}", address.getAddress(), e);
-                }
-            } else {
-            	LOG.debug("{} already discovered.", address.toString());
-            }
+        final InetAddress address = pollAddress.getAddress();
+        cb.requestSent();
+        try {
+            m_pinger.ping(address, pollAddress.getTimeout(), pollAddress.getRetries(), (short) 1, cb);
+            m_sweepPingsSent.incrementAndGet();
+        } catch (Throwable e) {
+            cb.requestFailed();
+            LOG.debug("error pinging {}", address.getAddress(), e);
         }
     }
 
     private boolean isAlreadyDiscovered(InetAddress address) {
-        if (m_alreadyDiscovered.contains(InetAddressUtils.str(address))) {
-            return true;
-        }
-        return false;
+        return m_alreadyDiscovered.contains(address);
     }
 
-    private void startTimer() {
+    private synchronized void startTimer() {
         if (m_timer != null) {
             LOG.debug("startTimer() called, but a previous timer exists; making sure it's cleaned up");
             m_xstatus = PING_FINISHING;
+            m_currentSweep = null;
             m_timer.cancel();
         }
         
         LOG.debug("scheduling new discovery timer");
         m_timer = new Timer("Discovery.Pinger", true);
+        scheduleSweep(getDiscoveryFactory().getInitialSleepTime());
+    }
 
-        TimerTask task = new TimerTask() {
+    /**
+     * Schedules the next sweep. Sweeps run asynchronously, so rather than
+     * scheduling them at a fixed rate, each sweep schedules the next one
+     * when it finishes. The restart sleep time is therefore the pause
+     * between the end of one sweep and the start of the next, and a slow
+     * sweep is never followed straight away by another one.
+     */
+    private synchronized void scheduleSweep(final long delay) {
+        if (m_timer == null) {
+            LOG.debug("discovery timer is stopped; not scheduling another sweep");
+            return;
+        }
+        final TimerTask task = new TimerTask() {
 
             @Override
             public void run() {
-                doPings();
+                try {
+                    doPings();
+                } catch (Throwable t) {
+                    LOG.error("discovery sweep could not be started", t);
+                    if (m_currentSweep == null) {
+                        scheduleSweep(getDiscoveryFactory().getRestartSleepTime());
+                    }
+                }
             }
 
         };
-        final Lock readLock = getDiscoveryFactory().getReadLock();
-        readLock.lock();
         try {
-            m_timer.scheduleAtFixedRate(task, getDiscoveryFactory().getInitialSleepTime(), getDiscoveryFactory().getRestartSleepTime());
-        } finally {
-            readLock.unlock();
+            m_timer.schedule(task, delay);
+        } catch (IllegalStateException e) {
+            LOG.debug("discovery timer was cancelled; not scheduling another sweep", e);
         }
     }
 
-    private void stopTimer() {
+    private synchronized void stopTimer() {
         if (m_timer != null) {
             LOG.debug("stopping existing timer");
             m_xstatus = PING_FINISHING;
+            m_currentSweep = null;
             m_timer.cancel();
             m_timer = null;
         } else {
@@ -330,7 +422,7 @@ public class Discovery extends AbstractServiceDaemon {
     	 * if something goes wrong with the DB we won't lose whatever was already
     	 * in there
     	 */
-    	Set<String> newAlreadyDiscovered = Collections.synchronizedSet(new HashSet<String>());
+    	KnownAddressSet newAlreadyDiscovered = new KnownAddressSet();
     	Connection conn = null;
         final DBUtils d = new DBUtils(getClass());
 
@@ -349,6 +441,7 @@ public class Discovery extends AbstractServiceDaemon {
     			LOG.warn("Got null ResultSet from query for all IP addresses");
     		}
     		m_alreadyDiscovered = newAlreadyDiscovered;
+    		cb.setKnownAddresses(newAlreadyDiscovered);
     	} catch (SQLException sqle) {
 		LOG.warn("Caught SQLException while trying to query for all IP addresses: {}", sqle.getMessage());
     	} finally {
@@ -481,6 +574,81 @@ public class Discovery extends AbstractServiceDaemon {
         LOG.debug("Added {} as discovered", iface);
     }
 
+    /**
+     * <p>getSweepsCompleted</p>
+     *
+     * @return the number of sweeps completed since startup
+     */
+    public long getSweepsCompleted() {
+        return m_sweepsCompleted.get();
+    }
+
+    /**
+     * <p>isSweepRunning</p>
+     *
+     * @return true if a sweep is in progress
+     */
+    public boolean isSweepRunning() {
+        return m_xstatus == PING_RUNNING;
+    }
+
+    /**
+     * <p>getSweepAddressesProcessed</p>
+     *
+     * @return the number of configured addresses visited by the current (or last) sweep
+     */
+    public long getSweepAddressesProcessed() {
+        return m_sweepAddressesProcessed.get();
+    }
+
+    /**
+     * <p>getSweepPingsSent</p>
+     *
+     * @return the number of pings sent by the current (or last) sweep
+     */
+    public long getSweepPingsSent() {
+        return m_sweepPingsSent.get();
+    }
+
+    /**
+     * <p>getSweepAddressesSkipped</p>
+     *
+     * @return the number of already managed addresses skipped by the current (or last) sweep
+     */
+    public long getSweepAddressesSkipped() {
+        return m_sweepAddressesSkipped.get();
+    }
+
+    /**
+     * <p>getSweepElapsedTime</p>
+     *
+     * @return milliseconds spent in the current sweep, or the duration of the last one
+     */
+    public long getSweepElapsedTime() {
+        if (isSweepRunning()) {
+            return System.currentTimeMillis() - m_sweepStartTime;
+        }
+        return m_lastSweepDuration;
+    }
+
+    /**
+     * <p>getKnownAddressCount</p>
+     *
+     * @return the number of managed addresses that discovery skips
+     */
+    public long getKnownAddressCount() {
+        return m_alreadyDiscovered.size();
+    }
+
+    /**
+     * <p>getResponseCallback</p>
+     *
+     * @return the callback collecting ping replies and sending newSuspect events
+     */
+    public DiscoveryPingResponseCallback getResponseCallback() {
+        return cb;
+    }
+
     public static String getLoggingCategory() {
         return LOG4J_CATEGORY;
     }
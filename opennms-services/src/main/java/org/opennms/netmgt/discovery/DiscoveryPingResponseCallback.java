@@ -29,10 +29,16 @@
 package org.opennms.netmgt.discovery;
 
 import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.DiscoveryConfigFactory;
 import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventForwarder;
 import org.opennms.netmgt.events.api.EventIpcManagerFactory;
 import org.opennms.netmgt.icmp.EchoPacket;
 import org.opennms.netmgt.icmp.PingResponseCallback;
@@ -43,6 +49,13 @@ import org.slf4j.LoggerFactory;
 /**
  * <p>DiscoveryPingResponseCallback class.</p>
  *
+ * <p>Sends a newSuspect event for every address that answers a discovery
+ * ping, unless the address has become managed since the ping was sent or a
+ * newSuspect was already sent for it within the deduplication window.  The
+ * window defaults to five minutes and can be changed with the
+ * <code>org.opennms.netmgt.discovery.newSuspectWindow</code> system property
+ * (in milliseconds).</p>
+ *
  * @author <a href="mailto:ranger@opennms.org">Ben Reed</a>
  * @version $Id: $
  */
@@ -51,12 +64,60 @@ public class DiscoveryPingResponseCallback implements PingResponseCallback {
     private static final Logger LOG = LoggerFactory.getLogger(DiscoveryPingResponseCallback.class);
     
     static final String EVENT_SOURCE_VALUE = "OpenNMS.Discovery";
-    
+
+    static final long DEFAULT_NEW_SUSPECT_WINDOW = 5 * 60 * 1000L;
+
     private DiscoveryConfigFactory m_discoveryFactory;
 
+    private EventForwarder m_eventForwarder;
+
+    private volatile KnownAddressSet m_knownAddresses;
+
+    private final long m_newSuspectWindow = Long.getLong("org.opennms.netmgt.discovery.newSuspectWindow", DEFAULT_NEW_SUSPECT_WINDOW);
+
+    private final ConcurrentMap<InetAddress, Long> m_recentSuspects = new ConcurrentHashMap<InetAddress, Long>();
+
+    private final AtomicLong m_pending = new AtomicLong();
+    private final AtomicLong m_responses = new AtomicLong();
+    private final AtomicLong m_timeouts = new AtomicLong();
+    private final AtomicLong m_errors = new AtomicLong();
+    private final AtomicLong m_newSuspectsSent = new AtomicLong();
+    private final AtomicLong m_newSuspectsSuppressed = new AtomicLong();
+
+    /**
+     * Called by the sweep before each ping is handed to the pinger so that
+     * the number of outstanding requests can be tracked.
+     */
+    void requestSent() {
+        m_pending.incrementAndGet();
+    }
+
+    /**
+     * Called when the pinger refused a request, so no callback will follow.
+     */
+    void requestFailed() {
+        m_pending.decrementAndGet();
+        m_errors.incrementAndGet();
+    }
+
     /** {@inheritDoc} */
     @Override
     public void handleResponse(InetAddress address, EchoPacket response) {
+        m_pending.decrementAndGet();
+        m_responses.incrementAndGet();
+
+        final KnownAddressSet known = m_knownAddresses;
+        if (known != null && known.contains(address)) {
+            LOG.debug("{} became managed while the ping was outstanding, not sending newSuspect", address);
+            m_newSuspectsSuppressed.incrementAndGet();
+            return;
+        }
+        if (!markSuspect(address, System.currentTimeMillis())) {
+            LOG.debug("newSuspect already sent for {} within the last {}ms", address, m_newSuspectWindow);
+            m_newSuspectsSuppressed.incrementAndGet();
+            return;
+        }
+
         EventBuilder eb = new EventBuilder(EventConstants.NEW_SUSPECT_INTERFACE_EVENT_UEI, EVENT_SOURCE_VALUE);
         eb.setInterface(address);
         eb.setHost(InetAddressUtils.getLocalHostName());
@@ -69,10 +130,16 @@ public class DiscoveryPingResponseCallback implements PingResponseCallback {
         }
 
         try {
-            EventIpcManagerFactory.getIpcManager().sendNow(eb.getEvent());
+            if (m_eventForwarder != null) {
+                m_eventForwarder.sendNow(eb.getEvent());
+            } else {
+                EventIpcManagerFactory.getIpcManager().sendNow(eb.getEvent());
+            }
+            m_newSuspectsSent.incrementAndGet();
 
             LOG.debug("Sent event: {}", EventConstants.NEW_SUSPECT_INTERFACE_EVENT_UEI);
         } catch (Throwable t) {
+            m_recentSuspects.remove(address);
             LOG.warn("run: unexpected throwable exception caught during send to middleware", t);
         }
 
@@ -81,15 +148,48 @@ public class DiscoveryPingResponseCallback implements PingResponseCallback {
     /** {@inheritDoc} */
     @Override
     public void handleTimeout(InetAddress address, EchoPacket request) {
+        m_pending.decrementAndGet();
+        m_timeouts.incrementAndGet();
         LOG.debug("request timed out: {}", address);
     }
 
     /** {@inheritDoc} */
     @Override
     public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+        m_pending.decrementAndGet();
+        m_errors.incrementAndGet();
         LOG.debug("an error occurred pinging {}", address, t);
     }
 
+    /**
+     * Record that a newSuspect is about to be sent for the address.
+     *
+     * @return false if one was already sent within the window
+     */
+    boolean markSuspect(final InetAddress address, final long now) {
+        final Long previous = m_recentSuspects.putIfAbsent(address, now);
+        if (previous == null) {
+            return true;
+        }
+        if (now - previous >= m_newSuspectWindow) {
+            return m_recentSuspects.replace(address, previous, now);
+        }
+        return false;
+    }
+
+    /**
+     * Drop deduplication entries older than the window.  Called at the start
+     * of every sweep so the map never grows beyond one window's worth of
+     * responders.
+     */
+    void expireSuspects(final long now) {
+        for (final Iterator<Entry<InetAddress, Long>> it = m_recentSuspects.entrySet().iterator(); it.hasNext(); ) {
+            if (now - it.next().getValue() >= m_newSuspectWindow) {
+                it.remove();
+            }
+        }
+    }
+
 	public DiscoveryConfigFactory getDiscoveryFactory() {
 		return m_discoveryFactory;
 	}
@@ -98,4 +198,36 @@ public class DiscoveryPingResponseCallback implements PingResponseCallback {
 		m_discoveryFactory = discoveryFactory;
 	}
 
+    public void setEventForwarder(EventForwarder eventForwarder) {
+        m_eventForwarder = eventForwarder;
+    }
+
+    public void setKnownAddresses(KnownAddressSet knownAddresses) {
+        m_knownAddresses = knownAddresses;
+    }
+
+    public long getPendingRequests() {
+        return Math.max(0, m_pending.get());
+    }
+
+    public long getResponses() {
+        return m_responses.get();
+    }
+
+    public long getTimeouts() {
+        return m_timeouts.get();
+    }
+
+    public long getErrors() {
+        return m_errors.get();
+    }
+
+    public long getNewSuspectsSent() {
+        return m_newSuspectsSent.get();
+    }
+
+    public long getNewSuspectsSuppressed() {
+        return m_newSuspectsSuppressed.get();
+    }
+
 }
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.discovery;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.opennms.core.utils.InetAddressUtils;
+
+/**
+ * <p>The set of interface addresses that are already managed, used by discovery
+ * to avoid pinging (and re-suspecting) known hosts.</p>
+ *
+ * <p>IPv4 addresses are kept in a paged bitmap: one 8 KB page per /16 that
+ * actually contains a managed address, so a few hundred thousand interfaces
+ * cost a few megabytes instead of a string per address.  Lookups are
+ * lock-free.  IPv6 addresses, which are rare in discovery ranges, are kept
+ * in a plain set.</p>
+ */
+public class KnownAddressSet {
+    private static final int PAGE_BITS = 16;
+    private static final int WORDS_PER_PAGE = (1 << PAGE_BITS) / Long.SIZE;
+
+    private final ConcurrentMap<Integer, AtomicLongArray> m_pages = new ConcurrentHashMap<Integer, AtomicLongArray>();
+    private final Set<String> m_others = Collections.synchronizedSet(new HashSet<String>());
+    private final AtomicInteger m_size = new AtomicInteger();
+
+    private static int toInt(final InetAddress address) {
+        final byte[] b = address.getAddress();
+        return ((b[0] & 0xff) << 24) | ((b[1] & 0xff) << 16) | ((b[2] & 0xff) << 8) | (b[3] & 0xff);
+    }
+
+    /**
+     * <p>add</p>
+     *
+     * @param address the address to add, may be null
+     * @return true if the address was not already present
+     */
+    public boolean add(final InetAddress address) {
+        if (address == null) {
+            return false;
+        }
+        final boolean added;
+        if (address instanceof Inet4Address) {
+            final int ip = toInt(address);
+            AtomicLongArray page = m_pages.get(ip >>> PAGE_BITS);
+            if (page == null) {
+                final AtomicLongArray newPage = new AtomicLongArray(WORDS_PER_PAGE);
+                page = m_pages.putIfAbsent(ip >>> PAGE_BITS, newPage);
+                if (page == null) {
+                    page = newPage;
+                }
+            }
+            final int offset = ip & 0xffff;
+            final int word = offset >>> 6;
+            final long mask = 1L << (offset & 63);
+            long old;
+            do {
+                old = page.get(word);
+                if ((old & mask) != 0) {
+                    return false;
+                }
+            } while (!page.compareAndSet(word, old, old | mask));
+            added = true;
+        } else {
+            added = m_others.add(InetAddressUtils.str(address));
+        }
+        if (added) {
+            m_size.incrementAndGet();
+        }
+        return added;
+    }
+
+    /**
+     * <p>add</p>
+     *
+     * @param address the address in string form; unparseable values are ignored
+     * @return true if the address was not already present
+     */
+    public boolean add(final String address) {
+        return add(parse(address));
+    }
+
+    /**
+     * <p>remove</p>
+     *
+     * @param address the address to remove, may be null
+     * @return true if the address was present
+     */
+    public boolean remove(final InetAddress address) {
+        if (address == null) {
+            return false;
+        }
+        final boolean removed;
+        if (address instanceof Inet4Address) {
+            final int ip = toInt(address);
+            final AtomicLongArray page = m_pages.get(ip >>> PAGE_BITS);
+            if (page == null) {
+                return false;
+            }
+            final int offset = ip & 0xffff;
+            final int word = offset >>> 6;
+            final long mask = 1L << (offset & 63);
+            long old;
+            do {
+                old = page.get(word);
+                if ((old & mask) == 0) {
+                    return false;
+                }
+            } while (!page.compareAndSet(word, old, old & ~mask));
+            removed = true;
+        } else {
+            removed = m_others.remove(InetAddressUtils.str(address));
+        }
+        if (removed) {
+            m_size.decrementAndGet();
+        }
+        return removed;
+    }
+
+    /**
+     * <p>remove</p>
+     *
+     * @param address the address in string form; unparseable values are ignored
+     * @return true if the address was present
+     */
+    public boolean remove(final String address) {
+        return remove(parse(address));
+    }
+
+    /**
+     * <p>contains</p>
+     *
+     * @param address the address to look up, may be null
+     * @return true if the address is known
+     */
+    public boolean contains(final InetAddress address) {
+        if (address == null) {
+            return false;
+        }
+        if (address instanceof Inet4Address) {
+            final int ip = toInt(address);
+            final AtomicLongArray page = m_pages.get(ip >>> PAGE_BITS);
+            if (page == null) {
+                return false;
+            }
+            final int offset = ip & 0xffff;
+            return (page.get(offset >>> 6) & (1L << (offset & 63))) != 0;
+        }
+        return m_others.contains(InetAddressUtils.str(address));
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of known addresses
+     */
+    public int size() {
+        return m_size.get();
+    }
+
+    private static InetAddress parse(final String address) {
+        if (address == null || address.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return InetAddressUtils.addr(address.trim());
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -49,5 +49,64 @@ public class Discovery extends AbstractSpringContextJmxServiceDaemon<org.opennms
     protected String getSpringContext() {
         return "discoveryContext";
     }
-    
+
+    @Override
+    public long getSweepsCompleted() {
+        return getDaemon().getSweepsCompleted();
+    }
+
+    @Override
+    public boolean isSweepRunning() {
+        return getDaemon().isSweepRunning();
+    }
+
+    @Override
+    public long getSweepAddressesProcessed() {
+        return getDaemon().getSweepAddressesProcessed();
+    }
+
+    @Override
+    public long getSweepPingsSent() {
+        return getDaemon().getSweepPingsSent();
+    }
+
+    @Override
+    public long getSweepAddressesSkipped() {
+        return getDaemon().getSweepAddressesSkipped();
+    }
+
+    @Override
+    public long getSweepElapsedTime() {
+        return getDaemon().getSweepElapsedTime();
+    }
+
+    @Override
+    public long getKnownAddressCount() {
+        return getDaemon().getKnownAddressCount();
+    }
+
+    @Override
+    public long getPendingPings() {
+        return getDaemon().getResponseCallback().getPendingRequests();
+    }
+
+    @Override
+    public long getPingReplies() {
+        return getDaemon().getResponseCallback().getResponses();
+    }
+
+    @Override
+    public long getPingTimeouts() {
+        return getDaemon().getResponseCallback().getTimeouts();
+    }
+
+    @Override
+    public long getNewSuspectsSent() {
+        return getDaemon().getResponseCallback().getNewSuspectsSent();
+    }
+
+    @Override
+    public long getNewSuspectsSuppressed() {
+        return getDaemon().getResponseCallback().getNewSuspectsSuppressed();
+    }
 }
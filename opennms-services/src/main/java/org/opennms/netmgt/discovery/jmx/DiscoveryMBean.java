@@ -37,5 +37,63 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface DiscoveryMBean extends BaseOnmsMBean {
+    /**
+     * @return The number of discovery sweeps completed since startup
+     */
+    public long getSweepsCompleted();
 
+    /**
+     * @return Whether a discovery sweep is currently running
+     */
+    public boolean isSweepRunning();
+
+    /**
+     * @return The number of configured addresses visited by the current or last sweep
+     */
+    public long getSweepAddressesProcessed();
+
+    /**
+     * @return The number of pings sent by the current or last sweep
+     */
+    public long getSweepPingsSent();
+
+    /**
+     * @return The number of already managed addresses skipped by the current or last sweep
+     */
+    public long getSweepAddressesSkipped();
+
+    /**
+     * @return The time in milliseconds spent in the current sweep, or the duration of the last one
+     */
+    public long getSweepElapsedTime();
+
+    /**
+     * @return The number of managed addresses excluded from discovery
+     */
+    public long getKnownAddressCount();
+
+    /**
+     * @return The number of pings still waiting for a reply or timeout
+     */
+    public long getPendingPings();
+
+    /**
+     * @return The cumulative number of ping replies received
+     */
+    public long getPingReplies();
+
+    /**
+     * @return The cumulative number of pings that timed out
+     */
+    public long getPingTimeouts();
+
+    /**
+     * @return The cumulative number of newSuspect events sent
+     */
+    public long getNewSuspectsSent();
+
+    /**
+     * @return The cumulative number of newSuspect events suppressed as duplicates or already managed
+     */
+    public long getNewSuspectsSuppressed();
 }
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.async;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chains asynchronous poll attempts the way the blocking monitors loop over a
+ * {@link org.opennms.core.utils.TimeoutTracker}: a failed connection or a
+ * timeout is retried until the configured number of retries is exhausted,
+ * while a status returned by a conversation or a "no route to host" error is
+ * final.
+ *
+ * <p>Strict timeouts are not honoured since the next attempt would have to be
+ * delayed on the event loop; attempts are started as soon as the previous one
+ * has failed.</p>
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
+ */
+public abstract class AsyncPollAttempts {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncPollAttempts.class);
+
+    private AsyncPollAttempts() {
+    }
+
+    /**
+     * Runs up to <code>retries + 1</code> attempts.
+     *
+     * @param retries the number of retries after the first attempt
+     * @param description a description of the polled service, used in reasons
+     * @param attempt creates and starts a new attempt
+     * @return a future that always completes normally with the final status
+     */
+    public static CompletableFuture<PollStatus> withRetries(final int retries, final String description, final Supplier<CompletableFuture<PollStatus>> attempt) {
+        final CompletableFuture<PollStatus> result = new CompletableFuture<PollStatus>();
+        next(0, retries, description, attempt, result);
+        return result;
+    }
+
+    private static void next(final int attemptNumber, final int retries, final String description, final Supplier<CompletableFuture<PollStatus>> attempt, final CompletableFuture<PollStatus> result) {
+        final CompletableFuture<PollStatus> future;
+        try {
+            future = attempt.get();
+        } catch (final Throwable t) {
+            result.complete(toStatus(t, description));
+            return;
+        }
+
+        future.whenComplete((status, t) -> {
+            if (t == null) {
+                result.complete(status);
+                return;
+            }
+            final Throwable cause = unwrap(t);
+            if (attemptNumber < retries && !(cause instanceof NoRouteToHostException)) {
+                LOG.debug("Attempt {} of {} for {} failed, retrying", attemptNumber + 1, retries + 1, description, cause);
+                next(attemptNumber + 1, retries, description, attempt, result);
+            } else {
+                result.complete(toStatus(cause, description));
+            }
+        });
+    }
+
+    /**
+     * Maps the exception that ended an attempt to the status the blocking
+     * monitors report for the same condition.
+     *
+     * @param t the exception
+     * @param description a description of the polled service
+     * @return an unavailable status
+     */
+    public static PollStatus toStatus(final Throwable t, final String description) {
+        final Throwable cause = unwrap(t);
+        final String reason;
+        if (cause instanceof NoRouteToHostException) {
+            reason = "No route to host exception for address " + description;
+        } else if (cause instanceof SocketTimeoutException) {
+            reason = "Did not receive expected response within timeout for address " + description;
+        } else if (cause instanceof ConnectException) {
+            reason = "Connection exception for address " + description;
+        } else {
+            reason = cause.getClass().getSimpleName() + " while polling address " + description + ": " + cause.getMessage();
+        }
+        LOG.debug(reason, cause);
+        return PollStatus.unavailable(reason);
+    }
+
+    private static Throwable unwrap(final Throwable t) {
+        return (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+    }
+}
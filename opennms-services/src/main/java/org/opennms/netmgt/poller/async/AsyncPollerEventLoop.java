@@ -0,0 +1,584 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.async;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A small, fixed set of selector threads shared by all asynchronous service
+ * monitors.  Each connection is pinned to one selector thread for its whole
+ * lifetime, so no locking is needed on the per-connection state and no thread
+ * is held while a poll waits on the network.
+ * </p>
+ *
+ * <p>
+ * Futures returned by this class are completed on the selector threads.
+ * Callers must not block in dependent stages; use the <code>*Async</code>
+ * variants with an executor for anything that may block.
+ * </p>
+ *
+ * <p>
+ * The number of selector threads defaults to the number of available
+ * processors and can be overridden with the
+ * <code>org.opennms.netmgt.poller.async.threads</code> system property.
+ * </p>
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
+ */
+public class AsyncPollerEventLoop {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncPollerEventLoop.class);
+
+    /** Constant <code>THREADS_PROPERTY="org.opennms.netmgt.poller.async.threads"</code> */
+    public static final String THREADS_PROPERTY = "org.opennms.netmgt.poller.async.threads";
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private static AsyncPollerEventLoop s_instance;
+
+    private final SelectorLoop[] m_loops;
+    private final AtomicInteger m_nextLoop = new AtomicInteger(0);
+    private final AtomicLong m_pendingRequests = new AtomicLong(0);
+
+    /**
+     * Returns the shared event loop, starting it on first use.
+     *
+     * @return the shared event loop
+     */
+    public static synchronized AsyncPollerEventLoop getInstance() {
+        if (s_instance == null) {
+            final int threads = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+            try {
+                s_instance = new AsyncPollerEventLoop("AsyncPoller", threads);
+            } catch (final IOException e) {
+                throw new IllegalStateException("Unable to open selectors for the asynchronous poller event loop", e);
+            }
+        }
+        return s_instance;
+    }
+
+    /**
+     * Replaces the shared event loop.  Intended for tests.
+     *
+     * @param instance the event loop to use, or <code>null</code> to create a
+     *        new one on the next call to {@link #getInstance()}
+     */
+    public static synchronized void setInstance(final AsyncPollerEventLoop instance) {
+        s_instance = instance;
+    }
+
+    /**
+     * <p>Constructor for AsyncPollerEventLoop.</p>
+     *
+     * @param name the prefix of the selector thread names
+     * @param threads the number of selector threads
+     * @throws java.io.IOException if a selector cannot be opened
+     */
+    public AsyncPollerEventLoop(final String name, final int threads) throws IOException {
+        final int count = Math.max(1, threads);
+        final LogPreservingThreadFactory threadFactory = new LogPreservingThreadFactory(name, count);
+        m_loops = new SelectorLoop[count];
+        for (int i = 0; i < count; i++) {
+            m_loops[i] = new SelectorLoop();
+            final Thread thread = threadFactory.newThread(m_loops[i]);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Opens a TCP connection to the given address and lets the conversation
+     * drive the exchange.
+     *
+     * @param address the address to connect to
+     * @param timeout the connect timeout, also applied as an idle timeout
+     *        between received packets, in milliseconds
+     * @param conversation the conversation to run once connected
+     * @return a future that completes with the status returned by the
+     *         conversation, or exceptionally with the {@link IOException}
+     *         (including {@link SocketTimeoutException}) that ended the attempt
+     */
+    public CompletableFuture<PollStatus> connect(final InetSocketAddress address, final long timeout, final TcpConversation conversation) {
+        final CompletableFuture<PollStatus> future = new CompletableFuture<PollStatus>();
+        final SelectorLoop loop = nextLoop();
+        track(future);
+        loop.execute(new TcpAttempt(loop, address, timeout, conversation, future));
+        return future;
+    }
+
+    /**
+     * Sends a single datagram to the given address and waits for a reply
+     * accepted by the conversation.
+     *
+     * @param address the address to send the request to
+     * @param timeout the time to wait for a reply, in milliseconds
+     * @param conversation the conversation that builds the request and
+     *        validates the replies
+     * @return a future that completes with the status returned by the
+     *         conversation, or exceptionally with the {@link IOException}
+     *         (including {@link SocketTimeoutException}) that ended the attempt
+     */
+    public CompletableFuture<PollStatus> send(final InetSocketAddress address, final long timeout, final DatagramConversation conversation) {
+        final CompletableFuture<PollStatus> future = new CompletableFuture<PollStatus>();
+        final SelectorLoop loop = nextLoop();
+        track(future);
+        loop.execute(new DatagramAttempt(loop, address, timeout, conversation, future));
+        return future;
+    }
+
+    /**
+     * Runs a task on one of the selector threads after the given delay.
+     * The task must not block.
+     *
+     * @param delay the delay in milliseconds
+     * @param task the task to run
+     */
+    public void schedule(final long delay, final Runnable task) {
+        final SelectorLoop loop = nextLoop();
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                loop.addTimeout(delay, task);
+            }
+        });
+    }
+
+    /**
+     * @return the number of requests that have been started but not completed
+     */
+    public long getPendingRequests() {
+        return m_pendingRequests.get();
+    }
+
+    /**
+     * Stops all selector threads.  Pending requests are failed.
+     */
+    public void stop() {
+        for (final SelectorLoop loop : m_loops) {
+            loop.stop();
+        }
+    }
+
+    private SelectorLoop nextLoop() {
+        return m_loops[(m_nextLoop.getAndIncrement() & Integer.MAX_VALUE) % m_loops.length];
+    }
+
+    private void track(final CompletableFuture<PollStatus> future) {
+        m_pendingRequests.incrementAndGet();
+        future.whenComplete((status, t) -> m_pendingRequests.decrementAndGet());
+    }
+
+    private static long toNanos(final long millis) {
+        return TimeUnit.NANOSECONDS.convert(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Something that reacts to readiness events on a registered channel.
+     */
+    private interface ChannelHandler {
+        void handle(SelectionKey key);
+        void fail(Throwable t);
+    }
+
+    private static final class Timeout implements Comparable<Timeout> {
+        private final long m_deadline;
+        private final Runnable m_action;
+        private boolean m_cancelled = false;
+
+        Timeout(final long deadline, final Runnable action) {
+            m_deadline = deadline;
+            m_action = action;
+        }
+
+        void cancel() {
+            m_cancelled = true;
+        }
+
+        @Override
+        public int compareTo(final Timeout o) {
+            return Long.compare(m_deadline, o.m_deadline);
+        }
+    }
+
+    private static final class SelectorLoop implements Runnable {
+        private final Selector m_selector;
+        private final Queue<Runnable> m_tasks = new ConcurrentLinkedQueue<Runnable>();
+        private final PriorityQueue<Timeout> m_timeouts = new PriorityQueue<Timeout>();
+        private volatile boolean m_running = true;
+
+        SelectorLoop() throws IOException {
+            m_selector = Selector.open();
+        }
+
+        void execute(final Runnable task) {
+            m_tasks.add(task);
+            m_selector.wakeup();
+        }
+
+        void stop() {
+            m_running = false;
+            m_selector.wakeup();
+        }
+
+        Timeout addTimeout(final long delay, final Runnable action) {
+            final Timeout timeout = new Timeout(System.nanoTime() + toNanos(delay), action);
+            m_timeouts.add(timeout);
+            return timeout;
+        }
+
+        SelectionKey register(final SelectableChannel channel, final int ops, final ChannelHandler handler) throws IOException {
+            return channel.register(m_selector, ops, handler);
+        }
+
+        @Override
+        public void run() {
+            while (m_running) {
+                try {
+                    runTasks();
+                    final long wait = runTimeouts();
+                    if (!m_tasks.isEmpty()) {
+                        m_selector.selectNow();
+                    } else {
+                        m_selector.select(wait);
+                    }
+                    for (final SelectionKey key : m_selector.selectedKeys()) {
+                        final ChannelHandler handler = (ChannelHandler)key.attachment();
+                        if (key.isValid()) {
+                            handler.handle(key);
+                        }
+                    }
+                    m_selector.selectedKeys().clear();
+                } catch (final ClosedSelectorException e) {
+                    break;
+                } catch (final Throwable t) {
+                    LOG.warn("Unexpected exception in the asynchronous poller event loop", t);
+                }
+            }
+            shutdown();
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = m_tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (final Throwable t) {
+                    LOG.warn("Unexpected exception running task {} on the asynchronous poller event loop", task, t);
+                }
+            }
+        }
+
+        /**
+         * @return the number of milliseconds until the next timeout, or 0 if
+         *         there are none (which makes select() wait indefinitely)
+         */
+        private long runTimeouts() {
+            final long now = System.nanoTime();
+            Timeout timeout;
+            while ((timeout = m_timeouts.peek()) != null) {
+                if (timeout.m_cancelled) {
+                    m_timeouts.poll();
+                } else if (timeout.m_deadline - now <= 0) {
+                    m_timeouts.poll();
+                    try {
+                        timeout.m_action.run();
+                    } catch (final Throwable t) {
+                        LOG.warn("Unexpected exception running timeout on the asynchronous poller event loop", t);
+                    }
+                } else {
+                    return Math.max(1L, TimeUnit.MILLISECONDS.convert(timeout.m_deadline - now, TimeUnit.NANOSECONDS));
+                }
+            }
+            return 0L;
+        }
+
+        private void shutdown() {
+            final IOException closed = new IOException("asynchronous poller event loop stopped");
+            try {
+                for (final SelectionKey key : m_selector.keys()) {
+                    ((ChannelHandler)key.attachment()).fail(closed);
+                }
+                m_selector.close();
+            } catch (final Throwable t) {
+                LOG.debug("Error closing asynchronous poller selector", t);
+            }
+        }
+    }
+
+    /**
+     * A single TCP connection attempt.
+     */
+    private static final class TcpAttempt implements Runnable, ChannelHandler {
+        private final SelectorLoop m_loop;
+        private final InetSocketAddress m_address;
+        private final long m_timeout;
+        private final TcpConversation m_conversation;
+        private final CompletableFuture<PollStatus> m_future;
+        private final TcpSession m_session;
+        private final ByteBuffer m_readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        private SocketChannel m_channel;
+        private SelectionKey m_key;
+        private Timeout m_idleTimeout;
+
+        TcpAttempt(final SelectorLoop loop, final InetSocketAddress address, final long timeout, final TcpConversation conversation, final CompletableFuture<PollStatus> future) {
+            m_loop = loop;
+            m_address = address;
+            m_timeout = timeout;
+            m_conversation = conversation;
+            m_future = future;
+            m_session = new TcpSession(address);
+        }
+
+        @Override
+        public void run() {
+            try {
+                m_channel = SocketChannel.open();
+                m_channel.configureBlocking(false);
+                m_session.startAttempt();
+                m_key = m_loop.register(m_channel, SelectionKey.OP_CONNECT, this);
+                armTimeout();
+                if (m_channel.connect(m_address)) {
+                    connected();
+                }
+            } catch (final Throwable t) {
+                fail(t);
+            }
+        }
+
+        @Override
+        public void handle(final SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    if (m_channel.finishConnect()) {
+                        connected();
+                    }
+                    return;
+                }
+                if (key.isWritable()) {
+                    flush();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read();
+                }
+            } catch (final Throwable t) {
+                fail(t);
+            }
+        }
+
+        private void connected() throws IOException {
+            LOG.debug("Connected to {}", m_address);
+            m_key.interestOps(SelectionKey.OP_READ);
+            process(m_conversation.connected(m_session));
+        }
+
+        private void read() throws IOException {
+            final int count = m_channel.read(m_readBuffer);
+            if (count < 0) {
+                complete(m_conversation.closed(m_session));
+                return;
+            }
+            if (count > 0) {
+                m_readBuffer.flip();
+                m_session.append(m_readBuffer);
+                m_readBuffer.clear();
+                process(m_conversation.received(m_session));
+            }
+        }
+
+        private void process(final PollStatus status) throws IOException {
+            if (status != null) {
+                complete(status);
+            } else {
+                flush();
+                armTimeout();
+            }
+        }
+
+        private void flush() throws IOException {
+            ByteBuffer buf;
+            while ((buf = m_session.nextOutput()) != null) {
+                m_channel.write(buf);
+                if (buf.hasRemaining()) {
+                    m_key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            m_key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void armTimeout() {
+            if (m_idleTimeout != null) {
+                m_idleTimeout.cancel();
+            }
+            m_idleTimeout = m_loop.addTimeout(m_timeout, new Runnable() {
+                @Override
+                public void run() {
+                    fail(new SocketTimeoutException("no response from " + m_address + " within " + m_timeout + "ms"));
+                }
+            });
+        }
+
+        private void complete(final PollStatus status) {
+            close();
+            m_future.complete(status);
+        }
+
+        @Override
+        public void fail(final Throwable t) {
+            close();
+            m_future.completeExceptionally(t);
+        }
+
+        private void close() {
+            if (m_idleTimeout != null) {
+                m_idleTimeout.cancel();
+            }
+            if (m_key != null) {
+                m_key.cancel();
+            }
+            if (m_channel != null) {
+                try {
+                    m_channel.close();
+                } catch (final IOException e) {
+                    LOG.debug("Error closing connection to {}", m_address, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A single UDP request/response attempt.
+     */
+    private static final class DatagramAttempt implements Runnable, ChannelHandler {
+        private final SelectorLoop m_loop;
+        private final InetSocketAddress m_address;
+        private final long m_timeout;
+        private final DatagramConversation m_conversation;
+        private final CompletableFuture<PollStatus> m_future;
+        private final ByteBuffer m_readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        private DatagramChannel m_channel;
+        private SelectionKey m_key;
+        private Timeout m_timeoutTask;
+        private long m_startTimeNanos;
+
+        DatagramAttempt(final SelectorLoop loop, final InetSocketAddress address, final long timeout, final DatagramConversation conversation, final CompletableFuture<PollStatus> future) {
+            m_loop = loop;
+            m_address = address;
+            m_timeout = timeout;
+            m_conversation = conversation;
+            m_future = future;
+        }
+
+        @Override
+        public void run() {
+            try {
+                m_channel = DatagramChannel.open();
+                m_channel.configureBlocking(false);
+                m_channel.connect(m_address);
+                m_key = m_loop.register(m_channel, SelectionKey.OP_READ, this);
+                m_timeoutTask = m_loop.addTimeout(m_timeout, new Runnable() {
+                    @Override
+                    public void run() {
+                        fail(new SocketTimeoutException("no response from " + m_address + " within " + m_timeout + "ms"));
+                    }
+                });
+                m_startTimeNanos = System.nanoTime();
+                m_channel.write(m_conversation.getRequest());
+            } catch (final Throwable t) {
+                fail(t);
+            }
+        }
+
+        @Override
+        public void handle(final SelectionKey key) {
+            try {
+                while (m_channel.isOpen()) {
+                    m_readBuffer.clear();
+                    if (m_channel.receive(m_readBuffer) == null) {
+                        return;
+                    }
+                    m_readBuffer.flip();
+                    final double responseTime = (System.nanoTime() - m_startTimeNanos) / (double)toNanos(1);
+                    final PollStatus status = m_conversation.received(m_readBuffer, responseTime);
+                    if (status != null) {
+                        close();
+                        m_future.complete(status);
+                    }
+                }
+            } catch (final Throwable t) {
+                fail(t);
+            }
+        }
+
+        @Override
+        public void fail(final Throwable t) {
+            close();
+            m_future.completeExceptionally(t);
+        }
+
+        private void close() {
+            if (m_timeoutTask != null) {
+                m_timeoutTask.cancel();
+            }
+            if (m_key != null) {
+                m_key.cancel();
+            }
+            if (m_channel != null) {
+                try {
+                    m_channel.close();
+                } catch (final IOException e) {
+                    LOG.debug("Error closing datagram channel to {}", m_address, e);
+                }
+            }
+        }
+    }
+}
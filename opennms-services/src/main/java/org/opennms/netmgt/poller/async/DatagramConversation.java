@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.async;
+
+import java.nio.ByteBuffer;
+
+import org.opennms.netmgt.poller.PollStatus;
+
+/**
+ * A single request/response exchange with a UDP service, driven by the
+ * {@link AsyncPollerEventLoop}.
+ *
+ * <p>Callbacks are invoked on an event loop thread and must never block.</p>
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
+ */
+public interface DatagramConversation {
+
+    /**
+     * @return the datagram to send to the service
+     */
+    ByteBuffer getRequest();
+
+    /**
+     * Called for each datagram received from the service.
+     *
+     * @param response the received datagram, positioned for reading
+     * @param responseTime the time in milliseconds since the request was sent
+     * @return the result of the exchange, or <code>null</code> to ignore the
+     *         datagram (for example a reply to an earlier attempt) and keep waiting
+     */
+    PollStatus received(ByteBuffer response, double responseTime);
+}
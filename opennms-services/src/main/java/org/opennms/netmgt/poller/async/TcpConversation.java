@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.async;
+
+import org.opennms.netmgt.poller.PollStatus;
+
+/**
+ * A single client side exchange with a TCP service, driven by the
+ * {@link AsyncPollerEventLoop}.
+ *
+ * <p>All callbacks are invoked on an event loop thread and must never block.
+ * Each callback returns either the final {@link PollStatus} of the exchange,
+ * or <code>null</code> if more data is needed.  Anything written to the
+ * {@link TcpSession} is flushed once the callback returns.</p>
+ *
+ * <p>A new conversation is created for each attempt so that implementations
+ * are free to keep per-attempt state.</p>
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
+ */
+public interface TcpConversation {
+
+    /**
+     * Called once the connection has been established.
+     *
+     * @param session the session for this attempt
+     * @return the result of the exchange, or <code>null</code> to wait for data
+     */
+    PollStatus connected(TcpSession session);
+
+    /**
+     * Called each time data has been appended to the session's input buffer.
+     *
+     * @param session the session for this attempt
+     * @return the result of the exchange, or <code>null</code> to wait for more data
+     */
+    PollStatus received(TcpSession session);
+
+    /**
+     * Called if the remote side closes the connection before a result was
+     * returned from one of the other callbacks.
+     *
+     * @param session the session for this attempt
+     * @return the result of the exchange, never <code>null</code>
+     */
+    PollStatus closed(TcpSession session);
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.async;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The state of a single TCP attempt as seen by a {@link TcpConversation}.
+ *
+ * <p>Received bytes are accumulated as ISO-8859-1 text, which is lossless and
+ * good enough for the line based protocols the poller talks.  Instances are
+ * only ever accessed from the event loop thread that owns the connection.</p>
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
+ */
+public class TcpSession {
+    private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    private final InetSocketAddress m_remoteAddress;
+    private final StringBuilder m_input = new StringBuilder();
+    private final LinkedList<ByteBuffer> m_output = new LinkedList<ByteBuffer>();
+    private long m_startTimeNanos = -1L;
+
+    TcpSession(final InetSocketAddress remoteAddress) {
+        m_remoteAddress = remoteAddress;
+    }
+
+    /**
+     * @return the address this session is connected to
+     */
+    public InetSocketAddress getRemoteAddress() {
+        return m_remoteAddress;
+    }
+
+    /**
+     * Queues text to be sent once the current callback returns.
+     *
+     * @param text the text to send, encoded as ISO-8859-1
+     */
+    public void write(final String text) {
+        m_output.add(CHARSET.encode(text));
+    }
+
+    /**
+     * Removes and returns the next complete line from the input buffer.
+     *
+     * @return the line without its terminator, or <code>null</code> if no
+     *         complete line has been received yet
+     */
+    public String readLine() {
+        final int eol = m_input.indexOf("\n");
+        if (eol < 0) {
+            return null;
+        }
+        final int end = (eol > 0 && m_input.charAt(eol - 1) == '\r') ? eol - 1 : eol;
+        final String line = m_input.substring(0, end);
+        m_input.delete(0, eol + 1);
+        return line;
+    }
+
+    /**
+     * @return all received text that has not been consumed by {@link #readLine()}
+     */
+    public String getInput() {
+        return m_input.toString();
+    }
+
+    /**
+     * @return the time in milliseconds since the connection attempt was started
+     */
+    public double elapsedTimeInMillis() {
+        final double nanosPerMilli = TimeUnit.NANOSECONDS.convert(1, TimeUnit.MILLISECONDS);
+        return (System.nanoTime() - m_startTimeNanos) / nanosPerMilli;
+    }
+
+    void startAttempt() {
+        m_startTimeNanos = System.nanoTime();
+    }
+
+    void append(final ByteBuffer buf) {
+        m_input.append(CHARSET.decode(buf));
+    }
+
+    ByteBuffer nextOutput() {
+        while (!m_output.isEmpty()) {
+            final ByteBuffer buf = m_output.getFirst();
+            if (buf.hasRemaining()) {
+                return buf;
+            }
+            m_output.removeFirst();
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "TcpSession[" + m_remoteAddress + "]";
+    }
+}
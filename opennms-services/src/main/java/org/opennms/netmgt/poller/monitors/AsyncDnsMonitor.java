@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.async.AsyncPollAttempts;
+import org.opennms.netmgt.poller.async.AsyncPollerEventLoop;
+import org.opennms.netmgt.poller.async.DatagramConversation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+/**
+ * Asynchronous version of the {@link DnsMonitor}.  The query is built and
+ * the reply parsed with dnsjava, but the UDP exchange itself runs on the
+ * shared {@link AsyncPollerEventLoop}.
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
+ */
+@Distributable
+public final class AsyncDnsMonitor extends AbstractAsyncServiceMonitor {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncDnsMonitor.class);
+
+    private static final int DEFAULT_PORT = 53;
+    private static final int DEFAULT_RETRY = 0;
+    private static final int DEFAULT_TIMEOUT = 5000;
+    private static final int[] DEFAULT_FATAL_RESP_CODES = { 2 };
+    private static final int DEFAULT_MIN_ANSWERS = 0;
+    private static final int DEFAULT_MAX_ANSWERS = Integer.MAX_VALUE;
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        final int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+        final int retries = ParameterMap.getKeyedInteger(parameters, "retry", DEFAULT_RETRY);
+        final int timeout = ParameterMap.getKeyedInteger(parameters, "timeout", DEFAULT_TIMEOUT);
+
+        String lookup = ParameterMap.getKeyedString(parameters, "lookup", null);
+        if (lookup == null || lookup.length() == 0) {
+            lookup = InetAddressUtils.getLocalHostAddressAsString();
+            if (lookup == null) {
+                throw new UnsupportedOperationException("Unable to look up local host address.");
+            }
+        }
+
+        final List<Integer> fatalCodes = new ArrayList<Integer>();
+        for (final int code : ParameterMap.getKeyedIntegerArray(parameters, "fatal-response-codes", DEFAULT_FATAL_RESP_CODES)) {
+            fatalCodes.add(code);
+        }
+        final int minAnswers = ParameterMap.getKeyedInteger(parameters, "min-answers", DEFAULT_MIN_ANSWERS);
+        final int maxAnswers = ParameterMap.getKeyedInteger(parameters, "max-answers", DEFAULT_MAX_ANSWERS);
+
+        final Name name;
+        try {
+            name = Name.fromString(lookup, Name.root);
+        } catch (final TextParseException e) {
+            return CompletableFuture.completedFuture(PollStatus.unavailable("Invalid lookup name '" + lookup + "': " + e.getMessage()));
+        }
+
+        final InetSocketAddress address = new InetSocketAddress(iface.getAddress(), port);
+        final String hostAddress = InetAddressUtils.str(iface.getAddress());
+
+        final AsyncPollerEventLoop loop = AsyncPollerEventLoop.getInstance();
+        return AsyncPollAttempts.withRetries(retries, hostAddress, () -> loop.send(address, timeout, new DnsConversation(hostAddress, name, fatalCodes, minAnswers, maxAnswers)));
+    }
+
+    private static final class DnsConversation implements DatagramConversation {
+        private final String m_hostAddress;
+        private final Message m_query;
+        private final List<Integer> m_fatalCodes;
+        private final int m_minAnswers;
+        private final int m_maxAnswers;
+
+        DnsConversation(final String hostAddress, final Name name, final List<Integer> fatalCodes, final int minAnswers, final int maxAnswers) {
+            m_hostAddress = hostAddress;
+            m_query = Message.newQuery(Record.newRecord(name, Type.A, DClass.IN));
+            m_fatalCodes = fatalCodes;
+            m_minAnswers = minAnswers;
+            m_maxAnswers = maxAnswers;
+        }
+
+        @Override
+        public ByteBuffer getRequest() {
+            return ByteBuffer.wrap(m_query.toWire());
+        }
+
+        @Override
+        public PollStatus received(final ByteBuffer buf, final double responseTime) {
+            final byte[] data = new byte[buf.remaining()];
+            buf.get(data);
+
+            final Message response;
+            try {
+                response = new Message(data);
+            } catch (final IOException e) {
+                LOG.debug("Ignoring unparseable DNS response from {}", m_hostAddress, e);
+                return null;
+            }
+            if (response.getHeader().getID() != m_query.getHeader().getID()) {
+                LOG.debug("Ignoring DNS response from {} with unexpected id {}", m_hostAddress, response.getHeader().getID());
+                return null;
+            }
+
+            final Integer rcode = response.getHeader().getRcode();
+            LOG.debug("received response code: {}", rcode);
+
+            if (m_fatalCodes.contains(rcode)) {
+                return PollStatus.unavailable("Received an invalid DNS response for address: " + m_hostAddress);
+            } else if (m_minAnswers != DEFAULT_MIN_ANSWERS || m_maxAnswers != DEFAULT_MAX_ANSWERS) {
+                final int numAnswers = response.getSectionArray(Section.ANSWER).length;
+                if (numAnswers < m_minAnswers) {
+                    return PollStatus.unavailable("Response contained only " + numAnswers + " answer(s), but at least " + m_minAnswers + " answers(s) are needed.");
+                }
+                if (numAnswers > m_maxAnswers) {
+                    return PollStatus.unavailable("Response contained " + numAnswers + " answer(s), but " + m_maxAnswers + " or fewer answers(s) are needed.");
+                }
+                LOG.debug("valid DNS response received with {} answer(s), responseTime = {}ms", numAnswers, responseTime);
+                return PollStatus.up(responseTime);
+            }
+            LOG.debug("valid DNS response received, responseTime = {}ms", responseTime);
+            return PollStatus.up(responseTime);
+        }
+    }
+}
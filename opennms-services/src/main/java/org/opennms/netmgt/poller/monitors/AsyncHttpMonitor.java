@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.lang.StringUtils;
+import org.opennms.core.utils.IPLike;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.async.AsyncPollAttempts;
+import org.opennms.netmgt.poller.async.AsyncPollerEventLoop;
+import org.opennms.netmgt.poller.async.TcpConversation;
+import org.opennms.netmgt.poller.async.TcpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous version of the {@link HttpMonitor} for plain HTTP.  It
+ * supports the <code>port</code>, <code>url</code>, <code>response</code>,
+ * <code>response-text</code>, <code>host-name</code>,
+ * <code>nodelabel-host-name</code>, <code>user-agent</code>, basic
+ * authentication and <code>headerN</code> parameters of the blocking
+ * monitor.  Ports are tried in order until one of them answers.
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
+ */
+@Distributable
+public final class AsyncHttpMonitor extends AbstractAsyncServiceMonitor {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncHttpMonitor.class);
+
+    private static final int DEFAULT_RETRY = 0;
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        final int[] ports = ParameterMap.getKeyedIntegerArray(parameters, HttpMonitor.PARAMETER_PORT, HttpMonitor.DEFAULT_PORTS);
+        final int retries = ParameterMap.getKeyedInteger(parameters, "retry", DEFAULT_RETRY);
+        final int timeout = ParameterMap.getKeyedInteger(parameters, "timeout", DEFAULT_TIMEOUT);
+        final String request = buildRequest(svc.getNodeLabel(), iface.getAddress(), parameters);
+        final String responseRange = HttpMonitor.determineResponse(parameters);
+        final String responseText = HttpMonitor.determineResponseText(parameters);
+
+        final CompletableFuture<PollStatus> result = new CompletableFuture<PollStatus>();
+        pollPort(0, ports, iface.getAddress(), retries, timeout, request, responseRange, responseText, result);
+        return result;
+    }
+
+    private void pollPort(final int portIndex, final int[] ports, final InetAddress addr, final int retries, final int timeout, final String request, final String responseRange, final String responseText, final CompletableFuture<PollStatus> result) {
+        final InetSocketAddress address = new InetSocketAddress(addr, ports[portIndex]);
+        final String description = InetAddressUtils.str(addr) + ":" + ports[portIndex];
+        final AsyncPollerEventLoop loop = AsyncPollerEventLoop.getInstance();
+
+        AsyncPollAttempts.withRetries(retries, description, () -> loop.connect(address, timeout, new HttpConversation(request, responseRange, responseText))).whenComplete((status, t) -> {
+            if (status != null && status.isAvailable()) {
+                result.complete(status);
+            } else if (portIndex + 1 < ports.length) {
+                pollPort(portIndex + 1, ports, addr, retries, timeout, request, responseRange, responseText, result);
+            } else {
+                final StringBuilder testedPorts = new StringBuilder();
+                for (int i = 0; i < ports.length; i++) {
+                    if (i > 0) testedPorts.append(',');
+                    testedPorts.append(ports[i]);
+                }
+                final String reason = status == null ? null : status.getReason();
+                result.complete(PollStatus.unavailable(reason + "/Ports: " + testedPorts));
+            }
+        });
+    }
+
+    private static String buildRequest(final String nodeLabel, final InetAddress addr, final Map<String, Object> parameters) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("GET ").append(HttpMonitor.determineUrl(parameters)).append(" HTTP/1.1\r\n");
+        sb.append("Connection: CLOSE \r\n");
+        sb.append("Host: ").append(determineVirtualHost(nodeLabel, addr, parameters)).append("\r\n");
+        sb.append("User-Agent: ").append(HttpMonitor.determineUserAgent(parameters)).append("\r\n");
+
+        final String credentials = HttpMonitor.determineBasicAuthentication(parameters);
+        if (credentials != null) {
+            sb.append("Authorization: Basic ").append(credentials).append("\r\n");
+        }
+
+        // sorted so the headers are always sent in the same order
+        for (final String parmKey : new TreeMap<String, Object>(parameters).keySet()) {
+            if (HttpMonitor.HEADER_PATTERN.matcher(parmKey).matches()) {
+                sb.append(HttpMonitor.determineHttpHeader(parameters, parmKey)).append("\r\n");
+            }
+        }
+
+        sb.append("\r\n");
+        return sb.toString();
+    }
+
+    private static String determineVirtualHost(final String nodeLabel, final InetAddress addr, final Map<String, Object> parameters) {
+        final String virtualHost = ParameterMap.getKeyedString(parameters, HttpMonitor.PARAMETER_HOST_NAME, null);
+        if (StringUtils.isNotBlank(virtualHost)) {
+            return virtualHost;
+        }
+        if (ParameterMap.getKeyedBoolean(parameters, HttpMonitor.PARAMETER_NODE_LABEL_HOST_NAME, false)) {
+            return nodeLabel;
+        }
+        // resolve-ip would need a blocking reverse lookup, so it falls back to the address
+        final String host = InetAddressUtils.str(addr);
+        return addr instanceof Inet6Address ? "[" + host + "]" : host;
+    }
+
+    private static final class HttpConversation implements TcpConversation {
+        private enum State { STATUS, HEADERS, BODY };
+
+        private final String m_request;
+        private final String m_responseRange;
+        private final String m_responseText;
+        private State m_state = State.STATUS;
+        private double m_responseTime;
+
+        HttpConversation(final String request, final String responseRange, final String responseText) {
+            m_request = request;
+            m_responseRange = responseRange;
+            m_responseText = responseText;
+        }
+
+        @Override
+        public PollStatus connected(final TcpSession session) {
+            session.write(m_request);
+            return null;
+        }
+
+        @Override
+        public PollStatus received(final TcpSession session) {
+            String line;
+            while ((line = session.readLine()) != null) {
+                switch (m_state) {
+                case STATUS:
+                    final PollStatus status = checkStatusLine(line, session.elapsedTimeInMillis());
+                    if (status != null) {
+                        return status;
+                    }
+                    m_state = State.HEADERS;
+                    break;
+                case HEADERS:
+                    if (line.length() == 0) {
+                        m_state = State.BODY;
+                    }
+                    break;
+                case BODY:
+                    if (matchesResponseText(line)) {
+                        LOG.debug("response-text: {}: found.", m_responseText);
+                        return PollStatus.available(m_responseTime);
+                    }
+                    break;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public PollStatus closed(final TcpSession session) {
+            if (m_state == State.STATUS) {
+                return PollStatus.unavailable("Connection closed before an HTTP response was received");
+            }
+            if (m_state == State.BODY && matchesResponseText(session.getInput())) {
+                return PollStatus.available(m_responseTime);
+            }
+            return PollStatus.unavailable("Matching text: [" + m_responseText + "] not found in body of HTTP response");
+        }
+
+        /**
+         * @return the final status if no body check is needed, otherwise <code>null</code>
+         */
+        private PollStatus checkStatusLine(final String line, final double responseTime) {
+            LOG.debug("poll: response= {}, responseTime= {}ms", line, responseTime);
+            m_responseTime = responseTime;
+            if (!line.startsWith("HTTP/")) {
+                return PollStatus.unavailable("Invalid HTTP response: " + line);
+            }
+
+            int serverResponse = -1;
+            final StringTokenizer t = new StringTokenizer(line);
+            t.nextToken();
+            if (t.hasMoreTokens()) {
+                try {
+                    serverResponse = Integer.parseInt(t.nextToken());
+                } catch (final NumberFormatException e) {
+                    LOG.info("Error converting response code from response = {}", line);
+                }
+            }
+
+            if (!IPLike.matchNumericListOrRange(String.valueOf(serverResponse), m_responseRange)) {
+                return PollStatus.unavailable("HTTP response value: " + serverResponse + ". Expecting: " + m_responseRange + ".");
+            }
+            if (StringUtils.isBlank(m_responseText)) {
+                return PollStatus.available(responseTime);
+            }
+            return null;
+        }
+
+        private boolean matchesResponseText(final String line) {
+            if (m_responseText.charAt(0) == '~') {
+                return line.matches(m_responseText.substring(1));
+            }
+            return line.indexOf(m_responseText) != -1;
+        }
+    }
+}
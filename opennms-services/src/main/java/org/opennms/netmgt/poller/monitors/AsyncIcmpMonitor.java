@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.PingConstants;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+import org.opennms.netmgt.icmp.PingerFactory;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous version of the {@link IcmpMonitor}.  The pinger is already
+ * callback based, so this monitor simply completes the poll from the
+ * {@link PingResponseCallback} instead of waiting for the reply.
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
+ */
+@Distributable
+public final class AsyncIcmpMonitor extends AbstractAsyncServiceMonitor {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncIcmpMonitor.class);
+
+    private static final int SEQUENCE_ID = 1;
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        final InetAddress host = iface.getAddress();
+        final int retries = ParameterMap.getKeyedInteger(parameters, "retry", PingConstants.DEFAULT_RETRIES);
+        final long timeout = ParameterMap.getKeyedLong(parameters, "timeout", PingConstants.DEFAULT_TIMEOUT);
+        final int packetSize = ParameterMap.getKeyedInteger(parameters, "packet-size", PingConstants.DEFAULT_PACKET_SIZE);
+
+        final CompletableFuture<PollStatus> future = new CompletableFuture<PollStatus>();
+        try {
+            PingerFactory.getInstance().ping(host, timeout, retries, packetSize, SEQUENCE_ID, new PingResponseCallback() {
+                @Override
+                public void handleResponse(final InetAddress address, final EchoPacket response) {
+                    // same unit as the IcmpMonitor, which reports the pinger's microseconds
+                    future.complete(PollStatus.available((double)Math.round(response.elapsedTime(TimeUnit.MICROSECONDS))));
+                }
+
+                @Override
+                public void handleTimeout(final InetAddress address, final EchoPacket request) {
+                    future.complete(PollStatus.unavailable());
+                }
+
+                @Override
+                public void handleError(final InetAddress address, final EchoPacket request, final Throwable t) {
+                    LOG.debug("failed to ping {}", address, t);
+                    future.complete(PollStatus.unavailable());
+                }
+            });
+        } catch (final Throwable e) {
+            LOG.debug("failed to ping {}", host, e);
+            future.complete(PollStatus.unavailable());
+        }
+        return future;
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.async.AsyncPollAttempts;
+import org.opennms.netmgt.poller.async.AsyncPollerEventLoop;
+import org.opennms.netmgt.poller.async.TcpConversation;
+import org.opennms.netmgt.poller.async.TcpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous version of the {@link SmtpMonitor}.  It performs the same
+ * banner, <code>HELO</code> and <code>QUIT</code> exchange and reports the
+ * time until the <code>HELO</code> reply as the response time.
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
+ */
+@Distributable
+public final class AsyncSmtpMonitor extends AbstractAsyncServiceMonitor {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSmtpMonitor.class);
+
+    private static final int DEFAULT_PORT = 25;
+    private static final int DEFAULT_RETRY = 0;
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    private static final String LOCALHOST_NAME = InetAddressUtils.getLocalHostName();
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        final int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+        final int retries = ParameterMap.getKeyedInteger(parameters, "retry", DEFAULT_RETRY);
+        final int timeout = ParameterMap.getKeyedInteger(parameters, "timeout", DEFAULT_TIMEOUT);
+
+        final InetSocketAddress address = new InetSocketAddress(iface.getAddress(), port);
+        final String hostAddress = InetAddressUtils.str(iface.getAddress());
+        LOG.debug("pollAsync: address = {}, port = {}, timeout = {}, retry = {}", hostAddress, port, timeout, retries);
+
+        final AsyncPollerEventLoop loop = AsyncPollerEventLoop.getInstance();
+        return AsyncPollAttempts.withRetries(retries, hostAddress, () -> loop.connect(address, timeout, new SmtpConversation()));
+    }
+
+    private static final class SmtpConversation implements TcpConversation {
+        private enum State { BANNER, HELO, QUIT, REJECTED };
+
+        private State m_state = State.BANNER;
+        private double m_responseTime = 0.0;
+
+        @Override
+        public PollStatus connected(final TcpSession session) {
+            return null;
+        }
+
+        @Override
+        public PollStatus received(final TcpSession session) {
+            int rc;
+            while ((rc = readReply(session)) != -1) {
+                switch (m_state) {
+                case BANNER:
+                    if (rc == 220) {
+                        session.write("HELO " + LOCALHOST_NAME + "\r\n");
+                        m_state = State.HELO;
+                    } else if (rc == 554) {
+                        session.write("QUIT\r\n");
+                        m_state = State.REJECTED;
+                    } else {
+                        return PollStatus.unavailable("Unexpected SMTP banner reply code " + rc);
+                    }
+                    break;
+                case HELO:
+                    m_responseTime = session.elapsedTimeInMillis();
+                    if (rc != 250) {
+                        return PollStatus.unavailable("Unexpected SMTP HELO reply code " + rc);
+                    }
+                    session.write("QUIT\r\n");
+                    m_state = State.QUIT;
+                    break;
+                case QUIT:
+                    if (rc == 221) {
+                        return PollStatus.available(m_responseTime);
+                    }
+                    return PollStatus.unavailable("Unexpected SMTP QUIT reply code " + rc);
+                case REJECTED:
+                    return PollStatus.unavailable("Server rejecting transactions with 554");
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public PollStatus closed(final TcpSession session) {
+            if (m_state == State.REJECTED) {
+                return PollStatus.unavailable("Server rejecting transactions with 554");
+            }
+            return PollStatus.unavailable("Connection closed by " + session.getRemoteAddress() + " during SMTP " + m_state + " exchange");
+        }
+
+        /**
+         * Consumes a complete, possibly multi-line, reply.  Continuation
+         * lines have a '-' after the reply code, the last line a space.
+         *
+         * @return the reply code, or -1 if the reply is not complete yet
+         */
+        private int readReply(final TcpSession session) {
+            String line;
+            while ((line = session.readLine()) != null) {
+                LOG.debug("poll: {} reply line = {}", m_state, line);
+                if (line.length() > 3 && line.charAt(3) == '-') {
+                    continue;
+                }
+                try {
+                    return Integer.parseInt(line.length() > 3 ? line.substring(0, 3) : line.trim());
+                } catch (final NumberFormatException e) {
+                    return 0;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.async.AsyncPollAttempts;
+import org.opennms.netmgt.poller.async.AsyncPollerEventLoop;
+import org.opennms.netmgt.poller.async.TcpConversation;
+import org.opennms.netmgt.poller.async.TcpSession;
+import org.opennms.netmgt.protocols.ssh.Ssh;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous version of the {@link SshMonitor}.  It exchanges protocol
+ * identification banners with the server and matches the server banner
+ * against the <code>match</code> or <code>banner</code> regular expression.
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
+ */
+@Distributable
+public final class AsyncSshMonitor extends AbstractAsyncServiceMonitor {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSshMonitor.class);
+
+    private static final int DEFAULT_RETRY = 0;
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        final int port = ParameterMap.getKeyedInteger(parameters, "port", SshMonitor.DEFAULT_PORT);
+        final int retries = ParameterMap.getKeyedInteger(parameters, "retry", DEFAULT_RETRY);
+        final int timeout = ParameterMap.getKeyedInteger(parameters, "timeout", SshMonitor.DEFAULT_TIMEOUT);
+        final String banner = ParameterMap.getKeyedString(parameters, "banner", null);
+        final String match = ParameterMap.getKeyedString(parameters, "match", null);
+        final String clientBanner = ParameterMap.getKeyedString(parameters, "client-banner", Ssh.DEFAULT_CLIENT_BANNER);
+
+        final Pattern regex;
+        try {
+            if (match != null) {
+                regex = Pattern.compile(match);
+            } else if (banner != null && !banner.equals("*")) {
+                regex = Pattern.compile(banner);
+            } else {
+                regex = null;
+            }
+        } catch (final PatternSyntaxException e) {
+            final String matchString = match == null ? banner : match;
+            LOG.info("Invalid regular expression for SSH banner match /{}/: {}", matchString, e.getMessage());
+            return CompletableFuture.completedFuture(PollStatus.unavailable());
+        }
+
+        final InetSocketAddress address = new InetSocketAddress(iface.getAddress(), port);
+        final String hostAddress = InetAddressUtils.str(iface.getAddress());
+
+        final AsyncPollerEventLoop loop = AsyncPollerEventLoop.getInstance();
+        return AsyncPollAttempts.withRetries(retries, hostAddress, () -> loop.connect(address, timeout, new SshBannerConversation(clientBanner, regex, match == null ? banner : match)));
+    }
+
+    private static final class SshBannerConversation implements TcpConversation {
+        private final String m_clientBanner;
+        private final Pattern m_regex;
+        private final String m_matchString;
+
+        SshBannerConversation(final String clientBanner, final Pattern regex, final String matchString) {
+            m_clientBanner = clientBanner;
+            m_regex = regex;
+            m_matchString = matchString;
+        }
+
+        @Override
+        public PollStatus connected(final TcpSession session) {
+            session.write(m_clientBanner + "\r\n");
+            return null;
+        }
+
+        @Override
+        public PollStatus received(final TcpSession session) {
+            String line;
+            while ((line = session.readLine()) != null) {
+                // servers are allowed to send other lines before the identification string
+                if (!line.startsWith("SSH-")) {
+                    continue;
+                }
+                final double responseTime = session.elapsedTimeInMillis();
+                if (m_regex == null || m_regex.matcher(line).find()) {
+                    LOG.debug("isServer: matching response={}", line);
+                    return PollStatus.available(responseTime);
+                }
+                LOG.debug("isServer: NON-matching response={}", line);
+                return PollStatus.unavailable("server responded, but banner did not match '" + m_matchString + "'");
+            }
+            return null;
+        }
+
+        @Override
+        public PollStatus closed(final TcpSession session) {
+            return PollStatus.unavailable("server closed connection before banner was received.");
+        }
+    }
+}
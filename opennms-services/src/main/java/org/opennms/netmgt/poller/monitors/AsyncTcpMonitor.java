@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.utils.ParameterMap;
+import org.opennms.netmgt.poller.Distributable;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.async.AsyncPollAttempts;
+import org.opennms.netmgt.poller.async.AsyncPollerEventLoop;
+import org.opennms.netmgt.poller.async.TcpConversation;
+import org.opennms.netmgt.poller.async.TcpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous version of the {@link TcpMonitor}.  It accepts the same
+ * parameters (<code>port</code>, <code>banner</code>, <code>timeout</code>,
+ * <code>retry</code>) but runs the connection on the shared
+ * {@link AsyncPollerEventLoop} instead of blocking a poller thread.
+ *
+ * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
+ */
+@Distributable
+public final class AsyncTcpMonitor extends AbstractAsyncServiceMonitor {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncTcpMonitor.class);
+
+    private static final int DEFAULT_PORT = -1;
+    private static final int DEFAULT_RETRY = 0;
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        final int port = ParameterMap.getKeyedInteger(parameters, TcpMonitor.PARAMETER_PORT, DEFAULT_PORT);
+        if (port == DEFAULT_PORT) {
+            throw new RuntimeException("AsyncTcpMonitor: required parameter 'port' is not present in supplied properties.");
+        }
+        final int retries = ParameterMap.getKeyedInteger(parameters, "retry", DEFAULT_RETRY);
+        final int timeout = ParameterMap.getKeyedInteger(parameters, "timeout", DEFAULT_TIMEOUT);
+        final String bannerMatch = ParameterMap.getKeyedString(parameters, TcpMonitor.PARAMETER_BANNER, null);
+
+        final InetSocketAddress address = new InetSocketAddress(iface.getAddress(), port);
+        final String hostAddress = InetAddressUtils.str(iface.getAddress());
+        LOG.debug("pollAsync: address = {}, port = {}, timeout = {}, retry = {}", hostAddress, port, timeout, retries);
+
+        final AsyncPollerEventLoop loop = AsyncPollerEventLoop.getInstance();
+        return AsyncPollAttempts.withRetries(retries, hostAddress, () -> loop.connect(address, timeout, new BannerConversation(bannerMatch)));
+    }
+
+    private static final class BannerConversation implements TcpConversation {
+        private final String m_bannerMatch;
+
+        BannerConversation(final String bannerMatch) {
+            m_bannerMatch = bannerMatch;
+        }
+
+        @Override
+        public PollStatus connected(final TcpSession session) {
+            if (m_bannerMatch == null || m_bannerMatch.length() == 0 || m_bannerMatch.equals("*")) {
+                return PollStatus.available(session.elapsedTimeInMillis());
+            }
+            return null;
+        }
+
+        @Override
+        public PollStatus received(final TcpSession session) {
+            final String response = session.readLine();
+            if (response == null) {
+                return null;
+            }
+            final double responseTime = session.elapsedTimeInMillis();
+            LOG.debug("poll: banner = {}, responseTime = {}ms", response, responseTime);
+
+            if (m_bannerMatch.charAt(0) == '~') {
+                if (response.matches(m_bannerMatch.substring(1))) {
+                    return PollStatus.available(responseTime);
+                }
+                return PollStatus.unavailable("Banner does not match Regex '" + m_bannerMatch + "'");
+            }
+            if (response.indexOf(m_bannerMatch) > -1) {
+                return PollStatus.available(responseTime);
+            }
+            return PollStatus.unavailable("Banner: '" + response + "' does not contain match string '" + m_bannerMatch + "'");
+        }
+
+        @Override
+        public PollStatus closed(final TcpSession session) {
+            return PollStatus.unavailable("Connection closed by " + session.getRemoteAddress() + " before a banner was received");
+        }
+    }
+}
@@ -76,12 +76,12 @@ public class HttpMonitor extends AbstractServiceMonitor {
     
     public static final Logger LOG = LoggerFactory.getLogger(HttpMonitor.class);
     
-    private static final Pattern HEADER_PATTERN = Pattern.compile("header[0-9]+$");
+    static final Pattern HEADER_PATTERN = Pattern.compile("header[0-9]+$");
 
     /**
      * Default HTTP ports.
      */
-    private static final int[] DEFAULT_PORTS = { 80, 8080, 8888};
+    static final int[] DEFAULT_PORTS = { 80, 8080, 8888};
 
     /**
      * Default retries.
@@ -235,7 +235,7 @@ public class HttpMonitor extends AbstractServiceMonitor {
         return (verbose != null && verbose.equalsIgnoreCase("true")) ? true : false;
     }
 
-    private static String determineUserAgent(final Map<String, Object> parameters) {
+    static String determineUserAgent(final Map<String, Object> parameters) {
         String agent = ParameterMap.getKeyedString(parameters, PARAMETER_USER_AGENT, null);
         if (isBlank(agent)) {
             return "OpenNMS HttpMonitor";
@@ -263,19 +263,19 @@ public class HttpMonitor extends AbstractServiceMonitor {
         return credentials;
     }
 
-    private static String determineHttpHeader(final Map<String, Object> parameters, String key) {
+    static String determineHttpHeader(final Map<String, Object> parameters, String key) {
         return ParameterMap.getKeyedString(parameters, key, null);
     }
     
-    private static String determineResponseText(final Map<String, Object> parameters) {
+    static String determineResponseText(final Map<String, Object> parameters) {
         return ParameterMap.getKeyedString(parameters, PARAMETER_RESPONSE_TEXT, null);
     }
 
-    private static String determineResponse(final Map<String, Object> parameters) {
+    static String determineResponse(final Map<String, Object> parameters) {
         return ParameterMap.getKeyedString(parameters, PARAMETER_RESPONSE, determineDefaultResponseRange(determineUrl(parameters)));
     }
 
-    private static String determineUrl(final Map<String, Object> parameters) {
+    static String determineUrl(final Map<String, Object> parameters) {
         return ParameterMap.getKeyedString(parameters, PARAMETER_URL, DEFAULT_URL);
     }
 
@@ -35,6 +35,7 @@ import org.opennms.netmgt.jmx.connection.JmxConnectionManager;
 import org.opennms.netmgt.jmx.connection.JmxServerConnectionException;
 import org.opennms.netmgt.jmx.connection.JmxServerConnectionWrapper;
 import org.opennms.netmgt.jmx.impl.connection.connectors.DefaultConnectionManager;
+import org.opennms.netmgt.jmx.impl.connection.connectors.PooledConnectionManager;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
@@ -43,6 +44,7 @@ import org.opennms.netmgt.snmp.InetAddrUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.util.Map;
 
@@ -76,8 +78,23 @@ public abstract class JMXMonitor extends AbstractServiceMonitor {
         }
     }
 
+    /**
+     * Used for the services which set <code>use-connection-pool</code> to true. Those
+     * are polled over a connection kept open between polls, so the response time no
+     * longer includes connecting.
+     */
+    private final PooledConnectionManager pooledConnectionManager = new PooledConnectionManager(3);
+
     protected abstract String getConnectionName();
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void release() {
+        pooledConnectionManager.close();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -90,7 +107,8 @@ public abstract class JMXMonitor extends AbstractServiceMonitor {
         PollStatus serviceStatus = PollStatus.unavailable();
         try {
             final Timer timer = new Timer();
-            final JmxConnectionManager connectionManager = new DefaultConnectionManager(ParameterMap.getKeyedInteger(map, "retry", 3));
+            final boolean pooled = ParameterMap.getKeyedBoolean(map, "use-connection-pool", false);
+            final JmxConnectionManager connectionManager = pooled ? pooledConnectionManager : new DefaultConnectionManager(ParameterMap.getKeyedInteger(map, "retry", 3));
             final JmxConnectionManager.RetryCallback retryCallback = new JmxConnectionManager.RetryCallback() {
                 @Override
                 public void onRetry() {
@@ -100,7 +118,15 @@ public abstract class JMXMonitor extends AbstractServiceMonitor {
 
             try (JmxServerConnectionWrapper connection = connectionManager.connect(getConnectionName(), InetAddrUtils.str(ipv4Addr), JmxUtils.convertToStringMap(map), retryCallback)) {
 
-                connection.getMBeanServerConnection().getMBeanCount();
+                try {
+                    connection.getMBeanServerConnection().getMBeanCount();
+                } catch (IOException e) {
+                    if (pooled) {
+                        // do not hand out the broken connection again
+                        pooledConnectionManager.invalidate(connection);
+                    }
+                    throw e;
+                }
                 long nanoResponseTime = System.nanoTime() - timer.getStartTime();
                 serviceStatus = PollStatus.available(nanoResponseTime / 1000000.0);
             } catch (JmxServerConnectionException mbse) {
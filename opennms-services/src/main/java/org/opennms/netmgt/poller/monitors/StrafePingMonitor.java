@@ -36,6 +36,7 @@ import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.opennms.core.utils.CollectionMath;
 import org.opennms.core.utils.ParameterMap;
@@ -62,7 +63,7 @@ import org.opennms.netmgt.poller.PollStatus;
  * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
  */
 @Distributable
-final public class StrafePingMonitor extends AbstractServiceMonitor {
+final public class StrafePingMonitor extends AbstractAsyncServiceMonitor {
     private static final Logger LOG = LoggerFactory.getLogger(StrafePingMonitor.class);
     private static final int DEFAULT_MULTI_PING_COUNT = 20;
     private static final long DEFAULT_PING_INTERVAL = 50;
@@ -80,77 +81,90 @@ final public class StrafePingMonitor extends AbstractServiceMonitor {
      * {@inheritDoc}
      *
      * <P>
-     * Poll the specified address for ICMP service availability.
-     * </P>
-     *
-     * <P>
-     * The ICMP service monitor relies on Discovery for the actual generation of
-     * IMCP 'ping' requests. A JSDT session with two channels (send/receive) is
-     * utilized for passing poll requests and receiving poll replies from
-     * discovery. All exchanges are SOAP/XML compliant.
+     * Sends <code>ping-count</code> echo requests to the service's address,
+     * <code>wait-interval</code> milliseconds apart, and completes with the
+     * sorted round-trip times and the packet loss once every request has been
+     * answered or has timed out.  The packets are sent from the pinger's shared
+     * timer, so no poller thread waits for the train to finish.
      * </P>
      */
     @Override
-    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
-        NetworkInterface<InetAddress> iface = svc.getNetInterface();
+    public CompletableFuture<PollStatus> pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
 
         // Get interface address from NetworkInterface
         //
         if (iface.getType() != NetworkInterface.TYPE_INET)
             throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
 
-        PollStatus serviceStatus = PollStatus.unavailable();
-        InetAddress host = (InetAddress) iface.getAddress();
-        List<Number> responseTimes = null;
+        final InetAddress host = (InetAddress) iface.getAddress();
 
-        try {
+        // get parameters
+        //
+        final long timeout = ParameterMap.getKeyedLong(parameters, "timeout", PingConstants.DEFAULT_TIMEOUT);
+        final int count = ParameterMap.getKeyedInteger(parameters, "ping-count", DEFAULT_MULTI_PING_COUNT);
+        final long pingInterval = ParameterMap.getKeyedLong(parameters, "wait-interval", DEFAULT_PING_INTERVAL);
+        final int failurePingCount = ParameterMap.getKeyedInteger(parameters, "failure-ping-count", DEFAULT_FAILURE_PING_COUNT);
 
-            // get parameters
-            //
-            long timeout = ParameterMap.getKeyedLong(parameters, "timeout", PingConstants.DEFAULT_TIMEOUT);
-            int count = ParameterMap.getKeyedInteger(parameters, "ping-count", DEFAULT_MULTI_PING_COUNT);
-            long pingInterval = ParameterMap.getKeyedLong(parameters, "wait-interval", DEFAULT_PING_INTERVAL);
-            int failurePingCount = ParameterMap.getKeyedInteger(parameters, "failure-ping-count", DEFAULT_FAILURE_PING_COUNT);
-            
-            responseTimes = new ArrayList<Number>(PingerFactory.getInstance().parallelPing(host, count, timeout, pingInterval));
-
-            if (CollectionMath.countNull(responseTimes) >= failurePingCount) {
-		LOG.debug("Service {} on interface {} is down, but continuing to gather latency data", svc.getSvcName(), svc.getIpAddr());
-                serviceStatus = PollStatus.unavailable("the failure ping count (" + failurePingCount + ") was reached");
-            } else {
-            	serviceStatus = PollStatus.available();
-            }
-            
-            Collections.sort(responseTimes, new Comparator<Number>() {
-
-                @Override
-                public int compare(Number arg0, Number arg1) {
-                    if (arg0 == null) {
-                        return -1;
-                    } else if (arg1 == null) {
-                        return 1;
-                    } else if (arg0.doubleValue() == arg1.doubleValue()) {
-                        return 0;
-                    } else {
-                        return arg0.doubleValue() < arg1.doubleValue() ? -1 : 1;
-                    }
+        final CompletableFuture<PollStatus> future = new CompletableFuture<PollStatus>();
+        try {
+            PingerFactory.getInstance().parallelPingAsync(host, count, timeout, pingInterval).whenComplete((times, t) -> {
+                if (t != null) {
+                    LOG.debug("failed to ping {}", host, t);
+                    future.complete(PollStatus.unavailable());
+                    return;
+                }
+                try {
+                    future.complete(getPollStatus(svc, times, failurePingCount));
+                } catch (final Throwable e) {
+                    LOG.debug("failed to process the responses from {}", host, e);
+                    future.complete(PollStatus.unavailable());
                 }
-
             });
+        } catch (final Throwable e) {
+            LOG.debug("failed to ping {}", host, e);
+            future.complete(PollStatus.unavailable());
+        }
+        return future;
+    }
 
-            Map<String, Number> returnval = new LinkedHashMap<String, Number>();
-            for (int i = 0; i < responseTimes.size(); i++) {
-                returnval.put("ping" + (i + 1), responseTimes.get(i));
+    private static PollStatus getPollStatus(final MonitoredService svc, final List<Number> times, final int failurePingCount) {
+        final PollStatus serviceStatus;
+        final List<Number> responseTimes = new ArrayList<Number>(times);
+
+        if (CollectionMath.countNull(responseTimes) >= failurePingCount) {
+            LOG.debug("Service {} on interface {} is down, but continuing to gather latency data", svc.getSvcName(), svc.getIpAddr());
+            serviceStatus = PollStatus.unavailable("the failure ping count (" + failurePingCount + ") was reached");
+        } else {
+            serviceStatus = PollStatus.available();
+        }
+
+        Collections.sort(responseTimes, new Comparator<Number>() {
+
+            @Override
+            public int compare(Number arg0, Number arg1) {
+                if (arg0 == null) {
+                    return -1;
+                } else if (arg1 == null) {
+                    return 1;
+                } else if (arg0.doubleValue() == arg1.doubleValue()) {
+                    return 0;
+                } else {
+                    return arg0.doubleValue() < arg1.doubleValue() ? -1 : 1;
+                }
             }
-            returnval.put("loss", CollectionMath.countNull(responseTimes));
-            returnval.put("median", CollectionMath.median(responseTimes));
-            returnval.put("response-time", CollectionMath.average(responseTimes));
 
-            serviceStatus.setProperties(returnval);
-        } catch (Throwable e) {
-            LOG.debug("failed to ping {}", host, e);
+        });
+
+        Map<String, Number> returnval = new LinkedHashMap<String, Number>();
+        for (int i = 0; i < responseTimes.size(); i++) {
+            returnval.put("ping" + (i + 1), responseTimes.get(i));
         }
+        returnval.put("loss", CollectionMath.countNull(responseTimes));
+        returnval.put("median", CollectionMath.median(responseTimes));
+        returnval.put("response-time", CollectionMath.average(responseTimes));
 
+        serviceStatus.setProperties(returnval);
         return serviceStatus;
     }
 
@@ -38,11 +38,14 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.netmgt.config.PollerConfig;
 import org.opennms.netmgt.config.poller.Package;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
@@ -108,8 +111,37 @@ public class LatencyStoringServiceMonitorAdaptor implements ServiceMonitor {
     /** {@inheritDoc} */
     @Override
     public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
-        PollStatus status = m_serviceMonitor.poll(svc, parameters);
+        return handlePollResult(svc, parameters, m_serviceMonitor.poll(svc, parameters));
+    }
+
+    /**
+     * <p>isAsync</p>
+     *
+     * @return true if the wrapped monitor is an {@link AsyncServiceMonitor}
+     */
+    public boolean isAsync() {
+        return m_serviceMonitor instanceof AsyncServiceMonitor;
+    }
+
+    /**
+     * Polls the wrapped monitor without waiting on the network.  The latency
+     * storage and thresholding done by {@link #poll(MonitoredService, Map)}
+     * may touch the disk, so it is run on the given executor rather than on
+     * the thread that completed the poll.
+     *
+     * @param svc a {@link org.opennms.netmgt.poller.MonitoredService} object.
+     * @param parameters the service parameters
+     * @param executor the executor used to process the result
+     * @return a future that completes with the processed status
+     */
+    public CompletableFuture<PollStatus> pollAsync(final MonitoredService svc, final Map<String, Object> parameters, final Executor executor) {
+        if (!isAsync()) {
+            return CompletableFuture.completedFuture(poll(svc, parameters));
+        }
+        return ((AsyncServiceMonitor)m_serviceMonitor).pollAsync(svc, parameters).thenApplyAsync(status -> handlePollResult(svc, parameters, status), executor);
+    }
 
+    private PollStatus handlePollResult(MonitoredService svc, Map<String, Object> parameters, PollStatus status) {
         if (!status.getProperties().isEmpty()) {
             storeResponseTime(svc, new LinkedHashMap<String, Number>(status.getProperties()), parameters);
         }
@@ -28,6 +28,9 @@
 
 package org.opennms.netmgt.poller.pollables;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.scheduler.Timer;
 
@@ -47,6 +50,22 @@ public interface PollConfig extends Timer {
      */
     public PollStatus poll();
 
+    /**
+     * <p>isAsync</p>
+     *
+     * @return true if the monitor for this service supports {@link #pollAsync(Executor)}
+     */
+    public boolean isAsync();
+
+    /**
+     * Starts a poll without waiting on the network.  Post-processing of the
+     * result (latency storage, thresholding) is done on the given executor.
+     *
+     * @param executor the executor used to process the result
+     * @return a future that always completes normally with the poll status
+     */
+    public CompletableFuture<PollStatus> pollAsync(Executor executor);
+
     /**
      * <p>getCurrentTime</p>
      *
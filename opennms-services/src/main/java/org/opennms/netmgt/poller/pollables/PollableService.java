@@ -31,6 +31,8 @@ package org.opennms.netmgt.poller.pollables;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Date;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.events.api.EventConstants;
@@ -56,10 +58,31 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
 
     private final class PollRunner implements Runnable {
     	
+    	private final PollStatus m_asyncStatus;
     	private volatile PollStatus m_pollStatus;
+
+    	public PollRunner() {
+    	    this(null);
+    	}
+    	/**
+    	 * @param asyncStatus the result of an asynchronous poll to process
+    	 *        instead of polling the service, or null to poll it
+    	 */
+    	public PollRunner(PollStatus asyncStatus) {
+    	    m_asyncStatus = asyncStatus;
+    	}
             @Override
 		public void run() {
-		    doPoll();
+		    if (m_asyncStatus != null && isDeleted()) {
+		        // deleted while waiting for the tree lock
+		        m_pollStatus = getStatus();
+		        return;
+		    }
+		    if (m_asyncStatus == null) {
+		        doPoll();
+		    } else {
+		        doPoll(m_asyncStatus);
+		    }
 		    getNode().processStatusChange(new Date());
 		    m_pollStatus = getStatus();
 		}
@@ -68,8 +91,74 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
 		}
 	}
 
+    /**
+     * Processes the result of an asynchronous poll on a scheduler thread
+     * using the same code path as a blocking poll.
+     */
+    private final class AsyncPollCompletion implements ReadyRunnable {
+        private final PollStatus m_status;
+
+        public AsyncPollCompletion(PollStatus status) {
+            m_status = status;
+        }
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+        @Override
+        public void run() {
+            boolean postponed = false;
+            try {
+                if (isDeleted() || !getSchedule().isScheduled()) {
+                    LOG.debug("Service {} was deleted or unscheduled while it was being polled, discarding result {}", PollableService.this, m_status);
+                    return;
+                }
+                doRun(500, m_status);
+            } catch (PostponeNecessary e) {
+                postponed = true;
+                getSchedule().runOnce(ASYNC_POSTPONE_DELAY, this);
+            } finally {
+                if (!postponed) {
+                    m_asyncPollInProgress.set(false);
+                }
+            }
+        }
+        @Override
+        public String toString() {
+            return "AsyncPollCompletion for " + PollableService.this;
+        }
+    }
+
+    private static final long ASYNC_POSTPONE_DELAY = 5000L;
+
 	private final String m_svcName;
     private final InetNetworkInterface m_netInterface;
+    private final AtomicBoolean m_asyncPollInProgress = new AtomicBoolean(false);
+    private final Executor m_asyncExecutor = new Executor() {
+        @Override
+        public void execute(final Runnable r) {
+            getSchedule().runOnce(0, new ReadyRunnable() {
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+                @Override
+                public void run() {
+                    r.run();
+                }
+                @Override
+                public String toString() {
+                    return "Asynchronous poll task for " + PollableService.this;
+                }
+            });
+        }
+    };
+
+    /**
+     * The result of an asynchronous poll while it is being processed under
+     * the tree lock, consumed only by the poll of this service itself.
+     */
+    private PollStatus m_asyncStatusInProcess;
 
     private volatile PollConfig m_pollConfig;
     private volatile PollStatus m_oldStatus;
@@ -187,7 +276,25 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public PollStatus poll() {
-        PollStatus newStatus = m_pollConfig.poll();
+        return processPollStatus(m_pollConfig.poll());
+    }
+
+    /**
+     * Processes the result of an asynchronous poll when the tree poll
+     * started by {@link #doPoll(PollStatus)} reaches this service.  Polls
+     * of other members along the way use {@link #poll()} as usual.
+     */
+    @Override
+    protected PollStatus poll(PollableElement elem) {
+        if (elem == this && m_asyncStatusInProcess != null) {
+            final PollStatus status = m_asyncStatusInProcess;
+            m_asyncStatusInProcess = null;
+            return processPollStatus(status);
+        }
+        return super.poll(elem);
+    }
+
+    private PollStatus processPollStatus(PollStatus newStatus) {
         if (!newStatus.isUnknown()) { 
             updateStatus(newStatus);
         }
@@ -229,6 +336,26 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
             return poll();
         }
     }
+
+    /**
+     * Like {@link #doPoll()} but processes the given result of an
+     * asynchronous poll instead of polling the service again.  When node
+     * processing is enabled this must be called with the tree lock held.
+     */
+    private PollStatus doPoll(PollStatus asyncStatus) {
+        if (getContext().isNodeProcessingEnabled()) {
+            m_asyncStatusInProcess = asyncStatus;
+            try {
+                return getParent().doPoll(this);
+            } finally {
+                m_asyncStatusInProcess = null;
+            }
+        }
+        else {
+            resetStatusChanged();
+            return processPollStatus(asyncStatus);
+        }
+    }
     
 
     
@@ -384,7 +511,33 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public void run() {
-        doRun(500);
+        if (m_pollConfig.isAsync()) {
+            startAsyncPoll();
+        } else {
+            doRun(500);
+        }
+    }
+
+    /**
+     * Starts an asynchronous poll and returns without waiting for the result.
+     * The result is handed back to a scheduler thread and processed by
+     * {@link #doRun(int)} just like the result of a blocking poll.  If the
+     * previous poll of this service is still outstanding no new poll is
+     * started.
+     */
+    private void startAsyncPoll() {
+        if (!m_asyncPollInProgress.compareAndSet(false, true)) {
+            LOG.debug("Previous asynchronous poll of service {} has not completed, skipping this one", this);
+            return;
+        }
+        LOG.debug("Start Asynchronous Poll of service {}", this);
+        m_pollConfig.pollAsync(m_asyncExecutor).whenComplete((status, e) -> {
+            if (e != null || status == null) {
+                LOG.error("Unexpected exception while polling {} asynchronously. Marking service as DOWN", this, e);
+                status = PollStatus.unavailable(e == null ? "No result from asynchronous poll" : e.getMessage());
+            }
+            getSchedule().runOnce(0, new AsyncPollCompletion(status));
+        });
     }
     
     /**
@@ -397,11 +550,15 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     }
 
     private PollStatus doRun(int timeout) {
+        return doRun(timeout, null);
+    }
+
+    private PollStatus doRun(int timeout, PollStatus asyncStatus) {
         long startDate = System.currentTimeMillis();
         LOG.debug("Start Scheduled Poll of service {}", this);
         PollStatus status;
         if (getContext().isNodeProcessingEnabled()) {
-            PollRunner r = new PollRunner();
+            PollRunner r = new PollRunner(asyncStatus);
             try {
                 withTreeLock(r, timeout);
             } catch (LockUnavailable e) {
@@ -411,7 +568,11 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
             status = r.getPollStatus();
         }
         else {
-            doPoll();
+            if (asyncStatus == null) {
+                doPoll();
+            } else {
+                doPoll(asyncStatus);
+            }
             processStatusChange(new Date());
             status = getStatus();
         }
@@ -29,7 +29,9 @@
 package org.opennms.netmgt.poller.pollables;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import org.opennms.netmgt.config.PollOutagesConfig;
@@ -38,6 +40,7 @@ import org.opennms.netmgt.config.poller.Downtime;
 import org.opennms.netmgt.config.poller.Package;
 import org.opennms.netmgt.config.poller.Parameter;
 import org.opennms.netmgt.config.poller.Service;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.scheduler.ScheduleInterval;
@@ -122,6 +125,52 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
         }
     }
 
+    /**
+     * <p>isAsync</p>
+     *
+     * @return a boolean.
+     */
+    @Override
+    public boolean isAsync() {
+        final ServiceMonitor monitor = getServiceMonitor();
+        if (monitor instanceof LatencyStoringServiceMonitorAdaptor) {
+            return ((LatencyStoringServiceMonitorAdaptor)monitor).isAsync();
+        }
+        return monitor instanceof AsyncServiceMonitor;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(final Executor executor) {
+        final String packageName;
+        synchronized(this) {
+            packageName = m_pkg.getName();
+        }
+        CompletableFuture<PollStatus> future;
+        try {
+            final ServiceMonitor monitor = getServiceMonitor();
+            LOG.debug("Polling {} asynchronously using pkg {}", m_service, packageName);
+            if (monitor instanceof LatencyStoringServiceMonitorAdaptor) {
+                future = ((LatencyStoringServiceMonitorAdaptor)monitor).pollAsync(m_service, getParameters(), executor);
+            } else if (monitor instanceof AsyncServiceMonitor) {
+                future = ((AsyncServiceMonitor)monitor).pollAsync(m_service, getParameters());
+            } else {
+                future = CompletableFuture.completedFuture(monitor.poll(m_service, getParameters()));
+            }
+        } catch (Throwable e) {
+            future = new CompletableFuture<PollStatus>();
+            future.completeExceptionally(e);
+        }
+        return future.handle((result, e) -> {
+            if (e != null) {
+                LOG.error("Unexpected exception while polling {}. Marking service as DOWN", m_service, e);
+                return PollStatus.down("Unexpected exception while polling "+m_service+". "+e);
+            }
+            LOG.debug("Finish polling {} asynchronously using pkg {} result = {}", m_service, packageName, result);
+            return result;
+        });
+    }
+
     private synchronized ServiceMonitor getServiceMonitor() {
         if (m_serviceMonitor == null) {
             ServiceMonitor monitor = m_pollerConfig.getServiceMonitor(m_service.getSvcName());
@@ -142,6 +142,19 @@ public class Schedule {
         m_schedulable.run();
     }
 
+    /**
+     * Runs a task once on this schedule's timer after the given delay,
+     * independently of the regular interval.  This is used to hand work that
+     * was started elsewhere, such as the result of an asynchronous poll,
+     * back to the scheduler's threads.
+     *
+     * @param delay the delay in milliseconds
+     * @param runnable a {@link org.opennms.netmgt.scheduler.ReadyRunnable} object.
+     */
+    public void runOnce(long delay, ReadyRunnable runnable) {
+        m_timer.schedule(delay, runnable);
+    }
+
     /**
      * <p>adjustSchedule</p>
      */
@@ -149,6 +162,15 @@ public class Schedule {
         schedule(m_interval.getInterval());
     }
 
+    /**
+     * <p>isScheduled</p>
+     *
+     * @return true until {@link #unschedule()} is called
+     */
+    public boolean isScheduled() {
+        return m_scheduled;
+    }
+
     /**
      * <p>unschedule</p>
      */
@@ -28,13 +28,23 @@
 
 package org.opennms.netmgt.snmpinterfacepoller;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.snmp.AggregateTracker;
+import org.opennms.netmgt.snmp.Collectable;
+import org.opennms.netmgt.snmp.ColumnTracker;
+import org.opennms.netmgt.snmp.SingleInstanceTracker;
 import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpInstId;
 import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
 import org.opennms.netmgt.snmp.SnmpUtils;
 import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.snmp.SnmpWalker;
 import org.opennms.netmgt.snmpinterfacepoller.pollable.PollableSnmpInterface.SnmpMinimalPollInterface;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +56,13 @@ import org.slf4j.LoggerFactory;
  * the ServiceMonitor interface that allows it to be used along with other
  * plug-ins by the service poller framework.
  * </P>
+ * <P>
+ * The admin and operational statuses are either fetched per interface in
+ * chunks that fit the agent's max-vars-per-pdu, with several chunks in
+ * flight at once, or read by walking both ifTable columns with GETBULK,
+ * whichever needs fewer PDUs. One monitor should be kept per agent so the
+ * ifTable size learned by a walk can be reused by the next poll.
+ * </P>
  *
  * @author <a href="mailto:antonio@opennms.it">Antonio Russo</a>
  * @version $Id: $
@@ -57,12 +74,22 @@ public class SnmpPollInterfaceMonitor {
     /**
      * ifAdminStatus table from MIB-2.
      */
-    private static final String IF_ADMIN_STATUS_OID = ".1.3.6.1.2.1.2.2.1.7.";
+    private static final SnmpObjId IF_ADMIN_STATUS_OID = SnmpObjId.get(".1.3.6.1.2.1.2.2.1.7");
     
     /**
      * ifOperStatus table from MIB-2.
      */
-    private static final String IF_OPER_STATUS_OID = ".1.3.6.1.2.1.2.2.1.8.";
+    private static final SnmpObjId IF_OPER_STATUS_OID = SnmpObjId.get(".1.3.6.1.2.1.2.2.1.8");
+
+    /**
+     * Number of status requests kept outstanding against a single agent.
+     */
+    private static final int PIPELINE_DEPTH = Integer.getInteger("org.opennms.snmpinterfacepoller.pipelineDepth", 4);
+
+    /**
+     * Number of ifTable rows seen by the last walk, or 0 if the table has not been walked yet.
+     */
+    private volatile int m_tableSize = 0;
 
     /**
      * <p>poll</p>
@@ -71,73 +98,163 @@ public class SnmpPollInterfaceMonitor {
      * @param mifaces a {@link java.util.List} object.
      * @return a {@link java.util.List} object.
      */
-	public List<SnmpMinimalPollInterface> poll(SnmpAgentConfig agentConfig,
-			List<SnmpMinimalPollInterface> mifaces) {
-
-		if (mifaces == null) {
-			LOG.error("Null Interfaces passed to Monitor, exiting");
-			return null;
-		}
-
-		LOG.debug("Got {} interfaces to poll", mifaces.size());
-
-		// Retrieve this interface's SNMP peer object
-		//
-		if (agentConfig == null)
-			throw new RuntimeException("SnmpAgentConfig object not available");
-
-		SnmpObjId[] adminoids = new SnmpObjId[mifaces.size()];
-		SnmpObjId[] operooids = new SnmpObjId[mifaces.size()];
-
-		for (int i = 0; i < mifaces.size(); i++) {
-			SnmpMinimalPollInterface miface = mifaces.get(i);
-			miface.setStatus(PollStatus.unavailable());
-			adminoids[i] = SnmpObjId.get(IF_ADMIN_STATUS_OID
-					+ miface.getIfindex());
-			operooids[i] = SnmpObjId.get(IF_OPER_STATUS_OID
-					+ miface.getIfindex());
-			LOG.debug("Adding Admin/Oper oids: {}/{}", adminoids[i], operooids[i]);
-		}
-
-		SnmpValue[] adminresults = new SnmpValue[mifaces.size()];
-		SnmpValue[] operoresults = new SnmpValue[mifaces.size()];
-
-		LOG.debug("try to get admin statuses");
-		adminresults = SnmpUtils.get(agentConfig, adminoids);
-		LOG.debug("got admin status {} SnmpValues", adminresults.length);
-		if (adminresults.length != mifaces.size()) {
-			LOG.warn("Snmp Interface Admin statuses collection failed");
-			return mifaces;
-		}
-
-		LOG.debug("try to get operational statuses");
-		operoresults = SnmpUtils.get(agentConfig, operooids);
-		LOG.debug("got operational status {} SnmpValues", operoresults.length);
-		if (operoresults.length != mifaces.size()) {
-			LOG.warn("Snmp Interface Operational statuses collection failed");
-			return mifaces;
-		}
-
-		for (int i = 0; i < mifaces.size(); i++) {
-			SnmpMinimalPollInterface miface = mifaces.get(i);
-
-			if (adminresults[i] != null && operoresults[i] != null) {
-				try {
-					miface.setAdminstatus(adminresults[i].toInt());
-					miface.setOperstatus(operoresults[i].toInt());
-					miface.setStatus(PollStatus.up());
-					LOG.debug("SNMP Value is {} for oid: {}", adminresults[i].toInt(), adminoids[i]);
-					LOG.debug("SNMP Value is {} for oid: {}", operoresults[i].toInt(), operooids[i]);
-				} catch (Exception e) {
-					LOG.warn("SNMP Value is {} for oid: {}", adminresults[i].toDisplayString(), adminoids[i]);
-					LOG.warn("SNMP Value is {} for oid: {}", operoresults[i].toDisplayString(), operooids[i]);
-				}
-			} else {
-				LOG.info("SNMP Value is null for oid: {}/{}", adminoids[i], operooids[i]);
-			}
-		}
-
-		return mifaces;
-	}
+    public List<SnmpMinimalPollInterface> poll(SnmpAgentConfig agentConfig, List<SnmpMinimalPollInterface> mifaces) {
+
+        if (mifaces == null) {
+            LOG.error("Null Interfaces passed to Monitor, exiting");
+            return null;
+        }
+
+        LOG.debug("Got {} interfaces to poll", mifaces.size());
+
+        // Retrieve this interface's SNMP peer object
+        //
+        if (agentConfig == null)
+            throw new RuntimeException("SnmpAgentConfig object not available");
+
+        int maxIfIndex = 0;
+        for (SnmpMinimalPollInterface miface : mifaces) {
+            miface.setStatus(PollStatus.unavailable());
+            maxIfIndex = Math.max(maxIfIndex, miface.getIfindex());
+        }
+        if (mifaces.isEmpty()) {
+            return mifaces;
+        }
+
+        final Map<Integer, SnmpValue> adminresults = new ConcurrentHashMap<Integer, SnmpValue>();
+        final Map<Integer, SnmpValue> operoresults = new ConcurrentHashMap<Integer, SnmpValue>();
+
+        // admin and oper status of an interface travel in the same PDU
+        final int interfacesPerPdu = Math.max(1, agentConfig.getMaxVarsPerPdu() / 2);
+        // SNMPv1 has no GETBULK, so a walk returns one row per PDU
+        final int maxRepetitions = agentConfig.getVersion() == SnmpAgentConfig.VERSION1 ? 1 : agentConfig.getMaxRepetitions();
+        // until the table has been walked, the highest ifIndex is the best guess of its size
+        final int tableSize = m_tableSize > 0 ? m_tableSize : maxIfIndex;
+
+        boolean succeeded;
+        try {
+            if (shouldWalk(mifaces.size(), interfacesPerPdu, tableSize, maxRepetitions)) {
+                LOG.debug("walking admin/oper status columns of about {} rows", tableSize);
+                succeeded = walkStatuses(agentConfig, adminresults, operoresults);
+                if (succeeded) {
+                    m_tableSize = Math.max(adminresults.size(), operoresults.size());
+                }
+            } else {
+                LOG.debug("getting admin/oper statuses of {} interfaces, {} per PDU", mifaces.size(), interfacesPerPdu);
+                succeeded = getStatuses(agentConfig, mifaces, interfacesPerPdu, adminresults, operoresults);
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while polling Snmp Interface statuses");
+            Thread.currentThread().interrupt();
+            return mifaces;
+        }
+        if (!succeeded) {
+            LOG.warn("Snmp Interface Admin/Operational statuses collection failed, got {}/{} SnmpValues", adminresults.size(), operoresults.size());
+        }
+
+        for (SnmpMinimalPollInterface miface : mifaces) {
+            final SnmpValue adminresult = adminresults.get(miface.getIfindex());
+            final SnmpValue operoresult = operoresults.get(miface.getIfindex());
+
+            if (adminresult != null && operoresult != null) {
+                try {
+                    miface.setAdminstatus(adminresult.toInt());
+                    miface.setOperstatus(operoresult.toInt());
+                    miface.setStatus(PollStatus.up());
+                    LOG.debug("SNMP Value is {}/{} for ifIndex: {}", adminresult.toInt(), operoresult.toInt(), miface.getIfindex());
+                } catch (Exception e) {
+                    LOG.warn("SNMP Value is {}/{} for ifIndex: {}", adminresult.toDisplayString(), operoresult.toDisplayString(), miface.getIfindex());
+                }
+            } else {
+                LOG.info("SNMP Value is null for ifIndex: {}", miface.getIfindex());
+            }
+        }
+
+        return mifaces;
+    }
+
+    /**
+     * Decides whether walking the status columns takes fewer PDUs than
+     * getting the statuses of the polled interfaces.
+     *
+     * @param interfaces the number of interfaces to poll
+     * @param interfacesPerPdu the number of interfaces fitting in one GET
+     * @param tableSize the (estimated) number of rows in the ifTable
+     * @param maxRepetitions the rows returned by one GETBULK
+     * @return true if the columns should be walked
+     */
+    static boolean shouldWalk(int interfaces, int interfacesPerPdu, int tableSize, int maxRepetitions) {
+        if (tableSize < 1 || maxRepetitions < 1) {
+            return false;
+        }
+        final int getPdus = (interfaces + interfacesPerPdu - 1) / interfacesPerPdu;
+        // the walk needs one more row to notice that it ran off the end of the columns
+        final int walkPdus = tableSize / maxRepetitions + 1;
+        return walkPdus < getPdus;
+    }
+
+    private static boolean walkStatuses(SnmpAgentConfig agentConfig, Map<Integer, SnmpValue> adminresults, Map<Integer, SnmpValue> operoresults) throws InterruptedException {
+        final Collectable[] columns = new Collectable[] { new ColumnTracker(IF_ADMIN_STATUS_OID), new ColumnTracker(IF_OPER_STATUS_OID) };
+        final SnmpWalker walker = SnmpUtils.createWalker(agentConfig, "ifStatus", new StatusTracker(columns, adminresults, operoresults));
+        walker.start();
+        walker.waitFor();
+        return !walker.failed();
+    }
+
+    private static boolean getStatuses(SnmpAgentConfig agentConfig, List<SnmpMinimalPollInterface> mifaces, int interfacesPerPdu, Map<Integer, SnmpValue> adminresults, Map<Integer, SnmpValue> operoresults) throws InterruptedException {
+        final List<SnmpWalker> outstanding = new ArrayList<SnmpWalker>(PIPELINE_DEPTH);
+        boolean succeeded = true;
+        for (int start = 0; start < mifaces.size(); start += interfacesPerPdu) {
+            final List<SnmpMinimalPollInterface> chunk = mifaces.subList(start, Math.min(start + interfacesPerPdu, mifaces.size()));
+            final Collectable[] instances = new Collectable[chunk.size() * 2];
+            for (int i = 0; i < chunk.size(); i++) {
+                final SnmpInstId inst = new SnmpInstId(chunk.get(i).getIfindex());
+                instances[2 * i] = new SingleInstanceTracker(IF_ADMIN_STATUS_OID, inst);
+                instances[2 * i + 1] = new SingleInstanceTracker(IF_OPER_STATUS_OID, inst);
+            }
+
+            if (outstanding.size() >= PIPELINE_DEPTH) {
+                succeeded &= waitFor(outstanding.remove(0));
+            }
+            final SnmpWalker walker = SnmpUtils.createWalker(agentConfig, "ifStatus", new StatusTracker(instances, adminresults, operoresults));
+            walker.start();
+            outstanding.add(walker);
+        }
+        for (SnmpWalker walker : outstanding) {
+            succeeded &= waitFor(walker);
+        }
+        return succeeded;
+    }
+
+    private static boolean waitFor(SnmpWalker walker) throws InterruptedException {
+        walker.waitFor();
+        return !walker.failed();
+    }
+
+    /**
+     * Sorts the admin and oper status results by ifIndex.
+     */
+    private static class StatusTracker extends AggregateTracker {
+        private final Map<Integer, SnmpValue> m_adminresults;
+        private final Map<Integer, SnmpValue> m_operoresults;
+
+        public StatusTracker(Collectable[] children, Map<Integer, SnmpValue> adminresults, Map<Integer, SnmpValue> operoresults) {
+            super(children);
+            m_adminresults = adminresults;
+            m_operoresults = operoresults;
+        }
+
+        @Override
+        protected void storeResult(SnmpResult res) {
+            if (res.getValue() == null || res.getInstance().length() != 1) {
+                return;
+            }
+            if (IF_ADMIN_STATUS_OID.equals(res.getBase())) {
+                m_adminresults.put(res.getInstance().toInt(), res.getValue());
+            } else if (IF_OPER_STATUS_OID.equals(res.getBase())) {
+                m_operoresults.put(res.getInstance().toInt(), res.getValue());
+            }
+        }
+    }
 
 }
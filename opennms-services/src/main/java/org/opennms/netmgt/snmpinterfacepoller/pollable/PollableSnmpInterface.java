@@ -69,6 +69,8 @@ public class PollableSnmpInterface implements ReadyRunnable {
     private String m_criteria;
         
     private SnmpAgentConfig m_agentConfig;
+
+    private final SnmpPollInterfaceMonitor m_pollMonitor = new SnmpPollInterfaceMonitor();
     
     public static class SnmpMinimalPollInterface {
         
@@ -291,17 +293,8 @@ public class PollableSnmpInterface implements ReadyRunnable {
                     LOG.debug("No Interface found. Doing nothing");
                 } else {
                     LOG.debug("{} Interfaces found. Getting Statutes....", m_snmpinterfaces.size());
-                    SnmpPollInterfaceMonitor pollMonitor = new SnmpPollInterfaceMonitor();
-                    int maxiface = getMaxInterfacePerPdu();
-                    if (maxiface == 0) maxiface=m_snmpinterfaces.size();
-                    LOG.debug("Max Interface Per Pdu is: {}", maxiface);
-                    List<SnmpMinimalPollInterface> mifaces = getSnmpMinimalPollInterface();
-                    int start =0;
-                    while (start + maxiface< m_snmpinterfaces.size()) {
-                        doPoll(pollMonitor,mifaces.subList(start, start+maxiface));
-                        start += maxiface;
-                    }
-                    doPoll(pollMonitor,mifaces.subList(start, m_snmpinterfaces.size()));
+                    // the monitor splits the interfaces to fit the agent's max-vars-per-pdu
+                    doPoll(m_pollMonitor, getSnmpMinimalPollInterface());
                 }
 
             }  else {
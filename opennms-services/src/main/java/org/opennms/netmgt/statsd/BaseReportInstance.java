@@ -30,6 +30,7 @@ package org.opennms.netmgt.statsd;
 
 import java.util.Date;
 import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
 
 import org.opennms.netmgt.dao.api.ResourceDao;
 import org.opennms.netmgt.dao.api.RrdDao;
@@ -87,13 +88,26 @@ public abstract class BaseReportInstance extends AbstractReportInstance implemen
         m_rrdVisitor.setRrdDao(rrdDao);
     }
 
+    /**
+     * <p>setPool</p>
+     *
+     * @param pool the {@link java.util.concurrent.ForkJoinPool} to compute RRD statistics on, or null to compute them while walking
+     */
+    public void setPool(ForkJoinPool pool) {
+        m_rrdVisitor.setPool(pool);
+    }
+
     /**
      * <p>walk</p>
      */
     @Override
     public void walk() {
         setJobStartedDate(new Date());
-        getWalker().walk();
+        try {
+            getWalker().walk();
+        } finally {
+            m_rrdVisitor.awaitCompletion();
+        }
         setJobCompletedDate(new Date());
     }
 
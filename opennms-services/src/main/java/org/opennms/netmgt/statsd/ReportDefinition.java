@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.statsd;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.opennms.netmgt.config.statsd.model.PackageReport;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.ResourceDao;
@@ -252,6 +254,20 @@ public class ReportDefinition implements InitializingBean {
      * @throws java.lang.Exception if any.
      */
     public ReportInstance createReport(NodeDao nodeDao, ResourceDao resourceDao, RrdDao rrdDao, FilterDao filterDao) throws Exception {
+        return createReport(nodeDao, resourceDao, rrdDao, filterDao, null);
+    }
+
+    /**
+     * <p>createReport</p>
+     *
+     * @param resourceDao a {@link org.opennms.netmgt.dao.api.ResourceDao} object.
+     * @param rrdDao a {@link org.opennms.netmgt.dao.api.RrdDao} object.
+     * @param filterDao a {@link org.opennms.netmgt.filter.api.FilterDao} object.
+     * @param pool the {@link java.util.concurrent.ForkJoinPool} to compute RRD statistics on, or null to compute them on the walking thread
+     * @return a {@link org.opennms.netmgt.statsd.ReportInstance} object.
+     * @throws java.lang.Exception if any.
+     */
+    public ReportInstance createReport(NodeDao nodeDao, ResourceDao resourceDao, RrdDao rrdDao, FilterDao filterDao, ForkJoinPool pool) throws Exception {
         Assert.notNull(resourceDao, "resourceDao argument must not be null");
         Assert.notNull(rrdDao, "rrdDao argument must not be null");
         Assert.notNull(filterDao, "filterDao argument must not be null");
@@ -271,12 +287,14 @@ public class ReportDefinition implements InitializingBean {
             thisReport.setRrdDao(rrdDao);
             thisReport.setFilterDao(filterDao);
             thisReport.setFilter(getReport().getPackage().getFilter());
+            thisReport.setPool(pool);
             
             report = thisReport;
         } else {
             UnfilteredReportInstance thisReport = new UnfilteredReportInstance(visitor); 
             thisReport.setResourceDao(resourceDao);
             thisReport.setRrdDao(rrdDao);
+            thisReport.setPool(pool);
             
             report = thisReport;
         }
@@ -29,6 +29,11 @@
 package org.opennms.netmgt.statsd;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import org.opennms.netmgt.daemon.SpringServiceDaemon;
 import org.opennms.netmgt.dao.api.NodeDao;
@@ -68,6 +73,12 @@ public class Statsd implements SpringServiceDaemon {
 
     private static final String LOG4J_CATEGORY = "statsd";
 
+    /**
+     * Number of threads used to compute RRD statistics for reports.  Set to 1
+     * to compute them on the report thread while walking the resource tree.
+     */
+    private static final int PARALLELISM = Integer.getInteger("org.opennms.statsd.parallelism", Runtime.getRuntime().availableProcessors());
+
     @Autowired
     private NodeDao m_nodeDao;
 
@@ -93,6 +104,9 @@ public class Statsd implements SpringServiceDaemon {
     private long m_reportsPersisted = 0;
     private long m_reportRunTime = 0;
 
+    private final ForkJoinPool m_pool = PARALLELISM > 1 ? new ForkJoinPool(PARALLELISM) : null;
+    private final Map<String, ReportTiming> m_reportTimings = new ConcurrentHashMap<String, ReportTiming>();
+
     /**
      * <p>handleReloadConfigEvent</p>
      *
@@ -175,6 +189,9 @@ public class Statsd implements SpringServiceDaemon {
             m_scheduler.shutdown();
         }
         LOG.debug("start: lock released (unless reentrant).");
+        if (m_pool != null) {
+            m_pool.shutdown();
+        }
     }
 
     /**
@@ -226,7 +243,7 @@ public class Statsd implements SpringServiceDaemon {
     public void runReport(ReportDefinition reportDef) throws Throwable {
         final ReportInstance report;
         try {
-            report = reportDef.createReport(m_nodeDao, m_resourceDao, m_rrdDao, m_filterDao);
+            report = reportDef.createReport(m_nodeDao, m_resourceDao, m_rrdDao, m_filterDao, m_pool);
         } catch (Throwable t) {
             LOG.error("Could not create a report instance for report definition {}", reportDef, t);
             throw t;
@@ -240,13 +257,17 @@ public class Statsd implements SpringServiceDaemon {
                 LOG.debug("Starting report {}", report);
                 accountReportStart();
                 report.walk();
-                LOG.debug("Completed report {}", report);
+                long walkTime = System.currentTimeMillis() - reportStartTime;
+                LOG.debug("Completed report {} in {}ms", report, walkTime);
                 accountReportComplete();
                 
+                long persistStartTime = System.currentTimeMillis();
                 m_reportPersister.persist(report);
-                LOG.debug("Report {} persisted", report);
+                long persistTime = System.currentTimeMillis() - persistStartTime;
+                LOG.debug("Report {} persisted in {}ms", report, persistTime);
                 accountReportPersist();
                 accountReportRunTime(System.currentTimeMillis() - reportStartTime);
+                m_reportTimings.put(report.getDescription(), new ReportTiming(walkTime, persistTime, report.getResults().size()));
             }
         });
     }
@@ -420,4 +441,34 @@ public class Statsd implements SpringServiceDaemon {
     public long getReportRunTime() {
         return m_reportRunTime;
     }
+
+    /**
+     * <p>getReportTimings</p>
+     *
+     * @return one line per report describing how long its last run spent walking and persisting
+     */
+    public List<String> getReportTimings() {
+        final List<String> timings = new ArrayList<String>(m_reportTimings.size());
+        for (final Map.Entry<String, ReportTiming> entry : m_reportTimings.entrySet()) {
+            timings.add(entry.getKey() + ": " + entry.getValue());
+        }
+        return timings;
+    }
+
+    private static final class ReportTiming {
+        private final long m_walkTime;
+        private final long m_persistTime;
+        private final int m_results;
+
+        public ReportTiming(long walkTime, long persistTime, int results) {
+            m_walkTime = walkTime;
+            m_persistTime = persistTime;
+            m_results = results;
+        }
+
+        @Override
+        public String toString() {
+            return "walk=" + m_walkTime + "ms, persist=" + m_persistTime + "ms, results=" + m_results;
+        }
+    }
 }
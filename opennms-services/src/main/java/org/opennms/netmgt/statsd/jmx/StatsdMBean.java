@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.statsd.jmx;
 
+import java.util.List;
+
 import org.opennms.netmgt.daemon.BaseOnmsMBean;
 
 /**
@@ -56,4 +58,9 @@ public interface StatsdMBean extends BaseOnmsMBean {
      * @return The time, in milliseconds, spent running reports since Statsd was last started
      */
     public long getReportRunTime();
+
+    /**
+     * @return The walk and persist times, in milliseconds, of the last run of each report
+     */
+    public List<String> getReportTimings();
     }
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.config.DiscoveryConfigFactory;
+import org.opennms.netmgt.icmp.NullPinger;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+
+/**
+ * Tests the pacing and cancellation of discovery sweeps, which are sent
+ * from the shared packet train timer.
+ */
+public class DiscoveryTest {
+    private static final int PACKETS_PER_SECOND = 20;
+    private static final long INTERVAL = 1000 / PACKETS_PER_SECOND;
+
+    /**
+     * Records every ping and never answers.
+     */
+    private static class RecordingPinger extends NullPinger {
+        private final List<InetAddress> m_addresses = new ArrayList<InetAddress>();
+        private final List<Long> m_times = new ArrayList<Long>();
+
+        @Override
+        public synchronized void ping(final InetAddress host, final long timeout, final int retries, final int sequenceId, final PingResponseCallback cb) throws Exception {
+            m_addresses.add(host);
+            m_times.add(System.nanoTime());
+            notifyAll();
+        }
+
+        public synchronized int getCount() {
+            return m_addresses.size();
+        }
+
+        public synchronized List<InetAddress> getAddresses() {
+            return new ArrayList<InetAddress>(m_addresses);
+        }
+
+        public synchronized List<Long> getTimes() {
+            return new ArrayList<Long>(m_times);
+        }
+
+        public synchronized void waitForCount(final int count) throws InterruptedException {
+            final long end = System.currentTimeMillis() + 10000;
+            while (m_addresses.size() < count) {
+                final long remaining = end - System.currentTimeMillis();
+                assertTrue("timed out waiting for " + count + " pings, got " + m_addresses.size(), remaining > 0);
+                wait(remaining);
+            }
+        }
+    }
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    private String m_oldHome;
+    private RecordingPinger m_pinger;
+    private Discovery m_discovery;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+
+        final File etc = m_folder.newFolder("etc");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(etc, "discovery-configuration.xml")), "UTF-8")) {
+            writer.write("<discovery-configuration threads=\"1\" packets-per-second=\"" + PACKETS_PER_SECOND + "\"\n"
+                    + "  initial-sleep-time=\"0\" restart-sleep-time=\"86400000\" retries=\"0\" timeout=\"100\">\n"
+                    + "  <include-range>\n"
+                    + "    <begin>192.0.2.1</begin>\n"
+                    + "    <end>192.0.2.254</end>\n"
+                    + "  </include-range>\n"
+                    + "</discovery-configuration>\n");
+        }
+        m_oldHome = System.getProperty("opennms.home");
+        System.setProperty("opennms.home", m_folder.getRoot().getAbsolutePath());
+
+        m_pinger = new RecordingPinger();
+        m_discovery = new Discovery() {
+            @Override
+            protected void syncAlreadyDiscovered() {
+                // no database here; nothing is managed yet
+            }
+        };
+        m_discovery.setPinger(m_pinger);
+        DiscoveryConfigFactory.reload();
+        m_discovery.setDiscoveryFactory(DiscoveryConfigFactory.getInstance());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_discovery.onStop();
+        if (m_oldHome == null) {
+            System.clearProperty("opennms.home");
+        } else {
+            System.setProperty("opennms.home", m_oldHome);
+        }
+    }
+
+    private static InetAddress address(final int lastOctet) {
+        return InetAddressUtils.addr("192.0.2." + lastOctet);
+    }
+
+    @Test
+    public void testSweepIsPaced() throws Exception {
+        m_discovery.onStart();
+        m_pinger.waitForCount(5);
+
+        final List<Long> times = m_pinger.getTimes();
+        for (int i = 1; i < 5; i++) {
+            // a late tick may send a burst, but no packet is ever sent early
+            assertTrue("ping " + i + " was sent too early", times.get(i) - times.get(0) >= (i * INTERVAL - 5) * 1000000L);
+        }
+        final List<InetAddress> addresses = m_pinger.getAddresses();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(address(i + 1), addresses.get(i));
+        }
+        assertTrue(m_pinger.getCount() < 254);
+    }
+
+    @Test
+    public void testStopCancelsSweep() throws Exception {
+        m_discovery.onStart();
+        m_pinger.waitForCount(3);
+        m_discovery.onStop();
+
+        // the train notices the cancellation on its next tick
+        Thread.sleep(INTERVAL * 4);
+        final int count = m_pinger.getCount();
+        Thread.sleep(INTERVAL * 6);
+        assertEquals(count, m_pinger.getCount());
+        assertTrue(count < 254);
+    }
+
+    @Test
+    public void testRestartReplacesSweep() throws Exception {
+        m_discovery.onStart();
+        m_pinger.waitForCount(3);
+        final int before = m_pinger.getCount();
+        m_discovery.onResume();
+        m_pinger.waitForCount(before + 6);
+        Thread.sleep(INTERVAL * 2);
+
+        // the new sweep starts again from the first address and the old one
+        // sends nothing more, apart from a packet that was already on its way
+        final List<InetAddress> addresses = m_pinger.getAddresses();
+        int next = 1;
+        int strays = 0;
+        for (final InetAddress address : addresses.subList(before, addresses.size())) {
+            if (address.equals(address(next))) {
+                next++;
+            } else {
+                strays++;
+            }
+        }
+        assertTrue("the new sweep did not start from the first address", next > 5);
+        assertTrue("the replaced sweep kept sending: " + addresses, strays <= 1);
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+
+public class KnownAddressSetTest {
+
+    @Test
+    public void testAddContainsRemove() {
+        final KnownAddressSet set = new KnownAddressSet();
+        assertTrue(set.add("192.168.1.1"));
+        assertFalse(set.add("192.168.1.1"));
+        assertTrue(set.add(InetAddressUtils.addr("192.168.1.2")));
+        assertTrue(set.add("10.0.0.255"));
+        assertEquals(3, set.size());
+
+        assertTrue(set.contains(InetAddressUtils.addr("192.168.1.1")));
+        assertTrue(set.contains(InetAddressUtils.addr("10.0.0.255")));
+        assertFalse(set.contains(InetAddressUtils.addr("192.168.1.3")));
+        assertFalse(set.contains(InetAddressUtils.addr("172.16.0.1")));
+
+        assertTrue(set.remove("192.168.1.1"));
+        assertFalse(set.remove("192.168.1.1"));
+        assertFalse(set.contains(InetAddressUtils.addr("192.168.1.1")));
+        assertTrue(set.contains(InetAddressUtils.addr("192.168.1.2")));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void testPageBoundaries() {
+        final KnownAddressSet set = new KnownAddressSet();
+        set.add("0.0.0.0");
+        set.add("10.1.255.255");
+        set.add("10.2.0.0");
+        set.add("255.255.255.255");
+        assertTrue(set.contains(InetAddressUtils.addr("0.0.0.0")));
+        assertTrue(set.contains(InetAddressUtils.addr("10.1.255.255")));
+        assertTrue(set.contains(InetAddressUtils.addr("10.2.0.0")));
+        assertTrue(set.contains(InetAddressUtils.addr("255.255.255.255")));
+        assertFalse(set.contains(InetAddressUtils.addr("10.1.255.254")));
+        assertFalse(set.contains(InetAddressUtils.addr("10.2.0.1")));
+    }
+
+    @Test
+    public void testIpv6AndInvalid() {
+        final KnownAddressSet set = new KnownAddressSet();
+        assertTrue(set.add("fe80::1"));
+        assertTrue(set.contains(InetAddressUtils.addr("fe80:0:0:0:0:0:0:1")));
+        assertFalse(set.add((String)null));
+        assertFalse(set.add(""));
+        assertEquals(1, set.size());
+    }
+}
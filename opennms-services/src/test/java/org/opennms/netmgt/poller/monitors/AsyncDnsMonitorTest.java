@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.dns.annotations.DNSEntry;
+import org.opennms.core.test.dns.annotations.DNSZone;
+import org.opennms.core.test.dns.annotations.JUnitDNSServer;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.test.context.ContextConfiguration;
+
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={"classpath:/META-INF/opennms/emptyContext.xml"})
+@JUnitDNSServer(port=9153, zones={
+            @DNSZone(name="example.com", entries={
+                    @DNSEntry(hostname="test", address="192.168.0.1")
+            })
+    })
+@JUnitConfigurationEnvironment
+public class AsyncDnsMonitorTest {
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(true);
+    }
+
+    private Map<String, Object> parameters(final String lookup) {
+        final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("port", "9153");
+        m.put("retry", "1");
+        m.put("timeout", "3000");
+        m.put("lookup", lookup);
+        return m;
+    }
+
+    private MonitoredService getService() throws Exception {
+        return MonitorTestUtils.getMonitoredService(99, addr("127.0.0.1"), "DNS");
+    }
+
+    @Test
+    public void testResponse() throws Exception {
+        final PollStatus status = new AsyncDnsMonitor().pollAsync(getService(), parameters("example.com")).get(5, TimeUnit.SECONDS);
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+        assertNotNull(status.getResponseTime());
+    }
+
+    @Test
+    // type not found is still considered a valid response with the default response codes
+    public void testNotFound() throws Exception {
+        final PollStatus status = new AsyncDnsMonitor().poll(getService(), parameters("bogus.example.com"));
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+    }
+
+    @Test
+    public void testNotFoundWithCustomRcode() throws Exception {
+        final Map<String, Object> m = parameters("bogus.example.com");
+        m.put("fatal-response-codes", "3");
+        final PollStatus status = new AsyncDnsMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+    }
+
+    @Test
+    public void testTooFewAnswers() throws Exception {
+        final Map<String, Object> m = parameters("example.empty");
+        m.put("min-answers", "1");
+        final PollStatus status = new AsyncDnsMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+    }
+
+    @Test
+    public void testTooManyAnswers() throws Exception {
+        final Map<String, Object> m = parameters("example.com");
+        m.put("max-answers", "0");
+        final PollStatus status = new AsyncDnsMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        // a bound socket that never answers
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            final Map<String, Object> m = parameters("example.com");
+            m.put("port", String.valueOf(socket.getLocalPort()));
+            m.put("timeout", "200");
+            final PollStatus status = new AsyncDnsMonitor().poll(getService(), m);
+            assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+            assertTrue(status.getReason().contains("timeout"));
+        }
+    }
+}
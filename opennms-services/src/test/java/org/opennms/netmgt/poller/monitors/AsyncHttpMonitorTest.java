@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+
+public class AsyncHttpMonitorTest {
+    private ServerSocket m_serverSocket;
+    private Thread m_serverThread;
+    private final StringBuffer m_request = new StringBuffer();
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        m_serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_serverSocket.close();
+        if (m_serverThread != null) {
+            m_serverThread.join(5000);
+        }
+    }
+
+    /**
+     * Reads the request headers and answers with the given response, or
+     * with nothing if the response is null.
+     */
+    private void serveResponse(final String response) {
+        m_serverThread = new Thread("AsyncHttpMonitorTest-server") {
+            @Override
+            public void run() {
+                try (Socket socket = m_serverSocket.accept()) {
+                    final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+                    String line;
+                    while ((line = in.readLine()) != null && line.length() > 0) {
+                        m_request.append(line).append('\n');
+                    }
+                    if (response == null) {
+                        in.read();
+                        return;
+                    }
+                    final OutputStream out = socket.getOutputStream();
+                    out.write(response.getBytes("ISO-8859-1"));
+                    out.flush();
+                } catch (final IOException e) {
+                    // server socket closed by tearDown
+                }
+            }
+        };
+        m_serverThread.start();
+    }
+
+    private Map<String, Object> parameters() {
+        final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("port", String.valueOf(m_serverSocket.getLocalPort()));
+        m.put("retry", "0");
+        m.put("timeout", "2000");
+        return m;
+    }
+
+    private MonitoredService getService() throws Exception {
+        return MonitorTestUtils.getMonitoredService(3, "localhost", InetAddress.getLoopbackAddress(), "HTTP");
+    }
+
+    @Test
+    public void testResponseCode() throws Exception {
+        serveResponse("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+        final PollStatus status = new AsyncHttpMonitor().pollAsync(getService(), parameters()).get(5, TimeUnit.SECONDS);
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+        assertNotNull(status.getResponseTime());
+        m_serverThread.join(5000);
+        assertTrue(m_request.toString(), m_request.toString().startsWith("GET / HTTP/1.1\n"));
+        assertTrue(m_request.toString(), m_request.toString().contains("Host: 127.0.0.1\n"));
+    }
+
+    @Test
+    public void testUnexpectedResponseCode() throws Exception {
+        serveResponse("HTTP/1.1 500 Internal Server Error\r\n\r\n");
+        final PollStatus status = new AsyncHttpMonitor().poll(getService(), parameters());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("HTTP response value: 500"));
+    }
+
+    @Test
+    public void testResponseText() throws Exception {
+        serveResponse("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n\r\nfirst line\r\nWelcome to OpenNMS\r\n");
+        final Map<String, Object> m = parameters();
+        m.put("response-text", "~.*OpenNMS.*");
+        final PollStatus status = new AsyncHttpMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+    }
+
+    @Test
+    public void testResponseTextNotFound() throws Exception {
+        serveResponse("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n\r\nsomething else\r\n");
+        final Map<String, Object> m = parameters();
+        m.put("response-text", "OpenNMS");
+        final PollStatus status = new AsyncHttpMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("not found"));
+    }
+
+    @Test
+    public void testRequestHeaders() throws Exception {
+        serveResponse("HTTP/1.1 200 OK\r\n\r\n");
+        final Map<String, Object> m = parameters();
+        m.put("url", "/opennms/");
+        m.put("host-name", "www.example.com");
+        m.put("user", "admin");
+        m.put("password", "admin");
+        m.put("header0", "X-Test: 1");
+        final PollStatus status = new AsyncHttpMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+        m_serverThread.join(5000);
+        final String request = m_request.toString();
+        assertTrue(request, request.startsWith("GET /opennms/ HTTP/1.1\n"));
+        assertTrue(request, request.contains("Host: www.example.com\n"));
+        assertTrue(request, request.contains("Authorization: Basic YWRtaW46YWRtaW4=\n"));
+        assertTrue(request, request.contains("X-Test: 1\n"));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        // read the request but never answer
+        serveResponse(null);
+        final Map<String, Object> m = parameters();
+        m.put("timeout", "200");
+        final PollStatus status = new AsyncHttpMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("timeout"));
+    }
+
+    @Test
+    public void testClosedWithoutResponse() throws Exception {
+        serveResponse("");
+        final PollStatus status = new AsyncHttpMonitor().poll(getService(), parameters());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("Connection closed"));
+    }
+}
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.NullPinger;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+import org.opennms.netmgt.icmp.PingerFactory;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+
+public class AsyncIcmpMonitorTest {
+
+    private enum Outcome { RESPONSE, TIMEOUT, ERROR, EXCEPTION };
+
+    /**
+     * Answers every ping with the configured outcome once the test calls
+     * {@link #answer()}, so the poll is still outstanding in between.
+     */
+    private static class TestPinger extends NullPinger {
+        private final Outcome m_outcome;
+        private InetAddress m_host;
+        private PingResponseCallback m_callback;
+        private long m_timeout;
+        private int m_retries;
+        private int m_packetSize;
+
+        public TestPinger(final Outcome outcome) {
+            m_outcome = outcome;
+        }
+
+        @Override
+        public void ping(final InetAddress host, final long timeout, final int retries, final int packetsize, final int sequenceId, final PingResponseCallback cb) throws Exception {
+            if (m_outcome == Outcome.EXCEPTION) {
+                throw new IllegalStateException("no ICMP socket");
+            }
+            m_host = host;
+            m_timeout = timeout;
+            m_retries = retries;
+            m_packetSize = packetsize;
+            m_callback = cb;
+        }
+
+        public void answer() {
+            switch (m_outcome) {
+            case RESPONSE:
+                m_callback.handleResponse(m_host, new TestEchoPacket(1234));
+                break;
+            case TIMEOUT:
+                m_callback.handleTimeout(m_host, new TestEchoPacket(0));
+                break;
+            case ERROR:
+                m_callback.handleError(m_host, new TestEchoPacket(0), new IllegalStateException("host unreachable"));
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private static class TestEchoPacket implements EchoPacket {
+        private final long m_elapsedMicros;
+
+        public TestEchoPacket(final long elapsedMicros) {
+            m_elapsedMicros = elapsedMicros;
+        }
+        @Override
+        public boolean isEchoReply() {
+            return true;
+        }
+        @Override
+        public int getIdentifier() {
+            return 1;
+        }
+        @Override
+        public int getSequenceNumber() {
+            return 1;
+        }
+        @Override
+        public long getThreadId() {
+            return 1;
+        }
+        @Override
+        public long getReceivedTimeNanos() {
+            return m_elapsedMicros * 1000;
+        }
+        @Override
+        public long getSentTimeNanos() {
+            return 0;
+        }
+        @Override
+        public double elapsedTime(final TimeUnit timeUnit) {
+            return (double)timeUnit.convert(m_elapsedMicros * 1000, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PingerFactory.setInstance(null);
+    }
+
+    private MonitoredService getService() throws Exception {
+        return MonitorTestUtils.getMonitoredService(3, "localhost", InetAddress.getLoopbackAddress(), "ICMP");
+    }
+
+    private PollStatus poll(final TestPinger pinger, final Map<String, Object> parameters) throws Exception {
+        PingerFactory.setInstance(pinger);
+        final CompletableFuture<PollStatus> future = new AsyncIcmpMonitor().pollAsync(getService(), parameters);
+        assertFalse(future.isDone());
+        pinger.answer();
+        assertTrue(future.isDone());
+        return future.get();
+    }
+
+    @Test
+    public void testResponse() throws Exception {
+        final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("retry", "3");
+        m.put("timeout", "1500");
+        m.put("packet-size", "128");
+        final TestPinger pinger = new TestPinger(Outcome.RESPONSE);
+        final PollStatus status = poll(pinger, m);
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+        // reported in microseconds like the blocking IcmpMonitor
+        assertEquals(1234.0, status.getResponseTime(), 0.0);
+        assertEquals(InetAddress.getLoopbackAddress(), pinger.m_host);
+        assertEquals(3, pinger.m_retries);
+        assertEquals(1500, pinger.m_timeout);
+        assertEquals(128, pinger.m_packetSize);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        final PollStatus status = poll(new TestPinger(Outcome.TIMEOUT), new ConcurrentSkipListMap<String, Object>());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+    }
+
+    @Test
+    public void testError() throws Exception {
+        final PollStatus status = poll(new TestPinger(Outcome.ERROR), new ConcurrentSkipListMap<String, Object>());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+    }
+
+    @Test
+    public void testPingerException() throws Exception {
+        PingerFactory.setInstance(new TestPinger(Outcome.EXCEPTION));
+        final CompletableFuture<PollStatus> future = new AsyncIcmpMonitor().pollAsync(getService(), new ConcurrentSkipListMap<String, Object>());
+        assertTrue(future.isDone());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, future.get().getStatusCode());
+    }
+}
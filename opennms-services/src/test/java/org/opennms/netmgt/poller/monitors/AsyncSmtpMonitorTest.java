@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+
+public class AsyncSmtpMonitorTest {
+    private ServerSocket m_serverSocket;
+    private Thread m_serverThread;
+    private final StringBuffer m_commands = new StringBuffer();
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        m_serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_serverSocket.close();
+        if (m_serverThread != null) {
+            m_serverThread.join(5000);
+        }
+    }
+
+    /**
+     * Sends the banner, then answers each command the client sends with the
+     * next reply.  Once the replies run out the connection is left open.
+     */
+    private void serve(final String banner, final String... replies) {
+        m_serverThread = new Thread("AsyncSmtpMonitorTest-server") {
+            @Override
+            public void run() {
+                try (Socket socket = m_serverSocket.accept()) {
+                    final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+                    final OutputStream out = socket.getOutputStream();
+                    out.write(banner.getBytes("ISO-8859-1"));
+                    out.flush();
+                    for (final String reply : replies) {
+                        final String command = in.readLine();
+                        if (command == null) {
+                            return;
+                        }
+                        m_commands.append(command).append('\n');
+                        out.write(reply.getBytes("ISO-8859-1"));
+                        out.flush();
+                    }
+                    in.read();
+                } catch (final IOException e) {
+                    // server socket closed by tearDown
+                }
+            }
+        };
+        m_serverThread.start();
+    }
+
+    private Map<String, Object> parameters() {
+        final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("port", String.valueOf(m_serverSocket.getLocalPort()));
+        m.put("retry", "0");
+        m.put("timeout", "2000");
+        return m;
+    }
+
+    private MonitoredService getService() throws Exception {
+        return MonitorTestUtils.getMonitoredService(3, "localhost", InetAddress.getLoopbackAddress(), "SMTP");
+    }
+
+    @Test
+    public void testHeloAndQuit() throws Exception {
+        serve("220-mail.example.com ESMTP\r\n220 ready\r\n", "250-mail.example.com\r\n250 HELP\r\n", "221 bye\r\n");
+        final PollStatus status = new AsyncSmtpMonitor().pollAsync(getService(), parameters()).get(5, TimeUnit.SECONDS);
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+        assertNotNull(status.getResponseTime());
+        m_serverThread.join(5000);
+        assertTrue(m_commands.toString(), m_commands.toString().startsWith("HELO "));
+        assertTrue(m_commands.toString(), m_commands.toString().endsWith("QUIT\n"));
+    }
+
+    @Test
+    public void testRejectingTransactions() throws Exception {
+        serve("554 no service\r\n", "221 bye\r\n");
+        final PollStatus status = new AsyncSmtpMonitor().poll(getService(), parameters());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("554"));
+    }
+
+    @Test
+    public void testHeloRejected() throws Exception {
+        serve("220 ready\r\n", "501 bad HELO\r\n");
+        final PollStatus status = new AsyncSmtpMonitor().poll(getService(), parameters());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("HELO reply code 501"));
+    }
+
+    @Test
+    public void testUnexpectedBanner() throws Exception {
+        serve("421 busy\r\n");
+        final PollStatus status = new AsyncSmtpMonitor().poll(getService(), parameters());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("banner reply code 421"));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        // accept the connection but never send a banner
+        serve("");
+        final Map<String, Object> m = parameters();
+        m.put("timeout", "200");
+        final PollStatus status = new AsyncSmtpMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("timeout"));
+    }
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+
+public class AsyncSshMonitorTest {
+    private ServerSocket m_serverSocket;
+    private Thread m_serverThread;
+    private volatile String m_clientBanner;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        m_serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_serverSocket.close();
+        if (m_serverThread != null) {
+            m_serverThread.join(5000);
+        }
+    }
+
+    /**
+     * Reads the client identification string and answers with the given
+     * output, then closes the connection if requested.
+     */
+    private void serve(final String output, final boolean close) {
+        m_serverThread = new Thread("AsyncSshMonitorTest-server") {
+            @Override
+            public void run() {
+                try (Socket socket = m_serverSocket.accept()) {
+                    final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+                    m_clientBanner = in.readLine();
+                    final OutputStream out = socket.getOutputStream();
+                    out.write(output.getBytes("ISO-8859-1"));
+                    out.flush();
+                    if (!close) {
+                        in.read();
+                    }
+                } catch (final IOException e) {
+                    // server socket closed by tearDown
+                }
+            }
+        };
+        m_serverThread.start();
+    }
+
+    private Map<String, Object> parameters() {
+        final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("port", String.valueOf(m_serverSocket.getLocalPort()));
+        m.put("retry", "0");
+        m.put("timeout", "2000");
+        return m;
+    }
+
+    private MonitoredService getService() throws Exception {
+        return MonitorTestUtils.getMonitoredService(3, "localhost", InetAddress.getLoopbackAddress(), "SSH");
+    }
+
+    @Test
+    public void testBanner() throws Exception {
+        serve("SSH-2.0-OpenSSH_6.6\r\n", false);
+        final PollStatus status = new AsyncSshMonitor().pollAsync(getService(), parameters()).get(5, TimeUnit.SECONDS);
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+        assertNotNull(status.getResponseTime());
+        m_serverThread.join(5000);
+        assertEquals("SSH-1.99-OpenNMS_1.5", m_clientBanner);
+    }
+
+    @Test
+    public void testLinesBeforeIdentification() throws Exception {
+        serve("Welcome\r\nAuthorized users only\r\nSSH-2.0-OpenSSH_6.6\r\n", false);
+        final Map<String, Object> m = parameters();
+        m.put("match", "OpenSSH");
+        final PollStatus status = new AsyncSshMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+    }
+
+    @Test
+    public void testBannerMismatch() throws Exception {
+        serve("SSH-2.0-dropbear_2014.63\r\n", false);
+        final Map<String, Object> m = parameters();
+        m.put("banner", "OpenSSH");
+        final PollStatus status = new AsyncSshMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("did not match"));
+    }
+
+    @Test
+    public void testClosedBeforeBanner() throws Exception {
+        serve("", true);
+        final PollStatus status = new AsyncSshMonitor().poll(getService(), parameters());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("closed connection"));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        // read the client banner but never answer
+        serve("", false);
+        final Map<String, Object> m = parameters();
+        m.put("timeout", "200");
+        final PollStatus status = new AsyncSshMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason(), status.getReason().contains("timeout"));
+    }
+}
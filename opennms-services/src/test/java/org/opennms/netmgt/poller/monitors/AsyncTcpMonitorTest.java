@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+
+public class AsyncTcpMonitorTest {
+    private ServerSocket m_serverSocket;
+    private Thread m_serverThread;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        m_serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_serverSocket.close();
+        if (m_serverThread != null) {
+            m_serverThread.join(5000);
+        }
+    }
+
+    private void serveBanner(final String banner) {
+        m_serverThread = new Thread("AsyncTcpMonitorTest-server") {
+            @Override
+            public void run() {
+                try (Socket socket = m_serverSocket.accept()) {
+                    final OutputStream out = socket.getOutputStream();
+                    out.write(banner.getBytes("ISO-8859-1"));
+                    out.flush();
+                    socket.getInputStream().read();
+                } catch (final IOException e) {
+                    // server socket closed by tearDown
+                }
+            }
+        };
+        m_serverThread.start();
+    }
+
+    private Map<String, Object> parameters(final int port, final String banner) {
+        final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("port", String.valueOf(port));
+        m.put("retry", "0");
+        m.put("timeout", "2000");
+        if (banner != null) {
+            m.put("banner", banner);
+        }
+        return m;
+    }
+
+    private MonitoredService getService() throws Exception {
+        return MonitorTestUtils.getMonitoredService(3, "localhost", InetAddress.getLoopbackAddress(), "TCP");
+    }
+
+    @Test
+    public void testConnectOnly() throws Exception {
+        serveBanner("");
+        final PollStatus status = new AsyncTcpMonitor().poll(getService(), parameters(m_serverSocket.getLocalPort(), null));
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+        assertNotNull(status.getResponseTime());
+    }
+
+    @Test
+    public void testBannerMatch() throws Exception {
+        serveBanner("220 OpenNMS test service ready\r\n");
+        final CompletableFuture<PollStatus> future = new AsyncTcpMonitor().pollAsync(getService(), parameters(m_serverSocket.getLocalPort(), "OpenNMS"));
+        final PollStatus status = future.get(5, TimeUnit.SECONDS);
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+    }
+
+    @Test
+    public void testBannerRegexMismatch() throws Exception {
+        serveBanner("SSH-2.0-OpenSSH_6.6\r\n");
+        final PollStatus status = new AsyncTcpMonitor().poll(getService(), parameters(m_serverSocket.getLocalPort(), "~^220.*"));
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason().contains("Regex"));
+    }
+
+    @Test
+    public void testTimeoutWaitingForBanner() throws Exception {
+        // accept the connection but never send anything
+        serveBanner("");
+        final Map<String, Object> m = parameters(m_serverSocket.getLocalPort(), "OpenNMS");
+        m.put("timeout", "200");
+        final PollStatus status = new AsyncTcpMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason().contains("timeout"));
+    }
+
+    @Test
+    public void testConnectionRefused() throws Exception {
+        final int port = m_serverSocket.getLocalPort();
+        m_serverSocket.close();
+        final Map<String, Object> m = parameters(port, null);
+        m.put("retry", "2");
+        final PollStatus status = new AsyncTcpMonitor().poll(getService(), m);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertNotNull(status.getReason());
+    }
+}
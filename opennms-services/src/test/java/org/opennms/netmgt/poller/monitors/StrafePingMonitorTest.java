@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.icmp.NullPinger;
+import org.opennms.netmgt.icmp.PingerFactory;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+
+public class StrafePingMonitorTest {
+
+    /**
+     * Hands out a packet train that the test completes with a fixed set of
+     * round-trip times.
+     */
+    private static class TestPinger extends NullPinger {
+        private final CompletableFuture<List<Number>> m_future = new CompletableFuture<List<Number>>();
+        private InetAddress m_host;
+        private int m_count;
+        private long m_timeout;
+        private long m_pingInterval;
+
+        @Override
+        public CompletableFuture<List<Number>> parallelPingAsync(final InetAddress host, final int count, final long timeout, final long pingInterval) {
+            m_host = host;
+            m_count = count;
+            m_timeout = timeout;
+            m_pingInterval = pingInterval;
+            return m_future;
+        }
+    }
+
+    private TestPinger m_pinger;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        m_pinger = new TestPinger();
+        PingerFactory.setInstance(m_pinger);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PingerFactory.setInstance(null);
+    }
+
+    private MonitoredService getService() throws Exception {
+        return MonitorTestUtils.getMonitoredService(3, "localhost", InetAddress.getLoopbackAddress(), "StrafePing");
+    }
+
+    private Map<String, Object> parameters(final int count, final int failurePingCount) {
+        final Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("ping-count", String.valueOf(count));
+        m.put("failure-ping-count", String.valueOf(failurePingCount));
+        m.put("wait-interval", "25");
+        m.put("timeout", "800");
+        return m;
+    }
+
+    private PollStatus poll(final Map<String, Object> parameters, final Number... times) throws Exception {
+        final CompletableFuture<PollStatus> future = new StrafePingMonitor().pollAsync(getService(), parameters);
+        // the poll waits for the whole train without holding a thread
+        assertFalse(future.isDone());
+        m_pinger.m_future.complete(Arrays.asList(times));
+        assertTrue(future.isDone());
+        return future.get();
+    }
+
+    @Test
+    public void testParameters() throws Exception {
+        poll(parameters(5, 5), 1000, 1000, 1000, 1000, 1000);
+        assertEquals(InetAddress.getLoopbackAddress(), m_pinger.m_host);
+        assertEquals(5, m_pinger.m_count);
+        assertEquals(800, m_pinger.m_timeout);
+        assertEquals(25, m_pinger.m_pingInterval);
+    }
+
+    @Test
+    public void testAggregation() throws Exception {
+        final PollStatus status = poll(parameters(5, 3), null, 4000, 1000, null, 2000);
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+
+        final Map<String, Number> properties = status.getProperties();
+        // lost packets sort first, then the round-trip times in order
+        assertNull(properties.get("ping1"));
+        assertNull(properties.get("ping2"));
+        assertEquals(1000.0, properties.get("ping3").doubleValue(), 0.0);
+        assertEquals(2000.0, properties.get("ping4").doubleValue(), 0.0);
+        assertEquals(4000.0, properties.get("ping5").doubleValue(), 0.0);
+        assertEquals(2, properties.get("loss").intValue());
+        assertEquals(2000.0, properties.get("median").doubleValue(), 0.001);
+        assertEquals(7000.0 / 3, properties.get("response-time").doubleValue(), 0.001);
+    }
+
+    @Test
+    public void testFailurePingCountReached() throws Exception {
+        final PollStatus status = poll(parameters(4, 3), null, null, 1500, null);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertTrue(status.getReason().contains("failure ping count"));
+
+        // latency data is still gathered for a down service
+        final Map<String, Number> properties = status.getProperties();
+        assertEquals(3, properties.get("loss").intValue());
+        assertEquals(1500.0, properties.get("median").doubleValue(), 0.001);
+    }
+
+    @Test
+    public void testAllLost() throws Exception {
+        final PollStatus status = poll(parameters(3, 3), null, null, null);
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertEquals(3, status.getProperties().get("loss").intValue());
+        assertNull(status.getProperties().get("median"));
+    }
+
+    @Test
+    public void testTrainFailed() throws Exception {
+        final CompletableFuture<PollStatus> future = new StrafePingMonitor().pollAsync(getService(), parameters(5, 5));
+        m_pinger.m_future.completeExceptionally(new IllegalStateException("no ICMP socket"));
+        assertTrue(future.isDone());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, future.get().getStatusCode());
+    }
+}
@@ -45,6 +45,8 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.sql.DataSource;
 
@@ -1173,6 +1175,148 @@ public class PollablesTest {
 
     }
 
+    /**
+     * A poll config whose asynchronous polls complete only when the test
+     * completes the returned future.
+     */
+    private static class AsyncPollConfig extends PollableServiceConfig {
+        private CompletableFuture<PollStatus> m_future;
+        private int m_asyncPollCount = 0;
+
+        public AsyncPollConfig(PollableService svc, PollerConfig pollerConfig, PollOutagesConfig pollOutagesConfig, Package pkg, ScheduleTimer timer) {
+            super(svc, pollerConfig, pollOutagesConfig, pkg, timer);
+        }
+
+        @Override
+        public boolean isAsync() {
+            return true;
+        }
+
+        @Override
+        public CompletableFuture<PollStatus> pollAsync(Executor executor) {
+            m_asyncPollCount++;
+            m_future = new CompletableFuture<PollStatus>();
+            return m_future;
+        }
+
+        public CompletableFuture<PollStatus> getFuture() {
+            return m_future;
+        }
+
+        public int getAsyncPollCount() {
+            return m_asyncPollCount;
+        }
+    }
+
+    private AsyncPollConfig setAsyncPollConfig(PollableService svc) {
+        AsyncPollConfig pollConfig = new AsyncPollConfig(svc, m_pollerConfig, m_pollerConfig, m_pollerConfig.getPackage("TestPackage"), m_scheduler);
+        svc.setPollConfig(pollConfig);
+        svc.setSchedule(new Schedule(svc, pollConfig, m_scheduler));
+        return pollConfig;
+    }
+
+    @Test
+    public void testAsyncPollCompletion() {
+        AsyncPollConfig pollConfig = setAsyncPollConfig(pDot1Smtp);
+        pDot1Smtp.getSchedule().schedule();
+
+        // starts the poll but nothing is processed until the future completes
+        m_scheduler.next();
+        assertEquals(1, pollConfig.getAsyncPollCount());
+        assertUp(pDot1Smtp);
+        verifyAnticipated();
+
+        anticipateDown(mDot1Smtp);
+        mDot1Smtp.bringDown();
+        pollConfig.getFuture().complete(PollStatus.down());
+
+        m_scheduler.next();
+
+        assertDown(pDot1Smtp);
+        assertNoPoll(mDot1Smtp);
+        verifyAnticipated();
+    }
+
+    @Test
+    public void testAsyncPollException() {
+        AsyncPollConfig pollConfig = setAsyncPollConfig(pDot1Smtp);
+        pDot1Smtp.getSchedule().schedule();
+
+        m_scheduler.next();
+
+        anticipateDown(mDot1Smtp);
+        mDot1Smtp.bringDown();
+        pollConfig.getFuture().completeExceptionally(new IllegalStateException("connection reset"));
+
+        m_scheduler.next();
+
+        // the failure is processed as a down status without a blocking poll
+        assertDown(pDot1Smtp);
+        assertNoPoll(mDot1Smtp);
+        verifyAnticipated();
+    }
+
+    @Test
+    public void testAsyncPollSkippedWhileInFlight() {
+        AsyncPollConfig pollConfig = setAsyncPollConfig(pDot1Smtp);
+        pDot1Smtp.getSchedule().schedule();
+
+        m_scheduler.next();
+        assertEquals(1, pollConfig.getAsyncPollCount());
+
+        // the next scheduled poll comes around before the first one completed
+        pDot1Smtp.run();
+        assertEquals(1, pollConfig.getAsyncPollCount());
+
+        pollConfig.getFuture().complete(PollStatus.up());
+        m_scheduler.next();
+
+        pDot1Smtp.run();
+        assertEquals(2, pollConfig.getAsyncPollCount());
+    }
+
+    @Test
+    public void testAsyncPollNotConsumedByOtherPolls() {
+        AsyncPollConfig pollConfig = setAsyncPollConfig(pDot1Smtp);
+        pDot1Smtp.getSchedule().schedule();
+
+        m_scheduler.next();
+        pollConfig.getFuture().complete(PollStatus.down());
+
+        // another poll of the service before the result is processed goes
+        // to the monitor and leaves the asynchronous result alone
+        pDot1Smtp.poll();
+        assertPoll(mDot1Smtp);
+        assertUp(pDot1Smtp);
+
+        anticipateDown(mDot1Smtp);
+        m_scheduler.next();
+        assertDown(pDot1Smtp);
+        verifyAnticipated();
+    }
+
+    @Test
+    public void testAsyncPollDiscardedAfterDelete() {
+        AsyncPollConfig pollConfig = setAsyncPollConfig(pDot1Smtp);
+        pDot1Smtp.getSchedule().schedule();
+
+        m_scheduler.next();
+
+        pDot1Smtp.delete();
+        mDot1Smtp.bringDown();
+        pollConfig.getFuture().complete(PollStatus.down());
+
+        // anticipate nothing, the service is gone
+        m_scheduler.next();
+
+        assertUp(pDot1Smtp);
+        verifyAnticipated();
+
+        // the next regular poll is not started either
+        m_scheduler.next();
+        assertEquals(1, pollConfig.getAsyncPollCount());
+    }
+
     @Test
     public void testServiceEvent() throws Exception {
         MockService mSvc = mDot1Smtp;
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.snmpinterfacepoller;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SnmpPollInterfaceMonitorTest {
+
+    @Test
+    public void testGetsFewInterfacesOfLargeTable() {
+        // 4 interfaces fit in one GET, walking 2000 rows takes 201 bulks
+        assertFalse(SnmpPollInterfaceMonitor.shouldWalk(4, 5, 2000, 10));
+    }
+
+    @Test
+    public void testWalksDenseChassis() {
+        // 2000 interfaces need 400 GETs, walking them takes 201 bulks
+        assertTrue(SnmpPollInterfaceMonitor.shouldWalk(2000, 5, 2000, 10));
+    }
+
+    @Test
+    public void testNeverWalksWithoutRepetitions() {
+        assertFalse(SnmpPollInterfaceMonitor.shouldWalk(2000, 5, 2000, 0));
+        assertFalse(SnmpPollInterfaceMonitor.shouldWalk(2000, 5, 0, 10));
+    }
+
+    @Test
+    public void testSnmpV1WalkIsNeverCheaper() {
+        // one row per GETNEXT can not beat 5 interfaces per GET
+        assertFalse(SnmpPollInterfaceMonitor.shouldWalk(2000, 5, 2000, 1));
+    }
+}
@@ -50,6 +50,7 @@ import org.opennms.core.resource.Vault;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.WebSecurityUtils;
 import org.opennms.netmgt.events.api.EventProxy;
+import org.opennms.netmgt.events.api.support.PooledTcpEventProxy;
 import org.opennms.netmgt.events.api.support.TcpEventProxy;
 
 /**
@@ -63,6 +64,8 @@ public abstract class Util extends Object {
     private static final String[] EMPTY_STRING_ARRAY = new String[0];
     private static final Map<String, Object> EMPTY_MAP = Collections.emptyMap();
 
+    private static PooledTcpEventProxy s_pooledEventProxy;
+
 	/**
      * Return a string that represents the fully qualified URL for our servlet
      * context, suitable for use in the HTML <em>base</em> tag.
@@ -488,6 +491,11 @@ public abstract class Util extends Object {
     /**
      * <p>createEventProxy</p>
      * 
+     * <p>When the <code>opennms.rtc.event.proxy.pooled</code> property is
+     * true, every call returns the same {@link PooledTcpEventProxy}, which
+     * keeps its connections to eventd open, rather than a new
+     * {@link TcpEventProxy} that connects once per send.</p>
+     *
      * @deprecated Use dependency injection to wire in an instance of the {@link EventProxy} instead
      *
      * @return a {@link org.opennms.netmgt.events.api.EventProxy} object.
@@ -516,12 +524,26 @@ public abstract class Util extends Object {
                 // XXX Ewwww!  We should just let the first UnknownException bubble up. 
                 throw new UndeclaredThrowableException(e);
             }
+        } else if (Boolean.parseBoolean(Vault.getProperty("opennms.rtc.event.proxy.pooled"))) {
+            proxy = getPooledEventProxy(new InetSocketAddress(proxyAddr, Integer.parseInt(proxyHostPort)), Integer.parseInt(proxyHostTimeout));
         } else {
             proxy = new TcpEventProxy(new InetSocketAddress(proxyAddr, Integer.parseInt(proxyHostPort)), Integer.parseInt(proxyHostTimeout));
         }
         return proxy;
     }
 
+    /**
+     * The pooled proxy is shared by the whole web application and is never
+     * closed, since callers of {@link #createEventProxy()} don't close the
+     * proxies they get. Its sender threads are daemon threads.
+     */
+    private static synchronized EventProxy getPooledEventProxy(final InetSocketAddress address, final int timeout) {
+        if (s_pooledEventProxy == null) {
+            s_pooledEventProxy = new PooledTcpEventProxy(address, timeout, PooledTcpEventProxy.DEFAULT_CONNECTIONS, PooledTcpEventProxy.DEFAULT_FLUSH_INTERVAL, PooledTcpEventProxy.DEFAULT_BATCH_SIZE, PooledTcpEventProxy.DEFAULT_QUEUE_SIZE);
+        }
+        return s_pooledEventProxy;
+    }
+
     /**
      * An utility method to format a 'Date' into a string in the local specific
      * DEFALUT DateFormat style for both the date and time. This is used by the
@@ -38,12 +38,16 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.SecurityContext;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Providers;
 
+import org.opennms.core.criteria.Criteria;
 import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.netmgt.dao.api.AcknowledgmentDao;
 import org.opennms.netmgt.dao.api.AlarmDao;
@@ -78,6 +82,12 @@ public class AlarmRestService extends AlarmRestServiceBase {
     @Context
     SecurityContext m_securityContext;
 
+    @Context
+    HttpHeaders m_headers;
+
+    @Context
+    Providers m_providers;
+
     /**
      * <p>
      * getAlarm
@@ -131,24 +141,33 @@ public class AlarmRestService extends AlarmRestServiceBase {
      * getAlarms
      * </p>
      * 
-     * @return a {@link org.opennms.netmgt.model.OnmsAlarmCollection} object.
+     * @return a response containing the {@link org.opennms.netmgt.model.OnmsAlarmCollection},
+     *         or streaming it if stream=true
      */
     @GET
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON, MediaType.APPLICATION_ATOM_XML})
     @Transactional
-    public OnmsAlarmCollection getAlarms() {
+    public Response getAlarms() {
         readLock();
 
         try {
             assertUserReadCredentials();
-            final CriteriaBuilder builder = getCriteriaBuilder(m_uriInfo.getQueryParameters(), false);
+            final MultivaluedMap<String, String> params = m_uriInfo.getQueryParameters();
+            final CriteriaBuilder builder = getCriteriaBuilder(params, false);
             builder.distinct();
-            final OnmsAlarmCollection coll = new OnmsAlarmCollection(m_alarmDao.findMatching(builder.toCriteria()));
+            final Criteria criteria = builder.toCriteria();
 
             // For getting totalCount
-            coll.setTotalCount(m_alarmDao.countMatching(builder.count().toCriteria()));
+            final Integer totalCount = includeTotalCount(params) ? m_alarmDao.countMatching(builder.count().toCriteria()) : null;
+
+            if (isStreaming(params)) {
+                return getStreamingResponse(m_alarmDao, criteria, OnmsAlarm.class, OnmsAlarmCollection.class, params, m_headers, m_providers, totalCount);
+            }
+
+            final OnmsAlarmCollection coll = new OnmsAlarmCollection(m_alarmDao.findMatching(criteria));
+            coll.setTotalCount(totalCount);
 
-            return coll;
+            return Response.ok(coll).build();
         } finally {
             readUnlock();
         }
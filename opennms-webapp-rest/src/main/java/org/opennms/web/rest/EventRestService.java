@@ -45,10 +45,12 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Providers;
 
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 import org.opennms.core.criteria.Alias.JoinType;
+import org.opennms.core.criteria.Criteria;
 import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.model.OnmsEvent;
@@ -80,6 +82,9 @@ public class EventRestService extends OnmsRestService {
     @Context
     SecurityContext m_securityContext;
 
+    @Context
+    Providers m_providers;
+
     /**
      * <p>
      * getEvent
@@ -124,24 +129,22 @@ public class EventRestService extends OnmsRestService {
      * Returns all the events which match the filter/query in the query
      * parameters
      * 
-     * @return Collection of OnmsEventCollection (ready to be XML-ified)
+     * @return a response containing the OnmsEventCollection, or streaming it if stream=true
      * @throws java.text.ParseException
      *             if any.
      */
     @GET
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON, MediaType.APPLICATION_ATOM_XML})
     @Transactional
-    public OnmsEventCollection getEvents() throws ParseException {
+    public Response getEvents() throws ParseException {
         readLock();
 
         try {
-            final CriteriaBuilder builder = getCriteriaBuilder(m_uriInfo.getQueryParameters());
+            final MultivaluedMap<String, String> params = m_uriInfo.getQueryParameters();
+            final CriteriaBuilder builder = getCriteriaBuilder(params);
             builder.orderBy("eventTime").asc();
 
-            final OnmsEventCollection coll = new OnmsEventCollection(m_eventDao.findMatching(builder.toCriteria()));
-            coll.setTotalCount(m_eventDao.countMatching(builder.count().toCriteria()));
-
-            return coll;
+            return getEventsResponse(builder, params);
         } finally {
             readUnlock();
         }
@@ -151,7 +154,7 @@ public class EventRestService extends OnmsRestService {
      * Returns all the events which match the filter/query in the query
      * parameters
      * 
-     * @return Collection of OnmsEventCollection (ready to be XML-ified)
+     * @return a response containing the OnmsEventCollection, or streaming it if stream=true
      * @throws java.text.ParseException
      *             if any.
      */
@@ -159,7 +162,7 @@ public class EventRestService extends OnmsRestService {
     @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON, MediaType.APPLICATION_ATOM_XML})
     @Path("between")
     @Transactional
-    public OnmsEventCollection getEventsBetween() throws ParseException {
+    public Response getEventsBetween() throws ParseException {
         readLock();
 
         try {
@@ -203,10 +206,7 @@ public class EventRestService extends OnmsRestService {
                 throw new IllegalArgumentException("Unable to parse " + begin + " and " + end + " as dates!");
             }
 
-            final OnmsEventCollection coll = new OnmsEventCollection(m_eventDao.findMatching(builder.toCriteria()));
-            coll.setTotalCount(m_eventDao.countMatching(builder.count().toCriteria()));
-
-            return coll;
+            return getEventsResponse(builder, params);
         } finally {
             readUnlock();
         }
@@ -285,6 +285,19 @@ public class EventRestService extends OnmsRestService {
         m_eventDao.save(event);
     }
 
+    private Response getEventsResponse(final CriteriaBuilder builder, final MultivaluedMap<String, String> params) {
+        final Criteria criteria = builder.toCriteria();
+        final Integer totalCount = includeTotalCount(params) ? m_eventDao.countMatching(builder.count().toCriteria()) : null;
+
+        if (isStreaming(params)) {
+            return getStreamingResponse(m_eventDao, criteria, OnmsEvent.class, OnmsEventCollection.class, params, m_headers, m_providers, totalCount);
+        }
+
+        final OnmsEventCollection coll = new OnmsEventCollection(m_eventDao.findMatching(criteria));
+        coll.setTotalCount(totalCount);
+        return Response.ok(coll).build();
+    }
+
     private CriteriaBuilder getCriteriaBuilder(final MultivaluedMap<String, String> params) {
         final CriteriaBuilder builder = new CriteriaBuilder(OnmsEvent.class);
         builder.alias("node", "node", JoinType.LEFT_JOIN);
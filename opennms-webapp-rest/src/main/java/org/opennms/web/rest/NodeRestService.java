@@ -49,7 +49,6 @@ import javax.ws.rs.core.UriInfo;
 import org.opennms.core.criteria.Alias.JoinType;
 import org.opennms.core.criteria.Criteria;
 import org.opennms.core.criteria.CriteriaBuilder;
-import org.opennms.core.criteria.Order;
 import org.opennms.core.criteria.restrictions.Restriction;
 import org.opennms.core.criteria.restrictions.Restrictions;
 import org.opennms.netmgt.dao.api.CategoryDao;
@@ -123,6 +122,7 @@ public class NodeRestService extends OnmsRestService {
 
             final CriteriaBuilder builder = getCriteriaBuilder(params);
             Criteria crit = null;
+            boolean excludeDeleted = false;
 
             if (params.size() == 1 && params.getFirst("nodeId") != null && params.getFirst("nodeId").contains(",")) {
                 // we've been specifically asked for a list of nodes by ID
@@ -143,19 +143,21 @@ public class NodeRestService extends OnmsRestService {
                 crit = builder.toCriteria();
 
                 if (type == null) {
-                    final List<Restriction> restrictions = new ArrayList<Restriction>(crit.getRestrictions());
-                    restrictions.add(Restrictions.ne("type", "D"));
-                    crit.setRestrictions(restrictions);
+                    excludeDeleted = true;
+                    excludeDeleted(crit);
                 }
             }
 
             final OnmsNodeList coll = new OnmsNodeList(m_nodeDao.findMatching(crit));
             
-            crit.setLimit(null);
-            crit.setOffset(null);
-            crit.setOrders(new ArrayList<Order>());
-    
-            coll.setTotalCount(m_nodeDao.countMatching(crit));
+            if (includeTotalCount(params)) {
+                // count without limit, offset, order or keyset cursor
+                final Criteria countCrit = builder.count().toCriteria();
+                if (excludeDeleted) {
+                    excludeDeleted(countCrit);
+                }
+                coll.setTotalCount(m_nodeDao.countMatching(countCrit));
+            }
     
             return coll;
         } finally {
@@ -163,6 +165,12 @@ public class NodeRestService extends OnmsRestService {
         }
     }
 
+    private static void excludeDeleted(final Criteria crit) {
+        final List<Restriction> restrictions = new ArrayList<Restriction>(crit.getRestrictions());
+        restrictions.add(Restrictions.ne("type", "D"));
+        crit.setRestrictions(restrictions);
+    }
+
     /**
      * <p>getNode</p>
      *
@@ -36,16 +36,19 @@ import java.net.URISyntaxException;
 import java.util.concurrent.locks.Lock;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Providers;
 import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.opennms.core.criteria.Criteria;
 import org.opennms.core.criteria.CriteriaBuilder;
+import org.opennms.netmgt.dao.api.OnmsDao;
 import org.opennms.netmgt.model.OnmsArpInterface.StatusType;
 import org.opennms.netmgt.model.InetAddressTypeEditor;
 import org.opennms.netmgt.model.OnmsSeverity;
@@ -56,6 +59,7 @@ import org.opennms.netmgt.model.StatusTypeEditor;
 import org.opennms.netmgt.provision.persist.StringXmlCalendarPropertyEditor;
 import org.opennms.web.api.ISO8601DateEditor;
 import org.opennms.web.api.RestUtils;
+import org.opennms.web.rest.support.StreamingCollectionOutput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.helpers.MessageFormatter;
@@ -137,6 +141,8 @@ public class OnmsRestService {
     		params.remove("start");
     	}
     	
+	    final String orderBy = params.getFirst("orderBy");
+	    boolean descending = false;
 	    if(params.containsKey("orderBy")) {
 	    	builder.orderBy(params.getFirst("orderBy"));
 			params.remove("orderBy");
@@ -144,6 +150,7 @@ public class OnmsRestService {
 			if(params.containsKey("order")) {
 				if("desc".equalsIgnoreCase(params.getFirst("order"))) {
 					builder.desc();
+					descending = true;
 				} else {
 					builder.asc();
 				}
@@ -151,6 +158,12 @@ public class OnmsRestService {
 			}
 		}
 
+	    // these are handled by the individual services, they are not properties
+	    params.remove("totalCount");
+	    params.remove("stream");
+	    final String afterId = removeParameter(params, "afterId");
+	    final String after = removeParameter(params, "after");
+
 	    final String query = removeParameter(params, "query");
 	    if (query != null) builder.sql(query);
 
@@ -166,6 +179,10 @@ public class OnmsRestService {
 		final Class<?> criteriaClass = builder.toCriteria().getCriteriaClass();
 		final BeanWrapper wrapper = getBeanWrapperForClass(criteriaClass);
 
+		if (afterId != null || after != null) {
+			applyKeyset(builder, wrapper, orderBy, descending, after, afterId);
+		}
+
 		final String comparatorParam = removeParameter(params, "comparator", "eq").toLowerCase();
 		final Criteria currentCriteria = builder.toCriteria();
 
@@ -213,6 +230,107 @@ public class OnmsRestService {
 		}
     }
 
+	/**
+	 * Replaces offset paging with a keyset cursor: the next page is the rows
+	 * ordered after the last row of the previous one, so the database can
+	 * seek straight to it through an index instead of reading and discarding
+	 * <code>offset</code> rows.
+	 *
+	 * <ul>
+	 * <li><code>afterId=N</code> returns the rows ordered by id with an id greater than N</li>
+	 * <li><code>orderBy=attr&amp;after=V&amp;afterId=N</code> returns the rows ordered by
+	 * attr and id that come after (V, N); typically used for timestamps</li>
+	 * </ul>
+	 */
+	private void applyKeyset(final CriteriaBuilder builder, final BeanWrapper wrapper, final String orderBy, final boolean descending, final String after, final String afterId) {
+		if (descending) {
+			throw getException(Status.BAD_REQUEST, "Keyset paging (after/afterId) only supports ascending order.");
+		}
+		final Criteria criteria = builder.toCriteria();
+		final Object id = convertKeysetValue(criteria, wrapper, "id", afterId);
+		if (after == null && (orderBy == null || "id".equals(orderBy))) {
+			builder.after("id", id);
+		} else if (orderBy == null) {
+			throw getException(Status.BAD_REQUEST, "The after parameter requires orderBy to be set.");
+		} else if (after == null || afterId == null) {
+			throw getException(Status.BAD_REQUEST, "Keyset paging on {} requires both after and afterId to be set.", orderBy);
+		} else {
+			builder.after(orderBy, convertKeysetValue(criteria, wrapper, orderBy, after), "id", id);
+		}
+	}
+
+	private static Object convertKeysetValue(final Criteria criteria, final BeanWrapper wrapper, final String key, final String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			Class<?> type = criteria.getType(key);
+			if (type == null) {
+				type = Object.class;
+			}
+			return wrapper.convertIfNecessary(value, type);
+		} catch (final Throwable t) {
+			LOG.debug("failed to convert keyset value (key = {}, value = {})", key, value, t);
+			return value;
+		}
+	}
+
+	/**
+	 * Whether the caller wants the (potentially expensive) total count of
+	 * matching rows; it can be skipped with <code>totalCount=false</code>.
+	 */
+	protected static boolean includeTotalCount(final MultivaluedMap<String,String> params) {
+		return params == null || !"false".equalsIgnoreCase(params.getFirst("totalCount"));
+	}
+
+	/**
+	 * Whether the caller asked for the collection to be streamed with
+	 * <code>stream=true</code> rather than built in memory.
+	 */
+	protected static boolean isStreaming(final MultivaluedMap<String,String> params) {
+		return params != null && "true".equalsIgnoreCase(params.getFirst("stream"));
+	}
+
+	/**
+	 * Builds a response that writes the matching rows as they are read
+	 * rather than materializing the whole collection, for
+	 * <code>stream=true</code> requests. An explicit <code>limit</code>
+	 * parameter caps the number of rows, otherwise all matching rows are
+	 * written.
+	 * <p>
+	 * Streamed rows are always written in ascending id order, so requests
+	 * that ask for another order or for an offset are rejected with
+	 * <code>400 Bad Request</code>; use <code>afterId</code> to resume a
+	 * stream instead.
+	 */
+	protected <T> Response getStreamingResponse(final OnmsDao<T,?> dao, final Criteria criteria, final Class<T> elementClass, final Class<?> collectionClass, final MultivaluedMap<String,String> params, final HttpHeaders headers, final Providers providers, final Integer totalCount) {
+		if (params.containsKey("offset") || params.containsKey("start")) {
+			throw getException(Status.BAD_REQUEST, "The offset parameter is not supported with stream=true; use afterId to resume a stream.");
+		}
+		final String orderBy = params.getFirst("orderBy");
+		if ((orderBy != null && !"id".equals(orderBy)) || "desc".equalsIgnoreCase(params.getFirst("order")) || params.containsKey("after")) {
+			throw getException(Status.BAD_REQUEST, "Streamed collections are ordered by ascending id; orderBy, order and after are not supported with stream=true.");
+		}
+		final MediaType mediaType = getStreamingMediaType(headers);
+		final Integer maxResults = params.containsKey("limit") ? criteria.getLimit() : null;
+		return Response.ok(new StreamingCollectionOutput<T>(dao, criteria, elementClass, collectionClass, mediaType, providers, totalCount, maxResults), mediaType).build();
+	}
+
+	private static MediaType getStreamingMediaType(final HttpHeaders headers) {
+		if (headers != null) {
+			for (final MediaType type : headers.getAcceptableMediaTypes()) {
+				if (type.isWildcardType()) {
+					break;
+				} else if (MediaType.APPLICATION_JSON_TYPE.isCompatible(type)) {
+					return MediaType.APPLICATION_JSON_TYPE;
+				} else if (MediaType.APPLICATION_XML_TYPE.isCompatible(type) || MediaType.TEXT_XML_TYPE.isCompatible(type)) {
+					return MediaType.APPLICATION_XML_TYPE;
+				}
+			}
+		}
+		return MediaType.APPLICATION_XML_TYPE;
+	}
+
 	protected BeanWrapper getBeanWrapperForClass(final Class<?> criteriaClass) {
 		final BeanWrapper wrapper = new BeanWrapperImpl(criteriaClass);
 		wrapper.registerCustomEditor(XMLGregorianCalendar.class, new StringXmlCalendarPropertyEditor());
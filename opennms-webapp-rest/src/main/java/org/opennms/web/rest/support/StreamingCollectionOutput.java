@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.web.rest.support;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.opennms.core.criteria.Criteria;
+import org.opennms.core.criteria.Order;
+import org.opennms.core.criteria.restrictions.Restriction;
+import org.opennms.core.criteria.restrictions.Restrictions;
+import org.opennms.netmgt.dao.api.OnmsDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapperImpl;
+
+import com.sun.jersey.core.header.OutBoundHeaders;
+
+/**
+ * <p>Writes a (potentially very large) REST collection to the response as it
+ * is read from the database instead of building the whole collection in
+ * memory first.</p>
+ *
+ * <p>Rows are fetched in pages of <code>pageSize</code> using the id as a
+ * keyset cursor, and the Hibernate session is cleared after each page, so
+ * memory use is bounded by the page size regardless of how many rows match.
+ * The output has the same shape as the non-streamed collection: the
+ * collection's root element (or a JSON object) with a
+ * <code>totalCount</code> attribute, and one element per row.</p>
+ *
+ * @param <T> the entity type
+ */
+public class StreamingCollectionOutput<T> implements StreamingOutput {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingCollectionOutput.class);
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    private static final String ID_ATTRIBUTE = "id";
+
+    private final OnmsDao<T, ?> m_dao;
+    private final Criteria m_criteria;
+    private final Class<T> m_elementClass;
+    private final String m_rootName;
+    private final String m_elementName;
+    private final MediaType m_mediaType;
+    private final Providers m_providers;
+    private final Integer m_totalCount;
+    private final Integer m_maxResults;
+    private int m_pageSize = DEFAULT_PAGE_SIZE;
+
+    /**
+     * @param dao the DAO to page through
+     * @param criteria the query; its orders, offset and limit are replaced by the id cursor,
+     *   so callers must reject requests for another order or an offset
+     * @param elementClass the entity class
+     * @param collectionClass the JAXB collection class whose element names should be used
+     * @param mediaType either {@link MediaType#APPLICATION_JSON_TYPE} or an XML type
+     * @param providers the JAX-RS providers, used to find the JAXB context and JSON writer
+     * @param totalCount the total count to report, or null to omit it
+     * @param maxResults the maximum number of rows to write, or null for all of them
+     */
+    public StreamingCollectionOutput(final OnmsDao<T, ?> dao, final Criteria criteria, final Class<T> elementClass, final Class<?> collectionClass, final MediaType mediaType, final Providers providers, final Integer totalCount, final Integer maxResults) {
+        m_dao = dao;
+        m_criteria = criteria;
+        m_elementClass = elementClass;
+        m_rootName = getRootName(collectionClass);
+        m_elementName = getElementName(collectionClass, elementClass);
+        m_mediaType = mediaType;
+        m_providers = providers;
+        m_totalCount = totalCount;
+        m_maxResults = maxResults;
+    }
+
+    public void setPageSize(final int pageSize) {
+        m_pageSize = pageSize;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException, WebApplicationException {
+        try {
+            if (MediaType.APPLICATION_JSON_TYPE.isCompatible(m_mediaType)) {
+                writeJson(output);
+            } else {
+                writeXml(output);
+            }
+        } catch (final JAXBException | XMLStreamException e) {
+            LOG.warn("Failed to stream {} collection", m_rootName, e);
+            throw new IOException("Failed to stream " + m_rootName + " collection", e);
+        }
+        output.flush();
+    }
+
+    private void writeXml(final OutputStream output) throws JAXBException, XMLStreamException {
+        final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+        final Marshaller marshaller = getJaxbContext().createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement(m_rootName);
+        if (m_totalCount != null) {
+            writer.writeAttribute("totalCount", m_totalCount.toString());
+        }
+
+        final QName elementName = new QName(m_elementName);
+        List<T> page;
+        Object lastId = null;
+        int written = 0;
+        while (!(page = nextPage(lastId, written)).isEmpty()) {
+            for (final T element : page) {
+                marshaller.marshal(new JAXBElement<T>(elementName, m_elementClass, element), writer);
+            }
+            written += page.size();
+            lastId = getId(page.get(page.size() - 1));
+            writer.flush();
+            m_dao.clear();
+        }
+
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.flush();
+    }
+
+    private void writeJson(final OutputStream output) throws IOException {
+        @SuppressWarnings("unchecked")
+        final MessageBodyWriter<T> elementWriter = (MessageBodyWriter<T>) m_providers.getMessageBodyWriter(m_elementClass, m_elementClass, new Annotation[0], MediaType.APPLICATION_JSON_TYPE);
+        if (elementWriter == null) {
+            throw new IOException("No JSON writer available for " + m_elementClass.getName());
+        }
+        // element writers are free to close the stream they are handed
+        final OutputStream elementOutput = new FilterOutputStream(output) {
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                out.write(b, off, len);
+            }
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+
+        output.write('{');
+        if (m_totalCount != null) {
+            output.write(("\"totalCount\":" + m_totalCount + ",").getBytes(StandardCharsets.UTF_8));
+        }
+        output.write(("\"" + m_elementName + "\":[").getBytes(StandardCharsets.UTF_8));
+
+        List<T> page;
+        Object lastId = null;
+        int written = 0;
+        while (!(page = nextPage(lastId, written)).isEmpty()) {
+            for (final T element : page) {
+                if (written > 0) {
+                    output.write(',');
+                }
+                elementWriter.writeTo(element, m_elementClass, m_elementClass, new Annotation[0], MediaType.APPLICATION_JSON_TYPE, new OutBoundHeaders(), elementOutput);
+                written++;
+            }
+            lastId = getId(page.get(page.size() - 1));
+            output.flush();
+            m_dao.clear();
+        }
+
+        output.write("]}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<T> nextPage(final Object lastId, final int written) {
+        int limit = m_pageSize;
+        if (m_maxResults != null) {
+            limit = Math.min(limit, m_maxResults - written);
+            if (limit <= 0) {
+                return Collections.emptyList();
+            }
+        }
+
+        final Criteria criteria = m_criteria.clone();
+        if (lastId != null) {
+            final List<Restriction> restrictions = new ArrayList<Restriction>(criteria.getRestrictions());
+            restrictions.add(Restrictions.gt(ID_ATTRIBUTE, lastId));
+            criteria.setRestrictions(restrictions);
+        }
+        criteria.setOrders(Collections.singletonList(Order.asc(ID_ATTRIBUTE)));
+        criteria.setOffset(null);
+        criteria.setLimit(limit);
+        return m_dao.findMatching(criteria);
+    }
+
+    private static Object getId(final Object element) {
+        return new BeanWrapperImpl(element).getPropertyValue(ID_ATTRIBUTE);
+    }
+
+    private JAXBContext getJaxbContext() throws JAXBException {
+        JAXBContext context = null;
+        if (m_providers != null) {
+            final ContextResolver<JAXBContext> resolver = m_providers.getContextResolver(JAXBContext.class, m_mediaType);
+            if (resolver != null) {
+                context = resolver.getContext(m_elementClass);
+            }
+        }
+        return context == null ? JAXBContext.newInstance(m_elementClass) : context;
+    }
+
+    private static String getRootName(final Class<?> collectionClass) {
+        final XmlRootElement root = collectionClass.getAnnotation(XmlRootElement.class);
+        if (root == null || "##default".equals(root.name())) {
+            throw new IllegalArgumentException(collectionClass.getName() + " does not declare an @XmlRootElement name");
+        }
+        return root.name();
+    }
+
+    private static String getElementName(final Class<?> collectionClass, final Class<?> elementClass) {
+        try {
+            final Method getObjects = collectionClass.getMethod("getObjects");
+            final XmlElement element = getObjects.getAnnotation(XmlElement.class);
+            if (element != null && !"##default".equals(element.name())) {
+                return element.name();
+            }
+        } catch (final NoSuchMethodException e) {
+            LOG.debug("{} has no getObjects() method", collectionClass.getName());
+        }
+        final XmlRootElement root = elementClass.getAnnotation(XmlRootElement.class);
+        if (root != null && !"##default".equals(root.name())) {
+            return root.name();
+        }
+        return elementClass.getSimpleName().toLowerCase();
+    }
+}
@@ -82,4 +82,33 @@ public class EventRestServiceTest extends AbstractSpringJerseyRestTestCase {
         xml = sendRequest(GET, "/events/between", parseParamData("end=2010-01-01T01:00:00Z"), 200);
         assertTrue(xml.contains("totalCount=\"0\""));
     }
+
+    @Test
+    public void testKeysetPaging() throws Exception {
+        String xml;
+        xml = sendRequest(GET, "/events", parseParamData("afterId=0&limit=1&totalCount=false"), 200);
+        assertTrue(xml.contains("count=\"1\""));
+        xml = sendRequest(GET, "/events", parseParamData("orderBy=eventTime&after=2010-01-01T00:00:00Z&afterId=0"), 200);
+        assertTrue(xml.contains("<createTime>"));
+
+        // after requires orderBy and afterId
+        sendRequest(GET, "/events", parseParamData("after=2010-01-01T00:00:00Z&afterId=0"), 400);
+        sendRequest(GET, "/events", parseParamData("orderBy=eventTime&after=2010-01-01T00:00:00Z"), 400);
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        final String xml = sendRequest(GET, "/events", parseParamData("stream=true"), 200);
+        assertTrue(xml.contains("<events totalCount="));
+        assertTrue(xml.contains("<event id="));
+        assertTrue(xml.contains("<createTime>"));
+    }
+
+    @Test
+    public void testStreamingRejectsOrderAndOffset() throws Exception {
+        sendRequest(GET, "/events", parseParamData("stream=true&orderBy=eventTime"), 400);
+        sendRequest(GET, "/events", parseParamData("stream=true&orderBy=id&order=desc"), 400);
+        sendRequest(GET, "/events", parseParamData("stream=true&offset=10"), 400);
+        sendRequest(GET, "/events", parseParamData("stream=true&orderBy=id&order=asc"), 200);
+    }
 }
@@ -32,6 +32,7 @@ import java.beans.PropertyDescriptor;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
@@ -40,12 +41,11 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.text.ParseException;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
-import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Source;
@@ -56,10 +56,8 @@ import javax.xml.transform.stream.StreamSource;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
@@ -77,13 +75,14 @@ import org.opennms.netmgt.config.datacollection.StorageStrategy;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.rrd.RrdRepository;
+import org.opennms.protocols.xml.collector.CompiledXmlSource.GroupValues;
+import org.opennms.protocols.xml.collector.CompiledXmlSource.ResourceValues;
 import org.opennms.protocols.xml.config.Content;
 import org.opennms.protocols.xml.config.Header;
 import org.opennms.protocols.xml.config.Parameter;
 import org.opennms.protocols.xml.config.Request;
 import org.opennms.protocols.xml.config.XmlDataCollection;
 import org.opennms.protocols.xml.config.XmlGroup;
-import org.opennms.protocols.xml.config.XmlObject;
 import org.opennms.protocols.xml.config.XmlSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -91,7 +90,6 @@ import org.springframework.beans.BeanWrapper;
 import org.springframework.beans.BeanWrapperImpl;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * The Abstract Class XML Collection Handler.
@@ -116,6 +114,9 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
     /** The Node Level Resource (temporary variable). It is initialized on each collection attempt. */
     private XmlSingleInstanceCollectionResource m_nodeResource;
 
+    /** The compiled XML sources. Entries are discarded when the configuration is reloaded. */
+    private final Map<XmlSource, CompiledXmlSource> m_compiledSources = new WeakHashMap<XmlSource, CompiledXmlSource>();
+
     /* (non-Javadoc)
      * @see org.opennms.protocols.xml.collector.XmlCollectionHandler#setServiceName(java.lang.String)
      */
@@ -214,24 +215,53 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
      * @throws ParseException the parse exception
      */
     protected void fillCollectionSet(CollectionAgent agent, XmlCollectionSet collectionSet, XmlSource source, Document doc) throws XPathExpressionException, ParseException {
+        fillCollectionSet(agent, collectionSet, getCompiledSource(source).evaluate(doc));
+    }
+
+    /**
+     * Fill collection set.
+     * <p>When the XPath expressions of the source allow it, the data is extracted while reading
+     * the stream, without building a DOM document.</p>
+     *
+     * @param agent the agent
+     * @param collectionSet the collection set
+     * @param source the source
+     * @param is the input stream (it won't be closed)
+     * @param request the request
+     * @throws Exception the exception
+     */
+    protected void fillCollectionSet(CollectionAgent agent, XmlCollectionSet collectionSet, XmlSource source, InputStream is, Request request) throws Exception {
+        final CompiledXmlSource compiledSource = getCompiledSource(source);
+        if (compiledSource.isStreamable()) {
+            is = preProcessHtml(request, is);
+            is = applyXsltTransformation(request, is);
+            fillCollectionSet(agent, collectionSet, compiledSource.evaluate(is));
+        } else {
+            fillCollectionSet(agent, collectionSet, source, getXmlDocument(is, request));
+        }
+    }
+
+    /**
+     * Fill collection set.
+     *
+     * @param agent the agent
+     * @param collectionSet the collection set
+     * @param values the values extracted from the document
+     */
+    private void fillCollectionSet(CollectionAgent agent, XmlCollectionSet collectionSet, List<GroupValues> values) {
         m_nodeResource = null; // Be sure that the temporary resource for node level data is clean before processing a new document.
-        NamespaceContext nc = new DocumentNamespaceResolver(doc);
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        xpath.setNamespaceContext(nc);
-        for (XmlGroup group : source.getXmlGroups()) {
+        for (GroupValues groupValues : values) {
+            XmlGroup group = groupValues.getGroup();
             LOG.debug("fillCollectionSet: getting resources for XML group {} using XPATH {}", group.getName(), group.getResourceXpath());
-            Date timestamp = getTimeStamp(doc, xpath, group);
-            NodeList resourceList = (NodeList) xpath.evaluate(group.getResourceXpath(), doc, XPathConstants.NODESET);
-            for (int j = 0; j < resourceList.getLength(); j++) {
-                Node resource = resourceList.item(j);
-                String resourceName = getResourceName(xpath, group, resource);
+            Date timestamp = getTimeStamp(groupValues.getTimestamp(), group);
+            for (ResourceValues resourceValues : groupValues.getResources()) {
+                String resourceName = resourceValues.getName();
                 LOG.debug("fillCollectionSet: processing XML resource {}", resourceName);
                 XmlCollectionResource collectionResource = getCollectionResource(agent, resourceName, group.getResourceType(), timestamp);
                 AttributeGroupType attribGroupType = new AttributeGroupType(group.getName(), group.getIfType());
-                for (XmlObject object : group.getXmlObjects()) {
-                    String value = (String) xpath.evaluate(object.getXpath(), resource, XPathConstants.STRING);
-                    XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(object, attribGroupType);
-                    collectionResource.setAttributeValue(attribType, value);
+                for (int i = 0; i < group.getXmlObjects().size(); i++) {
+                    XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(group.getXmlObjects().get(i), attribGroupType);
+                    collectionResource.setAttributeValue(attribType, resourceValues.getValue(i));
                 }
                 processXmlResource(collectionResource, attribGroupType);
                 collectionSet.getCollectionResources().add(collectionResource);
@@ -240,33 +270,21 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
     }
 
     /**
-     * Gets the resource name.
+     * Gets the compiled XML source.
+     * <p>The XPath expressions of each source are compiled once, and reused until the configuration is reloaded.</p>
      *
-     * @param xpath the Xpath
-     * @param group the group
-     * @param resource the resource
-     * @return the resource name
-     * @throws XPathExpressionException the x path expression exception
+     * @param source the XML source
+     * @return the compiled XML source
      */
-    private String getResourceName(XPath xpath, XmlGroup group, Node resource) throws XPathExpressionException {
-        // Processing multiple-key resource name.
-        if (group.hasMultipleResourceKey()) {
-            List<String> keys = new ArrayList<String>();
-            for (String key : group.getXmlResourceKey().getKeyXpathList()) {
-                LOG.debug("getResourceName: getting key for resource's name using {}", key);
-                Node keyNode = (Node) xpath.evaluate(key, resource, XPathConstants.NODE);
-                keys.add(keyNode.getNodeValue() == null ? keyNode.getTextContent() : keyNode.getNodeValue());
+    protected CompiledXmlSource getCompiledSource(XmlSource source) {
+        synchronized (m_compiledSources) {
+            CompiledXmlSource compiledSource = m_compiledSources.get(source);
+            if (compiledSource == null) {
+                compiledSource = new CompiledXmlSource(source);
+                m_compiledSources.put(source, compiledSource);
             }
-            return StringUtils.join(keys, "_");
-        }
-        // If key-xpath doesn't exist or not found, a node resource will be assumed.
-        if (group.getKeyXpath() == null) {
-            return "node";
+            return compiledSource;
         }
-        // Processing single-key resource name.
-        LOG.debug("getResourceName: getting key for resource's name using {}", group.getKeyXpath());
-        Node keyNode = (Node) xpath.evaluate(group.getKeyXpath(), resource, XPathConstants.NODE);
-        return keyNode.getNodeValue() == null ? keyNode.getTextContent() : keyNode.getNodeValue();
     }
 
     /**
@@ -327,18 +345,31 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
      * @throws XPathExpressionException the x path expression exception
      */
     protected Date getTimeStamp(Document doc, XPath xpath, XmlGroup group) throws XPathExpressionException {
+        if (group.getTimestampXpath() == null) {
+            return null;
+        }
+        Node tsNode = (Node) xpath.evaluate(group.getTimestampXpath(), doc, XPathConstants.NODE);
+        return getTimeStamp(tsNode == null ? null : (tsNode.getNodeValue() == null ? tsNode.getTextContent() : tsNode.getNodeValue()), group);
+    }
+
+    /**
+     * Gets the time stamp.
+     *
+     * @param value the value of the timestamp XPath (null if it was not found)
+     * @param group the group
+     * @return the time stamp
+     */
+    protected Date getTimeStamp(String value, XmlGroup group) {
         if (group.getTimestampXpath() == null) {
             return null;
         }
         String pattern = group.getTimestampFormat() == null ? "yyyy-MM-dd HH:mm:ss" : group.getTimestampFormat();
         LOG.debug("getTimeStamp: retrieving custom timestamp to be used when updating RRDs using XPATH {} and pattern {}", group.getTimestampXpath(), pattern);
-        Node tsNode = (Node) xpath.evaluate(group.getTimestampXpath(), doc, XPathConstants.NODE);
-        if (tsNode == null) {
+        if (value == null) {
             LOG.warn("getTimeStamp: can't find the custom timestamp using XPATH {}",  group.getTimestampXpath());
             return null;
         }
         Date date = null;
-        String value = tsNode.getNodeValue() == null ? tsNode.getTextContent() : tsNode.getNodeValue();
         LOG.debug("getTimeStamp: time stamp value is {}", value);
         try {
             DateTimeFormatter dtf = DateTimeFormat.forPattern(pattern);
@@ -460,18 +491,42 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
      */
     protected Document getXmlDocument(String urlString, Request request) {
         InputStream is = null;
-        URLConnection c = null;
         try {
-            URL url = UrlFactory.getUrl(urlString, request);
-            c = url.openConnection();
-            is = c.getInputStream();
+            is = getXmlStream(urlString, request);
             final Document doc = getXmlDocument(is, request);
             return doc;
-        } catch (Exception e) {
-            throw new XmlCollectorException(e.getMessage(), e);
         } finally {
             IOUtils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * Gets the XML stream.
+     * <p>The connection is released when the stream is closed.</p>
+     *
+     * @param urlString the URL string
+     * @param request the request
+     * @return the XML stream
+     */
+    protected InputStream getXmlStream(String urlString, Request request) {
+        URLConnection c = null;
+        try {
+            URL url = UrlFactory.getUrl(urlString, request);
+            c = url.openConnection();
+            final URLConnection connection = c;
+            return new FilterInputStream(c.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        UrlFactory.disconnect(connection);
+                    }
+                }
+            };
+        } catch (Exception e) {
             UrlFactory.disconnect(c);
+            throw new XmlCollectorException(e.getMessage(), e);
         }
     }
 
@@ -496,7 +551,7 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
             Document doc = builder.parse(IOUtils.toInputStream(contents, "UTF-8"));
             // Ugly hack to deal with DOM & XPath 1.0's battle royale 
             // over handling namespaces without a prefix. 
-            if(doc.getNamespaceURI() != null && doc.getPrefix() == null){
+            if(doc.getDocumentElement().getNamespaceURI() != null && doc.getDocumentElement().getPrefix() == null){
                 factory.setNamespaceAware(false);
                 builder = factory.newDocumentBuilder();
                 doc = builder.parse(IOUtils.toInputStream(contents, "UTF-8"));
@@ -0,0 +1,897 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.protocols.xml.collector;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.apache.commons.lang.StringUtils;
+import org.opennms.protocols.xml.config.XmlGroup;
+import org.opennms.protocols.xml.config.XmlObject;
+import org.opennms.protocols.xml.config.XmlSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The Class CompiledXmlSource.
+ * <p>The XPath expressions of an XML source, compiled once and reused for every
+ * collection attempt.</p>
+ * <p>When all the expressions of the source belong to the subset described on
+ * {@link XmlStreamingPath}, the data can be extracted in one pass over the XML
+ * stream, keeping in memory only the collected values instead of the whole document.
+ * Otherwise, the document must be parsed into a DOM, and the expressions are evaluated
+ * against it.</p>
+ */
+public class CompiledXmlSource {
+
+    /** The Constant LOG. */
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledXmlSource.class);
+
+    /** The Constant PREFIX_PATTERN (used to find the namespace prefixes used by the expressions). */
+    private static final Pattern PREFIX_PATTERN = Pattern.compile("(?<![\\w.:-])([A-Za-z_][\\w.-]*):(?!:)");
+
+    /** The XML input factory. */
+    private static final XMLInputFactory s_inputFactory = XMLInputFactory.newInstance();
+
+    /** The XML groups. */
+    private final List<XmlGroup> m_groups;
+
+    /** The streaming paths for each group (null if the source can't be streamed). */
+    private final List<StreamingGroup> m_streamingGroups;
+
+    /** The namespace prefixes used by the expressions. */
+    private final Set<String> m_prefixes = new TreeSet<String>();
+
+    /** The compiled XPath expressions. XPath objects are not thread safe, so each thread has its own copy. */
+    private final ThreadLocal<DomExpressions> m_domExpressions = new ThreadLocal<DomExpressions>();
+
+    /**
+     * The Class GroupValues.
+     * <p>The data extracted from a document for an XML group.</p>
+     */
+    public static class GroupValues {
+
+        /** The XML group. */
+        private final XmlGroup m_group;
+
+        /** The timestamp value. */
+        private String m_timestamp;
+
+        /** The resources. */
+        private final List<ResourceValues> m_resources = new ArrayList<ResourceValues>();
+
+        /**
+         * Instantiates a new group values.
+         *
+         * @param group the XML group
+         */
+        private GroupValues(XmlGroup group) {
+            m_group = group;
+        }
+
+        /**
+         * Gets the XML group.
+         *
+         * @return the XML group
+         */
+        public XmlGroup getGroup() {
+            return m_group;
+        }
+
+        /**
+         * Gets the timestamp value.
+         *
+         * @return the timestamp value, or null if the group has no timestamp XPath or it was not found
+         */
+        public String getTimestamp() {
+            return m_timestamp;
+        }
+
+        /**
+         * Gets the resources.
+         *
+         * @return the resources, in document order
+         */
+        public List<ResourceValues> getResources() {
+            return m_resources;
+        }
+    }
+
+    /**
+     * The Class ResourceValues.
+     * <p>The data extracted from a document for a resource of an XML group.</p>
+     */
+    public static class ResourceValues {
+
+        /** The resource name. */
+        private final String m_name;
+
+        /** The values, in the same order as the XML objects of the group. */
+        private final String[] m_values;
+
+        /**
+         * Instantiates a new resource values.
+         *
+         * @param name the resource name
+         * @param values the values
+         */
+        private ResourceValues(String name, String[] values) {
+            m_name = name;
+            m_values = values;
+        }
+
+        /**
+         * Gets the resource name.
+         *
+         * @return the resource name
+         */
+        public String getName() {
+            return m_name;
+        }
+
+        /**
+         * Gets the value of an XML object.
+         *
+         * @param index the index of the XML object within the group
+         * @return the value (empty if the object was not found)
+         */
+        public String getValue(int index) {
+            return m_values[index];
+        }
+    }
+
+    /**
+     * Instantiates a new compiled XML source.
+     *
+     * @param source the XML source
+     */
+    public CompiledXmlSource(XmlSource source) {
+        m_groups = new ArrayList<XmlGroup>(source.getXmlGroups());
+        List<StreamingGroup> streamingGroups = new ArrayList<StreamingGroup>();
+        for (XmlGroup group : m_groups) {
+            addPrefixes(group.getResourceXpath());
+            addPrefixes(group.getTimestampXpath());
+            for (String key : getKeyXpaths(group)) {
+                addPrefixes(key);
+            }
+            for (XmlObject object : group.getXmlObjects()) {
+                addPrefixes(object.getXpath());
+            }
+            if (streamingGroups != null) {
+                final StreamingGroup streamingGroup = StreamingGroup.compile(group);
+                if (streamingGroup == null) {
+                    LOG.debug("CompiledXmlSource: the XPath expressions of group {} require a DOM document.", group.getName());
+                    streamingGroups = null;
+                } else {
+                    streamingGroups.add(streamingGroup);
+                }
+            }
+        }
+        m_streamingGroups = streamingGroups;
+        LOG.debug("CompiledXmlSource: source {} can be streamed: {}", source.getUrl(), isStreamable());
+    }
+
+    /**
+     * Checks if the source can be evaluated without building a DOM document.
+     *
+     * @return true, if is streamable
+     */
+    public boolean isStreamable() {
+        return m_streamingGroups != null;
+    }
+
+    /**
+     * Evaluates the XML groups against a DOM document.
+     *
+     * @param doc the XML document
+     * @return the group values, in the same order as the XML groups
+     * @throws XPathExpressionException the XPath expression exception
+     */
+    public List<GroupValues> evaluate(Document doc) throws XPathExpressionException {
+        final DomExpressions expressions = getDomExpressions(doc);
+        final List<GroupValues> results = new ArrayList<GroupValues>(m_groups.size());
+        for (int i = 0; i < m_groups.size(); i++) {
+            final XmlGroup group = m_groups.get(i);
+            final DomGroup domGroup = expressions.m_groups[i];
+            final GroupValues groupValues = new GroupValues(group);
+            if (domGroup.m_timestamp != null) {
+                final Node tsNode = (Node) domGroup.m_timestamp.evaluate(doc, XPathConstants.NODE);
+                groupValues.m_timestamp = tsNode == null ? null : getNodeValue(tsNode);
+            }
+            final NodeList resourceList = (NodeList) domGroup.m_resource.evaluate(doc, XPathConstants.NODESET);
+            for (int j = 0; j < resourceList.getLength(); j++) {
+                final Node resource = resourceList.item(j);
+                final String[] keys = new String[domGroup.m_keys.length];
+                for (int k = 0; k < keys.length; k++) {
+                    final Node keyNode = (Node) domGroup.m_keys[k].evaluate(resource, XPathConstants.NODE);
+                    keys[k] = keyNode == null ? null : getNodeValue(keyNode);
+                }
+                final String[] values = new String[domGroup.m_objects.length];
+                for (int k = 0; k < values.length; k++) {
+                    values[k] = (String) domGroup.m_objects[k].evaluate(resource, XPathConstants.STRING);
+                }
+                groupValues.m_resources.add(new ResourceValues(getResourceName(group, keys), values));
+            }
+            results.add(groupValues);
+        }
+        return results;
+    }
+
+    /**
+     * Evaluates the XML groups in one pass over an XML stream.
+     * <p>The stream is not closed.</p>
+     *
+     * @param is the input stream
+     * @return the group values, in the same order as the XML groups
+     * @throws XMLStreamException the XML stream exception
+     */
+    public List<GroupValues> evaluate(InputStream is) throws XMLStreamException {
+        if (!isStreamable()) {
+            throw new IllegalStateException("The XPath expressions of this source can't be evaluated on a stream.");
+        }
+        final XMLStreamReader reader = s_inputFactory.createXMLStreamReader(is);
+        try {
+            return new StreamingEvaluator(reader).evaluate();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Gets the key XPath expressions of a group.
+     *
+     * @param group the XML group
+     * @return the key XPath expressions (empty for node level resources)
+     */
+    private static List<String> getKeyXpaths(XmlGroup group) {
+        if (group.hasMultipleResourceKey()) {
+            return group.getXmlResourceKey().getKeyXpathList();
+        }
+        if (group.getKeyXpath() == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(group.getKeyXpath());
+    }
+
+    /**
+     * Gets the resource name.
+     *
+     * @param group the XML group
+     * @param keys the key values
+     * @return the resource name
+     */
+    private static String getResourceName(XmlGroup group, String[] keys) {
+        // If key-xpath doesn't exist, a node resource will be assumed.
+        if (keys.length == 0) {
+            return "node";
+        }
+        final List<String> keyXpaths = getKeyXpaths(group);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) {
+                throw new XmlCollectorException("Can't find the key " + keyXpaths.get(i) + " for a resource of XML group " + group.getName());
+            }
+        }
+        // Multiple-key resource names are joined with an underscore.
+        return StringUtils.join(keys, "_");
+    }
+
+    /**
+     * Gets the value of a DOM node.
+     *
+     * @param node the node
+     * @return the node value for attributes, or the text content for elements
+     */
+    private static String getNodeValue(Node node) {
+        return node.getNodeValue() == null ? node.getTextContent() : node.getNodeValue();
+    }
+
+    /**
+     * Adds the namespace prefixes used by an expression.
+     *
+     * @param expression the expression
+     */
+    private void addPrefixes(String expression) {
+        if (expression == null) {
+            return;
+        }
+        final Matcher m = PREFIX_PATTERN.matcher(expression);
+        while (m.find()) {
+            m_prefixes.add(m.group(1));
+        }
+    }
+
+    /**
+     * Gets the compiled expressions for a document.
+     * <p>The namespace prefixes are resolved when the expressions are compiled, so they are
+     * compiled again only when the document binds the prefixes to other namespaces.</p>
+     *
+     * @param doc the XML document
+     * @return the DOM expressions
+     * @throws XPathExpressionException the XPath expression exception
+     */
+    private DomExpressions getDomExpressions(Document doc) throws XPathExpressionException {
+        final NamespaceContext resolver = new DocumentNamespaceResolver(doc);
+        final Map<String, String> namespaces = new HashMap<String, String>();
+        for (String prefix : m_prefixes) {
+            namespaces.put(prefix, resolver.getNamespaceURI(prefix));
+        }
+        DomExpressions expressions = m_domExpressions.get();
+        if (expressions == null || !expressions.m_namespaces.equals(namespaces)) {
+            LOG.debug("getDomExpressions: compiling XPath expressions using namespaces {}", namespaces);
+            expressions = new DomExpressions(m_groups, namespaces);
+            m_domExpressions.set(expressions);
+        }
+        return expressions;
+    }
+
+    /**
+     * The Class DomExpressions.
+     */
+    private static final class DomExpressions {
+
+        /** The namespaces used to compile the expressions. */
+        private final Map<String, String> m_namespaces;
+
+        /** The compiled groups. */
+        private final DomGroup[] m_groups;
+
+        /**
+         * Instantiates a new DOM expressions.
+         *
+         * @param groups the XML groups
+         * @param namespaces the namespaces
+         * @throws XPathExpressionException the XPath expression exception
+         */
+        private DomExpressions(List<XmlGroup> groups, final Map<String, String> namespaces) throws XPathExpressionException {
+            m_namespaces = namespaces;
+            final XPath xpath = XPathFactory.newInstance().newXPath();
+            // The document is not referenced by the context, so it can be garbage collected.
+            xpath.setNamespaceContext(new NamespaceContext() {
+                @Override
+                public String getNamespaceURI(String prefix) {
+                    final String uri = namespaces.get(prefix);
+                    return uri == null ? XMLConstants.NULL_NS_URI : uri;
+                }
+                @Override
+                public String getPrefix(String namespaceURI) {
+                    return null;
+                }
+                @Override
+                @SuppressWarnings("rawtypes")
+                public Iterator getPrefixes(String namespaceURI) {
+                    return null;
+                }
+            });
+            m_groups = new DomGroup[groups.size()];
+            for (int i = 0; i < m_groups.length; i++) {
+                m_groups[i] = new DomGroup(xpath, groups.get(i));
+            }
+        }
+    }
+
+    /**
+     * The Class DomGroup.
+     */
+    private static final class DomGroup {
+
+        /** The resource XPath. */
+        private final XPathExpression m_resource;
+
+        /** The timestamp XPath (null if not defined). */
+        private final XPathExpression m_timestamp;
+
+        /** The key XPaths. */
+        private final XPathExpression[] m_keys;
+
+        /** The object XPaths. */
+        private final XPathExpression[] m_objects;
+
+        /**
+         * Instantiates a new DOM group.
+         *
+         * @param xpath the XPath object
+         * @param group the XML group
+         * @throws XPathExpressionException the XPath expression exception
+         */
+        private DomGroup(XPath xpath, XmlGroup group) throws XPathExpressionException {
+            m_resource = xpath.compile(group.getResourceXpath());
+            m_timestamp = group.getTimestampXpath() == null ? null : xpath.compile(group.getTimestampXpath());
+            final List<String> keys = getKeyXpaths(group);
+            m_keys = new XPathExpression[keys.size()];
+            for (int i = 0; i < m_keys.length; i++) {
+                m_keys[i] = xpath.compile(keys.get(i));
+            }
+            m_objects = new XPathExpression[group.getXmlObjects().size()];
+            for (int i = 0; i < m_objects.length; i++) {
+                m_objects[i] = xpath.compile(group.getXmlObjects().get(i).getXpath());
+            }
+        }
+    }
+
+    /**
+     * The Class StreamingGroup.
+     */
+    private static final class StreamingGroup {
+
+        /** The resource path. */
+        private final XmlStreamingPath m_resource;
+
+        /** The timestamp path (null if not defined). */
+        private final XmlStreamingPath m_timestamp;
+
+        /** The number of keys. */
+        private final int m_keyCount;
+
+        /** The key paths, followed by the object paths. */
+        private final XmlStreamingPath[] m_paths;
+
+        /**
+         * Instantiates a new streaming group.
+         *
+         * @param resource the resource path
+         * @param timestamp the timestamp path
+         * @param keyCount the number of keys
+         * @param paths the key and object paths
+         */
+        private StreamingGroup(XmlStreamingPath resource, XmlStreamingPath timestamp, int keyCount, XmlStreamingPath[] paths) {
+            m_resource = resource;
+            m_timestamp = timestamp;
+            m_keyCount = keyCount;
+            m_paths = paths;
+        }
+
+        /**
+         * Compiles the streaming paths of a group.
+         *
+         * @param group the XML group
+         * @return the streaming group, or null if any of the expressions can't be streamed
+         */
+        private static StreamingGroup compile(XmlGroup group) {
+            final XmlStreamingPath resource = XmlStreamingPath.compileAbsolute(group.getResourceXpath());
+            if (resource == null) {
+                return null;
+            }
+            XmlStreamingPath timestamp = null;
+            if (group.getTimestampXpath() != null) {
+                timestamp = XmlStreamingPath.compileAbsolute(group.getTimestampXpath());
+                if (timestamp == null) {
+                    return null;
+                }
+            }
+            final List<String> keys = getKeyXpaths(group);
+            final XmlStreamingPath[] paths = new XmlStreamingPath[keys.size() + group.getXmlObjects().size()];
+            for (int i = 0; i < paths.length; i++) {
+                final String expression = i < keys.size() ? keys.get(i) : group.getXmlObjects().get(i - keys.size()).getXpath();
+                paths[i] = XmlStreamingPath.compileRelative(expression);
+                if (paths[i] == null) {
+                    return null;
+                }
+            }
+            return new StreamingGroup(resource, timestamp, keys.size(), paths);
+        }
+    }
+
+    /**
+     * The Class StreamingEvaluator.
+     * <p>Matches the paths of all the groups while reading the document once.</p>
+     * <p>Names are matched like the DOM documents built by {@link AbstractXmlCollectionHandler}:
+     * if the root element has a default namespace, the document is treated as not namespace
+     * aware and the names are compared as written; otherwise, prefixes are resolved using the
+     * namespaces declared on the root element.</p>
+     */
+    private final class StreamingEvaluator {
+
+        /** The XML stream reader. */
+        private final XMLStreamReader m_reader;
+
+        /** The depth of the current element (1 for the root element). */
+        private int m_depth = 0;
+
+        /** Whether names are compared as written. */
+        private boolean m_ignoreNamespaces;
+
+        /** The namespaces declared on the root element. */
+        private final Map<String, String> m_rootNamespaces = new HashMap<String, String>();
+
+        /** For each group, whether the current element at each depth matches the resource path up to that depth. */
+        private final boolean[][] m_resourceMatches;
+
+        /** The results. */
+        private final List<GroupValues> m_results = new ArrayList<GroupValues>();
+
+        /** The captures in progress. */
+        private final List<Capture> m_captures = new ArrayList<Capture>();
+
+        /** The timestamp captures, for each group. */
+        private final Capture[] m_timestamps;
+
+        /** The number of paths currently collecting text. */
+        private int m_collecting = 0;
+
+        /**
+         * Instantiates a new streaming evaluator.
+         *
+         * @param reader the reader
+         */
+        private StreamingEvaluator(XMLStreamReader reader) {
+            m_reader = reader;
+            m_resourceMatches = new boolean[m_streamingGroups.size()][];
+            m_timestamps = new Capture[m_streamingGroups.size()];
+            for (int i = 0; i < m_streamingGroups.size(); i++) {
+                final StreamingGroup group = m_streamingGroups.get(i);
+                m_resourceMatches[i] = new boolean[group.m_resource.length() + 1];
+                m_resourceMatches[i][0] = true;
+                m_results.add(new GroupValues(m_groups.get(i)));
+                if (group.m_timestamp != null) {
+                    m_timestamps[i] = new Capture(0, new XmlStreamingPath[] { group.m_timestamp }, null, 0);
+                    m_captures.add(m_timestamps[i]);
+                }
+            }
+        }
+
+        /**
+         * Evaluates the document.
+         *
+         * @return the group values
+         * @throws XMLStreamException the XML stream exception
+         */
+        private List<GroupValues> evaluate() throws XMLStreamException {
+            while (m_reader.hasNext()) {
+                switch (m_reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement();
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    endElement();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (m_collecting > 0) {
+                        characters();
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+            for (int i = 0; i < m_timestamps.length; i++) {
+                if (m_timestamps[i] != null) {
+                    m_results.get(i).m_timestamp = m_timestamps[i].m_values[0];
+                }
+            }
+            return m_results;
+        }
+
+        /**
+         * Process the start of an element.
+         */
+        private void startElement() {
+            m_depth++;
+            if (m_depth == 1) {
+                final String uri = m_reader.getNamespaceURI();
+                final String prefix = m_reader.getPrefix();
+                m_ignoreNamespaces = uri != null && !uri.isEmpty() && (prefix == null || prefix.isEmpty());
+                for (int i = 0; i < m_reader.getNamespaceCount(); i++) {
+                    final String nsPrefix = m_reader.getNamespacePrefix(i);
+                    if (nsPrefix != null && !nsPrefix.isEmpty()) {
+                        m_rootNamespaces.put(nsPrefix, m_reader.getNamespaceURI(i));
+                    }
+                }
+                m_rootNamespaces.put(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI);
+            }
+            for (int i = 0; i < m_resourceMatches.length; i++) {
+                final boolean[] matches = m_resourceMatches[i];
+                if (m_depth < matches.length) {
+                    final XmlStreamingPath path = m_streamingGroups.get(i).m_resource;
+                    matches[m_depth] = matches[m_depth - 1] && matches(path.getStep(m_depth - 1));
+                    if (matches[m_depth] && m_depth == path.length()) {
+                        final StreamingGroup group = m_streamingGroups.get(i);
+                        m_captures.add(new Capture(m_depth, group.m_paths, m_results.get(i), group.m_keyCount));
+                    }
+                }
+            }
+            for (Capture capture : m_captures) {
+                capture.startElement();
+            }
+        }
+
+        /**
+         * Process the end of an element.
+         */
+        private void endElement() {
+            for (Iterator<Capture> it = m_captures.iterator(); it.hasNext();) {
+                final Capture capture = it.next();
+                if (capture.endElement()) {
+                    it.remove();
+                    capture.complete();
+                }
+            }
+            m_depth--;
+        }
+
+        /**
+         * Process text.
+         */
+        private void characters() {
+            final char[] text = m_reader.getTextCharacters();
+            final int start = m_reader.getTextStart();
+            final int length = m_reader.getTextLength();
+            for (Capture capture : m_captures) {
+                capture.characters(text, start, length);
+            }
+        }
+
+        /**
+         * Checks if the current element matches a step.
+         *
+         * @param step the step
+         * @return true, if successful
+         */
+        private boolean matches(XmlStreamingPath.Step step) {
+            if (!matchesName(step.getName(), m_reader.getPrefix(), m_reader.getNamespaceURI(), m_reader.getLocalName())) {
+                return false;
+            }
+            for (XmlStreamingPath.Predicate predicate : step.getPredicates()) {
+                if (!predicate.matches(getAttribute(predicate.getAttribute()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Gets the value of an attribute of the current element.
+         *
+         * @param name the attribute name
+         * @return the attribute value, or null if the attribute doesn't exist
+         */
+        private String getAttribute(XmlStreamingPath.QName name) {
+            for (int i = 0; i < m_reader.getAttributeCount(); i++) {
+                if (matchesName(name, m_reader.getAttributePrefix(i), m_reader.getAttributeNamespace(i), m_reader.getAttributeLocalName(i))) {
+                    return m_reader.getAttributeValue(i);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Checks if a node name matches a name test.
+         *
+         * @param name the name test
+         * @param prefix the node prefix
+         * @param namespaceURI the node namespace URI
+         * @param localName the node local name
+         * @return true, if successful
+         */
+        private boolean matchesName(XmlStreamingPath.QName name, String prefix, String namespaceURI, String localName) {
+            if (m_ignoreNamespaces) {
+                final String expected = name.getPrefix() == null ? "" : name.getPrefix();
+                if (!expected.equals(prefix == null ? "" : prefix)) {
+                    return name.isWildcard() && name.getPrefix() == null;
+                }
+                return name.isWildcard() || name.getLocalName().equals(localName);
+            }
+            if (name.isWildcard() && name.getPrefix() == null) {
+                return true;
+            }
+            final String expected = name.getPrefix() == null ? "" : m_rootNamespaces.get(name.getPrefix());
+            if (expected == null || !expected.equals(namespaceURI == null ? "" : namespaceURI)) {
+                return false;
+            }
+            return name.isWildcard() || name.getLocalName().equals(localName);
+        }
+
+        /**
+         * The Class Capture.
+         * <p>Gets the value of the first node that matches each one of a list of paths,
+         * relative to a context element, or to the document.</p>
+         */
+        private final class Capture {
+
+            /** The depth of the context element (0 for the document). */
+            private final int m_base;
+
+            /** The paths. */
+            private final XmlStreamingPath[] m_paths;
+
+            /** The values. */
+            private final String[] m_values;
+
+            /** Whether the value of each path has been found. */
+            private final boolean[] m_found;
+
+            /** For each path, whether the current element at each relative depth matches the path up to that depth. */
+            private final boolean[][] m_matches;
+
+            /** The depth of the element whose text is being collected for each path (-1 if none). */
+            private final int[] m_textDepth;
+
+            /** The text being collected for each path. */
+            private final StringBuilder[] m_text;
+
+            /** The number of paths without value. */
+            private int m_pending;
+
+            /** The group values for resources (null for timestamps). */
+            private final GroupValues m_target;
+
+            /** The number of keys within the paths. */
+            private final int m_keyCount;
+
+            /**
+             * Instantiates a new capture.
+             *
+             * @param base the depth of the context element
+             * @param paths the paths
+             * @param target the group values for resources
+             * @param keyCount the number of keys
+             */
+            private Capture(int base, XmlStreamingPath[] paths, GroupValues target, int keyCount) {
+                m_base = base;
+                m_paths = paths;
+                m_values = new String[paths.length];
+                m_found = new boolean[paths.length];
+                m_matches = new boolean[paths.length][];
+                m_textDepth = new int[paths.length];
+                m_text = new StringBuilder[paths.length];
+                for (int i = 0; i < paths.length; i++) {
+                    m_matches[i] = new boolean[paths[i].length() + 1];
+                    m_matches[i][0] = true;
+                    m_textDepth[i] = -1;
+                }
+                m_pending = paths.length;
+                m_target = target;
+                m_keyCount = keyCount;
+            }
+
+            /**
+             * Process the start of an element (including the context element).
+             */
+            private void startElement() {
+                if (m_pending == 0) {
+                    return;
+                }
+                final int level = m_depth - m_base;
+                for (int i = 0; i < m_paths.length; i++) {
+                    final XmlStreamingPath path = m_paths[i];
+                    // Only the first node in document order is used.
+                    if (m_found[i] || m_textDepth[i] >= 0 || level > path.length()) {
+                        continue;
+                    }
+                    if (level > 0) {
+                        m_matches[i][level] = m_matches[i][level - 1] && matches(path.getStep(level - 1));
+                        if (!m_matches[i][level]) {
+                            continue;
+                        }
+                    }
+                    if (level == path.length()) {
+                        if (path.getAttribute() == null) {
+                            m_textDepth[i] = m_depth;
+                            m_text[i] = new StringBuilder();
+                            m_collecting++;
+                        } else {
+                            final String value = getAttribute(path.getAttribute());
+                            if (value != null) {
+                                found(i, value);
+                            }
+                        }
+                    }
+                }
+            }
+
+            /**
+             * Process text.
+             *
+             * @param text the text
+             * @param start the start
+             * @param length the length
+             */
+            private void characters(char[] text, int start, int length) {
+                for (int i = 0; i < m_paths.length; i++) {
+                    if (m_textDepth[i] >= 0) {
+                        m_text[i].append(text, start, length);
+                    }
+                }
+            }
+
+            /**
+             * Process the end of an element.
+             *
+             * @return true, if the context element has ended
+             */
+            private boolean endElement() {
+                for (int i = 0; i < m_paths.length; i++) {
+                    if (m_textDepth[i] == m_depth) {
+                        m_textDepth[i] = -1;
+                        m_collecting--;
+                        found(i, m_text[i].toString());
+                        m_text[i] = null;
+                    }
+                }
+                return m_depth == m_base;
+            }
+
+            /**
+             * Sets the value of a path.
+             *
+             * @param index the path index
+             * @param value the value
+             */
+            private void found(int index, String value) {
+                m_values[index] = value;
+                m_found[index] = true;
+                m_pending--;
+            }
+
+            /**
+             * Adds the resource to the group values.
+             */
+            private void complete() {
+                if (m_target == null) {
+                    return;
+                }
+                final String[] keys = new String[m_keyCount];
+                System.arraycopy(m_values, 0, keys, 0, m_keyCount);
+                final String[] values = new String[m_paths.length - m_keyCount];
+                for (int i = 0; i < values.length; i++) {
+                    // Like XPath's string(), an object that doesn't exist has an empty value.
+                    final String value = m_values[m_keyCount + i];
+                    values[i] = value == null ? "" : value;
+                }
+                m_target.m_resources.add(new ResourceValues(getResourceName(m_target.getGroup(), keys), values));
+            }
+        }
+    }
+
+}
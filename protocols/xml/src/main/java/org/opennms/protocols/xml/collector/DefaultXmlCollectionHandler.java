@@ -28,6 +28,9 @@
 
 package org.opennms.protocols.xml.collector;
 
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
 import org.opennms.netmgt.collection.api.AttributeGroupType;
 import org.opennms.netmgt.collection.api.CollectionAgent;
 import org.opennms.protocols.xml.config.Request;
@@ -58,9 +61,19 @@ public class DefaultXmlCollectionHandler extends AbstractXmlCollectionHandler {
      */
     @Override
     protected void fillCollectionSet(String urlString, Request request, CollectionAgent agent, XmlCollectionSet collectionSet, XmlSource source) throws Exception {
-        final Document doc = getXmlDocument(urlString, request);
-        LOG.debug("collect: parsed document for source url '{}' collection", source.getUrl());
-        fillCollectionSet(agent, collectionSet, source, doc);
+        if (getCompiledSource(source).isStreamable()) {
+            final InputStream is = getXmlStream(urlString, request);
+            try {
+                fillCollectionSet(agent, collectionSet, source, is, request);
+                LOG.debug("collect: streamed document for source url '{}' collection", source.getUrl());
+            } finally {
+                IOUtils.closeQuietly(is);
+            }
+        } else {
+            final Document doc = getXmlDocument(urlString, request);
+            LOG.debug("collect: parsed document for source url '{}' collection", source.getUrl());
+            fillCollectionSet(agent, collectionSet, source, doc);
+        }
     }
 
 }
@@ -48,7 +48,6 @@ import org.opennms.protocols.xml.config.XmlDataCollection;
 import org.opennms.protocols.xml.config.XmlSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
 
 /**
  * The custom implementation of the interface XmlCollectionHandler for 3GPP XML Data.
@@ -91,8 +90,12 @@ public class Sftp3gppXmlCollectionHandler extends AbstractXmlCollectionHandler {
                 if (lastFile == null) {
                     lastFile = connection.get3gppFileName();
                     LOG.debug("collect(single): retrieving file from {}{}{} from {}", url.getPath(), File.separatorChar, lastFile, agent.getHostAddress());
-                    Document doc = getXmlDocument(urlStr, request);
-                    fillCollectionSet(agent, collectionSet, source, doc);
+                    InputStream is = getXmlStream(urlStr, request);
+                    try {
+                        fillCollectionSet(agent, collectionSet, source, is, request);
+                    } finally {
+                        IOUtils.closeQuietly(is);
+                    }
                     Sftp3gppUtils.setLastFilename(getServiceName(), resourceDir, url.getPath(), lastFile);
                     Sftp3gppUtils.deleteFile(connection, lastFile);
                 } else {
@@ -105,9 +108,7 @@ public class Sftp3gppXmlCollectionHandler extends AbstractXmlCollectionHandler {
                             LOG.debug("collect(multiple): retrieving file {} from {}", fileName, agent.getHostAddress());
                             InputStream is = connection.getFile(fileName);
                             try {
-                                Document doc = getXmlDocument(is, request);
-                                IOUtils.closeQuietly(is);
-                                fillCollectionSet(agent, collectionSet, source, doc);
+                                fillCollectionSet(agent, collectionSet, source, is, request);
                             } finally {
                                 IOUtils.closeQuietly(is);
                             }
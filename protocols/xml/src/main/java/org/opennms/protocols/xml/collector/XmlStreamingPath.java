@@ -0,0 +1,505 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.protocols.xml.collector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Class XmlStreamingPath.
+ * <p>A location path that can be matched while reading an XML document as a stream,
+ * without building a DOM. Only the following subset of XPath 1.0 is supported:</p>
+ * <ul>
+ * <li>Child steps, with an optional prefix, or <code>*</code> as a name test.</li>
+ * <li>Predicates comparing an attribute with a literal or a number, like <code>[@p=1]</code> or <code>[@measInfoId='ga|msg']</code>.</li>
+ * <li>An optional trailing attribute, like <code>@value</code>.</li>
+ * <li><code>.</code> for the context node itself (relative paths only).</li>
+ * </ul>
+ * <p>Anything else (descendant axes, functions, positional predicates, unions...) must be
+ * evaluated against a DOM document.</p>
+ */
+public final class XmlStreamingPath {
+
+    /** The Constant NO_STEPS. */
+    private static final Step[] NO_STEPS = new Step[0];
+
+    /** The Constant NO_PREDICATES. */
+    private static final Predicate[] NO_PREDICATES = new Predicate[0];
+
+    /**
+     * The Class Step.
+     */
+    public static final class Step {
+
+        /** The name test. */
+        private final QName m_name;
+
+        /** The predicates. */
+        private final Predicate[] m_predicates;
+
+        /**
+         * Instantiates a new step.
+         *
+         * @param name the name test
+         * @param predicates the predicates
+         */
+        private Step(QName name, Predicate[] predicates) {
+            m_name = name;
+            m_predicates = predicates;
+        }
+
+        /**
+         * Gets the name test.
+         *
+         * @return the name test
+         */
+        public QName getName() {
+            return m_name;
+        }
+
+        /**
+         * Gets the predicates.
+         *
+         * @return the predicates
+         */
+        public Predicate[] getPredicates() {
+            return m_predicates;
+        }
+    }
+
+    /**
+     * The Class Predicate.
+     * <p>An equality test between an attribute and a literal or a number.</p>
+     */
+    public static final class Predicate {
+
+        /** The attribute name. */
+        private final QName m_attribute;
+
+        /** The literal value (null for numbers). */
+        private final String m_literal;
+
+        /** The number (null for literals). */
+        private final Double m_number;
+
+        /**
+         * Instantiates a new predicate.
+         *
+         * @param attribute the attribute name
+         * @param literal the literal value
+         * @param number the number
+         */
+        private Predicate(QName attribute, String literal, Double number) {
+            m_attribute = attribute;
+            m_literal = literal;
+            m_number = number;
+        }
+
+        /**
+         * Gets the attribute name.
+         *
+         * @return the attribute name
+         */
+        public QName getAttribute() {
+            return m_attribute;
+        }
+
+        /**
+         * Checks if the attribute value satisfies the predicate, following the XPath 1.0
+         * rules for comparing a node with a string or a number.
+         *
+         * @param value the attribute value (null if the attribute doesn't exist)
+         * @return true, if successful
+         */
+        public boolean matches(String value) {
+            if (value == null) {
+                return false;
+            }
+            if (m_literal != null) {
+                return m_literal.equals(value);
+            }
+            try {
+                return m_number.doubleValue() == Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The Class QName.
+     * <p>A name test as written in the expression. The prefix is resolved against the document.</p>
+     */
+    public static final class QName {
+
+        /** The prefix (null when missing). */
+        private final String m_prefix;
+
+        /** The local name, or <code>*</code>. */
+        private final String m_localName;
+
+        /**
+         * Instantiates a new name.
+         *
+         * @param prefix the prefix
+         * @param localName the local name
+         */
+        private QName(String prefix, String localName) {
+            m_prefix = prefix;
+            m_localName = localName;
+        }
+
+        /**
+         * Gets the prefix.
+         *
+         * @return the prefix, or null
+         */
+        public String getPrefix() {
+            return m_prefix;
+        }
+
+        /**
+         * Gets the local name.
+         *
+         * @return the local name
+         */
+        public String getLocalName() {
+            return m_localName;
+        }
+
+        /**
+         * Checks if this is a wildcard.
+         *
+         * @return true, if is wildcard
+         */
+        public boolean isWildcard() {
+            return "*".equals(m_localName);
+        }
+    }
+
+    /** The expression. */
+    private final String m_expression;
+
+    /** The steps. */
+    private final Step[] m_steps;
+
+    /** The trailing attribute (null when the path selects elements). */
+    private final QName m_attribute;
+
+    /**
+     * Instantiates a new XML streaming path.
+     *
+     * @param expression the expression
+     * @param steps the steps
+     * @param attribute the trailing attribute
+     */
+    private XmlStreamingPath(String expression, Step[] steps, QName attribute) {
+        m_expression = expression;
+        m_steps = steps;
+        m_attribute = attribute;
+    }
+
+    /**
+     * Gets the expression.
+     *
+     * @return the expression
+     */
+    public String getExpression() {
+        return m_expression;
+    }
+
+    /**
+     * Gets the number of steps.
+     *
+     * @return the number of steps
+     */
+    public int length() {
+        return m_steps.length;
+    }
+
+    /**
+     * Gets a step.
+     *
+     * @param index the index
+     * @return the step
+     */
+    public Step getStep(int index) {
+        return m_steps[index];
+    }
+
+    /**
+     * Gets the trailing attribute.
+     *
+     * @return the attribute, or null if the path selects elements
+     */
+    public QName getAttribute() {
+        return m_attribute;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return m_expression;
+    }
+
+    /**
+     * Compiles an absolute location path, like <code>/measCollecFile/measData/measInfo[@measInfoId='dns|dns']/measValue</code>.
+     *
+     * @param expression the expression
+     * @return the streaming path, or null if the expression is not supported
+     */
+    public static XmlStreamingPath compileAbsolute(String expression) {
+        if (expression == null) {
+            return null;
+        }
+        final String expr = expression.trim();
+        if (!expr.startsWith("/") || expr.startsWith("//")) {
+            return null;
+        }
+        final XmlStreamingPath path = compile(expression, expr.substring(1));
+        return path == null || path.length() == 0 ? null : path;
+    }
+
+    /**
+     * Compiles a location path relative to a resource, like <code>parameter[@key='v1']/@value</code>.
+     *
+     * @param expression the expression
+     * @return the streaming path, or null if the expression is not supported
+     */
+    public static XmlStreamingPath compileRelative(String expression) {
+        if (expression == null) {
+            return null;
+        }
+        final String expr = expression.trim();
+        if (expr.equals(".")) {
+            return new XmlStreamingPath(expression, NO_STEPS, null);
+        }
+        if (expr.startsWith("/")) {
+            return null;
+        }
+        return compile(expression, expr);
+    }
+
+    /**
+     * Compiles the steps of a location path.
+     *
+     * @param expression the original expression
+     * @param steps the steps of the expression, without the leading slash
+     * @return the streaming path, or null if the expression is not supported
+     */
+    private static XmlStreamingPath compile(String expression, String steps) {
+        final Parser parser = new Parser(steps);
+        final List<Step> stepList = new ArrayList<Step>();
+        QName attribute = null;
+        while (true) {
+            parser.skipSpaces();
+            if (parser.consume('@')) {
+                attribute = parser.name(false);
+                if (attribute == null) {
+                    return null;
+                }
+                parser.skipSpaces();
+                break;
+            }
+            final QName name = parser.name(true);
+            if (name == null) {
+                return null;
+            }
+            final List<Predicate> predicates = new ArrayList<Predicate>();
+            parser.skipSpaces();
+            while (parser.consume('[')) {
+                final Predicate predicate = parser.predicate();
+                if (predicate == null) {
+                    return null;
+                }
+                predicates.add(predicate);
+                parser.skipSpaces();
+            }
+            stepList.add(new Step(name, predicates.toArray(NO_PREDICATES)));
+            if (!parser.consume('/')) {
+                break;
+            }
+        }
+        if (!parser.atEnd()) {
+            return null;
+        }
+        return new XmlStreamingPath(expression, stepList.toArray(NO_STEPS), attribute);
+    }
+
+    /**
+     * The Class Parser.
+     */
+    private static final class Parser {
+
+        /** The expression. */
+        private final String m_expr;
+
+        /** The current position. */
+        private int m_pos;
+
+        /**
+         * Instantiates a new parser.
+         *
+         * @param expr the expression
+         */
+        private Parser(String expr) {
+            m_expr = expr;
+        }
+
+        /**
+         * Checks if the whole expression has been consumed.
+         *
+         * @return true, if successful
+         */
+        private boolean atEnd() {
+            return m_pos == m_expr.length();
+        }
+
+        /**
+         * Skips white spaces.
+         */
+        private void skipSpaces() {
+            while (m_pos < m_expr.length() && Character.isWhitespace(m_expr.charAt(m_pos))) {
+                m_pos++;
+            }
+        }
+
+        /**
+         * Consumes a character if it is the next one.
+         *
+         * @param c the character
+         * @return true, if consumed
+         */
+        private boolean consume(char c) {
+            if (m_pos < m_expr.length() && m_expr.charAt(m_pos) == c) {
+                m_pos++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Parses a name test.
+         *
+         * @param allowWildcard true if <code>*</code> is accepted
+         * @return the name, or null if there is no valid name at the current position
+         */
+        private QName name(boolean allowWildcard) {
+            if (allowWildcard && consume('*')) {
+                return new QName(null, "*");
+            }
+            final String first = ncName();
+            if (first == null) {
+                return null;
+            }
+            if (m_pos + 1 < m_expr.length() && m_expr.charAt(m_pos) == ':' && m_expr.charAt(m_pos + 1) != ':') {
+                m_pos++;
+                if (allowWildcard && consume('*')) {
+                    return new QName(first, "*");
+                }
+                final String local = ncName();
+                return local == null ? null : new QName(first, local);
+            }
+            // Axes (child::) and function calls (text(), local-name()) are not supported.
+            if (m_pos < m_expr.length() && (m_expr.charAt(m_pos) == ':' || m_expr.charAt(m_pos) == '(')) {
+                return null;
+            }
+            return new QName(null, first);
+        }
+
+        /**
+         * Parses a NCName.
+         *
+         * @return the name, or null if there is no valid name at the current position
+         */
+        private String ncName() {
+            final int start = m_pos;
+            if (m_pos < m_expr.length() && (Character.isLetter(m_expr.charAt(m_pos)) || m_expr.charAt(m_pos) == '_')) {
+                m_pos++;
+                while (m_pos < m_expr.length()) {
+                    final char c = m_expr.charAt(m_pos);
+                    if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+                        break;
+                    }
+                    m_pos++;
+                }
+            }
+            return m_pos == start ? null : m_expr.substring(start, m_pos);
+        }
+
+        /**
+         * Parses a predicate, after the opening bracket.
+         *
+         * @return the predicate, or null if it is not supported
+         */
+        private Predicate predicate() {
+            skipSpaces();
+            if (!consume('@')) {
+                return null;
+            }
+            final QName attribute = name(false);
+            if (attribute == null) {
+                return null;
+            }
+            skipSpaces();
+            if (!consume('=')) {
+                return null;
+            }
+            skipSpaces();
+            if (m_pos == m_expr.length()) {
+                return null;
+            }
+            Predicate predicate = null;
+            final char c = m_expr.charAt(m_pos);
+            if (c == '\'' || c == '"') {
+                final int end = m_expr.indexOf(c, m_pos + 1);
+                if (end < 0) {
+                    return null;
+                }
+                predicate = new Predicate(attribute, m_expr.substring(m_pos + 1, end), null);
+                m_pos = end + 1;
+            } else {
+                final int start = m_pos;
+                while (m_pos < m_expr.length() && (Character.isDigit(m_expr.charAt(m_pos)) || m_expr.charAt(m_pos) == '.')) {
+                    m_pos++;
+                }
+                try {
+                    predicate = new Predicate(attribute, null, Double.valueOf(m_expr.substring(start, m_pos)));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            skipSpaces();
+            return consume(']') ? predicate : null;
+        }
+    }
+
+}
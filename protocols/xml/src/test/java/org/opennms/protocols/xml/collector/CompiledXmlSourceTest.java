@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.protocols.xml.collector;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opennms.protocols.xml.collector.CompiledXmlSource.GroupValues;
+import org.opennms.protocols.xml.collector.CompiledXmlSource.ResourceValues;
+import org.opennms.protocols.xml.config.XmlSource;
+import org.opennms.protocols.xml.dao.jaxb.XmlDataCollectionConfigDaoJaxb;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * The Test Class for CompiledXmlSource.
+ * <p>The values extracted while streaming the sample files must be the same as the values
+ * extracted from the DOM documents.</p>
+ */
+public class CompiledXmlSourceTest {
+
+    /**
+     * Test the supported XPath subset.
+     */
+    @Test
+    public void testStreamingPaths() {
+        Assert.assertNotNull(XmlStreamingPath.compileAbsolute("/measCollecFile/measData/measInfo[@measInfoId='platform-system|resource']/measValue"));
+        Assert.assertNotNull(XmlStreamingPath.compileAbsolute("/measCollecFile/fileFooter/measCollec/@endTime"));
+        Assert.assertNotNull(XmlStreamingPath.compileAbsolute("/dp:RootElement/dp:ChildElement/*"));
+        Assert.assertNotNull(XmlStreamingPath.compileRelative("r[@p=1]"));
+        Assert.assertNotNull(XmlStreamingPath.compileRelative("dp:Stat[@Name = 'PANTS']/@Value"));
+        Assert.assertNotNull(XmlStreamingPath.compileRelative("@measObjLdn"));
+        Assert.assertNotNull(XmlStreamingPath.compileRelative("."));
+
+        Assert.assertNull(XmlStreamingPath.compileAbsolute("//measValue"));
+        Assert.assertNull(XmlStreamingPath.compileAbsolute("measValue"));
+        Assert.assertNull(XmlStreamingPath.compileRelative("p[contains(.,'Document Count:')]"));
+        Assert.assertNull(XmlStreamingPath.compileRelative("parameter[1]"));
+        Assert.assertNull(XmlStreamingPath.compileRelative("child::parameter"));
+        Assert.assertNull(XmlStreamingPath.compileRelative("text()"));
+        Assert.assertNull(XmlStreamingPath.compileRelative("a | b"));
+    }
+
+    /**
+     * Test 3GPP.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void test3GPP() throws Exception {
+        List<GroupValues> values = compare("src/test/resources/3gpp-xml-datacollection-config.xml", "3GPP", "src/test/resources/A20111025.0030-0500-0045-0500_MME00001.xml");
+        Assert.assertEquals("2011-10-25T00:45:00-05:00", values.get(0).getTimestamp());
+        int resources = 0;
+        for (GroupValues groupValues : values) {
+            resources += groupValues.getResources().size();
+        }
+        Assert.assertEquals(147, resources);
+    }
+
+    /**
+     * Test namespaces.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testNamespace() throws Exception {
+        List<GroupValues> values = compare("src/test/resources/namespace-datacollection-config.xml", "Namespace", "src/test/resources/namespace.xml");
+        ResourceValues resource = values.get(0).getResources().get(0);
+        Assert.assertEquals("13", resource.getValue(0));
+        Assert.assertEquals("4", resource.getValue(5));
+    }
+
+    /**
+     * Test node level data.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testNodeLevel() throws Exception {
+        compare("src/test/resources/node-level-datacollection-config.xml", "NodeLevel", "src/test/resources/node-level.xml");
+    }
+
+    /**
+     * Test multiple keys.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testRpcReply() throws Exception {
+        compare("src/test/resources/rpc-reply-datacollection-config.xml", "RPC", "src/test/resources/rpc-reply.xml");
+    }
+
+    /**
+     * Test Solaris zones.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testSolarisZones() throws Exception {
+        List<GroupValues> values = compare("src/test/resources/solaris-zones-datacollection-config.xml", "Solaris", "src/test/resources/solaris-zones.xml");
+        Assert.assertEquals(3, values.get(0).getResources().size());
+    }
+
+    /**
+     * Evaluates a source using a DOM document and a stream, and compares the results.
+     *
+     * @param configFile the configuration file
+     * @param collectionName the collection name
+     * @param sampleFile the sample file
+     * @return the group values extracted from the stream
+     * @throws Exception the exception
+     */
+    private List<GroupValues> compare(String configFile, String collectionName, String sampleFile) throws Exception {
+        XmlDataCollectionConfigDaoJaxb dao = new XmlDataCollectionConfigDaoJaxb();
+        dao.setConfigResource(new FileSystemResource(configFile));
+        dao.afterPropertiesSet();
+        XmlSource source = dao.getDataCollectionByName(collectionName).getXmlSources().get(0);
+        CompiledXmlSource compiledSource = new CompiledXmlSource(source);
+        Assert.assertTrue(compiledSource.isStreamable());
+
+        MockDocumentBuilder.setXmlFileName(sampleFile);
+        List<GroupValues> expected = compiledSource.evaluate(MockDocumentBuilder.getXmlDocument());
+        List<GroupValues> actual;
+        InputStream is = new FileInputStream(sampleFile);
+        try {
+            actual = compiledSource.evaluate(is);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            GroupValues e = expected.get(i);
+            GroupValues a = actual.get(i);
+            Assert.assertEquals(e.getGroup(), a.getGroup());
+            Assert.assertEquals(e.getTimestamp(), a.getTimestamp());
+            Assert.assertEquals(e.getResources().size(), a.getResources().size());
+            Assert.assertFalse(e.getResources().isEmpty());
+            for (int j = 0; j < e.getResources().size(); j++) {
+                Assert.assertEquals(e.getResources().get(j).getName(), a.getResources().get(j).getName());
+                for (int k = 0; k < e.getGroup().getXmlObjects().size(); k++) {
+                    Assert.assertEquals(e.getResources().get(j).getValue(k), a.getResources().get(j).getValue(k));
+                }
+            }
+        }
+        return actual;
+    }
+
+}
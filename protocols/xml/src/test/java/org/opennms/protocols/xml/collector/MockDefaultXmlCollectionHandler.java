@@ -28,6 +28,8 @@
 
 package org.opennms.protocols.xml.collector;
 
+import java.io.InputStream;
+
 import org.opennms.netmgt.collection.api.CollectionAgent;
 import org.opennms.protocols.xml.config.Request;
 import org.opennms.protocols.xml.config.XmlResourceUtils;
@@ -49,6 +51,14 @@ public class MockDefaultXmlCollectionHandler extends DefaultXmlCollectionHandler
         return MockDocumentBuilder.getXmlDocument();
     }
 
+    /* (non-Javadoc)
+     * @see org.opennms.protocols.xml.collector.AbstractXmlCollectionHandler#getXmlStream(java.lang.String, org.opennms.protocols.xml.config.Request)
+     */
+    @Override
+    protected InputStream getXmlStream(String urlString, Request request) {
+        return MockDocumentBuilder.getXmlStream();
+    }
+
     /* (non-Javadoc)
      * @see org.opennms.protocols.xml.collector.AbstractXmlCollectionHandler#parseUrl(java.lang.String, org.opennms.netmgt.collectd.CollectionAgent, java.lang.Integer)
      */
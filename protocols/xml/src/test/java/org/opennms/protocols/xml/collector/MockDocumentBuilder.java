@@ -28,6 +28,9 @@
 
 package org.opennms.protocols.xml.collector;
 
+import java.io.FileInputStream;
+import java.io.InputStream;
+
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
@@ -78,6 +81,22 @@ public class MockDocumentBuilder {
         return doc;
     }
 
+    /**
+     * Gets the XML stream.
+     *
+     * @return the XML stream
+     */
+    public static InputStream getXmlStream() {
+        if (m_xmlFileName == null)
+            return null;
+        try {
+            return new FileInputStream(m_xmlFileName);
+        } catch (Exception e) {
+            Assert.fail(e.getMessage());
+        }
+        return null;
+    }
+
     /**
      * Sets the XML file name.
      *